@@ -30,6 +30,7 @@ import org.apache.bookkeeper.mledger.AsyncCallbacks.MarkDeleteCallback;
 import org.apache.bookkeeper.mledger.AsyncCallbacks.ReadEntriesCallback;
 import org.apache.bookkeeper.mledger.AsyncCallbacks.ReadEntryCallback;
 import org.apache.bookkeeper.mledger.AsyncCallbacks.SkipEntriesCallback;
+import org.apache.commons.lang3.tuple.Pair;
 
 /**
  * A ManangedCursor is a persisted cursor inside a ManagedLedger.
@@ -315,6 +316,52 @@ public interface ManagedCursor {
      */
     void asyncDelete(Iterable<Position> position, DeleteCallback callback, Object ctx);
 
+    /**
+     * Delete a group of ranges of messages asynchronously.
+     *
+     * <p/>
+     * Equivalent to {@link #asyncDelete(Iterable, DeleteCallback, Object)} with all the positions included in the
+     * ranges, without the need to enumerate them.
+     *
+     * @param ranges
+     *            the first and last positions, both inclusive, of each range of messages to be deleted. The two
+     *            positions of a range must belong to the same ledger
+     * @param callback
+     *            callback object
+     * @param ctx
+     *            opaque context
+     */
+    void asyncDeleteRanges(List<Pair<Position, Position>> ranges, DeleteCallback callback, Object ctx);
+
+    /**
+     * Delete a subset of the messages stored in a batched entry asynchronously.
+     *
+     * <p/>
+     * The messages of the batch that are not deleted yet are tracked by the cursor, so that the other ones can be
+     * filtered out when the entry is delivered again. Once all the messages of the batch are deleted, the entry itself
+     * is deleted as in {@link #asyncDelete(Position, DeleteCallback, Object)}.
+     *
+     * @param position
+     *            the position of the batched entry
+     * @param ackSet
+     *            bitset of the indexes of the messages in the batch that are not deleted yet
+     * @param callback
+     *            callback object
+     * @param ctx
+     *            opaque context
+     */
+    void asyncDeleteBatchIndexes(Position position, long[] ackSet, DeleteCallback callback, Object ctx);
+
+    /**
+     * Get the messages of a batched entry that are not deleted yet.
+     *
+     * @param position
+     *            the position of the batched entry
+     * @return the bitset of the indexes of the messages in the batch that are not deleted yet or null if no message
+     *         was individually deleted from the batch
+     */
+    long[] getBatchIndexesAckSet(Position position);
+
     /**
      * Get the read position. This points to the next message to be read from the cursor.
      *
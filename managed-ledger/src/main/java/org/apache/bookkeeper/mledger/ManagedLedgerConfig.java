@@ -38,6 +38,9 @@ public class ManagedLedgerConfig {
     private boolean createIfMissing = true;
     private int maxUnackedRangesToPersist = 10000;
     private int maxUnackedRangesToPersistInZk = 1000;
+    private boolean unackedRangesOpenCacheSetEnabled = false;
+    private long readAheadMaxBufferSizeBytes = 0;
+    private int readAheadBatchSize = 500;
     private int maxEntriesPerLedger = 50000;
     private int maxSizePerLedgerMb = 100;
     private int minimumRolloverTimeMs = 0;
@@ -473,6 +476,64 @@ public class ManagedLedgerConfig {
         this.maxUnackedRangesToPersistInZk = maxUnackedRangesToPersistInZk;
     }
 
+    /**
+     * @return whether the individually deleted messages of the cursors are tracked with per-ledger bitsets instead of
+     *         a tree of position ranges
+     */
+    public boolean isUnackedRangesOpenCacheSetEnabled() {
+        return unackedRangesOpenCacheSetEnabled;
+    }
+
+    /**
+     * Track the individually deleted messages of the cursors with per-ledger bitsets. This avoids allocating objects
+     * for every "acknowledgment hole" and reduces the cursor memory footprint when acks are highly fragmented.
+     *
+     * @param unackedRangesOpenCacheSetEnabled
+     *            true to use the bitset based set, false to use the range tree
+     */
+    public ManagedLedgerConfig setUnackedRangesOpenCacheSetEnabled(boolean unackedRangesOpenCacheSetEnabled) {
+        this.unackedRangesOpenCacheSetEnabled = unackedRangesOpenCacheSetEnabled;
+        return this;
+    }
+
+    /**
+     * @return the max size of the per-cursor read-ahead buffer, in bytes (0 means read-ahead is disabled)
+     */
+    public long getReadAheadMaxBufferSizeBytes() {
+        return readAheadMaxBufferSizeBytes;
+    }
+
+    /**
+     * Enable read-ahead for cursors that are sequentially reading a backlog. Once detected, the entries ahead of the
+     * cursor are fetched with multiple outstanding reads, across ledger boundaries, into a per-cursor buffer of at most
+     * this size. Prefetched entries are not inserted in the entry cache.
+     *
+     * @param readAheadMaxBufferSizeBytes
+     *            the max size of the buffer in bytes, or 0 to disable read-ahead
+     */
+    public ManagedLedgerConfig setReadAheadMaxBufferSizeBytes(long readAheadMaxBufferSizeBytes) {
+        this.readAheadMaxBufferSizeBytes = readAheadMaxBufferSizeBytes;
+        return this;
+    }
+
+    /**
+     * @return the number of entries fetched by each read-ahead read
+     */
+    public int getReadAheadBatchSize() {
+        return readAheadBatchSize;
+    }
+
+    /**
+     * Set the number of entries fetched by each read-ahead read.
+     *
+     * @param readAheadBatchSize
+     *            the number of entries
+     */
+    public ManagedLedgerConfig setReadAheadBatchSize(int readAheadBatchSize) {
+        this.readAheadBatchSize = readAheadBatchSize;
+        return this;
+    }
+
     /**
      * Get ledger offloader which will be used to offload ledgers to longterm storage.
      *
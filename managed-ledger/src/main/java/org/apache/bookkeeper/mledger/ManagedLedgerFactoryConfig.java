@@ -34,6 +34,43 @@ public class ManagedLedgerFactoryConfig {
      */
     private double cacheEvictionWatermark = 0.90;
 
+    /**
+     * Size in bytes of the direct memory slabs where the cached entries of each ledger are appended. If 0, every entry
+     * is cached in its own buffer.
+     */
+    private int cacheSlabSize = 0;
+
+    /**
+     * Max distance, in entries, between an entry and the read position of an active cursor for the entry to be admitted
+     * in the cache. If 0, all the added entries are cached, regardless of the cursor positions.
+     */
+    private long cacheAdmissionMaxCursorDistance = 0;
+
+    /**
+     * Persist the positions of all the cursors in a few ledgers shared by the factory, instead of one ledger per
+     * cursor. The mark-delete updates of many cursors are grouped in a single entry every
+     * sharedCursorsLedgerFlushIntervalMs.
+     */
+    private boolean sharedCursorsLedgerEnabled = false;
+
+    private long sharedCursorsLedgerFlushIntervalMs = 100;
+
+    /**
+     * Interval at which the shared cursors ledgers of the factories that are gone are deleted, once no cursor refers to
+     * them any more. If 0, they are never deleted.
+     */
+    private long sharedCursorsLedgerSweepIntervalMinutes = 60;
+
+    /**
+     * Number of entries after which the shared cursors ledger is rolled over. The new ledger starts with the positions
+     * of all the cursors, so that the previous one can be deleted.
+     */
+    private int sharedCursorsLedgerMaxEntries = 50000;
+
+    private int sharedCursorsLedgerEnsembleSize = 3;
+    private int sharedCursorsLedgerWriteQuorumSize = 2;
+    private int sharedCursorsLedgerAckQuorumSize = 2;
+
     private int numManagedLedgerWorkerThreads = Runtime.getRuntime().availableProcessors();
     private int numManagedLedgerSchedulerThreads = Runtime.getRuntime().availableProcessors();
 
@@ -0,0 +1,375 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static org.apache.bookkeeper.mledger.util.SafeRun.safeRun;
+
+import com.google.common.collect.Lists;
+import java.util.ArrayDeque;
+import java.util.List;
+import org.apache.bookkeeper.client.api.BKException;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.api.ReadHandle;
+import org.apache.bookkeeper.mledger.Entry;
+import org.apache.bookkeeper.mledger.ManagedLedgerConfig;
+import org.apache.bookkeeper.mledger.proto.MLDataFormats.ManagedLedgerInfo.LedgerInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Read-ahead buffer of a cursor that is sequentially reading a backlog.
+ *
+ * <p>After a few consecutive forward reads that are not close to the tail of the managed ledger, the entries ahead of
+ * the cursor are fetched in segments of {@link ManagedLedgerConfig#getReadAheadBatchSize()} entries, with several
+ * reads outstanding at the same time and continuing into the following ledgers. The cursor reads are then served from
+ * these segments, in order.
+ *
+ * <p>The buffer is bounded by {@link ManagedLedgerConfig#getReadAheadMaxBufferSizeBytes()} and the prefetched entries
+ * are never inserted in the entry cache, since only this cursor is going to read them. Whenever the cursor reads a
+ * position that is not the next prefetched one, or a prefetch read fails, the buffer is dropped and the reads go
+ * back to the regular path.
+ */
+class CursorReadAhead {
+
+    // Number of consecutive sequential backlog reads after which the prefetching starts
+    static final int SEQUENTIAL_READS_THRESHOLD = 2;
+
+    // Max number of prefetch reads outstanding at the same time
+    static final int MAX_PENDING_READS = 4;
+
+    private static final int DEFAULT_ENTRY_SIZE = 1024;
+
+    private final ManagedLedgerImpl ledger;
+    private final long maxBufferSize;
+    private final int batchSize;
+
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private long bufferedSize = 0;
+    private int pendingReads = 0;
+    private long avgEntrySize = DEFAULT_ENTRY_SIZE;
+
+    // First position not covered by a segment yet, or null when not prefetching
+    private PositionImpl nextPrefetchPosition = null;
+
+    private PositionImpl lastReadPosition = null;
+    private int sequentialReads = 0;
+
+    /**
+     * A range of consecutive entries of a ledger, fetched with a single read.
+     */
+    private static class Segment {
+        final long ledgerId;
+        final long firstEntry;
+        final long lastEntry;
+
+        // Null until the read completes
+        List<EntryImpl> entries = null;
+        // Index of the first entry not yet returned to the cursor
+        int readIndex = 0;
+        boolean failed = false;
+        boolean discarded = false;
+
+        OpReadEntry waitingOp = null;
+        long waitingFirstEntry;
+
+        Segment(long ledgerId, long firstEntry, long lastEntry) {
+            this.ledgerId = ledgerId;
+            this.firstEntry = firstEntry;
+            this.lastEntry = lastEntry;
+        }
+
+        boolean contains(long ledgerId, long entryId) {
+            return this.ledgerId == ledgerId && entryId >= firstEntry + readIndex && entryId <= lastEntry;
+        }
+
+        boolean isBefore(long ledgerId, long entryId) {
+            return this.ledgerId < ledgerId || (this.ledgerId == ledgerId && lastEntry < entryId);
+        }
+    }
+
+    CursorReadAhead(ManagedLedgerImpl ledger, ManagedLedgerConfig config) {
+        this.ledger = ledger;
+        this.maxBufferSize = config.getReadAheadMaxBufferSizeBytes();
+        this.batchSize = max(1, config.getReadAheadBatchSize());
+    }
+
+    /**
+     * Serve a read of the cursor from the prefetched entries, starting the prefetching if the cursor is sequentially
+     * reading a backlog.
+     *
+     * @return true if the read was taken over by the read-ahead buffer, false if it has to go through the entry cache
+     */
+    boolean readEntries(ReadHandle lh, long firstEntry, long lastEntryInLedger, OpReadEntry op) {
+        Runnable completion;
+        synchronized (this) {
+            final long ledgerId = lh.getId();
+            if (nextPrefetchPosition != null && !skipTo(ledgerId, firstEntry)) {
+                // The cursor has moved away from the prefetched entries
+                if (log.isDebugEnabled()) {
+                    log.debug("[{}] Dropping read-ahead buffer, cursor is reading {}:{}", ledger.getName(), ledgerId,
+                            firstEntry);
+                }
+                clear();
+            }
+
+            if (nextPrefetchPosition == null) {
+                if (!isSequentialBacklogRead(ledgerId, firstEntry, lastEntryInLedger)) {
+                    return false;
+                }
+                if (log.isDebugEnabled()) {
+                    log.debug("[{}] Starting read-ahead from {}:{}", ledger.getName(), ledgerId, firstEntry);
+                }
+                nextPrefetchPosition = PositionImpl.get(ledgerId, firstEntry);
+            }
+
+            prefetch();
+
+            Segment head = segments.peekFirst();
+            if (head == null || head.waitingOp != null || !head.contains(ledgerId, firstEntry)) {
+                // Nothing left to prefetch, the cursor has caught up with the tail
+                clear();
+                return false;
+            }
+
+            head.waitingOp = op;
+            head.waitingFirstEntry = firstEntry;
+            completion = serve(head);
+        }
+
+        if (completion != null) {
+            completion.run();
+        }
+        return true;
+    }
+
+    /**
+     * Drop all the prefetched entries. A read waiting for a prefetch to complete is sent again through the regular
+     * path.
+     */
+    synchronized void clear() {
+        segments.forEach(this::discard);
+        segments.clear();
+        nextPrefetchPosition = null;
+        lastReadPosition = null;
+        sequentialReads = 0;
+    }
+
+    synchronized long getBufferedSize() {
+        return bufferedSize;
+    }
+
+    synchronized boolean isPrefetching() {
+        return nextPrefetchPosition != null;
+    }
+
+    private boolean isSequentialBacklogRead(long ledgerId, long firstEntry, long lastEntryInLedger) {
+        PositionImpl position = PositionImpl.get(ledgerId, firstEntry);
+        boolean isBacklogRead = ledgerId < ledger.lastConfirmedEntry.getLedgerId()
+                || lastEntryInLedger - firstEntry >= batchSize;
+        if (isBacklogRead && lastReadPosition != null && position.compareTo(lastReadPosition) > 0) {
+            ++sequentialReads;
+        } else {
+            sequentialReads = 0;
+        }
+        lastReadPosition = position;
+        return sequentialReads >= SEQUENTIAL_READS_THRESHOLD;
+    }
+
+    /**
+     * Discard the segments before the given position.
+     *
+     * @return whether the position is the next one to be read from the buffer
+     */
+    private boolean skipTo(long ledgerId, long entryId) {
+        while (!segments.isEmpty() && segments.peekFirst().isBefore(ledgerId, entryId)) {
+            discard(segments.pollFirst());
+        }
+
+        Segment head = segments.peekFirst();
+        if (head != null) {
+            return head.contains(ledgerId, entryId);
+        } else {
+            return nextPrefetchPosition.getLedgerId() == ledgerId && nextPrefetchPosition.getEntryId() == entryId;
+        }
+    }
+
+    /**
+     * Issue new prefetch reads, until reaching the tail of the managed ledger or the max size of the buffer.
+     */
+    private void prefetch() {
+        final long entriesPerRead = max(1, min(batchSize, maxBufferSize / avgEntrySize));
+        while (nextPrefetchPosition != null && pendingReads < MAX_PENDING_READS
+                && (segments.isEmpty()
+                        || bufferedSize + (pendingReads + 1) * entriesPerRead * avgEntrySize <= maxBufferSize)) {
+            final long ledgerId = nextPrefetchPosition.getLedgerId();
+            final long firstEntry = nextPrefetchPosition.getEntryId();
+            final PositionImpl lastConfirmedEntry = ledger.lastConfirmedEntry;
+
+            long lastEntryInLedger;
+            if (ledgerId == lastConfirmedEntry.getLedgerId()) {
+                lastEntryInLedger = lastConfirmedEntry.getEntryId();
+            } else {
+                LedgerInfo info = ledger.ledgers.get(ledgerId);
+                lastEntryInLedger = info != null ? info.getEntries() - 1 : -1;
+            }
+
+            if (firstEntry > lastEntryInLedger) {
+                Long nextLedgerId = ledger.ledgers.ceilingKey(ledgerId + 1);
+                if (ledgerId >= lastConfirmedEntry.getLedgerId() || nextLedgerId == null) {
+                    // Reached the tail, new entries will be read through the regular path
+                    return;
+                }
+                nextPrefetchPosition = PositionImpl.get(nextLedgerId, 0);
+                continue;
+            }
+
+            final long lastEntry = min(firstEntry + entriesPerRead - 1, lastEntryInLedger);
+            Segment segment = new Segment(ledgerId, firstEntry, lastEntry);
+            segments.addLast(segment);
+            ++pendingReads;
+            nextPrefetchPosition = PositionImpl.get(ledgerId, lastEntry + 1);
+
+            ledger.getReadHandle(ledgerId).thenAccept(lh -> {
+                lh.readAsync(firstEntry, lastEntry).whenCompleteAsync(
+                        (ledgerEntries, exception) -> readComplete(segment, lh, ledgerEntries, exception),
+                        ledger.getExecutor().chooseThread(ledger.getName()));
+            }).exceptionally(ex -> {
+                readComplete(segment, null, null, ex);
+                return null;
+            });
+        }
+    }
+
+    private void readComplete(Segment segment, ReadHandle lh, LedgerEntries ledgerEntries, Throwable exception) {
+        Runnable completion;
+        synchronized (this) {
+            if (segment.discarded) {
+                if (ledgerEntries != null) {
+                    ledgerEntries.close();
+                }
+                return;
+            }
+
+            --pendingReads;
+            if (exception != null) {
+                log.warn("[{}] Read-ahead of ledger {} entries {} to {} failed: {}", ledger.getName(),
+                        segment.ledgerId, segment.firstEntry, segment.lastEntry, exception.getMessage());
+                segment.failed = true;
+                if (lh != null && !(exception instanceof BKException
+                        && ((BKException) exception).getCode() == BKException.Code.TooManyRequestsException)) {
+                    ledger.invalidateLedgerHandle(lh, exception);
+                }
+            } else {
+                try {
+                    long size = 0;
+                    List<EntryImpl> entries = Lists.newArrayListWithExpectedSize(
+                            (int) (segment.lastEntry - segment.firstEntry + 1));
+                    for (LedgerEntry e : ledgerEntries) {
+                        EntryImpl entry = EntryImpl.create(e);
+                        entries.add(entry);
+                        size += entry.getLength();
+                    }
+
+                    segment.entries = entries;
+                    segment.failed = entries.size() != segment.lastEntry - segment.firstEntry + 1;
+                    bufferedSize += size;
+                    if (!entries.isEmpty()) {
+                        avgEntrySize = max(1, size / entries.size());
+                    }
+                    ledger.mbean.addReadEntriesSample(entries.size(), size);
+                } finally {
+                    ledgerEntries.close();
+                }
+            }
+
+            completion = segment == segments.peekFirst() ? serve(segment) : null;
+            prefetch();
+        }
+
+        if (completion != null) {
+            completion.run();
+        }
+    }
+
+    /**
+     * Return the entries of the head segment to the read waiting on it, if the segment is ready.
+     */
+    private Runnable serve(Segment head) {
+        final OpReadEntry op = head.waitingOp;
+        if (op == null || (head.entries == null && !head.failed)) {
+            return null;
+        }
+
+        if (head.failed) {
+            // Let the regular path retry the read and deal with the error
+            clear();
+            return null;
+        }
+
+        head.waitingOp = null;
+        int startIndex = (int) (head.waitingFirstEntry - head.firstEntry);
+        while (head.readIndex < startIndex) {
+            release(head.entries.get(head.readIndex++));
+        }
+
+        int endIndex = (int) min(head.entries.size(), (long) startIndex + op.getNumberOfEntriesToRead());
+        final List<Entry> entries = Lists.newArrayListWithExpectedSize(endIndex - startIndex);
+        for (; head.readIndex < endIndex; head.readIndex++) {
+            EntryImpl entry = head.entries.get(head.readIndex);
+            head.entries.set(head.readIndex, null);
+            bufferedSize -= entry.getLength();
+            entries.add(entry);
+        }
+
+        if (head.readIndex == head.entries.size()) {
+            segments.pollFirst();
+        }
+
+        prefetch();
+        return () -> op.readEntriesComplete(entries, op.ctx);
+    }
+
+    private void discard(Segment segment) {
+        segment.discarded = true;
+        if (segment.entries != null) {
+            for (int i = segment.readIndex; i < segment.entries.size(); i++) {
+                release(segment.entries.get(i));
+            }
+            segment.readIndex = segment.entries.size();
+        } else if (!segment.failed) {
+            --pendingReads;
+        }
+
+        final OpReadEntry op = segment.waitingOp;
+        if (op != null) {
+            segment.waitingOp = null;
+            ledger.getExecutor().execute(safeRun(() -> ledger.asyncReadEntries(op)));
+        }
+    }
+
+    private void release(EntryImpl entry) {
+        bufferedSize -= entry.getLength();
+        entry.release();
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(CursorReadAhead.class);
+}
@@ -0,0 +1,56 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import org.apache.bookkeeper.mledger.ManagedCursor;
+
+/**
+ * Cache admission policy abstraction interface.
+ *
+ * <p/>The admission policy decides which entries are worth inserting in the cache of a managed ledger, before the
+ * {@link EntryCacheEvictionPolicy} has to make room for them.
+ */
+public interface EntryCacheAdmissionPolicy {
+    /**
+     * Decide whether an entry that was just added to the managed ledger should be inserted in the cache.
+     *
+     * @param ml
+     *            the managed ledger
+     * @param position
+     *            the position of the added entry
+     * @return true if the entry should be cached
+     */
+    boolean admitAddedEntry(ManagedLedgerImpl ml, PositionImpl position);
+
+    /**
+     * Decide whether a range of entries read from BookKeeper should be inserted in the cache.
+     *
+     * @param ml
+     *            the managed ledger
+     * @param reader
+     *            the cursor that is reading the entries, or null if the read is not done on behalf of a cursor
+     * @param firstPosition
+     *            the position of the first entry read
+     * @param lastPosition
+     *            the position of the last entry read
+     * @return true if the entries should be cached
+     */
+    boolean admitReadEntries(ManagedLedgerImpl ml, ManagedCursor reader, PositionImpl firstPosition,
+            PositionImpl lastPosition);
+}
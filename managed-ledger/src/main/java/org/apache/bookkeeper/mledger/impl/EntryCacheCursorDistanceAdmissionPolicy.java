@@ -0,0 +1,130 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import org.apache.bookkeeper.mledger.ManagedCursor;
+import org.apache.bookkeeper.mledger.proto.MLDataFormats.ManagedLedgerInfo.LedgerInfo;
+
+/**
+ * Admission policy that only caches the entries that an active cursor is going to read soon.
+ *
+ * <p/>An entry is admitted if the read position of an active cursor is behind it by at most maxCursorDistance
+ * entries. Cursors replaying an old backlog are too far behind the tail for the added entries to be cached on their
+ * behalf, so they don't push out the entries needed by the tailing cursors. Entries read from BookKeeper are cached
+ * only if another cursor is closely following the reader, so that subscriptions draining the same backlog share the
+ * reads.
+ *
+ * <p/>The decision for the added entries is computed once for a range of positions and kept in the managed ledger,
+ * so that the publish path doesn't go through all the active cursors for every entry. It is recomputed when the
+ * range is exceeded, when the current ledger changes and when a cursor is activated or deactivated.
+ */
+public class EntryCacheCursorDistanceAdmissionPolicy implements EntryCacheAdmissionPolicy {
+
+    private final long maxCursorDistance;
+
+    public EntryCacheCursorDistanceAdmissionPolicy(long maxCursorDistance) {
+        checkArgument(maxCursorDistance > 0);
+        this.maxCursorDistance = maxCursorDistance;
+    }
+
+    @Override
+    public boolean admitAddedEntry(ManagedLedgerImpl ml, PositionImpl position) {
+        AddedEntriesAdmission admission = ml.addedEntriesAdmission;
+        if (admission != null && admission.ledgerId == position.getLedgerId()
+                && position.getEntryId() >= admission.firstEntryId && position.getEntryId() <= admission.lastEntryId) {
+            return admission.admitted;
+        }
+
+        // The closest cursor behind the added entry decides how many of the next entries are within distance
+        long minDistance = Long.MAX_VALUE;
+        for (ManagedCursor cursor : ml.getActiveCursors()) {
+            PositionImpl readPosition = (PositionImpl) cursor.getReadPosition();
+            if (readPosition.compareTo(position) <= 0) {
+                minDistance = Math.min(minDistance, distance(ml, readPosition, position));
+            }
+        }
+
+        // Cursors only move forward, a rejected range is checked again once the tail has moved by maxCursorDistance
+        boolean admitted = minDistance <= maxCursorDistance;
+        long lastEntryId = position.getEntryId() + (admitted ? maxCursorDistance - minDistance : maxCursorDistance);
+        ml.addedEntriesAdmission = new AddedEntriesAdmission(position.getLedgerId(), position.getEntryId(),
+                lastEntryId, admitted);
+        return admitted;
+    }
+
+    @Override
+    public boolean admitReadEntries(ManagedLedgerImpl ml, ManagedCursor reader, PositionImpl firstPosition,
+            PositionImpl lastPosition) {
+        for (ManagedCursor cursor : ml.getActiveCursors()) {
+            if (cursor == reader) {
+                continue;
+            }
+            // A cursor at the first position is going to read the same entries next
+            PositionImpl readPosition = (PositionImpl) cursor.getReadPosition();
+            if (readPosition.compareTo(firstPosition) <= 0
+                    && distance(ml, readPosition, firstPosition) <= maxCursorDistance) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Count the entries from the cursor position to the given position, not before it. The count stops as soon as
+     * maxCursorDistance is exceeded.
+     */
+    private long distance(ManagedLedgerImpl ml, PositionImpl cursorPosition, PositionImpl position) {
+        if (cursorPosition.getLedgerId() == position.getLedgerId()) {
+            return position.getEntryId() - cursorPosition.getEntryId();
+        }
+
+        // Count the entries of the ledgers in between
+        long distance = position.getEntryId();
+        for (LedgerInfo ledgerInfo : ml.ledgers.subMap(cursorPosition.getLedgerId(), true, position.getLedgerId(),
+                false).values()) {
+            distance += ledgerInfo.getEntries();
+            if (ledgerInfo.getLedgerId() == cursorPosition.getLedgerId()) {
+                distance -= cursorPosition.getEntryId();
+            }
+            if (distance > maxCursorDistance) {
+                break;
+            }
+        }
+        return distance;
+    }
+
+    /**
+     * Admission decision for a range of entries of the current ledger.
+     */
+    static final class AddedEntriesAdmission {
+        final long ledgerId;
+        final long firstEntryId;
+        final long lastEntryId;
+        final boolean admitted;
+
+        AddedEntriesAdmission(long ledgerId, long firstEntryId, long lastEntryId, boolean admitted) {
+            this.ledgerId = ledgerId;
+            this.firstEntryId = firstEntryId;
+            this.lastEntryId = lastEntryId;
+            this.admitted = admitted;
+        }
+    }
+}
@@ -35,6 +35,7 @@ import org.apache.bookkeeper.client.api.LedgerEntry;
 import org.apache.bookkeeper.client.api.ReadHandle;
 import org.apache.bookkeeper.mledger.AsyncCallbacks.ReadEntriesCallback;
 import org.apache.bookkeeper.mledger.AsyncCallbacks.ReadEntryCallback;
+import org.apache.bookkeeper.mledger.ManagedCursor;
 import org.apache.bookkeeper.mledger.ManagedLedgerException;
 import org.apache.bookkeeper.mledger.util.RangeCache;
 import org.apache.bookkeeper.mledger.util.RangeCache.Weighter;
@@ -273,6 +274,14 @@ public class EntryCacheImpl implements EntryCache {
                             manager.mlFactoryMBean.recordCacheMiss(entriesToReturn.size(), totalSize);
                             ml.getMBean().addReadEntriesSample(entriesToReturn.size(), totalSize);
 
+                            ManagedCursor reader = callback instanceof OpReadEntry
+                                    ? ((OpReadEntry) callback).cursor : null;
+                            if (manager.getAdmissionPolicy().admitReadEntries(ml, reader, firstPosition,
+                                    lastPosition)) {
+                                // Another cursor is going to read the same entries soon
+                                entriesToReturn.forEach(this::insert);
+                            }
+
                             callback.readEntriesComplete((List) entriesToReturn, ctx);
                         } finally {
                             ledgerEntries.close();
@@ -48,9 +48,11 @@ public class EntryCacheManager {
     private final long maxSize;
     private final long evictionTriggerThreshold;
     private final double cacheEvictionWatermak;
+    private final int cacheSlabSize;
     private final AtomicLong currentSize = new AtomicLong(0);
     private final ConcurrentMap<String, EntryCache> caches = Maps.newConcurrentMap();
     private final EntryCacheEvictionPolicy evictionPolicy;
+    private final EntryCacheAdmissionPolicy admissionPolicy;
 
     private final AtomicBoolean evictionInProgress = new AtomicBoolean(false);
 
@@ -68,7 +70,12 @@ public class EntryCacheManager {
         this.maxSize = factory.getConfig().getMaxCacheSize();
         this.evictionTriggerThreshold = (long) (maxSize * evictionTriggerThresholdPercent);
         this.cacheEvictionWatermak = factory.getConfig().getCacheEvictionWatermark();
+        this.cacheSlabSize = factory.getConfig().getCacheSlabSize();
         this.evictionPolicy = new EntryCacheDefaultEvictionPolicy();
+        long cacheAdmissionMaxCursorDistance = factory.getConfig().getCacheAdmissionMaxCursorDistance();
+        this.admissionPolicy = cacheAdmissionMaxCursorDistance > 0
+                ? new EntryCacheCursorDistanceAdmissionPolicy(cacheAdmissionMaxCursorDistance)
+                : new EntryCacheDefaultAdmissionPolicy();
         this.mlFactory = factory;
         this.mlFactoryMBean = factory.mbean;
 
@@ -81,7 +88,8 @@ public class EntryCacheManager {
             return new EntryCacheDisabled(ml);
         }
 
-        EntryCache newEntryCache = new EntryCacheImpl(this, ml);
+        EntryCache newEntryCache = cacheSlabSize > 0 ? new SlabEntryCacheImpl(this, ml, cacheSlabSize)
+                : new EntryCacheImpl(this, ml);
         EntryCache currentEntryCache = caches.putIfAbsent(ml.getName(), newEntryCache);
         if (currentEntryCache != null) {
             return currentEntryCache;
@@ -90,6 +98,10 @@ public class EntryCacheManager {
         }
     }
 
+    EntryCacheAdmissionPolicy getAdmissionPolicy() {
+        return admissionPolicy;
+    }
+
     void removeEntryCache(String name) {
         EntryCache entryCache = caches.remove(name);
         if (entryCache == null) {
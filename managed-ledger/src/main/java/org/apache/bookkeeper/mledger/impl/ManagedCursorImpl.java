@@ -32,18 +32,21 @@ import com.google.common.collect.Collections2;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Range;
-import com.google.common.collect.RangeSet;
 import com.google.common.collect.Sets;
-import com.google.common.collect.TreeRangeSet;
+import com.google.common.primitives.Longs;
 import com.google.common.util.concurrent.RateLimiter;
 import com.google.protobuf.InvalidProtocolBufferException;
 
 import java.time.Clock;
 import java.util.ArrayDeque;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -52,7 +55,6 @@ import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.stream.Collectors;
 
 import org.apache.bookkeeper.client.AsyncCallback.CloseCallback;
 import org.apache.bookkeeper.client.AsyncCallback.DeleteCallback;
@@ -74,15 +76,24 @@ import org.apache.bookkeeper.mledger.ManagedLedgerException;
 import org.apache.bookkeeper.mledger.ManagedLedgerException.CursorAlreadyClosedException;
 import org.apache.bookkeeper.mledger.ManagedLedgerException.MetaStoreException;
 import org.apache.bookkeeper.mledger.ManagedLedgerException.NoMoreEntriesToReadException;
+import org.apache.bookkeeper.mledger.ManagedLedgerException.NonRecoverableLedgerException;
 import org.apache.bookkeeper.mledger.Position;
 import org.apache.bookkeeper.mledger.impl.ManagedLedgerImpl.PositionBound;
 import org.apache.bookkeeper.mledger.impl.MetaStore.MetaStoreCallback;
 import org.apache.bookkeeper.mledger.impl.MetaStore.Stat;
 import org.apache.bookkeeper.mledger.proto.MLDataFormats;
+import org.apache.bookkeeper.mledger.proto.MLDataFormats.BatchedEntryDeletionIndexInfo;
+import org.apache.bookkeeper.mledger.proto.MLDataFormats.DeletedEntriesBitmap;
 import org.apache.bookkeeper.mledger.proto.MLDataFormats.LongProperty;
 import org.apache.bookkeeper.mledger.proto.MLDataFormats.ManagedCursorInfo;
+import org.apache.bookkeeper.mledger.proto.MLDataFormats.ManagedLedgerInfo.LedgerInfo;
 import org.apache.bookkeeper.mledger.proto.MLDataFormats.PositionInfo;
+import org.apache.commons.lang3.mutable.MutableLong;
+import org.apache.commons.lang3.mutable.MutableObject;
 import org.apache.commons.lang3.tuple.Pair;
+import org.apache.pulsar.common.util.collections.LongPairRangeSet;
+import org.apache.pulsar.common.util.collections.LongPairRangeSet.LongPair;
+import org.apache.pulsar.common.util.collections.OpenLongPairRangeSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -124,8 +135,22 @@ public class ManagedCursorImpl implements ManagedCursor {
     private volatile LedgerHandle cursorLedger;
     // Stat of the cursor z-node
     private volatile Stat cursorLedgerStat;
-
-    private final RangeSet<PositionImpl> individualDeletedMessages = TreeRangeSet.create();
+    // Store used to persist the position in ledgers shared with other cursors, or null if not enabled
+    private final SharedCursorsLedgerStore sharedCursorsLedgerStore;
+    // Shared ledger referred by the cursor z-node, or -1
+    private volatile long sharedCursorsLedgerId = -1;
+    // Completed once the cursor z-node update to a new shared ledger is done, or null
+    private final AtomicReference<CompletableFuture<Void>> sharedCursorsLedgerSwitch = new AtomicReference<>();
+
+    private final LongPairRangeSet<PositionImpl> individualDeletedMessages;
+    // Max serialized size of the individually deleted messages bitmaps, to fit in a single cursor ledger entry
+    private static final int MaxIndividualDeletedMessagesBitmapSize = 4 * 1024 * 1024;
+    // Incremented on every change of the individually deleted messages, guarded by the lock
+    private long individualDeletedMessagesVersion = 0;
+    // Bitmaps last built, reused by the following persists as long as the individually deleted messages don't change
+    private volatile IndividualDeletedMessagesBitmaps lastIndividualDeletedMessagesBitmaps = null;
+    // Messages not deleted yet of the batched entries that were partially deleted, guarded by the lock
+    private final NavigableMap<PositionImpl, BitSet> batchDeletedIndexes = new TreeMap<>();
     private final ReadWriteLock lock = new ReentrantReadWriteLock();
 
     private RateLimiter markDeleteLimiter;
@@ -158,6 +183,9 @@ public class ManagedCursorImpl implements ManagedCursor {
     private long lastLedgerSwitchTimestamp;
     private final Clock clock;
 
+    // Prefetched entries for sequential backlog reads, null when read-ahead is disabled
+    final CursorReadAhead readAhead;
+
     // The last active time (Unix time, milliseconds) of the cursor
     private long lastActive;
 
@@ -194,6 +222,13 @@ public class ManagedCursorImpl implements ManagedCursor {
         this.clock = config.getClock();
         this.lastActive = this.clock.millis();
         this.lastLedgerSwitchTimestamp = this.clock.millis();
+        this.individualDeletedMessages = config.isUnackedRangesOpenCacheSetEnabled()
+                ? new OpenLongPairRangeSet<>(PositionImpl::new)
+                : new LongPairRangeSet.DefaultRangeSet<>(PositionImpl::new,
+                        position -> new LongPair(position.getLedgerId(), position.getEntryId()));
+
+        this.readAhead = config.getReadAheadMaxBufferSizeBytes() > 0 ? new CursorReadAhead(ledger, config) : null;
+        this.sharedCursorsLedgerStore = ledger.factory != null ? ledger.factory.getSharedCursorsLedgerStore() : null;
 
         if (config.getThrottleMarkDelete() > 0.0) {
             markDeleteLimiter = RateLimiter.create(config.getThrottleMarkDelete());
@@ -230,6 +265,9 @@ public class ManagedCursorImpl implements ManagedCursor {
                     if (info.getIndividualDeletedMessagesCount() > 0) {
                         recoverIndividualDeletedMessages(info.getIndividualDeletedMessagesList());
                     }
+                    if (info.getBatchedEntryDeletionIndexInfoCount() > 0) {
+                        recoverBatchDeletedIndexes(info.getBatchedEntryDeletionIndexInfoList());
+                    }
 
                     Map<String, Long> recoveredProperties = Collections.emptyMap();
                     if (info.getPropertiesCount() > 0) {
@@ -247,7 +285,11 @@ public class ManagedCursorImpl implements ManagedCursor {
                     // Need to proceed and read the last entry in the specified ledger to find out the last position
                     log.info("[{}] Consumer {} meta-data recover from ledger {}", ledger.getName(), name,
                             info.getCursorsLedgerId());
-                    recoverFromLedger(info, callback);
+                    if (info.getSharedCursorsLedger()) {
+                        recoverFromSharedCursorsLedger(info, callback);
+                    } else {
+                        recoverFromLedger(info, callback);
+                    }
                 }
             }
 
@@ -309,33 +351,121 @@ public class ManagedCursorImpl implements ManagedCursor {
                     return;
                 }
 
-                Map<String, Long> recoveredProperties = Collections.emptyMap();
-                if (positionInfo.getPropertiesCount() > 0) {
-                    // Recover properties map
-                    recoveredProperties = Maps.newHashMap();
-                    for (int i = 0; i < positionInfo.getPropertiesCount(); i++) {
-                        LongProperty property = positionInfo.getProperties(i);
-                        recoveredProperties.put(property.getName(), property.getValue());
-                    }
-                }
-
-                PositionImpl position = new PositionImpl(positionInfo);
-                if (positionInfo.getIndividualDeletedMessagesCount() > 0) {
-                    recoverIndividualDeletedMessages(positionInfo.getIndividualDeletedMessagesList());
-                }
-                recoveredCursor(position, recoveredProperties, lh);
+                recoveredCursor(positionInfo, lh);
                 callback.operationComplete();
             }, null);
         }, null);
     }
 
+    private void recoverFromSharedCursorsLedger(final ManagedCursorInfo info, final VoidCallback callback) {
+        long ledgerId = info.getCursorsLedgerId();
+        CompletableFuture<PositionInfo> positionFuture = sharedCursorsLedgerStore != null
+                ? sharedCursorsLedgerStore.readPosition(ledgerId, ledger.getName(), name)
+                // The shared cursors ledgers were disabled after the position was written
+                : SharedCursorsLedgerStore.readPosition(bookkeeper, ledgerId, ledger.getName(), name);
+        positionFuture.whenComplete((positionInfo, ex) -> {
+            if (ex != null) {
+                ManagedLedgerException e = SharedCursorsLedgerStore.toManagedLedgerException(ex);
+                if (e instanceof NonRecoverableLedgerException) {
+                    log.error("[{}] Error reading shared cursors ledger {} for consumer {}: {}",
+                            ledger.getName(), ledgerId, name, e.getMessage());
+                    // Rewind to oldest entry available
+                    initialize(getRollbackPosition(info), callback);
+                } else {
+                    log.warn("[{}] Error reading shared cursors ledger {} for consumer {}: {}",
+                            ledger.getName(), ledgerId, name, e.getMessage());
+                    callback.operationFailed(e);
+                }
+                return;
+            } else if (positionInfo == null) {
+                log.error("[{}] Position of consumer {} not found in shared cursors ledger {}",
+                        ledger.getName(), name, ledgerId);
+                initialize(getRollbackPosition(info), callback);
+                return;
+            }
+
+            recoveredCursor(positionInfo, null);
+            if (sharedCursorsLedgerStore != null) {
+                // Keep the ledger referenced until the cursor z-node points to a newer one
+                sharedCursorsLedgerId = ledgerId;
+                sharedCursorsLedgerStore.setCursorLedger(this, ledgerId);
+            }
+            callback.operationComplete();
+        });
+    }
+
+    private void recoveredCursor(PositionInfo positionInfo, LedgerHandle recoveredFromCursorLedger) {
+        Map<String, Long> recoveredProperties = Collections.emptyMap();
+        if (positionInfo.getPropertiesCount() > 0) {
+            // Recover properties map
+            recoveredProperties = Maps.newHashMap();
+            for (int i = 0; i < positionInfo.getPropertiesCount(); i++) {
+                LongProperty property = positionInfo.getProperties(i);
+                recoveredProperties.put(property.getName(), property.getValue());
+            }
+        }
+
+        PositionImpl position = new PositionImpl(positionInfo);
+        if (positionInfo.getIndividualDeletedMessagesBitmapCount() > 0) {
+            recoverIndividualDeletedMessagesFromBitmap(positionInfo.getIndividualDeletedMessagesBitmapList());
+        } else if (positionInfo.getIndividualDeletedMessagesCount() > 0) {
+            recoverIndividualDeletedMessages(positionInfo.getIndividualDeletedMessagesList());
+        }
+        if (positionInfo.getBatchedEntryDeletionIndexInfoCount() > 0) {
+            recoverBatchDeletedIndexes(positionInfo.getBatchedEntryDeletionIndexInfoList());
+        }
+        recoveredCursor(position, recoveredProperties, recoveredFromCursorLedger);
+    }
+
     private void recoverIndividualDeletedMessages(List<MLDataFormats.MessageRange> individualDeletedMessagesList) {
         lock.writeLock().lock();
         try {
             individualDeletedMessages.clear();
-            individualDeletedMessagesList.forEach(messageRange -> individualDeletedMessages
-                    .add(Range.openClosed(new PositionImpl(messageRange.getLowerEndpoint()),
-                            new PositionImpl(messageRange.getUpperEndpoint()))));
+            ++individualDeletedMessagesVersion;
+            individualDeletedMessagesList.forEach(messageRange -> {
+                MLDataFormats.NestedPositionInfo lower = messageRange.getLowerEndpoint();
+                MLDataFormats.NestedPositionInfo upper = messageRange.getUpperEndpoint();
+                individualDeletedMessages.addOpenClosed(lower.getLedgerId(), lower.getEntryId(),
+                        upper.getLedgerId(), upper.getEntryId());
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void recoverBatchDeletedIndexes(List<BatchedEntryDeletionIndexInfo> batchDeletedIndexInfoList) {
+        lock.writeLock().lock();
+        try {
+            batchDeletedIndexes.clear();
+            for (BatchedEntryDeletionIndexInfo batchDeletedIndexInfo : batchDeletedIndexInfoList) {
+                MLDataFormats.NestedPositionInfo position = batchDeletedIndexInfo.getPosition();
+                batchDeletedIndexes.put(PositionImpl.get(position.getLedgerId(), position.getEntryId()),
+                        BitSet.valueOf(Longs.toArray(batchDeletedIndexInfo.getAckSetList())));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void recoverIndividualDeletedMessagesFromBitmap(List<DeletedEntriesBitmap> bitmaps) {
+        lock.writeLock().lock();
+        try {
+            individualDeletedMessages.clear();
+            ++individualDeletedMessagesVersion;
+            for (DeletedEntriesBitmap bitmap : bitmaps) {
+                long ledgerId = bitmap.getLedgerId();
+                BitSet deletedEntries = BitSet.valueOf(Longs.toArray(bitmap.getWordsList()));
+                int start = deletedEntries.nextSetBit(0);
+                while (start >= 0) {
+                    int end = deletedEntries.nextClearBit(start);
+                    // A range starting at the beginning of a ledger is connected to the end of the previous one
+                    PositionImpl lower = start == 0 ? ledger.getPreviousPosition(PositionImpl.get(ledgerId, 0))
+                            : PositionImpl.get(ledgerId, start - 1);
+                    individualDeletedMessages.addOpenClosed(lower.getLedgerId(), lower.getEntryId(), ledgerId,
+                            end - 1);
+                    start = deletedEntries.nextSetBit(end);
+                }
+            }
         } finally {
             lock.writeLock().unlock();
         }
@@ -670,7 +800,12 @@ public class ManagedCursorImpl implements ManagedCursor {
 
     @Override
     public int getTotalNonContiguousDeletedMessagesRange() {
-        return individualDeletedMessages.asRanges().size();
+        lock.readLock().lock();
+        try {
+            return individualDeletedMessages.size();
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     @Override
@@ -825,6 +960,8 @@ public class ManagedCursorImpl implements ManagedCursor {
                     lastMarkDeleteEntry = new MarkDeleteEntry(newMarkDeletePosition, Collections.emptyMap(),
                             null, null);
                     individualDeletedMessages.clear();
+                    ++individualDeletedMessagesVersion;
+                    batchDeletedIndexes.clear();
 
                     PositionImpl oldReadPosition = readPosition;
                     if (oldReadPosition.compareTo(newPosition) >= 0) {
@@ -984,7 +1121,7 @@ public class ManagedCursorImpl implements ManagedCursor {
         lock.readLock().lock();
         try {
             positions.stream()
-                    .filter(position -> individualDeletedMessages.contains((PositionImpl) position)
+                    .filter(position -> isMessageDeleted(position)
                             || ((PositionImpl) position).compareTo(markDeletePosition) < 0)
                     .forEach(alreadyAcknowledgedPositions::add);
         } finally {
@@ -1039,11 +1176,23 @@ public class ManagedCursorImpl implements ManagedCursor {
             log.debug("[{}] getNumberOfEntries. {} allEntries: {}", ledger.getName(), range, allEntries);
         }
 
-        long deletedEntries = 0;
+        MutableLong deletedEntries = new MutableLong(0);
+        PositionImpl lowerPosition = range.lowerEndpoint();
+        PositionImpl upperPosition = range.upperEndpoint();
 
         lock.readLock().lock();
         try {
-            for (Range<PositionImpl> r : individualDeletedMessages.asRanges()) {
+            // The deleted ranges are sorted: skip the ones before the range and stop after it, so that only the
+            // ranges that may intersect it are materialized
+            individualDeletedMessages.forEach((lowerKey, lowerValue, upperKey, upperValue) -> {
+                if (compare(lowerKey, lowerValue, upperPosition) > 0) {
+                    return false;
+                } else if (compare(upperKey, upperValue, lowerPosition) < 0) {
+                    return true;
+                }
+
+                Range<PositionImpl> r = Range.openClosed(PositionImpl.get(lowerKey, lowerValue),
+                        PositionImpl.get(upperKey, upperValue));
                 if (r.isConnected(range)) {
                     Range<PositionImpl> commonEntries = r.intersection(range);
                     long commonCount = ledger.getNumberOfEntries(commonEntries);
@@ -1051,18 +1200,24 @@ public class ManagedCursorImpl implements ManagedCursor {
                         log.debug("[{}] [{}] Discounting {} entries for already deleted range {}", ledger.getName(),
                                 name, commonCount, commonEntries);
                     }
-                    deletedEntries += commonCount;
+                    deletedEntries.add(commonCount);
                 }
-            }
+                return true;
+            });
         } finally {
             lock.readLock().unlock();
         }
 
         if (log.isDebugEnabled()) {
             log.debug("[{}] Found {} entries - deleted: {}",
-                ledger.getName(), allEntries - deletedEntries, deletedEntries);
+                ledger.getName(), allEntries - deletedEntries.longValue(), deletedEntries);
         }
-        return allEntries - deletedEntries;
+        return allEntries - deletedEntries.longValue();
+    }
+
+    private static int compare(long ledgerId, long entryId, PositionImpl position) {
+        int result = Long.compare(ledgerId, position.getLedgerId());
+        return result != 0 ? result : Long.compare(entryId, position.getEntryId());
     }
 
     @Override
@@ -1222,34 +1377,35 @@ public class ManagedCursorImpl implements ManagedCursor {
     }
 
     long getNumIndividualDeletedEntriesToSkip(long numEntries) {
-        long totalEntriesToSkip = 0;
-        long deletedMessages = 0;
+        MutableLong totalEntriesToSkip = new MutableLong(0);
+        MutableLong deletedMessages = new MutableLong(0);
         lock.readLock().lock();
         try {
-            PositionImpl startPosition = markDeletePosition;
-            PositionImpl endPosition = null;
-            for (Range<PositionImpl> r : individualDeletedMessages.asRanges()) {
-                endPosition = r.lowerEndpoint();
-                if (startPosition.compareTo(endPosition) <= 0) {
-                    Range<PositionImpl> range = Range.openClosed(startPosition, endPosition);
+            MutableObject<PositionImpl> startPosition = new MutableObject<>(markDeletePosition);
+            individualDeletedMessages.forEach((lowerKey, lowerValue, upperKey, upperValue) -> {
+                PositionImpl endPosition = PositionImpl.get(lowerKey, lowerValue);
+                if (startPosition.getValue().compareTo(endPosition) <= 0) {
+                    Range<PositionImpl> range = Range.openClosed(startPosition.getValue(), endPosition);
                     long entries = ledger.getNumberOfEntries(range);
-                    if (totalEntriesToSkip + entries >= numEntries) {
-                        break;
+                    if (totalEntriesToSkip.longValue() + entries >= numEntries) {
+                        return false;
                     }
-                    totalEntriesToSkip += entries;
-                    deletedMessages += ledger.getNumberOfEntries(r);
-                    startPosition = r.upperEndpoint();
+                    totalEntriesToSkip.add(entries);
+                    PositionImpl upperPosition = PositionImpl.get(upperKey, upperValue);
+                    deletedMessages.add(ledger.getNumberOfEntries(Range.openClosed(endPosition, upperPosition)));
+                    startPosition.setValue(upperPosition);
                 } else {
                     if (log.isDebugEnabled()) {
                         log.debug("[{}] deletePosition {} moved ahead without clearing deleteMsgs {} for cursor {}",
-                                ledger.getName(), markDeletePosition, r.lowerEndpoint(), name);
+                                ledger.getName(), markDeletePosition, endPosition, name);
                     }
                 }
-            }
+                return true;
+            });
         } finally {
             lock.readLock().unlock();
         }
-        return deletedMessages;
+        return deletedMessages.longValue();
     }
 
     boolean hasMoreEntries(PositionImpl position) {
@@ -1287,15 +1443,19 @@ public class ManagedCursorImpl implements ManagedCursor {
             if (newMarkDeletePosition.getLedgerId() == oldMarkDeletePosition.getLedgerId()
                     && newMarkDeletePosition.getEntryId() == oldMarkDeletePosition.getEntryId() + 1) {
                 // Mark-deleting the position next to current one
-                skippedEntries = individualDeletedMessages.contains(newMarkDeletePosition) ? 0 : 1;
+                skippedEntries = individualDeletedMessages.contains(newMarkDeletePosition.getLedgerId(),
+                        newMarkDeletePosition.getEntryId()) ? 0 : 1;
             } else {
                 skippedEntries = getNumberOfEntries(Range.openClosed(oldMarkDeletePosition, newMarkDeletePosition));
             }
+            // Ranges might not be connected across ledgers, depending on the range set implementation, so keep moving
+            // forward while the next position was already individually deleted
             PositionImpl positionAfterNewMarkDelete = ledger.getNextValidPosition(newMarkDeletePosition);
-            if (individualDeletedMessages.contains(positionAfterNewMarkDelete)) {
-                Range<PositionImpl> rangeToBeMarkDeleted = individualDeletedMessages
-                        .rangeContaining(positionAfterNewMarkDelete);
+            Range<PositionImpl> rangeToBeMarkDeleted;
+            while ((rangeToBeMarkDeleted = individualDeletedMessages.rangeContaining(
+                    positionAfterNewMarkDelete.getLedgerId(), positionAfterNewMarkDelete.getEntryId())) != null) {
                 newMarkDeletePosition = rangeToBeMarkDeleted.upperEndpoint();
+                positionAfterNewMarkDelete = ledger.getNextValidPosition(newMarkDeletePosition);
             }
 
             if (log.isDebugEnabled()) {
@@ -1307,7 +1467,8 @@ public class ManagedCursorImpl implements ManagedCursor {
 
         // markDelete-position and clear out deletedMsgSet
         markDeletePosition = PositionImpl.get(newMarkDeletePosition);
-        individualDeletedMessages.remove(Range.atMost(markDeletePosition));
+        removeIndividualDeletedMessagesAtMost(markDeletePosition);
+        batchDeletedIndexes.headMap(markDeletePosition, true).clear();
 
         if (readPosition.compareTo(newMarkDeletePosition) <= 0) {
             // If the position that is mark-deleted is past the read position, it
@@ -1446,7 +1607,8 @@ public class ManagedCursorImpl implements ManagedCursor {
                 // point.
                 lock.writeLock().lock();
                 try {
-                    individualDeletedMessages.remove(Range.atMost(mdEntry.newPosition));
+                    removeIndividualDeletedMessagesAtMost(mdEntry.newPosition);
+                    batchDeletedIndexes.headMap(mdEntry.newPosition, true).clear();
                 } finally {
                     lock.writeLock().unlock();
                 }
@@ -1580,17 +1742,21 @@ public class ManagedCursorImpl implements ManagedCursor {
                     return;
                 }
 
-                if (individualDeletedMessages.contains(position) || position.compareTo(markDeletePosition) <= 0) {
+                if (isMessageDeleted(position) || position.compareTo(markDeletePosition) <= 0) {
                     if (log.isDebugEnabled()) {
                         log.debug("[{}] [{}] Position was already deleted {}", ledger.getName(), name, position);
                     }
                     continue;
                 }
 
+                batchDeletedIndexes.remove(position);
+
                 // Add a range (prev, pos] to the set. Adding the previous entry as an open limit to the range will make
                 // the RangeSet recognize the "continuity" between adjacent Positions
                 PositionImpl previousPosition = ledger.getPreviousPosition(position);
-                individualDeletedMessages.add(Range.openClosed(previousPosition, position));
+                individualDeletedMessages.addOpenClosed(previousPosition.getLedgerId(), previousPosition.getEntryId(),
+                        position.getLedgerId(), position.getEntryId());
+                ++individualDeletedMessagesVersion;
                 ++messagesConsumedCounter;
 
                 if (log.isDebugEnabled()) {
@@ -1605,27 +1771,113 @@ public class ManagedCursorImpl implements ManagedCursor {
                 return;
             }
 
-            // If the lower bound of the range set is the current mark delete position, then we can trigger a new
-            // mark-delete to the upper bound of the first range segment
-            Range<PositionImpl> range = individualDeletedMessages.asRanges().iterator().next();
+            newMarkDeletePosition = advanceMarkDeletePositionAfterIndividualDeletes();
+        } catch (Exception e) {
+            log.warn("[{}] [{}] Error while updating individualDeletedMessages [{}]", ledger.getName(), name,
+                    e.getMessage(), e);
+            callback.deleteFailed(getManagedLedgerException(e), ctx);
+            return;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        markDeleteAfterIndividualDeletes(newMarkDeletePosition, callback, ctx);
+    }
+
+    @Override
+    public void asyncDeleteRanges(List<Pair<Position, Position>> ranges, AsyncCallbacks.DeleteCallback callback,
+            Object ctx) {
+        if (state == State.Closed) {
+            callback.deleteFailed(new ManagedLedgerException("Cursor was already closed"), ctx);
+            return;
+        }
+
+        PositionImpl newMarkDeletePosition = null;
 
-            // If the lowerBound is ahead of MarkDelete, verify if there are any entries in-between
-            if (range.lowerEndpoint().compareTo(markDeletePosition) <= 0 || ledger
-                    .getNumberOfEntries(Range.openClosed(markDeletePosition, range.lowerEndpoint())) <= 0) {
+        lock.writeLock().lock();
 
-                if (log.isDebugEnabled()) {
-                    log.debug("[{}] Found a position range to mark delete for cursor {}: {} ", ledger.getName(),
-                            name, range);
+        try {
+            if (log.isDebugEnabled()) {
+                log.debug("[{}] [{}] Deleting individual message ranges {}. Current status: {} - md-position: {}",
+                        ledger.getName(), name, ranges, individualDeletedMessages, markDeletePosition);
+            }
+
+            // Validate all the ranges first, so that none of them is applied if any is invalid. The ranges left to
+            // apply are kept as (first, last) pairs
+            PositionImpl[] validRanges = new PositionImpl[ranges.size() * 2];
+            int validRangesCount = 0;
+            PositionImpl lastConfirmedEntry = (PositionImpl) ledger.getLastConfirmedEntry();
+            for (Pair<Position, Position> range : ranges) {
+                PositionImpl first = (PositionImpl) checkNotNull(range.getLeft());
+                PositionImpl last = (PositionImpl) checkNotNull(range.getRight());
+                checkArgument(first.getLedgerId() == last.getLedgerId() && 0 <= first.getEntryId()
+                                && first.getEntryId() <= last.getEntryId(),
+                        "Invalid range of positions [%s, %s]", first, last);
+
+                if (lastConfirmedEntry.compareTo(last) < 0) {
+                    if (log.isDebugEnabled()) {
+                        log.debug(
+                                "[{}] Failed mark delete due to invalid markDelete {} is ahead of last-confirmed-entry {} for cursor [{}]",
+                                ledger.getName(), last, lastConfirmedEntry, name);
+                    }
+                    callback.deleteFailed(new ManagedLedgerException("Invalid mark deleted position"), ctx);
+                    return;
+                } else if (last.getLedgerId() < lastConfirmedEntry.getLedgerId()) {
+                    // The range is supplied by the client, do not let it extend past the end of a previous ledger
+                    LedgerInfo ledgerInfo = ledger.getLedgersInfo().get(last.getLedgerId());
+                    if (ledgerInfo == null) {
+                        continue;
+                    } else if (last.getEntryId() >= ledgerInfo.getEntries()) {
+                        last = PositionImpl.get(last.getLedgerId(), ledgerInfo.getEntries() - 1);
+                        if (first.compareTo(last) > 0) {
+                            continue;
+                        }
+                    }
                 }
 
-                newMarkDeletePosition = range.upperEndpoint();
+                if (last.compareTo(markDeletePosition) <= 0) {
+                    continue;
+                } else if (first.compareTo(markDeletePosition) <= 0) {
+                    // The mark-delete position is in the middle of the range
+                    first = PositionImpl.get(last.getLedgerId(), markDeletePosition.getEntryId() + 1);
+                }
+                validRanges[validRangesCount++] = first;
+                validRanges[validRangesCount++] = last;
             }
 
-            if (newMarkDeletePosition != null) {
-                newMarkDeletePosition = setAcknowledgedPosition(newMarkDeletePosition);
-            } else {
-                newMarkDeletePosition = markDeletePosition;
+            for (int i = 0; i < validRangesCount; i += 2) {
+                PositionImpl first = validRanges[i];
+                PositionImpl last = validRanges[i + 1];
+                long deletedEntries = last.getEntryId() - first.getEntryId() + 1
+                        - individualDeletedMessages.cardinality(first.getLedgerId(), first.getEntryId(),
+                                last.getEntryId());
+                if (deletedEntries == 0) {
+                    continue;
+                }
+
+                if (!batchDeletedIndexes.isEmpty()) {
+                    batchDeletedIndexes.subMap(first, true, last, true).clear();
+                }
+
+                PositionImpl previousPosition = ledger.getPreviousPosition(first);
+                individualDeletedMessages.addOpenClosed(previousPosition.getLedgerId(), previousPosition.getEntryId(),
+                        last.getLedgerId(), last.getEntryId());
+                ++individualDeletedMessagesVersion;
+                messagesConsumedCounter += deletedEntries;
+            }
+
+            if (log.isDebugEnabled()) {
+                log.debug("[{}] [{}] Individually deleted messages: {}", ledger.getName(), name,
+                        individualDeletedMessages);
+            }
+
+            if (individualDeletedMessages.isEmpty()) {
+                // No changes to individually deleted messages, so nothing to do at this point
+                callback.deleteComplete(ctx);
+                return;
             }
+
+            newMarkDeletePosition = advanceMarkDeletePositionAfterIndividualDeletes();
         } catch (Exception e) {
             log.warn("[{}] [{}] Error while updating individualDeletedMessages [{}]", ledger.getName(), name,
                     e.getMessage(), e);
@@ -1635,6 +1887,43 @@ public class ManagedCursorImpl implements ManagedCursor {
             lock.writeLock().unlock();
         }
 
+        markDeleteAfterIndividualDeletes(newMarkDeletePosition, callback, ctx);
+    }
+
+    /**
+     * Moves the acknowledged position to the end of the first range of individually deleted messages, if there are no
+     * entries between the mark-delete position and that range. Must be called while holding the write lock.
+     *
+     * @return the position to mark-delete
+     */
+    private PositionImpl advanceMarkDeletePositionAfterIndividualDeletes() {
+        PositionImpl newMarkDeletePosition = null;
+
+        // If the lower bound of the range set is the current mark delete position, then we can trigger a new
+        // mark-delete to the upper bound of the first range segment
+        Range<PositionImpl> range = individualDeletedMessages.firstRange();
+
+        // If the lowerBound is ahead of MarkDelete, verify if there are any entries in-between
+        if (range.lowerEndpoint().compareTo(markDeletePosition) <= 0 || ledger
+                .getNumberOfEntries(Range.openClosed(markDeletePosition, range.lowerEndpoint())) <= 0) {
+
+            if (log.isDebugEnabled()) {
+                log.debug("[{}] Found a position range to mark delete for cursor {}: {} ", ledger.getName(),
+                        name, range);
+            }
+
+            newMarkDeletePosition = range.upperEndpoint();
+        }
+
+        if (newMarkDeletePosition != null) {
+            return setAcknowledgedPosition(newMarkDeletePosition);
+        } else {
+            return markDeletePosition;
+        }
+    }
+
+    private void markDeleteAfterIndividualDeletes(PositionImpl newMarkDeletePosition,
+            AsyncCallbacks.DeleteCallback callback, Object ctx) {
         // Apply rate limiting to mark-delete operations
         if (markDeleteLimiter != null && !markDeleteLimiter.tryAcquire()) {
             lastMarkDeleteEntry = new MarkDeleteEntry(newMarkDeletePosition, Collections.emptyMap(), null, null);
@@ -1666,6 +1955,68 @@ public class ManagedCursorImpl implements ManagedCursor {
         }
     }
 
+    @Override
+    public void asyncDeleteBatchIndexes(Position pos, long[] ackSet, AsyncCallbacks.DeleteCallback callback,
+            Object ctx) {
+        if (state == State.Closed) {
+            callback.deleteFailed(new ManagedLedgerException("Cursor was already closed"), ctx);
+            return;
+        }
+
+        PositionImpl position = (PositionImpl) checkNotNull(pos);
+        BitSet notDeletedIndexes = BitSet.valueOf(checkNotNull(ackSet));
+        if (notDeletedIndexes.isEmpty()) {
+            // All the messages of the batch are now deleted
+            asyncDelete(position, callback, ctx);
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (isMessageDeleted(position) || position.compareTo(markDeletePosition) <= 0) {
+                if (log.isDebugEnabled()) {
+                    log.debug("[{}] [{}] Position was already deleted {}", ledger.getName(), name, position);
+                }
+            } else {
+                BitSet current = batchDeletedIndexes.get(position);
+                if (current != null) {
+                    notDeletedIndexes.and(current);
+                }
+                if (!notDeletedIndexes.isEmpty()) {
+                    batchDeletedIndexes.put(position, notDeletedIndexes);
+                    if (log.isDebugEnabled()) {
+                        log.debug("[{}] [{}] Messages not deleted yet in batch {}: {}", ledger.getName(), name,
+                                position, notDeletedIndexes);
+                    }
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        if (notDeletedIndexes.isEmpty()) {
+            asyncDelete(position, callback, ctx);
+        } else {
+            callback.deleteComplete(ctx);
+        }
+    }
+
+    @Override
+    public long[] getBatchIndexesAckSet(Position position) {
+        // Checked without the lock on the dispatch path, a concurrent batch index ack can be missed as it would be
+        // if it arrived right after this call
+        if (batchDeletedIndexes.isEmpty()) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            BitSet notDeletedIndexes = batchDeletedIndexes.get(position);
+            return notDeletedIndexes != null ? notDeletedIndexes.toLongArray() : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
     /**
      * Given a list of entries, filter out the entries that have already been individually deleted.
      *
@@ -1692,7 +2043,7 @@ public class ManagedCursorImpl implements ManagedCursor {
             } else {
                 // Remove from the entry list all the entries that were already marked for deletion
                 return Lists.newArrayList(Collections2.filter(entries, entry -> {
-                    boolean includeEntry = !individualDeletedMessages.contains((PositionImpl) entry.getPosition());
+                    boolean includeEntry = !isMessageDeleted(entry.getPosition());
                     if (!includeEntry) {
                         if (log.isDebugEnabled()) {
                             log.debug("[{}] [{}] Filtering entry at {} - already deleted", ledger.getName(), name,
@@ -1826,7 +2177,10 @@ public class ManagedCursorImpl implements ManagedCursor {
     private void persistPosition(long cursorsLedgerId, PositionImpl position, Map<String, Long> properties,
             final AsyncCallbacks.CloseCallback callback, final Object ctx) {
 
-        if (shouldPersistUnackRangesToLedger()) {
+        if (shouldPersistUnackRangesToLedger() && sharedCursorsLedgerStore != null) {
+            persistPositionToSharedCursorsLedgerOnClose(new MarkDeleteEntry(position, properties, null, null),
+                    callback, ctx);
+        } else if (shouldPersistUnackRangesToLedger()) {
             persistPositionToLedger(cursorLedger, new MarkDeleteEntry(position, properties, null, null),
                     new VoidCallback() {
                         @Override
@@ -1851,6 +2205,7 @@ public class ManagedCursorImpl implements ManagedCursor {
                     // At this point the position had already been safely stored in the cursor z-node
                     callback.closeComplete(ctx);
                     asyncDeleteLedger(cursorLedger);
+                    releaseSharedCursorsLedger();
                 }
 
                 @Override
@@ -1863,9 +2218,39 @@ public class ManagedCursorImpl implements ManagedCursor {
         }
     }
 
+    private void persistPositionToSharedCursorsLedgerOnClose(MarkDeleteEntry mdEntry,
+            final AsyncCallbacks.CloseCallback callback, final Object ctx) {
+        sharedCursorsLedgerStore.persistPosition(this, buildPositionInfo(mdEntry)).whenComplete((ledgerId, ex) -> {
+            sharedCursorsLedgerStore.removeCursor(this);
+            if (ex != null) {
+                log.warn("[{}][{}] Failed to persist mark-delete position into shared cursors ledger: {}",
+                        ledger.getName(), name, ex.getMessage());
+                sharedCursorsLedgerStore.closeCursor(this);
+                callback.closeFailed(SharedCursorsLedgerStore.toManagedLedgerException(ex), ctx);
+                return;
+            }
+
+            switchToSharedCursorsLedger(ledgerId, new VoidCallback() {
+                @Override
+                public void operationComplete() {
+                    log.info("[{}][{}] Updated md-position={} into shared cursors ledger {}", ledger.getName(), name,
+                            markDeletePosition, ledgerId);
+                    sharedCursorsLedgerStore.closeCursor(ManagedCursorImpl.this);
+                    callback.closeComplete(ctx);
+                }
+
+                @Override
+                public void operationFailed(ManagedLedgerException e) {
+                    sharedCursorsLedgerStore.closeCursor(ManagedCursorImpl.this);
+                    callback.closeFailed(e, ctx);
+                }
+            });
+        });
+    }
+
     private boolean shouldPersistUnackRangesToLedger() {
-        return cursorLedger != null && config.getMaxUnackedRangesToPersist() > 0
-                && individualDeletedMessages.asRanges().size() > config.getMaxUnackedRangesToPersistInZk();
+        return (cursorLedger != null || sharedCursorsLedgerStore != null) && config.getMaxUnackedRangesToPersist() > 0
+                && individualDeletedMessages.size() > config.getMaxUnackedRangesToPersistInZk();
     }
 
     private void persistPositionMetaStore(long cursorsLedgerId, PositionImpl position, Map<String, Long> properties,
@@ -1876,11 +2261,13 @@ public class ManagedCursorImpl implements ManagedCursor {
                 .setCursorsLedgerId(cursorsLedgerId) //
                 .setMarkDeleteLedgerId(position.getLedgerId()) //
                 .setMarkDeleteEntryId(position.getEntryId()) //
-                .setLastActive(lastActive); //
+                .setLastActive(lastActive) //
+                .setSharedCursorsLedger(cursorsLedgerId != -1 && sharedCursorsLedgerStore != null); //
 
         info.addAllProperties(buildPropertiesMap(properties));
         if (persistIndividualDeletedMessageRanges) {
             info.addAllIndividualDeletedMessages(buildIndividualDeletedMessageRanges());
+            info.addAllBatchedEntryDeletionIndexInfo(buildBatchDeletedIndexInfoList());
         }
 
         if (log.isDebugEnabled()) {
@@ -1910,7 +2297,25 @@ public class ManagedCursorImpl implements ManagedCursor {
             callback.closeComplete(ctx);
             return;
         }
-        persistPosition(-1, lastMarkDeleteEntry.newPosition, lastMarkDeleteEntry.properties, callback, ctx);
+        clearReadAhead();
+
+        // The cursor z-node can only be updated once the pending switch to a new shared ledger is done
+        CompletableFuture<Void> pendingSwitch = sharedCursorsLedgerSwitch.get();
+        if (pendingSwitch != null) {
+            pendingSwitch.thenRun(() -> persistPosition(-1, lastMarkDeleteEntry.newPosition,
+                    lastMarkDeleteEntry.properties, callback, ctx));
+        } else {
+            persistPosition(-1, lastMarkDeleteEntry.newPosition, lastMarkDeleteEntry.properties, callback, ctx);
+        }
+    }
+
+    /**
+     * Release the entries prefetched for this cursor, if any.
+     */
+    void clearReadAhead() {
+        if (readAhead != null) {
+            readAhead.clear();
+        }
     }
 
     /**
@@ -1985,6 +2390,11 @@ public class ManagedCursorImpl implements ManagedCursor {
     }
 
     void createNewMetadataLedger(final VoidCallback callback) {
+        if (sharedCursorsLedgerStore != null) {
+            createNewSharedCursorsLedgerPosition(callback);
+            return;
+        }
+
         ledger.mbean.startCursorLedgerCreateOp();
 
         ledger.asyncCreateLedger(bookkeeper, config, digestType, (rc, lh, ctx) -> {
@@ -2080,30 +2490,283 @@ public class ManagedCursorImpl implements ManagedCursor {
             MLDataFormats.NestedPositionInfo.Builder nestedPositionBuilder = MLDataFormats.NestedPositionInfo
                     .newBuilder();
             MLDataFormats.MessageRange.Builder messageRangeBuilder = MLDataFormats.MessageRange.newBuilder();
-            return individualDeletedMessages.asRanges().stream().limit(config.getMaxUnackedRangesToPersist())
-                    .map(positionRange -> {
-                        PositionImpl p = positionRange.lowerEndpoint();
-                        nestedPositionBuilder.setLedgerId(p.getLedgerId());
-                        nestedPositionBuilder.setEntryId(p.getEntryId());
-                        messageRangeBuilder.setLowerEndpoint(nestedPositionBuilder.build());
-                        p = positionRange.upperEndpoint();
-                        nestedPositionBuilder.setLedgerId(p.getLedgerId());
-                        nestedPositionBuilder.setEntryId(p.getEntryId());
-                        messageRangeBuilder.setUpperEndpoint(nestedPositionBuilder.build());
-                        return messageRangeBuilder.build();
-                    }).collect(Collectors.toList());
+            int maxRangesToPersist = config.getMaxUnackedRangesToPersist();
+            if (maxRangesToPersist <= 0) {
+                return Collections.emptyList();
+            }
+
+            List<MLDataFormats.MessageRange> ranges = Lists.newArrayList();
+            individualDeletedMessages.forEach((lowerKey, lowerValue, upperKey, upperValue) -> {
+                nestedPositionBuilder.setLedgerId(lowerKey);
+                nestedPositionBuilder.setEntryId(lowerValue);
+                messageRangeBuilder.setLowerEndpoint(nestedPositionBuilder.build());
+                nestedPositionBuilder.setLedgerId(upperKey);
+                nestedPositionBuilder.setEntryId(upperValue);
+                messageRangeBuilder.setUpperEndpoint(nestedPositionBuilder.build());
+                ranges.add(messageRangeBuilder.build());
+                return ranges.size() < maxRangesToPersist;
+            });
+            return ranges;
         } finally {
             lock.readLock().unlock();
         }
     }
 
-    void persistPositionToLedger(final LedgerHandle lh, MarkDeleteEntry mdEntry, final VoidCallback callback) {
+    private List<BatchedEntryDeletionIndexInfo> buildBatchDeletedIndexInfoList() {
+        lock.readLock().lock();
+        try {
+            int maxBatchesToPersist = config.getMaxUnackedRangesToPersist();
+            if (batchDeletedIndexes.isEmpty() || maxBatchesToPersist <= 0) {
+                return Collections.emptyList();
+            }
+
+            MLDataFormats.NestedPositionInfo.Builder nestedPositionBuilder = MLDataFormats.NestedPositionInfo
+                    .newBuilder();
+            BatchedEntryDeletionIndexInfo.Builder batchDeletedIndexInfoBuilder = BatchedEntryDeletionIndexInfo
+                    .newBuilder();
+            List<BatchedEntryDeletionIndexInfo> result = Lists.newArrayList();
+            for (Map.Entry<PositionImpl, BitSet> e : batchDeletedIndexes.entrySet()) {
+                nestedPositionBuilder.setLedgerId(e.getKey().getLedgerId());
+                nestedPositionBuilder.setEntryId(e.getKey().getEntryId());
+                batchDeletedIndexInfoBuilder.clear().setPosition(nestedPositionBuilder.build())
+                        .addAllAckSet(Longs.asList(e.getValue().toLongArray()));
+                result.add(batchDeletedIndexInfoBuilder.build());
+                if (result.size() >= maxBatchesToPersist) {
+                    break;
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Build the bitmaps of all the individually deleted messages, one per ledger. Unlike the list of ranges, the size
+     * of the bitmaps is not proportional to the number of "acknowledgment holes" but to the distance between the
+     * mark-delete position and the last deleted message.
+     *
+     * <p>The bitmaps are only rebuilt when the individually deleted messages changed since the last call.
+     *
+     * @return the bitmaps, or an empty list if they would exceed {@link #MaxIndividualDeletedMessagesBitmapSize}
+     */
+    List<DeletedEntriesBitmap> buildIndividualDeletedMessageBitmaps() {
+        Map<Long, BitSet> deletedEntries = new TreeMap<>();
+        long version;
+        lock.readLock().lock();
+        try {
+            version = individualDeletedMessagesVersion;
+            IndividualDeletedMessagesBitmaps lastBitmaps = lastIndividualDeletedMessagesBitmaps;
+            if (lastBitmaps != null && lastBitmaps.version == version) {
+                return lastBitmaps.bitmaps;
+            }
+            individualDeletedMessages.forEach((lowerKey, lowerValue, upperKey, upperValue) -> {
+                long firstEntry = lowerValue + 1;
+                if (lowerKey != upperKey) {
+                    // The range spans multiple ledgers, mark everything after the lower end in the ledgers before the
+                    // upper one, since the ranges are connected across ledgers
+                    for (LedgerInfo li : ledger.ledgers.subMap(lowerKey, true, upperKey, false).values()) {
+                        long first = li.getLedgerId() == lowerKey ? lowerValue + 1 : 0;
+                        setDeletedEntries(deletedEntries, li.getLedgerId(), first, li.getEntries() - 1);
+                    }
+                    firstEntry = 0;
+                }
+                setDeletedEntries(deletedEntries, upperKey, firstEntry, upperValue);
+                return true;
+            });
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<DeletedEntriesBitmap> bitmaps = Lists.newArrayListWithExpectedSize(deletedEntries.size());
+        DeletedEntriesBitmap.Builder bitmapBuilder = DeletedEntriesBitmap.newBuilder();
+        long serializedSize = 0;
+        for (Map.Entry<Long, BitSet> e : deletedEntries.entrySet()) {
+            bitmapBuilder.clear().setLedgerId(e.getKey()).addAllWords(Longs.asList(e.getValue().toLongArray()));
+            DeletedEntriesBitmap bitmap = bitmapBuilder.build();
+            serializedSize += bitmap.getSerializedSize();
+            if (serializedSize > MaxIndividualDeletedMessagesBitmapSize) {
+                log.warn("[{}] [{}] Individually deleted messages are too fragmented to be persisted as bitmap",
+                        ledger.getName(), name);
+                bitmaps = Collections.emptyList();
+                break;
+            }
+            bitmaps.add(bitmap);
+        }
+        lastIndividualDeletedMessagesBitmaps = new IndividualDeletedMessagesBitmaps(version, bitmaps);
+        return bitmaps;
+    }
+
+    private static class IndividualDeletedMessagesBitmaps {
+        final long version;
+        final List<DeletedEntriesBitmap> bitmaps;
+
+        IndividualDeletedMessagesBitmaps(long version, List<DeletedEntriesBitmap> bitmaps) {
+            this.version = version;
+            this.bitmaps = bitmaps;
+        }
+    }
+
+    // Must be called with the write lock
+    private void removeIndividualDeletedMessagesAtMost(PositionImpl position) {
+        Range<PositionImpl> firstRange = individualDeletedMessages.firstRange();
+        if (firstRange != null && firstRange.lowerEndpoint().compareTo(position) < 0) {
+            individualDeletedMessages.removeAtMost(position.getLedgerId(), position.getEntryId());
+            ++individualDeletedMessagesVersion;
+        }
+    }
+
+    private static void setDeletedEntries(Map<Long, BitSet> deletedEntries, long ledgerId, long firstEntry,
+            long lastEntry) {
+        if (firstEntry > lastEntry || firstEntry < 0 || lastEntry >= Integer.MAX_VALUE) {
+            return;
+        }
+        deletedEntries.computeIfAbsent(ledgerId, k -> new BitSet()).set((int) firstEntry, (int) lastEntry + 1);
+    }
+
+    /**
+     * Start persisting the position of the cursor in the shared cursors ledger, instead of in its own ledger, and
+     * point the cursor z-node to the shared ledger.
+     */
+    private void createNewSharedCursorsLedgerPosition(final VoidCallback callback) {
+        MarkDeleteEntry mdEntry = lastMarkDeleteEntry;
+        sharedCursorsLedgerStore.persistPosition(this, buildPositionInfo(mdEntry)).whenComplete((ledgerId, ex) -> {
+            if (ex != null) {
+                log.warn("[{}] Error persisting position of cursor {} in shared cursors ledger: {}", ledger.getName(),
+                        name, ex.getMessage());
+                callback.operationFailed(SharedCursorsLedgerStore.toManagedLedgerException(ex));
+                return;
+            }
+
+            if (log.isDebugEnabled()) {
+                log.debug("[{}] Persisted position {} for cursor {} in shared cursors ledger {}", ledger.getName(),
+                        mdEntry.newPosition, name, ledgerId);
+            }
+            switchToSharedCursorsLedger(ledgerId, callback);
+        });
+    }
+
+    /**
+     * Called by the shared cursors ledger store once the position of the cursor was written in a shared ledger. If the
+     * cursor z-node refers to an older ledger, it's updated to point to the new one.
+     */
+    void sharedCursorsLedgerPersisted(long ledgerId) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        if (ledgerId == sharedCursorsLedgerId || STATE_UPDATER.get(this) != State.Open
+                || !sharedCursorsLedgerSwitch.compareAndSet(null, future)) {
+            return;
+        }
+
+        // Checked again, since the close doesn't wait for a switch started after it
+        if (STATE_UPDATER.get(this) != State.Open) {
+            sharedCursorsLedgerSwitch.set(null);
+            future.complete(null);
+            return;
+        }
+
+        switchToSharedCursorsLedger(ledgerId, new VoidCallback() {
+            @Override
+            public void operationComplete() {
+                sharedCursorsLedgerSwitch.set(null);
+                future.complete(null);
+            }
+
+            @Override
+            public void operationFailed(ManagedLedgerException exception) {
+                sharedCursorsLedgerSwitch.set(null);
+                future.complete(null);
+            }
+        });
+    }
+
+    private void switchToSharedCursorsLedger(long ledgerId, final VoidCallback callback) {
+        if (log.isDebugEnabled()) {
+            log.debug("[{}] Switching cursor {} to shared cursors ledger {}", ledger.getName(), name, ledgerId);
+        }
+        persistPositionMetaStore(ledgerId, lastMarkDeleteEntry.newPosition, lastMarkDeleteEntry.properties,
+                new MetaStoreCallback<Void>() {
+            @Override
+            public void operationComplete(Void result, Stat stat) {
+                log.info("[{}] Updated cursor {} with shared cursors ledger id {} md-position={} rd-position={}",
+                        ledger.getName(), name, ledgerId, markDeletePosition, readPosition);
+                final LedgerHandle oldLedger = cursorLedger;
+                cursorLedger = null;
+                sharedCursorsLedgerId = ledgerId;
+                sharedCursorsLedgerStore.setCursorLedger(ManagedCursorImpl.this, ledgerId);
+
+                callback.operationComplete();
+
+                // The ledger the cursor was recovered from is not needed any more
+                asyncDeleteLedger(oldLedger);
+            }
+
+            @Override
+            public void operationFailed(MetaStoreException e) {
+                log.warn("[{}] Failed to update consumer {}", ledger.getName(), name, e);
+                callback.operationFailed(e);
+            }
+        }, false);
+    }
+
+    private void releaseSharedCursorsLedger() {
+        if (sharedCursorsLedgerStore != null) {
+            sharedCursorsLedgerStore.removeCursor(this);
+            sharedCursorsLedgerStore.setCursorLedger(this, -1);
+            sharedCursorsLedgerId = -1;
+        }
+    }
+
+    private void persistPositionToSharedCursorsLedger(MarkDeleteEntry mdEntry, final VoidCallback callback) {
+        PositionImpl position = mdEntry.newPosition;
+        sharedCursorsLedgerStore.persistPosition(this, buildPositionInfo(mdEntry)).whenComplete((ledgerId, ex) -> {
+            if (ex == null) {
+                if (log.isDebugEnabled()) {
+                    log.debug("[{}] Updated cursor {} position {} in shared cursors ledger {}", ledger.getName(),
+                            name, position, ledgerId);
+                }
+                callback.operationComplete();
+                return;
+            }
+
+            log.warn("[{}] Error updating cursor {} position {} in shared cursors ledger: {}", ledger.getName(), name,
+                    position, ex.getMessage());
+            // A new shared ledger will be used once the cursor has moved out of the NoLedger state
+            STATE_UPDATER.compareAndSet(ManagedCursorImpl.this, State.Open, State.NoLedger);
+            persistPositionMetaStoreAfterLedgerFailure(mdEntry, SharedCursorsLedgerStore.toManagedLedgerException(ex),
+                    callback);
+        });
+    }
+
+    private PositionInfo buildPositionInfo(MarkDeleteEntry mdEntry) {
         PositionImpl position = mdEntry.newPosition;
-        PositionInfo pi = PositionInfo.newBuilder().setLedgerId(position.getLedgerId())
+        PositionInfo.Builder piBuilder = PositionInfo.newBuilder().setLedgerId(position.getLedgerId())
                 .setEntryId(position.getEntryId())
-                .addAllIndividualDeletedMessages(buildIndividualDeletedMessageRanges())
-                .addAllProperties(buildPropertiesMap(mdEntry.properties)).build();
+                .addAllProperties(buildPropertiesMap(mdEntry.properties));
+        if (config.getMaxUnackedRangesToPersist() > 0
+                && getTotalNonContiguousDeletedMessagesRange() > config.getMaxUnackedRangesToPersist()) {
+            // Too many ranges to persist them individually, store the complete state as bitmaps so that no
+            // acknowledged message is redelivered after a recovery
+            List<DeletedEntriesBitmap> bitmaps = buildIndividualDeletedMessageBitmaps();
+            if (bitmaps.isEmpty()) {
+                piBuilder.addAllIndividualDeletedMessages(buildIndividualDeletedMessageRanges());
+            } else {
+                piBuilder.addAllIndividualDeletedMessagesBitmap(bitmaps);
+            }
+        } else {
+            piBuilder.addAllIndividualDeletedMessages(buildIndividualDeletedMessageRanges());
+        }
+        piBuilder.addAllBatchedEntryDeletionIndexInfo(buildBatchDeletedIndexInfoList());
+        return piBuilder.build();
+    }
 
+    void persistPositionToLedger(final LedgerHandle lh, MarkDeleteEntry mdEntry, final VoidCallback callback) {
+        if (sharedCursorsLedgerStore != null) {
+            persistPositionToSharedCursorsLedger(mdEntry, callback);
+            return;
+        }
+
+        PositionImpl position = mdEntry.newPosition;
+        PositionInfo pi = buildPositionInfo(mdEntry);
 
         if (log.isDebugEnabled()) {
             log.debug("[{}] Cursor {} Appending to ledger={} position={}", ledger.getName(), name, lh.getId(),
@@ -2133,29 +2796,38 @@ public class ManagedCursorImpl implements ManagedCursor {
                 // in the meantime the mark-delete will be queued.
                 STATE_UPDATER.compareAndSet(ManagedCursorImpl.this, State.Open, State.NoLedger);
 
-                // Before giving up, try to persist the position in the metadata store
-                persistPositionMetaStore(-1, position, mdEntry.properties, new MetaStoreCallback<Void>() {
-                    @Override
-                    public void operationComplete(Void result, Stat stat) {
-                        if (log.isDebugEnabled()) {
-                            log.debug(
-                                    "[{}][{}] Updated cursor in meta store after previous failure in ledger at position {}",
-                                    ledger.getName(), name, position);
-                        }
-                        callback.operationComplete();
-                    }
-
-                    @Override
-                    public void operationFailed(MetaStoreException e) {
-                        log.warn("[{}][{}] Failed to update cursor in meta store after previous failure in ledger: {}",
-                                ledger.getName(), name, e.getMessage());
-                        callback.operationFailed(createManagedLedgerException(rc));
-                    }
-                }, true);
+                persistPositionMetaStoreAfterLedgerFailure(mdEntry, createManagedLedgerException(rc), callback);
             }
         }, null);
     }
 
+    private void persistPositionMetaStoreAfterLedgerFailure(MarkDeleteEntry mdEntry,
+            ManagedLedgerException ledgerException, final VoidCallback callback) {
+        PositionImpl position = mdEntry.newPosition;
+        // Before giving up, try to persist the position in the metadata store
+        persistPositionMetaStore(-1, position, mdEntry.properties, new MetaStoreCallback<Void>() {
+            @Override
+            public void operationComplete(Void result, Stat stat) {
+                if (log.isDebugEnabled()) {
+                    log.debug("[{}][{}] Updated cursor in meta store after previous failure in ledger at position {}",
+                            ledger.getName(), name, position);
+                }
+                if (sharedCursorsLedgerStore != null) {
+                    sharedCursorsLedgerStore.setCursorLedger(ManagedCursorImpl.this, -1);
+                    sharedCursorsLedgerId = -1;
+                }
+                callback.operationComplete();
+            }
+
+            @Override
+            public void operationFailed(MetaStoreException e) {
+                log.warn("[{}][{}] Failed to update cursor in meta store after previous failure in ledger: {}",
+                        ledger.getName(), name, e.getMessage());
+                callback.operationFailed(ledgerException);
+            }
+        }, true);
+    }
+
     boolean shouldCloseLedger(LedgerHandle lh) {
         long now = clock.millis();
         if ((lh.getLastAddConfirmed() >= config.getMetadataMaxEntriesPerLedger()
@@ -2307,6 +2979,7 @@ public class ManagedCursorImpl implements ManagedCursor {
 
     private void asyncDeleteCursorLedger(int retry) {
         STATE_UPDATER.set(this, State.Closed);
+        releaseSharedCursorsLedger();
 
         if (cursorLedger == null || retry <= 0) {
             if (cursorLedger != null) {
@@ -2379,7 +3052,7 @@ public class ManagedCursorImpl implements ManagedCursor {
 
     public long getCursorLedger() {
         LedgerHandle lh = cursorLedger;
-        return lh != null ? lh.getId() : -1;
+        return lh != null ? lh.getId() : sharedCursorsLedgerId;
     }
 
     public long getCursorLedgerLastEntry() {
@@ -2404,7 +3077,13 @@ public class ManagedCursorImpl implements ManagedCursor {
      * @return next available position
      */
     public PositionImpl getNextAvailablePosition(PositionImpl position) {
-        Range<PositionImpl> range = individualDeletedMessages.rangeContaining(position);
+        Range<PositionImpl> range;
+        lock.readLock().lock();
+        try {
+            range = individualDeletedMessages.rangeContaining(position.getLedgerId(), position.getEntryId());
+        } finally {
+            lock.readLock().unlock();
+        }
         if (range != null) {
             PositionImpl nextPosition = range.upperEndpoint().getNext();
             return (nextPosition != null && nextPosition.compareTo(position) > 0) ? nextPosition : position.getNext();
@@ -2417,6 +3096,24 @@ public class ManagedCursorImpl implements ManagedCursor {
         return nextExistingLedger != null ? PositionImpl.get(nextExistingLedger, 0) : null;
     }
 
+    /**
+     * Checks whether the given position has been individually deleted, ie: it is part of the acknowledged ranges
+     * after the mark-delete position.
+     *
+     * @param position
+     * @return true if the position was individually deleted
+     */
+    public boolean isMessageDeleted(Position position) {
+        checkArgument(position instanceof PositionImpl);
+        PositionImpl pos = (PositionImpl) position;
+        lock.readLock().lock();
+        try {
+            return individualDeletedMessages.contains(pos.getLedgerId(), pos.getEntryId());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
     public boolean isIndividuallyDeletedEntriesEmpty() {
         lock.readLock().lock();
         try {
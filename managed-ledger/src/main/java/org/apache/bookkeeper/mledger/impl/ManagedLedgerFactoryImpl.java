@@ -86,6 +86,7 @@ public class ManagedLedgerFactoryImpl implements ManagedLedgerFactory {
 
     protected final ConcurrentHashMap<String, CompletableFuture<ManagedLedgerImpl>> ledgers = new ConcurrentHashMap<>();
     private final EntryCacheManager entryCacheManager;
+    private final SharedCursorsLedgerStore sharedCursorsLedgerStore;
 
     private long lastStatTimestamp = System.nanoTime();
     private final ScheduledFuture<?> statsTask;
@@ -138,6 +139,9 @@ public class ManagedLedgerFactoryImpl implements ManagedLedgerFactory {
         this.config = config;
         this.mbean = new ManagedLedgerFactoryMBeanImpl(this);
         this.entryCacheManager = new EntryCacheManager(this);
+        this.sharedCursorsLedgerStore = config.isSharedCursorsLedgerEnabled()
+                ? new SharedCursorsLedgerStore(bookKeeper, zooKeeper, store, config, scheduledExecutor)
+                : null;
         this.statsTask = scheduledExecutor.scheduleAtFixedRate(() -> refreshStats(), 0, StatsPeriodSeconds, TimeUnit.SECONDS);
     }
 
@@ -352,6 +356,10 @@ public class ManagedLedgerFactoryImpl implements ManagedLedgerFactory {
         latch.await();
         log.info("{} ledgers closed", numLedgers);
 
+        if (sharedCursorsLedgerStore != null) {
+            sharedCursorsLedgerStore.close().join();
+        }
+
         if (zookeeper != null) {
             zookeeper.close();
         }
@@ -523,6 +531,10 @@ public class ManagedLedgerFactoryImpl implements ManagedLedgerFactory {
         return entryCacheManager;
     }
 
+    SharedCursorsLedgerStore getSharedCursorsLedgerStore() {
+        return sharedCursorsLedgerStore;
+    }
+
     public ManagedLedgerFactoryMXBean getCacheStats() {
         return this.mbean;
     }
@@ -160,6 +160,9 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
 
     final EntryCache entryCache;
 
+    // Cache admission decision for the next added entries, reset when the active cursors change
+    volatile EntryCacheCursorDistanceAdmissionPolicy.AddedEntriesAdmission addedEntriesAdmission = null;
+
     /**
      * This lock is held while the ledgers list is updated asynchronously on the metadata store. Since we use the store
      * version, we cannot have multiple concurrent updates.
@@ -171,8 +174,9 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
     private final static CompletableFuture<PositionImpl> NULL_OFFLOAD_PROMISE
         = CompletableFuture.completedFuture(PositionImpl.latest);
     private volatile LedgerHandle currentLedger;
-    private long currentLedgerEntries = 0;
-    private long currentLedgerSize = 0;
+    // Only updated in the ordered executor thread of the managed ledger
+    private volatile long currentLedgerEntries = 0;
+    private volatile long currentLedgerSize = 0;
     private long lastLedgerCreatedTimestamp = 0;
     private long lastLedgerCreationFailureTimestamp = 0;
     private long lastLedgerCreationInitiationTimestamp = 0;
@@ -529,26 +533,33 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
         OpAddEntry addOperation = OpAddEntry.create(this, buffer, callback, ctx);
 
         // Jump to specific thread to avoid contention from writers writing from different threads
-        executor.executeOrdered(name, safeRun(() -> {
-            pendingAddEntries.add(addOperation);
-
-            internalAsyncAddEntry(addOperation);
-        }));
+        executor.executeOrdered(name, safeRun(() -> internalAsyncAddEntry(addOperation)));
     }
 
-    private synchronized void internalAsyncAddEntry(OpAddEntry addOperation) {
+    /**
+     * Process a new add operation. It is always executed in the ordered executor thread of the managed ledger, like
+     * all the transitions that change the current ledger (ledger created, ledger closed, pending operations resent), so
+     * it doesn't need to take the managed ledger lock. When the managed ledger is closed, fenced or terminated from
+     * another thread, the queued operations are failed by the next transition on this thread (see
+     * {@link #failPendingAddEntriesIfNotWritable()}), and the operations already sent fail on the closed ledger.
+     */
+    private void internalAsyncAddEntry(OpAddEntry addOperation) {
         final State state = STATE_UPDATER.get(this);
-        if (state == State.Fenced) {
-            addOperation.failed(new ManagedLedgerFencedException());
-            return;
-        } else if (state == State.Terminated) {
-            addOperation.failed(new ManagedLedgerTerminatedException("Managed ledger was already terminated"));
+        ManagedLedgerException notWritable = getNotWritableException(state);
+        if (notWritable != null) {
+            addOperation.failed(notWritable);
             return;
-        } else if (state == State.Closed) {
-            addOperation.failed(new ManagedLedgerAlreadyClosedException("Managed ledger was already closed"));
+        }
+
+        if (state == State.ClosedLedger
+                && clock.millis() < lastLedgerCreationFailureTimestamp + WaitTimeAfterLedgerCreationFailureMs) {
+            // Deny the write request, since we haven't waited enough time since last attempt to create a new ledger
+            addOperation.failed(new ManagedLedgerException("Waiting for new ledger creation to complete"));
             return;
         }
 
+        pendingAddEntries.add(addOperation);
+
         if (state == State.ClosingLedger || state == State.CreatingLedger) {
             // We don't have a ready ledger to write into
             // We are waiting for a new ledger to be created
@@ -556,14 +567,6 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
                 log.debug("[{}] Queue addEntry request", name);
             }
         } else if (state == State.ClosedLedger) {
-            long now = clock.millis();
-            if (now < lastLedgerCreationFailureTimestamp + WaitTimeAfterLedgerCreationFailureMs) {
-                // Deny the write request, since we haven't waited enough time since last attempt to create a new ledger
-                pendingAddEntries.remove(addOperation);
-                addOperation.failed(new ManagedLedgerException("Waiting for new ledger creation to complete"));
-                return;
-            }
-
             // No ledger and no pending operations. Create a new ledger
             if (log.isDebugEnabled()) {
                 log.debug("[{}] Creating a new ledger", name);
@@ -724,6 +727,7 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
             public void operationComplete(Void result, Stat stat) {
                 cursor.asyncDeleteCursorLedger();
                 cursors.removeCursor(consumerName);
+                cursor.clearReadAhead();
 
                 // Redo invalidation of entries in cache
                 PositionImpl slowestConsumerPosition = cursors.getSlowestReaderPosition();
@@ -1156,7 +1160,7 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
     // Callbacks
 
     @Override
-    public synchronized void createComplete(int rc, final LedgerHandle lh, Object ctx) {
+    public void createComplete(int rc, final LedgerHandle lh, Object ctx) {
         if (log.isDebugEnabled()) {
             log.debug("[{}] createComplete rc={} ledger={}", name, rc, lh != null ? lh.getId() : -1);
         }
@@ -1164,16 +1168,23 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
         if (checkAndCompleteLedgerOpTask(rc, lh, ctx)) {
             return;
         }
-        
+
+        // Switch to the thread where the add operations are processed
+        executor.executeOrdered(name, safeRun(() -> ledgerCreated(rc, lh)));
+    }
+
+    private synchronized void ledgerCreated(int rc, final LedgerHandle lh) {
         mbean.endDataLedgerCreateOp();
         if (rc != BKException.Code.OK) {
             log.error("[{}] Error creating ledger rc={} {}", name, rc, BKException.getMessage(rc));
             ManagedLedgerException status = createManagedLedgerException(rc);
 
             // Empty the list of pending requests and make all of them fail
-            clearPendingAddEntries(status);
             lastLedgerCreationFailureTimestamp = clock.millis();
-            STATE_UPDATER.set(this, State.ClosedLedger);
+            if (!failPendingAddEntriesIfNotWritable()) {
+                STATE_UPDATER.set(this, State.ClosedLedger);
+                clearPendingAddEntries(status);
+            }
         } else {
             log.info("[{}] Created new ledger {}", name, lh.getId());
             ledgers.put(lh.getId(), LedgerInfo.newBuilder().setLedgerId(lh.getId()).setTimestamp(0).build());
@@ -1189,24 +1200,28 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
                     }
                     ledgersStat = stat;
                     ledgersListMutex.unlock();
-                    updateLedgersIdsComplete(stat);
-                    synchronized (ManagedLedgerImpl.this) {
-                        mbean.addLedgerSwitchLatencySample(System.nanoTime() - lastLedgerCreationInitiationTimestamp,
-                                TimeUnit.NANOSECONDS);
-                    }
+                    executor.executeOrdered(name, safeRun(() -> {
+                        updateLedgersIdsComplete(stat);
+                        synchronized (ManagedLedgerImpl.this) {
+                            mbean.addLedgerSwitchLatencySample(
+                                    System.nanoTime() - lastLedgerCreationInitiationTimestamp, TimeUnit.NANOSECONDS);
+                        }
+                    }));
                 }
 
                 @Override
                 public void operationFailed(MetaStoreException e) {
                     if (e instanceof BadVersionException) {
-                        synchronized (ManagedLedgerImpl.this) {
-                            log.error(
-                                "[{}] Failed to udpate ledger list. z-node version mismatch. Closing managed ledger",
+                        log.error("[{}] Failed to udpate ledger list. z-node version mismatch. Closing managed ledger",
                                 name);
-                            STATE_UPDATER.set(ManagedLedgerImpl.this, State.Fenced);
-                            clearPendingAddEntries(e);
-                            return;
-                        }
+                        // Fail the pending adds in the managed ledger thread, so that no add can be queued after them
+                        executor.executeOrdered(name, safeRun(() -> {
+                            synchronized (ManagedLedgerImpl.this) {
+                                STATE_UPDATER.set(ManagedLedgerImpl.this, State.Fenced);
+                                clearPendingAddEntries(e);
+                            }
+                        }));
+                        return;
                     }
 
                     log.warn("[{}] Error updating meta data with the new list of ledgers: {}", name, e.getMessage());
@@ -1224,11 +1239,15 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
 
                     ledgersListMutex.unlock();
 
-                    synchronized (ManagedLedgerImpl.this) {
-                        lastLedgerCreationFailureTimestamp = clock.millis();
-                        STATE_UPDATER.set(ManagedLedgerImpl.this, State.ClosedLedger);
-                        clearPendingAddEntries(e);
-                    }
+                    executor.executeOrdered(name, safeRun(() -> {
+                        synchronized (ManagedLedgerImpl.this) {
+                            lastLedgerCreationFailureTimestamp = clock.millis();
+                            if (!failPendingAddEntriesIfNotWritable()) {
+                                STATE_UPDATER.set(ManagedLedgerImpl.this, State.ClosedLedger);
+                                clearPendingAddEntries(e);
+                            }
+                        }
+                    }));
                 }
             };
 
@@ -1250,6 +1269,11 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
     }
 
     public synchronized void updateLedgersIdsComplete(Stat stat) {
+        if (failPendingAddEntriesIfNotWritable()) {
+            // The managed ledger was closed while the new ledger was being created
+            return;
+        }
+
         STATE_UPDATER.set(this, State.LedgerOpened);
         lastLedgerCreatedTimestamp = clock.millis();
 
@@ -1290,9 +1314,8 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
         LedgerHandle currentLedger = this.currentLedger;
         if (currentLedger == lh && (state == State.ClosingLedger || state == State.LedgerOpened)) {
             STATE_UPDATER.set(this, State.ClosedLedger);
-        } else if (state == State.Closed) {
-            // The managed ledger was closed during the write operation
-            clearPendingAddEntries(new ManagedLedgerAlreadyClosedException("Managed ledger was already closed"));
+        } else if (failPendingAddEntriesIfNotWritable()) {
+            // The managed ledger was closed, fenced or terminated during the write operation
             return;
         } else {
             // In case we get multiple write errors for different outstanding write request, we should close the ledger
@@ -1334,6 +1357,34 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
         }
     }
 
+    /**
+     * Fails all the queued add operations if the managed ledger was closed, fenced or terminated, since they cannot be
+     * written anymore. Must be called from the managed ledger thread, so that no add can be queued after them.
+     *
+     * @return true if the managed ledger is not writable anymore
+     */
+    private boolean failPendingAddEntriesIfNotWritable() {
+        ManagedLedgerException notWritable = getNotWritableException(STATE_UPDATER.get(this));
+        if (notWritable == null) {
+            return false;
+        }
+        clearPendingAddEntries(notWritable);
+        return true;
+    }
+
+    private static ManagedLedgerException getNotWritableException(State state) {
+        switch (state) {
+        case Fenced:
+            return new ManagedLedgerFencedException();
+        case Terminated:
+            return new ManagedLedgerTerminatedException("Managed ledger was already terminated");
+        case Closed:
+            return new ManagedLedgerAlreadyClosedException("Managed ledger was already closed");
+        default:
+            return null;
+        }
+    }
+
     void clearPendingAddEntries(ManagedLedgerException e) {
         while (!pendingAddEntries.isEmpty()) {
             OpAddEntry op = pendingAddEntries.poll();
@@ -1426,6 +1477,18 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
             });
     }
 
+    /**
+     * Get a handle to read from the given ledger, using the write handle for the current ledger.
+     */
+    CompletableFuture<ReadHandle> getReadHandle(long ledgerId) {
+        LedgerHandle currentLedger = this.currentLedger;
+        if (currentLedger != null && ledgerId == currentLedger.getId()) {
+            return CompletableFuture.completedFuture(currentLedger);
+        } else {
+            return getLedgerHandle(ledgerId);
+        }
+    }
+
     void invalidateLedgerHandle(ReadHandle ledgerHandle, Throwable t) {
         long ledgerId = ledgerHandle.getId();
         if (currentLedger != null && ledgerId != currentLedger.getId()) {
@@ -1500,6 +1563,12 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
             return;
         }
 
+        if (cursor.readAhead != null
+                && cursor.readAhead.readEntries(ledger, firstEntry, lastEntryInLedger, opReadEntry)) {
+            // The read is served from the prefetched entries of the cursor
+            return;
+        }
+
         long lastEntry = min(firstEntry + opReadEntry.getNumberOfEntriesToRead() - 1, lastEntryInLedger);
 
         if (log.isDebugEnabled()) {
@@ -2605,12 +2674,14 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
     public void activateCursor(ManagedCursor cursor) {
         if (activeCursors.get(cursor.getName()) == null) {
             activeCursors.add(cursor);
+            addedEntriesAdmission = null;
         }
     }
 
     public void deactivateCursor(ManagedCursor cursor) {
         if (activeCursors.get(cursor.getName()) != null) {
             activeCursors.removeCursor(cursor.getName());
+            addedEntriesAdmission = null;
             if (activeCursors.isEmpty()) {
                 // cleanup cache if there is no active subscription
                 entryCache.clear();
@@ -144,7 +144,8 @@ class OpAddEntry extends SafeRunnable implements AddCallback, CloseCallback {
 
         ManagedLedgerImpl.NUMBER_OF_ENTRIES_UPDATER.incrementAndGet(ml);
         ManagedLedgerImpl.TOTAL_SIZE_UPDATER.addAndGet(ml, dataLength);
-        if (ml.hasActiveCursors()) {
+        if (ml.hasActiveCursors() && ml.factory.getEntryCacheManager().getAdmissionPolicy().admitAddedEntry(ml,
+                PositionImpl.get(ledger.getId(), entryId))) {
             // Avoid caching entries if no cursor has been created
             EntryImpl entry = EntryImpl.create(ledger.getId(), entryId, data);
             // EntryCache.insert: duplicates entry by allocating new entry and data. so, recycle entry after calling
@@ -185,15 +186,18 @@ class OpAddEntry extends SafeRunnable implements AddCallback, CloseCallback {
             log.warn("Error when closing ledger {}. Status={}", lh.getId(), BKException.getMessage(rc));
         }
 
-        ml.ledgerClosed(lh);
-        updateLatency();
+        // The switch to a new ledger is done in the thread where the add operations are processed
+        ml.getExecutor().executeOrdered(ml.getName(), SafeRun.safeRun(() -> {
+            ml.ledgerClosed(lh);
+            updateLatency();
 
-        AddEntryCallback cb = callbackUpdater.getAndSet(this, null);
-        if (cb != null) {
-            cb.addComplete(PositionImpl.get(lh.getId(), entryId), ctx);
-            ml.notifyCursors();
-            this.recycle();
-        }
+            AddEntryCallback cb = callbackUpdater.getAndSet(this, null);
+            if (cb != null) {
+                cb.addComplete(PositionImpl.get(lh.getId(), entryId), ctx);
+                ml.notifyCursors();
+                this.recycle();
+            }
+        }));
     }
 
     private void updateLatency() {
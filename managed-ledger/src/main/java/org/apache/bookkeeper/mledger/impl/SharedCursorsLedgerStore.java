@@ -0,0 +1,807 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import static java.lang.Math.min;
+import static org.apache.bookkeeper.mledger.impl.ManagedLedgerImpl.createManagedLedgerException;
+import static org.apache.bookkeeper.mledger.util.SafeRun.safeRun;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.protobuf.InvalidProtocolBufferException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.AsyncCallback.OpenCallback;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.BookKeeper;
+import org.apache.bookkeeper.client.BookKeeper.DigestType;
+import org.apache.bookkeeper.client.LedgerHandle;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.api.ReadHandle;
+import org.apache.bookkeeper.common.util.OrderedScheduler;
+import org.apache.bookkeeper.mledger.ManagedLedgerException;
+import org.apache.bookkeeper.mledger.ManagedLedgerException.MetaStoreException;
+import org.apache.bookkeeper.mledger.ManagedLedgerFactoryConfig;
+import org.apache.bookkeeper.mledger.impl.MetaStore.MetaStoreCallback;
+import org.apache.bookkeeper.mledger.impl.MetaStore.Stat;
+import org.apache.bookkeeper.mledger.proto.MLDataFormats.CursorPosition;
+import org.apache.bookkeeper.mledger.proto.MLDataFormats.CursorPositionBatch;
+import org.apache.bookkeeper.mledger.proto.MLDataFormats.ManagedCursorInfo;
+import org.apache.bookkeeper.mledger.proto.MLDataFormats.PositionInfo;
+import org.apache.bookkeeper.util.ZkUtils;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persists the positions of many cursors in ledgers shared by all the managed ledgers of a factory.
+ *
+ * <p>The mark-delete updates submitted by the cursors are grouped and written as a single {@link CursorPositionBatch}
+ * entry every {@link ManagedLedgerFactoryConfig#getSharedCursorsLedgerFlushIntervalMs()}, so that the number of
+ * writes and of open ledgers doesn't grow with the number of cursors. Each new ledger starts with a snapshot of the
+ * last position of all the cursors using the store, which then point their z-node to it. A ledger is deleted once it
+ * is not the current one and no cursor z-node refers to it any more.
+ *
+ * <p>Each shared ledger is registered in the metadata store with the id of the store that created it, which keeps an
+ * ephemeral z-node while it is in use. The ledgers of the stores that are gone, eg: before a restart or on another
+ * broker, are periodically swept: they are fenced and deleted once none of the cursors that have a position in them
+ * refers to them any more.
+ *
+ * <p>A cursor is recovered by scanning the shared ledger its z-node points to and taking its last position there,
+ * without fencing it since the store that writes it may still be in use. The positions read from a closed ledger are
+ * kept for a few minutes, since all the cursors that were using it are usually recovered at the same time. The ones
+ * of a ledger that is still open are read again for each cursor, since its owner may still append to it.
+ *
+ * <p>The ledgers still referred by the z-node of closed cursors are not deleted when the store stops using them, but
+ * swept like the ledgers of the other stores.
+ */
+class SharedCursorsLedgerStore {
+
+    static final DigestType DIGEST_TYPE = DigestType.CRC32C;
+    static final byte[] PASSWORD = "".getBytes(Charsets.UTF_8);
+
+    // Max size of the positions written in a single entry
+    private static final int MAX_ENTRY_SIZE = 1024 * 1024;
+    private static final int RECOVERY_READ_BATCH_SIZE = 100;
+    private static final long RECOVERED_POSITIONS_EXPIRY_MINUTES = 5;
+
+    private static final String SHARED_CURSORS_LEDGERS_PATH = "/managed-ledgers-shared-cursors";
+    // Z-node of each shared ledger, with the id of the store that created it
+    private static final String LEDGERS_PATH = SHARED_CURSORS_LEDGERS_PATH + "/ledgers";
+    // Ephemeral z-node of each store in use
+    private static final String OWNERS_PATH = SHARED_CURSORS_LEDGERS_PATH + "/owners";
+
+    private final BookKeeper bookKeeper;
+    private final ZooKeeper zk;
+    private final MetaStore store;
+    private final ManagedLedgerFactoryConfig config;
+    private final OrderedScheduler scheduler;
+    private final String ownerId = UUID.randomUUID().toString();
+    private final ScheduledFuture<?> sweepTask;
+
+    // Cursors using the store, with their last position, to write the snapshot at the start of each new ledger
+    private final Map<ManagedCursorImpl, PositionInfo> positions = new HashMap<>();
+    // Updates waiting for the next flush
+    private Map<ManagedCursorImpl, PendingUpdate> pendingUpdates = new LinkedHashMap<>();
+    // Shared ledger referred by the z-node of each cursor
+    private final Map<ManagedCursorImpl, Long> cursorLedgers = new HashMap<>();
+    // Number of cursor z-nodes referring to each shared ledger
+    private final Map<Long, Integer> ledgerReferences = new HashMap<>();
+    // Ledgers created by this store and not deleted yet
+    private final Set<Long> ownLedgers = new TreeSet<>();
+    // Ledgers created by this store that may still be referred by the z-node of closed cursors
+    private final Set<Long> closedCursorsLedgers = new TreeSet<>();
+
+    private LedgerHandle currentLedger = null;
+    // Last position of the cursors written in the current ledger
+    private Map<Pair<String, String>, PositionInfo> currentLedgerPositions = new HashMap<>();
+    private CompletableFuture<Void> ownerRegistration = null;
+    private boolean rolloverNeeded = false;
+    private boolean flushScheduled = false;
+    private boolean flushInProgress = false;
+
+    private final ConcurrentMap<Long, CompletableFuture<Map<Pair<String, String>, PositionInfo>>> recoveredPositions =
+            new ConcurrentHashMap<>();
+
+    private static class PendingUpdate {
+        PositionInfo position;
+        final List<CompletableFuture<Long>> futures = Lists.newArrayList();
+    }
+
+    SharedCursorsLedgerStore(BookKeeper bookKeeper, ZooKeeper zk, MetaStore store, ManagedLedgerFactoryConfig config,
+            OrderedScheduler scheduler) {
+        this.bookKeeper = bookKeeper;
+        this.zk = zk;
+        this.store = store;
+        this.config = config;
+        this.scheduler = scheduler;
+
+        long sweepIntervalMinutes = config.getSharedCursorsLedgerSweepIntervalMinutes();
+        this.sweepTask = sweepIntervalMinutes > 0
+                ? scheduler.scheduleAtFixedRate(safeRun(this::sweepLedgers), sweepIntervalMinutes,
+                        sweepIntervalMinutes, TimeUnit.MINUTES)
+                : null;
+    }
+
+    /**
+     * Persist the position of a cursor with the next group commit.
+     *
+     * @return a future completed with the id of the shared ledger where the position was written
+     */
+    synchronized CompletableFuture<Long> persistPosition(ManagedCursorImpl cursor, PositionInfo position) {
+        CompletableFuture<Long> future = new CompletableFuture<>();
+        PendingUpdate update = pendingUpdates.computeIfAbsent(cursor, c -> new PendingUpdate());
+        update.position = position;
+        update.futures.add(future);
+        positions.put(cursor, position);
+        scheduleFlush();
+        return future;
+    }
+
+    /**
+     * Stop including a closed or deleted cursor in the snapshots of the new ledgers.
+     */
+    synchronized void removeCursor(ManagedCursorImpl cursor) {
+        positions.remove(cursor);
+    }
+
+    /**
+     * Forget a closed cursor. Its z-node may still refer to its shared ledger, which is then left to the sweep.
+     */
+    synchronized void closeCursor(ManagedCursorImpl cursor) {
+        positions.remove(cursor);
+        Long ledgerId = cursorLedgers.remove(cursor);
+        if (ledgerId != null) {
+            ledgerReferences.computeIfPresent(ledgerId, (id, count) -> count > 1 ? count - 1 : null);
+            if (ownLedgers.contains(ledgerId)) {
+                closedCursorsLedgers.add(ledgerId);
+            }
+        }
+    }
+
+    /**
+     * Record the shared ledger referred by the z-node of a cursor, or -1 if the z-node doesn't refer to a shared
+     * ledger any more.
+     */
+    void setCursorLedger(ManagedCursorImpl cursor, long ledgerId) {
+        Long ledgerToDelete = null;
+        synchronized (this) {
+            Long previousLedgerId = ledgerId != -1 ? cursorLedgers.put(cursor, ledgerId) : cursorLedgers.remove(cursor);
+            if (ledgerId != -1) {
+                ledgerReferences.merge(ledgerId, 1, Integer::sum);
+            }
+            if (previousLedgerId != null) {
+                ledgerReferences.computeIfPresent(previousLedgerId, (id, count) -> count > 1 ? count - 1 : null);
+                if (canDelete(previousLedgerId)) {
+                    ownLedgers.remove(previousLedgerId);
+                    ledgerToDelete = previousLedgerId;
+                }
+            }
+        }
+
+        if (ledgerToDelete != null) {
+            deleteLedger(ledgerToDelete);
+        }
+    }
+
+    synchronized long getCurrentLedgerId() {
+        return currentLedger != null ? currentLedger.getId() : -1;
+    }
+
+    synchronized int getNumberOfLedgers() {
+        return ownLedgers.size();
+    }
+
+    synchronized int getNumberOfReferences(long ledgerId) {
+        return ledgerReferences.getOrDefault(ledgerId, 0);
+    }
+
+    /**
+     * Read the last position of a cursor from a shared ledger.
+     *
+     * @return a future completed with the position, or with null if the ledger has no position for the cursor
+     */
+    CompletableFuture<PositionInfo> readPosition(long ledgerId, String managedLedgerName, String cursorName) {
+        Pair<String, String> key = Pair.of(managedLedgerName, cursorName);
+        synchronized (this) {
+            if (currentLedger != null && currentLedger.getId() == ledgerId) {
+                // The positions written in the current ledger are known, there is no need to read it
+                return CompletableFuture.completedFuture(currentLedgerPositions.get(key));
+            }
+        }
+
+        return recoveredPositions.computeIfAbsent(ledgerId, this::readAndCachePositions)
+                .thenApply(ledgerPositions -> ledgerPositions.get(key));
+    }
+
+    /**
+     * Read the last position of a cursor from a shared ledger, when the factory doesn't use shared ledgers any more.
+     *
+     * @return a future completed with the position, or with null if the ledger has no position for the cursor
+     */
+    static CompletableFuture<PositionInfo> readPosition(BookKeeper bookKeeper, long ledgerId,
+            String managedLedgerName, String cursorName) {
+        return openAndReadPositions(bookKeeper, ledgerId, false)
+                .thenApply(ledgerPositions -> ledgerPositions.positions.get(Pair.of(managedLedgerName, cursorName)));
+    }
+
+    /**
+     * Close the current ledger, deleting it if no cursor refers to it.
+     */
+    CompletableFuture<Void> close() {
+        if (sweepTask != null) {
+            sweepTask.cancel(false);
+        }
+
+        LedgerHandle lh;
+        boolean delete;
+        boolean unregisterOwner;
+        synchronized (this) {
+            lh = currentLedger;
+            currentLedger = null;
+            currentLedgerPositions = new HashMap<>();
+            delete = lh != null && canDelete(lh.getId());
+            if (delete) {
+                ownLedgers.remove(lh.getId());
+            }
+            unregisterOwner = ownerRegistration != null;
+            ownerRegistration = null;
+        }
+
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        if (lh == null) {
+            future.complete(null);
+        } else {
+            lh.asyncClose((rc, lh1, ctx) -> {
+                if (rc != BKException.Code.OK) {
+                    log.warn("Failed to close shared cursors ledger {}: {}", lh.getId(), BKException.getMessage(rc));
+                }
+                if (delete) {
+                    deleteLedger(lh.getId());
+                }
+                future.complete(null);
+            }, null);
+        }
+
+        // The ledgers still referred by cursor z-nodes can now be swept
+        return unregisterOwner ? future.thenCompose(ignore -> deleteZNode(OWNERS_PATH + "/" + ownerId)) : future;
+    }
+
+    private void scheduleFlush() {
+        if (!flushScheduled && !flushInProgress) {
+            flushScheduled = true;
+            scheduler.schedule(safeRun(this::flush), config.getSharedCursorsLedgerFlushIntervalMs(),
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void flush() {
+        Map<ManagedCursorImpl, PendingUpdate> updates;
+        LedgerHandle lh;
+        synchronized (this) {
+            flushScheduled = false;
+            if (pendingUpdates.isEmpty() && !rolloverNeeded) {
+                return;
+            }
+            flushInProgress = true;
+            updates = pendingUpdates;
+            pendingUpdates = new LinkedHashMap<>();
+            lh = rolloverNeeded ? null : currentLedger;
+        }
+
+        if (lh != null) {
+            Map<ManagedCursorImpl, PositionInfo> records = new LinkedHashMap<>();
+            updates.forEach((cursor, update) -> records.put(cursor, update.position));
+            addEntries(lh, records).whenComplete((ignore, ex) -> flushComplete(lh, updates, records, ex));
+        } else {
+            createLedger(updates);
+        }
+    }
+
+    private void createLedger(Map<ManagedCursorImpl, PendingUpdate> updates) {
+        Map<String, byte[]> metadata = ImmutableMap.of("component", "shared-cursors-ledger".getBytes(Charsets.UTF_8));
+        bookKeeper.asyncCreateLedger(config.getSharedCursorsLedgerEnsembleSize(),
+                config.getSharedCursorsLedgerWriteQuorumSize(), config.getSharedCursorsLedgerAckQuorumSize(),
+                DIGEST_TYPE, PASSWORD, (rc, lh, ctx) -> {
+            if (rc != BKException.Code.OK) {
+                log.warn("Failed to create shared cursors ledger: {}", BKException.getMessage(rc));
+                flushComplete(null, updates, Collections.emptyMap(), createManagedLedgerException(rc));
+                return;
+            }
+
+            log.info("Created shared cursors ledger {}", lh.getId());
+            registerLedger(lh.getId()).whenComplete((ignore, ex) -> {
+                if (ex != null) {
+                    log.warn("Failed to register shared cursors ledger {}: {}", lh.getId(), ex.getMessage());
+                    lh.asyncClose((rc1, lh1, ctx1) -> bookKeeper.asyncDeleteLedger(lh.getId(), (rc2, ctx2) -> {
+                    }, null), null);
+                    flushComplete(null, updates, Collections.emptyMap(), ex);
+                } else {
+                    ledgerCreated(lh, updates);
+                }
+            });
+        }, null, metadata);
+    }
+
+    private void ledgerCreated(LedgerHandle lh, Map<ManagedCursorImpl, PendingUpdate> updates) {
+        // The new ledger starts with the positions of all the cursors
+        Map<ManagedCursorImpl, PositionInfo> records;
+        LedgerHandle oldLedger;
+        boolean deleteOldLedger;
+        synchronized (this) {
+            records = new LinkedHashMap<>(positions);
+            updates.forEach((cursor, update) -> records.put(cursor, update.position));
+            oldLedger = currentLedger;
+            currentLedger = lh;
+            currentLedgerPositions = new HashMap<>();
+            ownLedgers.add(lh.getId());
+            rolloverNeeded = false;
+            deleteOldLedger = oldLedger != null && canDelete(oldLedger.getId());
+            if (deleteOldLedger) {
+                ownLedgers.remove(oldLedger.getId());
+            }
+        }
+
+        if (oldLedger != null) {
+            oldLedger.asyncClose((rc, lh1, ctx) -> {
+                if (deleteOldLedger) {
+                    deleteLedger(oldLedger.getId());
+                }
+            }, null);
+        }
+
+        addEntries(lh, records).whenComplete((ignore, ex) -> flushComplete(lh, updates, records, ex));
+    }
+
+    private CompletableFuture<Void> registerLedger(long ledgerId) {
+        CompletableFuture<Void> ownerFuture;
+        synchronized (this) {
+            if (ownerRegistration == null || ownerRegistration.isCompletedExceptionally()) {
+                ownerRegistration = createZNode(OWNERS_PATH + "/" + ownerId, new byte[0], CreateMode.EPHEMERAL);
+            }
+            ownerFuture = ownerRegistration;
+        }
+
+        return ownerFuture.thenCompose(ignore -> createZNode(LEDGERS_PATH + "/" + ledgerId,
+                ownerId.getBytes(Charsets.UTF_8), CreateMode.PERSISTENT));
+    }
+
+    private CompletableFuture<Void> addEntries(LedgerHandle lh, Map<ManagedCursorImpl, PositionInfo> records) {
+        List<CompletableFuture<Void>> futures = Lists.newArrayList();
+        for (byte[] data : serialize(records)) {
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            lh.asyncAddEntry(data, (rc, lh1, entryId, ctx) -> {
+                if (rc == BKException.Code.OK) {
+                    future.complete(null);
+                } else {
+                    future.completeExceptionally(createManagedLedgerException(rc));
+                }
+            }, null);
+            futures.add(future);
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()]));
+    }
+
+    private void flushComplete(LedgerHandle lh, Map<ManagedCursorImpl, PendingUpdate> updates,
+            Map<ManagedCursorImpl, PositionInfo> records, Throwable ex) {
+        synchronized (this) {
+            flushInProgress = false;
+            if (ex != null) {
+                // After a write error the ledger can't be used any more. The next flush will write the positions of
+                // all the cursors in a new one.
+                rolloverNeeded = true;
+            } else if (lh.getLastAddConfirmed() + 1 >= config.getSharedCursorsLedgerMaxEntries()) {
+                rolloverNeeded = true;
+            }
+
+            if (ex == null && lh == currentLedger) {
+                // Updated before the cursors point their z-node to the ledger
+                records.forEach((cursor, position) -> currentLedgerPositions.put(
+                        Pair.of(cursor.ledger.getName(), cursor.getName()), position));
+            }
+
+            if (!pendingUpdates.isEmpty() || (rolloverNeeded && ex == null)) {
+                scheduleFlush();
+            }
+        }
+
+        if (ex != null) {
+            log.warn("Failed to persist the position of {} cursors in shared cursors ledger {}: {}", updates.size(),
+                    lh != null ? lh.getId() : -1, ex.getMessage());
+            ManagedLedgerException exception = toManagedLedgerException(ex);
+            updates.values().forEach(update -> update.futures.forEach(f -> f.completeExceptionally(exception)));
+            return;
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Persisted the position of {} cursors in shared cursors ledger {}", records.size(), lh.getId());
+        }
+        updates.values().forEach(update -> update.futures.forEach(f -> f.complete(lh.getId())));
+        records.keySet().forEach(cursor -> cursor.sharedCursorsLedgerPersisted(lh.getId()));
+    }
+
+    private boolean canDelete(long ledgerId) {
+        return isUnused(ledgerId) && !closedCursorsLedgers.contains(ledgerId);
+    }
+
+    private boolean isUnused(long ledgerId) {
+        return ownLedgers.contains(ledgerId) && !ledgerReferences.containsKey(ledgerId)
+                && (currentLedger == null || currentLedger.getId() != ledgerId);
+    }
+
+    private synchronized void ownLedgerDeleted(long ledgerId) {
+        ownLedgers.remove(ledgerId);
+        closedCursorsLedgers.remove(ledgerId);
+    }
+
+    /**
+     * @return a future completed with whether the ledger was deleted
+     */
+    private CompletableFuture<Boolean> deleteLedger(long ledgerId) {
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        recoveredPositions.remove(ledgerId);
+        bookKeeper.asyncDeleteLedger(ledgerId, (rc, ctx) -> {
+            if (rc == BKException.Code.OK || rc == BKException.Code.NoSuchLedgerExistsException) {
+                log.info("Deleted shared cursors ledger {}", ledgerId);
+                deleteZNode(LEDGERS_PATH + "/" + ledgerId).whenComplete((ignore, ex) -> future.complete(true));
+            } else {
+                log.warn("Failed to delete shared cursors ledger {}: {}", ledgerId, BKException.getMessage(rc));
+                future.complete(false);
+            }
+        }, null);
+        return future;
+    }
+
+    /**
+     * Delete the shared ledgers registered by the stores that are gone, once none of the cursors that have a position
+     * in them refers to them any more.
+     */
+    CompletableFuture<Void> sweepLedgers() {
+        CompletableFuture<List<String>> childrenFuture = new CompletableFuture<>();
+        zk.getChildren(LEDGERS_PATH, false, (rc, path, ctx, children) -> {
+            if (rc == Code.OK.intValue()) {
+                childrenFuture.complete(children);
+            } else if (rc == Code.NONODE.intValue()) {
+                childrenFuture.complete(Collections.emptyList());
+            } else {
+                childrenFuture.completeExceptionally(new MetaStoreException(KeeperException.create(Code.get(rc))));
+            }
+        }, null);
+
+        return childrenFuture.thenCompose(children -> {
+            List<CompletableFuture<Void>> futures = Lists.newArrayList();
+            children.forEach(child -> futures.add(sweepLedger(Long.parseLong(child))));
+            return CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()]));
+        }).exceptionally(ex -> {
+            log.warn("Failed to sweep the shared cursors ledgers: {}", ex.getMessage());
+            return null;
+        });
+    }
+
+    private CompletableFuture<Void> sweepLedger(long ledgerId) {
+        boolean ownLedger;
+        boolean sweepOwnLedger;
+        synchronized (this) {
+            ownLedger = ownLedgers.contains(ledgerId);
+            // An own ledger is only swept once it is referred by closed cursors only, if any
+            sweepOwnLedger = ownLedger && closedCursorsLedgers.contains(ledgerId) && isUnused(ledgerId);
+        }
+
+        CompletableFuture<Void> future;
+        if (ownLedger) {
+            future = sweepOwnLedger
+                    ? sweepUnreferencedLedger(ledgerId).thenAccept(deleted -> {
+                        if (deleted) {
+                            ownLedgerDeleted(ledgerId);
+                        }
+                    })
+                    : CompletableFuture.completedFuture(null);
+        } else {
+            future = isOwnerInUse(ledgerId).thenCompose(ownerInUse -> ownerInUse
+                    ? CompletableFuture.completedFuture(null)
+                    : sweepUnreferencedLedger(ledgerId).thenApply(deleted -> null));
+        }
+
+        return future.exceptionally(ex -> {
+            log.warn("Failed to sweep shared cursors ledger {}: {}", ledgerId, unwrap(ex).getMessage());
+            return null;
+        });
+    }
+
+    /**
+     * @return a future completed with whether the ledger was deleted
+     */
+    private CompletableFuture<Boolean> sweepUnreferencedLedger(long ledgerId) {
+        // Fence the ledger, so that no cursor can point to it any more, before looking for references. Its positions
+        // cached before, if any, can't be used any more.
+        recoveredPositions.remove(ledgerId);
+        return openAndReadPositions(bookKeeper, ledgerId, true)
+                .thenCompose(ledgerPositions -> isReferenced(ledgerId, ledgerPositions.positions.keySet()))
+                .thenCompose(referenced -> referenced ? CompletableFuture.completedFuture(false)
+                        : deleteLedger(ledgerId));
+    }
+
+    private CompletableFuture<Boolean> isOwnerInUse(long ledgerId) {
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        zk.getData(LEDGERS_PATH + "/" + ledgerId, false, (rc, path, ctx, data, stat) -> {
+            if (rc == Code.NONODE.intValue()) {
+                // Already deleted
+                future.complete(true);
+            } else if (rc != Code.OK.intValue()) {
+                future.completeExceptionally(new MetaStoreException(KeeperException.create(Code.get(rc))));
+            } else {
+                String owner = new String(data, Charsets.UTF_8);
+                zk.exists(OWNERS_PATH + "/" + owner, false, (rc1, path1, ctx1, stat1) -> {
+                    if (rc1 == Code.OK.intValue() || rc1 == Code.NONODE.intValue()) {
+                        future.complete(rc1 == Code.OK.intValue());
+                    } else {
+                        future.completeExceptionally(new MetaStoreException(KeeperException.create(Code.get(rc1))));
+                    }
+                }, null);
+            }
+        }, null);
+        return future;
+    }
+
+    /**
+     * Check whether the z-node of any of the cursors still refers to a shared ledger. The cursors only point to a
+     * ledger after their position was written in it.
+     */
+    private CompletableFuture<Boolean> isReferenced(long ledgerId, Set<Pair<String, String>> cursors) {
+        List<CompletableFuture<Boolean>> futures = Lists.newArrayList();
+        for (Pair<String, String> cursor : cursors) {
+            CompletableFuture<Boolean> future = new CompletableFuture<>();
+            store.asyncGetCursorInfo(cursor.getLeft(), cursor.getRight(), new MetaStoreCallback<ManagedCursorInfo>() {
+                @Override
+                public void operationComplete(ManagedCursorInfo info, Stat stat) {
+                    future.complete(info.getSharedCursorsLedger() && info.getCursorsLedgerId() == ledgerId);
+                }
+
+                @Override
+                public void operationFailed(MetaStoreException e) {
+                    if (e.getCause() instanceof KeeperException.NoNodeException) {
+                        // The cursor was deleted
+                        future.complete(false);
+                    } else {
+                        future.completeExceptionally(e);
+                    }
+                }
+            });
+            futures.add(future);
+        }
+
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()]))
+                .thenApply(ignore -> futures.stream().anyMatch(CompletableFuture::join));
+    }
+
+    private CompletableFuture<Void> createZNode(String path, byte[] data, CreateMode createMode) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        ZkUtils.asyncCreateFullPathOptimistic(zk, path, data, ZooDefs.Ids.OPEN_ACL_UNSAFE, createMode,
+                (rc, path1, ctx, name) -> {
+            if (rc == Code.OK.intValue() || rc == Code.NODEEXISTS.intValue()) {
+                future.complete(null);
+            } else {
+                future.completeExceptionally(new MetaStoreException(KeeperException.create(Code.get(rc))));
+            }
+        }, null);
+        return future;
+    }
+
+    private CompletableFuture<Void> deleteZNode(String path) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        zk.delete(path, -1, (rc, path1, ctx) -> {
+            if (rc != Code.OK.intValue() && rc != Code.NONODE.intValue()) {
+                log.warn("Failed to delete z-node {}: {}", path, Code.get(rc));
+            }
+            future.complete(null);
+        }, null);
+        return future;
+    }
+
+    private static List<byte[]> serialize(Map<ManagedCursorImpl, PositionInfo> records) {
+        List<byte[]> entries = Lists.newArrayList();
+        CursorPositionBatch.Builder batch = CursorPositionBatch.newBuilder();
+        int batchSize = 0;
+        for (Map.Entry<ManagedCursorImpl, PositionInfo> record : records.entrySet()) {
+            ManagedCursorImpl cursor = record.getKey();
+            CursorPosition position = CursorPosition.newBuilder()
+                    .setManagedLedgerName(cursor.ledger.getName())
+                    .setCursorName(cursor.getName())
+                    .setPosition(record.getValue())
+                    .build();
+            int size = position.getSerializedSize();
+            if (batchSize > 0 && batchSize + size > MAX_ENTRY_SIZE) {
+                entries.add(batch.build().toByteArray());
+                batch.clear();
+                batchSize = 0;
+            }
+            batch.addPositions(position);
+            batchSize += size;
+        }
+
+        if (batch.getPositionsCount() > 0) {
+            entries.add(batch.build().toByteArray());
+        }
+        return entries;
+    }
+
+    private CompletableFuture<Map<Pair<String, String>, PositionInfo>> readAndCachePositions(long ledgerId) {
+        CompletableFuture<Map<Pair<String, String>, PositionInfo>> future = new CompletableFuture<>();
+        openAndReadPositions(bookKeeper, ledgerId, false).whenComplete((ledgerPositions, ex) -> {
+            if (ex != null || !ledgerPositions.closed) {
+                // The positions of a ledger that is still open may change
+                recoveredPositions.remove(ledgerId, future);
+            } else {
+                scheduler.schedule(safeRun(() -> recoveredPositions.remove(ledgerId, future)),
+                        RECOVERED_POSITIONS_EXPIRY_MINUTES, TimeUnit.MINUTES);
+            }
+
+            if (ex != null) {
+                future.completeExceptionally(ex);
+            } else {
+                future.complete(ledgerPositions.positions);
+            }
+        });
+        return future;
+    }
+
+    private static class LedgerPositions {
+        final Map<Pair<String, String>, PositionInfo> positions;
+        // Whether the ledger was closed when it was read
+        final boolean closed;
+
+        LedgerPositions(Map<Pair<String, String>, PositionInfo> positions, boolean closed) {
+            this.positions = positions;
+            this.closed = closed;
+        }
+    }
+
+    /**
+     * Read the positions written in a shared ledger. The ledger is only fenced when its writer is known to be gone,
+     * otherwise the positions are read up to the last entry that can be read without recovering the ledger.
+     */
+    private static CompletableFuture<LedgerPositions> openAndReadPositions(BookKeeper bookKeeper, long ledgerId,
+            boolean fence) {
+        CompletableFuture<LedgerHandle> openFuture = new CompletableFuture<>();
+        OpenCallback openCallback = (rc, lh, ctx) -> {
+            if (rc == BKException.Code.OK) {
+                openFuture.complete(lh);
+            } else {
+                openFuture.completeExceptionally(createManagedLedgerException(rc));
+            }
+        };
+        if (fence) {
+            bookKeeper.asyncOpenLedger(ledgerId, DIGEST_TYPE, PASSWORD, openCallback, null);
+        } else {
+            bookKeeper.asyncOpenLedgerNoRecovery(ledgerId, DIGEST_TYPE, PASSWORD, openCallback, null);
+        }
+
+        return openFuture.thenCompose(lh -> {
+            boolean closed = lh.isClosed();
+            return readPositions(lh).whenComplete((ledgerPositions, ex) -> {
+                lh.asyncClose((rc, lh1, ctx) -> {
+                }, null);
+            }).thenApply(ledgerPositions -> new LedgerPositions(ledgerPositions, closed));
+        });
+    }
+
+    private static CompletableFuture<Map<Pair<String, String>, PositionInfo>> readPositions(ReadHandle lh) {
+        Map<Pair<String, String>, PositionInfo> ledgerPositions = new HashMap<>();
+        if (lh.isClosed()) {
+            return readPositions(lh, 0, lh.getLastAddConfirmed(), ledgerPositions)
+                    .thenApply(ignore -> ledgerPositions);
+        }
+
+        // The last entries of a ledger that is still open may have been written before the last add confirmed moved
+        // past them, and the cursors may already point to the ledger
+        return lh.readLastAddConfirmedAsync().exceptionally(ex -> {
+            throw new CompletionException(createManagedLedgerException(unwrap(ex)));
+        }).thenCompose(lastAddConfirmed -> readPositions(lh, 0, lastAddConfirmed, ledgerPositions)
+                .thenCompose(ignore -> readUnconfirmedPositions(lh, lastAddConfirmed + 1, ledgerPositions)))
+                .thenApply(ignore -> ledgerPositions);
+    }
+
+    private static CompletableFuture<Void> readUnconfirmedPositions(ReadHandle lh, long entryId,
+            Map<Pair<String, String>, PositionInfo> ledgerPositions) {
+        return lh.readUnconfirmedAsync(entryId, entryId).handle((entries, ex) -> {
+            if (ex != null) {
+                // No more entries
+                return CompletableFuture.<Void>completedFuture(null);
+            }
+
+            boolean found;
+            try (LedgerEntries ledgerEntries = entries) {
+                found = addPositions(ledgerEntries, ledgerPositions);
+            } catch (InvalidProtocolBufferException e) {
+                CompletableFuture<Void> future = new CompletableFuture<>();
+                future.completeExceptionally(new ManagedLedgerException(e));
+                return future;
+            }
+            return found ? readUnconfirmedPositions(lh, entryId + 1, ledgerPositions)
+                    : CompletableFuture.<Void>completedFuture(null);
+        }).thenCompose(future -> future);
+    }
+
+    private static CompletableFuture<Void> readPositions(ReadHandle lh, long firstEntry, long lastEntryInLedger,
+            Map<Pair<String, String>, PositionInfo> ledgerPositions) {
+        if (firstEntry > lastEntryInLedger) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        long lastEntry = min(firstEntry + RECOVERY_READ_BATCH_SIZE - 1, lastEntryInLedger);
+        return lh.readAsync(firstEntry, lastEntry).exceptionally(ex -> {
+            throw new CompletionException(createManagedLedgerException(unwrap(ex)));
+        }).thenCompose(entries -> {
+            try (LedgerEntries ledgerEntries = entries) {
+                addPositions(ledgerEntries, ledgerPositions);
+            } catch (InvalidProtocolBufferException e) {
+                CompletableFuture<Void> future = new CompletableFuture<>();
+                future.completeExceptionally(new ManagedLedgerException(e));
+                return future;
+            }
+            return readPositions(lh, lastEntry + 1, lastEntryInLedger, ledgerPositions);
+        });
+    }
+
+    /**
+     * @return whether any entry was read
+     */
+    private static boolean addPositions(LedgerEntries entries, Map<Pair<String, String>, PositionInfo> ledgerPositions)
+            throws InvalidProtocolBufferException {
+        boolean found = false;
+        for (LedgerEntry entry : entries) {
+            CursorPositionBatch batch = CursorPositionBatch.parseFrom(entry.getEntryBytes());
+            for (CursorPosition position : batch.getPositionsList()) {
+                ledgerPositions.put(Pair.of(position.getManagedLedgerName(), position.getCursorName()),
+                        position.getPosition());
+            }
+            found = true;
+        }
+        return found;
+    }
+
+    static ManagedLedgerException toManagedLedgerException(Throwable ex) {
+        return ManagedLedgerException.getManagedLedgerException(unwrap(ex));
+    }
+
+    private static Throwable unwrap(Throwable ex) {
+        return ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(SharedCursorsLedgerStore.class);
+}
@@ -0,0 +1,620 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.apache.bookkeeper.mledger.impl.EntryCacheImpl.ALLOCATOR;
+import static org.apache.bookkeeper.mledger.impl.ManagedLedgerImpl.createManagedLedgerException;
+
+import com.google.common.collect.Lists;
+import com.google.common.primitives.Longs;
+import io.netty.buffer.ByteBuf;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.apache.bookkeeper.client.api.BKException;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.api.ReadHandle;
+import org.apache.bookkeeper.mledger.AsyncCallbacks.ReadEntriesCallback;
+import org.apache.bookkeeper.mledger.AsyncCallbacks.ReadEntryCallback;
+import org.apache.bookkeeper.mledger.ManagedCursor;
+import org.apache.bookkeeper.mledger.ManagedLedgerException;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.pulsar.common.util.collections.ConcurrentLongHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Entry cache that appends the entries of each ledger into large direct memory slabs.
+ *
+ * <p/>Entries are indexed by entry id with a primitive array of offsets inside each slab, so no per-entry object is
+ * retained by the cache. Reads return slices of the slab and eviction always drops whole slabs, oldest first.
+ *
+ * <p/>Each ledger has its own lock, so reads and writes on different ledgers never contend. The memory accounted for
+ * in the {@link EntryCacheManager} is the size of the entries written in the slabs: the unused tail of the slabs being
+ * filled is not accounted. A slab that is evicted while entries read from it are still in use stays accounted until
+ * they are all released.
+ */
+public class SlabEntryCacheImpl implements EntryCache {
+
+    private final EntryCacheManager manager;
+    private final ManagedLedgerImpl ml;
+    private final int slabSize;
+
+    private final ConcurrentLongHashMap<LedgerSlabs> ledgers = new ConcurrentLongHashMap<>(16, 1);
+
+    // Doubly-linked list of all the slabs in allocation order, used for the FIFO eviction
+    private final Object slabsByAgeLock = new Object();
+    private Slab oldestSlab = null;
+    private Slab newestSlab = null;
+
+    // Slabs removed from the cache while entries read from them are still in use
+    private final ConcurrentLinkedQueue<Slab> pinnedSlabs = new ConcurrentLinkedQueue<>();
+
+    private final AtomicLong size = new AtomicLong(0);
+
+    private static final double MB = 1024 * 1024;
+
+    // Maximum number of missing entries between two entries appended to the same slab
+    private static final int MAX_SLAB_GAP_ENTRIES = 1024;
+
+    public SlabEntryCacheImpl(EntryCacheManager manager, ManagedLedgerImpl ml, int slabSize) {
+        checkArgument(slabSize > 0);
+        this.manager = manager;
+        this.ml = ml;
+        this.slabSize = slabSize;
+
+        if (log.isDebugEnabled()) {
+            log.debug("[{}] Initialized managed-ledger slab entry cache with slabs of {} bytes", ml.getName(),
+                    slabSize);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return ml.getName();
+    }
+
+    @Override
+    public boolean insert(EntryImpl entry) {
+        if (!manager.hasSpaceInCache()) {
+            if (log.isDebugEnabled()) {
+                log.debug("[{}] Skipping cache while doing eviction: {} - size: {}", ml.getName(), entry.getPosition(),
+                        entry.getLength());
+            }
+            return false;
+        }
+
+        if (!pinnedSlabs.isEmpty()) {
+            releaseUnpinnedSlabs();
+        }
+
+        long ledgerId = entry.getLedgerId();
+        long entryId = entry.getEntryId();
+        int length = entry.getLength();
+        LedgerSlabs ledgerSlabs = ledgers.computeIfAbsent(ledgerId, id -> new LedgerSlabs());
+
+        ledgerSlabs.lock.writeLock().lock();
+        try {
+            int index = ledgerSlabs.floorSlabIndex(entryId);
+            Slab slab = index >= 0 ? ledgerSlabs.slabs.get(index) : null;
+            if (slab != null && entryId <= slab.lastEntryId()) {
+                // Entry was already cached, or was missing when the following entries were appended to the slab
+                return false;
+            }
+
+            // The entries are only appended at the end of a slab: a new slab is started when the entry is too far
+            // from the last one. An entry before the cached ones, eg: after an eviction, gets its own slab
+            if (slab == null || entryId - slab.lastEntryId() > MAX_SLAB_GAP_ENTRIES
+                    || slab.buffer.writableBytes() < length) {
+                int capacity = Math.max(slabSize, length);
+                try {
+                    slab = new Slab(ledgerId, entryId, ALLOCATOR.directBuffer(capacity, capacity));
+                } catch (Throwable t) {
+                    log.warn("[{}] Failed to allocate slab for entry cache: {}", ml.getName(), t.getMessage(), t);
+                    return false;
+                }
+
+                ledgerSlabs.slabs.add(index + 1, slab);
+                linkSlab(slab);
+            }
+
+            ByteBuf entryBuf = entry.getDataBuffer();
+            slab.append(entryId, entryBuf, entryBuf.readerIndex(), length);
+            size.addAndGet(length);
+            manager.entryAdded(length);
+        } finally {
+            ledgerSlabs.lock.writeLock().unlock();
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("[{}] Added entry to cache: {} - size: {}", ml.getName(), entry.getPosition(), length);
+        }
+        return true;
+    }
+
+    @Override
+    public void invalidateEntries(final PositionImpl lastPosition) {
+        int entriesRemoved = 0;
+        long sizeRemoved = 0;
+
+        for (long ledgerId : ledgers.keys()) {
+            if (ledgerId > lastPosition.getLedgerId()) {
+                continue;
+            }
+
+            LedgerSlabs ledgerSlabs = ledgerId < lastPosition.getLedgerId() ? ledgers.remove(ledgerId)
+                    : ledgers.get(ledgerId);
+            if (ledgerSlabs == null) {
+                continue;
+            }
+
+            long lastEntryId = ledgerId < lastPosition.getLedgerId() ? Long.MAX_VALUE : lastPosition.getEntryId();
+            for (Slab slab : ledgerSlabs.removeSlabsUpTo(lastEntryId)) {
+                entriesRemoved += slab.entries;
+                sizeRemoved += slab.bytes();
+                releaseSlab(slab);
+            }
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("[{}] Invalidated entries up to {} - Entries removed: {} - Size removed: {}", ml.getName(),
+                    lastPosition, entriesRemoved, sizeRemoved);
+        }
+    }
+
+    @Override
+    public void invalidateAllEntries(long ledgerId) {
+        LedgerSlabs ledgerSlabs = ledgers.remove(ledgerId);
+        if (ledgerSlabs == null) {
+            return;
+        }
+
+        int entriesRemoved = 0;
+        long sizeRemoved = 0;
+        for (Slab slab : ledgerSlabs.removeSlabsUpTo(Long.MAX_VALUE)) {
+            entriesRemoved += slab.entries;
+            sizeRemoved += slab.bytes();
+            releaseSlab(slab);
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("[{}] Invalidated all entries on ledger {} - Entries removed: {} - Size removed: {}",
+                    ml.getName(), ledgerId, entriesRemoved, sizeRemoved);
+        }
+    }
+
+    @Override
+    public void asyncReadEntry(ReadHandle lh, PositionImpl position, final ReadEntryCallback callback,
+            final Object ctx) {
+        if (log.isDebugEnabled()) {
+            log.debug("[{}] Reading entry ledger {}: {}", ml.getName(), lh.getId(), position.getEntryId());
+        }
+
+        EntryImpl cachedEntry = null;
+        LedgerSlabs ledgerSlabs = ledgers.get(position.getLedgerId());
+        if (ledgerSlabs != null) {
+            ledgerSlabs.lock.readLock().lock();
+            try {
+                ByteBuf data = ledgerSlabs.get(position.getEntryId());
+                if (data != null) {
+                    cachedEntry = EntryImpl.create(position, data);
+                    data.release();
+                }
+            } finally {
+                ledgerSlabs.lock.readLock().unlock();
+            }
+        }
+
+        if (cachedEntry != null) {
+            manager.mlFactoryMBean.recordCacheHit(cachedEntry.getLength());
+            callback.readEntryComplete(cachedEntry, ctx);
+        } else {
+            lh.readAsync(position.getEntryId(), position.getEntryId()).whenCompleteAsync(
+                    (ledgerEntries, exception) -> {
+                        if (exception != null) {
+                            ml.invalidateLedgerHandle(lh, exception);
+                            callback.readEntryFailed(createManagedLedgerException(exception), ctx);
+                            return;
+                        }
+
+                        try {
+                            Iterator<LedgerEntry> iterator = ledgerEntries.iterator();
+                            if (iterator.hasNext()) {
+                                EntryImpl returnEntry = EntryImpl.create(iterator.next());
+
+                                manager.mlFactoryMBean.recordCacheMiss(1, returnEntry.getLength());
+                                ml.mbean.addReadEntriesSample(1, returnEntry.getLength());
+                                callback.readEntryComplete(returnEntry, ctx);
+                            } else {
+                                // got an empty sequence
+                                callback.readEntryFailed(new ManagedLedgerException("Could not read given position"),
+                                        ctx);
+                            }
+                        } finally {
+                            ledgerEntries.close();
+                        }
+                    }, ml.getExecutor().chooseThread(ml.getName()));
+        }
+    }
+
+    @Override
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public void asyncReadEntry(ReadHandle lh, long firstEntry, long lastEntry, boolean isSlowestReader,
+            final ReadEntriesCallback callback, Object ctx) {
+        final long ledgerId = lh.getId();
+        final int entriesToRead = (int) (lastEntry - firstEntry) + 1;
+
+        if (log.isDebugEnabled()) {
+            log.debug("[{}] Reading entries range ledger {}: {} to {}", ml.getName(), ledgerId, firstEntry, lastEntry);
+        }
+
+        List<EntryImpl> cachedEntries = getCachedEntries(ledgerId, firstEntry, lastEntry);
+        if (cachedEntries != null) {
+            long totalCachedSize = 0;
+            for (EntryImpl entry : cachedEntries) {
+                totalCachedSize += entry.getLength();
+            }
+
+            manager.mlFactoryMBean.recordCacheHits(cachedEntries.size(), totalCachedSize);
+            if (log.isDebugEnabled()) {
+                log.debug("[{}] Ledger {} -- Found in cache entries: {}-{}", ml.getName(), ledgerId, firstEntry,
+                        lastEntry);
+            }
+
+            callback.readEntriesComplete((List) cachedEntries, ctx);
+        } else {
+            // Read all the entries from bookkeeper
+            lh.readAsync(firstEntry, lastEntry).whenCompleteAsync(
+                    (ledgerEntries, exception) -> {
+                        if (exception != null) {
+                            if (exception instanceof BKException
+                                && ((BKException) exception).getCode() == BKException.Code.TooManyRequestsException) {
+                                callback.readEntriesFailed(createManagedLedgerException(exception), ctx);
+                            } else {
+                                ml.invalidateLedgerHandle(lh, exception);
+                                callback.readEntriesFailed(createManagedLedgerException(exception), ctx);
+                            }
+                            return;
+                        }
+
+                        try {
+                            long totalSize = 0;
+                            final List<EntryImpl> entriesToReturn = Lists.newArrayListWithExpectedSize(entriesToRead);
+                            for (LedgerEntry e : ledgerEntries) {
+                                EntryImpl entry = EntryImpl.create(e);
+                                entriesToReturn.add(entry);
+                                totalSize += entry.getLength();
+                            }
+
+                            manager.mlFactoryMBean.recordCacheMiss(entriesToReturn.size(), totalSize);
+                            ml.getMBean().addReadEntriesSample(entriesToReturn.size(), totalSize);
+
+                            ManagedCursor reader = callback instanceof OpReadEntry
+                                    ? ((OpReadEntry) callback).cursor : null;
+                            if (manager.getAdmissionPolicy().admitReadEntries(ml, reader,
+                                    PositionImpl.get(ledgerId, firstEntry), PositionImpl.get(ledgerId, lastEntry))) {
+                                // Another cursor is going to read the same entries soon
+                                entriesToReturn.forEach(this::insert);
+                            }
+
+                            callback.readEntriesComplete((List) entriesToReturn, ctx);
+                        } finally {
+                            ledgerEntries.close();
+                        }
+                    }, ml.getExecutor().chooseThread(ml.getName()));
+        }
+    }
+
+    /**
+     * @return all the entries in the range, or null if any of them is not in the cache
+     */
+    private List<EntryImpl> getCachedEntries(long ledgerId, long firstEntry, long lastEntry) {
+        LedgerSlabs ledgerSlabs = ledgers.get(ledgerId);
+        if (ledgerSlabs == null) {
+            return null;
+        }
+
+        List<EntryImpl> entries = Lists.newArrayListWithExpectedSize((int) (lastEntry - firstEntry) + 1);
+        ledgerSlabs.lock.readLock().lock();
+        try {
+            for (long entryId = firstEntry; entryId <= lastEntry; entryId++) {
+                ByteBuf data = ledgerSlabs.get(entryId);
+                if (data == null) {
+                    entries.forEach(EntryImpl::release);
+                    return null;
+                }
+
+                entries.add(EntryImpl.create(ledgerId, entryId, data));
+                data.release();
+            }
+        } finally {
+            ledgerSlabs.lock.readLock().unlock();
+        }
+        return entries;
+    }
+
+    @Override
+    public void clear() {
+        for (long ledgerId : ledgers.keys()) {
+            LedgerSlabs ledgerSlabs = ledgers.remove(ledgerId);
+            if (ledgerSlabs != null) {
+                ledgerSlabs.removeSlabsUpTo(Long.MAX_VALUE).forEach(this::releaseSlab);
+            }
+        }
+
+        Slab slab;
+        while ((slab = pollOldestSlab()) != null) {
+            releaseSlab(slab);
+        }
+
+        // The cache is discarded, the entries still in use release the memory of their slab when they are released
+        while ((slab = pinnedSlabs.poll()) != null) {
+            freeSlab(slab);
+        }
+    }
+
+    @Override
+    public long getSize() {
+        return size.get();
+    }
+
+    @Override
+    public int compareTo(EntryCache other) {
+        return Longs.compare(getSize(), other.getSize());
+    }
+
+    @Override
+    public Pair<Integer, Long> evictEntries(long sizeToFree) {
+        checkArgument(sizeToFree > 0);
+        releaseUnpinnedSlabs();
+        int evictedEntries = 0;
+        long evictedSize = 0;
+
+        Slab slab;
+        while (evictedSize < sizeToFree && (slab = pollOldestSlab()) != null) {
+            LedgerSlabs ledgerSlabs = ledgers.get(slab.ledgerId);
+            if (ledgerSlabs != null) {
+                ledgerSlabs.removeSlab(slab);
+            }
+
+            evictedEntries += slab.entries;
+            evictedSize += slab.bytes();
+            releaseSlab(slab);
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug(
+                    "[{}] Doing cache eviction of at least {} Mb -- Deleted {} entries - Total size deleted: {} Mb "
+                            + " -- Current Size: {} Mb",
+                    ml.getName(), sizeToFree / MB, evictedEntries, evictedSize / MB, size.get() / MB);
+        }
+        return Pair.of(evictedEntries, evictedSize);
+    }
+
+    private void linkSlab(Slab slab) {
+        synchronized (slabsByAgeLock) {
+            slab.older = newestSlab;
+            if (newestSlab != null) {
+                newestSlab.newer = slab;
+            } else {
+                oldestSlab = slab;
+            }
+            newestSlab = slab;
+            slab.linked = true;
+        }
+    }
+
+    private void unlinkSlab(Slab slab) {
+        synchronized (slabsByAgeLock) {
+            if (!slab.linked) {
+                return;
+            }
+
+            if (slab.older != null) {
+                slab.older.newer = slab.newer;
+            } else {
+                oldestSlab = slab.newer;
+            }
+            if (slab.newer != null) {
+                slab.newer.older = slab.older;
+            } else {
+                newestSlab = slab.older;
+            }
+            slab.older = slab.newer = null;
+            slab.linked = false;
+        }
+    }
+
+    private Slab pollOldestSlab() {
+        synchronized (slabsByAgeLock) {
+            Slab slab = oldestSlab;
+            if (slab != null) {
+                unlinkSlab(slab);
+            }
+            return slab;
+        }
+    }
+
+    /**
+     * Release the memory of a slab that is no longer reachable from the ledger index. If entries read from the slab are
+     * still in use, the slab stays accounted until they are released.
+     */
+    private void releaseSlab(Slab slab) {
+        unlinkSlab(slab);
+        if (!slab.released.compareAndSet(false, true)) {
+            return;
+        }
+
+        // Entries that were read from this slab keep their own reference on the buffer
+        if (slab.buffer.refCnt() > 1) {
+            pinnedSlabs.add(slab);
+        } else {
+            freeSlab(slab);
+        }
+    }
+
+    private void releaseUnpinnedSlabs() {
+        for (Slab slab : pinnedSlabs) {
+            // No new entry can be read from a slab removed from the index, so the count can only go down
+            if (slab.buffer.refCnt() == 1 && pinnedSlabs.remove(slab)) {
+                freeSlab(slab);
+            }
+        }
+    }
+
+    private void freeSlab(Slab slab) {
+        int bytes = slab.bytes();
+        slab.buffer.release();
+        size.addAndGet(-bytes);
+        manager.entriesRemoved(bytes);
+    }
+
+    /**
+     * Slabs of a single ledger, sorted by entry id. The entries of the slabs do not overlap.
+     */
+    private static class LedgerSlabs {
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private final List<Slab> slabs = new ArrayList<>();
+
+        /**
+         * Must be called while holding the read lock.
+         *
+         * @return a retained slice with the entry data, or null if the entry is not cached
+         */
+        ByteBuf get(long entryId) {
+            int index = floorSlabIndex(entryId);
+            return index >= 0 ? slabs.get(index).get(entryId) : null;
+        }
+
+        /**
+         * Must be called while holding the lock.
+         *
+         * @return the index of the last slab starting at or before the entry, or -1 if there is none
+         */
+        int floorSlabIndex(long entryId) {
+            int low = 0;
+            int high = slabs.size() - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (slabs.get(mid).firstEntryId <= entryId) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return high;
+        }
+
+        List<Slab> removeSlabsUpTo(long lastEntryId) {
+            List<Slab> removed = new ArrayList<>();
+            lock.writeLock().lock();
+            try {
+                Iterator<Slab> iterator = slabs.iterator();
+                while (iterator.hasNext()) {
+                    Slab slab = iterator.next();
+                    if (slab.lastEntryId() > lastEntryId) {
+                        break;
+                    }
+                    iterator.remove();
+                    removed.add(slab);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            return removed;
+        }
+
+        void removeSlab(Slab slab) {
+            lock.writeLock().lock();
+            try {
+                slabs.remove(slab);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Direct memory buffer containing entries of a ledger, in entry id order.
+     */
+    private static class Slab {
+        private final long ledgerId;
+        private final long firstEntryId;
+        private final ByteBuf buffer;
+
+        // offsets[i] is the position of entry firstEntryId + i in the buffer, offsets[count] is the end of the last
+        // entry. The entries missing between two appended entries are empty
+        private int[] offsets = new int[64];
+        private int count = 0;
+        private int entries = 0;
+
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        // Guarded by slabsByAgeLock
+        private Slab older;
+        private Slab newer;
+        private boolean linked;
+
+        Slab(long ledgerId, long firstEntryId, ByteBuf buffer) {
+            this.ledgerId = ledgerId;
+            this.firstEntryId = firstEntryId;
+            this.buffer = buffer;
+        }
+
+        long lastEntryId() {
+            return firstEntryId + count - 1;
+        }
+
+        int bytes() {
+            return offsets[count];
+        }
+
+        void append(long entryId, ByteBuf data, int index, int length) {
+            int newCount = (int) (entryId - firstEntryId) + 1;
+            if (newCount >= offsets.length) {
+                offsets = Arrays.copyOf(offsets, Math.max(offsets.length * 2, newCount + 1));
+            }
+            buffer.writeBytes(data, index, length);
+            Arrays.fill(offsets, count + 1, newCount, offsets[count]);
+            offsets[newCount] = buffer.writerIndex();
+            count = newCount;
+            entries++;
+        }
+
+        ByteBuf get(long entryId) {
+            long idx = entryId - firstEntryId;
+            if (idx < 0 || idx >= count) {
+                return null;
+            }
+
+            int offset = offsets[(int) idx];
+            int length = offsets[(int) idx + 1] - offset;
+            return length > 0 ? buffer.retainedSlice(offset, length) : null;
+        }
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(SlabEntryCacheImpl.class);
+}
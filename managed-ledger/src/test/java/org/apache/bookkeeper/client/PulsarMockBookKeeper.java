@@ -68,6 +68,9 @@ public class PulsarMockBookKeeper extends BookKeeper {
     CompletableFuture<Void> defaultResponse = CompletableFuture.completedFuture(null);
     List<CompletableFuture<Void>> failures = new ArrayList<>();
 
+    // Simulated latency of each write
+    volatile long addEntryDelayMillis = 1;
+
     public PulsarMockBookKeeper(ZooKeeper zkc, ExecutorService executor) throws Exception {
         this.zkc = zkc;
         this.executor = executor;
@@ -233,6 +236,10 @@ public class PulsarMockBookKeeper extends BookKeeper {
         ledgers.clear();
     }
 
+    public void setAddEntryDelayMillis(long addEntryDelayMillis) {
+        this.addEntryDelayMillis = addEntryDelayMillis;
+    }
+
     public Set<Long> getLedgers() {
         return ledgers.keySet();
     }
@@ -157,7 +157,7 @@ public class PulsarMockLedgerHandle extends LedgerHandle {
         data.retain();
         bk.getProgrammedFailure().thenComposeAsync((res) -> {
                 try {
-                    Thread.sleep(1);
+                    Thread.sleep(bk.addEntryDelayMillis);
                 } catch (InterruptedException e) {
                 }
 
@@ -0,0 +1,163 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import org.apache.bookkeeper.mledger.Entry;
+import org.apache.bookkeeper.mledger.ManagedCursor;
+import org.apache.bookkeeper.mledger.ManagedLedger;
+import org.apache.bookkeeper.mledger.ManagedLedgerConfig;
+import org.apache.bookkeeper.mledger.Position;
+import org.apache.bookkeeper.test.MockedBookKeeperTestCase;
+import org.testng.annotations.Test;
+
+public class CursorReadAheadTest extends MockedBookKeeperTestCase {
+
+    private static ManagedLedgerConfig readAheadConfig() {
+        return new ManagedLedgerConfig().setMaxEntriesPerLedger(10).setReadAheadMaxBufferSizeBytes(1024)
+                .setReadAheadBatchSize(7);
+    }
+
+    @Test(timeOut = 20000)
+    public void testDisabledByDefault() throws Exception {
+        ManagedLedger ledger = factory.open("my_test_ledger");
+        ManagedCursorImpl cursor = (ManagedCursorImpl) ledger.openCursor("c1");
+        assertNull(cursor.readAhead);
+    }
+
+    @Test(timeOut = 20000)
+    public void testReadBacklogAcrossLedgers() throws Exception {
+        ManagedLedger ledger = factory.open("my_test_ledger", readAheadConfig());
+        ManagedCursorImpl cursor = (ManagedCursorImpl) ledger.openCursor("c1");
+
+        for (int i = 0; i < 95; i++) {
+            ledger.addEntry(("entry-" + i).getBytes());
+        }
+
+        boolean prefetched = false;
+        int count = 0;
+        while (count < 95) {
+            List<Entry> entries = cursor.readEntries(3);
+            assertFalse(entries.isEmpty());
+            for (Entry entry : entries) {
+                assertEquals(new String(entry.getData()), "entry-" + count++);
+                entry.release();
+            }
+            prefetched |= cursor.readAhead.isPrefetching();
+        }
+
+        assertTrue(prefetched);
+        assertFalse(cursor.hasMoreEntries());
+
+        // Entries added after catching up are read through the regular path
+        ledger.addEntry("entry-95".getBytes());
+        List<Entry> entries = cursor.readEntries(3);
+        assertEquals(entries.size(), 1);
+        assertEquals(new String(entries.get(0).getData()), "entry-95");
+        entries.forEach(Entry::release);
+
+        cursor.close();
+        assertFalse(cursor.readAhead.isPrefetching());
+        assertEquals(cursor.readAhead.getBufferedSize(), 0);
+    }
+
+    @Test(timeOut = 20000)
+    public void testSkipDeletedEntries() throws Exception {
+        ManagedLedger ledger = factory.open("my_test_ledger", readAheadConfig());
+        ManagedCursorImpl cursor = (ManagedCursorImpl) ledger.openCursor("c1");
+
+        Position[] positions = new Position[50];
+        for (int i = 0; i < 50; i++) {
+            positions[i] = ledger.addEntry(("entry-" + i).getBytes());
+        }
+
+        // Delete a range spanning a ledger boundary, ahead of the read position
+        for (int i = 15; i < 32; i++) {
+            cursor.delete(positions[i]);
+        }
+
+        int expected = 0;
+        while (cursor.hasMoreEntries()) {
+            for (Entry entry : cursor.readEntries(4)) {
+                assertEquals(new String(entry.getData()), "entry-" + expected);
+                entry.release();
+                expected = expected == 14 ? 32 : expected + 1;
+            }
+        }
+        assertEquals(expected, 50);
+    }
+
+    @Test(timeOut = 20000)
+    public void testRewind() throws Exception {
+        ManagedLedger ledger = factory.open("my_test_ledger", readAheadConfig());
+        ManagedCursorImpl cursor = (ManagedCursorImpl) ledger.openCursor("c1");
+
+        for (int i = 0; i < 40; i++) {
+            ledger.addEntry(("entry-" + i).getBytes());
+        }
+
+        for (int i = 0; i < 5; i++) {
+            cursor.readEntries(4).forEach(Entry::release);
+        }
+        assertTrue(cursor.readAhead.isPrefetching());
+
+        // Reading from a position that was not prefetched drops the buffer
+        cursor.rewind();
+        List<Entry> entries = cursor.readEntries(4);
+        assertEquals(entries.size(), 4);
+        assertEquals(new String(entries.get(0).getData()), "entry-0");
+        entries.forEach(Entry::release);
+        assertFalse(cursor.readAhead.isPrefetching());
+        assertEquals(cursor.readAhead.getBufferedSize(), 0);
+
+        int count = 4;
+        while (cursor.hasMoreEntries()) {
+            for (Entry entry : cursor.readEntries(4)) {
+                assertEquals(new String(entry.getData()), "entry-" + count++);
+                entry.release();
+            }
+        }
+        assertEquals(count, 40);
+    }
+
+    @Test(timeOut = 20000)
+    public void testDeleteCursorReleasesBuffer() throws Exception {
+        ManagedLedger ledger = factory.open("my_test_ledger", readAheadConfig());
+        ManagedCursor c1 = ledger.openCursor("c1");
+        ManagedCursorImpl cursor = (ManagedCursorImpl) c1;
+
+        for (int i = 0; i < 40; i++) {
+            ledger.addEntry(("entry-" + i).getBytes());
+        }
+
+        for (int i = 0; i < 5; i++) {
+            cursor.readEntries(2).forEach(Entry::release);
+        }
+        assertTrue(cursor.readAhead.isPrefetching());
+
+        ledger.deleteCursor("c1");
+        assertFalse(cursor.readAhead.isPrefetching());
+        assertEquals(cursor.readAhead.getBufferedSize(), 0);
+    }
+}
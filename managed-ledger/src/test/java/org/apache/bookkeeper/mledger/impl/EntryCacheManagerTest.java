@@ -202,6 +202,75 @@ public class EntryCacheManagerTest extends MockedBookKeeperTestCase {
         assertEquals(cacheManager.mlFactoryMBean.getNumberOfCacheEvictions(), 0);
     }
 
+    @Test
+    void verifyAddAdmissionByCursorDistance() throws Exception {
+        ManagedLedgerFactoryConfig config = new ManagedLedgerFactoryConfig();
+        config.setMaxCacheSize(1000);
+        config.setCacheAdmissionMaxCursorDistance(5);
+
+        factory = new ManagedLedgerFactoryImpl(bkc, bkc.getZkHandle(), config);
+
+        ManagedLedgerImpl ledger = (ManagedLedgerImpl) factory.open("ledger");
+        EntryCache cache1 = ledger.entryCache;
+        ledger.openCursor("c1");
+
+        // Only the entries close to the cursor are cached
+        for (int i = 0; i < 10; i++) {
+            ledger.addEntry(("entry-" + i).getBytes());
+        }
+        assertEquals(cache1.getSize(), 6 * 7);
+
+        // A new cursor starts at the tail, so the next entries are cached again
+        ledger.openCursor("c2");
+        for (int i = 10; i < 13; i++) {
+            ledger.addEntry(("entry-" + i).getBytes());
+        }
+        assertEquals(cache1.getSize(), 6 * 7 + 3 * 8);
+    }
+
+    @Test
+    void verifyReadAdmissionByCursorDistance() throws Exception {
+        ManagedLedgerFactoryConfig config = new ManagedLedgerFactoryConfig();
+        config.setMaxCacheSize(1000);
+        config.setCacheAdmissionMaxCursorDistance(5);
+
+        factory = new ManagedLedgerFactoryImpl(bkc, bkc.getZkHandle(), config);
+
+        ManagedLedgerImpl ledger = (ManagedLedgerImpl) factory.open("ledger");
+        EntryCache cache1 = ledger.entryCache;
+        ManagedCursorImpl c1 = (ManagedCursorImpl) ledger.openCursor("c1");
+        ManagedCursorImpl c2 = (ManagedCursorImpl) ledger.openCursor("c2");
+
+        for (int i = 0; i < 20; i++) {
+            ledger.addEntry(("entry-" + i).getBytes());
+        }
+        cache1.clear();
+
+        // Both cursors are at the same position, c2 is going to read the same entries next
+        c1.readEntries(3).forEach(Entry::release);
+        assertEquals(cache1.getSize(), 3 * 7);
+        cache1.clear();
+
+        // c2 is following c1 closely
+        c1.readEntries(3).forEach(Entry::release);
+        assertEquals(cache1.getSize(), 3 * 7);
+
+        // c2 is too far behind
+        c1.readEntries(4).forEach(Entry::release);
+        assertEquals(cache1.getSize(), 3 * 7);
+
+        // Nobody is following c2
+        c2.readEntries(3).forEach(Entry::release);
+        assertEquals(cache1.getSize(), 3 * 7);
+        List<Entry> entries = c2.readEntries(3);
+        assertEquals(new String(entries.get(0).getData()), "entry-3");
+        entries.forEach(Entry::release);
+
+        EntryCacheManager cacheManager = factory.getEntryCacheManager();
+        cacheManager.mlFactoryMBean.refreshStats(1, TimeUnit.SECONDS);
+        assertEquals(cacheManager.mlFactoryMBean.getCacheHitsRate(), 3.0);
+    }
+
     @Test
     void verifyHitsMisses() throws Exception {
         ManagedLedgerFactoryConfig config = new ManagedLedgerFactoryConfig();
@@ -38,6 +38,7 @@ import org.apache.bookkeeper.mledger.Entry;
 import org.apache.bookkeeper.mledger.ManagedCursor;
 import org.apache.bookkeeper.mledger.ManagedLedgerException;
 import org.apache.bookkeeper.mledger.Position;
+import org.apache.commons.lang3.tuple.Pair;
 import org.testng.annotations.Test;
 
 @Test
@@ -173,6 +174,19 @@ public class ManagedCursorContainerTest {
         public void asyncDelete(Iterable<Position> position, DeleteCallback callback, Object ctx) {
         }
 
+        @Override
+        public void asyncDeleteRanges(List<Pair<Position, Position>> ranges, DeleteCallback callback, Object ctx) {
+        }
+
+        @Override
+        public void asyncDeleteBatchIndexes(Position position, long[] ackSet, DeleteCallback callback, Object ctx) {
+        }
+
+        @Override
+        public long[] getBatchIndexesAckSet(Position position) {
+            return null;
+        }
+
         @Override
         public void clearBacklog() throws InterruptedException, ManagedLedgerException {
         }
@@ -35,8 +35,10 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -68,9 +70,11 @@ import org.apache.bookkeeper.mledger.Position;
 import org.apache.bookkeeper.mledger.impl.ManagedCursorImpl.VoidCallback;
 import org.apache.bookkeeper.mledger.impl.MetaStore.MetaStoreCallback;
 import org.apache.bookkeeper.mledger.impl.MetaStore.Stat;
+import org.apache.bookkeeper.mledger.proto.MLDataFormats.DeletedEntriesBitmap;
 import org.apache.bookkeeper.mledger.proto.MLDataFormats.ManagedCursorInfo;
 import org.apache.bookkeeper.mledger.proto.MLDataFormats.PositionInfo;
 import org.apache.bookkeeper.test.MockedBookKeeperTestCase;
+import org.apache.commons.lang3.tuple.Pair;
 import org.apache.zookeeper.KeeperException.Code;
 import org.mockito.Mockito;
 import org.mockito.invocation.InvocationOnMock;
@@ -1163,6 +1167,55 @@ public class ManagedCursorTest extends MockedBookKeeperTestCase {
         }
     }
 
+    @Test(timeOut = 20000)
+    void testSingleDeleteWithOpenRangeSet() throws Exception {
+        ManagedLedgerConfig config = new ManagedLedgerConfig().setMaxEntriesPerLedger(3)
+                .setUnackedRangesOpenCacheSetEnabled(true);
+        ManagedLedger ledger = factory.open("my_test_ledger", config);
+        ManagedCursorImpl cursor = (ManagedCursorImpl) ledger.openCursor("c1");
+
+        List<Position> positions = new ArrayList<>();
+        for (int i = 0; i < 9; i++) {
+            positions.add(ledger.addEntry(("entry-" + i).getBytes(Encoding)));
+        }
+
+        Position p0 = cursor.getMarkDeletedPosition();
+
+        // Leave holes across the 3 ledgers
+        cursor.delete(positions.get(1));
+        cursor.delete(positions.get(3));
+        cursor.delete(positions.get(4));
+        cursor.delete(positions.get(7));
+        assertEquals(cursor.getMarkDeletedPosition(), p0);
+        assertEquals(cursor.getTotalNonContiguousDeletedMessagesRange(), 3);
+        assertEquals(cursor.getNumberOfEntriesInBacklog(), 9 - 4);
+        assertTrue(cursor.isMessageDeleted(positions.get(3)));
+        assertFalse(cursor.isMessageDeleted(positions.get(5)));
+
+        List<Entry> entries = cursor.readEntries(9);
+        assertEquals(entries.stream().map(Entry::getPosition).collect(Collectors.toList()),
+                Lists.newArrayList(positions.get(0), positions.get(2), positions.get(5), positions.get(6),
+                        positions.get(8)));
+        entries.forEach(Entry::release);
+
+        cursor.delete(positions.get(0));
+        assertEquals(cursor.getMarkDeletedPosition(), positions.get(1));
+
+        // Filling the hole at the end of a ledger moves the mark-delete into the next ledger
+        cursor.delete(positions.get(2));
+        assertEquals(cursor.getMarkDeletedPosition(), positions.get(4));
+        assertEquals(cursor.getTotalNonContiguousDeletedMessagesRange(), 1);
+
+        ledger.close();
+
+        // Re-open and verify the holes were recovered
+        ledger = factory.open("my_test_ledger", config);
+        cursor = (ManagedCursorImpl) ledger.openCursor("c1");
+        assertEquals(cursor.getMarkDeletedPosition(), positions.get(4));
+        assertEquals(cursor.getNumberOfEntriesInBacklog(), 3);
+        assertTrue(cursor.isMessageDeleted(positions.get(7)));
+    }
+
     @Test(timeOut = 20000)
     void testFilteringReadEntries() throws Exception {
         ManagedLedger ledger = factory.open("my_test_ledger", new ManagedLedgerConfig().setMaxEntriesPerLedger(3));
@@ -2579,6 +2632,290 @@ public class ManagedCursorTest extends MockedBookKeeperTestCase {
         assertEquals(entries.size(), totalAddEntries / 2);
     }
 
+    /**
+     * Close Cursor with more unacked ranges than MaxUnackedRangesToPersist: all the individually deleted messages
+     * should be persisted as bitmaps into the cursor-ledger and recovered.
+     *
+     * @throws Exception
+     */
+    @Test(timeOut = 20000)
+    public void testOutOfOrderDeletePersistenceAsBitmapIntoLedger() throws Exception {
+        for (boolean openRangeSet : new boolean[] { false, true }) {
+            final int totalAddEntries = 100;
+            String ledgerName = "my_test_ledger_bitmap_" + openRangeSet;
+            ManagedLedgerConfig managedLedgerConfig = new ManagedLedgerConfig().setMaxEntriesPerLedger(7)
+                    .setUnackedRangesOpenCacheSetEnabled(openRangeSet);
+            managedLedgerConfig.setMaxUnackedRangesToPersistInZk(5);
+            managedLedgerConfig.setMaxUnackedRangesToPersist(10);
+            ManagedLedgerImpl ledger = (ManagedLedgerImpl) factory.open(ledgerName, managedLedgerConfig);
+            ManagedCursorImpl c1 = (ManagedCursorImpl) ledger.openCursor("c1");
+
+            List<Position> addedPositions = new ArrayList<>();
+            for (int i = 0; i < totalAddEntries; i++) {
+                Position p = ledger.addEntry(("dummy-entry-" + i).getBytes(Encoding));
+                addedPositions.add(p);
+                if (i % 2 == 0) {
+                    // Acknowledge alternative message to create totalEntries/2 holes
+                    c1.delete(addedPositions.get(i));
+                }
+            }
+            assertEquals(c1.getNumberOfEntriesInBacklog(), totalAddEntries / 2);
+
+            // Close ledger to persist individual-deleted positions into cursor-ledger
+            ledger.close();
+
+            // verify cursor-ledger's last entry has all the individual-deleted positions as bitmaps
+            final CountDownLatch latch = new CountDownLatch(1);
+            final AtomicReference<PositionInfo> positionInfo = new AtomicReference<>();
+            bkc.asyncOpenLedger(c1.getCursorLedger(), DigestType.CRC32C, "".getBytes(), (rc, lh, ctx) -> {
+                if (rc == BKException.Code.OK) {
+                    long lastEntry = lh.getLastAddConfirmed();
+                    lh.asyncReadEntries(lastEntry, lastEntry, (rc1, lh1, seq, ctx1) -> {
+                        try {
+                            positionInfo.set(PositionInfo.parseFrom(seq.nextElement().getEntry()));
+                        } catch (Exception e) {
+                        }
+                        latch.countDown();
+                    }, null);
+                } else {
+                    latch.countDown();
+                }
+            }, null);
+            latch.await();
+            assertEquals(positionInfo.get().getIndividualDeletedMessagesCount(), 0);
+            assertTrue(positionInfo.get().getIndividualDeletedMessagesBitmapCount() > 0);
+
+            // Re-Open
+            factory = new ManagedLedgerFactoryImpl(bkc, bkc.getZkHandle());
+            ledger = (ManagedLedgerImpl) factory.open(ledgerName, managedLedgerConfig);
+            c1 = (ManagedCursorImpl) ledger.openCursor("c1");
+            // verify cursor has been recovered
+            assertEquals(c1.getNumberOfEntriesInBacklog(), totalAddEntries / 2);
+
+            // only the non-deleted positions should be read
+            List<Entry> entries = c1.readEntries(totalAddEntries);
+            assertEquals(entries.size(), totalAddEntries / 2);
+            for (int i = 0; i < entries.size(); i++) {
+                assertEquals(entries.get(i).getPosition(), addedPositions.get(2 * i + 1));
+            }
+            entries.forEach(Entry::release);
+
+            // Acking the first hole should move the mark-delete across the recovered ranges
+            c1.delete(addedPositions.get(1));
+            assertEquals(c1.getMarkDeletedPosition(), addedPositions.get(2));
+        }
+    }
+
+    @Test(timeOut = 20000)
+    public void testIndividualDeletedMessagesBitmapsReused() throws Exception {
+        ManagedLedgerConfig managedLedgerConfig = new ManagedLedgerConfig().setMaxEntriesPerLedger(7);
+        managedLedgerConfig.setMaxUnackedRangesToPersist(10);
+        ManagedLedgerImpl ledger = (ManagedLedgerImpl) factory.open("my_test_ledger_bitmap_reuse",
+                managedLedgerConfig);
+        ManagedCursorImpl c1 = (ManagedCursorImpl) ledger.openCursor("c1");
+
+        List<Position> addedPositions = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            addedPositions.add(ledger.addEntry(("dummy-entry-" + i).getBytes(Encoding)));
+        }
+        for (int i = 2; i < 40; i += 2) {
+            c1.delete(addedPositions.get(i));
+        }
+
+        // Not rebuilt as long as the individually deleted messages don't change
+        List<DeletedEntriesBitmap> bitmaps = c1.buildIndividualDeletedMessageBitmaps();
+        assertFalse(bitmaps.isEmpty());
+        assertSame(c1.buildIndividualDeletedMessageBitmaps(), bitmaps);
+
+        // Rebuilt after an individual delete
+        c1.delete(addedPositions.get(3));
+        List<DeletedEntriesBitmap> newBitmaps = c1.buildIndividualDeletedMessageBitmaps();
+        assertNotSame(newBitmaps, bitmaps);
+        assertSame(c1.buildIndividualDeletedMessageBitmaps(), newBitmaps);
+
+        // Rebuilt after a mark-delete that removes some of the individually deleted messages
+        c1.markDelete(addedPositions.get(4));
+        bitmaps = c1.buildIndividualDeletedMessageBitmaps();
+        assertNotSame(bitmaps, newBitmaps);
+        assertSame(c1.buildIndividualDeletedMessageBitmaps(), bitmaps);
+
+        ledger.close();
+    }
+
+    @Test(timeOut = 20000)
+    public void testBatchIndexesDeletion() throws Exception {
+        ManagedLedger ledger = factory.open("my_test_ledger_batch_indexes");
+        ManagedCursorImpl c1 = (ManagedCursorImpl) ledger.openCursor("c1");
+
+        Position p1 = ledger.addEntry("entry-1".getBytes(Encoding));
+        Position p2 = ledger.addEntry("entry-2".getBytes(Encoding));
+        Position p3 = ledger.addEntry("entry-3".getBytes(Encoding));
+        assertNull(c1.getBatchIndexesAckSet(p2));
+
+        // Batches of 4 messages: delete the messages 0 and 2 of the second batch, then 1 of the third one
+        deleteBatchIndexes(c1, p2, 0b1010);
+        deleteBatchIndexes(c1, p3, 0b1101);
+        deleteBatchIndexes(c1, p2, 0b1011);
+        assertEquals(c1.getBatchIndexesAckSet(p2), new long[] { 0b1010 });
+        assertEquals(c1.getBatchIndexesAckSet(p3), new long[] { 0b1101 });
+        assertEquals(c1.getNumberOfEntriesInBacklog(), 3);
+
+        // Re-open the ledger, the partially deleted batches should be recovered
+        ledger.close();
+        factory = new ManagedLedgerFactoryImpl(bkc, bkc.getZkHandle());
+        ledger = factory.open("my_test_ledger_batch_indexes");
+        c1 = (ManagedCursorImpl) ledger.openCursor("c1");
+        assertEquals(c1.getBatchIndexesAckSet(p2), new long[] { 0b1010 });
+        assertEquals(c1.getBatchIndexesAckSet(p3), new long[] { 0b1101 });
+
+        // Deleting all the remaining messages of the batch deletes the entry
+        deleteBatchIndexes(c1, p3, 0b0100);
+        deleteBatchIndexes(c1, p3, 0);
+        assertNull(c1.getBatchIndexesAckSet(p3));
+        assertTrue(c1.isMessageDeleted(p3));
+        assertEquals(c1.getNumberOfEntriesInBacklog(), 2);
+
+        // Moving the mark-delete position discards the partially deleted batches before it
+        c1.delete(p1);
+        c1.markDelete(p2);
+        assertEquals(c1.getMarkDeletedPosition(), p3);
+        assertNull(c1.getBatchIndexesAckSet(p2));
+        assertEquals(c1.getNumberOfEntriesInBacklog(), 0);
+    }
+
+    private static void deleteBatchIndexes(ManagedCursor cursor, Position position, long ackSet)
+            throws Exception {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        cursor.asyncDeleteBatchIndexes(position, new long[] { ackSet }, new DeleteCallback() {
+            @Override
+            public void deleteComplete(Object ctx) {
+                future.complete(null);
+            }
+
+            @Override
+            public void deleteFailed(ManagedLedgerException exception, Object ctx) {
+                future.completeExceptionally(exception);
+            }
+        }, null);
+        future.get();
+    }
+
+    @Test(timeOut = 20000)
+    public void testDeleteRanges() throws Exception {
+        ManagedLedger ledger = factory.open("my_test_ledger_delete_ranges");
+        ManagedCursorImpl c1 = (ManagedCursorImpl) ledger.openCursor("c1");
+        Position initialMarkDeletePosition = c1.getMarkDeletedPosition();
+
+        List<Position> positions = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            positions.add(ledger.addEntry(("entry-" + i).getBytes(Encoding)));
+        }
+
+        // Delete [2, 4] and [6, 7], overlapping with an already deleted entry
+        c1.delete(positions.get(7));
+        deleteRanges(c1, Pair.of(positions.get(2), positions.get(4)), Pair.of(positions.get(6), positions.get(7)));
+        assertEquals(c1.getNumberOfEntriesInBacklog(), 5);
+        assertEquals(c1.getTotalNonContiguousDeletedMessagesRange(), 2);
+        assertEquals(c1.getMarkDeletedPosition(), initialMarkDeletePosition);
+
+        // A range starting before the mark-delete position only deletes the following entries
+        deleteRanges(c1, Pair.of(positions.get(0), positions.get(1)));
+        assertEquals(c1.getMarkDeletedPosition(), positions.get(4));
+        deleteRanges(c1, Pair.of(positions.get(3), positions.get(5)));
+        assertEquals(c1.getMarkDeletedPosition(), positions.get(7));
+        assertEquals(c1.getNumberOfEntriesInBacklog(), 2);
+        assertEquals(c1.getTotalNonContiguousDeletedMessagesRange(), 0);
+
+        deleteRanges(c1, Pair.of(positions.get(8), positions.get(9)));
+        assertEquals(c1.getMarkDeletedPosition(), positions.get(9));
+        assertEquals(c1.getNumberOfEntriesInBacklog(), 0);
+    }
+
+    @Test(timeOut = 20000)
+    public void testDeleteRangesBeyondLedgerEntries() throws Exception {
+        ManagedLedger ledger = factory.open("my_test_ledger_delete_ranges_beyond_entries",
+                new ManagedLedgerConfig().setMaxEntriesPerLedger(2));
+        ManagedCursorImpl c1 = (ManagedCursorImpl) ledger.openCursor("c1");
+
+        List<PositionImpl> positions = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            positions.add((PositionImpl) ledger.addEntry(("entry-" + i).getBytes(Encoding)));
+        }
+        PositionImpl lastPosition = positions.get(3);
+        assertNotEquals(positions.get(1).getLedgerId(), lastPosition.getLedgerId());
+
+        // The range is clamped to the entries of its ledger
+        deleteRanges(c1, Pair.of(positions.get(1), PositionImpl.get(positions.get(1).getLedgerId(), Long.MAX_VALUE)));
+        assertEquals(c1.getNumberOfEntriesInBacklog(), 3);
+        assertTrue(c1.isMessageDeleted(positions.get(1)));
+
+        // A range ending after the last confirmed entry is rejected
+        try {
+            deleteRanges(c1, Pair.of(positions.get(2), PositionImpl.get(lastPosition.getLedgerId(), Long.MAX_VALUE)));
+            fail("Should have failed");
+        } catch (ExecutionException e) {
+            // Expected
+        }
+        assertEquals(c1.getNumberOfEntriesInBacklog(), 3);
+
+        deleteRanges(c1, Pair.of(positions.get(0), positions.get(0)), Pair.of(positions.get(2), lastPosition));
+        assertEquals(c1.getMarkDeletedPosition(), lastPosition);
+        assertEquals(c1.getNumberOfEntriesInBacklog(), 0);
+    }
+
+    @Test(timeOut = 20000)
+    public void testDeleteRangesNotAppliedIfAnyIsInvalid() throws Exception {
+        ManagedLedger ledger = factory.open("my_test_ledger_delete_ranges_invalid");
+        ManagedCursorImpl c1 = (ManagedCursorImpl) ledger.openCursor("c1");
+
+        List<PositionImpl> positions = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            positions.add((PositionImpl) ledger.addEntry(("entry-" + i).getBytes(Encoding)));
+        }
+        PositionImpl lastPosition = positions.get(5);
+
+        // Past the last confirmed entry
+        PositionImpl afterLastPosition = PositionImpl.get(lastPosition.getLedgerId(), lastPosition.getEntryId() + 1);
+        try {
+            deleteRanges(c1, Pair.of(positions.get(1), positions.get(2)), Pair.of(positions.get(4), afterLastPosition));
+            fail("Should have failed");
+        } catch (ExecutionException e) {
+            // Expected
+        }
+        // Invalid range
+        try {
+            deleteRanges(c1, Pair.of(positions.get(0), positions.get(1)), Pair.of(positions.get(4), positions.get(3)));
+            fail("Should have failed");
+        } catch (ExecutionException e) {
+            // Expected
+        }
+
+        // None of the valid ranges before the invalid one were applied
+        assertEquals(c1.getMarkDeletedPosition(), PositionImpl.get(positions.get(0).getLedgerId(), -1));
+        assertEquals(c1.getNumberOfEntriesInBacklog(), 6);
+        assertEquals(c1.getTotalNonContiguousDeletedMessagesRange(), 0);
+        for (PositionImpl position : positions) {
+            assertFalse(c1.isMessageDeleted(position));
+        }
+    }
+
+    @SafeVarargs
+    private static void deleteRanges(ManagedCursor cursor, Pair<Position, Position>... ranges) throws Exception {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        cursor.asyncDeleteRanges(Arrays.asList(ranges), new DeleteCallback() {
+            @Override
+            public void deleteComplete(Object ctx) {
+                future.complete(null);
+            }
+
+            @Override
+            public void deleteFailed(ManagedLedgerException exception, Object ctx) {
+                future.completeExceptionally(exception);
+            }
+        }, null);
+        future.get();
+    }
+
     /**
      * Close Cursor without MaxUnackedRangesToPersistInZK: It should store individually unack range into Zk
      *
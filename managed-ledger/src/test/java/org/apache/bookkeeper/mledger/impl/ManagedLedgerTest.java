@@ -824,6 +824,102 @@ public class ManagedLedgerTest extends MockedBookKeeperTestCase {
         assertEquals(ledger.getNumberOfEntries(), 100);
     }
 
+    @Test(timeOut = 20000)
+    public void testConcurrentAsyncAddEntryWithRollover() throws Exception {
+        ManagedLedgerConfig config = new ManagedLedgerConfig().setMaxEntriesPerLedger(7);
+        ManagedLedgerImpl ledger = (ManagedLedgerImpl) factory.open("my_test_ledger", config);
+        ManagedCursor cursor = ledger.openCursor("c1");
+
+        final int numThreads = 8;
+        final int numEntriesPerThread = 200;
+        final CyclicBarrier barrier = new CyclicBarrier(numThreads);
+        final CountDownLatch counter = new CountDownLatch(numThreads * numEntriesPerThread);
+        final AtomicReference<ManagedLedgerException> error = new AtomicReference<>();
+
+        for (int t = 0; t < numThreads; t++) {
+            final int thread = t;
+            cachedExecutor.execute(() -> {
+                try {
+                    barrier.await();
+                } catch (Exception e) {
+                }
+                for (int i = 0; i < numEntriesPerThread; i++) {
+                    ledger.asyncAddEntry(("entry-" + thread + "-" + i).getBytes(Encoding), new AddEntryCallback() {
+                        @Override
+                        public void addComplete(Position position, Object ctx) {
+                            counter.countDown();
+                        }
+
+                        @Override
+                        public void addFailed(ManagedLedgerException exception, Object ctx) {
+                            error.set(exception);
+                            counter.countDown();
+                        }
+                    }, null);
+                }
+            });
+        }
+
+        counter.await();
+        assertNull(error.get());
+        assertEquals(ledger.getNumberOfEntries(), numThreads * numEntriesPerThread);
+
+        // The entries of each thread are persisted in the order they were added
+        int[] nextEntry = new int[numThreads];
+        while (cursor.hasMoreEntries()) {
+            for (Entry entry : cursor.readEntries(100)) {
+                String[] parts = new String(entry.getData(), Encoding).split("-");
+                int thread = Integer.parseInt(parts[1]);
+                assertEquals(Integer.parseInt(parts[2]), nextEntry[thread]++);
+                entry.release();
+            }
+        }
+        for (int t = 0; t < numThreads; t++) {
+            assertEquals(nextEntry[t], numEntriesPerThread);
+        }
+    }
+
+    @Test(timeOut = 20000)
+    public void testConcurrentAsyncAddEntryAndClose() throws Exception {
+        ManagedLedgerConfig config = new ManagedLedgerConfig().setMaxEntriesPerLedger(5);
+        ManagedLedgerImpl ledger = (ManagedLedgerImpl) factory.open("my_test_ledger", config);
+        ledger.openCursor("c1");
+
+        final int numThreads = 8;
+        final int numEntriesPerThread = 200;
+        final CyclicBarrier barrier = new CyclicBarrier(numThreads + 1);
+        final CountDownLatch counter = new CountDownLatch(numThreads * numEntriesPerThread);
+
+        for (int t = 0; t < numThreads; t++) {
+            cachedExecutor.execute(() -> {
+                try {
+                    barrier.await();
+                } catch (Exception e) {
+                }
+                for (int i = 0; i < numEntriesPerThread; i++) {
+                    ledger.asyncAddEntry("entry".getBytes(Encoding), new AddEntryCallback() {
+                        @Override
+                        public void addComplete(Position position, Object ctx) {
+                            counter.countDown();
+                        }
+
+                        @Override
+                        public void addFailed(ManagedLedgerException exception, Object ctx) {
+                            counter.countDown();
+                        }
+                    }, null);
+                }
+            });
+        }
+
+        barrier.await();
+        ledger.close();
+
+        // Every add either completes or fails, none is left queued after the close
+        counter.await();
+        assertEquals(ledger.getPendingAddEntriesCount(), 0);
+    }
+
     @Test(timeOut = 20000)
     public void moveCursorToNextLedger() throws Exception {
         ManagedLedgerConfig config = new ManagedLedgerConfig().setMaxEntriesPerLedger(1);
@@ -0,0 +1,280 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import com.google.common.collect.Lists;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.List;
+import org.apache.bookkeeper.mledger.ManagedCursor;
+import org.apache.bookkeeper.mledger.ManagedLedger;
+import org.apache.bookkeeper.mledger.ManagedLedgerConfig;
+import org.apache.bookkeeper.mledger.ManagedLedgerFactoryConfig;
+import org.apache.bookkeeper.mledger.Position;
+import org.apache.bookkeeper.test.MockedBookKeeperTestCase;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class SharedCursorsLedgerTest extends MockedBookKeeperTestCase {
+
+    private static final int NUM_CURSORS = 10;
+
+    @BeforeMethod
+    public void setUp(Method method) throws Exception {
+        super.setUp(method);
+        factory.shutdown();
+        factory = new ManagedLedgerFactoryImpl(bkc, zkc, sharedCursorsLedgerConfig());
+    }
+
+    private static ManagedLedgerFactoryConfig sharedCursorsLedgerConfig() {
+        ManagedLedgerFactoryConfig config = new ManagedLedgerFactoryConfig();
+        config.setSharedCursorsLedgerEnabled(true);
+        config.setSharedCursorsLedgerFlushIntervalMs(10);
+        config.setSharedCursorsLedgerMaxEntries(5);
+        return config;
+    }
+
+    @Test(timeOut = 20000)
+    public void testCursorsShareLedger() throws Exception {
+        ManagedLedger ledger = factory.open("my_test_ledger", new ManagedLedgerConfig().setMaxEntriesPerLedger(10));
+        List<ManagedCursor> cursors = openCursors(ledger);
+
+        List<Position> positions = addEntries(ledger, 30);
+        for (int i = 0; i < NUM_CURSORS; i++) {
+            cursors.get(i).markDelete(positions.get(i));
+        }
+        // Leave a hole in the acknowledged messages of the first cursor
+        cursors.get(0).delete(positions.get(20));
+
+        long sharedLedgerId = factory.getSharedCursorsLedgerStore().getCurrentLedgerId();
+        assertTrue(sharedLedgerId >= 0);
+        for (ManagedCursor cursor : cursors) {
+            assertEquals(((ManagedCursorImpl) cursor).getCursorLedger(), sharedLedgerId);
+        }
+
+        // Only the data ledgers and the shared cursors ledger were created
+        int dataLedgers = ((ManagedLedgerImpl) ledger).getLedgersInfoAsList().size();
+        assertEquals(bkc.getLedgers().size(), dataLedgers + 1);
+
+        // Recover the cursors from the shared ledger, as after a crash
+        ManagedLedgerFactoryImpl factory2 = new ManagedLedgerFactoryImpl(bkc, zkc, sharedCursorsLedgerConfig());
+        ledger = factory2.open("my_test_ledger", new ManagedLedgerConfig().setMaxEntriesPerLedger(10));
+        for (int i = 0; i < NUM_CURSORS; i++) {
+            ManagedCursor cursor = ledger.openCursor("c" + i);
+            assertEquals(cursor.getMarkDeletedPosition(), positions.get(i));
+        }
+        assertEquals(ledger.openCursor("c0").getTotalNonContiguousDeletedMessagesRange(), 1);
+        assertEquals(ledger.openCursor("c0").getNumberOfEntriesInBacklog(), 28);
+
+        factory2.shutdown();
+    }
+
+    @Test(timeOut = 20000)
+    public void testRolloverDeletesOldLedgers() throws Exception {
+        ManagedLedger ledger = factory.open("my_test_ledger");
+        List<ManagedCursor> cursors = openCursors(ledger);
+        List<Position> positions = addEntries(ledger, 20);
+
+        for (Position position : positions) {
+            for (ManagedCursor cursor : cursors) {
+                cursor.markDelete(position);
+            }
+        }
+
+        // Once all the cursors point to the last shared ledger, the previous ones are deleted
+        SharedCursorsLedgerStore store = factory.getSharedCursorsLedgerStore();
+        while (store.getNumberOfLedgers() > 1) {
+            Thread.sleep(10);
+        }
+        assertEquals(bkc.getLedgers().size(), 2);
+
+        ManagedLedgerFactoryImpl factory2 = new ManagedLedgerFactoryImpl(bkc, zkc, sharedCursorsLedgerConfig());
+        ledger = factory2.open("my_test_ledger");
+        for (int i = 0; i < NUM_CURSORS; i++) {
+            assertEquals(ledger.openCursor("c" + i).getMarkDeletedPosition(), positions.get(19));
+        }
+        factory2.shutdown();
+    }
+
+    @Test(timeOut = 20000)
+    public void testCloseWithoutSharedLedger() throws Exception {
+        ManagedLedger ledger = factory.open("my_test_ledger");
+        List<ManagedCursor> cursors = openCursors(ledger);
+        List<Position> positions = addEntries(ledger, 5);
+        for (ManagedCursor cursor : cursors) {
+            cursor.markDelete(positions.get(2));
+        }
+
+        // The positions are stored in the cursor z-nodes and the shared ledger is deleted at shutdown
+        ledger.close();
+        factory.shutdown();
+        assertEquals(bkc.getLedgers().size(), 1);
+
+        factory = new ManagedLedgerFactoryImpl(bkc, zkc, sharedCursorsLedgerConfig());
+        ledger = factory.open("my_test_ledger");
+        for (int i = 0; i < NUM_CURSORS; i++) {
+            assertEquals(ledger.openCursor("c" + i).getMarkDeletedPosition(), positions.get(2));
+        }
+        // No shared ledger is needed until the next mark-delete
+        assertEquals(factory.getSharedCursorsLedgerStore().getCurrentLedgerId(), -1);
+    }
+
+    @Test(timeOut = 20000)
+    public void testSweepLedgersOfStoppedStore() throws Exception {
+        // No rollover, so that the cursors of each store stay on a single ledger
+        ManagedLedgerFactoryConfig config = sharedCursorsLedgerConfig();
+        config.setSharedCursorsLedgerMaxEntries(1000);
+        factory.shutdown();
+        factory = new ManagedLedgerFactoryImpl(bkc, zkc, config);
+
+        ManagedLedger ledger = factory.open("my_test_ledger");
+        List<ManagedCursor> cursors = openCursors(ledger);
+        List<Position> positions = addEntries(ledger, 5);
+        for (ManagedCursor cursor : cursors) {
+            cursor.markDelete(positions.get(2));
+        }
+        long sharedLedgerId = factory.getSharedCursorsLedgerStore().getCurrentLedgerId();
+        waitForCursorLedger(cursors, sharedLedgerId);
+
+        // The ledgers of a store in use are not swept
+        factory.getSharedCursorsLedgerStore().sweepLedgers().get();
+        assertTrue(bkc.getLedgers().contains(sharedLedgerId));
+
+        // Simulate a crash of the broker: its store is not registered any more
+        for (String owner : zkc.getChildren("/managed-ledgers-shared-cursors/owners", false)) {
+            zkc.delete("/managed-ledgers-shared-cursors/owners/" + owner, -1);
+        }
+
+        // The ledger is still referred by the cursors
+        ManagedLedgerFactoryImpl factory2 = new ManagedLedgerFactoryImpl(bkc, zkc, config);
+        SharedCursorsLedgerStore store2 = factory2.getSharedCursorsLedgerStore();
+        store2.sweepLedgers().get();
+        assertTrue(bkc.getLedgers().contains(sharedLedgerId));
+
+        // Once the recovered cursors point to the ledger of the new store, the old one is deleted
+        ledger = factory2.open("my_test_ledger");
+        List<ManagedCursor> cursors2 = openCursors(ledger);
+        for (ManagedCursor cursor : cursors2) {
+            assertEquals(cursor.getMarkDeletedPosition(), positions.get(2));
+            cursor.markDelete(positions.get(3));
+        }
+        waitForCursorLedger(cursors2, store2.getCurrentLedgerId());
+
+        store2.sweepLedgers().get();
+        assertTrue(!bkc.getLedgers().contains(sharedLedgerId));
+        assertEquals(zkc.getChildren("/managed-ledgers-shared-cursors/ledgers", false),
+                Collections.singletonList(Long.toString(store2.getCurrentLedgerId())));
+
+        factory2.shutdown();
+    }
+
+    @Test(timeOut = 20000)
+    public void testClosedCursorReleasesSharedLedger() throws Exception {
+        ManagedLedgerConfig config = new ManagedLedgerConfig();
+        config.setMaxUnackedRangesToPersistInZk(0);
+        ManagedLedger ledger = factory.open("my_test_ledger", config);
+        ManagedCursor cursor = ledger.openCursor("c0");
+        List<Position> positions = addEntries(ledger, 5);
+        cursor.markDelete(positions.get(1));
+        cursor.delete(positions.get(3));
+
+        SharedCursorsLedgerStore store = factory.getSharedCursorsLedgerStore();
+        long sharedLedgerId = store.getCurrentLedgerId();
+        waitForCursorLedger(Collections.singletonList(cursor), sharedLedgerId);
+        assertEquals(store.getNumberOfReferences(sharedLedgerId), 1);
+
+        // The closed cursor doesn't hold a reference on the shared ledger any more
+        ledger.close();
+        assertEquals(store.getNumberOfReferences(sharedLedgerId), 0);
+
+        // Move the store to a new ledger with the updates of another cursor
+        ManagedLedger otherLedger = factory.open("my_other_ledger");
+        ManagedCursor otherCursor = otherLedger.openCursor("c0");
+        for (Position position : addEntries(otherLedger, 10)) {
+            otherCursor.markDelete(position);
+        }
+        while (store.getCurrentLedgerId() == sharedLedgerId) {
+            Thread.sleep(10);
+        }
+
+        // The z-node of the closed cursor still refers to the ledger
+        store.sweepLedgers().get();
+        assertTrue(bkc.getLedgers().contains(sharedLedgerId));
+
+        // Once the reopened cursor points to the current ledger, the old one is swept
+        ledger = factory.open("my_test_ledger", config);
+        cursor = ledger.openCursor("c0");
+        assertEquals(cursor.getMarkDeletedPosition(), positions.get(1));
+        cursor.markDelete(positions.get(2));
+        waitForCursorLedger(Collections.singletonList(cursor), store.getCurrentLedgerId());
+
+        store.sweepLedgers().get();
+        assertTrue(!bkc.getLedgers().contains(sharedLedgerId));
+    }
+
+    @Test(timeOut = 20000)
+    public void testRecoverWithSharedCursorsLedgerDisabled() throws Exception {
+        ManagedLedgerConfig config = new ManagedLedgerConfig();
+        config.setMaxUnackedRangesToPersistInZk(0);
+        ManagedLedger ledger = factory.open("my_test_ledger", config);
+        ManagedCursor cursor = ledger.openCursor("c0");
+        List<Position> positions = addEntries(ledger, 5);
+        cursor.markDelete(positions.get(1));
+        cursor.delete(positions.get(3));
+        waitForCursorLedger(Collections.singletonList(cursor),
+                factory.getSharedCursorsLedgerStore().getCurrentLedgerId());
+
+        // No store is created when the shared ledgers are disabled, but the cursors can still be recovered from them
+        ManagedLedgerFactoryImpl factory2 = new ManagedLedgerFactoryImpl(bkc, zkc);
+        assertNull(factory2.getSharedCursorsLedgerStore());
+        ledger = factory2.open("my_test_ledger", config);
+        cursor = ledger.openCursor("c0");
+        assertEquals(cursor.getMarkDeletedPosition(), positions.get(1));
+        assertEquals(cursor.getTotalNonContiguousDeletedMessagesRange(), 1);
+        factory2.shutdown();
+    }
+
+    private static List<ManagedCursor> openCursors(ManagedLedger ledger) throws Exception {
+        List<ManagedCursor> cursors = Lists.newArrayList();
+        for (int i = 0; i < NUM_CURSORS; i++) {
+            cursors.add(ledger.openCursor("c" + i));
+        }
+        return cursors;
+    }
+
+    private static void waitForCursorLedger(List<ManagedCursor> cursors, long ledgerId) throws Exception {
+        for (ManagedCursor cursor : cursors) {
+            while (((ManagedCursorImpl) cursor).getCursorLedger() != ledgerId) {
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    private static List<Position> addEntries(ManagedLedger ledger, int numEntries) throws Exception {
+        List<Position> positions = Lists.newArrayList();
+        for (int i = 0; i < numEntries; i++) {
+            positions.add(ledger.addEntry(("entry-" + i).getBytes()));
+        }
+        return positions;
+    }
+}
@@ -0,0 +1,249 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import io.netty.buffer.Unpooled;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.api.ReadHandle;
+import org.apache.bookkeeper.mledger.AsyncCallbacks.ReadEntriesCallback;
+import org.apache.bookkeeper.mledger.AsyncCallbacks.ReadEntryCallback;
+import org.apache.bookkeeper.mledger.Entry;
+import org.apache.bookkeeper.mledger.ManagedLedgerException;
+import org.apache.bookkeeper.mledger.ManagedLedgerFactoryConfig;
+import org.apache.bookkeeper.test.MockedBookKeeperTestCase;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@Test
+public class SlabEntryCacheTest extends MockedBookKeeperTestCase {
+
+    private static final int SlabSize = 32;
+
+    private ManagedLedgerImpl ml;
+
+    @BeforeMethod
+    public void setUp(Method method) throws Exception {
+        super.setUp(method);
+        ml = mock(ManagedLedgerImpl.class);
+        when(ml.getName()).thenReturn("name");
+        when(ml.getExecutor()).thenReturn(executor);
+        when(ml.getMBean()).thenReturn(new ManagedLedgerMBeanImpl(ml));
+
+        factory.shutdown();
+        ManagedLedgerFactoryConfig config = new ManagedLedgerFactoryConfig();
+        config.setCacheSlabSize(SlabSize);
+        factory = new ManagedLedgerFactoryImpl(bkc, zkc, config);
+    }
+
+    @Test(timeOut = 5000)
+    void testReadFromSlabs() throws Exception {
+        ReadHandle lh = getLedgerHandle();
+        when(lh.getId()).thenReturn((long) 0);
+
+        EntryCacheManager cacheManager = factory.getEntryCacheManager();
+        EntryCache entryCache = cacheManager.getEntryCache(ml);
+        assertTrue(entryCache instanceof SlabEntryCacheImpl);
+
+        // 3 entries of 10 bytes fit in each slab
+        for (int i = 0; i < 10; i++) {
+            assertTrue(entryCache.insert(EntryImpl.create(0, i, new byte[] { (byte) i, 1, 2, 3, 4, 5, 6, 7, 8, 9 })));
+        }
+        // Only the bytes of the entries are accounted
+        assertEquals(entryCache.getSize(), 100);
+        assertEquals(cacheManager.getSize(), 100);
+
+        // Duplicated entries are not added again
+        assertTrue(!entryCache.insert(EntryImpl.create(0, 5, new byte[10])));
+
+        List<Entry> entries = readEntries(entryCache, lh, 0, 9);
+        assertEquals(entries.size(), 10);
+        for (int i = 0; i < 10; i++) {
+            Entry entry = entries.get(i);
+            assertEquals(entry.getLedgerId(), 0);
+            assertEquals(entry.getEntryId(), i);
+            assertEquals(entry.getLength(), 10);
+            assertEquals(entry.getData()[0], (byte) i);
+            entry.release();
+        }
+
+        AtomicReference<Entry> entry = new AtomicReference<>();
+        entryCache.asyncReadEntry(lh, new PositionImpl(0, 4), new ReadEntryCallback() {
+            public void readEntryComplete(Entry e, Object ctx) {
+                entry.set(e);
+            }
+
+            public void readEntryFailed(ManagedLedgerException exception, Object ctx) {
+                Assert.fail("should not have failed");
+            }
+        }, null);
+        assertEquals(entry.get().getData()[0], 4);
+        entry.get().release();
+
+        // Verify no entries were read from bookkeeper
+        verify(lh, never()).readAsync(anyLong(), anyLong());
+    }
+
+    @Test(timeOut = 5000)
+    void testReadMissing() throws Exception {
+        ReadHandle lh = getLedgerHandle();
+        when(lh.getId()).thenReturn((long) 0);
+
+        EntryCache entryCache = factory.getEntryCacheManager().getEntryCache(ml);
+
+        // Entries 4 and 5 are missing, they are left empty in the slab of entry 3 and entry 6 is appended after them
+        for (int i = 0; i < 10; i++) {
+            if (i != 4 && i != 5) {
+                assertTrue(entryCache.insert(EntryImpl.create(0, i, new byte[10])));
+            }
+        }
+        assertEquals(entryCache.getSize(), 80);
+        assertTrue(!entryCache.insert(EntryImpl.create(0, 4, new byte[10])));
+
+        List<Entry> entries = readEntries(entryCache, lh, 6, 9);
+        assertEquals(entries.size(), 4);
+        entries.forEach(Entry::release);
+        verify(lh, never()).readAsync(anyLong(), anyLong());
+
+        entries = readEntries(entryCache, lh, 0, 9);
+        assertEquals(entries.size(), 10);
+        entries.forEach(Entry::release);
+        verify(lh, times(1)).readAsync(0, 9);
+    }
+
+    @Test
+    void testInvalidateEntries() throws Exception {
+        EntryCacheManager cacheManager = factory.getEntryCacheManager();
+        EntryCache entryCache = cacheManager.getEntryCache(ml);
+
+        for (int i = 0; i < 6; i++) {
+            entryCache.insert(EntryImpl.create(0, i, new byte[10]));
+            entryCache.insert(EntryImpl.create(1, i, new byte[10]));
+        }
+        assertEquals(entryCache.getSize(), 120);
+
+        // Only slabs with all the entries before the position can be released
+        entryCache.invalidateEntries(new PositionImpl(1, 3));
+        assertEquals(entryCache.getSize(), 30);
+        assertEquals(cacheManager.getSize(), 30);
+
+        // Invalidated entries can be added again
+        assertTrue(entryCache.insert(EntryImpl.create(1, 2, new byte[10])));
+        assertEquals(entryCache.getSize(), 40);
+
+        entryCache.invalidateAllEntries(1);
+        assertEquals(entryCache.getSize(), 0);
+        assertEquals(cacheManager.getSize(), 0);
+    }
+
+    @Test
+    void testEvictOldestSlabs() throws Exception {
+        ReadHandle lh = getLedgerHandle();
+        when(lh.getId()).thenReturn((long) 0);
+
+        EntryCacheManager cacheManager = factory.getEntryCacheManager();
+        EntryCache entryCache = cacheManager.getEntryCache(ml);
+
+        for (int i = 0; i < 9; i++) {
+            entryCache.insert(EntryImpl.create(0, i, new byte[10]));
+        }
+        assertEquals(entryCache.getSize(), 90);
+
+        // Entries read before the eviction are still valid, and their slab stays accounted until they are released
+        List<Entry> entries = readEntries(entryCache, lh, 0, 2);
+
+        assertEquals(entryCache.evictEntries(1).getLeft().intValue(), 3);
+        assertEquals(entryCache.getSize(), 90);
+        assertEquals(cacheManager.getSize(), 90);
+        assertEquals(entries.get(2).getLength(), 10);
+        entries.forEach(Entry::release);
+
+        readEntries(entryCache, lh, 3, 8).forEach(Entry::release);
+        verify(lh, never()).readAsync(anyLong(), anyLong());
+
+        // Evicted entries can be added again, the released slab is no longer accounted
+        assertTrue(entryCache.insert(EntryImpl.create(0, 0, new byte[10])));
+        assertEquals(entryCache.getSize(), 70);
+        assertEquals(cacheManager.getSize(), 70);
+        assertTrue(entryCache.insert(EntryImpl.create(0, 1, new byte[10])));
+        assertTrue(entryCache.insert(EntryImpl.create(0, 2, new byte[10])));
+
+        readEntries(entryCache, lh, 0, 8).forEach(Entry::release);
+        verify(lh, never()).readAsync(anyLong(), anyLong());
+
+        entryCache.clear();
+        assertEquals(entryCache.getSize(), 0);
+        assertEquals(cacheManager.getSize(), 0);
+    }
+
+    private static List<Entry> readEntries(EntryCache entryCache, ReadHandle lh, long firstEntry, long lastEntry)
+            throws Exception {
+        CompletableFuture<List<Entry>> future = new CompletableFuture<>();
+        entryCache.asyncReadEntry(lh, firstEntry, lastEntry, false, new ReadEntriesCallback() {
+            public void readEntriesComplete(List<Entry> entries, Object ctx) {
+                future.complete(entries);
+            }
+
+            public void readEntriesFailed(ManagedLedgerException exception, Object ctx) {
+                future.completeExceptionally(exception);
+            }
+        }, null);
+        return future.get();
+    }
+
+    private static ReadHandle getLedgerHandle() {
+        final ReadHandle lh = mock(ReadHandle.class);
+        final LedgerEntry ledgerEntry = mock(LedgerEntry.class, Mockito.CALLS_REAL_METHODS);
+        Mockito.doReturn(Unpooled.wrappedBuffer(new byte[10])).when(ledgerEntry).getEntryBuffer();
+        Mockito.doReturn((long) 10).when(ledgerEntry).getLength();
+
+        doAnswer((invocation) -> {
+            Object[] args = invocation.getArguments();
+            long firstEntry = (Long) args[0];
+            long lastEntry = (Long) args[1];
+
+            Vector<LedgerEntry> entries = new Vector<LedgerEntry>();
+            for (int i = 0; i <= (lastEntry - firstEntry); i++) {
+                entries.add(ledgerEntry);
+            }
+            LedgerEntries ledgerEntries = mock(LedgerEntries.class);
+            doAnswer((invocation2) -> entries.iterator()).when(ledgerEntries).iterator();
+            return CompletableFuture.completedFuture(ledgerEntries);
+        }).when(lh).readAsync(anyLong(), anyLong());
+
+        return lh;
+    }
+}
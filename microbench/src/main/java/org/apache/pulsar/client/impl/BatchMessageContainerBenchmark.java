@@ -0,0 +1,100 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.client.impl;
+
+import io.netty.buffer.ByteBuf;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.apache.pulsar.client.api.Schema;
+import org.apache.pulsar.common.api.proto.PulsarApi.CompressionType;
+import org.apache.pulsar.common.api.proto.PulsarApi.MessageMetadata;
+import org.apache.pulsar.common.compression.CompressionCodecProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Building of a batch on the producer side: serialization of each single message metadata into the batch buffer,
+ * compression of the batch and build of the batch metadata.
+ *
+ * <p/>The benchmark lives in the client package since the batch container is not part of the public API.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BatchMessageContainerBenchmark {
+
+    @Param({ "100" })
+    private int messagesPerBatch;
+
+    @Param({ "128", "1024" })
+    private int messageSize;
+
+    @Param({ "NONE", "LZ4" })
+    private CompressionType compressionType;
+
+    private BatchMessageContainer container;
+    private byte[] payload;
+    private long sequenceId = 0;
+
+    @Setup
+    public void setup() {
+        container = new BatchMessageContainer(messagesPerBatch, false, compressionType,
+                CompressionCodecProvider.getCompressionCodec(compressionType), "persistent://prop/ns/topic",
+                "producer-benchmark");
+        payload = new byte[messageSize];
+    }
+
+    @Benchmark
+    public void buildBatch(Blackhole bh) {
+        for (int i = 0; i < messagesPerBatch; i++) {
+            MessageMetadata.Builder msgMetadata = MessageMetadata.newBuilder();
+            msgMetadata.setProducerName("producer-benchmark");
+            msgMetadata.setSequenceId(sequenceId++);
+            msgMetadata.setPublishTime(System.currentTimeMillis());
+
+            MessageImpl<byte[]> msg = MessageImpl.create(msgMetadata, ByteBuffer.wrap(payload), Schema.BYTES);
+            container.add(msg, null);
+        }
+
+        ByteBuf compressedPayload = container.getCompressedBatchMetadataAndPayload();
+        MessageMetadata metadata = container.setBatchAndBuild();
+        bh.consume(compressedPayload.readableBytes());
+        bh.consume(metadata.getNumMessagesInBatch());
+
+        compressedPayload.release();
+        metadata.recycle();
+        for (MessageImpl<?> msg : container.messages) {
+            msg.recycle();
+        }
+        container.clear();
+    }
+}
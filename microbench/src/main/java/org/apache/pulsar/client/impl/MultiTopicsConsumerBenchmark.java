@@ -0,0 +1,166 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.client.impl;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.pulsar.client.api.Consumer;
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.Schema;
+import org.apache.pulsar.client.impl.conf.ClientConfigurationData;
+import org.apache.pulsar.client.impl.conf.ConsumerConfigurationData;
+import org.apache.pulsar.common.api.proto.PulsarApi.MessageMetadata;
+import org.apache.pulsar.common.naming.TopicName;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Receive of the messages of many partitions through a topics consumer: the messages are enqueued in the receiver
+ * queues of the partition consumers, as when they are delivered by the broker, and moved to the shared queue of the
+ * topics consumer, where the application receives them. The score is the number of messages received per second.
+ *
+ * <p/>The partition consumers are not connected to any broker, the benchmark lives in the client package to enqueue
+ * the messages directly into them.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MultiTopicsConsumerBenchmark {
+
+    private static final int MESSAGES_PER_PARTITION = 10;
+    private static final int MAX_PARTITIONS = 1024;
+
+    @Param({ "16", "256", "1024" })
+    private int partitions;
+
+    private PulsarClientImpl client;
+    private MultiTopicsConsumerImpl<byte[]> consumer;
+    private List<ConsumerImpl<byte[]>> partitionConsumers;
+    private List<List<Message<byte[]>>> partitionMessages;
+
+    @Setup
+    public void setup() throws Exception {
+        ClientConfigurationData clientConf = new ClientConfigurationData();
+        // Nothing listens there, the partition consumers keep trying to connect in background without failing
+        clientConf.setServiceUrl("pulsar://localhost:1");
+        clientConf.setOperationTimeoutMs(TimeUnit.DAYS.toMillis(1));
+        clientConf.setStatsIntervalSeconds(0);
+        client = new PulsarClientImpl(clientConf);
+
+        ConsumerConfigurationData<byte[]> conf = new ConsumerConfigurationData<>();
+        conf.setSubscriptionName("subscription-benchmark");
+        CompletableFuture<Consumer<byte[]>> subscribeFuture = new CompletableFuture<>();
+        consumer = new MultiTopicsConsumerImpl<>(client, conf, client.externalExecutorProvider().getExecutor(),
+                subscribeFuture, Schema.BYTES, null);
+        subscribeFuture.get();
+
+        String topic = "persistent://prop/ns/topic-benchmark";
+        ByteBuf payload = Unpooled.wrappedBuffer(new byte[128]);
+        partitionConsumers = new ArrayList<>(partitions);
+        partitionMessages = new ArrayList<>(partitions);
+        for (int partitionIndex = 0; partitionIndex < partitions; partitionIndex++) {
+            String partitionName = TopicName.get(topic).getPartition(partitionIndex).toString();
+            ConsumerConfigurationData<byte[]> partitionConf = conf.clone();
+            partitionConf.setTopicNames(Collections.singleton(partitionName));
+            ConsumerImpl<byte[]> partitionConsumer = new ConsumerImpl<>(client, partitionName, partitionConf,
+                    client.externalExecutorProvider().getExecutor(), partitionIndex, new CompletableFuture<>(),
+                    Schema.BYTES, null);
+            partitionConsumer.setState(HandlerState.State.Ready);
+            partitionConsumers.add(partitionConsumer);
+
+            List<Message<byte[]>> messages = new ArrayList<>(MESSAGES_PER_PARTITION);
+            for (int i = 0; i < MESSAGES_PER_PARTITION; i++) {
+                MessageMetadata msgMetadata = MessageMetadata.newBuilder()
+                        .setProducerName("producer-benchmark")
+                        .setSequenceId(i)
+                        .setPublishTime(System.currentTimeMillis())
+                        .build();
+                messages.add(new MessageImpl<>(partitionName, new MessageIdImpl(1, i, partitionIndex), msgMetadata,
+                        payload, null, Schema.BYTES));
+                msgMetadata.recycle();
+            }
+            partitionMessages.add(messages);
+        }
+        consumer.allTopicPartitionsNumber.set(partitions);
+        consumer.startReceivingMessages(partitionConsumers);
+    }
+
+    @TearDown
+    public void teardown() throws Exception {
+        consumer.close();
+        for (ConsumerImpl<byte[]> partitionConsumer : partitionConsumers) {
+            partitionConsumer.close();
+        }
+        client.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MAX_PARTITIONS * MESSAGES_PER_PARTITION)
+    public void receive(Blackhole bh) throws Exception {
+        // Keep the same number of received messages per invocation whatever the number of partitions
+        int rounds = MAX_PARTITIONS / partitions;
+        for (int round = 0; round < rounds; round++) {
+            for (int i = 0; i < partitions; i++) {
+                enqueue(partitionConsumers.get(i), partitionMessages.get(i));
+            }
+            for (int i = 0; i < partitions * MESSAGES_PER_PARTITION; i++) {
+                bh.consume(consumer.receive());
+            }
+        }
+    }
+
+    /**
+     * Enqueue the messages the way {@link ConsumerImpl#messageReceived} does for the messages delivered by the broker.
+     */
+    private static void enqueue(ConsumerImpl<byte[]> partitionConsumer, List<Message<byte[]>> messages) {
+        partitionConsumer.lock.readLock().lock();
+        try {
+            for (Message<byte[]> message : messages) {
+                if (!partitionConsumer.pendingReceives.isEmpty()) {
+                    partitionConsumer.notifyPendingReceivedCallback(message, null);
+                } else {
+                    partitionConsumer.incomingMessages.add(message);
+                    partitionConsumer.increaseIncomingMessageSize(message);
+                }
+            }
+        } finally {
+            partitionConsumer.lock.readLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.microbench;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.util.concurrent.TimeUnit;
+import org.apache.pulsar.common.api.ByteBufPair;
+import org.apache.pulsar.common.api.Commands;
+import org.apache.pulsar.common.api.Commands.ChecksumType;
+import org.apache.pulsar.common.api.PulsarDecoder;
+import org.apache.pulsar.common.api.proto.PulsarApi.CommandSend;
+import org.apache.pulsar.common.api.proto.PulsarApi.MessageMetadata;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Serialization of the message metadata on the producer side and parsing of the <code>SEND</code> command on the
+ * broker side.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CommandsBenchmark {
+
+    @Param({ "128", "4096" })
+    private int payloadSize;
+
+    @Param({ "None", "Crc32c" })
+    private ChecksumType checksumType;
+
+    private MessageMetadata metadata;
+    private ByteBuf payload;
+    private ByteBuf sendFrame;
+    private BenchmarkDecoder decoder;
+
+    @Setup
+    public void setup() {
+        MessageMetadata.Builder builder = MessageMetadata.newBuilder();
+        builder.setProducerName("producer-benchmark");
+        builder.setSequenceId(1);
+        builder.setPublishTime(System.currentTimeMillis());
+        builder.setPartitionKey("key");
+        metadata = builder.build();
+        builder.recycle();
+
+        payload = Unpooled.directBuffer(payloadSize).writeZero(payloadSize);
+
+        // The decoder expects the frame without the total size field, which is removed by the frame decoder
+        ByteBufPair send = Commands.newSend(1, 1, 1, checksumType, metadata, payload.retainedSlice());
+        sendFrame = ByteBufPair.coalesce(send);
+        send.release();
+        sendFrame.skipBytes(4);
+
+        decoder = new BenchmarkDecoder();
+    }
+
+    @TearDown
+    public void teardown() {
+        metadata.recycle();
+        payload.release();
+        sendFrame.release();
+    }
+
+    @Benchmark
+    public void serializeMetadataAndPayload(Blackhole bh) {
+        ByteBuf buf = Commands.serializeMetadataAndPayload(checksumType, metadata, payload.retainedSlice());
+        bh.consume(buf.readableBytes());
+        buf.release();
+    }
+
+    @Benchmark
+    public void parseSendCommand(Blackhole bh) throws Exception {
+        // The decoder releases the buffer it receives
+        decoder.channelRead(null, sendFrame.retainedDuplicate());
+        bh.consume(decoder.lastSequenceId);
+    }
+
+    private static class BenchmarkDecoder extends PulsarDecoder {
+        private long lastSequenceId;
+
+        @Override
+        protected void handleSend(CommandSend send, ByteBuf headersAndPayload) {
+            lastSequenceId = send.getSequenceId();
+            MessageMetadata msgMetadata = Commands.parseMessageMetadata(headersAndPayload);
+            lastSequenceId += msgMetadata.getSequenceId();
+            msgMetadata.recycle();
+        }
+
+        @Override
+        protected void messageReceived() {
+            // no-op
+        }
+    }
+}
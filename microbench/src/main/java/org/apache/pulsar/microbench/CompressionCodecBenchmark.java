@@ -0,0 +1,99 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.microbench;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.apache.pulsar.common.api.proto.PulsarApi.CompressionType;
+import org.apache.pulsar.common.compression.CompressionCodec;
+import org.apache.pulsar.common.compression.CompressionCodecProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Encoding and decoding of a batch payload with each of the compression codecs.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CompressionCodecBenchmark {
+
+    @Param({ "NONE", "LZ4", "ZLIB", "ZSTD", "SNAPPY" })
+    private CompressionType compressionType;
+
+    @Param({ "65536" })
+    private int payloadSize;
+
+    private CompressionCodec codec;
+    private ByteBuf raw;
+    private ByteBuf encoded;
+
+    @Setup
+    public void setup() {
+        codec = CompressionCodecProvider.getCompressionCodec(compressionType);
+
+        // Payload with a moderate compression ratio, similar to json records with repeated field names
+        Random random = new Random(1);
+        raw = PooledByteBufAllocator.DEFAULT.directBuffer(payloadSize, payloadSize);
+        while (raw.isWritable()) {
+            if (random.nextBoolean()) {
+                raw.writeByte('a' + random.nextInt(26));
+            } else {
+                raw.writeByte('x');
+            }
+        }
+        encoded = codec.encode(raw);
+    }
+
+    @TearDown
+    public void teardown() {
+        raw.release();
+        encoded.release();
+    }
+
+    @Benchmark
+    public void encode(Blackhole bh) {
+        ByteBuf buf = codec.encode(raw);
+        bh.consume(buf.readableBytes());
+        buf.release();
+    }
+
+    @Benchmark
+    public void decode(Blackhole bh) throws Exception {
+        ByteBuf buf = codec.decode(encoded, payloadSize);
+        bh.consume(buf.readableBytes());
+        buf.release();
+    }
+}
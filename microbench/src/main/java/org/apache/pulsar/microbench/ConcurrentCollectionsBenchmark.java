@@ -0,0 +1,98 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.microbench;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.apache.pulsar.common.util.collections.ConcurrentLongPairSet;
+import org.apache.pulsar.common.util.collections.ConcurrentOpenHashMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lookups and updates on the concurrent open hash collections used by the broker, eg: topics map and the set of
+ * messages to redeliver of the dispatchers.
+ *
+ * <p/>All the threads share the same collections, run with <code>-t</code> to change the contention level.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class ConcurrentCollectionsBenchmark {
+
+    @Param({ "1000", "100000" })
+    private int numKeys;
+
+    private String[] keys;
+    private ConcurrentOpenHashMap<String, String> map;
+    private ConcurrentLongPairSet set;
+
+    @Setup
+    public void setup() {
+        keys = new String[numKeys];
+        map = new ConcurrentOpenHashMap<>(numKeys);
+        set = new ConcurrentLongPairSet(numKeys);
+        for (int i = 0; i < numKeys; i++) {
+            keys[i] = "persistent://prop/cluster/ns/topic-" + i;
+            map.put(keys[i], keys[i]);
+            // Only half of the pairs are in the set
+            if (i % 2 == 0) {
+                set.add(i / 1000, i % 1000);
+            }
+        }
+    }
+
+    @Benchmark
+    public String openHashMapGet() {
+        return map.get(keys[ThreadLocalRandom.current().nextInt(numKeys)]);
+    }
+
+    @Benchmark
+    public String openHashMapPutRemove() {
+        String key = keys[ThreadLocalRandom.current().nextInt(numKeys)];
+        map.remove(key);
+        return map.put(key, key);
+    }
+
+    @Benchmark
+    public boolean longPairSetContains() {
+        int i = ThreadLocalRandom.current().nextInt(numKeys);
+        return set.contains(i / 1000, i % 1000);
+    }
+
+    @Benchmark
+    public boolean longPairSetAddRemove() {
+        int i = ThreadLocalRandom.current().nextInt(numKeys);
+        return set.add(i / 1000, i % 1000) || set.remove(i / 1000, i % 1000);
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.microbench;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.PulsarMockBookKeeper;
+import org.apache.bookkeeper.common.util.OrderedScheduler;
+import org.apache.bookkeeper.mledger.AsyncCallbacks.DeleteCallback;
+import org.apache.bookkeeper.mledger.ManagedCursor;
+import org.apache.bookkeeper.mledger.ManagedLedger;
+import org.apache.bookkeeper.mledger.ManagedLedgerConfig;
+import org.apache.bookkeeper.mledger.ManagedLedgerException;
+import org.apache.bookkeeper.mledger.ManagedLedgerFactoryConfig;
+import org.apache.bookkeeper.mledger.Position;
+import org.apache.bookkeeper.mledger.impl.ManagedLedgerFactoryImpl;
+import org.apache.bookkeeper.util.ZkUtils;
+import org.apache.pulsar.common.api.proto.PulsarApi.CommandSubscribe.InitialPosition;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.MockZooKeeper;
+import org.apache.zookeeper.ZooDefs;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Individual acknowledgments on a managed cursor, with different ack patterns, on top of a mocked BookKeeper.
+ *
+ * <p/>Each iteration acknowledges all the entries of the ledger, one per invocation, on a newly created cursor. The
+ * <code>alternate</code> pattern acks all the even entries first, which creates the maximum number of ack holes,
+ * and then fills them.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, batchSize = ManagedCursorBenchmark.NumEntries)
+@Measurement(iterations = 10, batchSize = ManagedCursorBenchmark.NumEntries)
+@Fork(1)
+@State(Scope.Thread)
+public class ManagedCursorBenchmark {
+
+    static final int NumEntries = 10000;
+
+    private static final DeleteCallback NoOpDeleteCallback = new DeleteCallback() {
+        @Override
+        public void deleteComplete(Object ctx) {
+        }
+
+        @Override
+        public void deleteFailed(ManagedLedgerException exception, Object ctx) {
+        }
+    };
+
+    @Param({ "sequential", "alternate", "random" })
+    private String ackPattern;
+
+    @Param({ "false", "true" })
+    private boolean unackedRangesOpenCacheSetEnabled;
+
+    private OrderedScheduler executor;
+    private MockZooKeeper zkc;
+    private PulsarMockBookKeeper bkc;
+    private ManagedLedgerFactoryImpl factory;
+    private ManagedLedger ledger;
+
+    private final List<Position> positionsToAck = new ArrayList<>(NumEntries);
+    private ManagedCursor cursor;
+    private int nextPosition;
+    private int cursorIndex = 0;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        executor = OrderedScheduler.newSchedulerBuilder().numThreads(2).name("microbench").build();
+        zkc = MockZooKeeper.newInstance();
+        ZkUtils.createFullPathOptimistic(zkc, "/ledgers/available/192.168.1.1:5000", "".getBytes(), null, null);
+        zkc.create("/ledgers/LAYOUT", "1\nflat:1".getBytes(), null, null);
+        zkc.create("/managed-ledgers", new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        bkc = new PulsarMockBookKeeper(zkc, executor.chooseThread(this));
+        factory = new ManagedLedgerFactoryImpl(bkc, zkc, new ManagedLedgerFactoryConfig());
+
+        ManagedLedgerConfig config = new ManagedLedgerConfig();
+        config.setMaxEntriesPerLedger(NumEntries);
+        config.setUnackedRangesOpenCacheSetEnabled(unackedRangesOpenCacheSetEnabled);
+        // Same default as the broker, so that the benchmark measures the in-memory update of the ack state rather
+        // than the writes on the mocked cursor ledger
+        config.setThrottleMarkDelete(1.0);
+        ledger = factory.open("microbench-cursor", config);
+
+        byte[] data = new byte[100];
+        for (int i = 0; i < NumEntries; i++) {
+            positionsToAck.add(ledger.addEntry(data));
+        }
+
+        switch (ackPattern) {
+        case "alternate":
+            List<Position> odd = new ArrayList<>(NumEntries / 2);
+            List<Position> even = new ArrayList<>(NumEntries / 2);
+            for (int i = 0; i < NumEntries; i++) {
+                (i % 2 == 0 ? even : odd).add(positionsToAck.get(i));
+            }
+            positionsToAck.clear();
+            positionsToAck.addAll(even);
+            positionsToAck.addAll(odd);
+            break;
+        case "random":
+            Collections.shuffle(positionsToAck, new Random(1));
+            break;
+        default:
+            break;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws Exception {
+        ledger.close();
+        factory.shutdown();
+        bkc.shutdown();
+        zkc.shutdown();
+        executor.shutdown();
+    }
+
+    @Setup(Level.Iteration)
+    public void openCursor() throws Exception {
+        cursor = ledger.openCursor("cursor-" + cursorIndex++, InitialPosition.Earliest);
+        nextPosition = 0;
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteCursor() throws Exception {
+        ledger.deleteCursor(cursor.getName());
+    }
+
+    @Benchmark
+    public void asyncDelete() {
+        cursor.asyncDelete(positionsToAck.get(nextPosition++), NoOpDeleteCallback, null);
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.microbench;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.PulsarMockBookKeeper;
+import org.apache.bookkeeper.common.util.OrderedScheduler;
+import org.apache.bookkeeper.mledger.AsyncCallbacks.AddEntryCallback;
+import org.apache.bookkeeper.mledger.ManagedLedger;
+import org.apache.bookkeeper.mledger.ManagedLedgerConfig;
+import org.apache.bookkeeper.mledger.ManagedLedgerException;
+import org.apache.bookkeeper.mledger.ManagedLedgerFactoryConfig;
+import org.apache.bookkeeper.mledger.Position;
+import org.apache.bookkeeper.mledger.impl.ManagedLedgerFactoryImpl;
+import org.apache.bookkeeper.util.ZkUtils;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.MockZooKeeper;
+import org.apache.zookeeper.ZooDefs;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Publish throughput of a single managed ledger written by many threads, on top of a mocked BookKeeper.
+ *
+ * <p/>Each invocation submits one add operation, with at most {@link #MaxPendingAdds} operations outstanding. A low
+ * <code>maxEntriesPerLedger</code> makes the ledger roll over continuously, so that the add path also competes with
+ * the ledger switches.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class ManagedLedgerAddEntryBenchmark {
+
+    static final int MaxPendingAdds = 10000;
+
+    @Param({ "1000", "50000" })
+    private int maxEntriesPerLedger;
+
+    private OrderedScheduler executor;
+    private MockZooKeeper zkc;
+    private PulsarMockBookKeeper bkc;
+    private ManagedLedgerFactoryImpl factory;
+    private ManagedLedger ledger;
+
+    private final byte[] data = new byte[100];
+    private final Semaphore pendingAdds = new Semaphore(MaxPendingAdds);
+    private final AddEntryCallback callback = new AddEntryCallback() {
+        @Override
+        public void addComplete(Position position, Object ctx) {
+            pendingAdds.release();
+        }
+
+        @Override
+        public void addFailed(ManagedLedgerException exception, Object ctx) {
+            pendingAdds.release();
+        }
+    };
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        executor = OrderedScheduler.newSchedulerBuilder().numThreads(2).name("microbench").build();
+        zkc = MockZooKeeper.newInstance();
+        ZkUtils.createFullPathOptimistic(zkc, "/ledgers/available/192.168.1.1:5000", "".getBytes(), null, null);
+        zkc.create("/ledgers/LAYOUT", "1\nflat:1".getBytes(), null, null);
+        zkc.create("/managed-ledgers", new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        bkc = new PulsarMockBookKeeper(zkc, executor.chooseThread(this));
+        // Measure the managed ledger add path rather than the simulated write latency
+        bkc.setAddEntryDelayMillis(0);
+        factory = new ManagedLedgerFactoryImpl(bkc, zkc, new ManagedLedgerFactoryConfig());
+
+        // Without cursors, the full ledgers are trimmed and the mocked BookKeeper doesn't retain all the entries
+        ManagedLedgerConfig config = new ManagedLedgerConfig();
+        config.setMaxEntriesPerLedger(maxEntriesPerLedger);
+        config.setMinimumRolloverTime(0, TimeUnit.SECONDS);
+        config.setRetentionTime(0, TimeUnit.SECONDS);
+        ledger = factory.open("microbench-add-entry", config);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws Exception {
+        pendingAdds.acquire(MaxPendingAdds);
+        ledger.close();
+        factory.shutdown();
+        bkc.shutdown();
+        zkc.shutdown();
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public void asyncAddEntry() throws InterruptedException {
+        pendingAdds.acquire();
+        ledger.asyncAddEntry(data, callback, null);
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.microbench;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.mledger.impl.EntryImpl;
+import org.apache.bookkeeper.mledger.impl.PositionImpl;
+import org.apache.bookkeeper.mledger.util.RangeCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Lookups, insertions and evictions on the {@link RangeCache} that backs the managed-ledger entry cache.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RangeCacheBenchmark {
+
+    @Param({ "10000" })
+    private int numEntries;
+
+    @Param({ "1024" })
+    private int entrySize;
+
+    private RangeCache<PositionImpl, EntryImpl> cache;
+    private PositionImpl[] positions;
+    private byte[] data;
+    private long nextEntryId;
+
+    @Setup
+    public void setup() {
+        cache = new RangeCache<>(EntryImpl::getLength);
+        positions = new PositionImpl[numEntries];
+        data = new byte[entrySize];
+        for (int i = 0; i < numEntries; i++) {
+            positions[i] = new PositionImpl(1, i);
+            cache.put(positions[i], EntryImpl.create(1, i, data));
+        }
+        nextEntryId = numEntries;
+    }
+
+    @TearDown
+    public void teardown() {
+        cache.clear();
+    }
+
+    @Benchmark
+    public void get(Blackhole bh) {
+        EntryImpl entry = cache.get(positions[ThreadLocalRandom.current().nextInt(numEntries)]);
+        bh.consume(entry.getLength());
+        entry.release();
+    }
+
+    @Benchmark
+    public void getRange(Blackhole bh) {
+        int first = ThreadLocalRandom.current().nextInt(numEntries - 100);
+        for (EntryImpl entry : cache.getRange(positions[first], positions[first + 99])) {
+            bh.consume(entry.getLength());
+            entry.release();
+        }
+    }
+
+    /**
+     * Tailing write pattern: each new entry is inserted and the oldest one is evicted to keep the cache size stable.
+     */
+    @Benchmark
+    public void putAndEvict(Blackhole bh) {
+        long entryId = nextEntryId++;
+        cache.put(new PositionImpl(1, entryId), EntryImpl.create(1, entryId, data));
+        bh.consume(cache.evictLeastAccessedEntries(entrySize));
+    }
+}
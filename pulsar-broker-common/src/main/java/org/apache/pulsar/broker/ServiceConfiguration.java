@@ -108,6 +108,12 @@ public class ServiceConfiguration implements PulsarConfiguration {
     private long subscriptionExpirationTimeMinutes = 0;
     // How frequently to proactively check and purge expired subscription
     private long subscriptionExpiryCheckIntervalInMinutes = 5;
+    // Whether to enable the delayed delivery for messages published with a delivery time. If disabled, messages
+    // are immediately delivered and there is no tracking overhead
+    private boolean delayedDeliveryEnabled = true;
+    // Control the tick time for when retrying on delayed delivery, affecting the accuracy of the delivery time
+    // compared to the scheduled time. Default is 1 second
+    private long delayedDeliveryTickTimeMillis = 1000;
 
     // Set the default behavior for message deduplication in the broker
     // This can be overridden per-namespace. If enabled, broker will reject
@@ -177,6 +183,23 @@ public class ServiceConfiguration implements PulsarConfiguration {
     // don't have backlog. This enables dispatch-throttling for non-backlog consumers as well.
     @FieldContext(dynamic = true)
     private boolean dispatchThrottlingOnNonBacklogConsumerEnabled = false;
+    // Default messages per second publish throttling-limit for every topic, used when the namespace doesn't define a
+    // publish-rate policy. Using a value of 0, is disabling default message publish-throttling
+    private int maxPublishRatePerTopicInMessages = 0;
+    // Default bytes per second publish throttling-limit for every topic, used when the namespace doesn't define a
+    // publish-rate policy. Using a value of 0, is disabling default message-byte publish-throttling
+    private long maxPublishRatePerTopicInBytes = 0;
+    // Max messages per second that all the producers connected to the broker can publish together. Using a value
+    // of 0, is disabling broker level message publish-throttling
+    private int brokerPublisherThrottlingMaxMessageRate = 0;
+    // Max bytes per second that all the producers connected to the broker can publish together. Using a value of 0,
+    // is disabling broker level message-byte publish-throttling
+    private long brokerPublisherThrottlingMaxByteRate = 0;
+    // Max direct memory, in MB, held by the in-flight publish buffers, pending dispatch reads and dispatched entries
+    // not yet written to the consumers of the broker. Once reached, the broker stops reading from the producers
+    // connections and stops scheduling dispatch reads until half of it is released. Using a value of 0, is disabling
+    // the limit
+    private int maxInflightDirectMemoryInMB = 0;
     // Max number of concurrent lookup request broker allows to throttle heavy incoming lookup traffic
     @FieldContext(dynamic = true)
     private int maxConcurrentLookupRequest = 50000;
@@ -335,6 +358,13 @@ public class ServiceConfiguration implements PulsarConfiguration {
     private int managedLedgerCacheSizeMB = 1024;
     // Threshold to which bring down the cache level when eviction is triggered
     private double managedLedgerCacheEvictionWatermark = 0.9f;
+    // Size of the direct memory slabs where the cached entries of each ledger are appended. Slabs are evicted as a
+    // whole, oldest first. If 0, every entry is cached in its own buffer
+    private int managedLedgerCacheSlabSizeKB = 0;
+    // Only cache the entries that an active cursor is going to read soon, i.e. when the read position of an active
+    // cursor is behind the entry by at most this number of entries. It prevents the subscriptions replaying an old
+    // backlog from evicting the entries of the tailing subscriptions. If 0, all the added entries are cached
+    private long managedLedgerCacheAdmissionMaxCursorDistance = 0;
     // Rate limit the amount of writes per second generated by consumer acking the messages
     private double managedLedgerDefaultMarkDeleteRateLimit = 1.0;
 
@@ -359,6 +389,15 @@ public class ServiceConfiguration implements PulsarConfiguration {
     private int managedLedgerCursorMaxEntriesPerLedger = 50000;
     // Max time before triggering a rollover on a cursor ledger
     private int managedLedgerCursorRolloverTimeInSeconds = 14400;
+    // Persist the mark-delete positions of all the cursors in a few ledgers shared by the broker, grouping the updates
+    // of many cursors in a single entry, instead of using one ledger per cursor. The shared ledgers are rolled over
+    // after managedLedgerCursorMaxEntriesPerLedger entries
+    private boolean managedLedgerSharedCursorsLedgerEnabled = false;
+    // Interval at which the pending mark-delete updates are written in the shared cursors ledger
+    private long managedLedgerSharedCursorsLedgerFlushIntervalMs = 100;
+    // Interval at which the shared cursors ledgers left by stopped brokers are deleted, once no cursor refers to them.
+    // If 0, they are never deleted
+    private long managedLedgerSharedCursorsLedgerSweepIntervalMinutes = 60;
     // Max number of "acknowledgment holes" that are going to be persistently stored.
     // When acknowledging out of order, a consumer will leave holes that are supposed
     // to be quickly filled by acking all the messages. The information of which
@@ -371,6 +410,14 @@ public class ServiceConfiguration implements PulsarConfiguration {
     // than this limit then broker will persist unacked ranges into bookkeeper to avoid additional data overhead into
     // zookeeper.
     private int managedLedgerMaxUnackedRangesToPersistInZooKeeper = 1000;
+    // Track the "acknowledgment holes" of the cursors with per-ledger bitsets instead of a tree of position ranges.
+    // It reduces the memory used by subscriptions with highly fragmented acknowledgments.
+    private boolean managedLedgerUnackedRangesOpenCacheSetEnabled = false;
+    // Max size of the read-ahead buffer of each cursor, in MB. When a cursor is sequentially reading a backlog, the
+    // entries ahead of it are prefetched with multiple parallel reads, across ledgers, into this buffer. 0 to disable.
+    private int managedLedgerReadAheadMaxBufferSizeInMB = 0;
+    // Number of entries fetched by each read-ahead read
+    private int managedLedgerReadAheadBatchSize = 500;
     // Skip reading non-recoverable/unreadable data-ledger under managed-ledger's list. It helps when data-ledgers gets
     // corrupted at bookkeeper and managed-cursor is stuck at that ledger.
     @FieldContext(dynamic = true)
@@ -474,6 +521,11 @@ public class ServiceConfiguration implements PulsarConfiguration {
 
     // Interval between checks to see if topics with compaction policies need to be compacted
     private int brokerServiceCompactionMonitorIntervalInSeconds = 60;
+    // Max direct memory used by the index of the keys of a topic being compacted. Once this size is reached, the
+    // index is spilled to memory mapped files in compactionKeyIndexSpillDirectory
+    private int compactionKeyIndexMaxMemoryMB = 256;
+    // Directory where the compaction key index is spilled. The java temporary directory is used when not set
+    private String compactionKeyIndexSpillDirectory = null;
 
     private boolean isSchemaValidationEnforced = false;
     private String schemaRegistryStorageClassName = "org.apache.pulsar.broker.service.schema.BookkeeperSchemaStorageFactory";
@@ -481,6 +533,9 @@ public class ServiceConfiguration implements PulsarConfiguration {
             "org.apache.pulsar.broker.service.schema.JsonSchemaCompatibilityCheck",
             "org.apache.pulsar.broker.service.schema.AvroSchemaCompatibilityCheck"
     );
+    // Max number of schema versions, and of topics with a schema hash index, kept in memory by the schema registry
+    // to avoid reading the schema storage on every producer and consumer connection
+    private int schemaRegistryCacheMaxEntries = 10000;
 
     /**** --- WebSocket --- ****/
     // Number of IO threads in Pulsar Client used in WebSocket proxy
@@ -758,6 +813,22 @@ public class ServiceConfiguration implements PulsarConfiguration {
         this.subscriptionExpiryCheckIntervalInMinutes = subscriptionExpiryCheckIntervalInMinutes;
     }
 
+    public boolean isDelayedDeliveryEnabled() {
+        return delayedDeliveryEnabled;
+    }
+
+    public void setDelayedDeliveryEnabled(boolean delayedDeliveryEnabled) {
+        this.delayedDeliveryEnabled = delayedDeliveryEnabled;
+    }
+
+    public long getDelayedDeliveryTickTimeMillis() {
+        return delayedDeliveryTickTimeMillis;
+    }
+
+    public void setDelayedDeliveryTickTimeMillis(long delayedDeliveryTickTimeMillis) {
+        this.delayedDeliveryTickTimeMillis = delayedDeliveryTickTimeMillis;
+    }
+
     public boolean isClientLibraryVersionCheckEnabled() {
         return clientLibraryVersionCheckEnabled;
     }
@@ -847,6 +918,46 @@ public class ServiceConfiguration implements PulsarConfiguration {
         this.dispatchThrottlingOnNonBacklogConsumerEnabled = dispatchThrottlingOnNonBacklogConsumerEnabled;
     }
 
+    public int getMaxPublishRatePerTopicInMessages() {
+        return maxPublishRatePerTopicInMessages;
+    }
+
+    public void setMaxPublishRatePerTopicInMessages(int maxPublishRatePerTopicInMessages) {
+        this.maxPublishRatePerTopicInMessages = maxPublishRatePerTopicInMessages;
+    }
+
+    public long getMaxPublishRatePerTopicInBytes() {
+        return maxPublishRatePerTopicInBytes;
+    }
+
+    public void setMaxPublishRatePerTopicInBytes(long maxPublishRatePerTopicInBytes) {
+        this.maxPublishRatePerTopicInBytes = maxPublishRatePerTopicInBytes;
+    }
+
+    public int getBrokerPublisherThrottlingMaxMessageRate() {
+        return brokerPublisherThrottlingMaxMessageRate;
+    }
+
+    public void setBrokerPublisherThrottlingMaxMessageRate(int brokerPublisherThrottlingMaxMessageRate) {
+        this.brokerPublisherThrottlingMaxMessageRate = brokerPublisherThrottlingMaxMessageRate;
+    }
+
+    public long getBrokerPublisherThrottlingMaxByteRate() {
+        return brokerPublisherThrottlingMaxByteRate;
+    }
+
+    public void setBrokerPublisherThrottlingMaxByteRate(long brokerPublisherThrottlingMaxByteRate) {
+        this.brokerPublisherThrottlingMaxByteRate = brokerPublisherThrottlingMaxByteRate;
+    }
+
+    public int getMaxInflightDirectMemoryInMB() {
+        return maxInflightDirectMemoryInMB;
+    }
+
+    public void setMaxInflightDirectMemoryInMB(int maxInflightDirectMemoryInMB) {
+        this.maxInflightDirectMemoryInMB = maxInflightDirectMemoryInMB;
+    }
+
     public int getMaxConcurrentLookupRequest() {
         return maxConcurrentLookupRequest;
     }
@@ -1233,6 +1344,22 @@ public class ServiceConfiguration implements PulsarConfiguration {
         this.managedLedgerCacheEvictionWatermark = managedLedgerCacheEvictionWatermark;
     }
 
+    public long getManagedLedgerCacheAdmissionMaxCursorDistance() {
+        return managedLedgerCacheAdmissionMaxCursorDistance;
+    }
+
+    public void setManagedLedgerCacheAdmissionMaxCursorDistance(long managedLedgerCacheAdmissionMaxCursorDistance) {
+        this.managedLedgerCacheAdmissionMaxCursorDistance = managedLedgerCacheAdmissionMaxCursorDistance;
+    }
+
+    public int getManagedLedgerCacheSlabSizeKB() {
+        return managedLedgerCacheSlabSizeKB;
+    }
+
+    public void setManagedLedgerCacheSlabSizeKB(int managedLedgerCacheSlabSizeKB) {
+        this.managedLedgerCacheSlabSizeKB = managedLedgerCacheSlabSizeKB;
+    }
+
     public double getManagedLedgerDefaultMarkDeleteRateLimit() {
         return managedLedgerDefaultMarkDeleteRateLimit;
     }
@@ -1289,6 +1416,32 @@ public class ServiceConfiguration implements PulsarConfiguration {
         this.managedLedgerCursorRolloverTimeInSeconds = managedLedgerCursorRolloverTimeInSeconds;
     }
 
+    public boolean isManagedLedgerSharedCursorsLedgerEnabled() {
+        return managedLedgerSharedCursorsLedgerEnabled;
+    }
+
+    public void setManagedLedgerSharedCursorsLedgerEnabled(boolean managedLedgerSharedCursorsLedgerEnabled) {
+        this.managedLedgerSharedCursorsLedgerEnabled = managedLedgerSharedCursorsLedgerEnabled;
+    }
+
+    public long getManagedLedgerSharedCursorsLedgerFlushIntervalMs() {
+        return managedLedgerSharedCursorsLedgerFlushIntervalMs;
+    }
+
+    public void setManagedLedgerSharedCursorsLedgerFlushIntervalMs(
+            long managedLedgerSharedCursorsLedgerFlushIntervalMs) {
+        this.managedLedgerSharedCursorsLedgerFlushIntervalMs = managedLedgerSharedCursorsLedgerFlushIntervalMs;
+    }
+
+    public long getManagedLedgerSharedCursorsLedgerSweepIntervalMinutes() {
+        return managedLedgerSharedCursorsLedgerSweepIntervalMinutes;
+    }
+
+    public void setManagedLedgerSharedCursorsLedgerSweepIntervalMinutes(
+            long managedLedgerSharedCursorsLedgerSweepIntervalMinutes) {
+        this.managedLedgerSharedCursorsLedgerSweepIntervalMinutes = managedLedgerSharedCursorsLedgerSweepIntervalMinutes;
+    }
+
     public int getManagedLedgerMaxUnackedRangesToPersist() {
         return managedLedgerMaxUnackedRangesToPersist;
     }
@@ -1306,6 +1459,31 @@ public class ServiceConfiguration implements PulsarConfiguration {
         this.managedLedgerMaxUnackedRangesToPersistInZooKeeper = managedLedgerMaxUnackedRangesToPersistInZookeeper;
     }
 
+    public boolean isManagedLedgerUnackedRangesOpenCacheSetEnabled() {
+        return managedLedgerUnackedRangesOpenCacheSetEnabled;
+    }
+
+    public void setManagedLedgerUnackedRangesOpenCacheSetEnabled(
+            boolean managedLedgerUnackedRangesOpenCacheSetEnabled) {
+        this.managedLedgerUnackedRangesOpenCacheSetEnabled = managedLedgerUnackedRangesOpenCacheSetEnabled;
+    }
+
+    public int getManagedLedgerReadAheadMaxBufferSizeInMB() {
+        return managedLedgerReadAheadMaxBufferSizeInMB;
+    }
+
+    public void setManagedLedgerReadAheadMaxBufferSizeInMB(int managedLedgerReadAheadMaxBufferSizeInMB) {
+        this.managedLedgerReadAheadMaxBufferSizeInMB = managedLedgerReadAheadMaxBufferSizeInMB;
+    }
+
+    public int getManagedLedgerReadAheadBatchSize() {
+        return managedLedgerReadAheadBatchSize;
+    }
+
+    public void setManagedLedgerReadAheadBatchSize(int managedLedgerReadAheadBatchSize) {
+        this.managedLedgerReadAheadBatchSize = managedLedgerReadAheadBatchSize;
+    }
+
     public int getManagedLedgerNumWorkerThreads() {
         return managedLedgerNumWorkerThreads;
     }
@@ -1696,6 +1874,14 @@ public class ServiceConfiguration implements PulsarConfiguration {
         this.schemaRegistryCompatibilityCheckers = schemaRegistryCompatibilityCheckers;
     }
 
+    public int getSchemaRegistryCacheMaxEntries() {
+        return schemaRegistryCacheMaxEntries;
+    }
+
+    public void setSchemaRegistryCacheMaxEntries(int schemaRegistryCacheMaxEntries) {
+        this.schemaRegistryCacheMaxEntries = schemaRegistryCacheMaxEntries;
+    }
+
     public boolean authenticateOriginalAuthData() {
         return authenticateOriginalAuthData;
     }
@@ -1789,6 +1975,22 @@ public class ServiceConfiguration implements PulsarConfiguration {
         return this.brokerServiceCompactionMonitorIntervalInSeconds;
     }
 
+    public int getCompactionKeyIndexMaxMemoryMB() {
+        return compactionKeyIndexMaxMemoryMB;
+    }
+
+    public void setCompactionKeyIndexMaxMemoryMB(int compactionKeyIndexMaxMemoryMB) {
+        this.compactionKeyIndexMaxMemoryMB = compactionKeyIndexMaxMemoryMB;
+    }
+
+    public String getCompactionKeyIndexSpillDirectory() {
+        return compactionKeyIndexSpillDirectory;
+    }
+
+    public void setCompactionKeyIndexSpillDirectory(String compactionKeyIndexSpillDirectory) {
+        this.compactionKeyIndexSpillDirectory = compactionKeyIndexSpillDirectory;
+    }
+
     public BacklogQuota.RetentionPolicy getBacklogQuotaDefaultRetentionPolicy() {
         return backlogQuotaDefaultRetentionPolicy;
     }
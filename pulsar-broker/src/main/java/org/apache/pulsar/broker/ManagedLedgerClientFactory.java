@@ -45,6 +45,18 @@ public class ManagedLedgerClientFactory implements Closeable {
         ManagedLedgerFactoryConfig managedLedgerFactoryConfig = new ManagedLedgerFactoryConfig();
         managedLedgerFactoryConfig.setMaxCacheSize(conf.getManagedLedgerCacheSizeMB() * 1024L * 1024L);
         managedLedgerFactoryConfig.setCacheEvictionWatermark(conf.getManagedLedgerCacheEvictionWatermark());
+        managedLedgerFactoryConfig.setCacheSlabSize(conf.getManagedLedgerCacheSlabSizeKB() * 1024);
+        managedLedgerFactoryConfig
+                .setCacheAdmissionMaxCursorDistance(conf.getManagedLedgerCacheAdmissionMaxCursorDistance());
+        managedLedgerFactoryConfig.setSharedCursorsLedgerEnabled(conf.isManagedLedgerSharedCursorsLedgerEnabled());
+        managedLedgerFactoryConfig
+                .setSharedCursorsLedgerFlushIntervalMs(conf.getManagedLedgerSharedCursorsLedgerFlushIntervalMs());
+        managedLedgerFactoryConfig.setSharedCursorsLedgerSweepIntervalMinutes(
+                conf.getManagedLedgerSharedCursorsLedgerSweepIntervalMinutes());
+        managedLedgerFactoryConfig.setSharedCursorsLedgerMaxEntries(conf.getManagedLedgerCursorMaxEntriesPerLedger());
+        managedLedgerFactoryConfig.setSharedCursorsLedgerEnsembleSize(conf.getManagedLedgerDefaultEnsembleSize());
+        managedLedgerFactoryConfig.setSharedCursorsLedgerWriteQuorumSize(conf.getManagedLedgerDefaultWriteQuorum());
+        managedLedgerFactoryConfig.setSharedCursorsLedgerAckQuorumSize(conf.getManagedLedgerDefaultAckQuorum());
         managedLedgerFactoryConfig.setNumManagedLedgerWorkerThreads(conf.getManagedLedgerNumWorkerThreads());
         managedLedgerFactoryConfig.setNumManagedLedgerSchedulerThreads(conf.getManagedLedgerNumSchedulerThreads());
 
@@ -50,12 +50,14 @@ import org.apache.bookkeeper.conf.ClientConfiguration;
 import org.apache.bookkeeper.mledger.LedgerOffloader;
 import org.apache.bookkeeper.mledger.LedgerOffloaderFactory;
 import org.apache.bookkeeper.mledger.ManagedLedgerFactory;
+import org.apache.bookkeeper.mledger.Position;
 import org.apache.bookkeeper.mledger.impl.NullLedgerOffloader;
 import org.apache.bookkeeper.mledger.offload.OffloaderUtils;
 import org.apache.bookkeeper.mledger.offload.Offloaders;
 import org.apache.bookkeeper.util.ZkUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.builder.ReflectionToStringBuilder;
+import org.apache.commons.lang3.tuple.Pair;
 import org.apache.pulsar.broker.admin.AdminResource;
 import org.apache.pulsar.broker.cache.ConfigurationCacheService;
 import org.apache.pulsar.broker.cache.LocalZooKeeperCacheService;
@@ -69,6 +71,7 @@ import org.apache.pulsar.broker.loadbalance.impl.LoadManagerShared;
 import org.apache.pulsar.broker.namespace.NamespaceService;
 import org.apache.pulsar.broker.service.BrokerService;
 import org.apache.pulsar.broker.service.Topic;
+import org.apache.pulsar.broker.service.persistent.PersistentTopic;
 import org.apache.pulsar.broker.service.schema.SchemaRegistryService;
 import org.apache.pulsar.broker.stats.MetricsGenerator;
 import org.apache.pulsar.broker.stats.prometheus.PrometheusMetricsServlet;
@@ -763,7 +766,8 @@ public class PulsarService implements AutoCloseable {
             try {
                 this.compactor = new TwoPhaseCompactor(this.getConfiguration(),
                                                        getClient(), getBookKeeperClient(),
-                                                       getCompactorExecutor());
+                                                       getCompactorExecutor(),
+                                                       this::getCompactedLedgerAndHorizon);
             } catch (Exception e) {
                 throw new PulsarServerException(e);
             }
@@ -771,6 +775,12 @@ public class PulsarService implements AutoCloseable {
         return this.compactor;
     }
 
+    private Optional<Pair<Long, Position>> getCompactedLedgerAndHorizon(String topic) {
+        return getBrokerService().getTopicReference(topic)
+                .filter((t) -> t instanceof PersistentTopic)
+                .flatMap((t) -> ((PersistentTopic) t).getCompactedTopic().getCompactedLedgerAndHorizon());
+    }
+
     protected synchronized OrderedScheduler getOffloaderScheduler(ServiceConfiguration conf) {
         if (this.offloaderScheduler == null) {
             this.offloaderScheduler = OrderedScheduler.newSchedulerBuilder()
@@ -0,0 +1,267 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.delayed;
+
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+
+import java.time.Clock;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.bookkeeper.mledger.impl.PositionImpl;
+import org.apache.pulsar.broker.service.persistent.PersistentDispatcherMultipleConsumers;
+import org.apache.pulsar.common.util.collections.TripleLongPriorityQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link DelayedDeliveryTracker} that keeps the delayed positions in memory, ordered by delivery time.
+ * <p>
+ * Each message is stored as a (deliveryAt, ledgerId, entryId) triple in a {@link TripleLongPriorityQueue}, which
+ * costs 24 bytes of direct memory and no object allocation. A single timeout is scheduled, on the broker-wide
+ * hashed-wheel timer, at the delivery time of the first message and it triggers a new read on the dispatcher.
+ * <p>
+ * The scheduled messages are returned in a set that is reused by every call to {@link #getScheduledMessages(int)}.
+ */
+public class InMemoryDelayedDeliveryTracker implements DelayedDeliveryTracker, TimerTask {
+
+    private final TripleLongPriorityQueue priorityQueue = new TripleLongPriorityQueue();
+
+    // Positions returned by the last call to getScheduledMessages
+    private final ScheduledPositions scheduledPositions = new ScheduledPositions();
+
+    private final PersistentDispatcherMultipleConsumers dispatcher;
+
+    // Reference to the shared (per-broker) timer for delayed delivery
+    private final Timer timer;
+
+    // Current timeout or null if not set
+    private Timeout timeout;
+
+    // Timestamp at which the timeout is currently set
+    private long currentTimeoutTarget;
+
+    private final long tickTimeMillis;
+
+    private final Clock clock;
+
+    public InMemoryDelayedDeliveryTracker(PersistentDispatcherMultipleConsumers dispatcher, Timer timer,
+            long tickTimeMillis) {
+        this(dispatcher, timer, tickTimeMillis, Clock.systemUTC());
+    }
+
+    InMemoryDelayedDeliveryTracker(PersistentDispatcherMultipleConsumers dispatcher, Timer timer,
+            long tickTimeMillis, Clock clock) {
+        this.dispatcher = dispatcher;
+        this.timer = timer;
+        this.tickTimeMillis = tickTimeMillis;
+        this.clock = clock;
+        this.currentTimeoutTarget = -1;
+    }
+
+    @Override
+    public boolean addMessage(long ledgerId, long entryId, long deliveryAt) {
+        long now = clock.millis();
+        if (log.isDebugEnabled()) {
+            log.debug("[{}] Add message {}:{} -- Delivery in {} ms ", dispatcher.getName(), ledgerId, entryId,
+                    deliveryAt - now);
+        }
+        if (deliveryAt < (now + tickTimeMillis)) {
+            // It's already about time to deliver this message. We add the buffer of tickTimeMillis because messages
+            // would be delivered with that accuracy anyway
+            return false;
+        }
+
+        priorityQueue.add(deliveryAt, ledgerId, entryId);
+        updateTimer();
+        return true;
+    }
+
+    @Override
+    public boolean hasMessageAvailable() {
+        return !priorityQueue.isEmpty() && priorityQueue.peekN1() <= clock.millis();
+    }
+
+    @Override
+    public Set<PositionImpl> getScheduledMessages(int maxMessages) {
+        int n = maxMessages;
+        ScheduledPositions positions = scheduledPositions;
+        positions.clear();
+        long now = clock.millis();
+
+        while (n > 0 && !priorityQueue.isEmpty()) {
+            long timestamp = priorityQueue.peekN1();
+            if (timestamp > now) {
+                break;
+            }
+
+            long ledgerId = priorityQueue.peekN2();
+            long entryId = priorityQueue.peekN3();
+            positions.add(new PositionImpl(ledgerId, entryId));
+
+            priorityQueue.pop();
+            --n;
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("[{}] Get scheduled messages - found {}", dispatcher.getName(), positions.size());
+        }
+        updateTimer();
+        return positions;
+    }
+
+    @Override
+    public long getNumberOfDelayedMessages() {
+        return priorityQueue.size();
+    }
+
+    @Override
+    public void clear() {
+        priorityQueue.clear();
+        scheduledPositions.clear();
+        updateTimer();
+    }
+
+    private void updateTimer() {
+        if (priorityQueue.isEmpty()) {
+            if (timeout != null) {
+                currentTimeoutTarget = -1;
+                timeout.cancel();
+                timeout = null;
+            }
+            return;
+        }
+
+        long timestamp = priorityQueue.peekN1();
+        if (timestamp == currentTimeoutTarget) {
+            // The timer is already set to the correct target time
+            return;
+        }
+
+        if (timeout != null) {
+            timeout.cancel();
+        }
+
+        long delayMillis = timestamp - clock.millis();
+        if (log.isDebugEnabled()) {
+            log.debug("[{}] Start timer in {} millis", dispatcher.getName(), delayMillis);
+        }
+
+        // Even though we may have a delay <= 0, the timer will fire on its next tick
+        currentTimeoutTarget = timestamp;
+        timeout = timer.newTimeout(this, Math.max(0, delayMillis), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void run(Timeout timeout) throws Exception {
+        if (log.isDebugEnabled()) {
+            log.debug("[{}] Timer triggered", dispatcher.getName());
+        }
+        if (timeout.isCancelled()) {
+            return;
+        }
+
+        synchronized (dispatcher) {
+            if (this.timeout != timeout) {
+                // The timer was rescheduled in the meantime
+                return;
+            }
+            currentTimeoutTarget = -1;
+            this.timeout = null;
+            dispatcher.readMoreEntries();
+        }
+    }
+
+    @Override
+    public void close() {
+        priorityQueue.close();
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+    /**
+     * Set of positions kept sorted in an array, that is reused instead of allocating a new set for every batch of
+     * scheduled messages.
+     */
+    private static class ScheduledPositions extends AbstractSet<PositionImpl> {
+        private PositionImpl[] positions = new PositionImpl[16];
+        private int size = 0;
+
+        @Override
+        public boolean add(PositionImpl position) {
+            int index = Arrays.binarySearch(positions, 0, size, position);
+            if (index >= 0) {
+                return false;
+            }
+            index = -index - 1;
+            if (size == positions.length) {
+                positions = Arrays.copyOf(positions, size * 2);
+            }
+            System.arraycopy(positions, index, positions, index + 1, size - index);
+            positions[index] = position;
+            ++size;
+            return true;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof PositionImpl && Arrays.binarySearch(positions, 0, size, o) >= 0;
+        }
+
+        @Override
+        public Iterator<PositionImpl> iterator() {
+            return new Iterator<PositionImpl>() {
+                private int index = 0;
+
+                @Override
+                public boolean hasNext() {
+                    return index < size;
+                }
+
+                @Override
+                public PositionImpl next() {
+                    if (index >= size) {
+                        throw new NoSuchElementException();
+                    }
+                    return positions[index++];
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public void clear() {
+            Arrays.fill(positions, 0, size, null);
+            size = 0;
+        }
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(InMemoryDelayedDeliveryTracker.class);
+}
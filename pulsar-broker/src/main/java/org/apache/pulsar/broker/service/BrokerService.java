@@ -36,6 +36,7 @@ import io.netty.channel.AdaptiveRecvByteBufAllocator;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
 import io.netty.handler.ssl.SslContext;
+import io.netty.util.HashedWheelTimer;
 import io.netty.util.concurrent.DefaultThreadFactory;
 
 import java.io.Closeable;
@@ -111,6 +112,7 @@ import org.apache.pulsar.common.policies.data.ClusterData;
 import org.apache.pulsar.common.policies.data.PersistencePolicies;
 import org.apache.pulsar.common.policies.data.PersistentOfflineTopicStats;
 import org.apache.pulsar.common.policies.data.Policies;
+import org.apache.pulsar.common.policies.data.PublishRate;
 import org.apache.pulsar.common.policies.data.RetentionPolicies;
 import org.apache.pulsar.common.policies.data.TopicStats;
 import org.apache.pulsar.common.stats.Metrics;
@@ -167,6 +169,8 @@ public class BrokerService implements Closeable, ZooKeeperCacheListener<Policies
     private final ScheduledExecutorService inactivityMonitor;
     private final ScheduledExecutorService messageExpiryMonitor;
     private final ScheduledExecutorService compactionMonitor;
+    // Shared timer used by the subscriptions to release the delayed messages
+    private final HashedWheelTimer delayedDeliveryTimer;
 
     private DistributedIdGenerator producerNameGenerator;
 
@@ -188,6 +192,10 @@ public class BrokerService implements Closeable, ZooKeeperCacheListener<Policies
     private static final AtomicBoolean blockedDispatcherOnHighUnackedMsgs = new AtomicBoolean(false);
     private final ConcurrentOpenHashSet<PersistentDispatcherMultipleConsumers> blockedDispatchers;
     private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // Aggregated publish rate limit of all the producers connected to this broker
+    private final PublishRateLimiter brokerPublishRateLimiter;
+    // Direct memory held by the in-flight publish buffers and pending dispatch reads
+    private final InflightMemoryLimiter inflightMemoryLimiter;
 
     public BrokerService(PulsarService pulsar) throws Exception {
         this.pulsar = pulsar;
@@ -231,6 +239,8 @@ public class BrokerService implements Closeable, ZooKeeperCacheListener<Policies
                 .newSingleThreadScheduledExecutor(new DefaultThreadFactory("pulsar-msg-expiry-monitor"));
         this.compactionMonitor =
             Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("pulsar-compaction-monitor"));
+        this.delayedDeliveryTimer = new HashedWheelTimer(new DefaultThreadFactory("pulsar-delayed-delivery"),
+                pulsar.getConfiguration().getDelayedDeliveryTickTimeMillis(), TimeUnit.MILLISECONDS);
 
         this.backlogQuotaManager = new BacklogQuotaManager(pulsar);
         this.backlogQuotaChecker = Executors
@@ -243,6 +253,15 @@ public class BrokerService implements Closeable, ZooKeeperCacheListener<Policies
             }
         };
         this.blockedDispatchers = new ConcurrentOpenHashSet<>();
+        PublishRate brokerPublishRate = new PublishRate(
+                pulsar.getConfiguration().getBrokerPublisherThrottlingMaxMessageRate(),
+                pulsar.getConfiguration().getBrokerPublisherThrottlingMaxByteRate());
+        this.brokerPublishRateLimiter = brokerPublishRate.publishThrottlingRateInMsg > 0
+                || brokerPublishRate.publishThrottlingRateInByte > 0
+                        ? new PublishRateLimiterImpl(brokerPublishRate)
+                        : PublishRateLimiterDisabled.DISABLED_RATE_LIMITER;
+        this.inflightMemoryLimiter = new InflightMemoryLimiter(
+                pulsar.getConfiguration().getMaxInflightDirectMemoryInMB() * 1024L * 1024L);
         // update dynamic configuration and register-listener
         updateConfigurationAndRegisterListeners();
         this.lookupRequestSemaphore = new AtomicReference<Semaphore>(
@@ -402,6 +421,7 @@ public class BrokerService implements Closeable, ZooKeeperCacheListener<Policies
         inactivityMonitor.shutdown();
         messageExpiryMonitor.shutdown();
         compactionMonitor.shutdown();
+        delayedDeliveryTimer.stop();
         backlogQuotaChecker.shutdown();
         authenticationService.close();
         pulsarStats.close();
@@ -732,6 +752,11 @@ public class BrokerService implements Closeable, ZooKeeperCacheListener<Policies
 
             managedLedgerConfig.setMaxUnackedRangesToPersist(serviceConfig.getManagedLedgerMaxUnackedRangesToPersist());
             managedLedgerConfig.setMaxUnackedRangesToPersistInZk(serviceConfig.getManagedLedgerMaxUnackedRangesToPersistInZooKeeper());
+            managedLedgerConfig.setUnackedRangesOpenCacheSetEnabled(
+                    serviceConfig.isManagedLedgerUnackedRangesOpenCacheSetEnabled());
+            managedLedgerConfig.setReadAheadMaxBufferSizeBytes(
+                    serviceConfig.getManagedLedgerReadAheadMaxBufferSizeInMB() * 1024L * 1024L);
+            managedLedgerConfig.setReadAheadBatchSize(serviceConfig.getManagedLedgerReadAheadBatchSize());
             managedLedgerConfig.setMaxEntriesPerLedger(serviceConfig.getManagedLedgerMaxEntriesPerLedger());
             managedLedgerConfig.setMinimumRolloverTime(serviceConfig.getManagedLedgerMinLedgerRolloverTimeMinutes(),
                     TimeUnit.MINUTES);
@@ -837,10 +862,8 @@ public class BrokerService implements Closeable, ZooKeeperCacheListener<Policies
         }
     }
 
-    public void updateRates() {
-        synchronized (pulsarStats) {
-            pulsarStats.updateStats(multiLayerTopicsMap);
-        }
+    public CompletableFuture<Void> updateRates() {
+        return pulsarStats.updateStats(multiLayerTopicsMap, topicOrderedExecutor);
     }
 
     public void getDimensionMetrics(Consumer<ByteBuf> consumer) {
@@ -1059,6 +1082,10 @@ public class BrokerService implements Closeable, ZooKeeperCacheListener<Policies
         return workerGroup;
     }
 
+    public HashedWheelTimer getDelayedDeliveryTimer() {
+        return delayedDeliveryTimer;
+    }
+
     public ConcurrentOpenHashMap<String, PulsarClient> getReplicationClients() {
         return replicationClients;
     }
@@ -1397,6 +1424,14 @@ public class BrokerService implements Closeable, ZooKeeperCacheListener<Policies
 
     }
 
+    public PublishRateLimiter getBrokerPublishRateLimiter() {
+        return brokerPublishRateLimiter;
+    }
+
+    public InflightMemoryLimiter getInflightMemoryLimiter() {
+        return inflightMemoryLimiter;
+    }
+
     public OrderedExecutor getTopicOrderedExecutor() {
         return topicOrderedExecutor;
     }
@@ -145,6 +145,12 @@ public class BrokerServiceException extends Exception {
         }
     }
 
+    public static class ConsumerAssignException extends BrokerServiceException {
+        public ConsumerAssignException(String msg) {
+            super(msg);
+        }
+    }
+
     public static PulsarApi.ServerError getClientErrorCode(Throwable t) {
         if (t instanceof ServerMetadataException) {
             return PulsarApi.ServerError.MetadataError;
@@ -152,7 +158,7 @@ public class BrokerServiceException extends Exception {
             return PulsarApi.ServerError.ProducerBusy;
         } else if (t instanceof PersistenceException) {
             return PulsarApi.ServerError.PersistenceError;
-        } else if (t instanceof ConsumerBusyException) {
+        } else if (t instanceof ConsumerBusyException || t instanceof ConsumerAssignException) {
             return PulsarApi.ServerError.ConsumerBusy;
         } else if (t instanceof UnsupportedVersionException) {
             return PulsarApi.ServerError.UnsupportedVersionError;
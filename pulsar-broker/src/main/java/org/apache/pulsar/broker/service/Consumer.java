@@ -47,6 +47,7 @@ import org.apache.bookkeeper.mledger.impl.PositionImpl;
 import org.apache.bookkeeper.mledger.util.Rate;
 import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap;
 import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap.LongPair;
+import org.apache.commons.lang3.tuple.Pair;
 import org.apache.pulsar.broker.PulsarServerException;
 import org.apache.pulsar.broker.authentication.AuthenticationDataSource;
 import org.apache.pulsar.common.api.Commands;
@@ -56,6 +57,7 @@ import org.apache.pulsar.common.api.proto.PulsarApi.CommandAck.AckType;
 import org.apache.pulsar.common.api.proto.PulsarApi.CommandSubscribe.InitialPosition;
 import org.apache.pulsar.common.api.proto.PulsarApi.CommandSubscribe.SubType;
 import org.apache.pulsar.common.api.proto.PulsarApi.MessageIdData;
+import org.apache.pulsar.common.api.proto.PulsarApi.MessageIdRange;
 import org.apache.pulsar.common.api.proto.PulsarApi.ProtocolVersion;
 import org.apache.pulsar.common.naming.TopicName;
 import org.apache.pulsar.common.policies.data.ConsumerStats;
@@ -145,7 +147,7 @@ public class Consumer {
         stats.setClientVersion(cnx.getClientVersion());
         stats.metadata = this.metadata;
 
-        if (subType == SubType.Shared) {
+        if (subType == SubType.Shared || subType == SubType.Key_Shared) {
             this.pendingAcks = new ConcurrentLongLongPairHashMap(256, 1);
         } else {
             // We don't need to keep track of pending acks if the subscription is not shared
@@ -236,22 +238,21 @@ public class Consumer {
             return sentMessages;
         }
 
+        final boolean sendBatchIndexesAckSet = Commands
+                .peerSupportsBatchIndexAcknowledgment(cnx.getRemoteEndpointProtocolVersion());
+        final boolean skipChecksum = cnx.getRemoteEndpointProtocolVersion() < ProtocolVersion.v11.getNumber();
         ctx.channel().eventLoop().execute(() -> {
+            // Looked up on the IO thread, since the caller holds the dispatcher lock
+            final RedeliveryTracker redeliveryTracker = subscription.getDispatcher().getRedeliveryTracker();
             for (int i = 0; i < entries.size(); i++) {
                 Entry entry = entries.get(i);
                 PositionImpl pos = (PositionImpl) entry.getPosition();
-                MessageIdData.Builder messageIdBuilder = MessageIdData.newBuilder();
-                MessageIdData messageId = messageIdBuilder
-                    .setLedgerId(pos.getLedgerId())
-                    .setEntryId(pos.getEntryId())
-                    .setPartition(partitionIdx)
-                    .build();
 
                 ByteBuf metadataAndPayload = entry.getDataBuffer();
                 // increment ref-count of data and release at the end of process: so, we can get chance to call entry.release
                 metadataAndPayload.retain();
                 // skip checksum by incrementing reader-index if consumer-client doesn't support checksum verification
-                if (cnx.getRemoteEndpointProtocolVersion() < ProtocolVersion.v11.getNumber()) {
+                if (skipChecksum) {
                     Commands.skipChecksumIfPresent(metadataAndPayload);
                 }
 
@@ -265,10 +266,12 @@ public class Consumer {
                 if (i == (entries.size() - 1)) {
                     promise = writePromise;
                 }
-                int redeliveryCount = subscription.getDispatcher().getRedeliveryTracker().getRedeliveryCount(PositionImpl.get(messageId.getLedgerId(), messageId.getEntryId()));
-                ctx.write(Commands.newMessage(consumerId, messageId, redeliveryCount, metadataAndPayload), promise);
-                messageId.recycle();
-                messageIdBuilder.recycle();
+                int redeliveryCount = redeliveryTracker.getRedeliveryCount(pos);
+                // Let the consumer skip the messages of the batch that were already acknowledged
+                long[] ackSet = sendBatchIndexesAckSet ? subscription.getBatchIndexesAckSet(pos) : null;
+                // The command is serialized without protobuf builders and the entry buffer is written as is
+                ctx.write(Commands.newMessage(consumerId, pos.getLedgerId(), pos.getEntryId(), partitionIdx,
+                        redeliveryCount, ackSet, metadataAndPayload), promise);
                 entry.release();
             }
 
@@ -405,7 +408,7 @@ public class Consumer {
                 return;
             }
 
-            if (subType == SubType.Shared) {
+            if (subType == SubType.Shared || subType == SubType.Key_Shared) {
                 log.warn("[{}] [{}] Received cumulative ack on shared subscription, ignoring", subscription, consumerId);
                 return;
             }
@@ -419,9 +422,16 @@ public class Consumer {
             for (int i = 0; i < ack.getMessageIdCount(); i++) {
                 MessageIdData msgId = ack.getMessageId(i);
                 PositionImpl position = PositionImpl.get(msgId.getLedgerId(), msgId.getEntryId());
+                if (msgId.getAckSetCount() > 0) {
+                    // Only some messages of the batch are acknowledged, the entry stays in the pending acks until the
+                    // consumer acknowledges the whole batch
+                    subscription.acknowledgeBatchIndexes(position, msgId.getAckSetList().stream()
+                            .mapToLong(Long::longValue).toArray());
+                    continue;
+                }
                 positionsAcked.add(position);
 
-                if (subType == SubType.Shared) {
+                if (subType == SubType.Shared || subType == SubType.Key_Shared) {
                     removePendingAcks(position);
                 }
 
@@ -430,7 +440,30 @@ public class Consumer {
                             consumerId, position, ack.getValidationError());
                 }
             }
-            subscription.acknowledgeMessage(positionsAcked, AckType.Individual, properties);
+            if (!positionsAcked.isEmpty()) {
+                subscription.acknowledgeMessage(positionsAcked, AckType.Individual, properties);
+            }
+
+            if (ack.getMessageIdRangeCount() > 0) {
+                List<Pair<Position, Position>> rangesAcked = new ArrayList<>(ack.getMessageIdRangeCount());
+                for (int i = 0; i < ack.getMessageIdRangeCount(); i++) {
+                    MessageIdRange range = ack.getMessageIdRange(i);
+                    if (range.getFirstEntryId() < 0 || range.getFirstEntryId() > range.getLastEntryId()) {
+                        log.warn("[{}] [{}] Received ack with invalid range {}:[{}, {}]", subscription, consumerId,
+                                range.getLedgerId(), range.getFirstEntryId(), range.getLastEntryId());
+                        continue;
+                    }
+
+                    if (subType == SubType.Shared || subType == SubType.Key_Shared) {
+                        removePendingAcks(range.getLedgerId(), range.getFirstEntryId(), range.getLastEntryId());
+                    }
+                    rangesAcked.add(Pair.of(PositionImpl.get(range.getLedgerId(), range.getFirstEntryId()),
+                            PositionImpl.get(range.getLedgerId(), range.getLastEntryId())));
+                }
+                if (!rangesAcked.isEmpty()) {
+                    subscription.acknowledgeMessageRanges(rangesAcked);
+                }
+            }
         }
     }
 
@@ -495,7 +528,7 @@ public class Consumer {
      * @return
      */
     private boolean shouldBlockConsumerOnUnackMsgs() {
-        return SubType.Shared.equals(subType) && maxUnackedMessages > 0;
+        return (SubType.Shared.equals(subType) || SubType.Key_Shared.equals(subType)) && maxUnackedMessages > 0;
     }
 
     public void updateRates() {
@@ -568,10 +601,14 @@ public class Consumer {
      * @param position
      */
     private void removePendingAcks(PositionImpl position) {
+        removePendingAcks(position.getLedgerId(), position.getEntryId());
+    }
+
+    private void removePendingAcks(long ledgerId, long entryId) {
         Consumer ackOwnedConsumer = null;
-        if (pendingAcks.get(position.getLedgerId(), position.getEntryId()) == null) {
+        if (pendingAcks.get(ledgerId, entryId) == null) {
             for (Consumer consumer : subscription.getConsumers()) {
-                if (!consumer.equals(this) && consumer.getPendingAcks().containsKey(position.getLedgerId(), position.getEntryId())) {
+                if (!consumer.equals(this) && consumer.getPendingAcks().containsKey(ledgerId, entryId)) {
                     ackOwnedConsumer = consumer;
                     break;
                 }
@@ -582,25 +619,61 @@ public class Consumer {
 
         // remove pending message from appropriate consumer and unblock unAckMsg-flow if requires
         if (ackOwnedConsumer != null) {
-            int totalAckedMsgs = (int) ackOwnedConsumer.getPendingAcks().get(position.getLedgerId(), position.getEntryId()).first;
-            if (!ackOwnedConsumer.getPendingAcks().remove(position.getLedgerId(), position.getEntryId())) {
-                // Message was already removed by the other consumer
-                return;
+            removePendingAck(ackOwnedConsumer, ledgerId, entryId);
+        }
+    }
+
+    /**
+     * Removes the pending acks of the entries [firstEntryId, lastEntryId] of a ledger. The range comes from the client
+     * and can be much larger than the number of pending acks: the pending acks of the consumers are then scanned,
+     * instead of looking up every entry of the range.
+     */
+    private void removePendingAcks(long ledgerId, long firstEntryId, long lastEntryId) {
+        if (lastEntryId - firstEntryId < pendingAcks.size()) {
+            for (long entryId = firstEntryId; entryId <= lastEntryId; entryId++) {
+                removePendingAcks(ledgerId, entryId);
             }
-            if (log.isDebugEnabled()) {
-                log.debug("[{}-{}] consumer {} received ack {}", topicName, subscription, consumerId, position);
+            return;
+        }
+
+        for (Consumer consumer : subscription.getConsumers()) {
+            ConcurrentLongLongPairHashMap consumerPendingAcks = consumer.getPendingAcks();
+            if (consumerPendingAcks == null) {
+                continue;
             }
-            // unblock consumer-throttling when receives half of maxUnackedMessages => consumer can start again
-            // consuming messages
-            if (((addAndGetUnAckedMsgs(ackOwnedConsumer, -totalAckedMsgs) <= (maxUnackedMessages / 2))
-                    && ackOwnedConsumer.blockedConsumerOnUnackedMsgs)
-                    && ackOwnedConsumer.shouldBlockConsumerOnUnackMsgs()) {
-                ackOwnedConsumer.blockedConsumerOnUnackedMsgs = false;
-                flowConsumerBlockedPermits(ackOwnedConsumer);
+            List<Long> ackedEntryIds = new ArrayList<>();
+            consumerPendingAcks.forEach((pendingLedgerId, pendingEntryId, batchSize, none) -> {
+                if (pendingLedgerId == ledgerId && firstEntryId <= pendingEntryId && pendingEntryId <= lastEntryId) {
+                    ackedEntryIds.add(pendingEntryId);
+                }
+            });
+            for (long entryId : ackedEntryIds) {
+                removePendingAck(consumer, ledgerId, entryId);
             }
         }
     }
 
+    private void removePendingAck(Consumer ackOwnedConsumer, long ledgerId, long entryId) {
+        LongPair batchSize = ackOwnedConsumer.getPendingAcks().get(ledgerId, entryId);
+        if (batchSize == null || !ackOwnedConsumer.getPendingAcks().remove(ledgerId, entryId)) {
+            // Message was already removed by the other consumer
+            return;
+        }
+        int totalAckedMsgs = (int) batchSize.first;
+        if (log.isDebugEnabled()) {
+            log.debug("[{}-{}] consumer {} received ack {}:{}", topicName, subscription, consumerId, ledgerId,
+                    entryId);
+        }
+        // unblock consumer-throttling when receives half of maxUnackedMessages => consumer can start again
+        // consuming messages
+        if (((addAndGetUnAckedMsgs(ackOwnedConsumer, -totalAckedMsgs) <= (maxUnackedMessages / 2))
+                && ackOwnedConsumer.blockedConsumerOnUnackedMsgs)
+                && ackOwnedConsumer.shouldBlockConsumerOnUnackMsgs()) {
+            ackOwnedConsumer.blockedConsumerOnUnackedMsgs = false;
+            flowConsumerBlockedPermits(ackOwnedConsumer);
+        }
+    }
+
     public ConcurrentLongLongPairHashMap getPendingAcks() {
         return pendingAcks;
     }
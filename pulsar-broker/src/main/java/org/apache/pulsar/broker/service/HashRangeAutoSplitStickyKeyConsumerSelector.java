@@ -0,0 +1,143 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.apache.pulsar.broker.service.BrokerServiceException.ConsumerAssignException;
+import org.apache.pulsar.client.impl.Murmur3_32Hash;
+
+/**
+ * {@link StickyKeyConsumerSelector} that splits the hash space of the keys, [0, rangeSize), into contiguous ranges
+ * that are owned by one consumer each.
+ * <p>
+ * The first consumer owns the whole hash space. Each new consumer takes half of the biggest range, and the range of a
+ * removed consumer is merged into the range that follows it (or the one preceding it, for the last range). Keys that
+ * are not part of the re-assigned ranges keep being dispatched to the same consumer.
+ * <p>
+ * Since ranges are split in halves, at most <code>rangeSize</code> consumers can be attached and the range size must
+ * be a power of 2.
+ */
+public class HashRangeAutoSplitStickyKeyConsumerSelector implements StickyKeyConsumerSelector {
+
+    public static final int DEFAULT_RANGE_SIZE = 2 << 15;
+
+    private final int rangeSize;
+
+    // Upper bound (inclusive) of each range -> owner of the range
+    private final ConcurrentSkipListMap<Integer, Consumer> rangeMap = new ConcurrentSkipListMap<>();
+    private final Map<Consumer, Integer> consumerRange = new ConcurrentHashMap<>();
+
+    public HashRangeAutoSplitStickyKeyConsumerSelector() {
+        this(DEFAULT_RANGE_SIZE);
+    }
+
+    public HashRangeAutoSplitStickyKeyConsumerSelector(int rangeSize) {
+        if (rangeSize < 2 || !is2Power(rangeSize)) {
+            throw new IllegalArgumentException("Range size must be a power of 2 and greater than 1");
+        }
+        this.rangeSize = rangeSize;
+    }
+
+    @Override
+    public synchronized void addConsumer(Consumer consumer) throws ConsumerAssignException {
+        if (rangeMap.isEmpty()) {
+            rangeMap.put(rangeSize - 1, consumer);
+            consumerRange.put(consumer, rangeSize - 1);
+        } else {
+            splitRange(findBiggestRange(), consumer);
+        }
+    }
+
+    @Override
+    public synchronized void removeConsumer(Consumer consumer) {
+        Integer removeRange = consumerRange.remove(consumer);
+        if (removeRange == null) {
+            return;
+        }
+
+        if (removeRange == rangeSize - 1) {
+            // The last range is merged into the preceding one, which becomes the last range
+            rangeMap.remove(removeRange);
+            Map.Entry<Integer, Consumer> lowerEntry = rangeMap.lastEntry();
+            if (lowerEntry != null) {
+                rangeMap.remove(lowerEntry.getKey());
+                rangeMap.put(removeRange, lowerEntry.getValue());
+                consumerRange.put(lowerEntry.getValue(), removeRange);
+            }
+        } else {
+            // The following range is extended to cover the removed range
+            rangeMap.remove(removeRange);
+        }
+    }
+
+    @Override
+    public Consumer select(String stickyKey) {
+        if (rangeMap.isEmpty()) {
+            return null;
+        }
+        int slot = Murmur3_32Hash.getInstance().makeHash(stickyKey) & (rangeSize - 1);
+        return rangeMap.ceilingEntry(slot).getValue();
+    }
+
+    /**
+     * @return the upper bound of the biggest range, the first one is picked if there are multiple candidates
+     */
+    private int findBiggestRange() {
+        int lowerBound = -1;
+        int maxRange = 0;
+        int maxRangeUpperBound = -1;
+        for (Integer upperBound : rangeMap.keySet()) {
+            int range = upperBound - lowerBound;
+            if (range > maxRange) {
+                maxRange = range;
+                maxRangeUpperBound = upperBound;
+            }
+            lowerBound = upperBound;
+        }
+        return maxRangeUpperBound;
+    }
+
+    private void splitRange(int upperBound, Consumer consumer) throws ConsumerAssignException {
+        Integer lowerKey = rangeMap.lowerKey(upperBound);
+        int lowerBound = lowerKey == null ? -1 : lowerKey;
+        if (upperBound - lowerBound < 2) {
+            throw new ConsumerAssignException("No more hash range to assign to consumer " + consumer.consumerName());
+        }
+
+        // The new consumer takes the lower half of the range
+        int middle = lowerBound + (upperBound - lowerBound) / 2;
+        rangeMap.put(middle, consumer);
+        consumerRange.put(consumer, middle);
+    }
+
+    private static boolean is2Power(int num) {
+        return (num & (num - 1)) == 0;
+    }
+
+    Map<Consumer, Integer> getConsumerRange() {
+        return consumerRange;
+    }
+
+    ConcurrentSkipListMap<Integer, Consumer> getRangeConsumer() {
+        return rangeMap;
+    }
+}
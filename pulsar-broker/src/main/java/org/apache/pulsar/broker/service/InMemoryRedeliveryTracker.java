@@ -19,6 +19,7 @@
 package org.apache.pulsar.broker.service;
 
 import org.apache.bookkeeper.mledger.Position;
+import org.apache.bookkeeper.mledger.impl.PositionImpl;
 
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
@@ -51,6 +52,25 @@ public class InMemoryRedeliveryTracker implements RedeliveryTracker {
         }
     }
 
+    @Override
+    public void removeRange(Position first, Position last) {
+        if (trackerCache.isEmpty()) {
+            return;
+        }
+
+        PositionImpl firstPosition = (PositionImpl) first;
+        PositionImpl lastPosition = (PositionImpl) last;
+        if (lastPosition.getEntryId() - firstPosition.getEntryId() < trackerCache.size()) {
+            for (long entryId = firstPosition.getEntryId(); entryId <= lastPosition.getEntryId(); entryId++) {
+                trackerCache.remove(PositionImpl.get(firstPosition.getLedgerId(), entryId));
+            }
+        } else {
+            // The range is larger than the tracked positions, look them up instead of every entry of the range
+            trackerCache.keySet().removeIf(position -> firstPosition.compareTo((PositionImpl) position) <= 0
+                    && lastPosition.compareTo((PositionImpl) position) >= 0);
+        }
+    }
+
     @Override
     public void clear() {
         trackerCache.clear();
@@ -0,0 +1,184 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.service;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Bounds the direct memory held by the broker for in-flight publish buffers, pending dispatch reads and dispatched
+ * entries not yet written to the consumer connections.
+ *
+ * <p>Publish buffers have already been read from the socket when they are accounted, so the budget can be temporarily
+ * exceeded: once it is, the connections stop reading and the dispatchers stop scheduling new reads. They are resumed
+ * when the in-flight memory goes back below half of the budget.
+ */
+public class InflightMemoryLimiter {
+
+    private final long maxInflightBytes;
+    private final long resumeThresholdBytes;
+
+    private volatile long publishInflightBytes = 0;
+    private static final AtomicLongFieldUpdater<InflightMemoryLimiter> PUBLISH_INFLIGHT_UPDATER = AtomicLongFieldUpdater
+            .newUpdater(InflightMemoryLimiter.class, "publishInflightBytes");
+    private volatile long dispatchInflightBytes = 0;
+    private static final AtomicLongFieldUpdater<InflightMemoryLimiter> DISPATCH_INFLIGHT_UPDATER = AtomicLongFieldUpdater
+            .newUpdater(InflightMemoryLimiter.class, "dispatchInflightBytes");
+    private volatile long publishLimitedTimes = 0;
+    private static final AtomicLongFieldUpdater<InflightMemoryLimiter> PUBLISH_LIMITED_UPDATER = AtomicLongFieldUpdater
+            .newUpdater(InflightMemoryLimiter.class, "publishLimitedTimes");
+    private volatile long dispatchLimitedTimes = 0;
+    private static final AtomicLongFieldUpdater<InflightMemoryLimiter> DISPATCH_LIMITED_UPDATER = AtomicLongFieldUpdater
+            .newUpdater(InflightMemoryLimiter.class, "dispatchLimitedTimes");
+
+    // Callbacks to resume the paused connections and dispatchers
+    private final Queue<Runnable> pausedPublishers = new ConcurrentLinkedQueue<>();
+    private final Queue<Runnable> pausedDispatchers = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param maxInflightBytes
+     *            the memory budget; a value &lt;= 0 disables the limiter
+     */
+    public InflightMemoryLimiter(long maxInflightBytes) {
+        this.maxInflightBytes = maxInflightBytes;
+        this.resumeThresholdBytes = maxInflightBytes / 2;
+    }
+
+    public boolean isEnabled() {
+        return maxInflightBytes > 0;
+    }
+
+    /**
+     * Account for a publish buffer read from a connection.
+     *
+     * @return false if the budget is exhausted and the connection should stop reading
+     */
+    public boolean reservePublishMemory(long bytes) {
+        if (!isEnabled()) {
+            return true;
+        }
+        PUBLISH_INFLIGHT_UPDATER.addAndGet(this, bytes);
+        if (isExhausted()) {
+            PUBLISH_LIMITED_UPDATER.incrementAndGet(this);
+            return false;
+        }
+        return true;
+    }
+
+    public void releasePublishMemory(long bytes) {
+        if (!isEnabled()) {
+            return;
+        }
+        PUBLISH_INFLIGHT_UPDATER.addAndGet(this, -bytes);
+        resumeIfBelowThreshold();
+    }
+
+    /**
+     * Account for the entries expected from a read issued by a dispatcher, or for the entries being written to a
+     * consumer connection.
+     */
+    public void reserveDispatchMemory(long bytes) {
+        if (!isEnabled()) {
+            return;
+        }
+        DISPATCH_INFLIGHT_UPDATER.addAndGet(this, bytes);
+    }
+
+    public void releaseDispatchMemory(long bytes) {
+        if (!isEnabled()) {
+            return;
+        }
+        DISPATCH_INFLIGHT_UPDATER.addAndGet(this, -bytes);
+        resumeIfBelowThreshold();
+    }
+
+    public boolean isExhausted() {
+        return isEnabled() && getInflightBytes() >= maxInflightBytes;
+    }
+
+    /**
+     * Register a connection that stopped reading because the budget is exhausted.
+     *
+     * @param resumeCallback
+     *            invoked, from any thread, once memory has been released
+     */
+    public void pausePublisher(Runnable resumeCallback) {
+        pausedPublishers.add(resumeCallback);
+        // Memory might have been released before the callback was registered
+        resumeIfBelowThreshold();
+    }
+
+    /**
+     * Register a dispatcher that skipped a read because the budget is exhausted.
+     *
+     * @param resumeCallback
+     *            invoked, from any thread, once memory has been released
+     */
+    public void pauseDispatcher(Runnable resumeCallback) {
+        DISPATCH_LIMITED_UPDATER.incrementAndGet(this);
+        pausedDispatchers.add(resumeCallback);
+        resumeIfBelowThreshold();
+    }
+
+    private void resumeIfBelowThreshold() {
+        if ((pausedPublishers.isEmpty() && pausedDispatchers.isEmpty()) || getInflightBytes() >= resumeThresholdBytes) {
+            return;
+        }
+        Runnable resumeCallback;
+        while ((resumeCallback = pausedPublishers.poll()) != null) {
+            resumeCallback.run();
+        }
+        while ((resumeCallback = pausedDispatchers.poll()) != null) {
+            resumeCallback.run();
+        }
+    }
+
+    public long getInflightBytes() {
+        return publishInflightBytes + dispatchInflightBytes;
+    }
+
+    public long getPublishInflightBytes() {
+        return publishInflightBytes;
+    }
+
+    public long getDispatchInflightBytes() {
+        return dispatchInflightBytes;
+    }
+
+    public long getMaxInflightBytes() {
+        return maxInflightBytes;
+    }
+
+    public long getPublishLimitedTimes() {
+        return publishLimitedTimes;
+    }
+
+    public long getDispatchLimitedTimes() {
+        return dispatchLimitedTimes;
+    }
+
+    public int getPausedPublishersCount() {
+        return pausedPublishers.size();
+    }
+
+    public int getPausedDispatchersCount() {
+        return pausedDispatchers.size();
+    }
+}
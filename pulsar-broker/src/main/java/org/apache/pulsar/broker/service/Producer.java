@@ -81,6 +81,7 @@ public class Producer {
     private final Map<String, String> metadata;
 
     private final SchemaVersion schemaVersion;
+    private final InflightMemoryLimiter inflightMemoryLimiter;
 
     public Producer(Topic topic, ServerCnx cnx, long producerId, String producerName, String appId,
         boolean isEncrypted, Map<String, String> metadata, SchemaVersion schemaVersion) {
@@ -111,6 +112,7 @@ public class Producer {
 
         this.isEncrypted = isEncrypted;
         this.schemaVersion = schemaVersion;
+        this.inflightMemoryLimiter = cnx.getBrokerService().getInflightMemoryLimiter();
     }
 
     @Override
@@ -166,9 +168,16 @@ public class Producer {
             }
         }
 
+        final int msgSize = headersAndPayload.readableBytes();
+        // The buffer is held until the publish completes, stop reading from the connection if the broker is running
+        // out of memory
+        if (!inflightMemoryLimiter.reservePublishMemory(msgSize)) {
+            cnx.disableCnxAutoReadForMemoryLimit();
+        }
+
         startPublishOperation();
         topic.publishMessage(headersAndPayload,
-                MessagePublishContext.get(this, sequenceId, msgIn, headersAndPayload.readableBytes(), batchSize));
+                MessagePublishContext.get(this, sequenceId, msgIn, msgSize, batchSize));
     }
 
     private boolean verifyChecksum(ByteBuf headersAndPayload) {
@@ -279,6 +288,7 @@ public class Producer {
          */
         @Override
         public void completed(Exception exception, long ledgerId, long entryId) {
+            producer.inflightMemoryLimiter.releasePublishMemory(msgSize);
             if (exception != null) {
                 ServerError serverError = (exception instanceof TopicTerminatedException)
                         ? ServerError.TopicTerminatedError : ServerError.PersistenceError;
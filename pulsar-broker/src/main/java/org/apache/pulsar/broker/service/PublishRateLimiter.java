@@ -0,0 +1,57 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.service;
+
+import org.apache.pulsar.common.policies.data.PublishRate;
+
+/**
+ * Limits the rate at which messages can be published on a topic, or on the whole broker.
+ *
+ * <p>The limiter doesn't reject messages: it only reports how long the connection should stop reading from the socket
+ * so that the publish rate gets back within the configured limits.
+ */
+public interface PublishRateLimiter {
+
+    /**
+     * Account for a newly received publish request.
+     *
+     * @param numOfMessages
+     *            number of messages in the request (more than 1 for batches)
+     * @param msgSizeInBytes
+     *            size of the request payload
+     * @return 0 if the rate is still within the limits, otherwise the number of milliseconds after which the publisher
+     *         can resume publishing
+     */
+    long tryAcquire(int numOfMessages, long msgSizeInBytes);
+
+    /**
+     * Update the limits, taking effect from the next publish request.
+     *
+     * @param maxPublishRate
+     *            the new limits; a value &lt;= 0 disables the corresponding limit
+     */
+    void update(PublishRate maxPublishRate);
+
+    boolean isPublishRateEnabled();
+
+    /**
+     * @return the number of times the publish rate has been exceeded
+     */
+    long getPublishRateLimitedTimes();
+}
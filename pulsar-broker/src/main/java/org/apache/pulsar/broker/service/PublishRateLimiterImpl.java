@@ -0,0 +1,106 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import org.apache.pulsar.common.policies.data.PublishRate;
+
+/**
+ * Lock-free publish rate limiter, counting messages and bytes over fixed windows of 1 second.
+ *
+ * <p>Publish requests are received from multiple IO threads, so the counters are only updated with atomic operations.
+ * Once the limit is reached, the time left in the current window is returned so that the connections can stop reading
+ * until the window is refilled.
+ */
+public class PublishRateLimiterImpl implements PublishRateLimiter {
+
+    private static final long RATE_PERIOD_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private volatile int publishMaxMessageRate = 0;
+    private volatile long publishMaxByteRate = 0;
+
+    private volatile long windowStartNanos;
+    private static final AtomicLongFieldUpdater<PublishRateLimiterImpl> WINDOW_START_UPDATER = AtomicLongFieldUpdater
+            .newUpdater(PublishRateLimiterImpl.class, "windowStartNanos");
+    private volatile long currentPublishMsgCount = 0;
+    private static final AtomicLongFieldUpdater<PublishRateLimiterImpl> MSG_COUNT_UPDATER = AtomicLongFieldUpdater
+            .newUpdater(PublishRateLimiterImpl.class, "currentPublishMsgCount");
+    private volatile long currentPublishByteCount = 0;
+    private static final AtomicLongFieldUpdater<PublishRateLimiterImpl> BYTE_COUNT_UPDATER = AtomicLongFieldUpdater
+            .newUpdater(PublishRateLimiterImpl.class, "currentPublishByteCount");
+    private volatile long publishRateLimitedTimes = 0;
+    private static final AtomicLongFieldUpdater<PublishRateLimiterImpl> LIMITED_TIMES_UPDATER = AtomicLongFieldUpdater
+            .newUpdater(PublishRateLimiterImpl.class, "publishRateLimitedTimes");
+
+    public PublishRateLimiterImpl(PublishRate maxPublishRate) {
+        this.windowStartNanos = System.nanoTime();
+        update(maxPublishRate);
+    }
+
+    @Override
+    public long tryAcquire(int numOfMessages, long msgSizeInBytes) {
+        final int maxMessageRate = publishMaxMessageRate;
+        final long maxByteRate = publishMaxByteRate;
+        if (maxMessageRate <= 0 && maxByteRate <= 0) {
+            return 0;
+        }
+
+        final long now = System.nanoTime();
+        long windowStart = windowStartNanos;
+        if (now - windowStart >= RATE_PERIOD_NANOS) {
+            // Only one thread gets to open the new window, the others will count against it
+            if (WINDOW_START_UPDATER.compareAndSet(this, windowStart, now)) {
+                MSG_COUNT_UPDATER.set(this, 0);
+                BYTE_COUNT_UPDATER.set(this, 0);
+            }
+            windowStart = windowStartNanos;
+        }
+
+        final long msgCount = MSG_COUNT_UPDATER.addAndGet(this, numOfMessages);
+        final long byteCount = BYTE_COUNT_UPDATER.addAndGet(this, msgSizeInBytes);
+        if ((maxMessageRate > 0 && msgCount >= maxMessageRate) || (maxByteRate > 0 && byteCount >= maxByteRate)) {
+            LIMITED_TIMES_UPDATER.incrementAndGet(this);
+            long remainingNanos = windowStart + RATE_PERIOD_NANOS - now;
+            return Math.max(1, TimeUnit.NANOSECONDS.toMillis(remainingNanos));
+        }
+        return 0;
+    }
+
+    @Override
+    public void update(PublishRate maxPublishRate) {
+        if (maxPublishRate != null) {
+            this.publishMaxMessageRate = Math.max(maxPublishRate.publishThrottlingRateInMsg, 0);
+            this.publishMaxByteRate = Math.max(maxPublishRate.publishThrottlingRateInByte, 0);
+        } else {
+            this.publishMaxMessageRate = 0;
+            this.publishMaxByteRate = 0;
+        }
+    }
+
+    @Override
+    public boolean isPublishRateEnabled() {
+        return publishMaxMessageRate > 0 || publishMaxByteRate > 0;
+    }
+
+    @Override
+    public long getPublishRateLimitedTimes() {
+        return publishRateLimitedTimes;
+    }
+}
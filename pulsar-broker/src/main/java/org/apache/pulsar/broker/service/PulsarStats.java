@@ -21,9 +21,13 @@ package org.apache.pulsar.broker.service;
 import java.io.Closeable;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Consumer;
 
+import org.apache.bookkeeper.common.util.OrderedExecutor;
 import org.apache.pulsar.broker.PulsarService;
 import org.apache.pulsar.broker.service.nonpersistent.NonPersistentTopic;
 import org.apache.pulsar.broker.service.persistent.PersistentTopic;
@@ -41,6 +45,7 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
@@ -51,30 +56,30 @@ public class PulsarStats implements Closeable {
 
     private volatile ByteBuf topicStatsBuf;
     private volatile ByteBuf tempTopicStatsBuf;
-    private NamespaceStats nsStats;
     private final ClusterReplicationMetrics clusterReplicationMetrics;
-    private Map<String, NamespaceBundleStats> bundleStats;
-    private List<Metrics> tempMetricsCollection;
-    private List<Metrics> metricsCollection;
-    private List<NonPersistentTopic> tempNonPersistentTopics;
+    private volatile Map<String, NamespaceBundleStats> bundleStats;
+    private Map<String, NamespaceBundleStats> tempBundleStats;
+    private volatile List<Metrics> metricsCollection;
+    private final Map<String, NamespaceStatsUpdate> namespaceUpdates;
     private final BrokerOperabilityMetrics brokerOperabilityMetrics;
     private final boolean exposePublisherStats;
 
     private final ReentrantReadWriteLock bufferLock = new ReentrantReadWriteLock();
+    // Guarded by this
+    private CompletableFuture<Void> lastUpdate = CompletableFuture.completedFuture(null);
 
     public PulsarStats(PulsarService pulsar) {
         this.topicStatsBuf = Unpooled.buffer(16 * 1024);
         this.tempTopicStatsBuf = Unpooled.buffer(16 * 1024);
 
-        this.nsStats = new NamespaceStats();
         this.clusterReplicationMetrics = new ClusterReplicationMetrics(pulsar.getConfiguration().getClusterName(),
                 pulsar.getConfiguration().isReplicationMetricsEnabled());
-        this.bundleStats = Maps.newHashMap();
-        this.tempMetricsCollection = Lists.newArrayList();
+        this.bundleStats = new ConcurrentHashMap<>();
+        this.tempBundleStats = new ConcurrentHashMap<>();
         this.metricsCollection = Lists.newArrayList();
+        this.namespaceUpdates = new ConcurrentHashMap<>();
         this.brokerOperabilityMetrics = new BrokerOperabilityMetrics(pulsar.getConfiguration().getClusterName(),
                 pulsar.getAdvertisedAddress());
-        this.tempNonPersistentTopics = Lists.newArrayList();
 
         this.exposePublisherStats = pulsar.getConfiguration().exposePublisherStats();
     }
@@ -85,6 +90,7 @@ public class PulsarStats implements Closeable {
         try {
             ReferenceCountUtil.safeRelease(topicStatsBuf);
             ReferenceCountUtil.safeRelease(tempTopicStatsBuf);
+            namespaceUpdates.values().forEach(update -> ReferenceCountUtil.safeRelease(update.statsBuf));
         } finally {
             bufferLock.writeLock().unlock();
         }
@@ -94,93 +100,88 @@ public class PulsarStats implements Closeable {
         return clusterReplicationMetrics;
     }
 
-    public synchronized void updateStats(
-            ConcurrentOpenHashMap<String, ConcurrentOpenHashMap<String, ConcurrentOpenHashMap<String, Topic>>> topicsMap) {
+    /**
+     * Updates the stats of all the namespaces in parallel, each one on the ordered thread of its name, without
+     * blocking the caller. Updates are chained, so that they never overlap.
+     *
+     * @return a future completed once the new stats are published
+     */
+    public CompletableFuture<Void> updateStats(
+            ConcurrentOpenHashMap<String, ConcurrentOpenHashMap<String, ConcurrentOpenHashMap<String, Topic>>> topicsMap,
+            OrderedExecutor executor) {
+        CompletableFuture<Void> update;
+        synchronized (this) {
+            update = lastUpdate.handle((ignore, ex) -> null)
+                    .thenCompose(ignore -> doUpdateStats(topicsMap, executor));
+            lastUpdate = update;
+        }
+        return update;
+    }
+
+    private CompletableFuture<Void> doUpdateStats(
+            ConcurrentOpenHashMap<String, ConcurrentOpenHashMap<String, ConcurrentOpenHashMap<String, Topic>>> topicsMap,
+            OrderedExecutor executor) {
+        brokerOperabilityMetrics.reset();
+
+        List<NamespaceStatsUpdate> updates = Lists.newArrayList();
+        List<CompletableFuture<Void>> futures = Lists.newArrayList();
+        topicsMap.forEach((namespaceName, bundles) -> {
+            if (bundles.isEmpty()) {
+                return;
+            }
 
+            NamespaceStatsUpdate update = namespaceUpdates.computeIfAbsent(namespaceName, NamespaceStatsUpdate::new);
+            update.succeeded = false;
+            updates.add(update);
+            futures.add(CompletableFuture.runAsync(() -> update.update(bundles), executor.chooseThread(namespaceName)));
+        });
+
+        // The namespaces are merged in the order of the topics map once they are all updated
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()]))
+                .handle((ignore, ex) -> {
+                    publishStats(updates);
+                    return null;
+                });
+    }
+
+    private void publishStats(List<NamespaceStatsUpdate> updates) {
         StatsOutputStream topicStatsStream = new StatsOutputStream(tempTopicStatsBuf);
+        List<Metrics> newMetricsCollection = Lists.newArrayList();
+        Map<String, NamespaceBundleStats> newBundleStats = tempBundleStats;
+        newBundleStats.clear();
 
         try {
-            tempMetricsCollection.clear();
-            bundleStats.clear();
-            brokerOperabilityMetrics.reset();
-
             // Json begin
             topicStatsStream.startObject();
 
-            topicsMap.forEach((namespaceName, bundles) -> {
-                if (bundles.isEmpty()) {
-                    return;
+            for (NamespaceStatsUpdate update : updates) {
+                // The partial stats of a namespace that failed are dropped
+                if (update.succeeded) {
+                    newBundleStats.putAll(update.bundleStats);
+                    topicStatsStream.writeSerializedItem(update.statsBuf);
+                    // Update metricsCollection with namespace stats
+                    newMetricsCollection.add(update.metrics);
                 }
+            }
 
-                try {
-                    topicStatsStream.startObject(namespaceName);
-
-                    nsStats.reset();
-
-                    bundles.forEach((bundle, topics) -> {
-                        NamespaceBundleStats currentBundleStats = bundleStats.computeIfAbsent(bundle,
-                                k -> new NamespaceBundleStats());
-                        currentBundleStats.reset();
-                        currentBundleStats.topics = topics.size();
-
-                        topicStatsStream.startObject(NamespaceBundle.getBundleRange(bundle));
-
-                        tempNonPersistentTopics.clear();
-                        // start persistent topic
-                        topicStatsStream.startObject("persistent");
-                        topics.forEach((name, topic) -> {
-                            if (topic instanceof PersistentTopic) {
-                                try {
-                                    topic.updateRates(nsStats, currentBundleStats, topicStatsStream,
-                                            clusterReplicationMetrics, namespaceName, exposePublisherStats);
-                                } catch (Exception e) {
-                                    log.error("Failed to generate topic stats for topic {}: {}", name, e.getMessage(), e);
-                                }
-                                // this task: helps to activate inactive-backlog-cursors which have caught up and
-                                // connected, also deactivate active-backlog-cursors which has backlog
-                                ((PersistentTopic) topic).getManagedLedger().checkBackloggedCursors();
-                            }else if (topic instanceof NonPersistentTopic) {
-                                tempNonPersistentTopics.add((NonPersistentTopic) topic);
-                            } else {
-                                log.warn("Unsupported type of topic {}", topic.getClass().getName());
-                            }
-                        });
-                        // end persistent topics section
-                        topicStatsStream.endObject();
-
-                        if(!tempNonPersistentTopics.isEmpty()) {
-                         // start non-persistent topic
-                            topicStatsStream.startObject("non-persistent");
-                            tempNonPersistentTopics.forEach(topic -> {
-                                try {
-                                    topic.updateRates(nsStats, currentBundleStats, topicStatsStream,
-                                            clusterReplicationMetrics, namespaceName, exposePublisherStats);
-                                } catch (Exception e) {
-                                    log.error("Failed to generate topic stats for topic {}: {}", topic.getName(), e.getMessage(), e);
-                                }
-                            });
-                            // end non-persistent topics section
-                            topicStatsStream.endObject();
-                        }
-
-                        // end namespace-bundle section
-                        topicStatsStream.endObject();
-                    });
+            // Release the buffers of the namespaces that are no longer served by this broker
+            if (namespaceUpdates.size() > updates.size()) {
+                Set<NamespaceStatsUpdate> updated = Sets.newHashSet(updates);
+                namespaceUpdates.values().removeIf(update -> {
+                    if (!updated.contains(update)) {
+                        update.statsBuf.release();
+                        return true;
+                    }
+                    return false;
+                });
+            }
 
-                    topicStatsStream.endObject();
-                    // Update metricsCollection with namespace stats
-                    tempMetricsCollection.add(nsStats.add(namespaceName));
-                } catch (Exception e) {
-                    log.error("Failed to generate namespace stats for namespace {}: {}", namespaceName, e.getMessage(),
-                            e);
-                }
-            });
             if (clusterReplicationMetrics.isMetricsEnabled()) {
-                clusterReplicationMetrics.get().forEach(clusterMetric -> tempMetricsCollection.add(clusterMetric));
+                clusterReplicationMetrics.get().forEach(clusterMetric -> newMetricsCollection.add(clusterMetric));
                 clusterReplicationMetrics.reset();
             }
             brokerOperabilityMetrics.getMetrics()
-                    .forEach(brokerOperabilityMetric -> tempMetricsCollection.add(brokerOperabilityMetric));
+                    .forEach(brokerOperabilityMetric -> newMetricsCollection.add(brokerOperabilityMetric));
 
             // json end
             topicStatsStream.endObject();
@@ -188,10 +189,11 @@ public class PulsarStats implements Closeable {
             log.error("Unable to update topic stats", e);
         }
 
-        // swap metricsCollection and tempMetricsCollection
-        List<Metrics> tempRefMetrics = metricsCollection;
-        metricsCollection = tempMetricsCollection;
-        tempMetricsCollection = tempRefMetrics;
+        // Publish the new metrics and bundle stats. Readers keep using the previous ones, which are only modified by
+        // the next update
+        metricsCollection = newMetricsCollection;
+        tempBundleStats = bundleStats;
+        bundleStats = newBundleStats;
 
         bufferLock.writeLock().lock();
         try {
@@ -244,4 +246,98 @@ public class PulsarStats implements Closeable {
             log.warn("Exception while recording zk-latency {}, {}", eventType, ex.getMessage());
         }
     }
+
+    /**
+     * Stats of a single namespace, computed on the ordered thread of the namespace. The stats buffer is reused across
+     * updates, and the bundle stats are double buffered so that the ones published by the previous update are not
+     * modified.
+     */
+    private class NamespaceStatsUpdate {
+        private final String namespaceName;
+        private final NamespaceStats nsStats = new NamespaceStats();
+        private final ByteBuf statsBuf = Unpooled.buffer(1024);
+        private final List<NonPersistentTopic> tempNonPersistentTopics = Lists.newArrayList();
+        private Map<String, NamespaceBundleStats> bundleStats = Maps.newHashMap();
+        private Map<String, NamespaceBundleStats> previousBundleStats = Maps.newHashMap();
+        private Metrics metrics;
+        // Whether the last update completed, only read once the update is done
+        private volatile boolean succeeded;
+
+        NamespaceStatsUpdate(String namespaceName) {
+            this.namespaceName = namespaceName;
+        }
+
+        void update(ConcurrentOpenHashMap<String, ConcurrentOpenHashMap<String, Topic>> bundles) {
+            statsBuf.clear();
+            Map<String, NamespaceBundleStats> tmp = previousBundleStats;
+            previousBundleStats = bundleStats;
+            bundleStats = tmp;
+            bundleStats.keySet().removeIf(bundle -> !bundles.containsKey(bundle));
+            metrics = null;
+            StatsOutputStream topicStatsStream = new StatsOutputStream(statsBuf);
+
+            try {
+                topicStatsStream.startObject(namespaceName);
+
+                nsStats.reset();
+
+                bundles.forEach((bundle, topics) -> {
+                    NamespaceBundleStats currentBundleStats = bundleStats.computeIfAbsent(bundle,
+                            k -> new NamespaceBundleStats());
+                    currentBundleStats.reset();
+                    currentBundleStats.topics = topics.size();
+
+                    topicStatsStream.startObject(NamespaceBundle.getBundleRange(bundle));
+
+                    tempNonPersistentTopics.clear();
+                    // start persistent topic
+                    topicStatsStream.startObject("persistent");
+                    topics.forEach((name, topic) -> {
+                        if (topic instanceof PersistentTopic) {
+                            try {
+                                topic.updateRates(nsStats, currentBundleStats, topicStatsStream,
+                                        clusterReplicationMetrics, namespaceName, exposePublisherStats);
+                            } catch (Exception e) {
+                                log.error("Failed to generate topic stats for topic {}: {}", name, e.getMessage(), e);
+                            }
+                            // this task: helps to activate inactive-backlog-cursors which have caught up and
+                            // connected, also deactivate active-backlog-cursors which has backlog
+                            ((PersistentTopic) topic).getManagedLedger().checkBackloggedCursors();
+                        }else if (topic instanceof NonPersistentTopic) {
+                            tempNonPersistentTopics.add((NonPersistentTopic) topic);
+                        } else {
+                            log.warn("Unsupported type of topic {}", topic.getClass().getName());
+                        }
+                    });
+                    // end persistent topics section
+                    topicStatsStream.endObject();
+
+                    if(!tempNonPersistentTopics.isEmpty()) {
+                     // start non-persistent topic
+                        topicStatsStream.startObject("non-persistent");
+                        tempNonPersistentTopics.forEach(topic -> {
+                            try {
+                                topic.updateRates(nsStats, currentBundleStats, topicStatsStream,
+                                        clusterReplicationMetrics, namespaceName, exposePublisherStats);
+                            } catch (Exception e) {
+                                log.error("Failed to generate topic stats for topic {}: {}", topic.getName(), e.getMessage(), e);
+                            }
+                        });
+                        // end non-persistent topics section
+                        topicStatsStream.endObject();
+                    }
+
+                    // end namespace-bundle section
+                    topicStatsStream.endObject();
+                });
+
+                topicStatsStream.endObject();
+                metrics = nsStats.add(namespaceName);
+                succeeded = true;
+            } catch (Exception e) {
+                log.error("Failed to generate namespace stats for namespace {}: {}", namespaceName, e.getMessage(),
+                        e);
+            }
+        }
+    }
 }
@@ -32,5 +32,7 @@ public interface RedeliveryTracker {
 
     void removeBatch(List<Position> positions);
 
+    void removeRange(Position first, Position last);
+
     void clear();
 }
\ No newline at end of file
@@ -48,6 +48,11 @@ public class RedeliveryTrackerDisabled implements RedeliveryTracker {
         // no-op
     }
 
+    @Override
+    public void removeRange(Position first, Position last) {
+        // no-op
+    }
+
     @Override
     public void clear() {
         // no-op
@@ -122,6 +122,11 @@ public class ServerCnx extends PulsarHandler {
     private static final int MaxPendingSendRequests = 1000;
     private static final int ResumeReadsThreshold = MaxPendingSendRequests / 2;
     private int pendingSendRequest = 0;
+    // Reads are paused because of too many pending send requests, because the publish rate was exceeded or because the
+    // broker in-flight memory is exhausted, and they can only be resumed once all the conditions are cleared
+    private boolean autoReadDisabledPendingSends = false;
+    private boolean autoReadDisabledRateLimiting = false;
+    private boolean autoReadDisabledMemoryLimit = false;
     private final String replicatorPrefix;
     private String clientVersion = null;
     private int nonPersistentPendingMessages = 0;
@@ -965,6 +970,15 @@ public class ServerCnx extends PulsarHandler {
 
         startSendOperation();
 
+        // Stop reading from the connection until the topic and broker publish rates are back within the limits
+        final int numMessages = send.getNumMessages();
+        final long msgSize = headersAndPayload.readableBytes();
+        long throttlingDelayMs = Math.max(producer.getTopic().getPublishRateLimiter().tryAcquire(numMessages, msgSize),
+                service.getBrokerPublishRateLimiter().tryAcquire(numMessages, msgSize));
+        if (throttlingDelayMs > 0) {
+            disableCnxAutoReadForPublishRate(throttlingDelayMs);
+        }
+
         // Persist the message
         producer.publishMessage(send.getProducerId(), send.getSequenceId(), headersAndPayload, send.getNumMessages());
     }
@@ -1021,7 +1035,8 @@ public class ServerCnx extends PulsarHandler {
 
         if (consumerFuture != null && consumerFuture.isDone() && !consumerFuture.isCompletedExceptionally()) {
             Consumer consumer = consumerFuture.getNow(null);
-            if (redeliver.getMessageIdsCount() > 0 && consumer.subType() == SubType.Shared) {
+            if (redeliver.getMessageIdsCount() > 0
+                    && (consumer.subType() == SubType.Shared || consumer.subType() == SubType.Key_Shared)) {
                 consumer.redeliverUnacknowledgedMessages(redeliver.getMessageIdsList());
             } else {
                 consumer.redeliverUnacknowledgedMessages();
@@ -1336,20 +1351,58 @@ public class ServerCnx extends PulsarHandler {
         if (++pendingSendRequest == MaxPendingSendRequests) {
             // When the quota of pending send requests is reached, stop reading from socket to cause backpressure on
             // client connection, possibly shared between multiple producers
+            autoReadDisabledPendingSends = true;
             ctx.channel().config().setAutoRead(false);
         }
     }
 
     public void completedSendOperation(boolean isNonPersistentTopic) {
         if (--pendingSendRequest == ResumeReadsThreshold) {
-            // Resume reading from socket
-            ctx.channel().config().setAutoRead(true);
+            // Resume reading from socket, unless the connection is still throttled for other reasons
+            autoReadDisabledPendingSends = false;
+            resumeAutoReadIfNotThrottled();
         }
         if (isNonPersistentTopic) {
             nonPersistentPendingMessages--;
         }
     }
 
+    private void disableCnxAutoReadForPublishRate(long delayMs) {
+        if (autoReadDisabledRateLimiting) {
+            // Reads will already be resumed by the previously scheduled task
+            return;
+        }
+        autoReadDisabledRateLimiting = true;
+        ctx.channel().config().setAutoRead(false);
+        // The task runs on the connection event loop, same as all the other autoread changes
+        ctx.executor().schedule(() -> {
+            autoReadDisabledRateLimiting = false;
+            resumeAutoReadIfNotThrottled();
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop reading from the connection until the broker releases enough in-flight memory. Must be called from the
+     * connection event loop.
+     */
+    public void disableCnxAutoReadForMemoryLimit() {
+        if (autoReadDisabledMemoryLimit) {
+            return;
+        }
+        autoReadDisabledMemoryLimit = true;
+        ctx.channel().config().setAutoRead(false);
+        service.getInflightMemoryLimiter().pausePublisher(() -> ctx.channel().eventLoop().execute(() -> {
+            autoReadDisabledMemoryLimit = false;
+            resumeAutoReadIfNotThrottled();
+        }));
+    }
+
+    private void resumeAutoReadIfNotThrottled() {
+        if (!autoReadDisabledPendingSends && !autoReadDisabledRateLimiting && !autoReadDisabledMemoryLimit) {
+            ctx.channel().config().setAutoRead(true);
+        }
+    }
+
     private <T> ServerError getErrorCode(CompletableFuture<T> future) {
         ServerError error = ServerError.UnknownError;
         try {
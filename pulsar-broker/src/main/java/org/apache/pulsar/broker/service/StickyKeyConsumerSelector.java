@@ -0,0 +1,55 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.service;
+
+import org.apache.pulsar.broker.service.BrokerServiceException.ConsumerAssignException;
+
+/**
+ * Assigns the messages of a Key_Shared subscription to its consumers, so that all the messages with the same key are
+ * always dispatched to the same consumer while the set of consumers doesn't change.
+ */
+public interface StickyKeyConsumerSelector {
+
+    /**
+     * Add a new consumer to the selector, the selector may re-assign part of the keys of the existing consumers to it.
+     *
+     * @param consumer
+     *            new consumer
+     * @throws ConsumerAssignException
+     *             if the selector cannot assign any key to the new consumer
+     */
+    void addConsumer(Consumer consumer) throws ConsumerAssignException;
+
+    /**
+     * Remove the consumer from the selector, its keys are re-assigned to the remaining consumers.
+     *
+     * @param consumer
+     *            consumer to be removed
+     */
+    void removeConsumer(Consumer consumer);
+
+    /**
+     * Select the consumer that owns the given key.
+     *
+     * @param stickyKey
+     *            key of the message
+     * @return the consumer for the key or null if there are no consumers
+     */
+    Consumer select(String stickyKey);
+}
@@ -117,6 +117,11 @@ public interface Topic {
 
     BacklogQuota getBacklogQuota();
 
+    /**
+     * Get the limiter enforcing the max publish rate of the topic.
+     */
+    PublishRateLimiter getPublishRateLimiter();
+
     void updateRates(NamespaceStats nsStats, NamespaceBundleStats currentBundleStats,
             StatsOutputStream topicStatsStream, ClusterReplicationMetrics clusterReplicationMetrics,
             String namespaceName, boolean hydratePublishers);
@@ -28,6 +28,7 @@ import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import org.apache.bookkeeper.mledger.Entry;
 import org.apache.bookkeeper.mledger.Position;
 import org.apache.bookkeeper.mledger.impl.PositionImpl;
+import org.apache.commons.lang3.tuple.Pair;
 import org.apache.pulsar.broker.service.BrokerServiceException;
 import org.apache.pulsar.broker.service.BrokerServiceException.ServerMetadataException;
 import org.apache.pulsar.broker.service.BrokerServiceException.SubscriptionBusyException;
@@ -143,6 +144,21 @@ public class NonPersistentSubscription implements Subscription {
         // No-op
     }
 
+    @Override
+    public void acknowledgeMessageRanges(List<Pair<Position, Position>> ranges) {
+        // No-op
+    }
+
+    @Override
+    public void acknowledgeBatchIndexes(Position position, long[] ackSet) {
+        // No-op
+    }
+
+    @Override
+    public long[] getBatchIndexesAckSet(Position position) {
+        return null;
+    }
+
     @Override
     public String toString() {
         return MoreObjects.toStringHelper(this).add("topic", topicName).add("name", subName).toString();
@@ -59,6 +59,8 @@ import org.apache.pulsar.broker.service.BrokerServiceException.TopicFencedExcept
 import org.apache.pulsar.broker.service.BrokerServiceException.UnsupportedVersionException;
 import org.apache.pulsar.broker.service.Consumer;
 import org.apache.pulsar.broker.service.Producer;
+import org.apache.pulsar.broker.service.PublishRateLimiter;
+import org.apache.pulsar.broker.service.PublishRateLimiterDisabled;
 import org.apache.pulsar.broker.service.Replicator;
 import org.apache.pulsar.broker.service.ServerCnx;
 import org.apache.pulsar.broker.service.StreamingStats;
@@ -964,6 +966,12 @@ public class NonPersistentTopic implements Topic {
         return checkReplicationAndRetryOnFailure();
     }
 
+    @Override
+    public PublishRateLimiter getPublishRateLimiter() {
+        // Non-persistent topics already shed the load by dropping messages once a connection has too many pending
+        return PublishRateLimiterDisabled.DISABLED_RATE_LIMITER;
+    }
+
     /**
      *
      * @return Backlog quota for topic
@@ -22,7 +22,12 @@ import static java.util.stream.Collectors.toSet;
 import static org.apache.pulsar.broker.cache.ConfigurationCacheService.POLICIES;
 import static org.apache.pulsar.broker.service.persistent.PersistentTopic.MESSAGE_RATE_BACKOFF_MS;
 
+import io.netty.buffer.ByteBuf;
+
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
@@ -38,6 +43,8 @@ import org.apache.bookkeeper.mledger.Position;
 import org.apache.bookkeeper.mledger.impl.PositionImpl;
 import org.apache.pulsar.broker.ServiceConfiguration;
 import org.apache.pulsar.broker.admin.AdminResource;
+import org.apache.pulsar.broker.delayed.DelayedDeliveryTracker;
+import org.apache.pulsar.broker.delayed.InMemoryDelayedDeliveryTracker;
 import org.apache.pulsar.broker.service.AbstractDispatcherMultipleConsumers;
 import org.apache.pulsar.broker.service.BrokerServiceException;
 import org.apache.pulsar.broker.service.BrokerServiceException.ConsumerBusyException;
@@ -46,8 +53,11 @@ import org.apache.pulsar.broker.service.Consumer.SendMessageInfo;
 import org.apache.pulsar.broker.service.Dispatcher;
 import org.apache.pulsar.broker.service.RedeliveryTracker;
 import org.apache.pulsar.broker.service.InMemoryRedeliveryTracker;
+import org.apache.pulsar.broker.service.InflightMemoryLimiter;
 import org.apache.pulsar.client.impl.Backoff;
+import org.apache.pulsar.common.api.Commands;
 import org.apache.pulsar.common.api.proto.PulsarApi.CommandSubscribe.SubType;
+import org.apache.pulsar.common.api.proto.PulsarApi.MessageMetadata;
 import org.apache.pulsar.common.naming.TopicName;
 import org.apache.pulsar.common.policies.data.Policies;
 import org.apache.pulsar.common.util.Codec;
@@ -66,19 +76,19 @@ public class PersistentDispatcherMultipleConsumers  extends AbstractDispatcherMu
     private static final int MaxReadBatchSize = 100;
     private static final int MaxRoundRobinBatchSize = 20;
 
-    private final PersistentTopic topic;
-    private final ManagedCursor cursor;
+    protected final PersistentTopic topic;
+    protected final ManagedCursor cursor;
 
     private CompletableFuture<Void> closeFuture = null;
-    private ConcurrentLongPairSet messagesToReplay;
+    protected ConcurrentLongPairSet messagesToReplay;
     private final RedeliveryTracker redeliveryTracker;
 
     private boolean havePendingRead = false;
     private boolean havePendingReplayRead = false;
     private boolean shouldRewindBeforeReadingOrReplaying = false;
-    private final String name;
+    protected final String name;
 
-    private int totalAvailablePermits = 0;
+    protected int totalAvailablePermits = 0;
     private int readBatchSize;
     private final Backoff readFailureBackoff = new Backoff(15, TimeUnit.SECONDS, 1, TimeUnit.MINUTES, 0, TimeUnit.MILLISECONDS);
     private static final AtomicIntegerFieldUpdater<PersistentDispatcherMultipleConsumers> TOTAL_UNACKED_MESSAGES_UPDATER =
@@ -90,6 +100,16 @@ public class PersistentDispatcherMultipleConsumers  extends AbstractDispatcherMu
             AtomicIntegerFieldUpdater.newUpdater(PersistentDispatcherMultipleConsumers.class, "blockedDispatcherOnUnackedMsgs");
     private final ServiceConfiguration serviceConfig;
     private DispatchRateLimiter dispatchRateLimiter;
+    // Created on the first delayed message received by the subscription
+    private Optional<DelayedDeliveryTracker> delayedDeliveryTracker = Optional.empty();
+
+    private final InflightMemoryLimiter inflightMemoryLimiter;
+    // Memory reserved on the broker for the pending reads, estimated from the size of the entries previously read
+    private static final int DEFAULT_ENTRY_SIZE_ESTIMATE = 1024;
+    private int entrySizeEstimate = DEFAULT_ENTRY_SIZE_ESTIMATE;
+    private long pendingReadReservedBytes = 0;
+    private long pendingReplayReadReservedBytes = 0;
+    private volatile boolean blockedDispatcherOnInflightMemory = false;
 
     enum ReadType {
         Normal, Replay
@@ -106,6 +126,7 @@ public class PersistentDispatcherMultipleConsumers  extends AbstractDispatcherMu
                 .getMaxUnackedMessagesPerSubscription();
         this.serviceConfig = topic.getBrokerService().pulsar().getConfiguration();
         this.dispatchRateLimiter = null;
+        this.inflightMemoryLimiter = topic.getBrokerService().getInflightMemoryLimiter();
     }
 
     @Override
@@ -124,6 +145,8 @@ public class PersistentDispatcherMultipleConsumers  extends AbstractDispatcherMu
                 shouldRewindBeforeReadingOrReplaying = false;
             }
             messagesToReplay.clear();
+            // delayed messages are going to be read again after the rewind
+            delayedDeliveryTracker.ifPresent(DelayedDeliveryTracker::clear);
         }
 
         if (isConsumersExceededOnTopic()) {
@@ -187,6 +210,7 @@ public class PersistentDispatcherMultipleConsumers  extends AbstractDispatcherMu
             if (consumerList.isEmpty()) {
                 if (havePendingRead && cursor.cancelPendingReadRequest()) {
                     havePendingRead = false;
+                    releaseReadMemory(ReadType.Normal);
                 }
 
                 messagesToReplay.clear();
@@ -281,21 +305,37 @@ public class PersistentDispatcherMultipleConsumers  extends AbstractDispatcherMu
 
             }
 
-            if (!messagesToReplay.isEmpty()) {
-                if (havePendingReplayRead) {
-                    log.debug("[{}] Skipping replay while awaiting previous read to complete", name);
-                    return;
+            // stop reading if the broker is running out of memory, the dispatcher will be resumed once enough memory
+            // has been released by the pending publishes and reads
+            if (inflightMemoryLimiter.isExhausted()) {
+                if (!blockedDispatcherOnInflightMemory) {
+                    if (log.isDebugEnabled()) {
+                        log.debug("[{}] Broker in-flight memory exhausted, pause reading", name);
+                    }
+                    blockedDispatcherOnInflightMemory = true;
+                    inflightMemoryLimiter.pauseDispatcher(() -> {
+                        blockedDispatcherOnInflightMemory = false;
+                        topic.getBrokerService().executor().execute(() -> readMoreEntries());
+                    });
                 }
+                return;
+            }
 
-                Set<PositionImpl> messagesToReplayNow = messagesToReplay.items(messagesToRead).stream()
-                        .map(pair -> new PositionImpl(pair.first, pair.second)).collect(toSet());
+            if (hasMessagesToReplay() && havePendingReplayRead) {
+                log.debug("[{}] Skipping replay while awaiting previous read to complete", name);
+                return;
+            }
 
+            Set<PositionImpl> messagesToReplayNow = hasMessagesToReplay() ? getMessagesToReplayNow(messagesToRead)
+                    : Collections.emptySet();
+            if (!messagesToReplayNow.isEmpty()) {
                 if (log.isDebugEnabled()) {
                     log.debug("[{}] Schedule replay of {} messages for {} consumers", name, messagesToReplayNow.size(),
                             consumerList.size());
                 }
 
                 havePendingReplayRead = true;
+                pendingReplayReadReservedBytes = reserveReadMemory(messagesToReplayNow.size());
                 Set<? extends Position> deletedMessages = cursor.asyncReplayEntries(messagesToReplayNow, this,
                         ReadType.Replay);
                 // clear already acked positions from replay bucket
@@ -306,6 +346,7 @@ public class PersistentDispatcherMultipleConsumers  extends AbstractDispatcherMu
                 // next entries as readCompletedEntries-callback was never called
                 if ((messagesToReplayNow.size() - deletedMessages.size()) == 0) {
                     havePendingReplayRead = false;
+                    releaseReadMemory(ReadType.Replay);
                     readMoreEntries();
                 }
             } else if (BLOCKED_DISPATCHER_ON_UNACKMSG_UPDATER.get(this) == TRUE) {
@@ -317,6 +358,10 @@ public class PersistentDispatcherMultipleConsumers  extends AbstractDispatcherMu
                             consumerList.size());
                 }
                 havePendingRead = true;
+                // a read waiting for new entries doesn't hold any memory until they are published
+                if (cursor.hasMoreEntries()) {
+                    pendingReadReservedBytes = reserveReadMemory(messagesToRead);
+                }
                 cursor.asyncReadEntriesOrWait(messagesToRead, this, ReadType.Normal);
             } else {
                 log.debug("[{}] Cannot schedule next read until previous one is done", name);
@@ -328,6 +373,41 @@ public class PersistentDispatcherMultipleConsumers  extends AbstractDispatcherMu
         }
     }
 
+    private long reserveReadMemory(int numberOfEntries) {
+        if (!inflightMemoryLimiter.isEnabled()) {
+            return 0;
+        }
+        long bytes = (long) numberOfEntries * entrySizeEstimate;
+        inflightMemoryLimiter.reserveDispatchMemory(bytes);
+        return bytes;
+    }
+
+    private void releaseReadMemory(ReadType readType) {
+        if (readType == ReadType.Normal) {
+            inflightMemoryLimiter.releaseDispatchMemory(pendingReadReservedBytes);
+            pendingReadReservedBytes = 0;
+        } else {
+            inflightMemoryLimiter.releaseDispatchMemory(pendingReplayReadReservedBytes);
+            pendingReplayReadReservedBytes = 0;
+        }
+    }
+
+    private boolean hasMessagesToReplay() {
+        return !messagesToReplay.isEmpty()
+                || (delayedDeliveryTracker.isPresent() && delayedDeliveryTracker.get().hasMessageAvailable());
+    }
+
+    protected Set<PositionImpl> getMessagesToReplayNow(int maxMessagesToRead) {
+        if (!messagesToReplay.isEmpty()) {
+            return messagesToReplay.items(maxMessagesToRead).stream()
+                    .map(pair -> new PositionImpl(pair.first, pair.second)).collect(toSet());
+        } else if (delayedDeliveryTracker.isPresent() && delayedDeliveryTracker.get().hasMessageAvailable()) {
+            return delayedDeliveryTracker.get().getScheduledMessages(maxMessagesToRead);
+        } else {
+            return Collections.emptySet();
+        }
+    }
+
     @Override
     public boolean isConsumerConnected() {
         return !consumerList.isEmpty();
@@ -346,6 +426,10 @@ public class PersistentDispatcherMultipleConsumers  extends AbstractDispatcherMu
     @Override
     public CompletableFuture<Void> close() {
         IS_CLOSED_UPDATER.set(this, TRUE);
+        synchronized (this) {
+            delayedDeliveryTracker.ifPresent(DelayedDeliveryTracker::close);
+            delayedDeliveryTracker = Optional.empty();
+        }
         return disconnectAllConsumers();
     }
 
@@ -358,6 +442,7 @@ public class PersistentDispatcherMultipleConsumers  extends AbstractDispatcherMu
             consumerList.forEach(Consumer::disconnect);
             if (havePendingRead && cursor.cancelPendingReadRequest()) {
                 havePendingRead = false;
+                releaseReadMemory(ReadType.Normal);
             }
         }
         return closeFuture;
@@ -376,14 +461,19 @@ public class PersistentDispatcherMultipleConsumers  extends AbstractDispatcherMu
     @Override
     public synchronized void readEntriesComplete(List<Entry> entries, Object ctx) {
         ReadType readType = (ReadType) ctx;
-        int start = 0;
-        int entriesToDispatch = entries.size();
-
         if (readType == ReadType.Normal) {
             havePendingRead = false;
         } else {
             havePendingReplayRead = false;
         }
+        releaseReadMemory(readType);
+        if (inflightMemoryLimiter.isEnabled() && !entries.isEmpty()) {
+            long entriesSize = 0;
+            for (int i = 0; i < entries.size(); i++) {
+                entriesSize += entries.get(i).getLength();
+            }
+            entrySizeEstimate = (int) Math.max(1, entriesSize / entries.size());
+        }
 
         if (readBatchSize < MaxReadBatchSize) {
             int newReadBatchSize = Math.min(readBatchSize * 2, MaxReadBatchSize);
@@ -405,6 +495,94 @@ public class PersistentDispatcherMultipleConsumers  extends AbstractDispatcherMu
             return;
         }
 
+        if (serviceConfig.isDelayedDeliveryEnabled()) {
+            entries = filterDelayedMessages(readType, entries);
+        }
+
+        sendMessagesToConsumers(readType, entries);
+    }
+
+    /**
+     * Hand over the entries that are not due yet to the delayed delivery tracker. They are released and will be read
+     * again, as a replay, once their delivery time has come.
+     *
+     * @return the entries that can be dispatched now
+     */
+    private List<Entry> filterDelayedMessages(ReadType readType, List<Entry> entries) {
+        List<Entry> entriesToDispatch = null;
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            MessageMetadata msgMetadata = peekMessageMetadata(entry);
+            if (msgMetadata == null) {
+                // corrupted entries are handled by the consumer when dispatching
+                if (entriesToDispatch != null) {
+                    entriesToDispatch.add(entry);
+                }
+                continue;
+            }
+
+            try {
+                if (trackDelayedDelivery(entry, msgMetadata)) {
+                    if (entriesToDispatch == null) {
+                        entriesToDispatch = new ArrayList<>(entries.subList(0, i));
+                    }
+                    if (readType == ReadType.Replay) {
+                        messagesToReplay.remove(entry.getLedgerId(), entry.getEntryId());
+                    }
+                    entry.release();
+                } else {
+                    entryMetadataParsed(entry, msgMetadata);
+                    if (entriesToDispatch != null) {
+                        entriesToDispatch.add(entry);
+                    }
+                }
+            } finally {
+                msgMetadata.recycle();
+            }
+        }
+        return entriesToDispatch != null ? entriesToDispatch : entries;
+    }
+
+    /**
+     * Called with the metadata of an entry about to be dispatched when it was already parsed by the dispatcher, so
+     * that subclasses don't have to parse it again. The metadata is recycled after the call.
+     */
+    protected void entryMetadataParsed(Entry entry, MessageMetadata msgMetadata) {
+        // no-op
+    }
+
+    private static MessageMetadata peekMessageMetadata(Entry entry) {
+        ByteBuf metadataAndPayload = entry.getDataBuffer();
+        try {
+            // save the reader index and restore after parsing
+            metadataAndPayload.markReaderIndex();
+            return Commands.parseMessageMetadata(metadataAndPayload);
+        } catch (Throwable t) {
+            return null;
+        } finally {
+            metadataAndPayload.resetReaderIndex();
+        }
+    }
+
+    private boolean trackDelayedDelivery(Entry entry, MessageMetadata msgMetadata) {
+        if (!msgMetadata.hasDeliverAtTime()) {
+            return false;
+        }
+
+        if (!delayedDeliveryTracker.isPresent()) {
+            // Initialize the tracker the first time we need to use it
+            delayedDeliveryTracker = Optional.of(new InMemoryDelayedDeliveryTracker(this,
+                    topic.getBrokerService().getDelayedDeliveryTimer(),
+                    serviceConfig.getDelayedDeliveryTickTimeMillis()));
+        }
+        return delayedDeliveryTracker.get().addMessage(entry.getLedgerId(), entry.getEntryId(),
+                msgMetadata.getDeliverAtTime());
+    }
+
+    protected void sendMessagesToConsumers(ReadType readType, List<Entry> entries) {
+        int start = 0;
+        int entriesToDispatch = entries.size();
+
         if (log.isDebugEnabled()) {
             log.debug("[{}] Distributing {} messages to {} consumers", name, entries.size(), consumerList.size());
         }
@@ -418,6 +596,7 @@ public class PersistentDispatcherMultipleConsumers  extends AbstractDispatcherMu
                 log.info("[{}] rewind because no available consumer found from total {}", name, consumerList.size());
                 entries.subList(start, entries.size()).forEach(Entry::release);
                 cursor.rewind();
+                delayedDeliveryTracker.ifPresent(DelayedDeliveryTracker::clear);
                 return;
             }
 
@@ -433,7 +612,7 @@ public class PersistentDispatcherMultipleConsumers  extends AbstractDispatcherMu
                     });
                 }
 
-                SendMessageInfo sentMsgInfo = c.sendMessages(entries.subList(start, start + messagesForC));
+                SendMessageInfo sentMsgInfo = sendMessagesToConsumer(c, entries.subList(start, start + messagesForC));
 
                 long msgSent = sentMsgInfo.getTotalSentMessages();
                 start += messagesForC;
@@ -444,15 +623,7 @@ public class PersistentDispatcherMultipleConsumers  extends AbstractDispatcherMu
             }
         }
 
-        // acquire message-dispatch permits for already delivered messages
-        if (serviceConfig.isDispatchThrottlingOnNonBacklogConsumerEnabled() || !cursor.isActive()) {
-            topic.getDispatchRateLimiter().tryDispatchPermit(totalMessagesSent, totalBytesSent);
-
-            if (dispatchRateLimiter == null) {
-                dispatchRateLimiter = new DispatchRateLimiter(topic, name);
-            }
-            dispatchRateLimiter.tryDispatchPermit(totalMessagesSent, totalBytesSent);
-        }
+        acquireDispatchPermits(totalMessagesSent, totalBytesSent);
 
         if (entriesToDispatch > 0) {
             if (log.isDebugEnabled()) {
@@ -468,6 +639,36 @@ public class PersistentDispatcherMultipleConsumers  extends AbstractDispatcherMu
         readMoreEntries();
     }
 
+    /**
+     * Send the entries to a consumer. When the in-flight memory is limited, the bytes sent stay accounted until they
+     * have been written to the consumer connection, so that slow consumers can't grow the outbound buffers without
+     * bound.
+     */
+    protected SendMessageInfo sendMessagesToConsumer(Consumer consumer, List<Entry> entries) {
+        if (!inflightMemoryLimiter.isEnabled()) {
+            return consumer.sendMessages(entries);
+        }
+        SendMessageInfo sentMsgInfo = consumer.sendMessages(entries,
+                (future, info) -> inflightMemoryLimiter.releaseDispatchMemory(info.getTotalSentMessageBytes()));
+        // The write completes on the connection thread, after the sent bytes are known
+        inflightMemoryLimiter.reserveDispatchMemory(sentMsgInfo.getTotalSentMessageBytes());
+        return sentMsgInfo;
+    }
+
+    /**
+     * Acquire message-dispatch permits for already delivered messages.
+     */
+    protected void acquireDispatchPermits(long totalMessagesSent, long totalBytesSent) {
+        if (serviceConfig.isDispatchThrottlingOnNonBacklogConsumerEnabled() || !cursor.isActive()) {
+            topic.getDispatchRateLimiter().tryDispatchPermit(totalMessagesSent, totalBytesSent);
+
+            if (dispatchRateLimiter == null) {
+                dispatchRateLimiter = new DispatchRateLimiter(topic, name);
+            }
+            dispatchRateLimiter.tryDispatchPermit(totalMessagesSent, totalBytesSent);
+        }
+    }
+
     @Override
     public synchronized void readEntriesFailed(ManagedLedgerException exception, Object ctx) {
 
@@ -495,6 +696,7 @@ public class PersistentDispatcherMultipleConsumers  extends AbstractDispatcherMu
             cursor.rewind();
         }
 
+        releaseReadMemory(readType);
         if (readType == ReadType.Normal) {
             havePendingRead = false;
         } else {
@@ -619,6 +821,10 @@ public class PersistentDispatcherMultipleConsumers  extends AbstractDispatcherMu
         return totalUnackedMessages;
     }
 
+    public synchronized long getNumberOfDelayedMessages() {
+        return delayedDeliveryTracker.map(DelayedDeliveryTracker::getNumberOfDelayedMessages).orElse(0L);
+    }
+
     public String getName() {
         return name;
     }
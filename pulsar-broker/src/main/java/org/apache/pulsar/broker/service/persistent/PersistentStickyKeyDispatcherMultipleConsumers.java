@@ -0,0 +1,193 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.service.persistent;
+
+import io.netty.buffer.ByteBuf;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.bookkeeper.mledger.Entry;
+import org.apache.bookkeeper.mledger.ManagedCursor;
+import org.apache.bookkeeper.mledger.impl.PositionImpl;
+import org.apache.pulsar.broker.service.BrokerServiceException;
+import org.apache.pulsar.broker.service.Consumer;
+import org.apache.pulsar.broker.service.Consumer.SendMessageInfo;
+import org.apache.pulsar.broker.service.StickyKeyConsumerSelector;
+import org.apache.pulsar.common.api.Commands;
+import org.apache.pulsar.common.api.proto.PulsarApi.CommandSubscribe.SubType;
+import org.apache.pulsar.common.api.proto.PulsarApi.MessageMetadata;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Dispatcher for Key_Shared subscriptions: the entries are routed to the consumers by the key of the message, through
+ * a {@link StickyKeyConsumerSelector}, instead of being distributed in round-robin.
+ * <p>
+ * Entries whose consumer has no permits are kept for later replay and they are dispatched again once that consumer
+ * sends more permits. Meanwhile the dispatcher keeps reading new entries for the consumers that still have permits.
+ */
+public class PersistentStickyKeyDispatcherMultipleConsumers extends PersistentDispatcherMultipleConsumers {
+
+    static final String NONE_KEY = "NONE_KEY";
+
+    private final StickyKeyConsumerSelector selector;
+
+    // Set when the last replay could not dispatch anything, the next read skips the replay set once
+    private boolean isDispatcherStuckOnReplays = false;
+
+    // Keys of the entries being dispatched whose metadata was already parsed by the delayed delivery filter
+    private final Map<Entry, String> parsedStickyKeys = new IdentityHashMap<>();
+
+    public PersistentStickyKeyDispatcherMultipleConsumers(PersistentTopic topic, ManagedCursor cursor,
+            StickyKeyConsumerSelector selector) {
+        super(topic, cursor);
+        this.selector = selector;
+    }
+
+    @Override
+    public synchronized void addConsumer(Consumer consumer) throws BrokerServiceException {
+        selector.addConsumer(consumer);
+        try {
+            super.addConsumer(consumer);
+        } catch (BrokerServiceException e) {
+            selector.removeConsumer(consumer);
+            throw e;
+        }
+    }
+
+    @Override
+    public synchronized void removeConsumer(Consumer consumer) throws BrokerServiceException {
+        // Update the key assignment before the pending acks of the consumer are re-dispatched
+        selector.removeConsumer(consumer);
+        super.removeConsumer(consumer);
+    }
+
+    @Override
+    public SubType getType() {
+        return SubType.Key_Shared;
+    }
+
+    @Override
+    protected void sendMessagesToConsumers(ReadType readType, List<Entry> entries) {
+        if (readType == ReadType.Replay) {
+            // Replayed entries are not returned in order, restore the publish order within each key
+            entries.sort((e1, e2) -> ((PositionImpl) e1.getPosition()).compareTo((PositionImpl) e2.getPosition()));
+        }
+
+        Map<Consumer, List<Entry>> groupedEntries = new HashMap<>();
+        for (Entry entry : entries) {
+            String stickyKey = parsedStickyKeys.remove(entry);
+            if (stickyKey == null) {
+                stickyKey = peekStickyKey(entry.getDataBuffer());
+            }
+            Consumer consumer = selector.select(stickyKey);
+            groupedEntries.computeIfAbsent(consumer, k -> new ArrayList<>()).add(entry);
+        }
+        parsedStickyKeys.clear();
+
+        long totalMessagesSent = 0;
+        long totalBytesSent = 0;
+        List<Entry> entriesToReplay = new ArrayList<>();
+        for (Map.Entry<Consumer, List<Entry>> current : groupedEntries.entrySet()) {
+            Consumer consumer = current.getKey();
+            List<Entry> entriesForConsumer = current.getValue();
+            int messagesForC = consumer == null || consumer.isBlocked() ? 0
+                    : Math.min(entriesForConsumer.size(), consumer.getAvailablePermits());
+
+            if (messagesForC > 0) {
+                List<Entry> entriesToSend = entriesForConsumer.subList(0, messagesForC);
+
+                // remove positions first from replay list first : sendMessages recycles entries
+                if (readType == ReadType.Replay) {
+                    entriesToSend.forEach(entry -> {
+                        messagesToReplay.remove(entry.getLedgerId(), entry.getEntryId());
+                    });
+                }
+
+                SendMessageInfo sentMsgInfo = sendMessagesToConsumer(consumer, new ArrayList<>(entriesToSend));
+                totalAvailablePermits -= sentMsgInfo.getTotalSentMessages();
+                totalMessagesSent += sentMsgInfo.getTotalSentMessages();
+                totalBytesSent += sentMsgInfo.getTotalSentMessageBytes();
+            }
+
+            entriesToReplay.addAll(entriesForConsumer.subList(messagesForC, entriesForConsumer.size()));
+        }
+
+        acquireDispatchPermits(totalMessagesSent, totalBytesSent);
+
+        if (!entriesToReplay.isEmpty()) {
+            if (log.isDebugEnabled()) {
+                log.debug("[{}] No consumers found with available permits, storing {} positions for later replay",
+                        name, entriesToReplay.size());
+            }
+            entriesToReplay.forEach(entry -> {
+                messagesToReplay.add(entry.getLedgerId(), entry.getEntryId());
+                entry.release();
+            });
+        }
+
+        // A replay that dispatched nothing is waiting for the consumers of its keys to send more permits: read the
+        // new entries instead, so that the other consumers are not blocked behind them
+        if (readType == ReadType.Replay && totalMessagesSent == 0) {
+            isDispatcherStuckOnReplays = true;
+        }
+        readMoreEntries();
+    }
+
+    @Override
+    protected synchronized Set<PositionImpl> getMessagesToReplayNow(int maxMessagesToRead) {
+        if (isDispatcherStuckOnReplays) {
+            isDispatcherStuckOnReplays = false;
+            return Collections.emptySet();
+        }
+        return super.getMessagesToReplayNow(maxMessagesToRead);
+    }
+
+    @Override
+    protected void entryMetadataParsed(Entry entry, MessageMetadata msgMetadata) {
+        parsedStickyKeys.put(entry, stickyKey(msgMetadata));
+    }
+
+    private static String stickyKey(MessageMetadata metadata) {
+        return metadata.hasPartitionKey() ? metadata.getPartitionKey() : NONE_KEY;
+    }
+
+    private String peekStickyKey(ByteBuf metadataAndPayload) {
+        try {
+            // save the reader index and restore after parsing
+            metadataAndPayload.markReaderIndex();
+            MessageMetadata metadata = Commands.parseMessageMetadata(metadataAndPayload);
+            metadataAndPayload.resetReaderIndex();
+            String key = stickyKey(metadata);
+            metadata.recycle();
+            return key;
+        } catch (Throwable t) {
+            log.error("[{}] Failed to parse message metadata", name, t);
+            return NONE_KEY;
+        }
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(PersistentStickyKeyDispatcherMultipleConsumers.class);
+}
@@ -39,6 +39,7 @@ import org.apache.bookkeeper.mledger.ManagedLedgerException.ConcurrentFindCursor
 import org.apache.bookkeeper.mledger.ManagedLedgerException.InvalidCursorPositionException;
 import org.apache.bookkeeper.mledger.Position;
 import org.apache.bookkeeper.mledger.impl.PositionImpl;
+import org.apache.commons.lang3.tuple.Pair;
 import org.apache.pulsar.broker.service.BrokerServiceException;
 import org.apache.pulsar.broker.service.BrokerServiceException.PersistenceException;
 import org.apache.pulsar.broker.service.BrokerServiceException.ServerMetadataException;
@@ -47,6 +48,7 @@ import org.apache.pulsar.broker.service.BrokerServiceException.SubscriptionFence
 import org.apache.pulsar.broker.service.BrokerServiceException.SubscriptionInvalidCursorPosition;
 import org.apache.pulsar.broker.service.Consumer;
 import org.apache.pulsar.broker.service.Dispatcher;
+import org.apache.pulsar.broker.service.HashRangeAutoSplitStickyKeyConsumerSelector;
 import org.apache.pulsar.broker.service.Subscription;
 import org.apache.pulsar.broker.service.Topic;
 import org.apache.pulsar.common.api.proto.PulsarApi.CommandAck.AckType;
@@ -127,6 +129,12 @@ public class PersistentSubscription implements Subscription {
                             topic);
                 }
                 break;
+            case Key_Shared:
+                if (dispatcher == null || dispatcher.getType() != SubType.Key_Shared) {
+                    dispatcher = new PersistentStickyKeyDispatcherMultipleConsumers(topic, cursor,
+                            new HashRangeAutoSplitStickyKeyConsumerSelector());
+                }
+                break;
             default:
                 throw new ServerMetadataException("Unsupported subscription type");
             }
@@ -204,6 +212,35 @@ public class PersistentSubscription implements Subscription {
         }
     }
 
+    @Override
+    public void acknowledgeMessageRanges(List<Pair<Position, Position>> ranges) {
+        if (log.isDebugEnabled()) {
+            log.debug("[{}][{}] Individual acks on ranges {}", topicName, subName, ranges);
+        }
+        cursor.asyncDeleteRanges(ranges, deleteCallback, ranges);
+        for (Pair<Position, Position> range : ranges) {
+            dispatcher.getRedeliveryTracker().removeRange(range.getLeft(), range.getRight());
+        }
+
+        if (topic.getManagedLedger().isTerminated() && cursor.getNumberOfEntriesInBacklog() == 0) {
+            // Notify all consumer that the end of topic was reached
+            dispatcher.getConsumers().forEach(Consumer::reachedEndOfTopic);
+        }
+    }
+
+    @Override
+    public void acknowledgeBatchIndexes(Position position, long[] ackSet) {
+        if (log.isDebugEnabled()) {
+            log.debug("[{}][{}] Batch index acks on {}: {}", topicName, subName, position, ackSet);
+        }
+        cursor.asyncDeleteBatchIndexes(position, ackSet, deleteCallback, position);
+    }
+
+    @Override
+    public long[] getBatchIndexesAckSet(Position position) {
+        return cursor.getBatchIndexesAckSet(position);
+    }
+
     private final MarkDeleteCallback markDeleteCallback = new MarkDeleteCallback() {
         @Override
         public void markDeleteComplete(Object ctx) {
@@ -265,6 +302,8 @@ public class PersistentSubscription implements Subscription {
             return "Failover";
         case Shared:
             return "Shared";
+        case Key_Shared:
+            return "Key_Shared";
         }
 
         return "Null";
@@ -632,12 +671,14 @@ public class PersistentSubscription implements Subscription {
                 subStats.activeConsumerName = activeConsumer.consumerName();
             }
         }
-        if (SubType.Shared.equals(subStats.type)) {
+        if (SubType.Shared.equals(subStats.type) || SubType.Key_Shared.equals(subStats.type)) {
             if (dispatcher instanceof PersistentDispatcherMultipleConsumers) {
                 subStats.unackedMessages = ((PersistentDispatcherMultipleConsumers) dispatcher)
                         .getTotalUnackedMessages();
                 subStats.blockedSubscriptionOnUnackedMsgs = ((PersistentDispatcherMultipleConsumers) dispatcher)
                         .isBlockedDispatcherOnUnackedMsgs();
+                subStats.msgDelayed = ((PersistentDispatcherMultipleConsumers) dispatcher)
+                        .getNumberOfDelayedMessages();
             }
         }
         subStats.msgBacklog = getNumberOfEntriesInBacklog();
@@ -56,6 +56,7 @@ import org.apache.bookkeeper.mledger.impl.ManagedCursorImpl;
 import org.apache.bookkeeper.mledger.impl.ManagedLedgerImpl;
 import org.apache.bookkeeper.mledger.impl.PositionImpl;
 import org.apache.pulsar.broker.PulsarServerException;
+import org.apache.pulsar.broker.ServiceConfiguration;
 import org.apache.pulsar.broker.admin.AdminResource;
 import org.apache.pulsar.broker.service.BrokerService;
 import org.apache.pulsar.broker.service.BrokerServiceException;
@@ -74,6 +75,9 @@ import org.apache.pulsar.broker.service.BrokerServiceException.TopicTerminatedEx
 import org.apache.pulsar.broker.service.BrokerServiceException.UnsupportedVersionException;
 import org.apache.pulsar.broker.service.Consumer;
 import org.apache.pulsar.broker.service.Producer;
+import org.apache.pulsar.broker.service.PublishRateLimiter;
+import org.apache.pulsar.broker.service.PublishRateLimiterDisabled;
+import org.apache.pulsar.broker.service.PublishRateLimiterImpl;
 import org.apache.pulsar.broker.service.Replicator;
 import org.apache.pulsar.broker.service.ServerCnx;
 import org.apache.pulsar.broker.service.StreamingStats;
@@ -99,6 +103,7 @@ import org.apache.pulsar.common.policies.data.PersistentTopicInternalStats.Curso
 import org.apache.pulsar.common.policies.data.PersistentTopicInternalStats.LedgerInfo;
 import org.apache.pulsar.common.policies.data.TopicStats;
 import org.apache.pulsar.common.policies.data.Policies;
+import org.apache.pulsar.common.policies.data.PublishRate;
 import org.apache.pulsar.common.policies.data.PublisherStats;
 import org.apache.pulsar.common.policies.data.ReplicatorStats;
 import org.apache.pulsar.common.policies.data.SubscriptionStats;
@@ -168,6 +173,7 @@ public class PersistentTopic implements Topic, AddEntryCallback {
     // doesn't support batch-message
     private volatile boolean hasBatchMessagePublished = false;
     private final DispatchRateLimiter dispatchRateLimiter;
+    private volatile PublishRateLimiter topicPublishRateLimiter = PublishRateLimiterDisabled.DISABLED_RATE_LIMITER;
     public static final int MESSAGE_RATE_BACKOFF_MS = 1000;
 
     private final MessageDeduplication messageDeduplication;
@@ -261,9 +267,33 @@ public class PersistentTopic implements Topic, AddEntryCallback {
 
             schemaCompatibilityStrategy = SchemaCompatibilityStrategy.fromAutoUpdatePolicy(
                     policies.schema_auto_update_compatibility_strategy);
+            updatePublishRateLimiter(policies);
         } catch (Exception e) {
             log.warn("[{}] Error getting policies {} and isEncryptionRequired will be set to false", topic, e.getMessage());
             isEncryptionRequired = false;
+            updatePublishRateLimiter(null);
+        }
+    }
+
+    /**
+     * Apply the publish-rate configured on the namespace for the local cluster or, when missing, the broker default.
+     */
+    private void updatePublishRateLimiter(Policies policies) {
+        final ServiceConfiguration config = brokerService.pulsar().getConfiguration();
+        PublishRate publishRate = policies != null ? policies.publishMaxMessageRate.get(config.getClusterName()) : null;
+        if (publishRate == null) {
+            publishRate = new PublishRate(config.getMaxPublishRatePerTopicInMessages(),
+                    config.getMaxPublishRatePerTopicInBytes());
+        }
+
+        if (publishRate.publishThrottlingRateInMsg > 0 || publishRate.publishThrottlingRateInByte > 0) {
+            if (topicPublishRateLimiter.isPublishRateEnabled()) {
+                topicPublishRateLimiter.update(publishRate);
+            } else {
+                topicPublishRateLimiter = new PublishRateLimiterImpl(publishRate);
+            }
+        } else {
+            topicPublishRateLimiter = PublishRateLimiterDisabled.DISABLED_RATE_LIMITER;
         }
     }
 
@@ -1287,7 +1317,7 @@ public class PersistentTopic implements Topic, AddEntryCallback {
                 topicStatsStream.writePair("numberOfEntriesSinceFirstNotAckedMessage", subscription.getNumberOfEntriesSinceFirstNotAckedMessage());
                 topicStatsStream.writePair("totalNonContiguousDeletedMessagesRange", subscription.getTotalNonContiguousDeletedMessagesRange());
                 topicStatsStream.writePair("type", subscription.getTypeString());
-                if (SubType.Shared.equals(subscription.getType())) {
+                if (SubType.Shared.equals(subscription.getType()) || SubType.Key_Shared.equals(subscription.getType())) {
                     if(subscription.getDispatcher() instanceof PersistentDispatcherMultipleConsumers) {
                         PersistentDispatcherMultipleConsumers dispatcher = (PersistentDispatcherMultipleConsumers)subscription.getDispatcher();
                         topicStatsStream.writePair("blockedSubscriptionOnUnackedMsgs",  dispatcher.isBlockedDispatcherOnUnackedMsgs());
@@ -1385,6 +1415,7 @@ public class PersistentTopic implements Topic, AddEntryCallback {
         });
 
         stats.storageSize = ledger.getEstimatedBacklogSize();
+        stats.publishRateLimitedTimes = topicPublishRateLimiter.getPublishRateLimitedTimes();
         stats.deduplicationStatus = messageDeduplication.getStatus().toString();
         return stats;
     }
@@ -1579,6 +1610,7 @@ public class PersistentTopic implements Topic, AddEntryCallback {
         CompletableFuture<Void> replicationFuture = checkReplicationAndRetryOnFailure();
         CompletableFuture<Void> dedupFuture = checkDeduplicationStatus();
         CompletableFuture<Void> persistentPoliciesFuture = checkPersistencePolicies();
+        updatePublishRateLimiter(data);
         dispatchRateLimiter.onPoliciesUpdate(data);
         return CompletableFuture.allOf(replicationFuture, dedupFuture, persistentPoliciesFuture);
     }
@@ -1727,6 +1759,11 @@ public class PersistentTopic implements Topic, AddEntryCallback {
         return this.dispatchRateLimiter;
     }
 
+    @Override
+    public PublishRateLimiter getPublishRateLimiter() {
+        return this.topicPublishRateLimiter;
+    }
+
     public long getLastPublishedSequenceId(String producerName) {
         return messageDeduplication.getLastPublishedSequenceId(producerName);
     }
@@ -1736,6 +1773,10 @@ public class PersistentTopic implements Topic, AddEntryCallback {
         return ledger.getLastConfirmedEntry();
     }
 
+    public CompactedTopic getCompactedTopic() {
+        return compactedTopic;
+    }
+
     public synchronized void triggerCompaction()
             throws PulsarServerException, AlreadyRunningException {
         if (currentCompaction.isDone()) {
@@ -26,6 +26,8 @@ import static java.util.Objects.nonNull;
 import static java.util.concurrent.CompletableFuture.completedFuture;
 import static org.apache.pulsar.broker.service.schema.BookkeeperSchemaStorage.Functions.newSchemaEntry;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.protobuf.ByteString;
 
@@ -46,6 +48,7 @@ import org.apache.bookkeeper.client.BookKeeper;
 import org.apache.bookkeeper.client.LedgerEntry;
 import org.apache.bookkeeper.client.LedgerHandle;
 import org.apache.bookkeeper.util.ZkUtils;
+import org.apache.commons.lang3.tuple.Pair;
 import org.apache.pulsar.broker.PulsarService;
 import org.apache.pulsar.broker.ServiceConfiguration;
 import org.apache.pulsar.common.schema.SchemaVersion;
@@ -75,12 +78,19 @@ public class BookkeeperSchemaStorage implements SchemaStorage {
 
     private final ConcurrentMap<String, CompletableFuture<StoredSchema>> readSchemaOperations = new ConcurrentHashMap<>();
 
+    // Schema versions are never modified once written, so they can be cached by (schemaId, version) without having
+    // to be invalidated when a new version is added, either by this broker or by another one
+    private final Cache<Pair<String, Long>, StoredSchema> schemaCache;
+
     @VisibleForTesting
     BookkeeperSchemaStorage(PulsarService pulsar) {
         this.pulsar = pulsar;
         this.localZkCache = pulsar.getLocalZkCache();
         this.zooKeeper = localZkCache.getZooKeeper();
         this.config = pulsar.getConfiguration();
+        this.schemaCache = Caffeine.newBuilder()
+                .maximumSize(config.getSchemaRegistryCacheMaxEntries())
+                .build();
     }
 
     @VisibleForTesting
@@ -119,7 +129,10 @@ public class BookkeeperSchemaStorage implements SchemaStorage {
 
     @Override
     public CompletableFuture<SchemaVersion> delete(String key) {
-        return deleteSchema(key).thenApply(LongSchemaVersion::new);
+        return deleteSchema(key).thenApply(version -> {
+            schemaCache.asMap().keySet().removeIf(cacheKey -> cacheKey.getLeft().equals(key));
+            return new LongSchemaVersion(version);
+        });
     }
 
     @NotNull
@@ -139,10 +152,14 @@ public class BookkeeperSchemaStorage implements SchemaStorage {
                     return completedFuture(null);
                 }
 
-                SchemaStorageFormat.SchemaLocator schemaLocator = locator.get().locator;
-                return readSchemaEntry(schemaLocator.getInfo().getPosition())
-                        .thenApply(entry -> new StoredSchema(entry.getSchemaData().toByteArray(),
-                                new LongSchemaVersion(schemaLocator.getInfo().getVersion())));
+                SchemaStorageFormat.IndexEntry info = locator.get().locator.getInfo();
+                StoredSchema cached = schemaCache.getIfPresent(Pair.of(schemaId, info.getVersion()));
+                if (nonNull(cached)) {
+                    return completedFuture(cached);
+                }
+
+                return readSchemaEntry(info.getPosition())
+                        .thenApply(entry -> cacheSchema(schemaId, info.getVersion(), entry));
             }).handleAsync((res, ex) -> {
                 if (log.isDebugEnabled()) {
                     log.debug("[{}] Get operation completed. res={} -- ex={}", schemaId, res, ex);
@@ -181,6 +198,11 @@ public class BookkeeperSchemaStorage implements SchemaStorage {
             log.debug("[{}] Get schema - version: {}", schemaId, version);
         }
 
+        StoredSchema cached = schemaCache.getIfPresent(Pair.of(schemaId, version));
+        if (nonNull(cached)) {
+            return completedFuture(cached);
+        }
+
         return getSchemaLocator(getSchemaPath(schemaId)).thenCompose(locator -> {
             if (log.isDebugEnabled()) {
                 log.debug("[{}] Get schema - version: {} - locator: {}", schemaId, version, locator);
@@ -196,15 +218,22 @@ public class BookkeeperSchemaStorage implements SchemaStorage {
             }
 
             return findSchemaEntryByVersion(schemaLocator.getIndexList(), version)
-                .thenApply(entry ->
-                    new StoredSchema(
-                        entry.getSchemaData().toByteArray(),
-                        new LongSchemaVersion(version)
-                    )
-                );
+                .thenApply(entry -> cacheSchema(schemaId, version, entry));
         });
     }
 
+    private StoredSchema cacheSchema(String schemaId, long version, SchemaStorageFormat.SchemaEntry entry) {
+        StoredSchema schema = new StoredSchema(entry.getSchemaData().toByteArray(), new LongSchemaVersion(version));
+        schemaCache.put(Pair.of(schemaId, version), schema);
+        return schema;
+    }
+
+    @VisibleForTesting
+    long getCachedSchemaCount() {
+        schemaCache.cleanUp();
+        return schemaCache.estimatedSize();
+    }
+
     @NotNull
     private CompletableFuture<Long> putSchema(String schemaId, byte[] data, byte[] hash) {
         return getSchemaLocator(getSchemaPath(schemaId)).thenCompose(optLocatorEntry -> {
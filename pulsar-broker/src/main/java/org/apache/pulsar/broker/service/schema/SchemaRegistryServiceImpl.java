@@ -19,9 +19,12 @@
 package org.apache.pulsar.broker.service.schema;
 
 import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
 import static java.util.concurrent.CompletableFuture.completedFuture;
 import static org.apache.pulsar.broker.service.schema.SchemaRegistryServiceImpl.Functions.toPairs;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.hash.HashCode;
 import com.google.common.hash.HashFunction;
@@ -44,15 +47,30 @@ import org.apache.pulsar.common.util.FutureUtil;
 
 public class SchemaRegistryServiceImpl implements SchemaRegistryService {
     private static HashFunction hashFunction = Hashing.sha256();
+    private static final int DEFAULT_HASH_INDEX_MAX_SCHEMAS = 10000;
     private final Map<SchemaType, SchemaCompatibilityCheck> compatibilityChecks;
     private final SchemaStorage schemaStorage;
     private final Clock clock;
 
-    @VisibleForTesting
-    SchemaRegistryServiceImpl(SchemaStorage schemaStorage, Map<SchemaType, SchemaCompatibilityCheck> compatibilityChecks, Clock clock) {
+    // Version of each schema already stored for a schema id, by hash of the schema data. It lets producers and
+    // consumers reconnecting with a known schema get its version without going through the schema storage. The
+    // index is only trusted while the latest version of the schema is the one it was built for, so that the versions
+    // added or deleted by other brokers are never missed
+    private final Cache<String, SchemaHashIndex> schemaHashIndex;
+
+    SchemaRegistryServiceImpl(SchemaStorage schemaStorage, Map<SchemaType, SchemaCompatibilityCheck> compatibilityChecks,
+                              Clock clock, int hashIndexMaxSchemas) {
         this.schemaStorage = schemaStorage;
         this.compatibilityChecks = compatibilityChecks;
         this.clock = clock;
+        this.schemaHashIndex = Caffeine.newBuilder()
+            .maximumSize(hashIndexMaxSchemas)
+            .build();
+    }
+
+    @VisibleForTesting
+    SchemaRegistryServiceImpl(SchemaStorage schemaStorage, Map<SchemaType, SchemaCompatibilityCheck> compatibilityChecks, Clock clock) {
+        this(schemaStorage, compatibilityChecks, clock, DEFAULT_HASH_INDEX_MAX_SCHEMAS);
     }
 
     @VisibleForTesting
@@ -85,11 +103,16 @@ public class SchemaRegistryServiceImpl implements SchemaRegistryService {
     @NotNull
     public CompletableFuture<SchemaVersion> putSchemaIfAbsent(String schemaId, SchemaData schema,
                                                               SchemaCompatibilityStrategy strategy) {
-        return getSchema(schemaId).thenApply(
-                (existingSchema) -> existingSchema == null || isCompatible(existingSchema, schema, strategy))
-            .thenCompose(isCompatible -> {
-                    if (isCompatible) {
-                        byte[] context = hashFunction.hashBytes(schema.getData()).asBytes();
+        return getSchema(schemaId).thenCompose(existingSchema -> {
+                    if (existingSchema == null || isCompatible(existingSchema, schema, strategy)) {
+                        HashCode hash = hashFunction.hashBytes(schema.getData());
+                        SchemaVersion latestVersion = isNull(existingSchema) ? null : existingSchema.version;
+                        SchemaVersion existingVersion = getVersionByHash(schemaId, latestVersion, hash);
+                        if (nonNull(existingVersion)) {
+                            return completedFuture(existingVersion);
+                        }
+
+                        byte[] context = hash.asBytes();
                         SchemaRegistryFormat.SchemaInfo info = SchemaRegistryFormat.SchemaInfo.newBuilder()
                             .setType(Functions.convertFromDomainType(schema.getType()))
                             .setSchema(ByteString.copyFrom(schema.getData()))
@@ -99,7 +122,10 @@ public class SchemaRegistryServiceImpl implements SchemaRegistryService {
                             .setTimestamp(clock.millis())
                             .addAllProps(toPairs(schema.getProps()))
                             .build();
-                        return schemaStorage.put(schemaId, info.toByteArray(), context);
+                        return schemaStorage.put(schemaId, info.toByteArray(), context).thenApply(version -> {
+                            indexVersion(schemaId, latestVersion, hash, version);
+                            return version;
+                        });
                     } else {
                         return FutureUtil.failedFuture(new IncompatibleSchemaException());
                     }
@@ -110,7 +136,10 @@ public class SchemaRegistryServiceImpl implements SchemaRegistryService {
     @NotNull
     public CompletableFuture<SchemaVersion> deleteSchema(String schemaId, String user) {
         byte[] deletedEntry = deleted(schemaId, user).toByteArray();
-        return schemaStorage.put(schemaId, deletedEntry, new byte[]{});
+        schemaHashIndex.invalidate(schemaId);
+        return schemaStorage.put(schemaId, deletedEntry, new byte[]{})
+            // Also drop the versions indexed while the delete was in progress
+            .whenComplete((version, ex) -> schemaHashIndex.invalidate(schemaId));
     }
 
     @Override
@@ -129,6 +158,40 @@ public class SchemaRegistryServiceImpl implements SchemaRegistryService {
         schemaStorage.close();
     }
 
+    private SchemaVersion getVersionByHash(String schemaId, SchemaVersion latestVersion, HashCode hash) {
+        SchemaHashIndex index = schemaHashIndex.getIfPresent(schemaId);
+        if (isNull(index)) {
+            return null;
+        } else if (!index.latestVersion.equals(latestVersion)) {
+            // The schema was updated or deleted through another broker
+            schemaHashIndex.asMap().remove(schemaId, index);
+            return null;
+        }
+        return index.versions.get(hash);
+    }
+
+    /**
+     * Index the version returned by the schema storage for the hash of a schema. The existing index is extended only
+     * if nobody else updated the schema since it was built, otherwise a new index is started with this version.
+     */
+    private void indexVersion(String schemaId, SchemaVersion latestVersion, HashCode hash, SchemaVersion version) {
+        if (!(version instanceof LongSchemaVersion)
+                || (nonNull(latestVersion) && !(latestVersion instanceof LongSchemaVersion))) {
+            return;
+        }
+        long previous = isNull(latestVersion) ? -1 : ((LongSchemaVersion) latestVersion).getVersion();
+        long stored = ((LongSchemaVersion) version).getVersion();
+        LongSchemaVersion newLatestVersion = new LongSchemaVersion(Math.max(previous, stored));
+        schemaHashIndex.asMap().compute(schemaId, (key, index) -> {
+            Map<HashCode, SchemaVersion> versions = new HashMap<>();
+            if (nonNull(index) && index.latestVersion.equals(latestVersion) && stored <= previous + 1) {
+                versions.putAll(index.versions);
+            }
+            versions.put(hash, version);
+            return new SchemaHashIndex(newLatestVersion, versions);
+        });
+    }
+
     private SchemaRegistryFormat.SchemaInfo deleted(String schemaId, String user) {
         return SchemaRegistryFormat.SchemaInfo.newBuilder()
             .setSchemaId(schemaId)
@@ -155,6 +218,16 @@ public class SchemaRegistryServiceImpl implements SchemaRegistryService {
                 (existingSchema) -> existingSchema != null && isCompatible(existingSchema, schema, strategy));
     }
 
+    private static class SchemaHashIndex {
+        final SchemaVersion latestVersion;
+        final Map<HashCode, SchemaVersion> versions;
+
+        SchemaHashIndex(SchemaVersion latestVersion, Map<HashCode, SchemaVersion> versions) {
+            this.latestVersion = latestVersion;
+            this.versions = versions;
+        }
+    }
+
     interface Functions {
         static SchemaType convertToDomainType(SchemaRegistryFormat.SchemaInfo.SchemaType type) {
             switch (type) {
@@ -23,6 +23,7 @@ import java.io.OutputStream;
 import java.util.Enumeration;
 
 import org.apache.pulsar.broker.PulsarService;
+import org.apache.pulsar.broker.service.InflightMemoryLimiter;
 import static org.apache.pulsar.common.stats.JvmMetrics.getJvmDirectMemoryUsed;
 import org.apache.pulsar.common.util.SimpleTextOutputStream;
 
@@ -70,6 +71,8 @@ public class PrometheusMetricsGenerator {
 
             generateSystemMetrics(stream, pulsar.getConfiguration().getClusterName());
 
+            generateBrokerInflightMemoryMetrics(pulsar, stream);
+
             NamespaceStatsAggregator.generate(pulsar, includeTopicMetrics, includeConsumerMetrics, stream);
 
             FunctionsStatsGenerator.generate(pulsar.getWorkerService(),
@@ -109,6 +112,30 @@ public class PrometheusMetricsGenerator {
         }
     }
 
+    private static void generateBrokerInflightMemoryMetrics(PulsarService pulsar, SimpleTextOutputStream stream) {
+        if (pulsar.getBrokerService() == null) {
+            return;
+        }
+        InflightMemoryLimiter limiter = pulsar.getBrokerService().getInflightMemoryLimiter();
+        String cluster = pulsar.getConfiguration().getClusterName();
+        metric(stream, cluster, "pulsar_broker_inflight_memory_max_bytes", limiter.getMaxInflightBytes());
+        metric(stream, cluster, "pulsar_broker_inflight_publish_memory_bytes", limiter.getPublishInflightBytes());
+        metric(stream, cluster, "pulsar_broker_inflight_dispatch_memory_bytes", limiter.getDispatchInflightBytes());
+        metric(stream, cluster, "pulsar_broker_inflight_memory_paused_connections", limiter.getPausedPublishersCount());
+        metric(stream, cluster, "pulsar_broker_inflight_memory_paused_dispatchers",
+                limiter.getPausedDispatchersCount());
+        metric(stream, cluster, "pulsar_broker_inflight_memory_publish_limited_count",
+                limiter.getPublishLimitedTimes());
+        metric(stream, cluster, "pulsar_broker_inflight_memory_dispatch_limited_count",
+                limiter.getDispatchLimitedTimes());
+    }
+
+    private static void metric(SimpleTextOutputStream stream, String cluster, String name, long value) {
+        TopicStats.metricType(stream, name);
+        stream.write(name).write("{cluster=\"").write(cluster).write("\"} ");
+        stream.write(value).write(' ').write(System.currentTimeMillis()).write('\n');
+    }
+
     static String getTypeStr(Collector.Type type) {
         switch (type) {
         case COUNTER:
@@ -32,9 +32,24 @@ public interface RawReader {
      */
 
     public static CompletableFuture<RawReader> create(PulsarClient client, String topic, String subscription) {
+        return create(client, topic, subscription, true);
+    }
+
+    /**
+     * Create a raw reader for a topic.
+     *
+     * @param seekToEarliest whether to read the topic from the beginning, or to resume reading after the last
+     *                       message acknowledged on the subscription
+     */
+    public static CompletableFuture<RawReader> create(PulsarClient client, String topic, String subscription,
+                                                      boolean seekToEarliest) {
         CompletableFuture<Consumer<byte[]>> future = new CompletableFuture<>();
         RawReader r = new RawReaderImpl((PulsarClientImpl)client, topic, subscription, future);
-        return future.thenCompose((consumer) -> r.seekAsync(MessageId.earliest)).thenApply((ignore) -> r);
+        if (seekToEarliest) {
+            return future.thenCompose((consumer) -> r.seekAsync(MessageId.earliest)).thenApply((ignore) -> r);
+        } else {
+            return future.thenApply((consumer) -> r);
+        }
     }
 
     /**
@@ -18,13 +18,21 @@
  */
 package org.apache.pulsar.compaction;
 
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import org.apache.bookkeeper.mledger.ManagedCursor;
 import org.apache.bookkeeper.mledger.Position;
 import org.apache.bookkeeper.mledger.AsyncCallbacks.ReadEntriesCallback;
+import org.apache.commons.lang3.tuple.Pair;
 
 public interface CompactedTopic {
     CompletableFuture<?> newCompactedLedger(Position p, long compactedLedgerId);
     void asyncReadEntriesOrWait(ManagedCursor cursor, int numberOfEntriesToRead,
                                 ReadEntriesCallback callback, Object ctx);
+
+    /**
+     * @return the id of the current compacted ledger and the position up to which the topic was compacted in it,
+     *         if the topic was ever compacted
+     */
+    Optional<Pair<Long, Position>> getCompactedLedgerAndHorizon();
 }
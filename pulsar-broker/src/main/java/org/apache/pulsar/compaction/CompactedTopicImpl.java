@@ -27,6 +27,7 @@ import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 
 import org.apache.bookkeeper.client.BookKeeper;
@@ -40,6 +41,7 @@ import org.apache.bookkeeper.mledger.Position;
 import org.apache.bookkeeper.mledger.AsyncCallbacks.ReadEntriesCallback;
 import org.apache.bookkeeper.mledger.impl.EntryImpl;
 import org.apache.bookkeeper.mledger.impl.PositionImpl;
+import org.apache.commons.lang3.tuple.Pair;
 import org.apache.pulsar.client.api.RawMessage;
 import org.apache.pulsar.client.impl.RawMessageImpl;
 import org.apache.pulsar.common.api.proto.PulsarApi.MessageIdData;
@@ -54,6 +56,7 @@ public class CompactedTopicImpl implements CompactedTopic {
     private final BookKeeper bk;
 
     private PositionImpl compactionHorizon = null;
+    private long compactedLedgerId = -1;
     private CompletableFuture<CompactedTopicContext> compactedTopicContext = null;
 
     public CompactedTopicImpl(BookKeeper bk) {
@@ -64,6 +67,7 @@ public class CompactedTopicImpl implements CompactedTopic {
     public CompletableFuture<?> newCompactedLedger(Position p, long compactedLedgerId) {
         synchronized (this) {
             compactionHorizon = (PositionImpl)p;
+            this.compactedLedgerId = compactedLedgerId;
 
             CompletableFuture<CompactedTopicContext> previousContext = compactedTopicContext;
             compactedTopicContext = openCompactedLedger(bk, compactedLedgerId);
@@ -114,6 +118,15 @@ public class CompactedTopicImpl implements CompactedTopic {
         }
     }
 
+    @Override
+    public synchronized Optional<Pair<Long, Position>> getCompactedLedgerAndHorizon() {
+        if (compactionHorizon == null) {
+            return Optional.empty();
+        } else {
+            return Optional.of(Pair.of(compactedLedgerId, compactionHorizon));
+        }
+    }
+
     static CompletableFuture<Long> findStartPoint(PositionImpl p,
                                                   long lastEntryId,
                                                   AsyncLoadingCache<Long,MessageIdData> cache) {
@@ -0,0 +1,346 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.compaction;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import io.netty.util.internal.PlatformDependent;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Index of the latest position of each key in a topic, used by the compactor.
+ *
+ * <p>The index is an open addressing hash table kept outside of the java heap, so that compacting topics with a
+ * very large number of keys doesn't put pressure on the broker heap. Keys are not stored, only their 128-bit murmur3
+ * hash, next to the ledger id, entry id and batch index of the latest message for the key. Removed keys are kept as
+ * tombstones, so that the phase two of the compaction can tell them apart from the keys it has never seen.
+ *
+ * <p>The table is allocated in direct memory until <code>maxMemoryBytes</code> is reached, after which the new
+ * segments are memory mapped from temporary files in the spill directory, leaving the OS to page them in and out.
+ *
+ * <p>The index is meant to be used by a single compaction at a time. The methods are synchronized only to be safe
+ * against a late access after the index was closed.
+ */
+public class CompactionKeyIndex implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(CompactionKeyIndex.class);
+
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    // hash (16 bytes) + ledgerId (8 bytes) + entryId (8 bytes) + batchIndex (4 bytes) + padding
+    static final int SLOT_SIZE = 40;
+    private static final int HASH_SIZE = 16;
+    private static final int LEDGER_ID_OFFSET = 16;
+    private static final int ENTRY_ID_OFFSET = 24;
+    private static final int BATCH_INDEX_OFFSET = 32;
+
+    private static final int MAX_SEGMENT_SLOTS = 1 << 20;
+    private static final int DEFAULT_INITIAL_CAPACITY = 1 << 14;
+    private static final long TOMBSTONE = -1;
+
+    private final long maxMemoryBytes;
+    private final File spillDirectory;
+
+    private ByteBuffer[] segments;
+    private boolean[] spilledSegments;
+    private int segmentShift;
+    private int segmentMask;
+    private long capacity;
+
+    // Number of used slots, including tombstones
+    private long usedSlots = 0;
+    private long size = 0;
+
+    private long memoryBytes = 0;
+    private long spilledBytes = 0;
+    private boolean closed = false;
+
+    public CompactionKeyIndex(long maxMemoryBytes, File spillDirectory) {
+        this(maxMemoryBytes, spillDirectory, DEFAULT_INITIAL_CAPACITY);
+    }
+
+    CompactionKeyIndex(long maxMemoryBytes, File spillDirectory, int initialCapacity) {
+        checkArgument(maxMemoryBytes >= 0);
+        checkArgument(initialCapacity > 0);
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.spillDirectory = spillDirectory;
+        allocate(Long.highestOneBit(initialCapacity * 2L - 1));
+    }
+
+    /**
+     * Records the position of the latest message for the key.
+     */
+    public synchronized void put(String key, long ledgerId, long entryId, int batchIndex) {
+        checkArgument(ledgerId >= 0);
+        update(key, ledgerId, entryId, batchIndex);
+    }
+
+    /**
+     * Marks the key as deleted.
+     */
+    public synchronized void remove(String key) {
+        update(key, TOMBSTONE, -1, -1);
+    }
+
+    /**
+     * Checks whether the key was either put or removed in the index.
+     */
+    public synchronized boolean contains(String key) {
+        checkState(!closed, "Compaction key index is already closed");
+        long slot = findSlot(HASH.hashString(key, UTF_8).asBytes());
+        return !isEmpty(segment(slot), offset(slot));
+    }
+
+    /**
+     * Checks whether the message at the given position is the latest message for the key.
+     */
+    public synchronized boolean isLatest(String key, long ledgerId, long entryId, int batchIndex) {
+        checkState(!closed, "Compaction key index is already closed");
+        long slot = findSlot(HASH.hashString(key, UTF_8).asBytes());
+        ByteBuffer segment = segment(slot);
+        int offset = offset(slot);
+        return !isEmpty(segment, offset) && ledgerId != TOMBSTONE
+                && segment.getLong(offset + LEDGER_ID_OFFSET) == ledgerId
+                && segment.getLong(offset + ENTRY_ID_OFFSET) == entryId
+                && segment.getInt(offset + BATCH_INDEX_OFFSET) == batchIndex;
+    }
+
+    /**
+     * @return the number of keys that are not deleted
+     */
+    public synchronized long size() {
+        return size;
+    }
+
+    public synchronized long capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the bytes allocated in direct memory
+     */
+    public synchronized long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    /**
+     * @return the bytes memory mapped from the spill directory
+     */
+    public synchronized long getSpilledBytes() {
+        return spilledBytes;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        free(segments, spilledSegments);
+        segments = null;
+        spilledSegments = null;
+    }
+
+    private void update(String key, long ledgerId, long entryId, int batchIndex) {
+        checkState(!closed, "Compaction key index is already closed");
+        if ((usedSlots + 1) * 3 > capacity * 2) {
+            resize();
+        }
+
+        byte[] hash = HASH.hashString(key, UTF_8).asBytes();
+        long slot = findSlot(hash);
+        ByteBuffer segment = segment(slot);
+        int offset = offset(slot);
+        if (isEmpty(segment, offset)) {
+            for (int i = 0; i < HASH_SIZE; i++) {
+                segment.put(offset + i, hash[i]);
+            }
+            ++usedSlots;
+        } else if (segment.getLong(offset + LEDGER_ID_OFFSET) != TOMBSTONE) {
+            --size;
+        }
+
+        writePosition(segment, offset, ledgerId, entryId, batchIndex);
+        if (ledgerId != TOMBSTONE) {
+            ++size;
+        }
+    }
+
+    /**
+     * Finds the slot holding the hash, or the empty slot where it should be inserted.
+     */
+    private long findSlot(byte[] hash) {
+        if (allZeros(hash)) {
+            // An all-zero hash marks an empty slot
+            hash[HASH_SIZE - 1] = 1;
+        }
+        long slot = ByteBuffer.wrap(hash).getLong() & (capacity - 1);
+        while (true) {
+            ByteBuffer segment = segment(slot);
+            int offset = offset(slot);
+            if (isEmpty(segment, offset) || hashEquals(segment, offset, hash)) {
+                return slot;
+            }
+            slot = (slot + 1) & (capacity - 1);
+        }
+    }
+
+    private void resize() {
+        ByteBuffer[] oldSegments = segments;
+        boolean[] oldSpilledSegments = spilledSegments;
+        int oldSegmentShift = segmentShift;
+        int oldSegmentMask = segmentMask;
+        long oldCapacity = capacity;
+        allocate(capacity * 2);
+
+        byte[] hash = new byte[HASH_SIZE];
+        for (long oldSlot = 0; oldSlot < oldCapacity; oldSlot++) {
+            ByteBuffer oldSegment = oldSegments[(int) (oldSlot >>> oldSegmentShift)];
+            int oldOffset = (int) (oldSlot & oldSegmentMask) * SLOT_SIZE;
+            if (isEmpty(oldSegment, oldOffset)) {
+                continue;
+            }
+            for (int i = 0; i < HASH_SIZE; i++) {
+                hash[i] = oldSegment.get(oldOffset + i);
+            }
+
+            long slot = findSlot(hash);
+            ByteBuffer segment = segment(slot);
+            int offset = offset(slot);
+            for (int i = 0; i < SLOT_SIZE; i++) {
+                segment.put(offset + i, oldSegment.get(oldOffset + i));
+            }
+        }
+
+        free(oldSegments, oldSpilledSegments);
+        log.info("Resized compaction key index from {} to {} slots, {} bytes in memory, {} bytes spilled to disk",
+                oldCapacity, capacity, memoryBytes, spilledBytes);
+    }
+
+    /**
+     * Allocates a new table. The budget only applies to the new table: on resize, the old table is freed right after
+     * its slots are copied.
+     */
+    private void allocate(long newCapacity) {
+        int segmentSlots = (int) Math.min(newCapacity, MAX_SEGMENT_SLOTS);
+        int segmentBytes = segmentSlots * SLOT_SIZE;
+        ByteBuffer[] newSegments = new ByteBuffer[(int) (newCapacity / segmentSlots)];
+        boolean[] newSpilledSegments = new boolean[newSegments.length];
+        long newMemoryBytes = 0;
+        try {
+            for (int i = 0; i < newSegments.length; i++) {
+                if (newMemoryBytes + segmentBytes <= maxMemoryBytes) {
+                    // Direct buffers are zeroed on allocation
+                    newSegments[i] = ByteBuffer.allocateDirect(segmentBytes);
+                    newMemoryBytes += segmentBytes;
+                    memoryBytes += segmentBytes;
+                } else {
+                    // The extension of a file is filled with zeros
+                    newSegments[i] = mapSpillFile(segmentBytes);
+                    newSpilledSegments[i] = true;
+                    spilledBytes += segmentBytes;
+                }
+            }
+        } catch (Throwable t) {
+            free(newSegments, newSpilledSegments);
+            throw t;
+        }
+
+        this.segments = newSegments;
+        this.spilledSegments = newSpilledSegments;
+        this.segmentShift = Integer.numberOfTrailingZeros(segmentSlots);
+        this.segmentMask = segmentSlots - 1;
+        this.capacity = newCapacity;
+    }
+
+    private ByteBuffer mapSpillFile(int bytes) {
+        try {
+            File file = File.createTempFile("compaction-key-index-", ".tmp", spillDirectory);
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(bytes);
+                // The mapping stays valid after the channel is closed
+                return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+            } finally {
+                if (!file.delete()) {
+                    file.deleteOnExit();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to spill compaction key index to " + spillDirectory, e);
+        }
+    }
+
+    private void free(ByteBuffer[] segments, boolean[] spilledSegments) {
+        for (int i = 0; i < segments.length; i++) {
+            if (segments[i] != null) {
+                if (spilledSegments[i]) {
+                    spilledBytes -= segments[i].capacity();
+                } else {
+                    memoryBytes -= segments[i].capacity();
+                }
+                PlatformDependent.freeDirectBuffer(segments[i]);
+            }
+        }
+    }
+
+    private ByteBuffer segment(long slot) {
+        return segments[(int) (slot >>> segmentShift)];
+    }
+
+    private int offset(long slot) {
+        return (int) (slot & segmentMask) * SLOT_SIZE;
+    }
+
+    private static boolean isEmpty(ByteBuffer segment, int offset) {
+        return segment.getLong(offset) == 0 && segment.getLong(offset + 8) == 0;
+    }
+
+    private static boolean hashEquals(ByteBuffer segment, int offset, byte[] hash) {
+        ByteBuffer wrapped = ByteBuffer.wrap(hash);
+        return segment.getLong(offset) == wrapped.getLong(0) && segment.getLong(offset + 8) == wrapped.getLong(8);
+    }
+
+    private static boolean allZeros(byte[] hash) {
+        for (byte b : hash) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void writePosition(ByteBuffer segment, int offset, long ledgerId, long entryId, int batchIndex) {
+        segment.putLong(offset + LEDGER_ID_OFFSET, ledgerId);
+        segment.putLong(offset + ENTRY_ID_OFFSET, entryId);
+        segment.putInt(offset + BATCH_INDEX_OFFSET, batchIndex);
+    }
+}
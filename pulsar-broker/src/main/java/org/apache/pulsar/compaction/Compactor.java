@@ -20,10 +20,14 @@ package org.apache.pulsar.compaction;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Function;
 
 import org.apache.bookkeeper.client.BookKeeper;
+import org.apache.bookkeeper.mledger.Position;
+import org.apache.commons.lang3.tuple.Pair;
 
 import org.apache.pulsar.broker.ServiceConfiguration;
 import org.apache.pulsar.client.api.PulsarClient;
@@ -46,25 +50,43 @@ public abstract class Compactor {
     protected final ScheduledExecutorService scheduler;
     private final PulsarClient pulsar;
     private final BookKeeper bk;
+    private final Function<String, Optional<Pair<Long, Position>>> compactedLedgerLookup;
 
     public Compactor(ServiceConfiguration conf,
                      PulsarClient pulsar,
                      BookKeeper bk,
                      ScheduledExecutorService scheduler) {
+        this(conf, pulsar, bk, scheduler, (topic) -> Optional.empty());
+    }
+
+    /**
+     * @param compactedLedgerLookup returns the current compacted ledger of a topic and its compaction horizon, so
+     *                              that the topic can be compacted incrementally. See
+     *                              {@link CompactedTopic#getCompactedLedgerAndHorizon()}
+     */
+    public Compactor(ServiceConfiguration conf,
+                     PulsarClient pulsar,
+                     BookKeeper bk,
+                     ScheduledExecutorService scheduler,
+                     Function<String, Optional<Pair<Long, Position>>> compactedLedgerLookup) {
         this.conf = conf;
         this.scheduler = scheduler;
         this.pulsar = pulsar;
         this.bk = bk;
+        this.compactedLedgerLookup = compactedLedgerLookup;
     }
 
     public CompletableFuture<Long> compact(String topic) {
-        return RawReader.create(pulsar, topic, COMPACTION_SUBSCRIPTION).thenComposeAsync(
-                this::compactAndCloseReader, scheduler);
+        Optional<Pair<Long, Position>> compactedLedger = compactedLedgerLookup.apply(topic);
+        // When the topic was already compacted, only the messages after the compaction horizon need to be read
+        return RawReader.create(pulsar, topic, COMPACTION_SUBSCRIPTION, !compactedLedger.isPresent())
+                .thenComposeAsync((reader) -> compactAndCloseReader(reader, compactedLedger), scheduler);
     }
 
-    private CompletableFuture<Long> compactAndCloseReader(RawReader reader) {
+    private CompletableFuture<Long> compactAndCloseReader(RawReader reader,
+                                                          Optional<Pair<Long, Position>> compactedLedger) {
         CompletableFuture<Long> promise = new CompletableFuture<>();
-        doCompaction(reader, bk).whenComplete(
+        doCompaction(reader, compactedLedger, bk).whenComplete(
                 (ledgerId, exception) -> {
                     reader.closeAsync().whenComplete((v, exception2) -> {
                             if (exception2 != null) {
@@ -81,6 +103,15 @@ public abstract class Compactor {
         return promise;
     }
 
-    protected abstract CompletableFuture<Long> doCompaction(RawReader reader, BookKeeper bk);
+    /**
+     * Compacts the topic read by the reader.
+     *
+     * @param compactedLedger the current compacted ledger of the topic and the position up to which the topic was
+     *                        compacted in it. When present, the reader resumes after the compaction horizon rather
+     *                        than reading the topic from the beginning
+     */
+    protected abstract CompletableFuture<Long> doCompaction(RawReader reader,
+                                                            Optional<Pair<Long, Position>> compactedLedger,
+                                                            BookKeeper bk);
 }
 
@@ -23,29 +23,42 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 import com.google.common.collect.ImmutableMap;
 
 import io.netty.buffer.ByteBuf;
+import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
 
+import java.io.File;
 import java.io.IOException;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.ArrayDeque;
+import java.util.Enumeration;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
 
 import org.apache.bookkeeper.client.BKException;
 import org.apache.bookkeeper.client.BookKeeper;
+import org.apache.bookkeeper.client.LedgerEntry;
 import org.apache.bookkeeper.client.LedgerHandle;
+import org.apache.bookkeeper.mledger.Position;
+import org.apache.bookkeeper.mledger.impl.PositionImpl;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.pulsar.broker.ServiceConfiguration;
 import org.apache.pulsar.client.api.MessageId;
 import org.apache.pulsar.client.api.PulsarClient;
 import org.apache.pulsar.client.api.RawMessage;
 import org.apache.pulsar.client.api.RawReader;
+import org.apache.pulsar.client.impl.BatchMessageIdImpl;
+import org.apache.pulsar.client.impl.MessageIdImpl;
 import org.apache.pulsar.client.impl.RawBatchConverter;
+import org.apache.pulsar.client.impl.RawMessageImpl;
 import org.apache.pulsar.common.api.Commands;
 import org.apache.pulsar.common.api.proto.PulsarApi.CompressionType;
 import org.apache.pulsar.common.api.proto.PulsarApi.MessageMetadata;
@@ -60,11 +73,50 @@ import org.slf4j.LoggerFactory;
  * <p>The two passes are required to avoid holding the payloads of each of
  * the latest values in memory, as the payload can be many orders of
  * magnitude larger than a message id.
+ *
+ * <p>The latest position of each key is kept in a {@link CompactionKeyIndex}, outside of the java heap, and both
+ * passes keep several reads outstanding on the raw reader so that the processing of a message overlaps with the
+ * fetching of the next ones.
 */
 public class TwoPhaseCompactor extends Compactor {
     private static final Logger log = LoggerFactory.getLogger(TwoPhaseCompactor.class);
     private static final int MAX_OUTSTANDING = 500;
     private static final String COMPACTED_TOPIC_LEDGER_PROPERTY = "CompactedTopicLedger";
+    private static final int READ_AHEAD = 100;
+    private static final int COPY_BATCH_SIZE = 100;
+
+    private static final Set<CompactionKeyIndex> activeKeyIndexes = ConcurrentHashMap.newKeySet();
+
+    private static final Counter messagesRead = Counter.build("pulsar_compaction_messages_read",
+            "Messages read by the compactor in both phases").register();
+    private static final Counter messagesWritten = Counter.build("pulsar_compaction_messages_written",
+            "Messages written by the compactor to the compacted ledgers").register();
+
+    static {
+        Gauge.build("pulsar_compaction_key_index_keys", "Keys in the indexes of the running compactions").create()
+                .setChild(new Gauge.Child() {
+                    @Override
+                    public double get() {
+                        return activeKeyIndexes.stream().mapToLong(CompactionKeyIndex::size).sum();
+                    }
+                }).register();
+        Gauge.build("pulsar_compaction_key_index_memory_bytes",
+                "Direct memory used by the indexes of the running compactions").create()
+                .setChild(new Gauge.Child() {
+                    @Override
+                    public double get() {
+                        return activeKeyIndexes.stream().mapToLong(CompactionKeyIndex::getMemoryBytes).sum();
+                    }
+                }).register();
+        Gauge.build("pulsar_compaction_key_index_spilled_bytes",
+                "Bytes spilled to disk by the indexes of the running compactions").create()
+                .setChild(new Gauge.Child() {
+                    @Override
+                    public double get() {
+                        return activeKeyIndexes.stream().mapToLong(CompactionKeyIndex::getSpilledBytes).sum();
+                    }
+                }).register();
+    }
 
     public TwoPhaseCompactor(ServiceConfiguration conf,
                              PulsarClient pulsar,
@@ -73,41 +125,76 @@ public class TwoPhaseCompactor extends Compactor {
         super(conf, pulsar, bk, scheduler);
     }
 
+    public TwoPhaseCompactor(ServiceConfiguration conf,
+                             PulsarClient pulsar,
+                             BookKeeper bk,
+                             ScheduledExecutorService scheduler,
+                             Function<String, Optional<Pair<Long, Position>>> compactedLedgerLookup) {
+        super(conf, pulsar, bk, scheduler, compactedLedgerLookup);
+    }
+
+    /**
+     * When the topic was already compacted, only the messages after the compaction horizon are indexed in the phase
+     * one. The phase two then copies the previous compacted ledger, leaving out the keys which were updated or
+     * deleted after the horizon, followed by the latest values of the new messages.
+     */
     @Override
-    protected CompletableFuture<Long> doCompaction(RawReader reader, BookKeeper bk) {
-        return phaseOne(reader).thenCompose(
-                (r) -> phaseTwo(reader, r.from, r.to, r.lastReadId, r.latestForKey, bk));
+    protected CompletableFuture<Long> doCompaction(RawReader reader, Optional<Pair<Long, Position>> compactedLedger,
+                                                   BookKeeper bk) {
+        Optional<Long> compactedLedgerId = compactedLedger.map(Pair::getLeft);
+        Optional<Position> horizon = compactedLedger.map(Pair::getRight);
+        return reader.getLastMessageIdAsync().thenCompose((lastMessageId) -> {
+            if (horizon.isPresent() && !isAfter(lastMessageId, horizon.get())) {
+                log.info("Nothing to compact for {} after {}, keeping compacted ledger {}",
+                         reader.getTopic(), horizon.get(), compactedLedgerId.get());
+                return CompletableFuture.completedFuture(compactedLedgerId.get());
+            }
+
+            CompactionKeyIndex latestForKey = createKeyIndex();
+            CompletableFuture<Long> promise = phaseOne(reader, lastMessageId, horizon, latestForKey).thenCompose(
+                    (r) -> phaseTwo(reader, r.from, r.to, r.lastReadId, r.latestForKey, compactedLedgerId, bk));
+            promise.whenComplete((res, exception) -> {
+                activeKeyIndexes.remove(latestForKey);
+                latestForKey.close();
+            });
+            return promise;
+        });
     }
 
-    private CompletableFuture<PhaseOneResult> phaseOne(RawReader reader) {
-        Map<String,MessageId> latestForKey = new HashMap<>();
+    private CompactionKeyIndex createKeyIndex() {
+        String spillDirectory = conf.getCompactionKeyIndexSpillDirectory();
+        CompactionKeyIndex index = new CompactionKeyIndex(conf.getCompactionKeyIndexMaxMemoryMB() * 1024L * 1024L,
+                spillDirectory == null || spillDirectory.isEmpty() ? null : new File(spillDirectory));
+        activeKeyIndexes.add(index);
+        return index;
+    }
+
+    private CompletableFuture<PhaseOneResult> phaseOne(RawReader reader, MessageId lastMessageId,
+                                                       Optional<Position> horizon, CompactionKeyIndex latestForKey) {
         CompletableFuture<PhaseOneResult> loopPromise = new CompletableFuture<>();
 
-        reader.getLastMessageIdAsync().whenComplete(
-                (lastMessageId, exception) -> {
-                    if (exception != null) {
-                        loopPromise.completeExceptionally(exception);
-                    } else {
-                        log.info("Commencing phase one of compaction for {}, reading to {}",
-                                 reader.getTopic(), lastMessageId);
-                        phaseOneLoop(reader, Optional.empty(), Optional.empty(), lastMessageId, latestForKey,
-                                loopPromise);
-                    }
-                });
+        log.info("Commencing phase one of compaction for {}, reading from {} to {}",
+                 reader.getTopic(), horizon.map(Object::toString).orElse("earliest"), lastMessageId);
+        phaseOneLoop(reader, new ReadAhead(reader), Optional.empty(), Optional.empty(),
+                lastMessageId, horizon, latestForKey, loopPromise);
         return loopPromise;
     }
 
     private void phaseOneLoop(RawReader reader,
+                              ReadAhead readAhead,
                               Optional<MessageId> firstMessageId,
                               Optional<MessageId> toMessageId,
                               MessageId lastMessageId,
-                              Map<String,MessageId> latestForKey,
+                              Optional<Position> horizon,
+                              CompactionKeyIndex latestForKey,
                               CompletableFuture<PhaseOneResult> loopPromise) {
         if (loopPromise.isDone()) {
             return;
         }
-        CompletableFuture<RawMessage> future = reader.readNextAsync();
-        scheduleTimeout(future);
+        CompletableFuture<RawMessage> future = readAhead.next();
+        if (!future.isDone()) {
+            scheduleTimeout(future);
+        }
         future.whenCompleteAsync(
                 (m, exception) -> {
                     try {
@@ -115,12 +202,19 @@ public class TwoPhaseCompactor extends Compactor {
                             loopPromise.completeExceptionally(exception);
                             return;
                         }
+                        messagesRead.inc();
                         MessageId id = m.getMessageId();
                         boolean deletedMessage = false;
-                        if (RawBatchConverter.isReadableBatch(m)) {
+                        if (horizon.isPresent() && !isAfter(id, horizon.get())) {
+                            // The message is already accounted for in the compacted ledger, this only happens if
+                            // the compaction subscription was rewound by a failed compaction
+                            phaseOneLoop(reader, readAhead, firstMessageId, toMessageId, lastMessageId, horizon,
+                                         latestForKey, loopPromise);
+                            return;
+                        } else if (RawBatchConverter.isReadableBatch(m)) {
                             try {
                                 RawBatchConverter.extractIdsAndKeys(m)
-                                    .forEach(e -> latestForKey.put(e.getRight(), e.getLeft()));
+                                    .forEach(e -> put(latestForKey, e.getRight(), e.getLeft()));
                             } catch (IOException ioe) {
                                 log.info("Error decoding batch for message {}. Whole batch will be included in output",
                                          id, ioe);
@@ -129,7 +223,7 @@ public class TwoPhaseCompactor extends Compactor {
                             Pair<String,Integer> keyAndSize = extractKeyAndSize(m);
                             if (keyAndSize != null) {
                                 if(keyAndSize.getRight() > 0) {
-                                    latestForKey.put(keyAndSize.getLeft(), id);    
+                                    put(latestForKey, keyAndSize.getLeft(), id);
                                 } else {
                                     deletedMessage = true;
                                     latestForKey.remove(keyAndSize.getLeft());
@@ -140,12 +234,16 @@ public class TwoPhaseCompactor extends Compactor {
                         MessageId first = firstMessageId.orElse(deletedMessage ? null : id);
                         MessageId to = deletedMessage ? toMessageId.orElse(null) : id;
                         if (id.compareTo(lastMessageId) == 0) {
+                            readAhead.discard();
+                            log.info("Completed phase one of compaction for {}, found {} keys, index uses {} bytes"
+                                    + " of memory and {} bytes on disk", reader.getTopic(), latestForKey.size(),
+                                    latestForKey.getMemoryBytes(), latestForKey.getSpilledBytes());
                             loopPromise.complete(new PhaseOneResult(first, to, lastMessageId, latestForKey));
                         } else {
-                            phaseOneLoop(reader,
+                            phaseOneLoop(reader, readAhead,
                                          Optional.ofNullable(first),
                                          Optional.ofNullable(to),
-                                         lastMessageId,
+                                         lastMessageId, horizon,
                                          latestForKey, loopPromise);
                         }
                     } finally {
@@ -164,26 +262,36 @@ public class TwoPhaseCompactor extends Compactor {
     }
 
     private CompletableFuture<Long> phaseTwo(RawReader reader, MessageId from, MessageId to, MessageId lastReadId,
-            Map<String, MessageId> latestForKey, BookKeeper bk) {
+            CompactionKeyIndex latestForKey, Optional<Long> compactedLedgerId, BookKeeper bk) {
+        // When merging with a compacted ledger, all the messages after the horizon may be deletions
         Map<String, byte[]> metadata = ImmutableMap.of("compactedTopic", reader.getTopic().getBytes(UTF_8),
-                "compactedTo", to.toByteArray());
+                "compactedTo", (to != null ? to : lastReadId).toByteArray());
         return createLedger(bk, metadata).thenCompose((ledger) -> {
-            log.info("Commencing phase two of compaction for {}, from {} to {}, compacting {} keys to ledger {}",
-                    reader.getTopic(), from, to, latestForKey.size(), ledger.getId());
-            return phaseTwoSeekThenLoop(reader, from, to, lastReadId, latestForKey, bk, ledger);
+            log.info("Commencing phase two of compaction for {}, from {} to {}, compacting {} keys{} to ledger {}",
+                    reader.getTopic(), from, to, latestForKey.size(),
+                    compactedLedgerId.map((id) -> " on top of compacted ledger " + id).orElse(""), ledger.getId());
+            return phaseTwoSeekThenLoop(reader, from, to, lastReadId, latestForKey, compactedLedgerId, bk, ledger);
         });
     }
 
     private CompletableFuture<Long> phaseTwoSeekThenLoop(RawReader reader, MessageId from, MessageId to,
-            MessageId lastReadId, Map<String, MessageId> latestForKey, BookKeeper bk, LedgerHandle ledger) {
+            MessageId lastReadId, CompactionKeyIndex latestForKey, Optional<Long> compactedLedgerId, BookKeeper bk,
+            LedgerHandle ledger) {
         CompletableFuture<Long> promise = new CompletableFuture<>();
+        Semaphore outstanding = new Semaphore(MAX_OUTSTANDING);
 
-        reader.seekAsync(from).thenCompose((v) -> {
-            Semaphore outstanding = new Semaphore(MAX_OUTSTANDING);
-            CompletableFuture<Void> loopPromise = new CompletableFuture<Void>();
-            phaseTwoLoop(reader, to, latestForKey, ledger, outstanding, loopPromise);
-            return loopPromise;
-        }).thenCompose((v) -> closeLedger(ledger))
+        compactedLedgerId.map((id) -> copyCompactedLedger(bk, id, latestForKey, ledger, outstanding))
+            .orElse(CompletableFuture.completedFuture(null)).thenCompose((v) -> {
+                if (from == null) {
+                    // no message to retain after the compaction horizon
+                    return CompletableFuture.completedFuture(null);
+                }
+                return reader.seekAsync(from).thenCompose((v2) -> {
+                    CompletableFuture<Void> loopPromise = new CompletableFuture<Void>();
+                    phaseTwoLoop(new ReadAhead(reader), to, latestForKey, ledger, outstanding, loopPromise);
+                    return loopPromise;
+                });
+            }).thenCompose((v) -> closeLedger(ledger))
                 .thenCompose((v) -> reader.acknowledgeCumulativeAsync(lastReadId,
                         ImmutableMap.of(COMPACTED_TOPIC_LEDGER_PROPERTY, ledger.getId())))
                 .whenComplete((res, exception) -> {
@@ -202,22 +310,26 @@ public class TwoPhaseCompactor extends Compactor {
         return promise;
     }
 
-    private void phaseTwoLoop(RawReader reader, MessageId to, Map<String, MessageId> latestForKey,
+    private void phaseTwoLoop(ReadAhead readAhead, MessageId to, CompactionKeyIndex latestForKey,
                               LedgerHandle lh, Semaphore outstanding, CompletableFuture<Void> promise) {
-        reader.readNextAsync().whenCompleteAsync(
+        readAhead.next().whenCompleteAsync(
                 (m, exception) -> {
                     if (exception != null) {
+                        readAhead.discard();
                         promise.completeExceptionally(exception);
                         return;
                     } else if (promise.isDone()) {
+                        readAhead.discard();
+                        m.close();
                         return;
                     }
+                    messagesRead.inc();
                     MessageId id = m.getMessageId();
                     Optional<RawMessage> messageToAdd = Optional.empty();
                     if (RawBatchConverter.isReadableBatch(m)) {
                         try {
                             messageToAdd = RawBatchConverter.rebatchMessage(
-                                    m, (key, subid) -> latestForKey.get(key).equals(subid));
+                                    m, (key, subid) -> isLatest(latestForKey, key, subid));
                         } catch (IOException ioe) {
                             log.info("Error decoding batch for message {}. Whole batch will be included in output",
                                      id, ioe);
@@ -225,11 +337,10 @@ public class TwoPhaseCompactor extends Compactor {
                         }
                     } else {
                         Pair<String,Integer> keyAndSize = extractKeyAndSize(m);
-                        MessageId msg;
                         if (keyAndSize == null) { // pass through messages without a key
                             messageToAdd = Optional.of(m);
-                        } else if ((msg = latestForKey.get(keyAndSize.getLeft())) != null 
-                                && msg.equals(id)) { // consider message only if present into latestForKey map
+                        } else if (isLatest(latestForKey, keyAndSize.getLeft(), id)) {
+                            // consider message only if it is the latest one of its key
                             if (keyAndSize.getRight() <= 0) {
                                 promise.completeExceptionally(new IllegalArgumentException(
                                         "Compaction phase found empty record from sorted key-map"));
@@ -244,10 +355,12 @@ public class TwoPhaseCompactor extends Compactor {
                             }
                         }
                     }
+                    boolean reachedEnd = to.equals(id);
 
                     messageToAdd.ifPresent((toAdd) -> {
                             try {
                                 outstanding.acquire();
+                                messagesWritten.inc();
                                 CompletableFuture<Void> addFuture = addToCompactedLedger(lh, toAdd)
                                     .whenComplete((res, exception2) -> {
                                             outstanding.release();
@@ -255,7 +368,7 @@ public class TwoPhaseCompactor extends Compactor {
                                                 promise.completeExceptionally(exception2);
                                             }
                                         });
-                                if (to.equals(id)) {
+                                if (reachedEnd) {
                                     addFuture.whenComplete((res, exception2) -> {
                                             if (exception2 == null) {
                                                 promise.complete(null);
@@ -267,10 +380,141 @@ public class TwoPhaseCompactor extends Compactor {
                                 promise.completeExceptionally(ie);
                             }
                         });
-                    phaseTwoLoop(reader, to, latestForKey, lh, outstanding, promise);
+                    if (reachedEnd) {
+                        // Don't touch the key index after the last message, it's released once the loop completes
+                        readAhead.discard();
+                    } else {
+                        phaseTwoLoop(readAhead, to, latestForKey, lh, outstanding, promise);
+                    }
                 }, scheduler);
     }
 
+    /**
+     * Copies the entries of the previous compacted ledger to the new one, leaving out the messages whose key was
+     * updated or deleted after the compaction horizon.
+     */
+    private CompletableFuture<Void> copyCompactedLedger(BookKeeper bk, long compactedLedgerId,
+                                                        CompactionKeyIndex latestForKey, LedgerHandle lh,
+                                                        Semaphore outstanding) {
+        return openLedger(bk, compactedLedgerId).thenCompose((compactedLedger) -> {
+            CompletableFuture<Void> promise = new CompletableFuture<>();
+            copyCompactedLedgerLoop(compactedLedger, 0, latestForKey, lh, outstanding,
+                                    CompletableFuture.completedFuture(null), promise);
+            return promise.whenComplete((res, exception) -> compactedLedger.asyncClose((rc, ledger, ctx) -> {
+                        if (rc != BKException.Code.OK) {
+                            log.warn("Error closing compacted ledger {}, ignoring", ledger.getId(),
+                                     BKException.create(rc));
+                        }
+                    }, null));
+        });
+    }
+
+    private void copyCompactedLedgerLoop(LedgerHandle compactedLedger, long firstEntry,
+                                         CompactionKeyIndex latestForKey, LedgerHandle lh, Semaphore outstanding,
+                                         CompletableFuture<Void> lastAdd, CompletableFuture<Void> promise) {
+        if (promise.isDone()) {
+            return;
+        } else if (firstEntry > compactedLedger.getLastAddConfirmed()) {
+            lastAdd.whenComplete((res, exception) -> {
+                    if (exception == null) {
+                        promise.complete(null);
+                    }
+                });
+            return;
+        }
+
+        long lastEntry = Math.min(compactedLedger.getLastAddConfirmed(), firstEntry + COPY_BATCH_SIZE - 1);
+        readEntries(compactedLedger, firstEntry, lastEntry).whenCompleteAsync((entries, exception) -> {
+                if (exception != null) {
+                    promise.completeExceptionally(exception);
+                    return;
+                }
+                CompletableFuture<Void> lastAddInBatch = lastAdd;
+                while (entries.hasMoreElements()) {
+                    ByteBuf buf = entries.nextElement().getEntryBuffer();
+                    RawMessage m;
+                    try {
+                        m = RawMessageImpl.deserializeFrom(buf);
+                    } finally {
+                        buf.release();
+                    }
+                    messagesRead.inc();
+
+                    Optional<RawMessage> messageToAdd = retainPreviouslyCompacted(m, latestForKey);
+                    if (messageToAdd.isPresent() && !promise.isDone()) {
+                        try {
+                            outstanding.acquire();
+                        } catch (InterruptedException ie) {
+                            Thread.currentThread().interrupt();
+                            messageToAdd.get().close();
+                            promise.completeExceptionally(ie);
+                            return;
+                        }
+                        messagesWritten.inc();
+                        lastAddInBatch = addToCompactedLedger(lh, messageToAdd.get())
+                            .whenComplete((res, exception2) -> {
+                                    outstanding.release();
+                                    if (exception2 != null) {
+                                        promise.completeExceptionally(exception2);
+                                    }
+                                });
+                    }
+                    messageToAdd.ifPresent(RawMessage::close);
+                }
+                copyCompactedLedgerLoop(compactedLedger, lastEntry + 1, latestForKey, lh, outstanding,
+                                        lastAddInBatch, promise);
+            }, scheduler);
+    }
+
+    private static Optional<RawMessage> retainPreviouslyCompacted(RawMessage m, CompactionKeyIndex latestForKey) {
+        if (RawBatchConverter.isReadableBatch(m)) {
+            try {
+                return RawBatchConverter.rebatchMessage(m, (key, subid) -> !latestForKey.contains(key));
+            } catch (IOException ioe) {
+                log.info("Error decoding batch for message {}. Whole batch will be included in output",
+                         m.getMessageId(), ioe);
+                return Optional.of(m);
+            }
+        } else {
+            Pair<String,Integer> keyAndSize = extractKeyAndSize(m);
+            if (keyAndSize == null || !latestForKey.contains(keyAndSize.getLeft())) {
+                return Optional.of(m);
+            } else {
+                m.close();
+                return Optional.empty();
+            }
+        }
+    }
+
+    private CompletableFuture<LedgerHandle> openLedger(BookKeeper bk, long ledgerId) {
+        CompletableFuture<LedgerHandle> bkf = new CompletableFuture<>();
+        bk.asyncOpenLedger(ledgerId,
+                           Compactor.COMPACTED_TOPIC_LEDGER_DIGEST_TYPE,
+                           Compactor.COMPACTED_TOPIC_LEDGER_PASSWORD,
+                           (rc, ledger, ctx) -> {
+                               if (rc != BKException.Code.OK) {
+                                   bkf.completeExceptionally(BKException.create(rc));
+                               } else {
+                                   bkf.complete(ledger);
+                               }
+                           }, null);
+        return bkf;
+    }
+
+    private CompletableFuture<Enumeration<LedgerEntry>> readEntries(LedgerHandle lh, long firstEntry,
+                                                                    long lastEntry) {
+        CompletableFuture<Enumeration<LedgerEntry>> bkf = new CompletableFuture<>();
+        lh.asyncReadEntries(firstEntry, lastEntry,
+                            (rc, ledger, entries, ctx) -> {
+                                if (rc != BKException.Code.OK) {
+                                    bkf.completeExceptionally(BKException.create(rc));
+                                } else {
+                                    bkf.complete(entries);
+                                }
+                            }, null);
+        return bkf;
+    }
+
     private CompletableFuture<LedgerHandle> createLedger(BookKeeper bk, Map<String,byte[]> metadata) {
         CompletableFuture<LedgerHandle> bkf = new CompletableFuture<>();
         bk.asyncCreateLedger(conf.getManagedLedgerDefaultEnsembleSize(),
@@ -328,6 +572,21 @@ public class TwoPhaseCompactor extends Compactor {
         return bkf;
     }
 
+    private static boolean isAfter(MessageId id, Position horizon) {
+        MessageIdImpl position = (MessageIdImpl) id;
+        return PositionImpl.get(position.getLedgerId(), position.getEntryId()).compareTo((PositionImpl) horizon) > 0;
+    }
+
+    private static void put(CompactionKeyIndex latestForKey, String key, MessageId id) {
+        BatchMessageIdImpl position = (BatchMessageIdImpl) id;
+        latestForKey.put(key, position.getLedgerId(), position.getEntryId(), position.getBatchIndex());
+    }
+
+    private static boolean isLatest(CompactionKeyIndex latestForKey, String key, MessageId id) {
+        BatchMessageIdImpl position = (BatchMessageIdImpl) id;
+        return latestForKey.isLatest(key, position.getLedgerId(), position.getEntryId(), position.getBatchIndex());
+    }
+
     private static Pair<String,Integer> extractKeyAndSize(RawMessage m) {
         ByteBuf headersAndPayload = m.getHeadersAndPayload();
         MessageMetadata msgMetadata = Commands.parseMessageMetadata(headersAndPayload);
@@ -350,13 +609,42 @@ public class TwoPhaseCompactor extends Compactor {
         final MessageId from;
         final MessageId to; // last undeleted messageId
         final MessageId lastReadId; // last read messageId
-        final Map<String,MessageId> latestForKey;
+        final CompactionKeyIndex latestForKey;
 
-        PhaseOneResult(MessageId from, MessageId to, MessageId lastReadId, Map<String,MessageId> latestForKey) {
+        PhaseOneResult(MessageId from, MessageId to, MessageId lastReadId, CompactionKeyIndex latestForKey) {
             this.from = from;
             this.to = to;
             this.lastReadId = lastReadId;
             this.latestForKey = latestForKey;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Keeps up to {@link #READ_AHEAD} reads outstanding on the raw reader. The messages are still handed out in order,
+     * the reader completes its pending reads in the order they were issued.
+     */
+    private static class ReadAhead {
+        private final RawReader reader;
+        private final Queue<CompletableFuture<RawMessage>> pendingReads = new ArrayDeque<>();
+
+        ReadAhead(RawReader reader) {
+            this.reader = reader;
+        }
+
+        CompletableFuture<RawMessage> next() {
+            while (pendingReads.size() < READ_AHEAD) {
+                pendingReads.add(reader.readNextAsync());
+            }
+            return pendingReads.poll();
+        }
+
+        /**
+         * Releases the messages read ahead which are not going to be processed. The reads still pending are
+         * cancelled by the reader on the next seek or close.
+         */
+        void discard() {
+            pendingReads.forEach((future) -> future.thenAccept(RawMessage::close));
+            pendingReads.clear();
+        }
+    }
+}
@@ -25,9 +25,11 @@ import org.apache.pulsar.common.util.SimpleTextOutputStream;
 
 public class StatsOutputStream extends SimpleTextOutputStream {
     private final Stack<Boolean> separators = new Stack<>();
+    private final ByteBuf buffer;
 
     public StatsOutputStream(ByteBuf buffer) {
         super(buffer);
+        this.buffer = buffer;
     }
 
     public StatsOutputStream startObject() {
@@ -112,6 +114,15 @@ public class StatsOutputStream extends SimpleTextOutputStream {
         return this;
     }
 
+    /**
+     * Append an item that was already serialized, e.g. an object written with another {@link StatsOutputStream}.
+     */
+    public StatsOutputStream writeSerializedItem(ByteBuf item) {
+        checkSeparator();
+        buffer.writeBytes(item, item.readerIndex(), item.readableBytes());
+        return this;
+    }
+
     StatsOutputStream writeItem(String s) {
         checkSeparator();
 
@@ -0,0 +1,225 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.delayed;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+
+import java.time.Clock;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.bookkeeper.mledger.impl.PositionImpl;
+import org.apache.pulsar.broker.service.persistent.PersistentDispatcherMultipleConsumers;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+@Test
+public class InMemoryDeliveryTrackerTest {
+
+    @Test
+    public void test() throws Exception {
+        PersistentDispatcherMultipleConsumers dispatcher = mock(PersistentDispatcherMultipleConsumers.class);
+
+        Timer timer = mock(Timer.class);
+
+        AtomicLong clockTime = new AtomicLong();
+        Clock clock = mock(Clock.class);
+        when(clock.millis()).then(x -> clockTime.get());
+
+        @SuppressWarnings("resource")
+        InMemoryDelayedDeliveryTracker tracker = new InMemoryDelayedDeliveryTracker(dispatcher, timer, 1, clock);
+
+        assertFalse(tracker.hasMessageAvailable());
+
+        // Messages that are due are not tracked
+        assertFalse(tracker.addMessage(1, 1, 0));
+        clockTime.set(10);
+        assertFalse(tracker.addMessage(1, 1, 10));
+
+        assertTrue(tracker.addMessage(2, 2, 20));
+        assertTrue(tracker.addMessage(1, 2, 20));
+        assertTrue(tracker.addMessage(3, 3, 30));
+        assertTrue(tracker.addMessage(5, 5, 50));
+        assertTrue(tracker.addMessage(4, 4, 40));
+
+        assertFalse(tracker.hasMessageAvailable());
+        assertEquals(tracker.getNumberOfDelayedMessages(), 5);
+
+        assertEquals(tracker.getScheduledMessages(10), Sets.newTreeSet());
+
+        // Move time forward
+        clockTime.set(25);
+
+        // Messages due at the same time are returned together
+        assertTrue(tracker.hasMessageAvailable());
+        Set<PositionImpl> scheduled = tracker.getScheduledMessages(10);
+        assertEquals(scheduled, Sets.newHashSet(new PositionImpl(1, 2), new PositionImpl(2, 2)));
+        assertEquals(tracker.getNumberOfDelayedMessages(), 3);
+
+        // Move time forward
+        clockTime.set(60);
+
+        // The number of returned messages is capped
+        assertTrue(tracker.hasMessageAvailable());
+        assertEquals(tracker.getScheduledMessages(1), Sets.newHashSet(new PositionImpl(3, 3)));
+        assertEquals(tracker.getScheduledMessages(10),
+                Sets.newHashSet(new PositionImpl(4, 4), new PositionImpl(5, 5)));
+
+        assertFalse(tracker.hasMessageAvailable());
+        assertEquals(tracker.getNumberOfDelayedMessages(), 0);
+
+        tracker.close();
+    }
+
+    @Test
+    public void testScheduledMessagesSortedAndReused() throws Exception {
+        PersistentDispatcherMultipleConsumers dispatcher = mock(PersistentDispatcherMultipleConsumers.class);
+
+        Timer timer = mock(Timer.class);
+
+        AtomicLong clockTime = new AtomicLong();
+        Clock clock = mock(Clock.class);
+        when(clock.millis()).then(x -> clockTime.get());
+
+        @SuppressWarnings("resource")
+        InMemoryDelayedDeliveryTracker tracker = new InMemoryDelayedDeliveryTracker(dispatcher, timer, 1, clock);
+
+        // Due in a different order than their positions, with a duplicate
+        assertTrue(tracker.addMessage(3, 1, 10));
+        assertTrue(tracker.addMessage(1, 2, 20));
+        assertTrue(tracker.addMessage(2, 5, 30));
+        assertTrue(tracker.addMessage(1, 1, 40));
+        assertTrue(tracker.addMessage(2, 5, 50));
+        for (int i = 0; i < 20; i++) {
+            assertTrue(tracker.addMessage(4, 20 - i, 60 + i));
+        }
+
+        clockTime.set(50);
+        Set<PositionImpl> scheduled = tracker.getScheduledMessages(10);
+        assertEquals(Lists.newArrayList(scheduled), Lists.newArrayList(new PositionImpl(1, 1),
+                new PositionImpl(1, 2), new PositionImpl(2, 5), new PositionImpl(3, 1)));
+        assertTrue(scheduled.contains(new PositionImpl(2, 5)));
+        assertFalse(scheduled.contains(new PositionImpl(2, 4)));
+
+        // The same set is returned by the next call, with more positions than its initial capacity
+        clockTime.set(100);
+        assertSame(tracker.getScheduledMessages(100), scheduled);
+        assertEquals(scheduled.size(), 20);
+        long expectedEntryId = 1;
+        for (PositionImpl position : scheduled) {
+            assertEquals(position, new PositionImpl(4, expectedEntryId++));
+        }
+
+        assertTrue(tracker.getScheduledMessages(10).isEmpty());
+
+        tracker.close();
+    }
+
+    @Test
+    public void testTimer() throws Exception {
+        PersistentDispatcherMultipleConsumers dispatcher = mock(PersistentDispatcherMultipleConsumers.class);
+
+        Timer timer = mock(Timer.class);
+
+        AtomicLong clockTime = new AtomicLong();
+        Clock clock = mock(Clock.class);
+        when(clock.millis()).then(x -> clockTime.get());
+
+        NavigableMap<Long, TimerTask> tasks = new TreeMap<>();
+
+        when(timer.newTimeout(any(), anyLong(), any())).then(invocation -> {
+            TimerTask task = invocation.getArgumentAt(0, TimerTask.class);
+            long timeout = invocation.getArgumentAt(1, Long.class);
+            TimeUnit unit = invocation.getArgumentAt(2, TimeUnit.class);
+            long scheduleAt = clockTime.get() + unit.toMillis(timeout);
+            tasks.put(scheduleAt, task);
+
+            Timeout t = mock(Timeout.class);
+            when(t.cancel()).then(i -> {
+                tasks.remove(scheduleAt, task);
+                return null;
+            });
+            return t;
+        });
+
+        @SuppressWarnings("resource")
+        InMemoryDelayedDeliveryTracker tracker = new InMemoryDelayedDeliveryTracker(dispatcher, timer, 1, clock);
+
+        assertTrue(tasks.isEmpty());
+        assertTrue(tracker.addMessage(2, 2, 20));
+        assertEquals(tasks.firstKey().longValue(), 20);
+
+        // A later message does not move the timer
+        assertTrue(tracker.addMessage(3, 3, 30));
+        assertEquals(tasks.size(), 1);
+        assertEquals(tasks.firstKey().longValue(), 20);
+
+        // An earlier message reschedules it
+        assertTrue(tracker.addMessage(1, 1, 10));
+        assertEquals(tasks.size(), 1);
+        assertEquals(tasks.firstKey().longValue(), 10);
+
+        clockTime.set(30);
+        assertEquals(tracker.getScheduledMessages(2), Sets.newHashSet(new PositionImpl(1, 1), new PositionImpl(2, 2)));
+        assertEquals(tasks.size(), 1);
+        assertEquals(tasks.firstKey().longValue(), 30);
+
+        // No timer is left once the tracker is empty
+        tracker.clear();
+        assertTrue(tasks.isEmpty());
+
+        tracker.close();
+    }
+
+    @Test
+    public void testTimerTriggersRead() throws Exception {
+        PersistentDispatcherMultipleConsumers dispatcher = mock(PersistentDispatcherMultipleConsumers.class);
+
+        HashedWheelTimer timer = new HashedWheelTimer(10, TimeUnit.MILLISECONDS);
+
+        InMemoryDelayedDeliveryTracker tracker = new InMemoryDelayedDeliveryTracker(dispatcher, timer, 1);
+        assertTrue(tracker.addMessage(1, 1, System.currentTimeMillis() + 100));
+
+        Thread.sleep(500);
+        verify(dispatcher, times(1)).readMoreEntries();
+        assertTrue(tracker.hasMessageAvailable());
+
+        tracker.close();
+        timer.stop();
+    }
+}
@@ -516,7 +516,7 @@ public class AntiAffinityNamespaceGroupTest {
         ModularLoadManagerImpl loadManager = (ModularLoadManagerImpl) ((ModularLoadManagerWrapper) pulsar1
                 .getLoadManager().get()).getLoadManager();
 
-        pulsar1.getBrokerService().updateRates();
+        pulsar1.getBrokerService().updateRates().join();
         loadManager.updateAll();
 
         assertTrue(loadManager.shouldAntiAffinityNamespaceUnload(namespace + "0", bundle, primaryHost));
@@ -121,7 +121,7 @@ public class BacklogQuotaManagerTest {
     }
 
     private void rolloverStats() {
-        pulsar.getBrokerService().updateRates();
+        pulsar.getBrokerService().updateRates().join();
     }
 
     @Test
@@ -47,7 +47,7 @@ public abstract class BrokerTestBase extends MockedPulsarServiceBaseTest {
 
     void rolloverPerIntervalStats() {
         try {
-            pulsar.getExecutor().submit(() -> pulsar.getBrokerService().updateRates()).get();
+            pulsar.getBrokerService().updateRates().join();
         } catch (Exception e) {
             LOG.error("Stats executor error", e);
         }
@@ -0,0 +1,129 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.service;
+
+import static org.mockito.Mockito.mock;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.pulsar.broker.service.BrokerServiceException.ConsumerAssignException;
+import org.testng.annotations.Test;
+
+public class HashRangeAutoSplitStickyKeyConsumerSelectorTest {
+
+    @Test
+    public void testInvalidRangeSize() {
+        try {
+            new HashRangeAutoSplitStickyKeyConsumerSelector(1000);
+            fail("Range size must be a power of 2");
+        } catch (IllegalArgumentException e) {
+            // Ok
+        }
+    }
+
+    @Test
+    public void testSplitAndMergeRanges() throws Exception {
+        HashRangeAutoSplitStickyKeyConsumerSelector selector = new HashRangeAutoSplitStickyKeyConsumerSelector(8);
+        assertNull(selector.select("key"));
+
+        Consumer consumer1 = mock(Consumer.class);
+        selector.addConsumer(consumer1);
+        assertEquals(selector.getConsumerRange().get(consumer1).intValue(), 7);
+
+        // The new consumers take the lower half of the biggest range
+        Consumer consumer2 = mock(Consumer.class);
+        selector.addConsumer(consumer2);
+        assertEquals(selector.getConsumerRange().get(consumer2).intValue(), 3);
+
+        Consumer consumer3 = mock(Consumer.class);
+        selector.addConsumer(consumer3);
+        assertEquals(selector.getConsumerRange().get(consumer3).intValue(), 1);
+
+        Consumer consumer4 = mock(Consumer.class);
+        selector.addConsumer(consumer4);
+        assertEquals(selector.getConsumerRange().get(consumer4).intValue(), 5);
+        assertEquals(selector.getRangeConsumer().size(), 4);
+
+        // The range of a removed consumer is merged into the following range
+        selector.removeConsumer(consumer3);
+        assertEquals(selector.getRangeConsumer().size(), 3);
+        assertSame(selector.getRangeConsumer().ceilingEntry(0).getValue(), consumer2);
+
+        // The last range is merged into the preceding range
+        selector.removeConsumer(consumer1);
+        assertEquals(selector.getRangeConsumer().size(), 2);
+        assertEquals(selector.getConsumerRange().get(consumer4).intValue(), 7);
+        assertSame(selector.getRangeConsumer().get(7), consumer4);
+
+        selector.removeConsumer(consumer2);
+        selector.removeConsumer(consumer4);
+        assertEquals(selector.getRangeConsumer().size(), 0);
+        assertEquals(selector.getConsumerRange().size(), 0);
+        assertNull(selector.select("key"));
+    }
+
+    @Test
+    public void testNoMoreRangeToSplit() throws Exception {
+        HashRangeAutoSplitStickyKeyConsumerSelector selector = new HashRangeAutoSplitStickyKeyConsumerSelector(4);
+        for (int i = 0; i < 4; i++) {
+            selector.addConsumer(mock(Consumer.class));
+        }
+
+        try {
+            selector.addConsumer(mock(Consumer.class));
+            fail("There are no more ranges to assign");
+        } catch (ConsumerAssignException e) {
+            // Ok
+        }
+        assertEquals(selector.getRangeConsumer().size(), 4);
+    }
+
+    @Test
+    public void testStickyKeys() throws Exception {
+        HashRangeAutoSplitStickyKeyConsumerSelector selector = new HashRangeAutoSplitStickyKeyConsumerSelector();
+        List<Consumer> consumers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Consumer consumer = mock(Consumer.class);
+            consumers.add(consumer);
+            selector.addConsumer(consumer);
+        }
+
+        Map<String, Consumer> selected = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            String key = "key-" + i;
+            selected.put(key, selector.select(key));
+            assertSame(selector.select(key), selected.get(key));
+        }
+
+        // Only the keys of the removed consumer are moved to a different consumer
+        selector.removeConsumer(consumers.get(1));
+        selected.forEach((key, consumer) -> {
+            if (consumer != consumers.get(1)) {
+                assertSame(selector.select(key), consumer);
+            }
+        });
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.service;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.testng.annotations.Test;
+
+public class InflightMemoryLimiterTest {
+
+    @Test
+    public void testDisabled() {
+        InflightMemoryLimiter limiter = new InflightMemoryLimiter(0);
+        assertFalse(limiter.isEnabled());
+        assertTrue(limiter.reservePublishMemory(Long.MAX_VALUE));
+        limiter.reserveDispatchMemory(Long.MAX_VALUE);
+        assertFalse(limiter.isExhausted());
+        assertEquals(limiter.getInflightBytes(), 0);
+    }
+
+    @Test
+    public void testPublishLimit() {
+        InflightMemoryLimiter limiter = new InflightMemoryLimiter(100);
+        assertTrue(limiter.reservePublishMemory(60));
+        assertFalse(limiter.reservePublishMemory(60));
+        assertTrue(limiter.isExhausted());
+        assertEquals(limiter.getPublishInflightBytes(), 120);
+        assertEquals(limiter.getPublishLimitedTimes(), 1);
+
+        AtomicInteger resumed = new AtomicInteger();
+        limiter.pausePublisher(resumed::incrementAndGet);
+        assertEquals(limiter.getPausedPublishersCount(), 1);
+
+        // Still above half of the budget
+        limiter.releasePublishMemory(60);
+        assertEquals(resumed.get(), 0);
+
+        limiter.releasePublishMemory(60);
+        assertEquals(resumed.get(), 1);
+        assertEquals(limiter.getPausedPublishersCount(), 0);
+        assertEquals(limiter.getInflightBytes(), 0);
+    }
+
+    @Test
+    public void testDispatchAndPublishShareTheBudget() {
+        InflightMemoryLimiter limiter = new InflightMemoryLimiter(100);
+        limiter.reserveDispatchMemory(80);
+        assertFalse(limiter.isExhausted());
+        assertFalse(limiter.reservePublishMemory(20));
+
+        AtomicInteger resumed = new AtomicInteger();
+        limiter.pauseDispatcher(resumed::incrementAndGet);
+        limiter.pausePublisher(resumed::incrementAndGet);
+        assertEquals(limiter.getDispatchLimitedTimes(), 1);
+
+        limiter.releaseDispatchMemory(80);
+        assertEquals(resumed.get(), 2);
+        assertEquals(limiter.getDispatchInflightBytes(), 0);
+        assertEquals(limiter.getPublishInflightBytes(), 20);
+    }
+
+    @Test
+    public void testResumeWhenMemoryReleasedBeforePausing() {
+        InflightMemoryLimiter limiter = new InflightMemoryLimiter(100);
+        assertFalse(limiter.reservePublishMemory(100));
+        limiter.releasePublishMemory(100);
+
+        // The connection gets paused after the memory was already released
+        AtomicInteger resumed = new AtomicInteger();
+        limiter.pausePublisher(resumed::incrementAndGet);
+        assertEquals(resumed.get(), 1);
+    }
+}
@@ -119,7 +119,7 @@ public class PeerReplicatorTest extends ReplicatorTestBase {
         Producer<byte[]> producer = client3.newProducer().topic(topic1).create();
         PersistentTopic topic = (PersistentTopic) pulsar1.getBrokerService().getOrCreateTopic(topic1).get();
         assertNotNull(topic);
-        pulsar1.getBrokerService().updateRates();
+        pulsar1.getBrokerService().updateRates().join();
         // get stats for topic1 using cluster-r3's admin3
         TopicStats stats = admin1.topics().getStats(topic1);
         assertNotNull(stats);
@@ -134,7 +134,7 @@ public class PeerReplicatorTest extends ReplicatorTestBase {
         producer = client3.newProducer().topic(topic2).create();
         topic = (PersistentTopic) pulsar2.getBrokerService().getOrCreateTopic(topic2).get();
         assertNotNull(topic);
-        pulsar2.getBrokerService().updateRates();
+        pulsar2.getBrokerService().updateRates().join();
         // get stats for topic1 using cluster-r3's admin3
         stats = admin3.topics().getStats(topic2);
         assertNotNull(stats);
@@ -1047,13 +1047,13 @@ public class PersistentTopicE2ETest extends BrokerTestBase {
             .enableBatching(false)
             .messageRoutingMode(MessageRoutingMode.SinglePartition)
             .create();
-        /* Producer<byte[]> producer2 = */ pulsarClient.newProducer()
+        Producer<byte[]> producer2 = pulsarClient.newProducer()
             .topic("persistent://prop/ns-abc/topic-2")
             .enableBatching(false)
             .messageRoutingMode(MessageRoutingMode.SinglePartition)
             .create();
 
-        brokerService.updateRates();
+        brokerService.updateRates().join();
 
         Map<String, NamespaceBundleStats> bundleStatsMap = brokerService.getBundleStats();
         assertEquals(bundleStatsMap.size(), 1);
@@ -1063,21 +1063,21 @@ public class PersistentTopicE2ETest extends BrokerTestBase {
         producer1.close();
         admin.topics().delete("persistent://prop/ns-abc/topic-1");
 
-        brokerService.updateRates();
+        brokerService.updateRates().join();
 
         bundleStatsMap = brokerService.getBundleStats();
         assertEquals(bundleStatsMap.size(), 1);
         bundleStats = bundleStatsMap.get("prop/ns-abc/0x00000000_0xffffffff");
         assertNotNull(bundleStats);
 
-        // // Delete 2nd topic as well
-        // producer2.close();
-        // admin.topics().delete("persistent://prop/ns-abc/topic-2");
-        //
-        // brokerService.updateRates();
-        //
-        // bundleStatsMap = brokerService.getBundleStats();
-        // assertEquals(bundleStatsMap.size(), 0);
+        // Delete 2nd topic as well
+        producer2.close();
+        admin.topics().delete("persistent://prop/ns-abc/topic-2");
+
+        brokerService.updateRates().join();
+
+        bundleStatsMap = brokerService.getBundleStats();
+        assertEquals(bundleStatsMap.size(), 0);
     }
 
     @DataProvider(name = "codec")
@@ -1144,7 +1144,7 @@ public class PersistentTopicE2ETest extends BrokerTestBase {
 
         // sleep 1 sec to caclulate metrics per second
         Thread.sleep(1000);
-        brokerService.updateRates();
+        brokerService.updateRates().join();
         List<Metrics> metrics = brokerService.getTopicMetrics();
         for (int i = 0; i < metrics.size(); i++) {
             if (metrics.get(i).getDimension("namespace").equalsIgnoreCase(namespace)) {
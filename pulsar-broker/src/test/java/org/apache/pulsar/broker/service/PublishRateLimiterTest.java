@@ -0,0 +1,71 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.service;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import org.apache.pulsar.common.policies.data.PublishRate;
+import org.testng.annotations.Test;
+
+public class PublishRateLimiterTest {
+
+    @Test
+    public void testMessageRateLimit() throws Exception {
+        PublishRateLimiter limiter = new PublishRateLimiterImpl(new PublishRate(10, -1));
+        assertTrue(limiter.isPublishRateEnabled());
+
+        assertEquals(limiter.tryAcquire(5, 100), 0);
+        assertEquals(limiter.tryAcquire(4, 100), 0);
+        long delayMs = limiter.tryAcquire(1, 100);
+        assertTrue(delayMs > 0 && delayMs <= 1000);
+        assertEquals(limiter.getPublishRateLimitedTimes(), 1);
+
+        // The window is refilled after 1 second
+        Thread.sleep(delayMs + 10);
+        assertEquals(limiter.tryAcquire(5, 100), 0);
+    }
+
+    @Test
+    public void testByteRateLimit() {
+        PublishRateLimiter limiter = new PublishRateLimiterImpl(new PublishRate(-1, 1000));
+        assertEquals(limiter.tryAcquire(1, 600), 0);
+        assertTrue(limiter.tryAcquire(1, 600) > 0);
+        assertEquals(limiter.getPublishRateLimitedTimes(), 1);
+    }
+
+    @Test
+    public void testUpdate() {
+        PublishRateLimiter limiter = new PublishRateLimiterImpl(new PublishRate(1, -1));
+        assertTrue(limiter.tryAcquire(1, 10) > 0);
+
+        limiter.update(new PublishRate(-1, -1));
+        assertFalse(limiter.isPublishRateEnabled());
+        assertEquals(limiter.tryAcquire(100, 10), 0);
+    }
+
+    @Test
+    public void testDisabled() {
+        PublishRateLimiter limiter = PublishRateLimiterDisabled.DISABLED_RATE_LIMITER;
+        assertFalse(limiter.isPublishRateEnabled());
+        assertEquals(limiter.tryAcquire(Integer.MAX_VALUE, Long.MAX_VALUE), 0);
+        assertEquals(limiter.getPublishRateLimitedTimes(), 0);
+    }
+}
@@ -0,0 +1,173 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.service;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.mledger.ManagedLedger;
+import org.apache.pulsar.broker.PulsarService;
+import org.apache.pulsar.broker.ServiceConfiguration;
+import org.apache.pulsar.broker.service.persistent.PersistentTopic;
+import org.apache.pulsar.common.stats.Metrics;
+import org.apache.pulsar.common.util.collections.ConcurrentOpenHashMap;
+import org.apache.pulsar.policies.data.loadbalancer.NamespaceBundleStats;
+import org.apache.pulsar.utils.StatsOutputStream;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class PulsarStatsTest {
+
+    private static final String BUNDLE_RANGE = "0x00000000_0xffffffff";
+
+    private OrderedExecutor executor;
+    private PulsarStats pulsarStats;
+    private ConcurrentOpenHashMap<String, ConcurrentOpenHashMap<String, ConcurrentOpenHashMap<String, Topic>>> topicsMap;
+
+    @BeforeMethod
+    public void setup() {
+        ServiceConfiguration config = new ServiceConfiguration();
+        config.setClusterName("test");
+        PulsarService pulsar = mock(PulsarService.class);
+        doReturn(config).when(pulsar).getConfiguration();
+        doReturn("localhost").when(pulsar).getAdvertisedAddress();
+        executor = OrderedExecutor.newBuilder().numThreads(4).name("pulsar-stats-test").build();
+        pulsarStats = new PulsarStats(pulsar);
+        topicsMap = new ConcurrentOpenHashMap<>();
+    }
+
+    @AfterMethod
+    public void cleanup() {
+        pulsarStats.close();
+        executor.shutdown();
+    }
+
+    private PersistentTopic addTopic(String namespace, String topicName, double msgRateIn) throws Exception {
+        PersistentTopic topic = mock(PersistentTopic.class);
+        doReturn(mock(ManagedLedger.class)).when(topic).getManagedLedger();
+        doAnswer(invocation -> {
+            NamespaceBundleStats bundleStats = (NamespaceBundleStats) invocation.getArguments()[1];
+            StatsOutputStream stream = (StatsOutputStream) invocation.getArguments()[2];
+            bundleStats.msgRateIn += msgRateIn;
+            stream.startObject(topicName).writePair("msgRateIn", msgRateIn).endObject();
+            return null;
+        }).when(topic).updateRates(any(), any(), any(), any(), anyString(), anyBoolean());
+
+        topicsMap.computeIfAbsent(namespace, k -> new ConcurrentOpenHashMap<>())
+                .computeIfAbsent(namespace + "/" + BUNDLE_RANGE, k -> new ConcurrentOpenHashMap<>())
+                .put(topicName, topic);
+        return topic;
+    }
+
+    private JsonNode getDimensionMetrics() throws Exception {
+        AtomicReference<String> json = new AtomicReference<>();
+        pulsarStats.getDimensionMetrics(buf -> json.set(buf.toString(StandardCharsets.UTF_8)));
+        return new ObjectMapper().readTree(json.get());
+    }
+
+    @Test
+    public void testMergeNamespaceStats() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            addTopic("prop/ns-" + i, "persistent://prop/ns-" + i + "/t1", i);
+            addTopic("prop/ns-" + i, "persistent://prop/ns-" + i + "/t2", i);
+        }
+        pulsarStats.updateStats(topicsMap, executor).join();
+
+        // The namespaces are merged in the order of the topics map
+        JsonNode stats = getDimensionMetrics();
+        Iterator<String> namespaces = stats.fieldNames();
+        topicsMap.forEach((namespace, bundles) -> assertEquals(namespaces.next(), namespace));
+        assertFalse(namespaces.hasNext());
+
+        Map<String, NamespaceBundleStats> bundleStats = pulsarStats.getBundleStats();
+        assertEquals(bundleStats.size(), 10);
+        for (int i = 0; i < 10; i++) {
+            String namespace = "prop/ns-" + i;
+            JsonNode topics = stats.get(namespace).get(BUNDLE_RANGE).get("persistent");
+            assertEquals(topics.get("persistent://" + namespace + "/t1").get("msgRateIn").asDouble(), (double) i);
+            assertEquals(topics.get("persistent://" + namespace + "/t2").get("msgRateIn").asDouble(), (double) i);
+
+            NamespaceBundleStats nsBundleStats = bundleStats.get(namespace + "/" + BUNDLE_RANGE);
+            assertEquals(nsBundleStats.topics, 2);
+            assertEquals(nsBundleStats.msgRateIn, 2.0 * i);
+        }
+        long namespaceMetrics = pulsarStats.getTopicMetrics().stream()
+                .filter(metrics -> metrics.getDimension("namespace") != null).count();
+        assertEquals(namespaceMetrics, 10);
+
+        // The namespaces that are no longer served are not reported anymore
+        topicsMap.remove("prop/ns-0");
+        pulsarStats.updateStats(topicsMap, executor).join();
+        assertFalse(getDimensionMetrics().has("prop/ns-0"));
+        assertEquals(pulsarStats.getBundleStats().size(), 9);
+        assertFalse(pulsarStats.getBundleStats().containsKey("prop/ns-0/" + BUNDLE_RANGE));
+    }
+
+    @Test
+    public void testDropFailedNamespace() throws Exception {
+        addTopic("prop/ns-ok", "persistent://prop/ns-ok/t1", 1);
+        PersistentTopic failing = addTopic("prop/ns-failed", "persistent://prop/ns-failed/t1", 1);
+        doThrow(new RuntimeException("failed")).when(failing).getManagedLedger();
+        pulsarStats.updateStats(topicsMap, executor).join();
+
+        // Neither the partial stats nor the bundle stats of the failed namespace are published
+        JsonNode stats = getDimensionMetrics();
+        assertTrue(stats.has("prop/ns-ok"));
+        assertFalse(stats.has("prop/ns-failed"));
+        assertEquals(pulsarStats.getBundleStats().keySet(), Collections.singleton("prop/ns-ok/" + BUNDLE_RANGE));
+        for (Metrics metrics : pulsarStats.getTopicMetrics()) {
+            assertFalse("prop/ns-failed".equals(metrics.getDimension("namespace")));
+        }
+
+        // It is reported again once it recovers
+        doReturn(mock(ManagedLedger.class)).when(failing).getManagedLedger();
+        pulsarStats.updateStats(topicsMap, executor).join();
+        assertTrue(getDimensionMetrics().has("prop/ns-failed"));
+        assertEquals(pulsarStats.getBundleStats().size(), 2);
+    }
+
+    @Test
+    public void testChainedUpdates() throws Exception {
+        addTopic("prop/ns-0", "persistent://prop/ns-0/t1", 1);
+        // Updates requested concurrently never overlap, and each one publishes complete stats
+        for (int i = 0; i < 10; i++) {
+            pulsarStats.updateStats(topicsMap, executor);
+        }
+        pulsarStats.updateStats(topicsMap, executor).join();
+        assertEquals(pulsarStats.getBundleStats().get("prop/ns-0/" + BUNDLE_RANGE).msgRateIn, 1.0);
+        assertEquals(getDimensionMetrics().get("prop/ns-0").get(BUNDLE_RANGE).get("persistent").size(), 1);
+    }
+}
@@ -18,6 +18,11 @@
  */
 package org.apache.pulsar.broker.service.schema;
 
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.testng.AssertJUnit.assertEquals;
 import static org.testng.AssertJUnit.assertTrue;
 
@@ -70,13 +75,14 @@ public class SchemaServiceTest extends MockedPulsarServiceBaseTest {
         .props(new TreeMap<>())
         .build();
 
+    private BookkeeperSchemaStorage storage;
     private SchemaRegistryServiceImpl schemaRegistryService;
 
     @BeforeMethod
     @Override
     protected void setup() throws Exception {
         super.internalSetup();
-        BookkeeperSchemaStorage storage = new BookkeeperSchemaStorage(pulsar);
+        storage = spy(new BookkeeperSchemaStorage(pulsar));
         storage.init();
         storage.start();
         schemaRegistryService = new SchemaRegistryServiceImpl(storage, Maps.newHashMap(), MockClock);
@@ -218,6 +224,48 @@ public class SchemaServiceTest extends MockedPulsarServiceBaseTest {
         putSchema(schemaId1, schema2, version(1));
     }
 
+    @Test
+    public void resolveKnownSchemasWithoutStorage() throws Exception {
+        putSchema(schemaId1, schema1, version(0));
+        putSchema(schemaId1, schema2, version(1));
+
+        // Schemas already put are resolved from the hash index
+        putSchema(schemaId1, schema1, version(0));
+        putSchema(schemaId1, schema2, version(1));
+        verify(storage, times(2)).put(eq(schemaId1), any(byte[].class), any(byte[].class));
+
+        // Schema versions read once are served from the cache
+        assertEquals(schema2, getLatestSchema(schemaId1, version(1)));
+        assertEquals(schema1, getSchema(schemaId1, version(0)));
+        assertEquals(2, storage.getCachedSchemaCount());
+        assertEquals(schema1, getSchema(schemaId1, version(0)));
+        assertEquals(2, storage.getCachedSchemaCount());
+
+        // The hash index is invalidated on delete
+        deleteSchema(schemaId1, version(2));
+        putSchema(schemaId1, schema1, version(0));
+        verify(storage, times(4)).put(eq(schemaId1), any(byte[].class), any(byte[].class));
+    }
+
+    @Test
+    public void hashIndexIgnoresSchemasUpdatedByOtherBrokers() throws Exception {
+        putSchema(schemaId1, schema1, version(0));
+        putSchema(schemaId1, schema2, version(1));
+
+        // Another broker deletes the schema through the same storage
+        SchemaRegistryServiceImpl otherRegistry = new SchemaRegistryServiceImpl(storage, Maps.newHashMap(),
+                MockClock);
+        assertEquals(version(2), otherRegistry.deleteSchema(schemaId1, userId).get());
+
+        // The latest version moved, so the index is not trusted anymore
+        putSchema(schemaId1, schema2, version(1));
+        verify(storage, times(4)).put(eq(schemaId1), any(byte[].class), any(byte[].class));
+
+        // It is rebuilt for the new latest version
+        putSchema(schemaId1, schema2, version(1));
+        verify(storage, times(4)).put(eq(schemaId1), any(byte[].class), any(byte[].class));
+    }
+
     private void putSchema(String schemaId, SchemaData schema, SchemaVersion expectedVersion) throws Exception {
         CompletableFuture<SchemaVersion> put = schemaRegistryService.putSchemaIfAbsent(
                 schemaId, schema, SchemaCompatibilityStrategy.FULL);
@@ -135,6 +135,29 @@ public class PrometheusMetricsTest extends BrokerTestBase {
         p2.close();
     }
 
+    @Test
+    public void testBrokerInflightMemoryStats() throws Exception {
+        ByteArrayOutputStream statsOut = new ByteArrayOutputStream();
+        PrometheusMetricsGenerator.generate(pulsar, false, false, statsOut);
+        String metricsStr = new String(statsOut.toByteArray());
+
+        Multimap<String, Metric> metrics = parseMetrics(metricsStr);
+
+        // The limit is disabled by default, so nothing gets reserved
+        List<Metric> cm = (List<Metric>) metrics.get("pulsar_broker_inflight_memory_max_bytes");
+        assertEquals(cm.size(), 1);
+        assertEquals(cm.get(0).value, 0.0);
+        assertEquals(cm.get(0).tags.get("cluster"), "test");
+
+        cm = (List<Metric>) metrics.get("pulsar_broker_inflight_publish_memory_bytes");
+        assertEquals(cm.size(), 1);
+        assertEquals(cm.get(0).value, 0.0);
+
+        cm = (List<Metric>) metrics.get("pulsar_broker_inflight_dispatch_memory_bytes");
+        assertEquals(cm.size(), 1);
+        assertEquals(cm.get(0).value, 0.0);
+    }
+
     /**
      * Hacky parsing of Prometheus text format. Sould be good enough for unit tests
      */
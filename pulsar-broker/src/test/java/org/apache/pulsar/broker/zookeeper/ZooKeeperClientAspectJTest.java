@@ -233,7 +233,7 @@ public class ZooKeeperClientAspectJTest {
             Thread.sleep(10);
 
             BrokerService brokerService = pulsar.getBrokerService();
-            brokerService.updateRates();
+            brokerService.updateRates().join();
             List<Metrics> metrics = brokerService.getTopicMetrics();
             AtomicDouble writeRate = new AtomicDouble();
             AtomicDouble readRate = new AtomicDouble();
@@ -258,7 +258,7 @@ public class ZooKeeperClientAspectJTest {
 
     private Metrics getMetric(PulsarService pulsar, String dimension) {
         BrokerService brokerService = pulsar.getBrokerService();
-        brokerService.updateRates();
+        brokerService.updateRates().join();
         for (Metrics metric : brokerService.getTopicMetrics()) {
             if (dimension.equalsIgnoreCase(metric.getDimension("metric"))) {
                 return metric;
@@ -0,0 +1,137 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.client.api;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.pulsar.common.util.FutureUtil;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class BatchMessageIndexAckTest extends ProducerConsumerBase {
+
+    @BeforeMethod
+    @Override
+    protected void setup() throws Exception {
+        super.internalSetup();
+        super.producerBaseSetup();
+    }
+
+    @AfterMethod
+    @Override
+    protected void cleanup() throws Exception {
+        super.internalCleanup();
+    }
+
+    @Test(timeOut = 30000)
+    public void testBatchIndexAck() throws Exception {
+        final String topic = "persistent://my-property/my-ns/batch-index-ack";
+
+        Consumer<String> consumer = subscribe(topic, true);
+        publishBatch(topic, 10);
+
+        // Acknowledge every other message of the batch
+        for (int i = 0; i < 10; i++) {
+            Message<String> msg = consumer.receive();
+            assertEquals(msg.getValue(), "msg-" + i);
+            if (i % 2 == 0) {
+                consumer.acknowledge(msg);
+            }
+        }
+
+        // Only the messages not acknowledged are delivered again
+        consumer.redeliverUnacknowledgedMessages();
+        for (int i = 1; i < 10; i += 2) {
+            assertEquals(consumer.receive().getValue(), "msg-" + i);
+        }
+        assertNull(consumer.receive(500, TimeUnit.MILLISECONDS));
+
+        // Same for a new consumer on the subscription
+        consumer.close();
+        consumer = subscribe(topic, true);
+        List<Message<String>> messages = new ArrayList<>();
+        for (int i = 1; i < 10; i += 2) {
+            Message<String> msg = consumer.receive();
+            assertEquals(msg.getValue(), "msg-" + i);
+            messages.add(msg);
+        }
+        assertNull(consumer.receive(500, TimeUnit.MILLISECONDS));
+
+        // Once all the messages are acknowledged, the batch is not delivered anymore
+        for (Message<String> msg : messages) {
+            consumer.acknowledge(msg);
+        }
+        consumer.close();
+        consumer = subscribe(topic, true);
+        assertNull(consumer.receive(500, TimeUnit.MILLISECONDS));
+        assertEquals(admin.topics().getStats(topic).subscriptions.get("sub").msgBacklog, 0);
+        consumer.close();
+    }
+
+    @Test(timeOut = 30000)
+    public void testBatchIndexAckDisabled() throws Exception {
+        final String topic = "persistent://my-property/my-ns/batch-index-ack-disabled";
+
+        Consumer<String> consumer = subscribe(topic, false);
+        publishBatch(topic, 10);
+
+        for (int i = 0; i < 10; i++) {
+            Message<String> msg = consumer.receive();
+            if (i % 2 == 0) {
+                consumer.acknowledge(msg);
+            }
+        }
+
+        // The whole batch is delivered again
+        consumer.redeliverUnacknowledgedMessages();
+        for (int i = 0; i < 10; i++) {
+            assertEquals(consumer.receive().getValue(), "msg-" + i);
+        }
+        consumer.close();
+    }
+
+    private Consumer<String> subscribe(String topic, boolean batchIndexAckEnabled) throws Exception {
+        return pulsarClient.newConsumer(Schema.STRING).topic(topic).subscriptionName("sub")
+                .subscriptionType(SubscriptionType.Shared)
+                .acknowledgmentGroupTime(0, TimeUnit.MILLISECONDS)
+                .enableBatchIndexAcknowledgment(batchIndexAckEnabled)
+                .subscribe();
+    }
+
+    private void publishBatch(String topic, int numMessages) throws Exception {
+        try (Producer<String> producer = pulsarClient.newProducer(Schema.STRING).topic(topic)
+                .enableBatching(true)
+                .batchingMaxMessages(numMessages)
+                .batchingMaxPublishDelay(1, TimeUnit.HOURS)
+                .create()) {
+            List<CompletableFuture<MessageId>> futures = new ArrayList<>();
+            for (int i = 0; i < numMessages; i++) {
+                futures.add(producer.sendAsync("msg-" + i));
+            }
+            FutureUtil.waitForAll(futures).get();
+        }
+    }
+}
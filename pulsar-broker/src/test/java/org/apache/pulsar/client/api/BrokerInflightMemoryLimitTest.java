@@ -0,0 +1,98 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.client.api;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.pulsar.broker.service.InflightMemoryLimiter;
+import org.apache.pulsar.common.util.FutureUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class BrokerInflightMemoryLimitTest extends ProducerConsumerBase {
+    private static final Logger log = LoggerFactory.getLogger(BrokerInflightMemoryLimitTest.class);
+
+    @BeforeMethod
+    @Override
+    protected void setup() throws Exception {
+        this.conf.setMaxInflightDirectMemoryInMB(1);
+        super.internalSetup();
+        super.producerBaseSetup();
+    }
+
+    @AfterMethod
+    @Override
+    protected void cleanup() throws Exception {
+        super.internalCleanup();
+        super.resetConfig();
+    }
+
+    /**
+     * verifies: publishers and dispatchers are paused when the broker in-flight memory is exhausted, and resumed once
+     * the memory is released, without losing messages
+     *
+     * @throws Exception
+     */
+    @Test(timeOut = 60000)
+    public void testPublishAndDispatchOverMemoryLimit() throws Exception {
+
+        log.info("-- Starting {} test --", methodName);
+
+        final String topicName = "persistent://my-property/my-ns/inflightMemoryLimit";
+        final int numMessages = 50;
+        final byte[] payload = new byte[100 * 1024];
+
+        Consumer<byte[]> consumer = pulsarClient.newConsumer().topic(topicName).subscriptionName("my-sub")
+                .subscriptionType(SubscriptionType.Shared).subscribe();
+        Producer<byte[]> producer = pulsarClient.newProducer().topic(topicName).enableBatching(false)
+                .maxPendingMessages(numMessages).create();
+
+        // 5 MB of pending publishes on a 1 MB budget
+        List<CompletableFuture<MessageId>> futures = new ArrayList<>();
+        for (int i = 0; i < numMessages; i++) {
+            futures.add(producer.sendAsync(payload));
+        }
+        FutureUtil.waitForAll(futures).get();
+
+        for (int i = 0; i < numMessages; i++) {
+            Message<byte[]> msg = consumer.receive(5, TimeUnit.SECONDS);
+            Assert.assertNotNull(msg);
+            consumer.acknowledge(msg);
+        }
+
+        InflightMemoryLimiter limiter = pulsar.getBrokerService().getInflightMemoryLimiter();
+        Assert.assertTrue(limiter.getPublishLimitedTimes() > 0);
+        Assert.assertEquals(limiter.getPublishInflightBytes(), 0);
+        Assert.assertEquals(limiter.getPausedPublishersCount(), 0);
+        // The dispatched entries are accounted until they are written to the consumer
+        retryStrategically(test -> limiter.getDispatchInflightBytes() == 0, 5, 100);
+        Assert.assertEquals(limiter.getDispatchInflightBytes(), 0);
+
+        producer.close();
+        consumer.close();
+        log.info("-- Exiting {} test --", methodName);
+    }
+}
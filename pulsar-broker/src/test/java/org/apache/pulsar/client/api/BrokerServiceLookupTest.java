@@ -966,7 +966,7 @@ public class BrokerServiceLookupTest extends ProducerConsumerBase {
             assertEquals(bundleInBroker2.toString(), unsplitBundle);
 
             // update broker-1 bundle report to zk
-            pulsar.getBrokerService().updateRates();
+            pulsar.getBrokerService().updateRates().join();
             pulsar.getLoadManager().get().writeLoadReportOnZookeeper();
             // this will create znode for bundle-data
             pulsar.getLoadManager().get().writeResourceQuotasToZooKeeper();
@@ -0,0 +1,255 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.client.api;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class ConsumerBatchReceiveTest extends ProducerConsumerBase {
+
+    @BeforeMethod
+    @Override
+    protected void setup() throws Exception {
+        super.internalSetup();
+        super.producerBaseSetup();
+    }
+
+    @AfterMethod
+    @Override
+    protected void cleanup() throws Exception {
+        super.internalCleanup();
+    }
+
+    @DataProvider(name = "batching")
+    public Object[][] batching() {
+        return new Object[][] { { false }, { true } };
+    }
+
+    @Test(dataProvider = "batching", timeOut = 30000)
+    public void testBatchReceiveMaxNumMessages(boolean batchingEnabled) throws Exception {
+        final String topic = "persistent://my-property/my-ns/batch-receive-max-messages-" + batchingEnabled;
+
+        Consumer<String> consumer = pulsarClient.newConsumer(Schema.STRING)
+                .topic(topic)
+                .subscriptionName("my-sub")
+                .batchReceivePolicy(BatchReceivePolicy.builder()
+                        .maxNumMessages(10)
+                        .timeout(1, TimeUnit.SECONDS)
+                        .build())
+                .subscribe();
+
+        sendMessages(topic, 25, batchingEnabled);
+
+        List<String> received = new ArrayList<>();
+        assertEquals(receiveAndAck(consumer, received), 10);
+        assertEquals(receiveAndAck(consumer, received), 10);
+        // Only 5 messages are left, the batch is completed by the timeout
+        assertEquals(receiveAndAck(consumer, received), 5);
+
+        for (int i = 0; i < 25; i++) {
+            assertEquals(received.get(i), "my-message-" + i);
+        }
+
+        // Nothing else to receive
+        assertEquals(consumer.batchReceive().size(), 0);
+        consumer.close();
+    }
+
+    @Test(timeOut = 30000)
+    public void testBatchReceiveMaxNumBytes() throws Exception {
+        final String topic = "persistent://my-property/my-ns/batch-receive-max-bytes";
+
+        Consumer<byte[]> consumer = pulsarClient.newConsumer()
+                .topic(topic)
+                .subscriptionName("my-sub")
+                .batchReceivePolicy(BatchReceivePolicy.builder()
+                        .maxNumBytes(1000)
+                        .timeout(1, TimeUnit.SECONDS)
+                        .build())
+                .subscribe();
+
+        Producer<byte[]> producer = pulsarClient.newProducer()
+                .topic(topic)
+                .enableBatching(false)
+                .create();
+        for (int i = 0; i < 30; i++) {
+            producer.send(new byte[100]);
+        }
+        producer.close();
+
+        int totalReceived = 0;
+        while (totalReceived < 30) {
+            Messages<byte[]> messages = consumer.batchReceive();
+            assertTrue(messages.size() > 0 && messages.size() <= 10);
+            for (Message<byte[]> message : messages) {
+                consumer.acknowledge(message);
+            }
+            totalReceived += messages.size();
+        }
+        assertEquals(totalReceived, 30);
+        consumer.close();
+    }
+
+    @Test(timeOut = 30000)
+    public void testBatchReceiveAsync() throws Exception {
+        final String topic = "persistent://my-property/my-ns/batch-receive-async";
+
+        Consumer<String> consumer = pulsarClient.newConsumer(Schema.STRING)
+                .topic(topic)
+                .subscriptionName("my-sub")
+                .batchReceivePolicy(BatchReceivePolicy.builder()
+                        .maxNumMessages(5)
+                        .timeout(1, TimeUnit.HOURS)
+                        .build())
+                .subscribe();
+
+        // The pending batch receive is completed as soon as the batch is full
+        CompletableFuture<Messages<String>> future = consumer.batchReceiveAsync();
+        assertFalse(future.isDone());
+
+        sendMessages(topic, 5, false);
+
+        Messages<String> messages = future.get(10, TimeUnit.SECONDS);
+        assertEquals(messages.size(), 5);
+        int i = 0;
+        for (Message<String> message : messages) {
+            assertEquals(message.getValue(), "my-message-" + i++);
+            consumer.acknowledge(message);
+        }
+
+        // Pending batch receives are failed when the consumer is closed
+        future = consumer.batchReceiveAsync();
+        consumer.close();
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail("should have failed");
+        } catch (Exception e) {
+            assertTrue(e.getCause() instanceof PulsarClientException.AlreadyClosedException);
+        }
+    }
+
+    @Test(timeOut = 30000)
+    public void testBatchReceiveTimeout() throws Exception {
+        final String topic = "persistent://my-property/my-ns/batch-receive-timeout";
+
+        Consumer<String> consumer = pulsarClient.newConsumer(Schema.STRING)
+                .topic(topic)
+                .subscriptionName("my-sub")
+                .batchReceivePolicy(BatchReceivePolicy.builder()
+                        .maxNumMessages(100)
+                        .timeout(100, TimeUnit.MILLISECONDS)
+                        .build())
+                .subscribe();
+
+        long start = System.nanoTime();
+        Messages<String> messages = consumer.batchReceiveAsync().get();
+        assertEquals(messages.size(), 0);
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 100);
+        consumer.close();
+    }
+
+    @Test(dataProvider = "batching", timeOut = 30000)
+    public void testBatchReceivePartitionedTopic(boolean batchingEnabled) throws Exception {
+        final String topic = "persistent://my-property/my-ns/batch-receive-partitioned-" + batchingEnabled;
+        admin.topics().createPartitionedTopic(topic, 3);
+
+        Consumer<String> consumer = pulsarClient.newConsumer(Schema.STRING)
+                .topic(topic)
+                .subscriptionName("my-sub")
+                .batchReceivePolicy(BatchReceivePolicy.builder()
+                        .maxNumMessages(10)
+                        .timeout(1, TimeUnit.SECONDS)
+                        .build())
+                .subscribe();
+
+        Producer<String> producer = pulsarClient.newProducer(Schema.STRING)
+                .topic(topic)
+                .enableBatching(batchingEnabled)
+                .messageRoutingMode(MessageRoutingMode.RoundRobinPartition)
+                .create();
+        for (int i = 0; i < 30; i++) {
+            producer.sendAsync("my-message-" + i);
+        }
+        producer.flush();
+        producer.close();
+
+        Set<String> received = new HashSet<>();
+        while (received.size() < 30) {
+            Messages<String> messages = consumer.batchReceive();
+            assertTrue(messages.size() <= 10);
+            for (Message<String> message : messages) {
+                assertTrue(received.add(message.getValue()));
+                consumer.acknowledge(message);
+            }
+        }
+        consumer.close();
+    }
+
+    @Test
+    public void testBatchReceiveWithListener() throws Exception {
+        Consumer<String> consumer = pulsarClient.newConsumer(Schema.STRING)
+                .topic("persistent://my-property/my-ns/batch-receive-listener")
+                .subscriptionName("my-sub")
+                .messageListener((c, msg) -> {})
+                .subscribe();
+
+        try {
+            consumer.batchReceive();
+            fail("should have failed");
+        } catch (PulsarClientException.InvalidConfigurationException e) {
+            // Ok
+        }
+        consumer.close();
+    }
+
+    private void sendMessages(String topic, int numMessages, boolean batchingEnabled) throws Exception {
+        Producer<String> producer = pulsarClient.newProducer(Schema.STRING)
+                .topic(topic)
+                .enableBatching(batchingEnabled)
+                .create();
+        for (int i = 0; i < numMessages; i++) {
+            producer.sendAsync("my-message-" + i);
+        }
+        producer.flush();
+        producer.close();
+    }
+
+    private static int receiveAndAck(Consumer<String> consumer, List<String> received) throws Exception {
+        Messages<String> messages = consumer.batchReceive();
+        for (Message<String> message : messages) {
+            received.add(message.getValue());
+            consumer.acknowledge(message);
+        }
+        return messages.size();
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.client.api;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import com.google.common.collect.Sets;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.pulsar.common.policies.data.TopicStats;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class DelayedDeliveryTest extends ProducerConsumerBase {
+
+    @BeforeMethod
+    @Override
+    protected void setup() throws Exception {
+        conf.setDelayedDeliveryTickTimeMillis(100);
+        super.internalSetup();
+        super.producerBaseSetup();
+    }
+
+    @AfterMethod
+    @Override
+    protected void cleanup() throws Exception {
+        super.internalCleanup();
+    }
+
+    @Test(timeOut = 30000)
+    public void testDelayedDelivery() throws Exception {
+        final String topic = "persistent://my-property/my-ns/delayed-delivery";
+
+        Consumer<String> failoverConsumer = pulsarClient.newConsumer(Schema.STRING).topic(topic)
+                .subscriptionName("failover-sub").subscriptionType(SubscriptionType.Failover).subscribe();
+
+        Consumer<String> sharedConsumer = pulsarClient.newConsumer(Schema.STRING).topic(topic)
+                .subscriptionName("shared-sub").subscriptionType(SubscriptionType.Shared).subscribe();
+
+        Producer<String> producer = pulsarClient.newProducer(Schema.STRING).topic(topic).create();
+
+        for (int i = 0; i < 10; i++) {
+            producer.newMessage().value("msg-" + i).deliverAfter(3, TimeUnit.SECONDS).send();
+        }
+
+        // Failover subscriptions ignore the delivery time
+        for (int i = 0; i < 10; i++) {
+            Message<String> msg = failoverConsumer.receive(100, TimeUnit.MILLISECONDS);
+            assertEquals(msg.getValue(), "msg-" + i);
+        }
+
+        // Delayed messages are not delivered before their time and are reported in the stats
+        assertNull(sharedConsumer.receive(100, TimeUnit.MILLISECONDS));
+        TopicStats stats = admin.topics().getStats(topic);
+        assertEquals(stats.subscriptions.get("shared-sub").msgDelayed, 10);
+        assertEquals(stats.subscriptions.get("failover-sub").msgDelayed, 0);
+
+        // Messages released at the same time are replayed without any ordering guarantee
+        Set<String> received = new TreeSet<>();
+        for (int i = 0; i < 10; i++) {
+            Message<String> msg = sharedConsumer.receive(10, TimeUnit.SECONDS);
+            received.add(msg.getValue());
+            sharedConsumer.acknowledge(msg);
+        }
+        assertEquals(received.size(), 10);
+
+        assertEquals(admin.topics().getStats(topic).subscriptions.get("shared-sub").msgDelayed, 0);
+    }
+
+    @Test(timeOut = 30000)
+    public void testOrderingDispatch() throws Exception {
+        final String topic = "persistent://my-property/my-ns/delayed-delivery-ordering";
+
+        Consumer<String> consumer = pulsarClient.newConsumer(Schema.STRING).topic(topic)
+                .subscriptionName("shared-sub").subscriptionType(SubscriptionType.Shared).subscribe();
+
+        Producer<String> producer = pulsarClient.newProducer(Schema.STRING).topic(topic).create();
+
+        // Messages published later are due earlier
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 10; i++) {
+            producer.newMessage().value("msg-" + i).deliverAt(now + 3000 - i * 200).send();
+        }
+        // Messages without delivery time are dispatched right away
+        producer.newMessage().value("immediate").send();
+
+        Message<String> msg = consumer.receive(1, TimeUnit.SECONDS);
+        assertEquals(msg.getValue(), "immediate");
+        consumer.acknowledge(msg);
+
+        for (int i = 9; i >= 0; i--) {
+            msg = consumer.receive(10, TimeUnit.SECONDS);
+            assertEquals(msg.getValue(), "msg-" + i);
+            assertTrue(System.currentTimeMillis() >= now + 3000 - i * 200);
+            consumer.acknowledge(msg);
+        }
+    }
+
+    @Test(timeOut = 30000)
+    public void testDelayedMessagesAreNotBatched() throws Exception {
+        final String topic = "persistent://my-property/my-ns/delayed-delivery-batching";
+
+        Consumer<String> consumer = pulsarClient.newConsumer(Schema.STRING).topic(topic)
+                .subscriptionName("shared-sub").subscriptionType(SubscriptionType.Shared).subscribe();
+
+        Producer<String> producer = pulsarClient.newProducer(Schema.STRING).topic(topic).enableBatching(true)
+                .batchingMaxPublishDelay(1, TimeUnit.SECONDS).create();
+
+        for (int i = 0; i < 10; i++) {
+            if (i % 2 == 0) {
+                producer.newMessage().value("msg-" + i).deliverAfter(2, TimeUnit.SECONDS).sendAsync();
+            } else {
+                producer.newMessage().value("msg-" + i).sendAsync();
+            }
+        }
+        producer.flush();
+
+        // Only the messages without delivery time are received first
+        for (int i = 1; i < 10; i += 2) {
+            Message<String> msg = consumer.receive(1, TimeUnit.SECONDS);
+            assertEquals(msg.getValue(), "msg-" + i);
+            consumer.acknowledge(msg);
+        }
+
+        Set<String> received = new TreeSet<>();
+        for (int i = 0; i < 10; i += 2) {
+            Message<String> msg = consumer.receive(10, TimeUnit.SECONDS);
+            received.add(msg.getValue());
+            consumer.acknowledge(msg);
+        }
+        assertEquals(received, Sets.newTreeSet(Arrays.asList("msg-0", "msg-2", "msg-4", "msg-6", "msg-8")));
+    }
+}
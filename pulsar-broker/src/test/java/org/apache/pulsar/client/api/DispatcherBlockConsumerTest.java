@@ -1025,7 +1025,7 @@ public class DispatcherBlockConsumerTest extends ProducerConsumerBase {
 
     private void rolloverPerIntervalStats() {
         try {
-            pulsar.getExecutor().submit(() -> pulsar.getBrokerService().updateRates()).get();
+            pulsar.getBrokerService().updateRates().join();
         } catch (Exception e) {
             log.error("Stats executor error", e);
         }
@@ -0,0 +1,209 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.client.api;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class KeySharedSubscriptionTest extends ProducerConsumerBase {
+
+    private static final int NUMBER_OF_KEYS = 10;
+
+    @BeforeMethod
+    @Override
+    protected void setup() throws Exception {
+        super.internalSetup();
+        super.producerBaseSetup();
+    }
+
+    @AfterMethod
+    @Override
+    protected void cleanup() throws Exception {
+        super.internalCleanup();
+    }
+
+    @DataProvider(name = "batching")
+    public Object[][] batching() {
+        return new Object[][] { { false }, { true } };
+    }
+
+    @Test(dataProvider = "batching", timeOut = 30000)
+    public void testSendAndReceiveWithKeys(boolean batchingEnabled) throws Exception {
+        final String topic = "persistent://my-property/my-ns/key-shared-" + batchingEnabled;
+
+        List<Consumer<String>> consumers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            consumers.add(createConsumer(topic));
+        }
+
+        Producer<String> producer = createProducer(topic, batchingEnabled);
+        for (int i = 0; i < 300; i++) {
+            producer.newMessage().key(String.valueOf(i % NUMBER_OF_KEYS)).value(String.valueOf(i)).sendAsync();
+        }
+        producer.flush();
+
+        // Each key is received by a single consumer, in the publish order
+        Map<String, Consumer<String>> keyOwners = new HashMap<>();
+        Map<String, Integer> lastValues = new HashMap<>();
+        int received = 0;
+        for (Consumer<String> consumer : consumers) {
+            Message<String> message;
+            while ((message = consumer.receive(1, TimeUnit.SECONDS)) != null) {
+                Consumer<String> owner = keyOwners.putIfAbsent(message.getKey(), consumer);
+                assertTrue(owner == null || owner == consumer);
+                Integer lastValue = lastValues.put(message.getKey(), Integer.parseInt(message.getValue()));
+                assertTrue(lastValue == null || lastValue < Integer.parseInt(message.getValue()));
+                consumer.acknowledge(message);
+                received++;
+            }
+        }
+        assertEquals(received, 300);
+        assertEquals(keyOwners.size(), NUMBER_OF_KEYS);
+    }
+
+    @Test(timeOut = 30000)
+    public void testNonKeyedMessagesGoToSameConsumer() throws Exception {
+        final String topic = "persistent://my-property/my-ns/key-shared-no-key";
+
+        Consumer<String> consumer1 = createConsumer(topic);
+        Consumer<String> consumer2 = createConsumer(topic);
+
+        Producer<String> producer = createProducer(topic, false);
+        for (int i = 0; i < 50; i++) {
+            producer.send(String.valueOf(i));
+        }
+
+        Message<String> first1 = consumer1.receive(1, TimeUnit.SECONDS);
+        Message<String> first2 = consumer2.receive(1, TimeUnit.SECONDS);
+        assertTrue(first1 == null ^ first2 == null);
+
+        Consumer<String> owner = first1 != null ? consumer1 : consumer2;
+        Message<String> message = first1 != null ? first1 : first2;
+        for (int i = 0; i < 50; i++) {
+            assertEquals(message.getValue(), String.valueOf(i));
+            owner.acknowledge(message);
+            message = owner.receive(1, TimeUnit.SECONDS);
+        }
+        assertNull(message);
+    }
+
+    @Test(timeOut = 30000)
+    public void testConsumerLeaves() throws Exception {
+        final String topic = "persistent://my-property/my-ns/key-shared-consumer-leaves";
+
+        Consumer<String> consumer1 = createConsumer(topic);
+        Consumer<String> consumer2 = createConsumer(topic);
+
+        Producer<String> producer = createProducer(topic, false);
+        for (int i = 0; i < 100; i++) {
+            producer.send(String.valueOf(i));
+            producer.newMessage().key(String.valueOf(i % NUMBER_OF_KEYS)).value(String.valueOf(i)).send();
+        }
+
+        // Unacknowledged messages of a closed consumer are dispatched to the remaining one
+        consumer2.close();
+
+        int received = 0;
+        Message<String> message;
+        while ((message = consumer1.receive(1, TimeUnit.SECONDS)) != null) {
+            consumer1.acknowledge(message);
+            received++;
+        }
+        assertEquals(received, 200);
+    }
+
+    @Test(timeOut = 30000)
+    public void testSlowConsumerDoesNotBlockOthers() throws Exception {
+        final String topic = "persistent://my-property/my-ns/key-shared-slow-consumer";
+
+        // The slow consumer runs out of permits and doesn't receive until the fast one is drained
+        Consumer<String> slowConsumer = pulsarClient.newConsumer(Schema.STRING)
+                .topic(topic)
+                .subscriptionName("key-shared-sub")
+                .subscriptionType(SubscriptionType.Key_Shared)
+                .receiverQueueSize(10)
+                .subscribe();
+        Consumer<String> fastConsumer = createConsumer(topic);
+
+        Producer<String> producer = createProducer(topic, false);
+        for (int i = 0; i < 500; i++) {
+            producer.newMessage().key(String.valueOf(i % NUMBER_OF_KEYS)).value(String.valueOf(i)).sendAsync();
+        }
+        producer.flush();
+
+        int received = 0;
+        Message<String> message;
+        while ((message = fastConsumer.receive(1, TimeUnit.SECONDS)) != null) {
+            fastConsumer.acknowledge(message);
+            received++;
+        }
+        while ((message = slowConsumer.receive(1, TimeUnit.SECONDS)) != null) {
+            slowConsumer.acknowledge(message);
+            received++;
+        }
+        assertEquals(received, 500);
+    }
+
+    @Test(timeOut = 30000)
+    public void testCannotUseCumulativeAck() throws Exception {
+        final String topic = "persistent://my-property/my-ns/key-shared-cumulative-ack";
+
+        Consumer<String> consumer = createConsumer(topic);
+        Producer<String> producer = createProducer(topic, false);
+        producer.newMessage().key("a").value("1").send();
+
+        Message<String> message = consumer.receive();
+        try {
+            consumer.acknowledgeCumulative(message);
+            fail("Cumulative ack is not allowed on Key_Shared subscriptions");
+        } catch (PulsarClientException.InvalidConfigurationException e) {
+            // Ok
+        }
+    }
+
+    private Consumer<String> createConsumer(String topic) throws PulsarClientException {
+        return pulsarClient.newConsumer(Schema.STRING)
+                .topic(topic)
+                .subscriptionName("key-shared-sub")
+                .subscriptionType(SubscriptionType.Key_Shared)
+                .subscribe();
+    }
+
+    private Producer<String> createProducer(String topic, boolean batchingEnabled) throws PulsarClientException {
+        return pulsarClient.newProducer(Schema.STRING)
+                .topic(topic)
+                .enableBatching(batchingEnabled)
+                .enableKeyBasedBatching(batchingEnabled)
+                .batchingMaxPublishDelay(10, TimeUnit.MILLISECONDS)
+                .create();
+    }
+}
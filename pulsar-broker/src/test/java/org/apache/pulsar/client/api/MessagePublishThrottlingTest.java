@@ -0,0 +1,133 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.client.api;
+
+import com.google.common.collect.Sets;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.pulsar.broker.service.PublishRateLimiterImpl;
+import org.apache.pulsar.broker.service.persistent.PersistentTopic;
+import org.apache.pulsar.client.admin.PulsarAdminException;
+import org.apache.pulsar.common.policies.data.PublishRate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class MessagePublishThrottlingTest extends ProducerConsumerBase {
+    private static final Logger log = LoggerFactory.getLogger(MessagePublishThrottlingTest.class);
+
+    @BeforeMethod
+    @Override
+    protected void setup() throws Exception {
+        this.conf.setClusterName("test");
+        super.internalSetup();
+        super.producerBaseSetup();
+    }
+
+    @AfterMethod
+    @Override
+    protected void cleanup() throws Exception {
+        super.internalCleanup();
+        super.resetConfig();
+    }
+
+    /**
+     * verifies: publish-rate change gets reflected immediately into topic at runtime
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testPublishRateDynamicallyChange() throws Exception {
+
+        log.info("-- Starting {} test --", methodName);
+
+        final String namespace = "my-property/throttling_publish_ns";
+        final String topicName = "persistent://" + namespace + "/throttlingChange";
+
+        admin.namespaces().createNamespace(namespace, Sets.newHashSet("test"));
+        Producer<byte[]> producer = pulsarClient.newProducer().topic(topicName).create();
+        PersistentTopic topic = (PersistentTopic) pulsar.getBrokerService().getOrCreateTopic(topicName).get();
+        // (1) publish-rate is disabled initially
+        Assert.assertFalse(topic.getPublishRateLimiter().isPublishRateEnabled());
+        try {
+            admin.namespaces().getPublishRate(namespace);
+            Assert.fail("publish-rate should not be configured");
+        } catch (PulsarAdminException.NotFoundException e) {
+            // Ok
+        }
+
+        // (2) enable it on the namespace
+        PublishRate publishRate = new PublishRate(100, -1);
+        admin.namespaces().setPublishRate(namespace, publishRate);
+        retryStrategically((test) -> topic.getPublishRateLimiter().isPublishRateEnabled(), 5, 100);
+        Assert.assertTrue(topic.getPublishRateLimiter() instanceof PublishRateLimiterImpl);
+        Assert.assertEquals(admin.namespaces().getPublishRate(namespace), publishRate);
+
+        // (3) disable it again
+        admin.namespaces().setPublishRate(namespace, new PublishRate(-1, -1));
+        retryStrategically((test) -> !topic.getPublishRateLimiter().isPublishRateEnabled(), 5, 100);
+        Assert.assertFalse(topic.getPublishRateLimiter().isPublishRateEnabled());
+
+        producer.close();
+        log.info("-- Exiting {} test --", methodName);
+    }
+
+    /**
+     * verifies: producers can't publish faster than the namespace publish-rate, and the throttling is reported in the
+     * topic stats
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSimplePublishMessageThrottling() throws Exception {
+
+        log.info("-- Starting {} test --", methodName);
+
+        final String namespace = "my-property/throttling_publish_ns";
+        final String topicName = "persistent://" + namespace + "/throttlingPublish";
+        final int messageRate = 10;
+        final int numProducedMessages = 30;
+
+        admin.namespaces().createNamespace(namespace, Sets.newHashSet("test"));
+        admin.namespaces().setPublishRate(namespace, new PublishRate(messageRate, -1));
+
+        Producer<byte[]> producer = pulsarClient.newProducer().topic(topicName).enableBatching(false).create();
+        PersistentTopic topic = (PersistentTopic) pulsar.getBrokerService().getOrCreateTopic(topicName).get();
+        retryStrategically((test) -> topic.getPublishRateLimiter().isPublishRateEnabled(), 5, 100);
+        Assert.assertTrue(topic.getPublishRateLimiter().isPublishRateEnabled());
+
+        long start = System.nanoTime();
+        for (int i = 0; i < numProducedMessages; i++) {
+            producer.send(new byte[10]);
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // 30 messages at 10 msg/s span at least 3 windows
+        Assert.assertTrue(elapsedMs >= 1500, "publishing was not throttled: " + elapsedMs + " ms");
+        Assert.assertTrue(topic.getStats().publishRateLimitedTimes > 0);
+        Assert.assertTrue(admin.topics().getStats(topicName).publishRateLimitedTimes > 0);
+
+        producer.close();
+        log.info("-- Exiting {} test --", methodName);
+    }
+}
@@ -806,7 +806,7 @@ public class NonPersistentTopicTest extends ProducerConsumerBase {
             latch.await();
 
             NonPersistentTopic topic = (NonPersistentTopic) pulsar.getBrokerService().getOrCreateTopic(topicName).get();
-            pulsar.getBrokerService().updateRates();
+            pulsar.getBrokerService().updateRates().join();
             NonPersistentTopicStats stats = topic.getStats();
             NonPersistentPublisherStats npStats = stats.getPublishers().get(0);
             NonPersistentSubscriptionStats sub1Stats = stats.getSubscriptions().get("subscriber-1");
@@ -1005,7 +1005,7 @@ public class NonPersistentTopicTest extends ProducerConsumerBase {
 
     private void rolloverPerIntervalStats(PulsarService pulsar) {
         try {
-            pulsar.getExecutor().submit(() -> pulsar.getBrokerService().updateRates()).get();
+            pulsar.getBrokerService().updateRates().join();
         } catch (Exception e) {
             log.error("Stats executor error", e);
         }
@@ -31,6 +31,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
+import org.apache.pulsar.client.impl.MultiTopicsConsumerImpl;
 import org.apache.pulsar.client.impl.PartitionedProducerImpl;
 import org.apache.pulsar.common.naming.TopicName;
 import org.slf4j.Logger;
@@ -549,6 +550,58 @@ public class PartitionedProducerConsumerTest extends ProducerConsumerBase {
         log.info("-- Exiting {} test --", methodName);
     }
 
+    @Test(timeOut = 30000)
+    public void testAutoUpdatePartitions() throws Exception {
+        log.info("-- Starting {} test --", methodName);
+
+        int numPartitions = 2;
+        String topicName = "persistent://my-property/my-ns/my-partitionedtopic-auto-update-" + System.currentTimeMillis();
+        admin.topics().createPartitionedTopic(topicName, numPartitions);
+
+        PartitionedProducerImpl<byte[]> producer = (PartitionedProducerImpl<byte[]>) pulsarClient.newProducer()
+                .topic(topicName)
+                .enableBatching(false)
+                .messageRoutingMode(MessageRoutingMode.RoundRobinPartition)
+                .autoUpdatePartitionsInterval(1, TimeUnit.SECONDS)
+                .create();
+        MultiTopicsConsumerImpl<byte[]> consumer = (MultiTopicsConsumerImpl<byte[]>) pulsarClient.newConsumer()
+                .topic(topicName)
+                .subscriptionName("my-partitioned-subscriber")
+                .autoUpdatePartitionsInterval(1, TimeUnit.SECONDS)
+                .subscribe();
+        assertEquals(producer.getProducers().size(), numPartitions);
+        assertEquals(consumer.getConsumers().size(), numPartitions);
+
+        // The producer and the consumer pick up the new partitions without being recreated
+        numPartitions = 4;
+        admin.topics().updatePartitionedTopic(topicName, numPartitions);
+        retryStrategically((test) -> producer.getProducers().size() == 4 && consumer.getConsumers().size() == 4, 10,
+                500);
+        assertEquals(producer.getProducers().size(), numPartitions);
+        assertEquals(consumer.getConsumers().size(), numPartitions);
+
+        int numMessages = 20;
+        for (int i = 0; i < numMessages; i++) {
+            producer.send(("my-message-" + i).getBytes());
+        }
+
+        Set<String> partitions = Sets.newHashSet();
+        for (int i = 0; i < numMessages; i++) {
+            Message<byte[]> msg = consumer.receive(5, TimeUnit.SECONDS);
+            Assert.assertNotNull(msg, "Message should not be null");
+            consumer.acknowledge(msg);
+            partitions.add(msg.getTopicName());
+        }
+        assertEquals(partitions.size(), numPartitions);
+
+        producer.close();
+        consumer.unsubscribe();
+        consumer.close();
+        admin.topics().deletePartitionedTopic(topicName);
+
+        log.info("-- Exiting {} test --", methodName);
+    }
+
     private void receiveAsync(Consumer<byte[]> consumer, int totalMessage, int currentMessage, CountDownLatch latch,
             final Set<String> consumeMsg, ExecutorService executor) throws PulsarClientException {
         if (currentMessage < totalMessage) {
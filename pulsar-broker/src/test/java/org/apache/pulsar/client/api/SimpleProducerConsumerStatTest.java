@@ -350,7 +350,7 @@ public class SimpleProducerConsumerStatTest extends ProducerConsumerBase {
         t1.start();
         Thread.sleep(2000); // Two seconds sleep
         runTest.set(false);
-        pulsar.getBrokerService().updateRates();
+        pulsar.getBrokerService().updateRates().join();
         double actualRate = admin.topics().getStats(topicName).msgRateOut;
         assertTrue(actualRate > (produceRate / batchSize));
         consumer.unsubscribe();
@@ -26,6 +26,7 @@ import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
+import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
@@ -34,6 +35,7 @@ import static org.testng.Assert.fail;
 import java.lang.reflect.Field;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
@@ -61,14 +63,19 @@ import org.apache.pulsar.client.api.PulsarClient;
 import org.apache.pulsar.client.api.PulsarClientException;
 import org.apache.pulsar.client.api.SubscriptionType;
 import org.apache.pulsar.client.impl.HandlerState.State;
+import org.apache.pulsar.common.api.Commands;
 import org.apache.pulsar.common.api.PulsarHandler;
 import org.apache.pulsar.common.naming.NamespaceBundle;
 import org.apache.pulsar.common.naming.TopicName;
 import org.apache.pulsar.common.policies.data.ClusterData;
+import org.apache.pulsar.common.policies.data.ConsumerStats;
 import org.apache.pulsar.common.policies.data.RetentionPolicies;
+import org.apache.pulsar.common.policies.data.SubscriptionStats;
 import org.apache.pulsar.common.util.FutureUtil;
 import org.apache.pulsar.common.util.ObjectMapperFactory;
 import org.apache.pulsar.common.util.collections.ConcurrentLongHashMap;
+import org.apache.pulsar.common.util.collections.LongPairRangeSet;
+import org.apache.pulsar.common.util.collections.LongPairRangeSet.LongPair;
 import org.apache.pulsar.zookeeper.ZooKeeperDataCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -732,4 +739,57 @@ public class BrokerClientIntegrationTest extends ProducerConsumerBase {
         log.info("-- Exiting {} test --", methodName);
     }
 
+    /**
+     * A range acknowledged by the client may be arbitrarily large: the broker must not process it entry by entry.
+     */
+    @Test(timeOut = 30000)
+    public void testAckOfRangeLargerThanLedger() throws Exception {
+        final String topic = "persistent://my-property/my-ns/ack-large-range";
+        final int numMessages = 10;
+
+        ConsumerImpl<byte[]> consumer = (ConsumerImpl<byte[]>) pulsarClient.newConsumer().topic(topic)
+                .subscriptionName("sub").subscriptionType(SubscriptionType.Shared).subscribe();
+        Producer<byte[]> producer = pulsarClient.newProducer().topic(topic).enableBatching(false).create();
+        for (int i = 0; i < numMessages; i++) {
+            producer.send(("msg-" + i).getBytes());
+        }
+
+        List<Message<byte[]>> messages = new ArrayList<>();
+        for (int i = 0; i < numMessages; i++) {
+            messages.add(consumer.receive());
+        }
+        long ledgerId = ((MessageIdImpl) messages.get(0).getMessageId()).getLedgerId();
+
+        LongPairRangeSet<LongPair> range = new LongPairRangeSet.DefaultRangeSet<>(LongPair::new, pair -> pair);
+        range.addOpenClosed(ledgerId, -1, ledgerId, Long.MAX_VALUE);
+        consumer.cnx().ctx().writeAndFlush(
+                Commands.newMultiMessageAck(consumer.consumerId, range, Collections.emptyList()));
+
+        // The pending acks are released, but the cursor rejects a range going past the last confirmed entry
+        retryStrategically(test -> getConsumerStats(topic).unackedMessages == 0, 5, 200);
+        assertEquals(getConsumerStats(topic).unackedMessages, 0);
+        assertEquals(getSubscriptionStats(topic).msgBacklog, numMessages);
+
+        for (Message<byte[]> message : messages) {
+            consumer.acknowledge(message);
+        }
+        retryStrategically(test -> getSubscriptionStats(topic).msgBacklog == 0, 5, 200);
+        assertEquals(getSubscriptionStats(topic).msgBacklog, 0);
+
+        producer.close();
+        consumer.close();
+    }
+
+    private ConsumerStats getConsumerStats(String topic) {
+        return getSubscriptionStats(topic).consumers.get(0);
+    }
+
+    private SubscriptionStats getSubscriptionStats(String topic) {
+        try {
+            return admin.topics().getStats(topic).subscriptions.get("sub");
+        } catch (PulsarAdminException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
 }
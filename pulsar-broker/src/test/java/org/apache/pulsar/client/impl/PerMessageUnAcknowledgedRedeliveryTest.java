@@ -114,14 +114,29 @@ public class PerMessageUnAcknowledgedRedeliveryTest extends BrokerTestBase {
         // 7. Simulate ackTimeout
         ((ConsumerImpl<byte[]>) consumer).getUnAckedMessageTracker().toggle();
 
-        // 8. producer publish more messages
+        // 8. Receiver receives the messages redelivered at the next tick, ack them
+        message = consumer.receive();
+        int redelivered = 0;
+        while (message != null) {
+            redelivered++;
+            String data = new String(message.getData());
+            log.info("Consumer received : " + data);
+            consumer.acknowledge(message);
+            message = consumer.receive(100, TimeUnit.MILLISECONDS);
+        }
+        assertEquals(redelivered, 5);
+        size = ((ConsumerImpl<byte[]>) consumer).getUnAckedMessageTracker().size();
+        log.info(key + " Unacked Message Tracker size is " + size);
+        assertEquals(size, 0);
+
+        // 9. producer publish more messages
         for (int i = 0; i < totalMessages / 3; i++) {
             String m = messagePredicate + i;
             log.info("Producer produced: " + m);
             producer.send(m.getBytes());
         }
 
-        // 9. Receiver receives the message, doesn't ack
+        // 10. Receiver receives the message, doesn't ack
         message = consumer.receive();
         while (message != null) {
             String data = new String(message.getData());
@@ -130,13 +145,13 @@ public class PerMessageUnAcknowledgedRedeliveryTest extends BrokerTestBase {
         }
         size = ((ConsumerImpl<byte[]>) consumer).getUnAckedMessageTracker().size();
         log.info(key + " Unacked Message Tracker size is " + size);
-        assertEquals(size, 10);
+        assertEquals(size, 5);
 
         Thread.sleep(ackTimeOutMillis);
 
-        // 10. Receiver receives redelivered messages
+        // 11. Receiver receives the messages redelivered after the ack timeout
         message = consumer.receive();
-        int redelivered = 0;
+        redelivered = 0;
         while (message != null) {
             redelivered++;
             String data = new String(message.getData());
@@ -147,7 +162,7 @@ public class PerMessageUnAcknowledgedRedeliveryTest extends BrokerTestBase {
         assertEquals(redelivered, 5);
         size = ((ConsumerImpl<byte[]>) consumer).getUnAckedMessageTracker().size();
         log.info(key + " Unacked Message Tracker size is " + size);
-        assertEquals(size, 5);
+        assertEquals(size, 0);
     }
 
     @Test(timeOut = testTimeout)
@@ -212,14 +227,29 @@ public class PerMessageUnAcknowledgedRedeliveryTest extends BrokerTestBase {
         // 7. Simulate ackTimeout
         ((ConsumerImpl<byte[]>) consumer).getUnAckedMessageTracker().toggle();
 
-        // 8. producer publish more messages
+        // 8. Receiver receives the messages redelivered at the next tick, ack them
+        message = consumer.receive();
+        int redelivered = 0;
+        while (message != null) {
+            redelivered++;
+            String data = new String(message.getData());
+            log.info("Consumer received : " + data);
+            consumer.acknowledge(message);
+            message = consumer.receive(100, TimeUnit.MILLISECONDS);
+        }
+        assertEquals(redelivered, 5);
+        size = ((ConsumerImpl<byte[]>) consumer).getUnAckedMessageTracker().size();
+        log.info(key + " Unacked Message Tracker size is " + size);
+        assertEquals(size, 0);
+
+        // 9. producer publish more messages
         for (int i = 0; i < totalMessages / 3; i++) {
             String m = messagePredicate + i;
             log.info("Producer produced: " + m);
             producer.send(m.getBytes());
         }
 
-        // 9. Receiver receives the message, doesn't ack
+        // 10. Receiver receives the message, doesn't ack
         message = consumer.receive();
         while (message != null) {
             String data = new String(message.getData());
@@ -228,13 +258,13 @@ public class PerMessageUnAcknowledgedRedeliveryTest extends BrokerTestBase {
         }
         size = ((ConsumerImpl<byte[]>) consumer).getUnAckedMessageTracker().size();
         log.info(key + " Unacked Message Tracker size is " + size);
-        assertEquals(size, 10);
+        assertEquals(size, 5);
 
         Thread.sleep(ackTimeOutMillis);
 
-        // 10. Receiver receives redelivered messages
+        // 11. Receiver receives the messages redelivered after the ack timeout
         message = consumer.receive();
-        int redelivered = 0;
+        redelivered = 0;
         while (message != null) {
             redelivered++;
             String data = new String(message.getData());
@@ -242,7 +272,7 @@ public class PerMessageUnAcknowledgedRedeliveryTest extends BrokerTestBase {
             consumer.acknowledge(message);
             message = consumer.receive(100, TimeUnit.MILLISECONDS);
         }
-        assertEquals(redelivered, 10);
+        assertEquals(redelivered, 5);
         size = ((ConsumerImpl<byte[]>) consumer).getUnAckedMessageTracker().size();
         log.info(key + " Unacked Message Tracker size is " + size);
         assertEquals(size, 0);
@@ -310,14 +340,29 @@ public class PerMessageUnAcknowledgedRedeliveryTest extends BrokerTestBase {
         // 7. Simulate ackTimeout
         ((ConsumerImpl<byte[]>) consumer).getUnAckedMessageTracker().toggle();
 
-        // 8. producer publish more messages
+        // 8. Receiver receives the messages redelivered at the next tick, ack them
+        message = consumer.receive();
+        int redelivered = 0;
+        while (message != null) {
+            redelivered++;
+            String data = new String(message.getData());
+            log.info("Consumer received : " + data);
+            consumer.acknowledge(message);
+            message = consumer.receive(100, TimeUnit.MILLISECONDS);
+        }
+        assertEquals(redelivered, 5);
+        size = ((ConsumerImpl<byte[]>) consumer).getUnAckedMessageTracker().size();
+        log.info(key + " Unacked Message Tracker size is " + size);
+        assertEquals(size, 0);
+
+        // 9. producer publish more messages
         for (int i = 0; i < totalMessages / 3; i++) {
             String m = messagePredicate + i;
             log.info("Producer produced: " + m);
             producer.send(m.getBytes());
         }
 
-        // 9. Receiver receives the message, doesn't ack
+        // 10. Receiver receives the message, doesn't ack
         message = consumer.receive();
         while (message != null) {
             String data = new String(message.getData());
@@ -326,13 +371,13 @@ public class PerMessageUnAcknowledgedRedeliveryTest extends BrokerTestBase {
         }
         size = ((ConsumerImpl<byte[]>) consumer).getUnAckedMessageTracker().size();
         log.info(key + " Unacked Message Tracker size is " + size);
-        assertEquals(size, 10);
+        assertEquals(size, 5);
 
         Thread.sleep(ackTimeOutMillis);
 
-        // 10. Receiver receives redelivered messages
+        // 11. Receiver receives the messages redelivered after the ack timeout
         message = consumer.receive();
-        int redelivered = 0;
+        redelivered = 0;
         while (message != null) {
             redelivered++;
             String data = new String(message.getData());
@@ -340,7 +385,7 @@ public class PerMessageUnAcknowledgedRedeliveryTest extends BrokerTestBase {
             consumer.acknowledge(message);
             message = consumer.receive(100, TimeUnit.MILLISECONDS);
         }
-        assertEquals(redelivered, 10);
+        assertEquals(redelivered, 5);
         size = ((ConsumerImpl<byte[]>) consumer).getUnAckedMessageTracker().size();
         log.info(key + " Unacked Message Tracker size is " + size);
         assertEquals(size, 0);
@@ -418,14 +463,29 @@ public class PerMessageUnAcknowledgedRedeliveryTest extends BrokerTestBase {
         ((MultiTopicsConsumerImpl<byte[]>) consumer).getUnAckedMessageTracker().toggle();
         ((MultiTopicsConsumerImpl<byte[]>) consumer).getConsumers().forEach(c -> c.getUnAckedMessageTracker().toggle());
 
-        // 8. producer publish more messages
+        // 8. Receiver receives the messages redelivered at the next tick, ack them
+        message = consumer.receive();
+        int redelivered = 0;
+        while (message != null) {
+            redelivered++;
+            String data = new String(message.getData());
+            log.info("Consumer received : " + data);
+            consumer.acknowledge(message);
+            message = consumer.receive(100, TimeUnit.MILLISECONDS);
+        }
+        assertEquals(redelivered, 5);
+        size = getUnackedMessagesCountInPartitionedConsumer(consumer);
+        log.info(key + " Unacked Message Tracker size is " + size);
+        assertEquals(size, 0);
+
+        // 9. producer publish more messages
         for (int i = 0; i < totalMessages / 3; i++) {
             String m = messagePredicate + i;
             log.info("Producer produced: " + m);
             producer.send(m.getBytes());
         }
 
-        // 9. Receiver receives the message, doesn't ack
+        // 10. Receiver receives the message, doesn't ack
         message = consumer.receive();
         while (message != null) {
             String data = new String(message.getData());
@@ -434,13 +494,13 @@ public class PerMessageUnAcknowledgedRedeliveryTest extends BrokerTestBase {
         }
         size = getUnackedMessagesCountInPartitionedConsumer(consumer);
         log.info(key + " Unacked Message Tracker size is " + size);
-        assertEquals(size, 10);
+        assertEquals(size, 5);
 
         Thread.sleep(ackTimeOutMillis);
 
-        // 10. Receiver receives redelivered messages
+        // 11. Receiver receives the messages redelivered after the ack timeout
         message = consumer.receive();
-        int redelivered = 0;
+        redelivered = 0;
         while (message != null) {
             redelivered++;
             String data = new String(message.getData());
@@ -451,6 +511,6 @@ public class PerMessageUnAcknowledgedRedeliveryTest extends BrokerTestBase {
         assertEquals(redelivered, 5);
         size = getUnackedMessagesCountInPartitionedConsumer(consumer);
         log.info(key + " Unacked Message Tracker size is " + size);
-        assertEquals(size, 5);
+        assertEquals(size, 0);
     }
 }
@@ -24,8 +24,10 @@ import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
 import com.google.common.collect.Lists;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
@@ -673,4 +675,50 @@ public class TopicsConsumerImplTest extends ProducerConsumerBase {
 
         consumer.close();
     }
+
+    // Verify that all the partitions keep delivering when the shared queue is much smaller than the partitions backlog
+    @Test(timeOut = testTimeout)
+    public void testReceiveFromManyPartitionsWithSmallQueue() throws Exception {
+        String key = "ManyPartitionsSmallQueueTest";
+        final String subscriptionName = "my-ex-subscription-" + key;
+        final String messagePredicate = "my-message-" + key + "-";
+        final int numPartitions = 8;
+        final int messagesPerPartition = 20;
+
+        final String topicName = "persistent://prop/use/ns-abc/topic-" + key;
+
+        admin.tenants().createTenant("prop", new TenantInfo());
+        admin.topics().createPartitionedTopic(topicName, numPartitions);
+
+        Consumer<byte[]> consumer = pulsarClient.newConsumer()
+            .topic(topicName)
+            .subscriptionName(subscriptionName)
+            .subscriptionType(SubscriptionType.Shared)
+            .receiverQueueSize(4)
+            .subscribe();
+        assertTrue(consumer instanceof MultiTopicsConsumerImpl);
+
+        Producer<byte[]> producer = pulsarClient.newProducer().topic(topicName)
+            .enableBatching(false)
+            .messageRoutingMode(MessageRoutingMode.RoundRobinPartition)
+            .create();
+        for (int i = 0; i < numPartitions * messagesPerPartition; i++) {
+            producer.sendAsync((messagePredicate + i).getBytes());
+        }
+        producer.flush();
+
+        Map<String, Integer> messagesPerTopic = new HashMap<>();
+        for (int i = 0; i < numPartitions * messagesPerPartition; i++) {
+            Message<byte[]> message = consumer.receive(5, TimeUnit.SECONDS);
+            assertNotNull(message);
+            messagesPerTopic.merge(((TopicMessageImpl<byte[]>) message).getTopicPartitionName(), 1, Integer::sum);
+            consumer.acknowledge(message);
+        }
+        assertEquals(messagesPerTopic.size(), numPartitions);
+        messagesPerTopic.values().forEach(count -> assertEquals(count.intValue(), messagesPerPartition));
+
+        consumer.unsubscribe();
+        consumer.close();
+        producer.close();
+    }
 }
@@ -0,0 +1,129 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.compaction;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.testng.annotations.Test;
+
+public class CompactionKeyIndexTest {
+
+    @Test
+    public void testPutAndRemove() {
+        try (CompactionKeyIndex index = new CompactionKeyIndex(1024 * 1024, null)) {
+            assertEquals(index.size(), 0);
+            assertFalse(index.isLatest("a", 0, 0, 0));
+
+            index.put("a", 1, 1, -1);
+            index.put("b", 1, 2, 0);
+            index.put("b", 1, 2, 1);
+            assertEquals(index.size(), 2);
+            assertTrue(index.isLatest("a", 1, 1, -1));
+            assertFalse(index.isLatest("a", 1, 1, 0));
+            assertFalse(index.isLatest("b", 1, 2, 0));
+            assertTrue(index.isLatest("b", 1, 2, 1));
+
+            index.remove("a");
+            index.remove("c");
+            assertEquals(index.size(), 1);
+            assertFalse(index.isLatest("a", 1, 1, -1));
+            assertFalse(index.isLatest("c", -1, -1, -1));
+            assertTrue(index.contains("a"));
+            assertTrue(index.contains("c"));
+            assertFalse(index.contains("d"));
+
+            index.put("a", 2, 0, -1);
+            assertEquals(index.size(), 2);
+            assertTrue(index.isLatest("a", 2, 0, -1));
+        }
+    }
+
+    @Test
+    public void testResize() {
+        try (CompactionKeyIndex index = new CompactionKeyIndex(1024 * 1024, null, 16)) {
+            for (int i = 0; i < 10000; i++) {
+                index.put("key-" + i, 3, i, -1);
+            }
+            for (int i = 0; i < 10000; i += 2) {
+                index.put("key-" + i, 4, i, -1);
+            }
+            assertEquals(index.size(), 10000);
+            assertEquals(index.capacity(), 16384);
+            assertEquals(index.getMemoryBytes(), 16384 * CompactionKeyIndex.SLOT_SIZE);
+            assertEquals(index.getSpilledBytes(), 0);
+
+            for (int i = 0; i < 10000; i++) {
+                assertEquals(index.isLatest("key-" + i, 3, i, -1), i % 2 == 1);
+                assertEquals(index.isLatest("key-" + i, 4, i, -1), i % 2 == 0);
+            }
+        }
+    }
+
+    @Test
+    public void testResizeUpToMemoryBudget() {
+        // The last table takes the whole budget, the old table it is resized from is not accounted for
+        try (CompactionKeyIndex index = new CompactionKeyIndex(16384 * CompactionKeyIndex.SLOT_SIZE, null, 16)) {
+            for (int i = 0; i < 10000; i++) {
+                index.put("key-" + i, 3, i, -1);
+            }
+            assertEquals(index.capacity(), 16384);
+            assertEquals(index.getMemoryBytes(), 16384 * CompactionKeyIndex.SLOT_SIZE);
+            assertEquals(index.getSpilledBytes(), 0);
+            for (int i = 0; i < 10000; i++) {
+                assertTrue(index.isLatest("key-" + i, 3, i, -1));
+            }
+        }
+    }
+
+    @Test
+    public void testSpillToDisk() throws Exception {
+        File spillDirectory = Files.createTempDirectory("compaction-key-index").toFile();
+        try {
+            // Only the first table fits in memory
+            CompactionKeyIndex index = new CompactionKeyIndex(64 * CompactionKeyIndex.SLOT_SIZE, spillDirectory, 64);
+            for (int i = 0; i < 1000; i++) {
+                index.put("key-" + i, 5, i, -1);
+            }
+            assertEquals(index.getMemoryBytes(), 0);
+            assertEquals(index.getSpilledBytes(), index.capacity() * CompactionKeyIndex.SLOT_SIZE);
+            for (int i = 0; i < 1000; i++) {
+                assertTrue(index.isLatest("key-" + i, 5, i, -1));
+            }
+            // The spill files are unlinked once mapped
+            assertEquals(spillDirectory.list().length, 0);
+
+            index.close();
+            assertEquals(index.getSpilledBytes(), 0);
+            try {
+                index.isLatest("key-0", 5, 0, -1);
+                fail("Should have failed");
+            } catch (IllegalStateException e) {
+                // Expected
+            }
+        } finally {
+            spillDirectory.delete();
+        }
+    }
+}
@@ -25,6 +25,8 @@ import static org.mockito.Mockito.when;
 import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
+import io.prometheus.client.CollectorRegistry;
+
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
@@ -1268,4 +1270,68 @@ public class CompactionTest extends MockedPulsarServiceBaseTest {
         }
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testIncrementalCompaction() throws Exception {
+        String topic = "persistent://my-property/use/my-ns/my-topic1";
+
+        pulsarClient.newConsumer().topic(topic).subscriptionName("sub1").readCompacted(true).subscribe().close();
+
+        try (Producer<byte[]> producer = pulsarClient.newProducer().topic(topic).enableBatching(false)
+                .messageRoutingMode(MessageRoutingMode.SinglePartition).create()) {
+            producer.newMessage().key("key0").value("my-message-0".getBytes()).send();
+            producer.newMessage().key("key1").value("my-message-1".getBytes()).send();
+            producer.newMessage().key("key2").value("my-message-2".getBytes()).send();
+        }
+        try (Producer<byte[]> producer = pulsarClient.newProducer().topic(topic)
+                .maxPendingMessages(2)
+                .enableBatching(true)
+                .batchingMaxMessages(2)
+                .batchingMaxPublishDelay(1, TimeUnit.HOURS)
+                .messageRoutingMode(MessageRoutingMode.SinglePartition).create()) {
+            producer.newMessage().key("key3").value("my-message-3".getBytes()).sendAsync();
+            producer.newMessage().key("key4").value("my-message-4".getBytes()).send();
+        }
+
+        Compactor compactor = new TwoPhaseCompactor(conf, pulsarClient, bk, compactionScheduler,
+                (t) -> ((PersistentTopic) pulsar.getBrokerService().getTopicReference(t).get())
+                        .getCompactedTopic().getCompactedLedgerAndHorizon());
+        long firstLedger = compactor.compact(topic).get();
+
+        // Nothing was published since the last compaction
+        Assert.assertEquals(compactor.compact(topic).get().longValue(), firstLedger);
+
+        try (Producer<byte[]> producer = pulsarClient.newProducer().topic(topic).enableBatching(false)
+                .messageRoutingMode(MessageRoutingMode.SinglePartition).create()) {
+            producer.newMessage().key("key1").value("my-message-5".getBytes()).send();
+            producer.newMessage().key("key2").value("".getBytes()).send();
+            producer.newMessage().key("key4").value("my-message-6".getBytes()).send();
+            producer.newMessage().key("key5").value("my-message-7".getBytes()).send();
+            producer.newMessage().value("my-message-8".getBytes()).send();
+        }
+
+        // Only the 4 entries of the compacted ledger are copied, and the 5 new messages are read in both phases
+        double messagesRead = CollectorRegistry.defaultRegistry.getSampleValue("pulsar_compaction_messages_read");
+        long secondLedger = compactor.compact(topic).get();
+        Assert.assertNotEquals(secondLedger, firstLedger);
+        Assert.assertEquals(
+                CollectorRegistry.defaultRegistry.getSampleValue("pulsar_compaction_messages_read") - messagesRead,
+                14.0);
+
+        List<Pair<String, String>> expected = new ArrayList<>();
+        expected.add(Pair.of("key0", "my-message-0"));
+        expected.add(Pair.of("key3", "my-message-3"));
+        expected.add(Pair.of("key1", "my-message-5"));
+        expected.add(Pair.of("key4", "my-message-6"));
+        expected.add(Pair.of("key5", "my-message-7"));
+        expected.add(Pair.of(null, "my-message-8"));
+        try (Consumer<byte[]> consumer = pulsarClient.newConsumer().topic(topic).subscriptionName("sub1")
+                .readCompacted(true).subscribe()) {
+            for (Pair<String, String> expectedMessage : expected) {
+                Message<byte[]> m = consumer.receive(2, TimeUnit.SECONDS);
+                Assert.assertEquals(m.hasKey() ? m.getKey() : null, expectedMessage.getLeft());
+                Assert.assertEquals(new String(m.getData()), expectedMessage.getRight());
+            }
+            assertNull(consumer.receive(1, TimeUnit.SECONDS));
+        }
+    }
+}
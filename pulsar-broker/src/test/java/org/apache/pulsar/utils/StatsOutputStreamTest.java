@@ -147,6 +147,23 @@ public class StatsOutputStreamTest {
         assertEquals(str(), "[{\"a\":1},{\"b\":2}]");
     }
 
+    @Test
+    public void testSerializedItems() {
+        ByteBuf item = Unpooled.buffer(64);
+        new StatsOutputStream(item).startObject("a").writePair("x", 1).endObject();
+
+        stream.startObject();
+        stream.writeSerializedItem(item);
+        stream.writePair("b", 2);
+        stream.writeSerializedItem(item);
+        stream.endObject();
+        assertEquals(str(), "{\"a\":{\"x\":1},\"b\":2,\"a\":{\"x\":1}}");
+
+        // The item is left untouched, to be written again
+        assertEquals(item.readerIndex(), 0);
+        assertEquals(item.toString(Charset.forName("utf-8")), "\"a\":{\"x\":1}");
+    }
+
     @SuppressWarnings("unchecked")
     @Test
     public void testCopyOnWriteArrayList() {
@@ -33,6 +33,7 @@ import org.apache.pulsar.common.policies.data.BundlesData;
 import org.apache.pulsar.common.policies.data.DispatchRate;
 import org.apache.pulsar.common.policies.data.PersistencePolicies;
 import org.apache.pulsar.common.policies.data.Policies;
+import org.apache.pulsar.common.policies.data.PublishRate;
 import org.apache.pulsar.common.policies.data.RetentionPolicies;
 import org.apache.pulsar.common.policies.data.SchemaAutoUpdateCompatibilityStrategy;
 import org.apache.pulsar.common.policies.data.SubscriptionAuthMode;
@@ -893,6 +894,27 @@ public interface Namespaces {
      */
     DispatchRate getSubscriptionDispatchRate(String namespace) throws PulsarAdminException;
 
+    /**
+     * Set message-publish-rate (topics under this namespace can publish this many messages per second)
+     *
+     * @param namespace
+     * @param publishMsgRate
+     *            number of messages per second
+     * @throws PulsarAdminException
+     *             Unexpected error
+     */
+    void setPublishRate(String namespace, PublishRate publishMsgRate) throws PulsarAdminException;
+
+    /** Get message-publish-rate (topics under this namespace can publish this many messages per second)
+     *
+     * @param namespace
+     * @returns PublishRate
+     *            number of messages per second
+     * @throws PulsarAdminException
+     *             Unexpected error
+     */
+    PublishRate getPublishRate(String namespace) throws PulsarAdminException;
+
 
     /**
      * Clear backlog for all topics on a namespace
@@ -19,6 +19,8 @@
 #include "CompressionCodec.h"
 #include "CompressionCodecLZ4.h"
 #include "CompressionCodecZLib.h"
+#include "CompressionCodecZstd.h"
+#include "CompressionCodecSnappy.h"
 
 #include <cassert>
 
@@ -28,6 +30,8 @@ namespace pulsar {
 CompressionCodecNone CompressionCodecProvider::compressionCodecNone_;
 CompressionCodecLZ4 CompressionCodecProvider::compressionCodecLZ4_;
 CompressionCodecZLib CompressionCodecProvider::compressionCodecZLib_;
+CompressionCodecZstd CompressionCodecProvider::compressionCodecZstd_;
+CompressionCodecSnappy CompressionCodecProvider::compressionCodecSnappy_;
 
 CompressionCodec& CompressionCodecProvider::getCodec(CompressionType compressionType) {
     switch (compressionType) {
@@ -35,6 +39,10 @@ CompressionCodec& CompressionCodecProvider::getCodec(CompressionType compression
             return compressionCodecLZ4_;
         case CompressionZLib:
             return compressionCodecZLib_;
+        case CompressionZSTD:
+            return compressionCodecZstd_;
+        case CompressionSNAPPY:
+            return compressionCodecSnappy_;
         default:
             return compressionCodecNone_;
     }
@@ -48,6 +56,10 @@ CompressionType CompressionCodecProvider::convertType(proto::CompressionType typ
             return CompressionLZ4;
         case proto::ZLIB:
             return CompressionZLib;
+        case proto::ZSTD:
+            return CompressionZSTD;
+        case proto::SNAPPY:
+            return CompressionSNAPPY;
     }
 }
 
@@ -59,6 +71,10 @@ proto::CompressionType CompressionCodecProvider::convertType(CompressionType typ
             return proto::LZ4;
         case CompressionZLib:
             return proto::ZLIB;
+        case CompressionZSTD:
+            return proto::ZSTD;
+        case CompressionSNAPPY:
+            return proto::SNAPPY;
     }
 }
 
@@ -38,6 +38,8 @@ class CompressionCodec;
 class CompressionCodecNone;
 class CompressionCodecLZ4;
 class CompressionCodecZLib;
+class CompressionCodecZstd;
+class CompressionCodecSnappy;
 
 class CompressionCodecProvider {
    public:
@@ -50,6 +52,8 @@ class CompressionCodecProvider {
     static CompressionCodecNone compressionCodecNone_;
     static CompressionCodecLZ4 compressionCodecLZ4_;
     static CompressionCodecZLib compressionCodecZLib_;
+    static CompressionCodecZstd compressionCodecZstd_;
+    static CompressionCodecSnappy compressionCodecSnappy_;
 };
 
 class CompressionCodec {
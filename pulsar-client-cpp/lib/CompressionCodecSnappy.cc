@@ -0,0 +1,85 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+#include "CompressionCodecSnappy.h"
+
+#include "LogUtils.h"
+
+#include <stdexcept>
+
+#if HAS_SNAPPY
+#include <snappy.h>
+#endif
+
+DECLARE_LOG_OBJECT()
+
+namespace pulsar {
+
+#if HAS_SNAPPY
+
+SharedBuffer CompressionCodecSnappy::encode(const SharedBuffer& raw) {
+    // Get the max size of the compressed data and allocate a buffer to hold it
+    size_t maxCompressedSize = snappy::MaxCompressedLength(raw.readableBytes());
+    SharedBuffer compressed = SharedBuffer::allocate(maxCompressedSize);
+
+    size_t bytesWritten = 0;
+    snappy::RawCompress(raw.data(), raw.readableBytes(), compressed.mutableData(), &bytesWritten);
+
+    compressed.bytesWritten(bytesWritten);
+    return compressed;
+}
+
+bool CompressionCodecSnappy::decode(const SharedBuffer& encoded, uint32_t uncompressedSize,
+                                    SharedBuffer& decoded) {
+    // Validate the size stored in the encoded content, so that a corrupted content cannot overflow the buffer
+    size_t storedSize = 0;
+    if (!snappy::GetUncompressedLength(encoded.data(), encoded.readableBytes(), &storedSize) ||
+        storedSize != uncompressedSize) {
+        LOG_ERROR("Invalid snappy buffer -- compressed size: " << encoded.readableBytes()
+                                                               << " -- uncompressed size: " << uncompressedSize);
+        return false;
+    }
+
+    SharedBuffer decompressed = SharedBuffer::allocate(uncompressedSize);
+    if (!snappy::RawUncompress(encoded.data(), encoded.readableBytes(), decompressed.mutableData())) {
+        LOG_ERROR("Failed to decompress snappy buffer -- compressed size: "
+                  << encoded.readableBytes() << " -- uncompressed size: " << uncompressedSize);
+        return false;
+    }
+
+    decoded = decompressed;
+    decoded.setWriterIndex(uncompressedSize);
+    return true;
+}
+
+#else  // No SNAPPY
+
+SharedBuffer CompressionCodecSnappy::encode(const SharedBuffer& raw) {
+    throw std::runtime_error("SNAPPY compression is not supported by this build of the client library");
+}
+
+bool CompressionCodecSnappy::decode(const SharedBuffer& encoded, uint32_t uncompressedSize,
+                                    SharedBuffer& decoded) {
+    LOG_ERROR(
+        "Cannot decompress message: SNAPPY compression is not supported by this build of the client library");
+    return false;
+}
+
+#endif  // HAS_SNAPPY
+
+}  // namespace pulsar
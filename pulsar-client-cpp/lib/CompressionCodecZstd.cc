@@ -0,0 +1,85 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+#include "CompressionCodecZstd.h"
+
+#include "LogUtils.h"
+
+#include <stdexcept>
+
+#if HAS_ZSTD
+#include <zstd.h>
+#endif
+
+DECLARE_LOG_OBJECT()
+
+namespace pulsar {
+
+#if HAS_ZSTD
+
+// Same default level as the Java client
+static const int ZSTD_COMPRESSION_LEVEL = 3;
+
+SharedBuffer CompressionCodecZstd::encode(const SharedBuffer& raw) {
+    // Get the max size of the compressed data and allocate a buffer to hold it
+    size_t maxCompressedSize = ZSTD_compressBound(raw.readableBytes());
+    SharedBuffer compressed = SharedBuffer::allocate(maxCompressedSize);
+
+    size_t res = ZSTD_compress(compressed.mutableData(), maxCompressedSize, raw.data(), raw.readableBytes(),
+                               ZSTD_COMPRESSION_LEVEL);
+    if (ZSTD_isError(res)) {
+        LOG_ERROR("Failed to compress buffer: " << ZSTD_getErrorName(res));
+        abort();
+    }
+
+    compressed.bytesWritten(res);
+    return compressed;
+}
+
+bool CompressionCodecZstd::decode(const SharedBuffer& encoded, uint32_t uncompressedSize,
+                                  SharedBuffer& decoded) {
+    SharedBuffer decompressed = SharedBuffer::allocate(uncompressedSize);
+
+    size_t res = ZSTD_decompress(decompressed.mutableData(), uncompressedSize, encoded.data(),
+                                 encoded.readableBytes());
+    if (ZSTD_isError(res) || res != uncompressedSize) {
+        LOG_ERROR("Failed to decompress zstd buffer -- compressed size: "
+                  << encoded.readableBytes() << " -- uncompressed size: " << uncompressedSize);
+        return false;
+    }
+
+    decoded = decompressed;
+    decoded.setWriterIndex(uncompressedSize);
+    return true;
+}
+
+#else  // No ZSTD
+
+SharedBuffer CompressionCodecZstd::encode(const SharedBuffer& raw) {
+    throw std::runtime_error("ZSTD compression is not supported by this build of the client library");
+}
+
+bool CompressionCodecZstd::decode(const SharedBuffer& encoded, uint32_t uncompressedSize,
+                                  SharedBuffer& decoded) {
+    LOG_ERROR("Cannot decompress message: ZSTD compression is not supported by this build of the client library");
+    return false;
+}
+
+#endif  // HAS_ZSTD
+
+}  // namespace pulsar
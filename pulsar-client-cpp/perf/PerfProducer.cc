@@ -261,7 +261,7 @@ int main(int argc, char** argv) {
             "If batch size == 1 then batching is disabled. Default batch size == 1") //
 
     ("compression", po::value<std::string>(&args.compression)->default_value(""),
-             "Compression can be either 'zlib' or 'lz4'. Default is no compression") //
+             "Compression can be either 'zlib', 'lz4', 'zstd' or 'snappy'. Default is no compression") //
 
     ("max-batch-size-in-bytes", po::value<long>(&args.batchingMaxAllowedSizeInBytes)->default_value(128 * 1024),
             "Use only is batch-size > 1, Default is 128 KB") //
@@ -337,6 +337,10 @@ int main(int argc, char** argv) {
         producerConf.setCompressionType(CompressionZLib);
     } else if (args.compression == "lz4") {
         producerConf.setCompressionType(CompressionLZ4);
+    } else if (args.compression == "zstd") {
+        producerConf.setCompressionType(CompressionZSTD);
+    } else if (args.compression == "snappy") {
+        producerConf.setCompressionType(CompressionSNAPPY);
     } else if (!args.compression.empty()) {
         LOG_WARN("Invalid compression type: " << args.compression);
         return -1;
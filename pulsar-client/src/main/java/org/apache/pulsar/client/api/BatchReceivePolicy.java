@@ -0,0 +1,144 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.client.api;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Configuration of the batch receive behavior of a {@link Consumer}, see {@link Consumer#batchReceive()}.
+ * <p>
+ * A batch receive completes as soon as one of the following conditions is met:
+ * <ul>
+ * <li>the number of messages available in the batch reaches {@code maxNumMessages}
+ * <li>the size of the messages available in the batch reaches {@code maxNumBytes}
+ * <li>the {@code timeout} elapsed since the batch receive was requested
+ * </ul>
+ * A limit that is less or equal than 0 is disabled, though at least one of the limits must be set.
+ * <p>
+ * Example:
+ * <pre>
+ * client.newConsumer()
+ *          .batchReceivePolicy(BatchReceivePolicy.builder()
+ *                  .maxNumMessages(100)
+ *                  .maxNumBytes(1024 * 1024)
+ *                  .timeout(200, TimeUnit.MILLISECONDS)
+ *                  .build())
+ *          .subscribe();
+ * </pre>
+ */
+public class BatchReceivePolicy implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Default batch receive policy: up to 10 MB of messages, waiting at most 100 milliseconds.
+     */
+    public static final BatchReceivePolicy DEFAULT_POLICY = new BatchReceivePolicy(-1, 10 * 1024 * 1024, 100);
+
+    private final int maxNumMessages;
+    private final long maxNumBytes;
+    private final long timeoutMs;
+
+    private BatchReceivePolicy(int maxNumMessages, long maxNumBytes, long timeoutMs) {
+        this.maxNumMessages = maxNumMessages;
+        this.maxNumBytes = maxNumBytes;
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * Verifies that at least one of the limits is set.
+     *
+     * @throws IllegalArgumentException
+     *             if the policy would never complete a batch receive
+     */
+    public void verify() {
+        checkArgument(maxNumMessages > 0 || maxNumBytes > 0 || timeoutMs > 0,
+                "At least one of maxNumMessages, maxNumBytes or timeout must be greater than 0");
+    }
+
+    public int getMaxNumMessages() {
+        return maxNumMessages;
+    }
+
+    public long getMaxNumBytes() {
+        return maxNumBytes;
+    }
+
+    public long getTimeoutMs() {
+        return timeoutMs;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public String toString() {
+        return "BatchReceivePolicy{maxNumMessages=" + maxNumMessages + ", maxNumBytes=" + maxNumBytes
+                + ", timeoutMs=" + timeoutMs + '}';
+    }
+
+    /**
+     * Builder of {@link BatchReceivePolicy}. Limits that are not set are disabled.
+     */
+    public static class Builder {
+        private int maxNumMessages = -1;
+        private long maxNumBytes = -1;
+        private long timeoutMs = -1;
+
+        /**
+         * @param maxNumMessages
+         *            maximum number of messages of a batch
+         */
+        public Builder maxNumMessages(int maxNumMessages) {
+            this.maxNumMessages = maxNumMessages;
+            return this;
+        }
+
+        /**
+         * @param maxNumBytes
+         *            maximum size of the payloads of a batch, the first message of a batch is always accepted even if
+         *            it's bigger than this limit
+         */
+        public Builder maxNumBytes(long maxNumBytes) {
+            this.maxNumBytes = maxNumBytes;
+            return this;
+        }
+
+        /**
+         * @param timeout
+         *            maximum time to wait for a batch to be filled, truncated to the nearest millisecond
+         * @param timeUnit
+         *            unit in which the timeout is provided
+         */
+        public Builder timeout(long timeout, TimeUnit timeUnit) {
+            this.timeoutMs = timeUnit.toMillis(timeout);
+            return this;
+        }
+
+        public BatchReceivePolicy build() {
+            BatchReceivePolicy policy = new BatchReceivePolicy(maxNumMessages, maxNumBytes, timeoutMs);
+            policy.verify();
+            return policy;
+        }
+    }
+}
@@ -309,4 +309,24 @@ public interface ClientBuilder extends Cloneable {
      * @param unit time unit for {@code statsInterval}
      */
     ClientBuilder keepAliveInterval(int keepAliveIntervalSeconds, TimeUnit unit);
+
+    /**
+     * Set the compression level of the producers using {@link CompressionType#ZSTD} compression. <i>(default: 3)</i>
+     *
+     * @param zstdCompressionLevel
+     *            the zstd compression level, from 1 (fastest) to 22 (best compression)
+     */
+    ClientBuilder zstdCompressionLevel(int zstdCompressionLevel);
+
+    /**
+     * Set the path of a dictionary to compress and decompress the messages with {@link CompressionType#ZSTD}
+     * compression, e.g. a dictionary trained with <code>zstd --train</code> on samples of the messages.
+     * <p>
+     * A dictionary improves the compression of small messages. All the producers and consumers of a topic must use
+     * the same dictionary. The creation of the client fails if the dictionary cannot be read.
+     *
+     * @param zstdCompressionDictionaryPath
+     *            the path of the dictionary file
+     */
+    ClientBuilder zstdCompressionDictionary(String zstdCompressionDictionaryPath);
 }
@@ -26,5 +26,16 @@ public enum CompressionType {
     LZ4,
 
     /** Compress with ZLib */
-    ZLIB
+    ZLIB,
+
+    /**
+     * Compress with Zstandard. Higher compression ratio than LZ4, with a lower CPU cost than ZLib.
+     * <p>
+     * The compression level and an optional dictionary are configured on the client, see
+     * {@link ClientBuilder#zstdCompressionLevel(int)} and {@link ClientBuilder#zstdCompressionDictionary(String)}.
+     */
+    ZSTD,
+
+    /** Compress with Snappy */
+    SNAPPY
 }
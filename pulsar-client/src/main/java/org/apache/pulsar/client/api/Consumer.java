@@ -100,6 +100,39 @@ public interface Consumer<T> extends Closeable {
      */
     Message<T> receive(int timeout, TimeUnit unit) throws PulsarClientException;
 
+    /**
+     * Receives a batch of messages.
+     * <p>
+     * This calls blocks until the batch is completed according to the {@link BatchReceivePolicy} of the consumer,
+     * that is when either the maximum number of messages or bytes is available or the timeout elapsed. The returned
+     * container can be empty if the timeout elapsed before any message was received.
+     * <p>
+     * Compared to calling {@link #receive()} multiple times, the queue of the consumer is drained at once and the
+     * flow control and statistics are updated once per batch.
+     *
+     * @return the received messages
+     * @throws PulsarClientException.AlreadyClosedException
+     *             if the consumer was already closed
+     * @throws PulsarClientException.InvalidConfigurationException
+     *             if a message listener was defined in the configuration or the receiver queue size is 0
+     */
+    Messages<T> batchReceive() throws PulsarClientException;
+
+    /**
+     * Receive a batch of messages
+     * <p>
+     * Retrieves messages when the batch is completed according to the {@link BatchReceivePolicy} of the consumer and
+     * completes the {@link CompletableFuture} with the received messages.
+     * </p>
+     * <p>
+     * {@code batchReceiveAsync()} should be called subsequently once returned {@code CompletableFuture} gets complete
+     * with received messages. Else it creates <i> backlog of receive requests </i> in the application.
+     * </p>
+     *
+     * @return {@link CompletableFuture}<{@link Messages}> will be completed when the batch is completed
+     */
+    CompletableFuture<Messages<T>> batchReceiveAsync();
+
     /**
      * Acknowledge the consumption of a single message
      *
@@ -154,6 +154,21 @@ public interface ConsumerBuilder<T> extends Cloneable {
      */
     ConsumerBuilder<T> ackTimeout(long ackTimeout, TimeUnit timeUnit);
 
+    /**
+     * Set the granularity of the ack timeout, truncated to the nearest millisecond. Unacked messages are redelivered
+     * between the ack timeout and the ack timeout plus the tick time after having been received. The tick time needs to
+     * be greater than 100 milliseconds.
+     * <p>
+     * By default, the tick time is a tenth of the ack timeout, and at least 100 milliseconds. A smaller tick time gives
+     * a more precise redelivery, at the cost of tracking the unacked messages in more buckets.
+     *
+     * @param tickTime
+     *            the granularity of the ack timeout
+     * @param timeUnit
+     *            unit in which the tick time is provided.
+     */
+    ConsumerBuilder<T> ackTimeoutTickTime(long tickTime, TimeUnit timeUnit);
+
     /**
      * Select the subscription type to be used when subscribing to the topic.
      * <p>
@@ -367,4 +382,56 @@ public interface ConsumerBuilder<T> extends Cloneable {
      * </pre>
      */
     ConsumerBuilder<T> deadLetterPolicy(DeadLetterPolicy deadLetterPolicy);
+
+    /**
+     * Set the policy used by {@link Consumer#batchReceive()} and {@link Consumer#batchReceiveAsync()} to complete a
+     * batch of messages.
+     * <p>
+     * Default is {@link BatchReceivePolicy#DEFAULT_POLICY}. The maximum number of messages of a batch is capped to
+     * the receiver queue size of the consumer.
+     *
+     * @param batchReceivePolicy
+     *            the batch receive policy
+     */
+    ConsumerBuilder<T> batchReceivePolicy(BatchReceivePolicy batchReceivePolicy);
+
+    /**
+     * Enable the acknowledgment of the individual messages of a batch.
+     * <p>
+     * By default, a batch is only acknowledged to the broker once all its messages are acknowledged, so the whole batch
+     * is redelivered if the consumer fails or if the messages are redelivered. When enabled, the broker keeps track of
+     * the messages of the batch that were acknowledged and they are not delivered again.
+     * <p>
+     * Default is disabled. This requires a broker supporting the batch index acknowledgment, otherwise the whole
+     * batches are still redelivered.
+     *
+     * @param batchIndexAcknowledgmentEnabled
+     *            whether to acknowledge the individual messages of a batch
+     */
+    ConsumerBuilder<T> enableBatchIndexAcknowledgment(boolean batchIndexAcknowledgmentEnabled);
+
+    /**
+     * If enabled, the consumer will periodically check the number of partitions of the subscribed partitioned topics
+     * and will subscribe to the partitions added to the topics, without being recreated.
+     * <p>
+     * Default is enabled.
+     *
+     * @param autoUpdate
+     *            whether to auto discover the partitions added to the topics
+     */
+    ConsumerBuilder<T> autoUpdatePartitions(boolean autoUpdate);
+
+    /**
+     * Set the interval between the checks for new partitions of the subscribed topics, when the partitions auto update
+     * is enabled.
+     * <p>
+     * Default is 1 minute, and the minimum value is 1 second.
+     *
+     * @param interval
+     *            the interval between the checks
+     * @param unit
+     *            the time unit of the interval
+     * @see #autoUpdatePartitions(boolean)
+     */
+    ConsumerBuilder<T> autoUpdatePartitionsInterval(long interval, TimeUnit unit);
 }
@@ -38,5 +38,11 @@ public enum MessageRoutingMode {
     /**
      * Use custom message router implemenation that will be called to determine the partition for a particular message.
      */
-    CustomPartition
+    CustomPartition,
+
+    /**
+     * Publish messages across all partitions, preferring the partitions with fewer pending messages and a lower publish
+     * latency. For each message (or batch), the least loaded of two random partitions is chosen.
+     */
+    LoadAwarePartition
 }
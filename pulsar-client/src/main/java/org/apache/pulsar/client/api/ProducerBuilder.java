@@ -203,7 +203,12 @@ public interface ProducerBuilder<T> extends Cloneable {
      * <ul>
      * <li><code>CompressionType.LZ4</code></li>
      * <li><code>CompressionType.ZLIB</code></li>
+     * <li><code>CompressionType.ZSTD</code></li>
+     * <li><code>CompressionType.SNAPPY</code></li>
      * </ul>
+     * <p>
+     * Make sure all the consumer applications have been updated to a client version that supports ZSTD and SNAPPY,
+     * before starting to compress messages with them.
      *
      * @param compressionType
      * @return
@@ -291,6 +296,20 @@ public interface ProducerBuilder<T> extends Cloneable {
      */
     ProducerBuilder<T> batchingMaxMessages(int batchMessagesMaxMessagesPerBatch);
 
+    /**
+     * Control whether a batch can only contain messages with the same key. <i>default: false</i>
+     *
+     * When enabled, the current batch is sent as soon as a message with a different key is published. Each batch is
+     * then stored with the key of its messages, which allows the broker to dispatch it to the right consumer of a
+     * {@link SubscriptionType#Key_Shared} subscription. Without it, batches that mix different keys are dispatched as
+     * if their messages had no key.
+     *
+     * @param keyBasedBatchingEnabled
+     *            whether batches must only contain messages with the same key
+     * @return producer builder
+     */
+    ProducerBuilder<T> enableKeyBasedBatching(boolean keyBasedBatchingEnabled);
+
     /**
      * Set the baseline for the sequence ids for messages published by the producer.
      * <p>
@@ -326,4 +345,30 @@ public interface ProducerBuilder<T> extends Cloneable {
      * @return producer builder.
      */
     ProducerBuilder<T> intercept(ProducerInterceptor<T> ... interceptors);
+
+    /**
+     * If enabled, the partitioned producer will periodically check the number of partitions of the topic and will
+     * start publishing on the partitions added to the topic, without being recreated.
+     * <p>
+     * Default is enabled.
+     *
+     * @param autoUpdate
+     *            whether to auto discover the partitions added to the topic
+     * @return producer builder
+     */
+    ProducerBuilder<T> autoUpdatePartitions(boolean autoUpdate);
+
+    /**
+     * Set the interval between the checks for new partitions of the topic, when the partitions auto update is enabled.
+     * <p>
+     * Default is 1 minute, and the minimum value is 1 second.
+     *
+     * @param interval
+     *            the interval between the checks
+     * @param unit
+     *            the time unit of the interval
+     * @return producer builder
+     * @see #autoUpdatePartitions(boolean)
+     */
+    ProducerBuilder<T> autoUpdatePartitionsInterval(long interval, TimeUnit unit);
 }
@@ -39,5 +39,14 @@ public enum SubscriptionType {
      * Multiple consumer will be able to use the same subscription name but only 1 consumer will receive the messages.
      * If that consumer disconnects, one of the other connected consumers will start receiving messages.
      */
-    Failover
+    Failover,
+
+    /**
+     * Multiple consumer will be able to use the same subscription and all messages with the same key will be dispatched
+     * to only one consumer. Each consumer owns a range of the key hashes and the ranges are re-assigned when consumers
+     * join or leave the subscription.
+     * <p>
+     * Messages without a key are all dispatched to the same consumer.
+     */
+    Key_Shared
 }
\ No newline at end of file
@@ -30,4 +30,29 @@ public interface TopicMetadata {
      */
     int numPartitions();
 
+    /**
+     * Return the number of messages published on a partition that are not acknowledged by the broker yet, including the
+     * messages waiting to be batched.
+     * <p>
+     * This can be used by a {@link MessageRouter} to steer the messages away from the partitions that are falling
+     * behind.
+     *
+     * @param partition the partition index
+     * @return the number of pending messages of the partition, or 0 if not known
+     */
+    default int numPendingMessages(int partition) {
+        return 0;
+    }
+
+    /**
+     * Return the recent average time, in microseconds, for the messages published on a partition to be acknowledged by
+     * the broker.
+     *
+     * @param partition the partition index
+     * @return the publish latency of the partition, or 0 if not known
+     */
+    default long sendLatencyMicros(int partition) {
+        return 0;
+    }
+
 }
@@ -22,6 +22,7 @@ import java.io.Serializable;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Message builder that constructs a message to be published through a producer.
@@ -160,4 +161,34 @@ public interface TypedMessageBuilder<T> extends Serializable {
      * Disable replication for this message.
      */
     TypedMessageBuilder<T> disableReplication();
+
+    /**
+     * Request to deliver the message only after the specified relative delay.
+     * <p>
+     * <b>Note:</b> messages are only delivered with delay when they are consumed via a {@link SubscriptionType#Shared}
+     * or {@link SubscriptionType#Key_Shared} subscription. With other subscription types, the messages will still be
+     * delivered immediately. Delayed messages are never added to a batch.
+     *
+     * @param delay
+     *            the amount of delay before the message will be delivered
+     * @param unit
+     *            the time unit for the delay
+     * @return the message builder instance
+     */
+    TypedMessageBuilder<T> deliverAfter(long delay, TimeUnit unit);
+
+    /**
+     * Deliver the message only at or after the specified absolute timestamp.
+     * <p>
+     * The timestamp is milliseconds and based on UTC (eg: {@link System#currentTimeMillis()}).
+     * <p>
+     * <b>Note:</b> messages are only delivered with delay when they are consumed via a {@link SubscriptionType#Shared}
+     * or {@link SubscriptionType#Key_Shared} subscription. With other subscription types, the messages will still be
+     * delivered immediately. Delayed messages are never added to a batch.
+     *
+     * @param timestamp
+     *            absolute timestamp indicating when the message should be delivered to consumers
+     * @return the message builder instance
+     */
+    TypedMessageBuilder<T> deliverAt(long timestamp);
 }
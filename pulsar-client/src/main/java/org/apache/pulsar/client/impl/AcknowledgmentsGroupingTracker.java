@@ -31,6 +31,12 @@ public interface AcknowledgmentsGroupingTracker extends AutoCloseable {
 
     void addAcknowledgment(MessageIdImpl msgId, AckType ackType, Map<String, Long> properties);
 
+    /**
+     * Acknowledge some of the messages of a batch, the batch itself being acknowledged with
+     * {@link #addAcknowledgment(MessageIdImpl, AckType, Map)} once all its messages are acknowledged.
+     */
+    void addBatchIndexAcknowledgment(BatchMessageIdImpl msgId);
+
     void flush();
 
     @Override
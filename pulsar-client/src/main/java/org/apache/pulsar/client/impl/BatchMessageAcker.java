@@ -29,6 +29,11 @@ class BatchMessageAcker {
         return new BatchMessageAcker(bitSet, batchSize);
     }
 
+    static BatchMessageAcker newAcker(long[] ackSet, int batchSize) {
+        // only the messages not acknowledged yet are delivered again by the broker
+        return new BatchMessageAcker(BitSet.valueOf(ackSet), batchSize);
+    }
+
     // bitset shared across messages in the same batch.
     private final int batchSize;
     private final BitSet bitSet;
@@ -59,6 +64,14 @@ class BatchMessageAcker {
         return bitSet.isEmpty();
     }
 
+    public synchronized boolean isAcked(int batchIndex) {
+        return !bitSet.get(batchIndex);
+    }
+
+    public synchronized long[] getAckSet() {
+        return bitSet.toLongArray();
+    }
+
     // debug purpose
     public synchronized int getOutstandingAcks() {
         return bitSet.cardinality();
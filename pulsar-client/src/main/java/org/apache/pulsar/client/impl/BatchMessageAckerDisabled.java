@@ -41,6 +41,11 @@ class BatchMessageAckerDisabled extends BatchMessageAcker {
         return true;
     }
 
+    @Override
+    public long[] getAckSet() {
+        return new long[0];
+    }
+
     @Override
     public int getOutstandingAcks() {
         return 0;
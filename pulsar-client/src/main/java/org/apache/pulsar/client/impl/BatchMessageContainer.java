@@ -24,7 +24,6 @@ import org.apache.pulsar.common.api.Commands;
 import org.apache.pulsar.common.api.PulsarDecoder;
 import org.apache.pulsar.common.api.proto.PulsarApi;
 import org.apache.pulsar.common.compression.CompressionCodec;
-import org.apache.pulsar.common.compression.CompressionCodecProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -46,6 +45,8 @@ class BatchMessageContainer {
     private final String producerName;
 
     final int maxNumMessagesInBatch;
+    // whether a batch can only contain messages with the same key
+    private final boolean keyBasedBatching;
 
     PulsarApi.MessageMetadata.Builder messageMetadata = PulsarApi.MessageMetadata.newBuilder();
     int numMessagesInBatch = 0;
@@ -56,6 +57,9 @@ class BatchMessageContainer {
     List<MessageImpl<?>> messages = Lists.newArrayList();
     // keep track of callbacks for individual messages being published in a batch
     SendCallback firstCallback;
+    // key shared by all the messages in the batch, if any
+    private String batchKey = null;
+    private boolean hasSingleKey = true;
 
     private static final int INITIAL_BATCH_BUFFER_SIZE = 1024;
     protected static final int MAX_MESSAGE_BATCH_SIZE_BYTES = 128 * 1024;
@@ -64,11 +68,13 @@ class BatchMessageContainer {
     // allocate a new buffer that can hold the entire batch without needing costly reallocations
     private int maxBatchSize = INITIAL_BATCH_BUFFER_SIZE;
 
-    BatchMessageContainer(int maxNumMessagesInBatch, PulsarApi.CompressionType compressionType, String topicName,
+    BatchMessageContainer(int maxNumMessagesInBatch, boolean keyBasedBatching,
+            PulsarApi.CompressionType compressionType, CompressionCodec compressor, String topicName,
             String producerName) {
         this.maxNumMessagesInBatch = maxNumMessagesInBatch;
+        this.keyBasedBatching = keyBasedBatching;
         this.compressionType = compressionType;
-        this.compressor = CompressionCodecProvider.getCompressionCodec(compressionType);
+        this.compressor = compressor;
         this.topicName = topicName;
         this.producerName = producerName;
     }
@@ -76,7 +82,8 @@ class BatchMessageContainer {
     boolean hasSpaceInBatch(MessageImpl<?> msg) {
         int messageSize = msg.getDataBuffer().readableBytes();
         return ((messageSize + currentBatchSizeBytes) <= MAX_MESSAGE_BATCH_SIZE_BYTES
-                && numMessagesInBatch < maxNumMessagesInBatch);
+                && numMessagesInBatch < maxNumMessagesInBatch)
+                && (!keyBasedBatching || numMessagesInBatch == 0 || hasSameKey(msg));
     }
 
     void add(MessageImpl<?> msg, SendCallback callback) {
@@ -93,6 +100,9 @@ class BatchMessageContainer {
             this.firstCallback = callback;
             batchedMessageMetadataAndPayload = PooledByteBufAllocator.DEFAULT
                     .buffer(Math.min(maxBatchSize, MAX_MESSAGE_BATCH_SIZE_BYTES), PulsarDecoder.MaxMessageSize);
+            batchKey = msg.hasKey() ? msg.getKey() : null;
+        } else if (hasSingleKey && !hasSameKey(msg)) {
+            hasSingleKey = false;
         }
 
         if (previousCallback != null) {
@@ -125,6 +135,10 @@ class BatchMessageContainer {
 
     PulsarApi.MessageMetadata setBatchAndBuild() {
         messageMetadata.setNumMessagesInBatch(numMessagesInBatch);
+        if (keyBasedBatching && hasSingleKey && batchKey != null) {
+            // the broker can only see the metadata of the batch, eg: to dispatch it in a Key_Shared subscription
+            messageMetadata.setPartitionKey(batchKey);
+        }
         if (log.isDebugEnabled()) {
             log.debug("[{}] [{}] num messages in batch being closed are {}", topicName, producerName,
                     numMessagesInBatch);
@@ -145,6 +159,12 @@ class BatchMessageContainer {
         currentBatchSizeBytes = 0;
         sequenceId = -1;
         batchedMessageMetadataAndPayload = null;
+        batchKey = null;
+        hasSingleKey = true;
+    }
+
+    private boolean hasSameKey(MessageImpl<?> msg) {
+        return msg.hasKey() ? msg.getKey().equals(batchKey) : batchKey == null;
     }
 
     boolean isEmpty() {
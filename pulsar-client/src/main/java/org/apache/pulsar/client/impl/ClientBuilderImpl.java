@@ -189,6 +189,18 @@ public class ClientBuilderImpl implements ClientBuilder {
         return this;
     }
 
+    @Override
+    public ClientBuilder zstdCompressionLevel(int zstdCompressionLevel) {
+        conf.setZstdCompressionLevel(zstdCompressionLevel);
+        return this;
+    }
+
+    @Override
+    public ClientBuilder zstdCompressionDictionary(String zstdCompressionDictionaryPath) {
+        conf.setZstdCompressionDictionaryPath(zstdCompressionDictionaryPath);
+        return this;
+    }
+
     public ClientConfigurationData getClientConfigurationData() {
         return conf;
     }
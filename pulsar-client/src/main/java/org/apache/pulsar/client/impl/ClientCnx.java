@@ -290,7 +290,15 @@ public class ClientCnx extends PulsarHandler {
         }
         ConsumerImpl<?> consumer = consumers.get(cmdMessage.getConsumerId());
         if (consumer != null) {
-            consumer.messageReceived(cmdMessage.getMessageId(), cmdMessage.getRedeliveryCount(), headersAndPayload, this);
+            long[] ackSet = null;
+            if (cmdMessage.getAckSetCount() > 0) {
+                ackSet = new long[cmdMessage.getAckSetCount()];
+                for (int i = 0; i < ackSet.length; i++) {
+                    ackSet[i] = cmdMessage.getAckSet(i);
+                }
+            }
+            consumer.messageReceived(cmdMessage.getMessageId(), cmdMessage.getRedeliveryCount(), ackSet,
+                    headersAndPayload, this);
         }
     }
 
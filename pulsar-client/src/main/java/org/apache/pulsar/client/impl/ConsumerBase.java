@@ -19,6 +19,7 @@
 package org.apache.pulsar.client.impl;
 
 import com.google.common.collect.Queues;
+import io.netty.util.Timeout;
 import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
@@ -28,11 +29,16 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.apache.pulsar.client.api.BatchReceivePolicy;
 import org.apache.pulsar.client.api.Consumer;
 import org.apache.pulsar.client.api.ConsumerEventListener;
 import org.apache.pulsar.client.api.Message;
 import org.apache.pulsar.client.api.MessageId;
 import org.apache.pulsar.client.api.MessageListener;
+import org.apache.pulsar.client.api.Messages;
 import org.apache.pulsar.client.api.PulsarClientException;
 import org.apache.pulsar.client.api.Schema;
 import org.apache.pulsar.client.api.SubscriptionType;
@@ -42,6 +48,8 @@ import org.apache.pulsar.common.api.proto.PulsarApi.CommandAck.AckType;
 import org.apache.pulsar.common.api.proto.PulsarApi.CommandSubscribe.SubType;
 import org.apache.pulsar.common.util.FutureUtil;
 import org.apache.pulsar.common.util.collections.GrowableArrayBlockingQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public abstract class ConsumerBase<T> extends HandlerState implements Consumer<T> {
 
@@ -62,6 +70,18 @@ public abstract class ConsumerBase<T> extends HandlerState implements Consumer<T
     protected Schema<T> schema;
     protected final ConsumerInterceptors<T> interceptors;
 
+    // Guards the draining of the incoming queue: enqueues and batch receive completions hold it
+    protected final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    protected final BatchReceivePolicy batchReceivePolicy;
+    protected final ConcurrentLinkedQueue<OpBatchReceive<T>> pendingBatchReceives;
+    private Timeout batchReceiveTimeout = null;
+
+    private static final AtomicLongFieldUpdater<ConsumerBase> INCOMING_MESSAGES_SIZE_UPDATER = AtomicLongFieldUpdater
+            .newUpdater(ConsumerBase.class, "incomingMessagesSize");
+    @SuppressWarnings("unused")
+    private volatile long incomingMessagesSize = 0;
+
     protected ConsumerBase(PulsarClientImpl client, String topic, ConsumerConfigurationData<T> conf,
                            int receiverQueueSize, ExecutorService listenerExecutor,
                            CompletableFuture<Consumer<T>> subscribeFuture, Schema<T> schema, ConsumerInterceptors interceptors) {
@@ -83,6 +103,21 @@ public abstract class ConsumerBase<T> extends HandlerState implements Consumer<T
         this.pendingReceives = Queues.newConcurrentLinkedQueue();
         this.schema = schema;
         this.interceptors = interceptors;
+
+        BatchReceivePolicy policy = conf.getBatchReceivePolicy();
+        if (policy.getMaxNumMessages() > this.maxReceiverQueueSize) {
+            // The batch could never be filled by the messages in the receiver queue
+            log.warn("[{}] [{}] BatchReceivePolicy maxNumMessages {} is greater than the receiver queue size {}, "
+                    + "capping it to the receiver queue size", topic, subscription, policy.getMaxNumMessages(),
+                    this.maxReceiverQueueSize);
+            policy = BatchReceivePolicy.builder()
+                    .maxNumMessages(this.maxReceiverQueueSize)
+                    .maxNumBytes(policy.getMaxNumBytes())
+                    .timeout(policy.getTimeoutMs(), TimeUnit.MILLISECONDS)
+                    .build();
+        }
+        this.batchReceivePolicy = policy;
+        this.pendingBatchReceives = Queues.newConcurrentLinkedQueue();
     }
 
     @Override
@@ -170,6 +205,185 @@ public abstract class ConsumerBase<T> extends HandlerState implements Consumer<T
 
     abstract protected Message<T> internalReceive(int timeout, TimeUnit unit) throws PulsarClientException;
 
+    @Override
+    public Messages<T> batchReceive() throws PulsarClientException {
+        verifyBatchReceive();
+
+        CompletableFuture<Messages<T>> future = internalBatchReceiveAsync();
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable t = e.getCause();
+            if (t instanceof PulsarClientException) {
+                throw (PulsarClientException) t;
+            } else {
+                throw new PulsarClientException(t);
+            }
+        } catch (InterruptedException e) {
+            // Make sure the pending batch receive will not drain messages that nobody is waiting for
+            future.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new PulsarClientException(e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Messages<T>> batchReceiveAsync() {
+        try {
+            verifyBatchReceive();
+        } catch (PulsarClientException e) {
+            return FutureUtil.failedFuture(e);
+        }
+
+        return internalBatchReceiveAsync();
+    }
+
+    private void verifyBatchReceive() throws PulsarClientException {
+        if (listener != null) {
+            throw new PulsarClientException.InvalidConfigurationException(
+                    "Cannot use batchReceive() when a listener has been set");
+        }
+        if (conf.getReceiverQueueSize() == 0) {
+            throw new PulsarClientException.InvalidConfigurationException(
+                    "Can't use batchReceive, if the queue size is 0");
+        }
+
+        switch (getState()) {
+        case Ready:
+        case Connecting:
+            break; // Ok
+        case Closing:
+        case Closed:
+            throw new PulsarClientException.AlreadyClosedException("Consumer already closed");
+        case Terminated:
+            throw new PulsarClientException.AlreadyClosedException("Topic was terminated");
+        case Failed:
+        case Uninitialized:
+            throw new PulsarClientException.NotConnectedException();
+        default:
+            break;
+        }
+    }
+
+    /**
+     * Completes the batch receive immediately if enough messages are available in the incoming queue, otherwise
+     * registers a pending batch receive that will be completed when the batch is full or when it times out.
+     */
+    abstract protected CompletableFuture<Messages<T>> internalBatchReceiveAsync();
+
+    /**
+     * Drains the incoming queue, up to the limits of the batch receive policy, into the given pending batch receive
+     * and completes it. Pending batch receives that were already completed, eg: cancelled, must be skipped without
+     * draining the queue.
+     */
+    abstract protected void completeOpBatchReceive(OpBatchReceive<T> op);
+
+    protected MessagesImpl<T> newMessagesImpl() {
+        return new MessagesImpl<>(batchReceivePolicy.getMaxNumMessages(), batchReceivePolicy.getMaxNumBytes());
+    }
+
+    /**
+     * @return true if the incoming queue holds enough messages, or bytes, to fill a batch
+     */
+    protected boolean hasEnoughMessagesForBatchReceive() {
+        int maxNumMessages = batchReceivePolicy.getMaxNumMessages();
+        long maxNumBytes = batchReceivePolicy.getMaxNumBytes();
+        return (maxNumMessages > 0 && incomingMessages.size() >= maxNumMessages)
+                || (maxNumBytes > 0 && INCOMING_MESSAGES_SIZE_UPDATER.get(this) >= maxNumBytes);
+    }
+
+    protected boolean hasPendingBatchReceive() {
+        return !pendingBatchReceives.isEmpty();
+    }
+
+    /**
+     * Completes the oldest pending batch receive with the messages available in the incoming queue.
+     */
+    protected void notifyPendingBatchReceivedCallBack() {
+        OpBatchReceive<T> op = pendingBatchReceives.poll();
+        if (op != null) {
+            completeOpBatchReceive(op);
+        }
+    }
+
+    /**
+     * Schedules the timer that completes the pending batch receives once they time out, if not already scheduled.
+     */
+    protected synchronized void scheduleBatchReceiveTimeout() {
+        if (batchReceiveTimeout == null && batchReceivePolicy.getTimeoutMs() > 0 && !pendingBatchReceives.isEmpty()) {
+            batchReceiveTimeout = client.timer().newTimeout(this::pendingBatchReceiveTask,
+                    batchReceivePolicy.getTimeoutMs(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void pendingBatchReceiveTask(Timeout timeout) {
+        synchronized (this) {
+            batchReceiveTimeout = null;
+        }
+        if (timeout.isCancelled() || getState() == State.Closing || getState() == State.Closed) {
+            return;
+        }
+
+        long timeoutMs = batchReceivePolicy.getTimeoutMs();
+        // Drain under the same lock as the message path, so that both never complete batches concurrently
+        lock.writeLock().lock();
+        try {
+            OpBatchReceive<T> op = pendingBatchReceives.peek();
+            while (op != null) {
+                long remainingMs = timeoutMs - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - op.createdAt);
+                if (remainingMs > 0) {
+                    synchronized (this) {
+                        if (batchReceiveTimeout == null) {
+                            batchReceiveTimeout = client.timer().newTimeout(this::pendingBatchReceiveTask,
+                                    remainingMs, TimeUnit.MILLISECONDS);
+                        }
+                    }
+                    return;
+                }
+
+                // The op might have been already completed by a concurrent notification of a full batch
+                if (pendingBatchReceives.remove(op)) {
+                    completeOpBatchReceive(op);
+                }
+                op = pendingBatchReceives.peek();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    protected void failPendingBatchReceive() {
+        synchronized (this) {
+            if (batchReceiveTimeout != null) {
+                batchReceiveTimeout.cancel();
+                batchReceiveTimeout = null;
+            }
+        }
+
+        while (true) {
+            OpBatchReceive<T> op = pendingBatchReceives.poll();
+            if (op == null) {
+                break;
+            }
+            op.future.completeExceptionally(
+                    new PulsarClientException.AlreadyClosedException("Consumer is already closed"));
+        }
+    }
+
+    protected void increaseIncomingMessageSize(final Message<?> message) {
+        INCOMING_MESSAGES_SIZE_UPDATER.addAndGet(this, message.getData().length);
+    }
+
+    protected void decreaseIncomingMessageSize(final Message<?> message) {
+        if (message != null) {
+            INCOMING_MESSAGES_SIZE_UPDATER.addAndGet(this, -message.getData().length);
+        }
+    }
+
+    protected void resetIncomingMessageSize() {
+        INCOMING_MESSAGES_SIZE_UPDATER.set(this, 0);
+    }
+
     @Override
     public void acknowledge(Message<?> message) throws PulsarClientException {
         try {
@@ -299,7 +513,7 @@ public abstract class ConsumerBase<T> extends HandlerState implements Consumer<T
     abstract public CompletableFuture<Void> closeAsync();
 
     private boolean isCumulativeAcknowledgementAllowed(SubscriptionType type) {
-        return SubscriptionType.Shared != type;
+        return SubscriptionType.Shared != type && SubscriptionType.Key_Shared != type;
     }
 
     protected SubType getSubType() {
@@ -313,6 +527,9 @@ public abstract class ConsumerBase<T> extends HandlerState implements Consumer<T
 
         case Failover:
             return SubType.Failover;
+
+        case Key_Shared:
+            return SubType.Key_Shared;
         }
 
         // Should not happen since we cover all cases above
@@ -383,4 +600,23 @@ public abstract class ConsumerBase<T> extends HandlerState implements Consumer<T
         }
     }
 
+    /**
+     * A batch receive waiting for its batch to be filled.
+     */
+    protected static final class OpBatchReceive<T> {
+
+        final CompletableFuture<Messages<T>> future;
+        final long createdAt;
+
+        private OpBatchReceive(CompletableFuture<Messages<T>> future) {
+            this.future = future;
+            this.createdAt = System.nanoTime();
+        }
+
+        static <T> OpBatchReceive<T> of(CompletableFuture<Messages<T>> future) {
+            return new OpBatchReceive<>(future);
+        }
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(ConsumerBase.class);
 }
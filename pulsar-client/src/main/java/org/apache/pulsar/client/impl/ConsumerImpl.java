@@ -59,6 +59,7 @@ import org.apache.pulsar.client.api.ConsumerCryptoFailureAction;
 import org.apache.pulsar.client.api.ConsumerStats;
 import org.apache.pulsar.client.api.Message;
 import org.apache.pulsar.client.api.MessageId;
+import org.apache.pulsar.client.api.Messages;
 import org.apache.pulsar.client.api.Producer;
 import org.apache.pulsar.client.api.PulsarClientException;
 import org.apache.pulsar.client.api.Schema;
@@ -81,7 +82,6 @@ import org.apache.pulsar.common.api.proto.PulsarApi.MessageIdData;
 import org.apache.pulsar.common.api.proto.PulsarApi.MessageMetadata;
 import org.apache.pulsar.common.api.proto.PulsarApi.ProtocolVersion;
 import org.apache.pulsar.common.compression.CompressionCodec;
-import org.apache.pulsar.common.compression.CompressionCodecProvider;
 import org.apache.pulsar.common.naming.TopicName;
 import org.apache.pulsar.common.schema.SchemaInfo;
 import org.apache.pulsar.common.schema.SchemaType;
@@ -112,7 +112,6 @@ public class ConsumerImpl<T> extends ConsumerBase<T> implements ConnectionHandle
 
     private volatile boolean waitingOnReceiveForZeroQueueSize = false;
 
-    private final ReadWriteLock lock = new ReentrantReadWriteLock();
 
     private final ReadWriteLock zeroQueueLock;
 
@@ -188,7 +187,8 @@ public class ConsumerImpl<T> extends ConsumerBase<T> implements ConnectionHandle
         }
 
         if (conf.getAckTimeoutMillis() != 0) {
-            this.unAckedMessageTracker = new UnAckedMessageTracker(client, this, conf.getAckTimeoutMillis());
+            this.unAckedMessageTracker = new UnAckedMessageTracker(client, this, conf.getAckTimeoutMillis(),
+                    conf.getTickDurationMillis());
         } else {
             this.unAckedMessageTracker = UnAckedMessageTracker.UNACKED_MESSAGE_TRACKER_DISABLED;
         }
@@ -294,6 +294,7 @@ public class ConsumerImpl<T> extends ConsumerBase<T> implements ConnectionHandle
         Message<T> message;
         try {
             message = incomingMessages.take();
+            decreaseIncomingMessageSize(message);
             Message<T> interceptMsg = beforeConsume(message);
             messageProcessed(interceptMsg);
             return interceptMsg;
@@ -314,6 +315,8 @@ public class ConsumerImpl<T> extends ConsumerBase<T> implements ConnectionHandle
             message = incomingMessages.poll(0, TimeUnit.MILLISECONDS);
             if (message == null) {
                 pendingReceives.add(result);
+            } else {
+                decreaseIncomingMessageSize(message);
             }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
@@ -333,6 +336,56 @@ public class ConsumerImpl<T> extends ConsumerBase<T> implements ConnectionHandle
         return result;
     }
 
+    @Override
+    protected CompletableFuture<Messages<T>> internalBatchReceiveAsync() {
+        CompletableFuture<Messages<T>> result = new CompletableFuture<>();
+        lock.writeLock().lock();
+        try {
+            if (pendingBatchReceives.isEmpty() && hasEnoughMessagesForBatchReceive()) {
+                result.complete(drainIncomingMessages());
+            } else {
+                pendingBatchReceives.add(OpBatchReceive.of(result));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        if (!result.isDone()) {
+            scheduleBatchReceiveTimeout();
+        }
+        return result;
+    }
+
+    @Override
+    protected void completeOpBatchReceive(OpBatchReceive<T> op) {
+        if (op.future.isDone()) {
+            // The batch receive was cancelled
+            return;
+        }
+        MessagesImpl<T> messages = drainIncomingMessages();
+        listenerExecutor.execute(() -> op.future.complete(messages));
+    }
+
+    /**
+     * Drain the incoming queue up to the limits of the batch receive policy, updating the flow control permits and
+     * the stats once for the whole batch.
+     */
+    private MessagesImpl<T> drainIncomingMessages() {
+        MessagesImpl<T> messages = newMessagesImpl();
+        Message<T> msgPeeked = incomingMessages.peek();
+        while (msgPeeked != null && messages.canAdd(msgPeeked)) {
+            Message<T> msg = incomingMessages.poll();
+            if (msg == null) {
+                break;
+            }
+            decreaseIncomingMessageSize(msg);
+            messages.add(beforeConsume(msg));
+            msgPeeked = incomingMessages.peek();
+        }
+        messagesProcessed(messages);
+        return messages;
+    }
+
     private Message<T> fetchSingleMessageFromBroker() throws PulsarClientException {
         checkArgument(conf.getReceiverQueueSize() == 0);
 
@@ -340,6 +393,7 @@ public class ConsumerImpl<T> extends ConsumerBase<T> implements ConnectionHandle
         if (incomingMessages.size() > 0) {
             log.error("The incoming message queue should never be greater than 0 when Queue size is 0");
             incomingMessages.clear();
+            resetIncomingMessageSize();
         }
 
         Message<T> message;
@@ -377,7 +431,30 @@ public class ConsumerImpl<T> extends ConsumerBase<T> implements ConnectionHandle
             waitingOnReceiveForZeroQueueSize = false;
             // Clearing the queue in case there was a race with messageReceived
             incomingMessages.clear();
+            resetIncomingMessageSize();
+        }
+    }
+
+    /**
+     * Return the next message of the receiver queue if one is already available, without waiting and without
+     * registering a pending receive. Used by {@link MultiTopicsConsumerImpl} to move several messages of a partition
+     * at once.
+     */
+    Message<T> pollAvailableMessage() {
+        Message<T> message;
+        lock.writeLock().lock();
+        try {
+            message = incomingMessages.poll();
+            if (message == null) {
+                return null;
+            }
+            decreaseIncomingMessageSize(message);
+        } finally {
+            lock.writeLock().unlock();
         }
+        Message<T> interceptMsg = beforeConsume(message);
+        messageProcessed(interceptMsg);
+        return interceptMsg;
     }
 
     @Override
@@ -385,6 +462,7 @@ public class ConsumerImpl<T> extends ConsumerBase<T> implements ConnectionHandle
         Message<T> message;
         try {
             message = incomingMessages.poll(timeout, unit);
+            decreaseIncomingMessageSize(message);
             Message<T> interceptMsg = beforeConsume(message);
             if (interceptMsg != null) {
                 messageProcessed(interceptMsg);
@@ -464,6 +542,9 @@ public class ConsumerImpl<T> extends ConsumerBase<T> implements ConnectionHandle
                 }
             } else {
                 // other messages in batch are still pending ack.
+                if (ackType == AckType.Individual && conf.isBatchIndexAckEnabled()) {
+                    acknowledgmentsGroupingTracker.addBatchIndexAcknowledgment((BatchMessageIdImpl) messageId);
+                }
                 return CompletableFuture.completedFuture(null);
             }
         }
@@ -619,6 +700,7 @@ public class ConsumerImpl<T> extends ConsumerBase<T> implements ConnectionHandle
     private BatchMessageIdImpl clearReceiverQueue() {
         List<Message<?>> currentMessageQueue = new ArrayList<>(incomingMessages.size());
         incomingMessages.drainTo(currentMessageQueue);
+        resetIncomingMessageSize();
         if (!currentMessageQueue.isEmpty()) {
             MessageIdImpl nextMessageInQueue = (MessageIdImpl) currentMessageQueue.get(0).getMessageId();
             BatchMessageIdImpl previousMessage;
@@ -726,6 +808,7 @@ public class ConsumerImpl<T> extends ConsumerBase<T> implements ConnectionHandle
         client.cleanupConsumer(this);
         // fail all pending-receive futures to notify application
         failPendingReceive();
+        failPendingBatchReceive();
     }
 
     private void failPendingReceive() {
@@ -761,7 +844,8 @@ public class ConsumerImpl<T> extends ConsumerBase<T> implements ConnectionHandle
         });
     }
 
-    void messageReceived(MessageIdData messageId, int redeliveryCount, ByteBuf headersAndPayload, ClientCnx cnx) {
+    void messageReceived(MessageIdData messageId, int redeliveryCount, long[] ackSet, ByteBuf headersAndPayload,
+            ClientCnx cnx) {
         if (log.isDebugEnabled()) {
             log.debug("[{}][{}] Received message: {}/{}", topic, subscription, messageId.getLedgerId(),
                     messageId.getEntryId());
@@ -837,6 +921,10 @@ public class ConsumerImpl<T> extends ConsumerBase<T> implements ConnectionHandle
                     notifyPendingReceivedCallback(message, null);
                 } else if (conf.getReceiverQueueSize() != 0 || waitingOnReceiveForZeroQueueSize) {
                     incomingMessages.add(message);
+                    increaseIncomingMessageSize(message);
+                    if (hasPendingBatchReceive() && hasEnoughMessagesForBatchReceive()) {
+                        notifyPendingBatchReceivedCallBack();
+                    }
                 } else if (conf.getReceiverQueueSize() == 0 && listener != null) {
                     triggerZeroQueueSizeListener(message);
                 }
@@ -859,7 +947,8 @@ public class ConsumerImpl<T> extends ConsumerBase<T> implements ConnectionHandle
                 });
             } else {
                 // handle batch message enqueuing; uncompressed payload has all messages in batch
-                receiveIndividualMessagesFromBatch(msgMetadata, redeliveryCount, uncompressedPayload, messageId, cnx);
+                receiveIndividualMessagesFromBatch(msgMetadata, redeliveryCount, ackSet, uncompressedPayload,
+                        messageId, cnx);
             }
             uncompressedPayload.release();
             msgMetadata.recycle();
@@ -949,14 +1038,15 @@ public class ConsumerImpl<T> extends ConsumerBase<T> implements ConnectionHandle
         });
     }
 
-    void receiveIndividualMessagesFromBatch(MessageMetadata msgMetadata, int redeliveryCount, ByteBuf uncompressedPayload,
-            MessageIdData messageId, ClientCnx cnx) {
+    void receiveIndividualMessagesFromBatch(MessageMetadata msgMetadata, int redeliveryCount, long[] ackSet,
+            ByteBuf uncompressedPayload, MessageIdData messageId, ClientCnx cnx) {
         int batchSize = msgMetadata.getNumMessagesInBatch();
 
         // create ack tracker for entry aka batch
         MessageIdImpl batchMessage = new MessageIdImpl(messageId.getLedgerId(), messageId.getEntryId(),
                 getPartitionIndex());
-        BatchMessageAcker acker = BatchMessageAcker.newAcker(batchSize);
+        BatchMessageAcker acker = ackSet != null ? BatchMessageAcker.newAcker(ackSet, batchSize)
+                : BatchMessageAcker.newAcker(batchSize);
         unAckedMessageTracker.add(batchMessage);
         List<MessageImpl<T>> possibleToDeadLetter = null;
         if (deadLetterPolicy != null && redeliveryCount >= deadLetterPolicy.getMaxRedeliverCount()) {
@@ -995,6 +1085,14 @@ public class ConsumerImpl<T> extends ConsumerBase<T> implements ConnectionHandle
                     ++skippedMessages;
                     continue;
                 }
+                if (ackSet != null && acker.isAcked(i)) {
+                    // message was already acknowledged before the batch was redelivered
+                    singleMessagePayload.release();
+                    singleMessageMetadataBuilder.recycle();
+
+                    ++skippedMessages;
+                    continue;
+                }
 
                 BatchMessageIdImpl batchMessageIdImpl = new BatchMessageIdImpl(messageId.getLedgerId(),
                         messageId.getEntryId(), getPartitionIndex(), i, acker);
@@ -1008,6 +1106,10 @@ public class ConsumerImpl<T> extends ConsumerBase<T> implements ConnectionHandle
                 try {
                     if (pendingReceives.isEmpty()) {
                         incomingMessages.add(message);
+                        increaseIncomingMessageSize(message);
+                        if (hasPendingBatchReceive() && hasEnoughMessagesForBatchReceive()) {
+                            notifyPendingBatchReceivedCallBack();
+                        }
                     } else {
                         notifyPendingReceivedCallback(message, null);
                     }
@@ -1053,6 +1155,34 @@ public class ConsumerImpl<T> extends ConsumerBase<T> implements ConnectionHandle
         increaseAvailablePermits(currentCnx);
         stats.updateNumMsgsReceived(msg);
 
+        trackMessage(msg);
+    }
+
+    /**
+     * Record the event that a batch of messages has been processed by the application, the permits for all the
+     * messages of the batch are added at once.
+     */
+    protected synchronized void messagesProcessed(Messages<T> messages) {
+        ClientCnx currentCnx = cnx();
+        int processedMessages = 0;
+        for (Message<T> msg : messages) {
+            lastDequeuedMessage = msg.getMessageId();
+            if (((MessageImpl<?>) msg).getCnx() != currentCnx) {
+                // The processed message did belong to the old queue that was cleared after reconnection.
+                continue;
+            }
+
+            processedMessages++;
+            stats.updateNumMsgsReceived(msg);
+            trackMessage(msg);
+        }
+
+        if (processedMessages > 0) {
+            increaseAvailablePermits(currentCnx, processedMessages);
+        }
+    }
+
+    private void trackMessage(Message<?> msg) {
         if (conf.getAckTimeoutMillis() != 0) {
             // reset timer for messages that are received by the client
             MessageIdImpl id = (MessageIdImpl) msg.getMessageId();
@@ -1150,7 +1280,7 @@ public class ConsumerImpl<T> extends ConsumerBase<T> implements ConnectionHandle
     private ByteBuf uncompressPayloadIfNeeded(MessageIdData messageId, MessageMetadata msgMetadata, ByteBuf payload,
             ClientCnx currentCnx) {
         CompressionType compressionType = msgMetadata.getCompression();
-        CompressionCodec codec = CompressionCodecProvider.getCompressionCodec(compressionType);
+        CompressionCodec codec = client.getCompressionCodec(compressionType);
         int uncompressedSize = msgMetadata.getUncompressedSize();
         int payloadSize = payload.readableBytes();
         if (payloadSize > PulsarDecoder.MaxMessageSize) {
@@ -1236,6 +1366,7 @@ public class ConsumerImpl<T> extends ConsumerBase<T> implements ConnectionHandle
             synchronized (this) {
                 currentSize = incomingMessages.size();
                 incomingMessages.clear();
+                resetIncomingMessageSize();
                 unAckedMessageTracker.clear();
             }
             cnx.ctx().writeAndFlush(Commands.newRedeliverUnacknowledgedMessages(consumerId), cnx.ctx().voidPromise());
@@ -1260,8 +1391,9 @@ public class ConsumerImpl<T> extends ConsumerBase<T> implements ConnectionHandle
     public void redeliverUnacknowledgedMessages(Set<MessageId> messageIds) {
         checkArgument(messageIds.stream().findFirst().get() instanceof MessageIdImpl);
 
-        if (conf.getSubscriptionType() != SubscriptionType.Shared) {
-            // We cannot redeliver single messages if subscription type is not Shared
+        if (conf.getSubscriptionType() != SubscriptionType.Shared
+                && conf.getSubscriptionType() != SubscriptionType.Key_Shared) {
+            // We cannot redeliver single messages if subscription type is not Shared or Key_Shared
             redeliverUnacknowledgedMessages();
             return;
         }
@@ -1538,6 +1670,7 @@ public class ConsumerImpl<T> extends ConsumerBase<T> implements ConnectionHandle
             // try not to remove elements that are added while we remove
             Message<T> message = incomingMessages.poll();
             while (message != null) {
+                decreaseIncomingMessageSize(message);
                 messagesFromQueue++;
                 MessageIdImpl id = getMessageIdImpl(message);
                 if (!messageIds.contains(id)) {
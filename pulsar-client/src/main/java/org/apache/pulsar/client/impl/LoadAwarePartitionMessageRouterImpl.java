@@ -0,0 +1,117 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.client.impl;
+
+import static org.apache.pulsar.client.util.MathUtils.signSafeMod;
+
+import java.time.Clock;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.pulsar.client.api.HashingScheme;
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.TopicMetadata;
+
+/**
+ * The routing strategy here:
+ * <ul>
+ * <li>If a key is present, choose a partition based on a hash of the key.
+ * <li>If no key is present, pick two random partitions and choose the least loaded one, based on the number of
+ * pending messages and the publish latency reported by the {@link TopicMetadata}. When batching is enabled, the same
+ * partition is kept for `maxBatchingDelayMs` to improve batching locality.
+ * </ul>
+ */
+public class LoadAwarePartitionMessageRouterImpl extends MessageRouterBase {
+
+    private static final long serialVersionUID = 1L;
+
+    private final boolean isBatchingEnabled;
+    private final long maxBatchingDelayMs;
+
+    private final Clock clock;
+
+    private static final Clock SYSTEM_CLOCK = Clock.systemUTC();
+
+    // Partition chosen for the current batching window. A racy update only costs an extra partition choice.
+    private volatile int batchingPartition = -1;
+    private volatile long batchingWindow = -1;
+
+    public LoadAwarePartitionMessageRouterImpl(HashingScheme hashingScheme,
+                                               boolean isBatchingEnabled,
+                                               long maxBatchingDelayMs) {
+        this(hashingScheme, isBatchingEnabled, maxBatchingDelayMs, SYSTEM_CLOCK);
+    }
+
+    public LoadAwarePartitionMessageRouterImpl(HashingScheme hashingScheme,
+                                               boolean isBatchingEnabled,
+                                               long maxBatchingDelayMs,
+                                               Clock clock) {
+        super(hashingScheme);
+        this.isBatchingEnabled = isBatchingEnabled;
+        this.maxBatchingDelayMs = Math.max(1, maxBatchingDelayMs);
+        this.clock = clock;
+    }
+
+    @Override
+    public int choosePartition(Message<?> msg, TopicMetadata topicMetadata) {
+        // If the message has a key, it supersedes the load aware routing policy
+        if (msg.hasKey()) {
+            return signSafeMod(hash.makeHash(msg.getKey()), topicMetadata.numPartitions());
+        }
+
+        if (isBatchingEnabled) { // if batching is enabled, choose partition on `maxBatchingDelayMs` boundary.
+            long window = clock.millis() / maxBatchingDelayMs;
+            int partition = batchingPartition;
+            if (window != batchingWindow || partition >= topicMetadata.numPartitions()) {
+                partition = chooseLeastLoadedPartition(topicMetadata);
+                batchingPartition = partition;
+                batchingWindow = window;
+            }
+            return partition;
+        } else {
+            return chooseLeastLoadedPartition(topicMetadata);
+        }
+    }
+
+    private static int chooseLeastLoadedPartition(TopicMetadata topicMetadata) {
+        int numPartitions = topicMetadata.numPartitions();
+        if (numPartitions == 1) {
+            return 0;
+        }
+
+        // Comparing two random partitions is enough to steer away from the slow ones, while still spreading the load
+        // when all the partitions are equally loaded
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(numPartitions);
+        int second = random.nextInt(numPartitions - 1);
+        if (second >= first) {
+            second++;
+        }
+        return getLoad(topicMetadata, second) < getLoad(topicMetadata, first) ? second : first;
+    }
+
+    /**
+     * Estimate the time for a new message to be acknowledged on the partition: all the pending messages and the new
+     * one are waiting for the broker.
+     */
+    private static long getLoad(TopicMetadata topicMetadata, int partition) {
+        long pendingMessages = topicMetadata.numPendingMessages(partition) + 1;
+        return pendingMessages * Math.max(topicMetadata.sendLatencyMicros(partition), 1);
+    }
+
+}
@@ -0,0 +1,81 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.client.impl;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.Messages;
+
+/**
+ * Container of the messages of a batch receive, bounded by a maximum number of messages and bytes.
+ */
+public class MessagesImpl<T> implements Messages<T> {
+
+    private final List<Message<T>> messageList;
+
+    private final int maxNumberOfMessages;
+    private final long maxSizeOfMessages;
+
+    private long currentSizeOfMessages = 0;
+
+    MessagesImpl(int maxNumberOfMessages, long maxSizeOfMessages) {
+        this.maxNumberOfMessages = maxNumberOfMessages;
+        this.maxSizeOfMessages = maxSizeOfMessages;
+        this.messageList = maxNumberOfMessages > 0 ? new ArrayList<>(maxNumberOfMessages) : new ArrayList<>();
+    }
+
+    /**
+     * @return true if the message can be added without exceeding the limits. The first message is always accepted.
+     */
+    boolean canAdd(Message<T> message) {
+        if (messageList.isEmpty()) {
+            return true;
+        }
+        if (maxNumberOfMessages > 0 && messageList.size() + 1 > maxNumberOfMessages) {
+            return false;
+        }
+        return maxSizeOfMessages <= 0 || currentSizeOfMessages + message.getData().length <= maxSizeOfMessages;
+    }
+
+    void add(Message<T> message) {
+        messageList.add(message);
+        currentSizeOfMessages += message.getData().length;
+    }
+
+    @Override
+    public int size() {
+        return messageList.size();
+    }
+
+    public long totalSize() {
+        return currentSizeOfMessages;
+    }
+
+    @Override
+    public Iterator<Message<T>> iterator() {
+        return messageList.iterator();
+    }
+
+    @Override
+    public String toString() {
+        return "MessagesImpl{size=" + messageList.size() + ", totalSize=" + currentSizeOfMessages + '}';
+    }
+}
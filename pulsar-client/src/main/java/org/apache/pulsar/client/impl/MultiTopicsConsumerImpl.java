@@ -21,6 +21,8 @@ package org.apache.pulsar.client.impl;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
 
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -36,8 +38,6 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -45,6 +45,7 @@ import org.apache.pulsar.client.api.Consumer;
 import org.apache.pulsar.client.api.ConsumerStats;
 import org.apache.pulsar.client.api.Message;
 import org.apache.pulsar.client.api.MessageId;
+import org.apache.pulsar.client.api.Messages;
 import org.apache.pulsar.client.api.PulsarClientException;
 import org.apache.pulsar.client.api.Schema;
 import org.apache.pulsar.client.api.SubscriptionType;
@@ -79,11 +80,14 @@ public class MultiTopicsConsumerImpl<T> extends ConsumerBase<T> {
     // sum of topicPartitions, simple topic has 1, partitioned topic equals to partition number.
     AtomicInteger allTopicPartitionsNumber;
 
-    private final ReadWriteLock lock = new ReentrantReadWriteLock();
     private final ConsumerStatsRecorder stats;
     private final UnAckedMessageTracker unAckedMessageTracker;
     private final ConsumerConfigurationData<T> internalConfig;
 
+    // Periodic check of the number of partitions of the subscribed topics
+    private volatile Timeout partitionsAutoUpdateTimeout = null;
+    private CompletableFuture<Void> partitionsAutoUpdateFuture = null;
+
     MultiTopicsConsumerImpl(PulsarClientImpl client, ConsumerConfigurationData<T> conf, ExecutorService listenerExecutor,
                             CompletableFuture<Consumer<T>> subscribeFuture, Schema<T> schema, ConsumerInterceptors<T> interceptors) {
         super(client, "TopicsConsumerFakeTopicName" + ConsumerName.generateRandomName(), conf,
@@ -99,7 +103,8 @@ public class MultiTopicsConsumerImpl<T> extends ConsumerBase<T> {
         this.allTopicPartitionsNumber = new AtomicInteger(0);
 
         if (conf.getAckTimeoutMillis() != 0) {
-            this.unAckedMessageTracker = new UnAckedTopicMessageTracker(client, this, conf.getAckTimeoutMillis());
+            this.unAckedMessageTracker = new UnAckedTopicMessageTracker(client, this, conf.getAckTimeoutMillis(),
+                    conf.getTickDurationMillis());
         } else {
             this.unAckedMessageTracker = UnAckedMessageTracker.UNACKED_MESSAGE_TRACKER_DISABLED;
         }
@@ -110,6 +115,7 @@ public class MultiTopicsConsumerImpl<T> extends ConsumerBase<T> {
         if (conf.getTopicNames().isEmpty()) {
             this.namespaceName = null;
             setState(State.Ready);
+            startPartitionsAutoUpdate();
             subscribeFuture().complete(MultiTopicsConsumerImpl.this);
             return;
         }
@@ -127,6 +133,7 @@ public class MultiTopicsConsumerImpl<T> extends ConsumerBase<T> {
                         setMaxReceiverQueueSize(allTopicPartitionsNumber.get());
                     }
                     setState(State.Ready);
+                    startPartitionsAutoUpdate();
                     // We have successfully created N consumers, so we can start receiving messages now
                     startReceivingMessages(new ArrayList<>(consumers.values()));
                     subscribeFuture().complete(MultiTopicsConsumerImpl.this);
@@ -183,7 +190,7 @@ public class MultiTopicsConsumerImpl<T> extends ConsumerBase<T> {
         }
     }
 
-    private void startReceivingMessages(List<ConsumerImpl<T>> newConsumers) throws PulsarClientException {
+    void startReceivingMessages(List<ConsumerImpl<T>> newConsumers) throws PulsarClientException {
         if (log.isDebugEnabled()) {
             log.debug("[{}] startReceivingMessages for {} new consumers in topics consumer, state: {}",
                 topic, newConsumers.size(), getState());
@@ -203,103 +210,166 @@ public class MultiTopicsConsumerImpl<T> extends ConsumerBase<T> {
                     topic, subscription, consumer.getTopic());
             }
             // Process the message, add to the queue and trigger listener or async callback
-            messageReceived(consumer, message);
+            int movedMessages = messagesReceived(consumer, message);
+
+            if (listener != null) {
+                // Trigger the notification on the message listener in a separate thread to avoid blocking the
+                // networking thread while the message processing happens
+                for (int i = 0; i < movedMessages; i++) {
+                    listenerExecutor.execute(this::notifyListener);
+                }
+            }
+
+            int size = incomingMessages.size();
+            if (size >= maxReceiverQueueSize
+                    || (size > sharedQueueResumeThreshold && !pausedConsumers.isEmpty())) {
+                // mark this consumer to be resumed later: if No more space left in shared queue,
+                // or if any consumer is already paused (to create fair chance for already paused consumers)
+                pausedConsumers.add(consumer);
 
-            // we're modifying pausedConsumers
+                // The shared queue may have been drained since its size was checked, without seeing this consumer
+                // as paused. Check again, so that it does not stay paused forever.
+                resumeReceivingFromPausedConsumersIfNeeded();
+            } else {
+                // Schedule next receiveAsync() if the incoming queue is not full. Use a different thread to avoid
+                // recursion and stack overflow
+                client.eventLoopGroup().execute(() -> {
+                    receiveMessageFromConsumer(consumer);
+                });
+            }
+        });
+    }
+
+    /**
+     * Move the received message to the shared queue, along with the messages already available in the sub consumer,
+     * up to its share of the shared queue. Each sub consumer then gets the same chance to deliver on every round
+     * through the event loop, while saving a future and a task switch for most of the messages.
+     *
+     * <p>The messages are handed over through the shared queue only, without taking the consumer lock: the pending
+     * receives are completed from the queue once the messages are enqueued.
+     *
+     * @return the number of messages moved
+     */
+    private int messagesReceived(ConsumerImpl<T> consumer, Message<T> firstMessage) {
+        int fairShare = Math.max(1, maxReceiverQueueSize / Math.max(1, allTopicPartitionsNumber.get()));
+        int movedMessages = 0;
+        try {
+            Message<T> message = firstMessage;
+            while (message != null) {
+                messageReceived(consumer, message);
+                movedMessages++;
+                if (movedMessages >= fairShare || incomingMessages.size() >= sharedQueueResumeThreshold) {
+                    break;
+                }
+                message = consumer.pollAvailableMessage();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        completePendingReceives();
+        if (hasPendingBatchReceive()) {
+            // Batch receives are completed under the lock, so that they never drain the queue concurrently
             lock.writeLock().lock();
             try {
-                int size = incomingMessages.size();
-                if (size >= maxReceiverQueueSize
-                        || (size > sharedQueueResumeThreshold && !pausedConsumers.isEmpty())) {
-                    // mark this consumer to be resumed later: if No more space left in shared queue,
-                    // or if any consumer is already paused (to create fair chance for already paused consumers)
-                    pausedConsumers.add(consumer);
-                } else {
-                    // Schedule next receiveAsync() if the incoming queue is not full. Use a different thread to avoid
-                    // recursion and stack overflow
-                    client.eventLoopGroup().execute(() -> {
-                        receiveMessageFromConsumer(consumer);
-                    });
+                if (hasPendingBatchReceive() && hasEnoughMessagesForBatchReceive()) {
+                    notifyPendingBatchReceivedCallBack();
                 }
             } finally {
                 lock.writeLock().unlock();
             }
-        });
+        }
+        return movedMessages;
     }
 
-    private void messageReceived(ConsumerImpl<T> consumer, Message<T> message) {
+    private void messageReceived(ConsumerImpl<T> consumer, Message<T> message) throws InterruptedException {
         checkArgument(message instanceof MessageImpl);
-        lock.writeLock().lock();
-        try {
-            TopicMessageImpl<T> topicMessage = new TopicMessageImpl<>(
-                consumer.getTopic(), consumer.getTopicNameWithoutPartition(), message);
-            unAckedMessageTracker.add(topicMessage.getMessageId());
+        TopicMessageImpl<T> topicMessage = new TopicMessageImpl<>(
+            consumer.getTopic(), consumer.getTopicNameWithoutPartition(), message);
+        unAckedMessageTracker.add(topicMessage.getMessageId());
 
-            if (log.isDebugEnabled()) {
-                log.debug("[{}][{}] Received message from topics-consumer {}",
-                    topic, subscription, message.getMessageId());
+        if (log.isDebugEnabled()) {
+            log.debug("[{}][{}] Received message from topics-consumer {}",
+                topic, subscription, message.getMessageId());
+        }
+
+        // Enqueue the message so that it can be retrieved when application calls receive()
+        // Waits for the queue to have space for the message
+        // This should never block cause MultiTopicsConsumerImpl should always use GrowableArrayBlockingQueue
+        increaseIncomingMessageSize(topicMessage);
+        incomingMessages.put(topicMessage);
+    }
+
+    /**
+     * Complete the pending async receives with the messages of the shared queue. The receive path enqueues the
+     * messages before checking the pending receives, and {@link #internalReceiveAsync()} adds its pending receive
+     * before checking the queue again, so that at least one of them sees both without sharing a lock.
+     */
+    private void completePendingReceives() {
+        boolean completed = false;
+        while (!pendingReceives.isEmpty() && !incomingMessages.isEmpty()) {
+            CompletableFuture<Message<T>> receivedFuture = pendingReceives.poll();
+            if (receivedFuture == null) {
+                break;
+            } else if (receivedFuture.isDone()) {
+                // The receive was cancelled
+                continue;
             }
 
-            // if asyncReceive is waiting : return message to callback without adding to incomingMessages queue
-            if (!pendingReceives.isEmpty()) {
-                CompletableFuture<Message<T>> receivedFuture = pendingReceives.poll();
-                listenerExecutor.execute(() -> receivedFuture.complete(topicMessage));
-            } else {
-                // Enqueue the message so that it can be retrieved when application calls receive()
-                // Waits for the queue to have space for the message
-                // This should never block cause MultiTopicsConsumerImpl should always use GrowableArrayBlockingQueue
-                incomingMessages.put(topicMessage);
+            Message<T> message = incomingMessages.poll();
+            if (message == null) {
+                // Taken by another receiver in the meantime, keep waiting for the next message
+                pendingReceives.add(receivedFuture);
+                continue;
             }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-        } finally {
-            lock.writeLock().unlock();
+            decreaseIncomingMessageSize(message);
+            checkState(message instanceof TopicMessageImpl);
+            unAckedMessageTracker.add(message.getMessageId());
+            listenerExecutor.execute(() -> receivedFuture.complete(message));
+            completed = true;
+        }
+        if (completed) {
+            resumeReceivingFromPausedConsumersIfNeeded();
         }
+    }
 
-        if (listener != null) {
-            // Trigger the notification on the message listener in a separate thread to avoid blocking the networking
-            // thread while the message processing happens
-            listenerExecutor.execute(() -> {
-                Message<T> msg;
-                try {
-                    msg = internalReceive();
-                } catch (PulsarClientException e) {
-                    log.warn("[{}] [{}] Failed to dequeue the message for listener", topic, subscription, e);
-                    return;
-                }
+    private void notifyListener() {
+        Message<T> msg;
+        try {
+            msg = internalReceive();
+        } catch (PulsarClientException e) {
+            log.warn("[{}] [{}] Failed to dequeue the message for listener", topic, subscription, e);
+            return;
+        }
 
-                try {
-                    if (log.isDebugEnabled()) {
-                        log.debug("[{}][{}] Calling message listener for message {}",
-                            topic, subscription, message.getMessageId());
-                    }
-                    listener.received(MultiTopicsConsumerImpl.this, msg);
-                } catch (Throwable t) {
-                    log.error("[{}][{}] Message listener error in processing message: {}",
-                        topic, subscription, message, t);
-                }
-            });
+        try {
+            if (log.isDebugEnabled()) {
+                log.debug("[{}][{}] Calling message listener for message {}",
+                    topic, subscription, msg.getMessageId());
+            }
+            listener.received(MultiTopicsConsumerImpl.this, msg);
+        } catch (Throwable t) {
+            log.error("[{}][{}] Message listener error in processing message: {}",
+                topic, subscription, msg, t);
         }
     }
 
+    // Pausing a consumer and resuming the paused consumers do not need a lock: a consumer is added to the paused ones
+    // before checking the shared queue size again, and the receivers check the paused consumers after taking a message
+    // from the shared queue, so at least one of them sees the other.
     private void resumeReceivingFromPausedConsumersIfNeeded() {
-        lock.readLock().lock();
-        try {
-            if (incomingMessages.size() <= sharedQueueResumeThreshold && !pausedConsumers.isEmpty()) {
-                while (true) {
-                    ConsumerImpl<T> consumer = pausedConsumers.poll();
-                    if (consumer == null) {
-                        break;
-                    }
-
-                    // if messages are readily available on consumer we will attempt to writeLock on the same thread
-                    client.eventLoopGroup().execute(() -> {
-                        receiveMessageFromConsumer(consumer);
-                    });
+        if (incomingMessages.size() <= sharedQueueResumeThreshold && !pausedConsumers.isEmpty()) {
+            while (true) {
+                ConsumerImpl<T> consumer = pausedConsumers.poll();
+                if (consumer == null) {
+                    break;
                 }
+
+                // Resume on another thread, the caller may be the application thread taking messages from the queue
+                client.eventLoopGroup().execute(() -> {
+                    receiveMessageFromConsumer(consumer);
+                });
             }
-        } finally {
-            lock.readLock().unlock();
         }
     }
 
@@ -308,6 +378,7 @@ public class MultiTopicsConsumerImpl<T> extends ConsumerBase<T> {
         Message<T> message;
         try {
             message = incomingMessages.take();
+            decreaseIncomingMessageSize(message);
             checkState(message instanceof TopicMessageImpl);
             unAckedMessageTracker.add(message.getMessageId());
             resumeReceivingFromPausedConsumersIfNeeded();
@@ -324,6 +395,7 @@ public class MultiTopicsConsumerImpl<T> extends ConsumerBase<T> {
         try {
             message = incomingMessages.poll(timeout, unit);
             if (message != null) {
+                decreaseIncomingMessageSize(message);
                 checkArgument(message instanceof TopicMessageImpl);
                 unAckedMessageTracker.add(message.getMessageId());
             }
@@ -338,28 +410,74 @@ public class MultiTopicsConsumerImpl<T> extends ConsumerBase<T> {
     @Override
     protected CompletableFuture<Message<T>> internalReceiveAsync() {
         CompletableFuture<Message<T>> result = new CompletableFuture<>();
-        Message<T> message;
+        Message<T> message = incomingMessages.poll();
+        if (message == null) {
+            pendingReceives.add(result);
+            // A message may have been enqueued before the receive was pending
+            completePendingReceives();
+        } else {
+            decreaseIncomingMessageSize(message);
+            checkState(message instanceof TopicMessageImpl);
+            unAckedMessageTracker.add(message.getMessageId());
+            resumeReceivingFromPausedConsumersIfNeeded();
+            result.complete(message);
+        }
+
+        return result;
+    }
+
+    @Override
+    protected CompletableFuture<Messages<T>> internalBatchReceiveAsync() {
+        CompletableFuture<Messages<T>> result = new CompletableFuture<>();
+        lock.writeLock().lock();
         try {
-            lock.writeLock().lock();
-            message = incomingMessages.poll(0, TimeUnit.SECONDS);
-            if (message == null) {
-                pendingReceives.add(result);
+            if (pendingBatchReceives.isEmpty() && hasEnoughMessagesForBatchReceive()) {
+                result.complete(drainIncomingMessages());
             } else {
-                checkState(message instanceof TopicMessageImpl);
-                unAckedMessageTracker.add(message.getMessageId());
-                resumeReceivingFromPausedConsumersIfNeeded();
-                result.complete(message);
+                pendingBatchReceives.add(OpBatchReceive.of(result));
             }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            result.completeExceptionally(new PulsarClientException(e));
         } finally {
             lock.writeLock().unlock();
         }
 
+        if (!result.isDone()) {
+            scheduleBatchReceiveTimeout();
+        }
         return result;
     }
 
+    @Override
+    protected void completeOpBatchReceive(OpBatchReceive<T> op) {
+        if (op.future.isDone()) {
+            // The batch receive was cancelled
+            return;
+        }
+        MessagesImpl<T> messages = drainIncomingMessages();
+        listenerExecutor.execute(() -> op.future.complete(messages));
+    }
+
+    /**
+     * Drain the shared queue up to the limits of the batch receive policy. Paused consumers are resumed once for the
+     * whole batch.
+     */
+    private MessagesImpl<T> drainIncomingMessages() {
+        MessagesImpl<T> messages = newMessagesImpl();
+        Message<T> msgPeeked = incomingMessages.peek();
+        while (msgPeeked != null && messages.canAdd(msgPeeked)) {
+            Message<T> msg = incomingMessages.poll();
+            if (msg == null) {
+                break;
+            }
+            decreaseIncomingMessageSize(msg);
+            checkState(msg instanceof TopicMessageImpl);
+            unAckedMessageTracker.add(msg.getMessageId());
+            messages.add(msg);
+            msgPeeked = incomingMessages.peek();
+        }
+        resumeReceivingFromPausedConsumersIfNeeded();
+        return messages;
+    }
+
     @Override
     protected CompletableFuture<Void> doAcknowledge(MessageId messageId, AckType ackType,
                                                     Map<String,Long> properties) {
@@ -427,6 +545,12 @@ public class MultiTopicsConsumerImpl<T> extends ConsumerBase<T> {
         }
         setState(State.Closing);
 
+        Timeout timeout = partitionsAutoUpdateTimeout;
+        if (timeout != null) {
+            timeout.cancel();
+            partitionsAutoUpdateTimeout = null;
+        }
+
         CompletableFuture<Void> closeFuture = new CompletableFuture<>();
         List<CompletableFuture<Void>> futureList = consumers.values().stream()
             .map(c -> c.closeAsync()).collect(Collectors.toList());
@@ -441,6 +565,7 @@ public class MultiTopicsConsumerImpl<T> extends ConsumerBase<T> {
                     client.cleanupConsumer(this);
                     // fail all pending-receive futures to notify application
                     failPendingReceive();
+                    failPendingBatchReceive();
                 } else {
                     setState(State.Failed);
                     closeFuture.completeExceptionally(ex);
@@ -495,6 +620,7 @@ public class MultiTopicsConsumerImpl<T> extends ConsumerBase<T> {
         try {
             consumers.values().stream().forEach(consumer -> consumer.redeliverUnacknowledgedMessages());
             incomingMessages.clear();
+            resetIncomingMessageSize();
             unAckedMessageTracker.clear();
         } finally {
             lock.writeLock().unlock();
@@ -506,8 +632,9 @@ public class MultiTopicsConsumerImpl<T> extends ConsumerBase<T> {
     public void redeliverUnacknowledgedMessages(Set<MessageId> messageIds) {
         checkArgument(messageIds.stream().findFirst().get() instanceof TopicMessageIdImpl);
 
-        if (conf.getSubscriptionType() != SubscriptionType.Shared) {
-            // We cannot redeliver single messages if subscription type is not Shared
+        if (conf.getSubscriptionType() != SubscriptionType.Shared
+                && conf.getSubscriptionType() != SubscriptionType.Key_Shared) {
+            // We cannot redeliver single messages if subscription type is not Shared or Key_Shared
             redeliverUnacknowledgedMessages();
             return;
         }
@@ -579,6 +706,7 @@ public class MultiTopicsConsumerImpl<T> extends ConsumerBase<T> {
             Message<T> message = incomingMessages.poll();
             checkState(message instanceof TopicMessageImpl);
             while (message != null) {
+                decreaseIncomingMessageSize(message);
                 MessageId messageId = message.getMessageId();
                 if (!messageIds.contains(messageId)) {
                     messageIds.add(messageId);
@@ -787,6 +915,103 @@ public class MultiTopicsConsumerImpl<T> extends ConsumerBase<T> {
         });
     }
 
+    private void startPartitionsAutoUpdate() {
+        if (conf.isAutoUpdatePartitions()) {
+            schedulePartitionsAutoUpdate();
+        }
+    }
+
+    private void schedulePartitionsAutoUpdate() {
+        partitionsAutoUpdateTimeout = client.timer().newTimeout(partitionsAutoUpdateTimerTask,
+            conf.getAutoUpdatePartitionsIntervalSeconds(), TimeUnit.SECONDS);
+    }
+
+    // TimerTask to check the number of partitions of the subscribed topics, and subscribe to the new partitions
+    private final TimerTask partitionsAutoUpdateTimerTask = new TimerTask() {
+        @Override
+        public void run(Timeout timeout) throws Exception {
+            if (timeout.isCancelled() || getState() != State.Ready) {
+                return;
+            }
+
+            // skip this check if the previous one is still in progress
+            if (partitionsAutoUpdateFuture == null || partitionsAutoUpdateFuture.isDone()) {
+                List<CompletableFuture<Void>> futures = topics.entrySet().stream()
+                    .filter(entry -> entry.getValue() > 1)
+                    .map(entry -> subscribeIncreasedTopicPartitions(entry.getKey()))
+                    .collect(Collectors.toList());
+                partitionsAutoUpdateFuture = FutureUtil.waitForAll(futures);
+            }
+
+            // schedule the next check
+            schedulePartitionsAutoUpdate();
+        }
+    };
+
+    // subscribe to the partitions added to a partitioned topic since the last check
+    private CompletableFuture<Void> subscribeIncreasedTopicPartitions(String topicName) {
+        return client.getPartitionedTopicMetadata(topicName).thenCompose(metadata -> {
+            Integer oldPartitionNumber = topics.get(topicName);
+            int currentPartitionNumber = metadata.partitions;
+            if (oldPartitionNumber == null || currentPartitionNumber == oldPartitionNumber) {
+                // the topic was unsubscribed, or its number of partitions did not change
+                return CompletableFuture.completedFuture(null);
+            } else if (currentPartitionNumber < oldPartitionNumber) {
+                log.warn("[{}] Number of partitions of topic {} decreased from {} to {}, ignoring removed partitions",
+                    topic, topicName, oldPartitionNumber, currentPartitionNumber);
+                return CompletableFuture.completedFuture(null);
+            }
+
+            log.info("[{}] [{}] Partitions of topic {} increased from {} to {}, subscribing to new partitions",
+                topic, subscription, topicName, oldPartitionNumber, currentPartitionNumber);
+            int receiverQueueSize = Math.min(conf.getReceiverQueueSize(),
+                conf.getMaxTotalReceiverQueueSizeAcrossPartitions() / currentPartitionNumber);
+            ConsumerConfigurationData<T> configurationData = getInternalConsumerConfig();
+            configurationData.setReceiverQueueSize(receiverQueueSize);
+
+            List<ConsumerImpl<T>> newConsumers = IntStream
+                .range(oldPartitionNumber, currentPartitionNumber)
+                .mapToObj(partitionIndex -> {
+                    String partitionName = TopicName.get(topicName).getPartition(partitionIndex).toString();
+                    ConsumerImpl<T> newConsumer = new ConsumerImpl<>(client, partitionName, configurationData,
+                        client.externalExecutorProvider().getExecutor(), partitionIndex, new CompletableFuture<>(),
+                        schema, interceptors);
+                    consumers.putIfAbsent(newConsumer.getTopic(), newConsumer);
+                    return newConsumer;
+                })
+                .collect(Collectors.toList());
+            topics.put(topicName, currentPartitionNumber);
+            allTopicPartitionsNumber.addAndGet(newConsumers.size());
+
+            List<CompletableFuture<Consumer<T>>> futures = newConsumers.stream()
+                .map(ConsumerImpl::subscribeFuture).collect(Collectors.toList());
+            return FutureUtil.waitForAll(futures)
+                .thenAccept(finalFuture -> {
+                    if (allTopicPartitionsNumber.get() > maxReceiverQueueSize) {
+                        setMaxReceiverQueueSize(allTopicPartitionsNumber.get());
+                    }
+                    try {
+                        startReceivingMessages(newConsumers);
+                    } catch (PulsarClientException e) {
+                        throw new RuntimeException(e);
+                    }
+                })
+                .exceptionally(ex -> {
+                    log.warn("[{}] [{}] Failed to subscribe to the new partitions of topic {}: {}",
+                        topic, subscription, topicName, ex.getMessage());
+                    // roll back, so the new partitions are subscribed again on the next check
+                    newConsumers.forEach(consumer -> {
+                        consumer.closeAsync();
+                        consumers.remove(consumer.getTopic(), consumer);
+                        pausedConsumers.remove(consumer);
+                    });
+                    topics.replace(topicName, currentPartitionNumber, oldPartitionNumber);
+                    allTopicPartitionsNumber.addAndGet(-newConsumers.size());
+                    return null;
+                });
+        });
+    }
+
     // un-subscribe a given topic
     public CompletableFuture<Void> unsubscribeAsync(String topicName) {
         checkArgument(TopicName.isValid(topicName), "Invalid topic name:" + topicName);
@@ -21,14 +21,19 @@ package org.apache.pulsar.client.impl;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import org.apache.pulsar.client.api.Message;
 import org.apache.pulsar.client.api.MessageId;
 import org.apache.pulsar.client.api.MessageRouter;
@@ -43,20 +48,23 @@ import org.apache.pulsar.common.util.FutureUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.collect.Lists;
-
 public class PartitionedProducerImpl<T> extends ProducerBase<T> {
 
-    private List<ProducerImpl<T>> producers;
+    // Producers of the partitions, indexed by partition. Only appended to when partitions are added to the topic.
+    private final List<ProducerImpl<T>> producers;
     private MessageRouter routerPolicy;
     private final ProducerStatsRecorderImpl stats;
-    private final TopicMetadata topicMetadata;
+    private volatile TopicMetadata topicMetadata;
+
+    // Periodic check of the number of partitions of the topic
+    private volatile Timeout partitionsAutoUpdateTimeout = null;
+    private CompletableFuture<Void> partitionsAutoUpdateFuture = null;
 
     public PartitionedProducerImpl(PulsarClientImpl client, String topic, ProducerConfigurationData conf, int numPartitions,
             CompletableFuture<Producer<T>> producerCreatedFuture, Schema<T> schema, ProducerInterceptors<T> interceptors) {
         super(client, topic, conf, producerCreatedFuture, schema, interceptors);
-        this.producers = Lists.newArrayListWithCapacity(numPartitions);
-        this.topicMetadata = new TopicMetadataImpl(numPartitions);
+        this.producers = new CopyOnWriteArrayList<>();
+        this.topicMetadata = new TopicMetadataImpl(numPartitions, producers);
         this.routerPolicy = getMessageRouter();
         stats = client.getConfiguration().getStatsIntervalSeconds() > 0 ? new ProducerStatsRecorderImpl() : null;
 
@@ -84,6 +92,12 @@ public class PartitionedProducerImpl<T> extends ProducerBase<T> {
                 conf.isBatchingEnabled(),
                 TimeUnit.MICROSECONDS.toMillis(conf.getBatchingMaxPublishDelayMicros()));
             break;
+        case LoadAwarePartition:
+            messageRouter = new LoadAwarePartitionMessageRouterImpl(
+                conf.getHashingScheme(),
+                conf.isBatchingEnabled(),
+                TimeUnit.MICROSECONDS.toMillis(conf.getBatchingMaxPublishDelayMicros()));
+            break;
         case SinglePartition:
         default:
             messageRouter = new SinglePartitionMessageRouterImpl(
@@ -128,6 +142,9 @@ public class PartitionedProducerImpl<T> extends ProducerBase<T> {
                         setState(State.Ready);
                         log.info("[{}] Created partitioned producer", topic);
                         producerCreatedFuture().complete(PartitionedProducerImpl.this);
+                        if (conf.isAutoUpdatePartitions()) {
+                            schedulePartitionsAutoUpdate();
+                        }
                     } else {
                         log.error("[{}] Could not create partitioned producer.", topic, createFail.get().getCause());
                         closeAsync().handle((ok, closeException) -> {
@@ -161,6 +178,7 @@ public class PartitionedProducerImpl<T> extends ProducerBase<T> {
             return FutureUtil.failedFuture(new PulsarClientException.NotConnectedException());
         }
 
+        TopicMetadata topicMetadata = this.topicMetadata;
         int partition = routerPolicy.choosePartition(message, topicMetadata);
         checkArgument(partition >= 0 && partition < topicMetadata.numPartitions(),
                 "Illegal partition index chosen by the message routing policy: " + partition);
@@ -192,10 +210,17 @@ public class PartitionedProducerImpl<T> extends ProducerBase<T> {
         }
         setState(State.Closing);
 
+        Timeout timeout = partitionsAutoUpdateTimeout;
+        if (timeout != null) {
+            timeout.cancel();
+            partitionsAutoUpdateTimeout = null;
+        }
+
+        List<ProducerImpl<T>> producersToClose = new ArrayList<>(producers);
         AtomicReference<Throwable> closeFail = new AtomicReference<Throwable>();
-        AtomicInteger completed = new AtomicInteger(topicMetadata.numPartitions());
+        AtomicInteger completed = new AtomicInteger(producersToClose.size());
         CompletableFuture<Void> closeFuture = new CompletableFuture<>();
-        for (Producer<T> producer : producers) {
+        for (Producer<T> producer : producersToClose) {
             if (producer != null) {
                 producer.closeAsync().handle((closed, ex) -> {
                     if (ex != null) {
@@ -229,12 +254,75 @@ public class PartitionedProducerImpl<T> extends ProducerBase<T> {
             return null;
         }
         stats.reset();
-        for (int i = 0; i < topicMetadata.numPartitions(); i++) {
-            stats.updateCumulativeStats(producers.get(i).getStats());
-        }
+        producers.forEach(producer -> stats.updateCumulativeStats(producer.getStats()));
         return stats;
     }
 
+    private void schedulePartitionsAutoUpdate() {
+        partitionsAutoUpdateTimeout = client.timer().newTimeout(partitionsAutoUpdateTimerTask,
+                conf.getAutoUpdatePartitionsIntervalSeconds(), TimeUnit.SECONDS);
+    }
+
+    // TimerTask to check the number of partitions of the topic, and start publishing on the new partitions
+    private final TimerTask partitionsAutoUpdateTimerTask = new TimerTask() {
+        @Override
+        public void run(Timeout timeout) throws Exception {
+            if (timeout.isCancelled() || getState() != State.Ready) {
+                return;
+            }
+
+            // skip this check if the previous one is still in progress
+            if (partitionsAutoUpdateFuture == null || partitionsAutoUpdateFuture.isDone()) {
+                partitionsAutoUpdateFuture = addIncreasedTopicPartitions();
+            }
+
+            // schedule the next check
+            schedulePartitionsAutoUpdate();
+        }
+    };
+
+    // create the producers of the partitions added to the topic since the last check
+    private CompletableFuture<Void> addIncreasedTopicPartitions() {
+        return client.getPartitionedTopicMetadata(topic).thenCompose(metadata -> {
+            int oldPartitionNumber = topicMetadata.numPartitions();
+            int currentPartitionNumber = metadata.partitions;
+            if (currentPartitionNumber == oldPartitionNumber) {
+                return CompletableFuture.completedFuture(null);
+            } else if (currentPartitionNumber < oldPartitionNumber) {
+                log.warn("[{}] Number of partitions decreased from {} to {}, ignoring the removed partitions", topic,
+                        oldPartitionNumber, currentPartitionNumber);
+                return CompletableFuture.completedFuture(null);
+            }
+
+            log.info("[{}] Number of partitions increased from {} to {}, creating producers for the new partitions",
+                    topic, oldPartitionNumber, currentPartitionNumber);
+            List<ProducerImpl<T>> newProducers = IntStream.range(oldPartitionNumber, currentPartitionNumber)
+                    .mapToObj(partitionIndex -> new ProducerImpl<>(client,
+                            TopicName.get(topic).getPartition(partitionIndex).toString(), conf,
+                            new CompletableFuture<>(), partitionIndex, schema, interceptors))
+                    .collect(Collectors.toList());
+
+            List<CompletableFuture<Producer<T>>> futures = newProducers.stream()
+                    .map(ProducerImpl::producerCreatedFuture).collect(Collectors.toList());
+            return FutureUtil.waitForAll(futures).handle((ok, ex) -> {
+                if (ex != null) {
+                    log.warn("[{}] Failed to create producers for the new partitions: {}", topic, ex.getMessage());
+                    newProducers.forEach(ProducerImpl::closeAsync);
+                    return null;
+                }
+
+                // Make the producers visible before the message router can choose the new partitions
+                producers.addAll(newProducers);
+                topicMetadata = new TopicMetadataImpl(currentPartitionNumber, producers);
+                if (getState() == State.Closing || getState() == State.Closed) {
+                    // the partitioned producer was closed while the new producers were created
+                    newProducers.forEach(ProducerImpl::closeAsync);
+                }
+                return null;
+            });
+        });
+    }
+
     private static final Logger log = LoggerFactory.getLogger(PartitionedProducerImpl.class);
 
     public List<ProducerImpl<T>> getProducers() {
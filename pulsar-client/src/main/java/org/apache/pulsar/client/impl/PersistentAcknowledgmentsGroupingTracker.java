@@ -25,7 +25,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
@@ -33,10 +33,13 @@ import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import lombok.extern.slf4j.Slf4j;
 
 import org.apache.commons.lang3.tuple.Pair;
+import org.apache.commons.lang3.tuple.Triple;
 import org.apache.pulsar.client.api.MessageId;
 import org.apache.pulsar.client.impl.conf.ConsumerConfigurationData;
 import org.apache.pulsar.common.api.Commands;
 import org.apache.pulsar.common.api.proto.PulsarApi.CommandAck.AckType;
+import org.apache.pulsar.common.util.collections.LongPairRangeSet;
+import org.apache.pulsar.common.util.collections.OpenLongPairRangeSet;
 
 /**
  * Group the acknowledgments for a certain time and then sends them out in a single protobuf command.
@@ -64,16 +67,26 @@ public class PersistentAcknowledgmentsGroupingTracker implements Acknowledgments
 
     /**
      * This is a set of all the individual acks that the application has issued and that were not already sent to
-     * broker.
+     * broker. Consecutive entries are coalesced in ranges, both in memory and in the ack command. Access is guarded by
+     * the set itself.
      */
-    private final ConcurrentSkipListSet<MessageIdImpl> pendingIndividualAcks;
+    private final LongPairRangeSet<MessageId> pendingIndividualAcks;
+    private int pendingIndividualAcksCount = 0;
+
+    /**
+     * The batches for which the application has acknowledged some of the messages, indexed by the id of the batch
+     * entry. The state of each batch is sent to the broker on the next flush.
+     */
+    private final ConcurrentSkipListMap<MessageIdImpl, BatchMessageAcker> pendingIndividualBatchIndexAcks;
 
     private final ScheduledFuture<?> scheduledTask;
 
     public PersistentAcknowledgmentsGroupingTracker(ConsumerImpl<?> consumer, ConsumerConfigurationData<?> conf,
                                                     EventLoopGroup eventLoopGroup) {
         this.consumer = consumer;
-        this.pendingIndividualAcks = new ConcurrentSkipListSet<>();
+        this.pendingIndividualAcks = new OpenLongPairRangeSet<>(
+                (ledgerId, entryId) -> new MessageIdImpl(ledgerId, entryId, consumer.getPartitionIndex()));
+        this.pendingIndividualBatchIndexAcks = new ConcurrentSkipListMap<>();
         this.acknowledgementGroupTimeMicros = conf.getAcknowledgementsGroupTimeMicros();
 
         if (acknowledgementGroupTimeMicros > 0) {
@@ -93,26 +106,51 @@ public class PersistentAcknowledgmentsGroupingTracker implements Acknowledgments
             // Already included in a cumulative ack
             return true;
         } else {
-            return pendingIndividualAcks.contains(messageId);
+            MessageIdImpl msgId = (MessageIdImpl) messageId;
+            synchronized (pendingIndividualAcks) {
+                return pendingIndividualAcks.contains(msgId.getLedgerId(), msgId.getEntryId());
+            }
         }
     }
 
     public void addAcknowledgment(MessageIdImpl msgId, AckType ackType, Map<String, Long> properties) {
-        if (acknowledgementGroupTimeMicros == 0 || !properties.isEmpty()) {
+        if (acknowledgementGroupTimeMicros == 0 || !properties.isEmpty() || msgId.getEntryId() >= Integer.MAX_VALUE) {
             // We cannot group acks if the delay is 0 or when there are properties attached to it. Fortunately that's an
-            // uncommon condition since it's only used for the compaction subscription.
+            // uncommon condition since it's only used for the compaction subscription. Entry ids that do not fit in the
+            // pending acks set are not expected either.
             doImmediateAck(msgId, ackType, properties);
         } else if (ackType == AckType.Cumulative) {
             doCumulativeAck(msgId);
         } else {
             // Individual ack
-            pendingIndividualAcks.add(msgId);
-            if (pendingIndividualAcks.size() >= MAX_ACK_GROUP_SIZE) {
+            if (msgId instanceof BatchMessageIdImpl) {
+                // The whole batch is acknowledged, there's no need to send the state of its messages
+                pendingIndividualBatchIndexAcks.remove(new MessageIdImpl(msgId.getLedgerId(), msgId.getEntryId(),
+                        msgId.getPartitionIndex()));
+            }
+            boolean flushRequired = false;
+            synchronized (pendingIndividualAcks) {
+                if (!pendingIndividualAcks.contains(msgId.getLedgerId(), msgId.getEntryId())) {
+                    pendingIndividualAcks.addOpenClosed(msgId.getLedgerId(), msgId.getEntryId() - 1,
+                            msgId.getLedgerId(), msgId.getEntryId());
+                    flushRequired = ++pendingIndividualAcksCount >= MAX_ACK_GROUP_SIZE;
+                }
+            }
+            if (flushRequired) {
                 flush();
             }
         }
     }
 
+    public void addBatchIndexAcknowledgment(BatchMessageIdImpl msgId) {
+        pendingIndividualBatchIndexAcks.put(
+                new MessageIdImpl(msgId.getLedgerId(), msgId.getEntryId(), msgId.getPartitionIndex()),
+                msgId.getAcker());
+        if (acknowledgementGroupTimeMicros == 0 || pendingIndividualBatchIndexAcks.size() >= MAX_ACK_GROUP_SIZE) {
+            flush();
+        }
+    }
+
     private void doCumulativeAck(MessageIdImpl msgId) {
         // Handle concurrent updates from different threads
         while (true) {
@@ -169,36 +207,62 @@ public class PersistentAcknowledgmentsGroupingTracker implements Acknowledgments
             cumulativeAckFulshRequired = false;
         }
 
-        // Flush all individual acks
-        if (!pendingIndividualAcks.isEmpty()) {
-            if (Commands.peerSupportsMultiMessageAcknowledgment(cnx.getRemoteEndpointProtocolVersion())) {
-                // We can send 1 single protobuf command with all individual acks
-                List<Pair<Long, Long>> entriesToAck = new ArrayList<>(pendingIndividualAcks.size());
-                while (true) {
-                    MessageIdImpl msgId = pendingIndividualAcks.pollFirst();
-                    if (msgId == null) {
-                        break;
-                    }
-
-                    entriesToAck.add(Pair.of(msgId.getLedgerId(), msgId.getEntryId()));
+        // Flush all the partially acknowledged batches, older brokers redeliver the complete batches anyway
+        List<Triple<Long, Long, long[]>> batchIndexesToAck = Collections.emptyList();
+        if (!pendingIndividualBatchIndexAcks.isEmpty()) {
+            boolean sendBatchIndexAcks = Commands
+                    .peerSupportsBatchIndexAcknowledgment(cnx.getRemoteEndpointProtocolVersion());
+            batchIndexesToAck = new ArrayList<>(pendingIndividualBatchIndexAcks.size());
+            while (true) {
+                Map.Entry<MessageIdImpl, BatchMessageAcker> entry = pendingIndividualBatchIndexAcks.pollFirstEntry();
+                if (entry == null) {
+                    break;
                 }
 
-                cnx.ctx().write(Commands.newMultiMessageAck(consumer.consumerId, entriesToAck),
-                        cnx.ctx().voidPromise());
-            } else {
-                // When talking to older brokers, send the acknowledgments individually
-                while (true) {
-                    MessageIdImpl msgId = pendingIndividualAcks.pollFirst();
-                    if (msgId == null) {
-                        break;
-                    }
-
-                    cnx.ctx().write(Commands.newAck(consumer.consumerId, msgId.getLedgerId(), msgId.getEntryId(),
-                            AckType.Individual, null, Collections.emptyMap()), cnx.ctx().voidPromise());
+                MessageIdImpl msgId = entry.getKey();
+                if (sendBatchIndexAcks && msgId.compareTo(lastCumulativeAck) > 0) {
+                    batchIndexesToAck.add(Triple.of(msgId.getLedgerId(), msgId.getEntryId(),
+                            entry.getValue().getAckSet()));
                 }
             }
         }
 
+        // Flush all individual acks
+        synchronized (pendingIndividualAcks) {
+            if (!pendingIndividualAcks.isEmpty() || !batchIndexesToAck.isEmpty()) {
+                int protocolVersion = cnx.getRemoteEndpointProtocolVersion();
+                if (Commands.peerSupportsMessageIdRangeAcknowledgment(protocolVersion)) {
+                    // We can send 1 single protobuf command with the ranges of consecutive individual acks
+                    cnx.ctx().write(Commands.newMultiMessageAck(consumer.consumerId, pendingIndividualAcks,
+                            batchIndexesToAck), cnx.ctx().voidPromise());
+                } else if (Commands.peerSupportsMultiMessageAcknowledgment(protocolVersion)) {
+                    // We can send 1 single protobuf command with all individual acks
+                    List<Pair<Long, Long>> entriesToAck = new ArrayList<>(pendingIndividualAcksCount);
+                    pendingIndividualAcks.forEach((lowerKey, lowerValue, upperKey, upperValue) -> {
+                        for (long entryId = lowerValue + 1; entryId <= upperValue; entryId++) {
+                            entriesToAck.add(Pair.of(upperKey, entryId));
+                        }
+                        return true;
+                    });
+
+                    cnx.ctx().write(Commands.newMultiMessageAck(consumer.consumerId, entriesToAck, batchIndexesToAck),
+                            cnx.ctx().voidPromise());
+                } else {
+                    // When talking to older brokers, send the acknowledgments individually
+                    pendingIndividualAcks.forEach((lowerKey, lowerValue, upperKey, upperValue) -> {
+                        for (long entryId = lowerValue + 1; entryId <= upperValue; entryId++) {
+                            cnx.ctx().write(Commands.newAck(consumer.consumerId, upperKey, entryId, AckType.Individual,
+                                    null, Collections.emptyMap()), cnx.ctx().voidPromise());
+                        }
+                        return true;
+                    });
+                }
+
+                pendingIndividualAcks.clear();
+                pendingIndividualAcksCount = 0;
+            }
+        }
+
         cnx.ctx().flush();
     }
 
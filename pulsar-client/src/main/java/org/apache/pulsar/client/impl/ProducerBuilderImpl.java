@@ -216,6 +216,12 @@ public class ProducerBuilderImpl<T> implements ProducerBuilder<T> {
         return this;
     }
 
+    @Override
+    public ProducerBuilder<T> enableKeyBasedBatching(boolean keyBasedBatchingEnabled) {
+        conf.setKeyBasedBatchingEnabled(keyBasedBatchingEnabled);
+        return this;
+    }
+
     @Override
     public ProducerBuilder<T> initialSequenceId(long initialSequenceId) {
         conf.setInitialSequenceId(initialSequenceId);
@@ -234,6 +240,21 @@ public class ProducerBuilderImpl<T> implements ProducerBuilder<T> {
         return this;
     }
 
+    @Override
+    public ProducerBuilder<T> autoUpdatePartitions(boolean autoUpdate) {
+        conf.setAutoUpdatePartitions(autoUpdate);
+        return this;
+    }
+
+    @Override
+    public ProducerBuilder<T> autoUpdatePartitionsInterval(long interval, @NonNull TimeUnit unit) {
+        if (unit.toSeconds(interval) < 1) {
+            throw new IllegalArgumentException("autoUpdatePartitionsInterval needs to be >= 1 second");
+        }
+        conf.setAutoUpdatePartitionsIntervalSeconds(unit.toSeconds(interval));
+        return this;
+    }
+
     @Override
     public ProducerBuilder<T> intercept(ProducerInterceptor<T>... interceptors) {
         if (interceptorList == null) {
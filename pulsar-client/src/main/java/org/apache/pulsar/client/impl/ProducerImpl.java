@@ -66,7 +66,6 @@ import org.apache.pulsar.common.api.proto.PulsarApi;
 import org.apache.pulsar.common.api.proto.PulsarApi.MessageMetadata;
 import org.apache.pulsar.common.api.proto.PulsarApi.ProtocolVersion;
 import org.apache.pulsar.common.compression.CompressionCodec;
-import org.apache.pulsar.common.compression.CompressionCodecProvider;
 import org.apache.pulsar.common.schema.SchemaInfo;
 import org.apache.pulsar.common.schema.SchemaType;
 import org.apache.pulsar.common.util.DateFormatter;
@@ -106,6 +105,10 @@ public class ProducerImpl<T> extends ProducerBase<T> implements TimerTask, Conne
     private final CompressionCodec compressor;
 
     private volatile long lastSequenceIdPublished;
+
+    // Moving average of the time taken by the broker to acknowledge the published messages, in microseconds
+    private volatile long sendLatencyMicros = 0;
+    private static final int SEND_LATENCY_SMOOTHING_FACTOR = 8;
     private MessageCrypto msgCrypto = null;
 
     private ScheduledFuture<?> keyGeneratorTask = null;
@@ -130,8 +133,7 @@ public class ProducerImpl<T> extends ProducerBase<T> implements TimerTask, Conne
         this.pendingMessages = Queues.newArrayBlockingQueue(conf.getMaxPendingMessages());
         this.pendingCallbacks = Queues.newArrayBlockingQueue(conf.getMaxPendingMessages());
         this.semaphore = new Semaphore(conf.getMaxPendingMessages(), true);
-        this.compressor = CompressionCodecProvider
-                .getCompressionCodec(convertCompressionType(conf.getCompressionType()));
+        this.compressor = client.getCompressionCodec(convertCompressionType(conf.getCompressionType()));
 
         if (conf.getInitialSequenceId() != null) {
             long initialSequenceId = conf.getInitialSequenceId();
@@ -168,7 +170,8 @@ public class ProducerImpl<T> extends ProducerBase<T> implements TimerTask, Conne
         if (conf.isBatchingEnabled()) {
             this.maxNumMessagesInBatch = conf.getBatchingMaxMessages();
             this.batchMessageContainer = new BatchMessageContainer(maxNumMessagesInBatch,
-                    convertCompressionType(conf.getCompressionType()), topic, producerName);
+                    conf.isKeyBasedBatchingEnabled(), convertCompressionType(conf.getCompressionType()), compressor,
+                    topic, producerName);
         } else {
             this.maxNumMessagesInBatch = 1;
             this.batchMessageContainer = null;
@@ -195,6 +198,11 @@ public class ProducerImpl<T> extends ProducerBase<T> implements TimerTask, Conne
         return connectionHandler;
     }
 
+    private boolean canAddToBatch(MessageImpl<T> msg) {
+        // delayed messages are sent individually, since the delivery time is part of the entry metadata
+        return isBatchMessagingEnabled() && !msg.getMessageBuilder().hasDeliverAtTime();
+    }
+
     private boolean isBatchMessagingEnabled() {
         return conf.isBatchingEnabled();
     }
@@ -302,7 +310,7 @@ public class ProducerImpl<T> extends ProducerBase<T> implements TimerTask, Conne
         int uncompressedSize = payload.readableBytes();
         ByteBuf compressedPayload = payload;
         // batch will be compressed when closed
-        if (!isBatchMessagingEnabled()) {
+        if (!canAddToBatch(msg)) {
             compressedPayload = compressor.encode(payload);
             payload.release();
         }
@@ -312,7 +320,7 @@ public class ProducerImpl<T> extends ProducerBase<T> implements TimerTask, Conne
         // batch)
         if (compressedSize > PulsarDecoder.MaxMessageSize) {
             compressedPayload.release();
-            String compressedStr = (!isBatchMessagingEnabled() && conf.getCompressionType() != CompressionType.NONE)
+            String compressedStr = (!canAddToBatch(msg) && conf.getCompressionType() != CompressionType.NONE)
                     ? "Compressed"
                     : "";
             PulsarClientException.InvalidMessageException invalidMessageException =
@@ -357,7 +365,7 @@ public class ProducerImpl<T> extends ProducerBase<T> implements TimerTask, Conne
                     msgMetadataBuilder.setUncompressedSize(uncompressedSize);
                 }
 
-                if (isBatchMessagingEnabled()) {
+                if (canAddToBatch(msg)) {
                     // handle boundary cases where message being added would exceed
                     // batch size and/or max message size
                     if (batchMessageContainer.hasSpaceInBatch(msg)) {
@@ -372,6 +380,10 @@ public class ProducerImpl<T> extends ProducerBase<T> implements TimerTask, Conne
                         doBatchSendAndAdd(msg, callback, payload);
                     }
                 } else {
+                    if (isBatchMessagingEnabled()) {
+                        // send the messages already in the batch first, to preserve the order of the sequence ids
+                        batchMessageAndSend();
+                    }
                     ByteBuf encryptedPayload = encryptMessage(msgMetadataBuilder, compressedPayload);
 
                     MessageMetadata msgMetadata = msgMetadataBuilder.build();
@@ -695,6 +707,7 @@ public class ProducerImpl<T> extends ProducerBase<T> implements TimerTask, Conne
             op = pendingCallbacks.poll();
             if (op != null) {
                 lastSequenceIdPublished = op.sequenceId + op.numMessagesInBatch - 1;
+                updateSendLatency(System.currentTimeMillis() - op.createdAt);
                 op.setMessageId(ledgerId, entryId, partitionIndex);
                 try {
                     // Need to protect ourselves from any exception being thrown in the future handler from the
@@ -710,6 +723,14 @@ public class ProducerImpl<T> extends ProducerBase<T> implements TimerTask, Conne
         }
     }
 
+    private void updateSendLatency(long latencyMillis) {
+        long latencyMicros = TimeUnit.MILLISECONDS.toMicros(Math.max(latencyMillis, 0));
+        long average = sendLatencyMicros;
+        // Acks are received on the connection thread, so there is a single writer
+        sendLatencyMicros = average == 0 ? latencyMicros
+                : average + (latencyMicros - average) / SEND_LATENCY_SMOOTHING_FACTOR;
+    }
+
     /**
      * Checks message checksum to retry if message was corrupted while sending to broker. Recomputes checksum of the
      * message header-payload again.
@@ -1355,6 +1376,20 @@ public class ProducerImpl<T> extends ProducerBase<T> implements TimerTask, Conne
         return pendingMessages.size();
     }
 
+    /**
+     * @return the number of messages not acknowledged by the broker yet, including the ones waiting to be batched
+     */
+    int getNumberOfPendingMessages() {
+        return conf.getMaxPendingMessages() - semaphore.availablePermits();
+    }
+
+    /**
+     * @return the moving average of the time taken by the broker to acknowledge the published messages
+     */
+    long getSendLatencyMicros() {
+        return sendLatencyMicros;
+    }
+
     private PulsarApi.CompressionType convertCompressionType(CompressionType compressionType) {
         switch (compressionType) {
         case NONE:
@@ -1363,6 +1398,10 @@ public class ProducerImpl<T> extends ProducerBase<T> implements TimerTask, Conne
             return PulsarApi.CompressionType.LZ4;
         case ZLIB:
             return PulsarApi.CompressionType.ZLIB;
+        case ZSTD:
+            return PulsarApi.CompressionType.ZSTD;
+        case SNAPPY:
+            return PulsarApi.CompressionType.SNAPPY;
 
         default:
             throw new RuntimeException("Invalid compression type");
@@ -30,6 +30,9 @@ import io.netty.util.HashedWheelTimer;
 import io.netty.util.Timer;
 import io.netty.util.concurrent.DefaultThreadFactory;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Optional;
@@ -66,7 +69,11 @@ import org.apache.pulsar.client.impl.schema.AutoConsumeSchema;
 import org.apache.pulsar.client.impl.schema.AutoProduceBytesSchema;
 import org.apache.pulsar.client.impl.schema.generic.GenericSchema;
 import org.apache.pulsar.client.util.ExecutorProvider;
+import org.apache.pulsar.common.api.proto.PulsarApi.CompressionType;
 import org.apache.pulsar.common.api.proto.PulsarApi.CommandGetTopicsOfNamespace.Mode;
+import org.apache.pulsar.common.compression.CompressionCodec;
+import org.apache.pulsar.common.compression.CompressionCodecProvider;
+import org.apache.pulsar.common.compression.CompressionCodecZstd;
 import org.apache.pulsar.common.naming.NamespaceName;
 import org.apache.pulsar.common.naming.TopicDomain;
 import org.apache.pulsar.common.naming.TopicName;
@@ -87,6 +94,8 @@ public class PulsarClientImpl implements PulsarClient {
     private LookupService lookup;
     private final ConnectionPool cnxPool;
     private final Timer timer;
+    // Zstd codec with the level and dictionary of the client, or null for the default codec
+    private final CompressionCodec zstdCodec;
     private final ExecutorProvider externalExecutorProvider;
 
     enum State {
@@ -133,6 +142,7 @@ public class PulsarClientImpl implements PulsarClient {
         if (conf == null || isBlank(conf.getServiceUrl()) || eventLoopGroup == null) {
             throw new PulsarClientException.InvalidConfigurationException("Invalid client configuration");
         }
+        this.zstdCodec = createZstdCodec(conf);
         this.eventLoopGroup = eventLoopGroup;
         this.conf = conf;
         conf.getAuthentication().start();
@@ -153,6 +163,34 @@ public class PulsarClientImpl implements PulsarClient {
         return conf;
     }
 
+    private static CompressionCodec createZstdCodec(ClientConfigurationData conf) throws PulsarClientException {
+        String dictionaryPath = conf.getZstdCompressionDictionaryPath();
+        if (conf.getZstdCompressionLevel() == CompressionCodecZstd.DEFAULT_LEVEL && dictionaryPath == null) {
+            return null;
+        }
+
+        byte[] dictionary = null;
+        if (dictionaryPath != null) {
+            try {
+                dictionary = Files.readAllBytes(Paths.get(dictionaryPath));
+            } catch (IOException e) {
+                throw new PulsarClientException.InvalidConfigurationException(
+                        "Failed to read zstd compression dictionary from " + dictionaryPath + ": " + e);
+            }
+        }
+        return new CompressionCodecZstd(conf.getZstdCompressionLevel(), dictionary);
+    }
+
+    /**
+     * @return the codec to compress and decompress the messages of the producers and consumers of this client
+     */
+    CompressionCodec getCompressionCodec(CompressionType compressionType) {
+        if (compressionType == CompressionType.ZSTD && zstdCodec != null) {
+            return zstdCodec;
+        }
+        return CompressionCodecProvider.getCompressionCodec(compressionType);
+    }
+
     @Override
     public ProducerBuilder<byte[]> newProducer() {
         return new ProducerBuilderImpl<>(this, Schema.BYTES);
@@ -18,18 +18,47 @@
  */
 package org.apache.pulsar.client.impl;
 
+import java.util.Collections;
+import java.util.List;
+
 import org.apache.pulsar.client.api.TopicMetadata;
 
 class TopicMetadataImpl implements TopicMetadata {
 
     private final int numPartitions;
 
+    // Producers of the partitions, used to report the load of each partition to the message router
+    private final List<? extends ProducerImpl<?>> producers;
+
     TopicMetadataImpl(int numPartitions) {
         this.numPartitions = numPartitions;
+        this.producers = Collections.emptyList();
+    }
+
+    TopicMetadataImpl(int numPartitions, List<? extends ProducerImpl<?>> producers) {
+        this.numPartitions = numPartitions;
+        this.producers = producers;
     }
 
     @Override
     public int numPartitions() {
         return numPartitions;
     }
+
+    @Override
+    public int numPendingMessages(int partition) {
+        ProducerImpl<?> producer = getProducer(partition);
+        return producer != null ? producer.getNumberOfPendingMessages() : 0;
+    }
+
+    @Override
+    public long sendLatencyMicros(int partition) {
+        ProducerImpl<?> producer = getProducer(partition);
+        return producer != null ? producer.getSendLatencyMicros() : 0;
+    }
+
+    private ProducerImpl<?> getProducer(int partition) {
+        // The producers list is filled while the partitions producers are being created
+        return partition >= 0 && partition < producers.size() ? producers.get(partition) : null;
+    }
 }
@@ -27,6 +27,7 @@ import java.util.Base64;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.pulsar.client.api.Message;
 import org.apache.pulsar.client.api.MessageId;
@@ -125,6 +126,19 @@ public class TypedMessageBuilderImpl<T> implements TypedMessageBuilder<T> {
         return this;
     }
 
+    @Override
+    public TypedMessageBuilder<T> deliverAfter(long delay, TimeUnit unit) {
+        checkArgument(delay >= 0, "Invalid delay : '%s'", delay);
+        return deliverAt(System.currentTimeMillis() + unit.toMillis(delay));
+    }
+
+    @Override
+    public TypedMessageBuilder<T> deliverAt(long timestamp) {
+        checkArgument(timestamp > 0, "Invalid timestamp : '%s'", timestamp);
+        msgMetadataBuilder.setDeliverAtTime(timestamp);
+        return this;
+    }
+
     public long getPublishTime() {
         return msgMetadataBuilder.getPublishTime();
     }
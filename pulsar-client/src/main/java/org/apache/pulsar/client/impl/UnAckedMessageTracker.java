@@ -27,14 +27,29 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import org.apache.pulsar.client.api.MessageId;
-import org.apache.pulsar.common.util.collections.ConcurrentOpenHashSet;
+import org.apache.pulsar.common.util.collections.ConcurrentLongPairLongHashMap;
+import org.apache.pulsar.common.util.collections.ConcurrentLongPairSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Track the messages delivered to the application and not acknowledged yet, and redeliver them once the ack timeout
+ * has elapsed.
+ *
+ * <p>Messages are kept in a timing wheel of buckets, one per tick of {@code tickDurationMillis}. A message is added to
+ * the bucket of the current tick and redelivered when the wheel comes back to that bucket, that is between the ack
+ * timeout and the ack timeout plus one tick after having been delivered. An index keeps the bucket of each message, so
+ * that adding or removing a message only touches the bucket it is in.
+ */
 public class UnAckedMessageTracker implements Closeable {
     private static final Logger log = LoggerFactory.getLogger(UnAckedMessageTracker.class);
-    protected ConcurrentOpenHashSet<MessageId> currentSet;
-    protected ConcurrentOpenHashSet<MessageId> oldOpenSet;
+    protected final MessageIdBucket[] buckets;
+    protected final MessageIdIndex index;
+    // Bucket where the messages are currently added. Only modified with the write lock
+    private int currentBucket;
+    // All the messages tracked for a consumer belong to its partition. Only read with the write lock, which makes the
+    // writes done with the read lock visible
+    private int partitionIndex = -1;
     private final ReentrantReadWriteLock readWriteLock;
     protected final Lock readLock;
     private final Lock writeLock;
@@ -42,6 +57,10 @@ public class UnAckedMessageTracker implements Closeable {
 
     public static final UnAckedMessageTrackerDisabled UNACKED_MESSAGE_TRACKER_DISABLED = new UnAckedMessageTrackerDisabled();
 
+    // When the tick duration is not set, the ack timeout is split in this number of ticks, of at least 100 ms
+    private static final int DEFAULT_TICKS_PER_ACK_TIMEOUT = 10;
+    private static final long MIN_DEFAULT_TICK_DURATION_MILLIS = 100;
+
     private static class UnAckedMessageTrackerDisabled extends UnAckedMessageTracker {
         @Override
         public void clear() {
@@ -67,45 +86,133 @@ public class UnAckedMessageTracker implements Closeable {
         }
     }
 
+    /**
+     * Messages added to the tracker during one tick.
+     */
+    protected interface MessageIdBucket {
+        boolean add(MessageId messageId);
+
+        boolean remove(MessageId messageId);
+
+        int removeMessagesTill(MessageId messageId);
+
+        void drainTo(Set<MessageId> messageIds);
+
+        long size();
+
+        void clear();
+    }
+
+    /**
+     * Bucket of each message tracked.
+     */
+    protected interface MessageIdIndex {
+        /**
+         * @return the bucket the message was in before, or -1 if it was not tracked
+         */
+        int put(MessageId messageId, int bucket);
+
+        /**
+         * @return the bucket the message was in, or -1 if it was not tracked
+         */
+        int remove(MessageId messageId);
+
+        void removeMessagesTill(MessageId messageId);
+
+        void clear();
+    }
+
     public UnAckedMessageTracker() {
+        buckets = null;
+        index = null;
         readWriteLock = null;
         readLock = null;
         writeLock = null;
     }
 
     public UnAckedMessageTracker(PulsarClientImpl client, ConsumerBase<?> consumerBase, long ackTimeoutMillis) {
-        currentSet = new ConcurrentOpenHashSet<MessageId>();
-        oldOpenSet = new ConcurrentOpenHashSet<MessageId>();
+        this(client, consumerBase, ackTimeoutMillis, 0);
+    }
+
+    public UnAckedMessageTracker(PulsarClientImpl client, ConsumerBase<?> consumerBase, long ackTimeoutMillis,
+            long tickDurationMillis) {
+        if (tickDurationMillis <= 0) {
+            tickDurationMillis = Math.max(ackTimeoutMillis / DEFAULT_TICKS_PER_ACK_TIMEOUT,
+                    MIN_DEFAULT_TICK_DURATION_MILLIS);
+        }
+        if (tickDurationMillis > ackTimeoutMillis) {
+            // A single tick per ack timeout
+            tickDurationMillis = ackTimeoutMillis;
+        }
+        // One more bucket than the number of ticks in the timeout, for the messages added during the current tick
+        int numberOfBuckets = (int) ((ackTimeoutMillis + tickDurationMillis - 1) / tickDurationMillis) + 1;
+        buckets = new MessageIdBucket[numberOfBuckets];
+        for (int i = 0; i < numberOfBuckets; i++) {
+            buckets[i] = newBucket();
+        }
+        index = newIndex();
         readWriteLock = new ReentrantReadWriteLock();
         readLock = readWriteLock.readLock();
         writeLock = readWriteLock.writeLock();
-        start(client, consumerBase, ackTimeoutMillis);
+        start(client, consumerBase, tickDurationMillis);
+    }
+
+    protected MessageIdBucket newBucket() {
+        return new LongPairBucket();
+    }
+
+    protected MessageIdIndex newIndex() {
+        return new LongPairIndex();
     }
 
-    public void start(PulsarClientImpl client, ConsumerBase<?> consumerBase, long ackTimeoutMillis) {
+    public void start(PulsarClientImpl client, ConsumerBase<?> consumerBase, long tickDurationMillis) {
         this.stop();
         timeout = client.timer().newTimeout(new TimerTask() {
             @Override
             public void run(Timeout t) throws Exception {
-                toggle();
-                if (isAckTimeout()) {
-                    log.warn("[{}] {} messages have timed-out", consumerBase, oldOpenSet.size());
-                    Set<MessageId> messageIds = new HashSet<>();
-                    oldOpenSet.forEach(messageIds::add);
-                    oldOpenSet.clear();
+                Set<MessageId> messageIds = new HashSet<>();
+                writeLock.lock();
+                try {
+                    currentBucket = (currentBucket + 1) % buckets.length;
+                    drainBucket(currentBucket, messageIds);
+                } finally {
+                    writeLock.unlock();
+                }
+                if (!messageIds.isEmpty()) {
+                    log.warn("[{}] {} messages have timed-out", consumerBase, messageIds.size());
                     consumerBase.redeliverUnacknowledgedMessages(messageIds);
                 }
-                timeout = client.timer().newTimeout(this, ackTimeoutMillis, TimeUnit.MILLISECONDS);
+                timeout = client.timer().newTimeout(this, tickDurationMillis, TimeUnit.MILLISECONDS);
             }
-        }, ackTimeoutMillis, TimeUnit.MILLISECONDS);
+        }, tickDurationMillis, TimeUnit.MILLISECONDS);
     }
 
+    // Must be called with the write lock
+    private void drainBucket(int bucket, Set<MessageId> messageIds) {
+        int drained = messageIds.size();
+        buckets[bucket].drainTo(messageIds);
+        if (messageIds.size() != drained) {
+            messageIds.forEach(index::remove);
+        }
+    }
+
+    /**
+     * Simulate the ack timeout of all the messages tracked so far: they are redelivered at the next tick.
+     */
     void toggle() {
         writeLock.lock();
         try {
-            ConcurrentOpenHashSet<MessageId> temp = currentSet;
-            currentSet = oldOpenSet;
-            oldOpenSet = temp;
+            int nextBucket = (currentBucket + 1) % buckets.length;
+            Set<MessageId> messageIds = new HashSet<>();
+            for (int i = 0; i < buckets.length; i++) {
+                if (i != nextBucket) {
+                    drainBucket(i, messageIds);
+                }
+            }
+            for (MessageId messageId : messageIds) {
+                index.put(messageId, nextBucket);
+                buckets[nextBucket].add(messageId);
+            }
         } finally {
             writeLock.unlock();
         }
@@ -114,8 +221,10 @@ public class UnAckedMessageTracker implements Closeable {
     public void clear() {
         readLock.lock();
         try {
-            currentSet.clear();
-            oldOpenSet.clear();
+            for (MessageIdBucket bucket : buckets) {
+                bucket.clear();
+            }
+            index.clear();
         } finally {
             readLock.unlock();
         }
@@ -124,8 +233,13 @@ public class UnAckedMessageTracker implements Closeable {
     public boolean add(MessageId m) {
         readLock.lock();
         try {
-            oldOpenSet.remove(m);
-            return currentSet.add(m);
+            int previousBucket = index.put(m, currentBucket);
+            if (previousBucket == currentBucket) {
+                return false;
+            } else if (previousBucket != -1) {
+                buckets[previousBucket].remove(m);
+            }
+            return buckets[currentBucket].add(m);
         } finally {
             readLock.unlock();
         }
@@ -133,18 +247,14 @@ public class UnAckedMessageTracker implements Closeable {
     }
 
     boolean isEmpty() {
-        readLock.lock();
-        try {
-            return currentSet.isEmpty() && oldOpenSet.isEmpty();
-        } finally {
-            readLock.unlock();
-        }
+        return size() == 0;
     }
 
     public boolean remove(MessageId m) {
         readLock.lock();
         try {
-            return currentSet.remove(m) || oldOpenSet.remove(m);
+            int bucket = index.remove(m);
+            return bucket != -1 && buckets[bucket].remove(m);
         } finally {
             readLock.unlock();
         }
@@ -153,16 +263,11 @@ public class UnAckedMessageTracker implements Closeable {
     long size() {
         readLock.lock();
         try {
-            return currentSet.size() + oldOpenSet.size();
-        } finally {
-            readLock.unlock();
-        }
-    }
-
-    private boolean isAckTimeout() {
-        readLock.lock();
-        try {
-            return !oldOpenSet.isEmpty();
+            long size = 0;
+            for (MessageIdBucket bucket : buckets) {
+                size += bucket.size();
+            }
+            return size;
         } finally {
             readLock.unlock();
         }
@@ -171,10 +276,14 @@ public class UnAckedMessageTracker implements Closeable {
     public int removeMessagesTill(MessageId msgId) {
         readLock.lock();
         try {
-            int currentSetRemovedMsgCount = currentSet.removeIf(m -> (m.compareTo(msgId) <= 0));
-            int oldSetRemovedMsgCount = oldOpenSet.removeIf(m -> (m.compareTo(msgId) <= 0));
-
-            return currentSetRemovedMsgCount + oldSetRemovedMsgCount;
+            int removedMsgCount = 0;
+            for (MessageIdBucket bucket : buckets) {
+                removedMsgCount += bucket.removeMessagesTill(msgId);
+            }
+            if (removedMsgCount > 0) {
+                index.removeMessagesTill(msgId);
+            }
+            return removedMsgCount;
         } finally {
             readLock.unlock();
         }
@@ -196,4 +305,79 @@ public class UnAckedMessageTracker implements Closeable {
     public void close() {
         stop();
     }
+
+    /**
+     * Keep the ledger and entry ids of the messages in a primitive set, so that tracking a message does not retain its
+     * {@link MessageIdImpl}.
+     */
+    private class LongPairBucket implements MessageIdBucket {
+        private final ConcurrentLongPairSet entries = new ConcurrentLongPairSet(16, 1);
+
+        @Override
+        public boolean add(MessageId messageId) {
+            MessageIdImpl id = (MessageIdImpl) messageId;
+            if (partitionIndex != id.getPartitionIndex()) {
+                partitionIndex = id.getPartitionIndex();
+            }
+            return entries.add(id.getLedgerId(), id.getEntryId());
+        }
+
+        @Override
+        public boolean remove(MessageId messageId) {
+            MessageIdImpl id = (MessageIdImpl) messageId;
+            return entries.remove(id.getLedgerId(), id.getEntryId());
+        }
+
+        @Override
+        public int removeMessagesTill(MessageId messageId) {
+            MessageIdImpl id = (MessageIdImpl) messageId;
+            return entries.removeIf((ledgerId, entryId) -> ledgerId < id.getLedgerId()
+                    || (ledgerId == id.getLedgerId() && entryId <= id.getEntryId()));
+        }
+
+        @Override
+        public void drainTo(Set<MessageId> messageIds) {
+            entries.forEach((ledgerId, entryId) -> messageIds.add(new MessageIdImpl(ledgerId, entryId,
+                    partitionIndex)));
+            entries.clear();
+        }
+
+        @Override
+        public long size() {
+            return entries.size();
+        }
+
+        @Override
+        public void clear() {
+            entries.clear();
+        }
+    }
+
+    private static class LongPairIndex implements MessageIdIndex {
+        private final ConcurrentLongPairLongHashMap buckets = new ConcurrentLongPairLongHashMap(16, 1);
+
+        @Override
+        public int put(MessageId messageId, int bucket) {
+            MessageIdImpl id = (MessageIdImpl) messageId;
+            return (int) buckets.put(id.getLedgerId(), id.getEntryId(), bucket);
+        }
+
+        @Override
+        public int remove(MessageId messageId) {
+            MessageIdImpl id = (MessageIdImpl) messageId;
+            return (int) buckets.remove(id.getLedgerId(), id.getEntryId());
+        }
+
+        @Override
+        public void removeMessagesTill(MessageId messageId) {
+            MessageIdImpl id = (MessageIdImpl) messageId;
+            buckets.removeIf((ledgerId, entryId, bucket) -> ledgerId < id.getLedgerId()
+                    || (ledgerId == id.getLedgerId() && entryId <= id.getEntryId()));
+        }
+
+        @Override
+        public void clear() {
+            buckets.clear();
+        }
+    }
 }
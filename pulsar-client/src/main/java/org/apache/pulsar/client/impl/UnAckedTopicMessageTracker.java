@@ -20,30 +20,116 @@ package org.apache.pulsar.client.impl;
 
 import static com.google.common.base.Preconditions.checkState;
 
+import java.util.Set;
+import org.apache.pulsar.client.api.MessageId;
+import org.apache.pulsar.common.util.collections.ConcurrentOpenHashMap;
+import org.apache.pulsar.common.util.collections.ConcurrentOpenHashSet;
+
 public class UnAckedTopicMessageTracker extends UnAckedMessageTracker {
 
     public UnAckedTopicMessageTracker(PulsarClientImpl client, ConsumerBase<?> consumerBase, long ackTimeoutMillis) {
         super(client, consumerBase, ackTimeoutMillis);
     }
 
+    public UnAckedTopicMessageTracker(PulsarClientImpl client, ConsumerBase<?> consumerBase, long ackTimeoutMillis,
+            long tickDurationMillis) {
+        super(client, consumerBase, ackTimeoutMillis, tickDurationMillis);
+    }
+
+    @Override
+    protected MessageIdBucket newBucket() {
+        // Messages of different topics, and of the same batch, need to be told apart: keep the message ids
+        return new TopicMessageIdBucket();
+    }
+
+    @Override
+    protected MessageIdIndex newIndex() {
+        return new TopicMessageIdIndex();
+    }
+
     public int removeTopicMessages(String topicName) {
         readLock.lock();
         try {
-            int currentSetRemovedMsgCount = currentSet.removeIf(m -> {
-                checkState(m instanceof TopicMessageIdImpl,
-                    "message should be of type TopicMessageIdImpl");
-                return ((TopicMessageIdImpl)m).getTopicPartitionName().contains(topicName);
-            });
-            int oldSetRemovedMsgCount = oldOpenSet.removeIf(m -> {
-                checkState(m instanceof TopicMessageIdImpl,
-                    "message should be of type TopicMessageIdImpl");
-                return ((TopicMessageIdImpl)m).getTopicPartitionName().contains(topicName);
-            });
-
-            return currentSetRemovedMsgCount + oldSetRemovedMsgCount;
+            int removedMsgCount = 0;
+            for (MessageIdBucket bucket : buckets) {
+                removedMsgCount += ((TopicMessageIdBucket) bucket).messageIds.removeIf(m -> {
+                    checkState(m instanceof TopicMessageIdImpl,
+                        "message should be of type TopicMessageIdImpl");
+                    if (((TopicMessageIdImpl) m).getTopicPartitionName().contains(topicName)) {
+                        index.remove(m);
+                        return true;
+                    }
+                    return false;
+                });
+            }
+            return removedMsgCount;
         } finally {
             readLock.unlock();
         }
     }
 
+    private static class TopicMessageIdBucket implements MessageIdBucket {
+        private final ConcurrentOpenHashSet<MessageId> messageIds = new ConcurrentOpenHashSet<>(16, 1);
+
+        @Override
+        public boolean add(MessageId messageId) {
+            return messageIds.add(messageId);
+        }
+
+        @Override
+        public boolean remove(MessageId messageId) {
+            return messageIds.remove(messageId);
+        }
+
+        @Override
+        public int removeMessagesTill(MessageId messageId) {
+            return messageIds.removeIf(m -> m.compareTo(messageId) <= 0);
+        }
+
+        @Override
+        public void drainTo(Set<MessageId> drained) {
+            messageIds.forEach(drained::add);
+            messageIds.clear();
+        }
+
+        @Override
+        public long size() {
+            return messageIds.size();
+        }
+
+        @Override
+        public void clear() {
+            messageIds.clear();
+        }
+    }
+
+    private static class TopicMessageIdIndex implements MessageIdIndex {
+        private final ConcurrentOpenHashMap<MessageId, Integer> buckets = new ConcurrentOpenHashMap<>(16, 1);
+
+        @Override
+        public int put(MessageId messageId, int bucket) {
+            Integer previousBucket = buckets.put(messageId, bucket);
+            return previousBucket != null ? previousBucket : -1;
+        }
+
+        @Override
+        public int remove(MessageId messageId) {
+            Integer bucket = buckets.remove(messageId);
+            return bucket != null ? bucket : -1;
+        }
+
+        @Override
+        public void removeMessagesTill(MessageId messageId) {
+            buckets.keys().forEach(m -> {
+                if (m.compareTo(messageId) <= 0) {
+                    buckets.remove(m);
+                }
+            });
+        }
+
+        @Override
+        public void clear() {
+            buckets.clear();
+        }
+    }
 }
@@ -23,6 +23,7 @@ import java.io.Serializable;
 import org.apache.pulsar.client.api.Authentication;
 import org.apache.pulsar.client.api.ServiceUrlProvider;
 import org.apache.pulsar.client.impl.auth.AuthenticationDisabled;
+import org.apache.pulsar.common.compression.CompressionCodecZstd;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
@@ -58,6 +59,9 @@ public class ClientConfigurationData implements Serializable, Cloneable {
     private int maxLookupRequest = 50000;
     private int maxNumberOfRejectedRequestPerConnection = 50;
     private int keepAliveIntervalSeconds = 30;
+
+    private int zstdCompressionLevel = CompressionCodecZstd.DEFAULT_LEVEL;
+    private String zstdCompressionDictionaryPath = null;
     
     public ClientConfigurationData clone() {
         try {
@@ -32,6 +32,7 @@ import java.util.concurrent.TimeUnit;
 import lombok.Data;
 
 import java.util.regex.Pattern;
+import org.apache.pulsar.client.api.BatchReceivePolicy;
 import org.apache.pulsar.client.api.ConsumerCryptoFailureAction;
 import org.apache.pulsar.client.api.ConsumerEventListener;
 import org.apache.pulsar.client.api.CryptoKeyReader;
@@ -69,6 +70,8 @@ public class ConsumerConfigurationData<T> implements Serializable, Cloneable {
 
     private long ackTimeoutMillis = 0;
 
+    private long tickDurationMillis = 0;
+
     private int priorityLevel = 0;
 
     @JsonIgnore
@@ -88,6 +91,15 @@ public class ConsumerConfigurationData<T> implements Serializable, Cloneable {
 
     private DeadLetterPolicy deadLetterPolicy;
 
+    @JsonIgnore
+    private BatchReceivePolicy batchReceivePolicy = BatchReceivePolicy.DEFAULT_POLICY;
+
+    private boolean batchIndexAckEnabled = false;
+
+    private boolean autoUpdatePartitions = true;
+
+    private long autoUpdatePartitionsIntervalSeconds = 60;
+
     @JsonIgnore
     public String getSingleTopic() {
         checkArgument(topicNames.size() == 1);
@@ -61,6 +61,7 @@ public class ProducerConfigurationData implements Serializable, Cloneable {
     private long batchingMaxPublishDelayMicros = TimeUnit.MILLISECONDS.toMicros(1);
     private int batchingMaxMessages = 1000;
     private boolean batchingEnabled = true; // enabled by default
+    private boolean keyBasedBatchingEnabled = false;
 
     @JsonIgnore
     private CryptoKeyReader cryptoKeyReader;
@@ -75,6 +76,9 @@ public class ProducerConfigurationData implements Serializable, Cloneable {
 
     private SortedMap<String, String> properties = new TreeMap<>();
 
+    private boolean autoUpdatePartitions = true;
+    private long autoUpdatePartitionsIntervalSeconds = 60;
+
     /**
      *
      * Returns true if encryption keys are added
@@ -18,11 +18,15 @@
  */
 package org.apache.pulsar.client.impl;
 
+import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.nio.NioEventLoopGroup;
@@ -31,8 +35,13 @@ import java.util.Collections;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.pulsar.client.impl.conf.ConsumerConfigurationData;
+import org.apache.pulsar.common.api.proto.PulsarApi.BaseCommand;
+import org.apache.pulsar.common.api.proto.PulsarApi.CommandAck;
 import org.apache.pulsar.common.api.proto.PulsarApi.CommandAck.AckType;
+import org.apache.pulsar.common.api.proto.PulsarApi.MessageIdRange;
 import org.apache.pulsar.common.api.proto.PulsarApi.ProtocolVersion;
+import org.apache.pulsar.common.util.protobuf.ByteBufCodedInputStream;
+import org.mockito.ArgumentCaptor;
 import org.testng.annotations.AfterClass;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
@@ -201,4 +210,50 @@ public class AcknowledgementsGroupingTrackerTest {
 
         tracker.close();
     }
+
+    @Test
+    public void testAckTrackerSendsRanges() throws Exception {
+        ConsumerConfigurationData<?> conf = new ConsumerConfigurationData<>();
+        conf.setAcknowledgementsGroupTimeMicros(TimeUnit.SECONDS.toMicros(10));
+        ConsumerImpl<?> consumer = mock(ConsumerImpl.class);
+        ClientCnx cnx = mock(ClientCnx.class);
+        ChannelHandlerContext ctx = mock(ChannelHandlerContext.class);
+        when(cnx.ctx()).thenReturn(ctx);
+        when(cnx.getRemoteEndpointProtocolVersion()).thenReturn(ProtocolVersion.v15_VALUE);
+        when(consumer.getClientCnx()).thenReturn(cnx);
+        PersistentAcknowledgmentsGroupingTracker tracker = new PersistentAcknowledgmentsGroupingTracker(consumer, conf, eventLoopGroup);
+
+        for (long entryId : new long[] { 3, 1, 2, 5, 2, 7, 6 }) {
+            tracker.addAcknowledgment(new MessageIdImpl(5, entryId, 0), AckType.Individual, Collections.emptyMap());
+        }
+        tracker.addAcknowledgment(new MessageIdImpl(6, 0, 0), AckType.Individual, Collections.emptyMap());
+        assertTrue(tracker.isDuplicate(new MessageIdImpl(5, 2, 0)));
+        assertFalse(tracker.isDuplicate(new MessageIdImpl(5, 4, 0)));
+
+        tracker.flush();
+        assertFalse(tracker.isDuplicate(new MessageIdImpl(5, 2, 0)));
+
+        ArgumentCaptor<ByteBuf> captor = ArgumentCaptor.forClass(ByteBuf.class);
+        verify(ctx).write(captor.capture(), any());
+        ByteBuf buffer = captor.getValue();
+        buffer.skipBytes(4);
+        int cmdSize = (int) buffer.readUnsignedInt();
+        buffer.writerIndex(buffer.readerIndex() + cmdSize);
+        BaseCommand cmd = BaseCommand.newBuilder().mergeFrom(ByteBufCodedInputStream.get(buffer), null).build();
+        CommandAck ack = cmd.getAck();
+
+        assertEquals(ack.getAckType(), AckType.Individual);
+        assertEquals(ack.getMessageIdCount(), 0);
+        assertEquals(ack.getMessageIdRangeCount(), 3);
+        long[][] expectedRanges = { { 5, 1, 3 }, { 5, 5, 7 }, { 6, 0, 0 } };
+        for (int i = 0; i < expectedRanges.length; i++) {
+            MessageIdRange range = ack.getMessageIdRange(i);
+            assertEquals(range.getLedgerId(), expectedRanges[i][0]);
+            assertEquals(range.getFirstEntryId(), expectedRanges[i][1]);
+            assertEquals(range.getLastEntryId(), expectedRanges[i][2]);
+        }
+        buffer.release();
+
+        tracker.close();
+    }
 }
@@ -19,9 +19,21 @@
 package org.apache.pulsar.client.impl;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.nio.file.Files;
 import org.apache.pulsar.client.api.PulsarClient;
+import org.apache.pulsar.client.api.PulsarClientException;
+import org.apache.pulsar.common.api.proto.PulsarApi.CompressionType;
+import org.apache.pulsar.common.compression.CompressionCodec;
+import org.apache.pulsar.common.compression.CompressionCodecProvider;
+import org.apache.pulsar.common.compression.CompressionCodecZstd;
 import org.testng.annotations.Test;
 
 public class BuildersTest {
@@ -69,4 +81,50 @@ public class BuildersTest {
         assertEquals(builder.conf.isUseTls(), false);
         assertEquals(builder.conf.getServiceUrl(), "pulsar+ssl://service:6650");
     }
+
+    @Test
+    public void zstdCompressionTest() throws Exception {
+        ClientBuilderImpl builder = (ClientBuilderImpl) PulsarClient.builder().serviceUrl("pulsar://service:6650");
+        assertEquals(builder.conf.getZstdCompressionLevel(), CompressionCodecZstd.DEFAULT_LEVEL);
+
+        try (PulsarClientImpl client = (PulsarClientImpl) builder.build()) {
+            assertSame(client.getCompressionCodec(CompressionType.ZSTD),
+                    CompressionCodecProvider.getCompressionCodec(CompressionType.ZSTD));
+        }
+
+        byte[] dictionary = "pulsar-zstd-dictionary-content".getBytes();
+        File dictionaryFile = File.createTempFile("zstd-dictionary", ".dict");
+        try {
+            Files.write(dictionaryFile.toPath(), dictionary);
+            builder.zstdCompressionLevel(9).zstdCompressionDictionary(dictionaryFile.getPath());
+            assertEquals(builder.conf.getZstdCompressionLevel(), 9);
+            assertEquals(builder.conf.getZstdCompressionDictionaryPath(), dictionaryFile.getPath());
+
+            try (PulsarClientImpl client = (PulsarClientImpl) builder.build()) {
+                CompressionCodec codec = client.getCompressionCodec(CompressionType.ZSTD);
+                assertNotSame(codec, CompressionCodecProvider.getCompressionCodec(CompressionType.ZSTD));
+                assertSame(client.getCompressionCodec(CompressionType.LZ4),
+                        CompressionCodecProvider.getCompressionCodec(CompressionType.LZ4));
+
+                // The messages can only be decompressed with the same dictionary
+                byte[] data = "pulsar-zstd-dictionary-content-message".getBytes();
+                ByteBuf compressed = codec.encode(Unpooled.wrappedBuffer(data));
+                ByteBuf uncompressed = new CompressionCodecZstd(9, dictionary).decode(compressed, data.length);
+                assertEquals(uncompressed, Unpooled.wrappedBuffer(data));
+                compressed.release();
+                uncompressed.release();
+            }
+        } finally {
+            dictionaryFile.delete();
+        }
+
+        // A dictionary that cannot be read fails the creation of the client
+        builder.zstdCompressionDictionary(dictionaryFile.getPath());
+        try {
+            builder.build();
+            fail("Should have failed");
+        } catch (PulsarClientException.InvalidConfigurationException e) {
+            // Expected
+        }
+    }
 }
@@ -0,0 +1,144 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.client.impl;
+
+import static org.mockito.Mockito.mock;
+import static org.powermock.api.mockito.PowerMockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.time.Clock;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.pulsar.client.api.HashingScheme;
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.TopicMetadata;
+import org.testng.annotations.Test;
+
+/**
+ * Unit test of {@link LoadAwarePartitionMessageRouterImpl}.
+ */
+public class LoadAwarePartitionMessageRouterImplTest {
+
+    private static TopicMetadata loadedTopicMetadata(int numPartitions, int[] pendingMessages, long[] latencies) {
+        TopicMetadata metadata = mock(TopicMetadata.class);
+        when(metadata.numPartitions()).thenReturn(numPartitions);
+        for (int i = 0; i < numPartitions; i++) {
+            when(metadata.numPendingMessages(i)).thenReturn(pendingMessages[i]);
+            when(metadata.sendLatencyMicros(i)).thenReturn(latencies[i]);
+        }
+        return metadata;
+    }
+
+    @Test
+    public void testChoosePartitionWithoutKey() {
+        Message<?> msg = mock(Message.class);
+        when(msg.getKey()).thenReturn(null);
+
+        LoadAwarePartitionMessageRouterImpl router = new LoadAwarePartitionMessageRouterImpl(
+                HashingScheme.JavaStringHash, false, 0);
+
+        // Without any load information, the messages are spread across all the partitions
+        Set<Integer> partitions = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            int partition = router.choosePartition(msg, new TopicMetadataImpl(5));
+            assertTrue(partition >= 0 && partition < 5);
+            partitions.add(partition);
+        }
+        assertEquals(partitions.size(), 5);
+
+        assertEquals(router.choosePartition(msg, new TopicMetadataImpl(1)), 0);
+    }
+
+    @Test
+    public void testAvoidLoadedPartitions() {
+        Message<?> msg = mock(Message.class);
+        when(msg.getKey()).thenReturn(null);
+
+        LoadAwarePartitionMessageRouterImpl router = new LoadAwarePartitionMessageRouterImpl(
+                HashingScheme.JavaStringHash, false, 0);
+
+        // Partition 2 has a long pending queue
+        TopicMetadata metadata = loadedTopicMetadata(4, new int[] { 10, 10, 1000, 10 },
+                new long[] { 1000, 1000, 1000, 1000 });
+        for (int i = 0; i < 1000; i++) {
+            assertNotEquals(router.choosePartition(msg, metadata), 2);
+        }
+
+        // Partition 1 is slow to acknowledge the messages
+        metadata = loadedTopicMetadata(4, new int[] { 10, 10, 10, 10 }, new long[] { 1000, 50000, 1000, 1000 });
+        for (int i = 0; i < 1000; i++) {
+            assertNotEquals(router.choosePartition(msg, metadata), 1);
+        }
+    }
+
+    @Test
+    public void testBatchingAwareness() {
+        Message<?> msg = mock(Message.class);
+        when(msg.getKey()).thenReturn(null);
+
+        Clock clock = mock(Clock.class);
+
+        LoadAwarePartitionMessageRouterImpl router = new LoadAwarePartitionMessageRouterImpl(
+                HashingScheme.JavaStringHash, true, 10, clock);
+        TopicMetadataImpl metadata = new TopicMetadataImpl(100);
+
+        // The same partition is used for all the messages of a batching window
+        when(clock.millis()).thenReturn(123450L);
+        int partition = router.choosePartition(msg, metadata);
+        for (int i = 1; i < 10; i++) {
+            when(clock.millis()).thenReturn(123450L + i);
+            assertEquals(router.choosePartition(msg, metadata), partition);
+        }
+
+        // The partition is chosen again in the next window
+        Set<Integer> partitions = new HashSet<>();
+        for (int i = 1; i <= 100; i++) {
+            when(clock.millis()).thenReturn(123450L + i * 10);
+            partitions.add(router.choosePartition(msg, metadata));
+        }
+        assertTrue(partitions.size() > 1);
+    }
+
+    @Test
+    public void testChoosePartitionWithKey() {
+        String key1 = "key1";
+        String key2 = "key2";
+        Message<?> msg1 = mock(Message.class);
+        when(msg1.hasKey()).thenReturn(true);
+        when(msg1.getKey()).thenReturn(key1);
+        Message<?> msg2 = mock(Message.class);
+        when(msg2.hasKey()).thenReturn(true);
+        when(msg2.getKey()).thenReturn(key2);
+
+        LoadAwarePartitionMessageRouterImpl router = new LoadAwarePartitionMessageRouterImpl(
+                HashingScheme.JavaStringHash, false, 0);
+
+        // Keyed messages are not moved away from their partition, even when it is loaded
+        int[] pendingMessages = new int[100];
+        long[] latencies = new long[100];
+        pendingMessages[key1.hashCode() % 100] = 1000;
+        TopicMetadata metadata = loadedTopicMetadata(100, pendingMessages, latencies);
+
+        assertEquals(key1.hashCode() % 100, router.choosePartition(msg1, metadata));
+        assertEquals(key2.hashCode() % 100, router.choosePartition(msg2, metadata));
+    }
+}
@@ -0,0 +1,164 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.client.impl;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import com.google.common.collect.Sets;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.pulsar.client.api.MessageId;
+import org.testng.annotations.Test;
+
+public class UnAckedMessageTrackerTest {
+
+    private static PulsarClientImpl mockClient(AtomicReference<TimerTask> task) {
+        Timer timer = mock(Timer.class);
+        when(timer.newTimeout(any(TimerTask.class), anyLong(), any(TimeUnit.class))).thenAnswer(invocation -> {
+            task.set((TimerTask) invocation.getArguments()[0]);
+            return mock(Timeout.class);
+        });
+        PulsarClientImpl client = mock(PulsarClientImpl.class);
+        when(client.timer()).thenReturn(timer);
+        return client;
+    }
+
+    @Test
+    public void testRedeliverAfterAckTimeout() throws Exception {
+        AtomicReference<TimerTask> task = new AtomicReference<>();
+        PulsarClientImpl client = mockClient(task);
+        Timer timer = client.timer();
+        ConsumerBase<?> consumer = mock(ConsumerBase.class);
+
+        // 1s timeout with 100ms ticks
+        UnAckedMessageTracker tracker = new UnAckedMessageTracker(client, consumer, 1000, 100);
+        verify(timer).newTimeout(any(TimerTask.class), anyLong(), any(TimeUnit.class));
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(tracker.add(new MessageIdImpl(1, i, 2)));
+        }
+        assertEquals(tracker.size(), 10);
+
+        assertTrue(tracker.remove(new MessageIdImpl(1, 3, 2)));
+        assertEquals(tracker.removeMessagesTill(new MessageIdImpl(1, 5, 2)), 5);
+        assertEquals(tracker.size(), 4);
+
+        // Messages are only redelivered once all the ticks of the timeout have elapsed
+        for (int i = 0; i < 10; i++) {
+            task.get().run(null);
+        }
+        verify(consumer, never()).redeliverUnacknowledgedMessages(any());
+
+        task.get().run(null);
+        verify(consumer).redeliverUnacknowledgedMessages(Sets.newHashSet(new MessageIdImpl(1, 6, 2),
+                new MessageIdImpl(1, 7, 2), new MessageIdImpl(1, 8, 2), new MessageIdImpl(1, 9, 2)));
+        assertTrue(tracker.isEmpty());
+
+        // Adding a message again restarts its timeout
+        reset(consumer);
+        tracker.add(new MessageIdImpl(2, 0, 2));
+        for (int i = 0; i < 5; i++) {
+            task.get().run(null);
+        }
+        tracker.add(new MessageIdImpl(2, 0, 2));
+        assertEquals(tracker.size(), 1);
+        for (int i = 0; i < 10; i++) {
+            task.get().run(null);
+        }
+        verify(consumer, never()).redeliverUnacknowledgedMessages(any());
+
+        task.get().run(null);
+        verify(consumer).redeliverUnacknowledgedMessages(Sets.newHashSet(new MessageIdImpl(2, 0, 2)));
+
+        tracker.close();
+    }
+
+    @Test
+    public void testToggleExpiresTrackedMessages() throws Exception {
+        AtomicReference<TimerTask> task = new AtomicReference<>();
+        ConsumerBase<?> consumer = mock(ConsumerBase.class);
+        UnAckedMessageTracker tracker = new UnAckedMessageTracker(mockClient(task), consumer, 1000, 100);
+
+        tracker.add(new MessageIdImpl(1, 0, 2));
+        for (int i = 0; i < 5; i++) {
+            task.get().run(null);
+        }
+        tracker.add(new MessageIdImpl(1, 1, 2));
+        tracker.add(new MessageIdImpl(1, 2, 2));
+        // A message added again is only tracked once, in its latest bucket
+        tracker.add(new MessageIdImpl(1, 0, 2));
+        assertEquals(tracker.size(), 3);
+        assertTrue(tracker.remove(new MessageIdImpl(1, 2, 2)));
+        assertFalse(tracker.remove(new MessageIdImpl(1, 2, 2)));
+
+        // All the messages tracked so far are redelivered at the next tick
+        tracker.toggle();
+        tracker.add(new MessageIdImpl(1, 3, 2));
+        task.get().run(null);
+        verify(consumer).redeliverUnacknowledgedMessages(Sets.newHashSet(new MessageIdImpl(1, 0, 2),
+                new MessageIdImpl(1, 1, 2)));
+        assertEquals(tracker.size(), 1);
+        assertTrue(tracker.remove(new MessageIdImpl(1, 3, 2)));
+        assertTrue(tracker.isEmpty());
+
+        tracker.close();
+    }
+
+    @Test
+    public void testTopicMessageTracker() throws Exception {
+        AtomicReference<TimerTask> task = new AtomicReference<>();
+        ConsumerBase<?> consumer = mock(ConsumerBase.class);
+        UnAckedTopicMessageTracker tracker = new UnAckedTopicMessageTracker(mockClient(task), consumer, 1000, 100);
+
+        MessageId m1 = new TopicMessageIdImpl("t1-partition-0", "t1", new MessageIdImpl(1, 0, 0));
+        MessageId m2 = new TopicMessageIdImpl("t2-partition-0", "t2", new MessageIdImpl(1, 0, 0));
+        MessageId m3 = new TopicMessageIdImpl("t2-partition-0", "t2", new MessageIdImpl(1, 1, 0));
+        assertTrue(tracker.add(m1));
+        assertTrue(tracker.add(m2));
+        task.get().run(null);
+        assertTrue(tracker.add(m3));
+        assertTrue(tracker.add(m1));
+        assertEquals(tracker.size(), 3);
+
+        assertEquals(tracker.removeTopicMessages("t2"), 2);
+        assertFalse(tracker.remove(m2));
+        assertTrue(tracker.remove(m1));
+        assertTrue(tracker.isEmpty());
+
+        tracker.add(m3);
+        tracker.toggle();
+        task.get().run(null);
+        verify(consumer).redeliverUnacknowledgedMessages(Sets.newHashSet(m3));
+        assertTrue(tracker.isEmpty());
+
+        tracker.close();
+    }
+}
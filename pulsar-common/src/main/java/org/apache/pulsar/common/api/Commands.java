@@ -37,6 +37,7 @@ import java.util.Optional;
 import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.tuple.Pair;
+import org.apache.commons.lang3.tuple.Triple;
 import org.apache.pulsar.common.api.proto.PulsarApi;
 import org.apache.pulsar.common.api.proto.PulsarApi.AuthMethod;
 import org.apache.pulsar.common.api.proto.PulsarApi.BaseCommand;
@@ -78,15 +79,19 @@ import org.apache.pulsar.common.api.proto.PulsarApi.CommandSubscribe.SubType;
 import org.apache.pulsar.common.api.proto.PulsarApi.CommandSuccess;
 import org.apache.pulsar.common.api.proto.PulsarApi.CommandUnsubscribe;
 import org.apache.pulsar.common.api.proto.PulsarApi.MessageIdData;
+import org.apache.pulsar.common.api.proto.PulsarApi.MessageIdRange;
 import org.apache.pulsar.common.api.proto.PulsarApi.MessageMetadata;
 import org.apache.pulsar.common.api.proto.PulsarApi.ProtocolVersion;
 import org.apache.pulsar.common.api.proto.PulsarApi.ServerError;
 import org.apache.pulsar.common.schema.SchemaInfo;
 import org.apache.pulsar.common.schema.SchemaType;
 import org.apache.pulsar.common.schema.SchemaVersion;
+import org.apache.pulsar.common.util.collections.LongPairRangeSet;
 import org.apache.pulsar.common.util.protobuf.ByteBufCodedInputStream;
 import org.apache.pulsar.common.util.protobuf.ByteBufCodedOutputStream;
 import org.apache.pulsar.shaded.com.google.protobuf.v241.ByteString;
+import org.apache.pulsar.shaded.com.google.protobuf.v241.CodedOutputStream;
+import org.apache.pulsar.shaded.com.google.protobuf.v241.WireFormat;
 
 public class Commands {
 
@@ -284,12 +289,22 @@ public class Commands {
     }
 
     public static ByteBufPair newMessage(long consumerId, MessageIdData messageId, int redeliveryCount, ByteBuf metadataAndPayload) {
+        return newMessage(consumerId, messageId, redeliveryCount, null, metadataAndPayload);
+    }
+
+    public static ByteBufPair newMessage(long consumerId, MessageIdData messageId, int redeliveryCount, long[] ackSet,
+            ByteBuf metadataAndPayload) {
         CommandMessage.Builder msgBuilder = CommandMessage.newBuilder();
         msgBuilder.setConsumerId(consumerId);
         msgBuilder.setMessageId(messageId);
         if (redeliveryCount > 0) {
             msgBuilder.setRedeliveryCount(redeliveryCount);
         }
+        if (ackSet != null) {
+            for (long word : ackSet) {
+                msgBuilder.addAckSet(word);
+            }
+        }
         CommandMessage msg = msgBuilder.build();
         BaseCommand.Builder cmdBuilder = BaseCommand.newBuilder();
         BaseCommand cmd = cmdBuilder.setType(Type.MESSAGE).setMessage(msg).build();
@@ -302,6 +317,76 @@ public class Commands {
         return res;
     }
 
+    /**
+     * Create a CommandMessage for the dispatch of an entry to a consumer, without going through the protobuf builders.
+     * <p>
+     * This is on the hot path of the broker dispatchers, where a command is created for each entry, so the command
+     * is directly serialized in the pooled headers buffer. The result is the same as building the command with
+     * {@link #newMessage(long, MessageIdData, int, long[], ByteBuf)}. The buffer of the entry is not copied.
+     */
+    public static ByteBufPair newMessage(long consumerId, long ledgerId, long entryId, int partition,
+            int redeliveryCount, long[] ackSet, ByteBuf metadataAndPayload) {
+        // MessageIdData
+        int messageIdSize = CodedOutputStream.computeUInt64Size(1, ledgerId)
+                + CodedOutputStream.computeUInt64Size(2, entryId)
+                + CodedOutputStream.computeInt32Size(3, partition);
+
+        // CommandMessage
+        int messageSize = CodedOutputStream.computeUInt64Size(1, consumerId)
+                + CodedOutputStream.computeTagSize(2)
+                + CodedOutputStream.computeRawVarint32Size(messageIdSize) + messageIdSize;
+        if (redeliveryCount > 0) {
+            messageSize += CodedOutputStream.computeUInt32Size(3, redeliveryCount);
+        }
+        if (ackSet != null) {
+            for (long word : ackSet) {
+                messageSize += CodedOutputStream.computeInt64Size(4, word);
+            }
+        }
+
+        // BaseCommand
+        int cmdSize = CodedOutputStream.computeEnumSize(1, Type.MESSAGE_VALUE)
+                + CodedOutputStream.computeTagSize(9)
+                + CodedOutputStream.computeRawVarint32Size(messageSize) + messageSize;
+
+        int totalSize = 4 + cmdSize + metadataAndPayload.readableBytes();
+        int headersSize = 4 + 4 + cmdSize;
+
+        ByteBuf headers = PooledByteBufAllocator.DEFAULT.buffer(headersSize, headersSize);
+        headers.writeInt(totalSize); // External frame
+        headers.writeInt(cmdSize);
+
+        ByteBufCodedOutputStream outStream = ByteBufCodedOutputStream.get(headers);
+        try {
+            outStream.writeEnum(1, Type.MESSAGE_VALUE);
+            outStream.writeTag(9, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+            outStream.writeRawVarint32(messageSize);
+
+            outStream.writeUInt64(1, consumerId);
+            outStream.writeTag(2, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+            outStream.writeRawVarint32(messageIdSize);
+            outStream.writeUInt64(1, ledgerId);
+            outStream.writeUInt64(2, entryId);
+            outStream.writeInt32(3, partition);
+
+            if (redeliveryCount > 0) {
+                outStream.writeUInt32(3, redeliveryCount);
+            }
+            if (ackSet != null) {
+                for (long word : ackSet) {
+                    outStream.writeInt64(4, word);
+                }
+            }
+        } catch (IOException e) {
+            // This is in-memory serialization, should not fail
+            throw new RuntimeException(e);
+        } finally {
+            outStream.recycle();
+        }
+
+        return (ByteBufPair) ByteBufPair.get(headers, metadataAndPayload);
+    }
+
     public static ByteBufPair newSend(long producerId, long sequenceId, int numMessages, ChecksumType checksumType,
             MessageMetadata messageData, ByteBuf payload) {
         CommandSend.Builder sendBuilder = CommandSend.newBuilder();
@@ -621,6 +706,18 @@ public class Commands {
     }
 
     public static ByteBuf newMultiMessageAck(long consumerId, List<Pair<Long, Long>> entries) {
+        return newMultiMessageAck(consumerId, entries, Collections.emptyList());
+    }
+
+    /**
+     * Create an individual ack command for a list of entries and a list of partially acknowledged batches.
+     *
+     * @param batchIndexAcks
+     *            the (ledgerId, entryId, ackSet) of each partially acknowledged batch, where the ackSet is the bitset
+     *            of the messages of the batch that are not acknowledged yet
+     */
+    public static ByteBuf newMultiMessageAck(long consumerId, List<Pair<Long, Long>> entries,
+            List<Triple<Long, Long, long[]>> batchIndexAcks) {
         CommandAck.Builder ackBuilder = CommandAck.newBuilder();
         ackBuilder.setConsumerId(consumerId);
         ackBuilder.setAckType(AckType.Individual);
@@ -639,13 +736,88 @@ public class Commands {
             messageIdDataBuilder.recycle();
         }
 
+        int batchIndexAcksCount = batchIndexAcks.size();
+        for (int i = 0; i < batchIndexAcksCount; i++) {
+            Triple<Long, Long, long[]> batchIndexAck = batchIndexAcks.get(i);
+
+            MessageIdData.Builder messageIdDataBuilder = MessageIdData.newBuilder();
+            messageIdDataBuilder.setLedgerId(batchIndexAck.getLeft());
+            messageIdDataBuilder.setEntryId(batchIndexAck.getMiddle());
+            for (long word : batchIndexAck.getRight()) {
+                messageIdDataBuilder.addAckSet(word);
+            }
+            MessageIdData messageIdData = messageIdDataBuilder.build();
+            ackBuilder.addMessageId(messageIdData);
+
+            messageIdDataBuilder.recycle();
+        }
+
         CommandAck ack = ackBuilder.build();
 
         ByteBuf res = serializeWithSize(BaseCommand.newBuilder().setType(Type.ACK).setAck(ack));
 
-        for (int i = 0; i < entriesCount; i++) {
+        for (int i = 0; i < ack.getMessageIdCount(); i++) {
+            ack.getMessageId(i).recycle();
+        }
+        ack.recycle();
+        ackBuilder.recycle();
+        return res;
+    }
+
+    /**
+     * Create an individual ack command for a set of entries, sent as the ranges of consecutive entries of the set, and
+     * a list of partially acknowledged batches.
+     *
+     * @param entries
+     *            the (ledgerId, entryId) of the acknowledged entries
+     * @param batchIndexAcks
+     *            the (ledgerId, entryId, ackSet) of each partially acknowledged batch, where the ackSet is the bitset
+     *            of the messages of the batch that are not acknowledged yet
+     */
+    public static ByteBuf newMultiMessageAck(long consumerId, LongPairRangeSet<?> entries,
+            List<Triple<Long, Long, long[]>> batchIndexAcks) {
+        CommandAck.Builder ackBuilder = CommandAck.newBuilder();
+        ackBuilder.setConsumerId(consumerId);
+        ackBuilder.setAckType(AckType.Individual);
+
+        entries.forEach((lowerKey, lowerValue, upperKey, upperValue) -> {
+            MessageIdRange.Builder messageIdRangeBuilder = MessageIdRange.newBuilder();
+            messageIdRangeBuilder.setLedgerId(upperKey);
+            messageIdRangeBuilder.setFirstEntryId(lowerKey == upperKey ? lowerValue + 1 : 0);
+            messageIdRangeBuilder.setLastEntryId(upperValue);
+            MessageIdRange messageIdRange = messageIdRangeBuilder.build();
+            ackBuilder.addMessageIdRange(messageIdRange);
+
+            messageIdRangeBuilder.recycle();
+            return true;
+        });
+
+        int batchIndexAcksCount = batchIndexAcks.size();
+        for (int i = 0; i < batchIndexAcksCount; i++) {
+            Triple<Long, Long, long[]> batchIndexAck = batchIndexAcks.get(i);
+
+            MessageIdData.Builder messageIdDataBuilder = MessageIdData.newBuilder();
+            messageIdDataBuilder.setLedgerId(batchIndexAck.getLeft());
+            messageIdDataBuilder.setEntryId(batchIndexAck.getMiddle());
+            for (long word : batchIndexAck.getRight()) {
+                messageIdDataBuilder.addAckSet(word);
+            }
+            MessageIdData messageIdData = messageIdDataBuilder.build();
+            ackBuilder.addMessageId(messageIdData);
+
+            messageIdDataBuilder.recycle();
+        }
+
+        CommandAck ack = ackBuilder.build();
+
+        ByteBuf res = serializeWithSize(BaseCommand.newBuilder().setType(Type.ACK).setAck(ack));
+
+        for (int i = 0; i < ack.getMessageIdCount(); i++) {
             ack.getMessageId(i).recycle();
         }
+        for (int i = 0; i < ack.getMessageIdRangeCount(); i++) {
+            ack.getMessageIdRange(i).recycle();
+        }
         ack.recycle();
         ackBuilder.recycle();
         return res;
@@ -1138,6 +1310,14 @@ public class Commands {
         return peerVersion >= ProtocolVersion.v12.getNumber();
     }
 
+    public static boolean peerSupportsBatchIndexAcknowledgment(int peerVersion) {
+        return peerVersion >= ProtocolVersion.v14.getNumber();
+    }
+
+    public static boolean peerSupportsMessageIdRangeAcknowledgment(int peerVersion) {
+        return peerVersion >= ProtocolVersion.v15.getNumber();
+    }
+
     public static boolean peerSupportJsonSchemaAvroFormat(int peerVersion) {
         return peerVersion >= ProtocolVersion.v13.getNumber();
     }
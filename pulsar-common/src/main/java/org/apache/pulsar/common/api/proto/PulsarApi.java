@@ -13,11 +13,15 @@ public final class PulsarApi {
     NONE(0, 0),
     LZ4(1, 1),
     ZLIB(2, 2),
+    ZSTD(3, 3),
+    SNAPPY(4, 4),
     ;
     
     public static final int NONE_VALUE = 0;
     public static final int LZ4_VALUE = 1;
     public static final int ZLIB_VALUE = 2;
+    public static final int ZSTD_VALUE = 3;
+    public static final int SNAPPY_VALUE = 4;
     
     
     public final int getNumber() { return value; }
@@ -27,6 +31,8 @@ public final class PulsarApi {
         case 0: return NONE;
         case 1: return LZ4;
         case 2: return ZLIB;
+        case 3: return ZSTD;
+        case 4: return SNAPPY;
         default: return null;
       }
     }
@@ -201,6 +207,8 @@ public final class PulsarApi {
     v11(11, 11),
     v12(12, 12),
     v13(13, 13),
+    v14(14, 14),
+    v15(15, 15),
     ;
     
     public static final int v0_VALUE = 0;
@@ -217,6 +225,8 @@ public final class PulsarApi {
     public static final int v11_VALUE = 11;
     public static final int v12_VALUE = 12;
     public static final int v13_VALUE = 13;
+    public static final int v14_VALUE = 14;
+    public static final int v15_VALUE = 15;
     
     
     public final int getNumber() { return value; }
@@ -237,6 +247,8 @@ public final class PulsarApi {
         case 11: return v11;
         case 12: return v12;
         case 13: return v13;
+        case 14: return v14;
+        case 15: return v15;
         default: return null;
       }
     }
@@ -994,6 +1006,11 @@ public final class PulsarApi {
     // optional int32 batch_index = 4 [default = -1];
     boolean hasBatchIndex();
     int getBatchIndex();
+    
+    // repeated int64 ack_set = 5;
+    java.util.List<java.lang.Long> getAckSetList();
+    int getAckSetCount();
+    long getAckSet(int index);
   }
   public static final class MessageIdData extends
       org.apache.pulsar.shaded.com.google.protobuf.v241.GeneratedMessageLite
@@ -1070,11 +1087,26 @@ public final class PulsarApi {
       return batchIndex_;
     }
     
+    // repeated int64 ack_set = 5;
+    public static final int ACK_SET_FIELD_NUMBER = 5;
+    private java.util.List<java.lang.Long> ackSet_;
+    public java.util.List<java.lang.Long>
+        getAckSetList() {
+      return ackSet_;
+    }
+    public int getAckSetCount() {
+      return ackSet_.size();
+    }
+    public long getAckSet(int index) {
+      return ackSet_.get(index);
+    }
+    
     private void initFields() {
       ledgerId_ = 0L;
       entryId_ = 0L;
       partition_ = -1;
       batchIndex_ = -1;
+      ackSet_ = java.util.Collections.emptyList();
     }
     private byte memoizedIsInitialized = -1;
     public final boolean isInitialized() {
@@ -1113,6 +1145,577 @@ public final class PulsarApi {
       if (((bitField0_ & 0x00000008) == 0x00000008)) {
         output.writeInt32(4, batchIndex_);
       }
+      for (int i = 0; i < ackSet_.size(); i++) {
+        output.writeInt64(5, ackSet_.get(i));
+      }
+    }
+    
+    private int memoizedSerializedSize = -1;
+    public int getSerializedSize() {
+      int size = memoizedSerializedSize;
+      if (size != -1) return size;
+    
+      size = 0;
+      if (((bitField0_ & 0x00000001) == 0x00000001)) {
+        size += org.apache.pulsar.shaded.com.google.protobuf.v241.CodedOutputStream
+          .computeUInt64Size(1, ledgerId_);
+      }
+      if (((bitField0_ & 0x00000002) == 0x00000002)) {
+        size += org.apache.pulsar.shaded.com.google.protobuf.v241.CodedOutputStream
+          .computeUInt64Size(2, entryId_);
+      }
+      if (((bitField0_ & 0x00000004) == 0x00000004)) {
+        size += org.apache.pulsar.shaded.com.google.protobuf.v241.CodedOutputStream
+          .computeInt32Size(3, partition_);
+      }
+      if (((bitField0_ & 0x00000008) == 0x00000008)) {
+        size += org.apache.pulsar.shaded.com.google.protobuf.v241.CodedOutputStream
+          .computeInt32Size(4, batchIndex_);
+      }
+      {
+        int dataSize = 0;
+        for (int i = 0; i < ackSet_.size(); i++) {
+          dataSize += org.apache.pulsar.shaded.com.google.protobuf.v241.CodedOutputStream
+            .computeInt64SizeNoTag(ackSet_.get(i));
+        }
+        size += dataSize;
+        size += 1 * getAckSetList().size();
+      }
+      memoizedSerializedSize = size;
+      return size;
+    }
+    
+    private static final long serialVersionUID = 0L;
+    @java.lang.Override
+    protected java.lang.Object writeReplace()
+        throws java.io.ObjectStreamException {
+      return super.writeReplace();
+    }
+    
+    public static org.apache.pulsar.common.api.proto.PulsarApi.MessageIdData parseFrom(
+        org.apache.pulsar.shaded.com.google.protobuf.v241.ByteString data)
+        throws org.apache.pulsar.shaded.com.google.protobuf.v241.InvalidProtocolBufferException {
+         throw new RuntimeException("Disabled");
+    }
+    public static org.apache.pulsar.common.api.proto.PulsarApi.MessageIdData parseFrom(
+        org.apache.pulsar.shaded.com.google.protobuf.v241.ByteString data,
+        org.apache.pulsar.shaded.com.google.protobuf.v241.ExtensionRegistryLite extensionRegistry)
+        throws org.apache.pulsar.shaded.com.google.protobuf.v241.InvalidProtocolBufferException {
+         throw new RuntimeException("Disabled");
+    }
+    public static org.apache.pulsar.common.api.proto.PulsarApi.MessageIdData parseFrom(byte[] data)
+        throws org.apache.pulsar.shaded.com.google.protobuf.v241.InvalidProtocolBufferException {
+      return newBuilder().mergeFrom(data).buildParsed();
+    }
+    public static org.apache.pulsar.common.api.proto.PulsarApi.MessageIdData parseFrom(
+        byte[] data,
+        org.apache.pulsar.shaded.com.google.protobuf.v241.ExtensionRegistryLite extensionRegistry)
+        throws org.apache.pulsar.shaded.com.google.protobuf.v241.InvalidProtocolBufferException {
+      return newBuilder().mergeFrom(data, extensionRegistry)
+               .buildParsed();
+    }
+    public static org.apache.pulsar.common.api.proto.PulsarApi.MessageIdData parseFrom(java.io.InputStream input)
+        throws java.io.IOException {
+      return newBuilder().mergeFrom(input).buildParsed();
+    }
+    public static org.apache.pulsar.common.api.proto.PulsarApi.MessageIdData parseFrom(
+        java.io.InputStream input,
+        org.apache.pulsar.shaded.com.google.protobuf.v241.ExtensionRegistryLite extensionRegistry)
+        throws java.io.IOException {
+      return newBuilder().mergeFrom(input, extensionRegistry)
+               .buildParsed();
+    }
+    public static org.apache.pulsar.common.api.proto.PulsarApi.MessageIdData parseDelimitedFrom(java.io.InputStream input)
+        throws java.io.IOException {
+      Builder builder = newBuilder();
+      if (builder.mergeDelimitedFrom(input)) {
+        return builder.buildParsed();
+      } else {
+        return null;
+      }
+    }
+    public static org.apache.pulsar.common.api.proto.PulsarApi.MessageIdData parseDelimitedFrom(
+        java.io.InputStream input,
+        org.apache.pulsar.shaded.com.google.protobuf.v241.ExtensionRegistryLite extensionRegistry)
+        throws java.io.IOException {
+      Builder builder = newBuilder();
+      if (builder.mergeDelimitedFrom(input, extensionRegistry)) {
+        return builder.buildParsed();
+      } else {
+        return null;
+      }
+    }
+    public static org.apache.pulsar.common.api.proto.PulsarApi.MessageIdData parseFrom(
+        org.apache.pulsar.shaded.com.google.protobuf.v241.CodedInputStream input)
+        throws java.io.IOException {
+      return newBuilder().mergeFrom(input).buildParsed();
+    }
+    public static org.apache.pulsar.common.api.proto.PulsarApi.MessageIdData parseFrom(
+        org.apache.pulsar.shaded.com.google.protobuf.v241.CodedInputStream input,
+        org.apache.pulsar.shaded.com.google.protobuf.v241.ExtensionRegistryLite extensionRegistry)
+        throws java.io.IOException {
+      return newBuilder().mergeFrom(input, extensionRegistry)
+               .buildParsed();
+    }
+    
+    public static Builder newBuilder() { return Builder.create(); }
+    public Builder newBuilderForType() { return newBuilder(); }
+    public static Builder newBuilder(org.apache.pulsar.common.api.proto.PulsarApi.MessageIdData prototype) {
+      return newBuilder().mergeFrom(prototype);
+    }
+    public Builder toBuilder() { return newBuilder(this); }
+    
+    public static final class Builder extends
+        org.apache.pulsar.shaded.com.google.protobuf.v241.GeneratedMessageLite.Builder<
+          org.apache.pulsar.common.api.proto.PulsarApi.MessageIdData, Builder>
+        implements org.apache.pulsar.common.api.proto.PulsarApi.MessageIdDataOrBuilder, org.apache.pulsar.common.util.protobuf.ByteBufCodedInputStream.ByteBufMessageBuilder  {
+      // Construct using org.apache.pulsar.common.api.proto.PulsarApi.MessageIdData.newBuilder()
+      private final io.netty.util.Recycler.Handle handle;
+      private Builder(io.netty.util.Recycler.Handle handle) {
+        this.handle = handle;
+        maybeForceBuilderInitialization();
+      }
+      private final static io.netty.util.Recycler<Builder> RECYCLER = new io.netty.util.Recycler<Builder>() {
+         protected Builder newObject(io.netty.util.Recycler.Handle handle) {
+               return new Builder(handle);
+             }
+            };
+      
+       public void recycle() {
+                clear();
+                if (handle != null) {RECYCLER.recycle(this, handle);}
+            }
+      
+      private void maybeForceBuilderInitialization() {
+      }
+      private static Builder create() {
+        return RECYCLER.get();
+      }
+      
+      public Builder clear() {
+        super.clear();
+        ledgerId_ = 0L;
+        bitField0_ = (bitField0_ & ~0x00000001);
+        entryId_ = 0L;
+        bitField0_ = (bitField0_ & ~0x00000002);
+        partition_ = -1;
+        bitField0_ = (bitField0_ & ~0x00000004);
+        batchIndex_ = -1;
+        bitField0_ = (bitField0_ & ~0x00000008);
+        ackSet_ = java.util.Collections.emptyList();
+        bitField0_ = (bitField0_ & ~0x00000010);
+        return this;
+      }
+      
+      public Builder clone() {
+        return create().mergeFrom(buildPartial());
+      }
+      
+      public org.apache.pulsar.common.api.proto.PulsarApi.MessageIdData getDefaultInstanceForType() {
+        return org.apache.pulsar.common.api.proto.PulsarApi.MessageIdData.getDefaultInstance();
+      }
+      
+      public org.apache.pulsar.common.api.proto.PulsarApi.MessageIdData build() {
+        org.apache.pulsar.common.api.proto.PulsarApi.MessageIdData result = buildPartial();
+        if (!result.isInitialized()) {
+          throw newUninitializedMessageException(result);
+        }
+        return result;
+      }
+      
+      private org.apache.pulsar.common.api.proto.PulsarApi.MessageIdData buildParsed()
+          throws org.apache.pulsar.shaded.com.google.protobuf.v241.InvalidProtocolBufferException {
+        org.apache.pulsar.common.api.proto.PulsarApi.MessageIdData result = buildPartial();
+        if (!result.isInitialized()) {
+          throw newUninitializedMessageException(
+            result).asInvalidProtocolBufferException();
+        }
+        return result;
+      }
+      
+      public org.apache.pulsar.common.api.proto.PulsarApi.MessageIdData buildPartial() {
+        org.apache.pulsar.common.api.proto.PulsarApi.MessageIdData result = org.apache.pulsar.common.api.proto.PulsarApi.MessageIdData.RECYCLER.get();
+        int from_bitField0_ = bitField0_;
+        int to_bitField0_ = 0;
+        if (((from_bitField0_ & 0x00000001) == 0x00000001)) {
+          to_bitField0_ |= 0x00000001;
+        }
+        result.ledgerId_ = ledgerId_;
+        if (((from_bitField0_ & 0x00000002) == 0x00000002)) {
+          to_bitField0_ |= 0x00000002;
+        }
+        result.entryId_ = entryId_;
+        if (((from_bitField0_ & 0x00000004) == 0x00000004)) {
+          to_bitField0_ |= 0x00000004;
+        }
+        result.partition_ = partition_;
+        if (((from_bitField0_ & 0x00000008) == 0x00000008)) {
+          to_bitField0_ |= 0x00000008;
+        }
+        result.batchIndex_ = batchIndex_;
+        if (((bitField0_ & 0x00000010) == 0x00000010)) {
+          ackSet_ = java.util.Collections.unmodifiableList(ackSet_);
+          bitField0_ = (bitField0_ & ~0x00000010);
+        }
+        result.ackSet_ = ackSet_;
+        result.bitField0_ = to_bitField0_;
+        return result;
+      }
+      
+      public Builder mergeFrom(org.apache.pulsar.common.api.proto.PulsarApi.MessageIdData other) {
+        if (other == org.apache.pulsar.common.api.proto.PulsarApi.MessageIdData.getDefaultInstance()) return this;
+        if (other.hasLedgerId()) {
+          setLedgerId(other.getLedgerId());
+        }
+        if (other.hasEntryId()) {
+          setEntryId(other.getEntryId());
+        }
+        if (other.hasPartition()) {
+          setPartition(other.getPartition());
+        }
+        if (other.hasBatchIndex()) {
+          setBatchIndex(other.getBatchIndex());
+        }
+        if (!other.ackSet_.isEmpty()) {
+          if (ackSet_.isEmpty()) {
+            ackSet_ = other.ackSet_;
+            bitField0_ = (bitField0_ & ~0x00000010);
+          } else {
+            ensureAckSetIsMutable();
+            ackSet_.addAll(other.ackSet_);
+          }
+          
+        }
+        return this;
+      }
+      
+      public final boolean isInitialized() {
+        if (!hasLedgerId()) {
+          
+          return false;
+        }
+        if (!hasEntryId()) {
+          
+          return false;
+        }
+        return true;
+      }
+      
+      public Builder mergeFrom(org.apache.pulsar.shaded.com.google.protobuf.v241.CodedInputStream input,
+                              org.apache.pulsar.shaded.com.google.protobuf.v241.ExtensionRegistryLite extensionRegistry)
+                              throws java.io.IOException {
+         throw new java.io.IOException("Merge from CodedInputStream is disabled");
+                              }
+      public Builder mergeFrom(
+          org.apache.pulsar.common.util.protobuf.ByteBufCodedInputStream input,
+          org.apache.pulsar.shaded.com.google.protobuf.v241.ExtensionRegistryLite extensionRegistry)
+          throws java.io.IOException {
+        while (true) {
+          int tag = input.readTag();
+          switch (tag) {
+            case 0:
+              
+              return this;
+            default: {
+              if (!input.skipField(tag)) {
+                
+                return this;
+              }
+              break;
+            }
+            case 8: {
+              bitField0_ |= 0x00000001;
+              ledgerId_ = input.readUInt64();
+              break;
+            }
+            case 16: {
+              bitField0_ |= 0x00000002;
+              entryId_ = input.readUInt64();
+              break;
+            }
+            case 24: {
+              bitField0_ |= 0x00000004;
+              partition_ = input.readInt32();
+              break;
+            }
+            case 32: {
+              bitField0_ |= 0x00000008;
+              batchIndex_ = input.readInt32();
+              break;
+            }
+            case 40: {
+              ensureAckSetIsMutable();
+              ackSet_.add(input.readInt64());
+              break;
+            }
+          }
+        }
+      }
+      
+      private int bitField0_;
+      
+      // required uint64 ledgerId = 1;
+      private long ledgerId_ ;
+      public boolean hasLedgerId() {
+        return ((bitField0_ & 0x00000001) == 0x00000001);
+      }
+      public long getLedgerId() {
+        return ledgerId_;
+      }
+      public Builder setLedgerId(long value) {
+        bitField0_ |= 0x00000001;
+        ledgerId_ = value;
+        
+        return this;
+      }
+      public Builder clearLedgerId() {
+        bitField0_ = (bitField0_ & ~0x00000001);
+        ledgerId_ = 0L;
+        
+        return this;
+      }
+      
+      // required uint64 entryId = 2;
+      private long entryId_ ;
+      public boolean hasEntryId() {
+        return ((bitField0_ & 0x00000002) == 0x00000002);
+      }
+      public long getEntryId() {
+        return entryId_;
+      }
+      public Builder setEntryId(long value) {
+        bitField0_ |= 0x00000002;
+        entryId_ = value;
+        
+        return this;
+      }
+      public Builder clearEntryId() {
+        bitField0_ = (bitField0_ & ~0x00000002);
+        entryId_ = 0L;
+        
+        return this;
+      }
+      
+      // optional int32 partition = 3 [default = -1];
+      private int partition_ = -1;
+      public boolean hasPartition() {
+        return ((bitField0_ & 0x00000004) == 0x00000004);
+      }
+      public int getPartition() {
+        return partition_;
+      }
+      public Builder setPartition(int value) {
+        bitField0_ |= 0x00000004;
+        partition_ = value;
+        
+        return this;
+      }
+      public Builder clearPartition() {
+        bitField0_ = (bitField0_ & ~0x00000004);
+        partition_ = -1;
+        
+        return this;
+      }
+      
+      // optional int32 batch_index = 4 [default = -1];
+      private int batchIndex_ = -1;
+      public boolean hasBatchIndex() {
+        return ((bitField0_ & 0x00000008) == 0x00000008);
+      }
+      public int getBatchIndex() {
+        return batchIndex_;
+      }
+      public Builder setBatchIndex(int value) {
+        bitField0_ |= 0x00000008;
+        batchIndex_ = value;
+        
+        return this;
+      }
+      public Builder clearBatchIndex() {
+        bitField0_ = (bitField0_ & ~0x00000008);
+        batchIndex_ = -1;
+        
+        return this;
+      }
+      
+      // repeated int64 ack_set = 5;
+      private java.util.List<java.lang.Long> ackSet_ = java.util.Collections.emptyList();;
+      private void ensureAckSetIsMutable() {
+        if (!((bitField0_ & 0x00000010) == 0x00000010)) {
+          ackSet_ = new java.util.ArrayList<java.lang.Long>(ackSet_);
+          bitField0_ |= 0x00000010;
+         }
+      }
+      public java.util.List<java.lang.Long>
+          getAckSetList() {
+        return java.util.Collections.unmodifiableList(ackSet_);
+      }
+      public int getAckSetCount() {
+        return ackSet_.size();
+      }
+      public long getAckSet(int index) {
+        return ackSet_.get(index);
+      }
+      public Builder setAckSet(
+          int index, long value) {
+        ensureAckSetIsMutable();
+        ackSet_.set(index, value);
+        
+        return this;
+      }
+      public Builder addAckSet(long value) {
+        ensureAckSetIsMutable();
+        ackSet_.add(value);
+        
+        return this;
+      }
+      public Builder addAllAckSet(
+          java.lang.Iterable<? extends java.lang.Long> values) {
+        ensureAckSetIsMutable();
+        super.addAll(values, ackSet_);
+        
+        return this;
+      }
+      public Builder clearAckSet() {
+        ackSet_ = java.util.Collections.emptyList();
+        bitField0_ = (bitField0_ & ~0x00000010);
+        
+        return this;
+      }
+      
+      // @@protoc_insertion_point(builder_scope:pulsar.proto.MessageIdData)
+    }
+    
+    static {
+      defaultInstance = new MessageIdData(true);
+      defaultInstance.initFields();
+    }
+    
+    // @@protoc_insertion_point(class_scope:pulsar.proto.MessageIdData)
+  }
+  
+  public interface MessageIdRangeOrBuilder
+      extends org.apache.pulsar.shaded.com.google.protobuf.v241.MessageLiteOrBuilder {
+    
+    // required uint64 ledger_id = 1;
+    boolean hasLedgerId();
+    long getLedgerId();
+    
+    // required uint64 first_entry_id = 2;
+    boolean hasFirstEntryId();
+    long getFirstEntryId();
+    // required uint64 last_entry_id = 3;
+    boolean hasLastEntryId();
+    long getLastEntryId();
+  }
+  public static final class MessageIdRange extends
+      org.apache.pulsar.shaded.com.google.protobuf.v241.GeneratedMessageLite
+      implements MessageIdRangeOrBuilder, org.apache.pulsar.common.util.protobuf.ByteBufCodedOutputStream.ByteBufGeneratedMessage  {
+    // Use MessageIdRange.newBuilder() to construct.
+    private io.netty.util.Recycler.Handle handle;
+    private MessageIdRange(io.netty.util.Recycler.Handle handle) {
+      this.handle = handle;
+    }
+    
+     private static final io.netty.util.Recycler<MessageIdRange> RECYCLER = new io.netty.util.Recycler<MessageIdRange>() {
+            protected MessageIdRange newObject(Handle handle) {
+              return new MessageIdRange(handle);
+            }
+          };
+        
+        public void recycle() {
+            this.initFields();
+            this.memoizedIsInitialized = -1;
+            this.bitField0_ = 0;
+            this.memoizedSerializedSize = -1;
+            if (handle != null) { RECYCLER.recycle(this, handle); }
+        }
+         
+    private MessageIdRange(boolean noInit) {}
+    
+    private static final MessageIdRange defaultInstance;
+    public static MessageIdRange getDefaultInstance() {
+      return defaultInstance;
+    }
+    
+    public MessageIdRange getDefaultInstanceForType() {
+      return defaultInstance;
+    }
+    
+    private int bitField0_;
+    // required uint64 ledger_id = 1;
+    public static final int LEDGER_ID_FIELD_NUMBER = 1;
+    private long ledgerId_;
+    public boolean hasLedgerId() {
+      return ((bitField0_ & 0x00000001) == 0x00000001);
+    }
+    public long getLedgerId() {
+      return ledgerId_;
+    }
+    
+    // required uint64 first_entry_id = 2;
+    public static final int FIRST_ENTRY_ID_FIELD_NUMBER = 2;
+    private long firstEntryId_;
+    public boolean hasFirstEntryId() {
+      return ((bitField0_ & 0x00000002) == 0x00000002);
+    }
+    public long getFirstEntryId() {
+      return firstEntryId_;
+    }
+    
+    // required uint64 last_entry_id = 3;
+    public static final int LAST_ENTRY_ID_FIELD_NUMBER = 3;
+    private long lastEntryId_;
+    public boolean hasLastEntryId() {
+      return ((bitField0_ & 0x00000004) == 0x00000004);
+    }
+    public long getLastEntryId() {
+      return lastEntryId_;
+    }
+    
+    private void initFields() {
+      ledgerId_ = 0L;
+      firstEntryId_ = 0L;
+      lastEntryId_ = 0L;
+    }
+    private byte memoizedIsInitialized = -1;
+    public final boolean isInitialized() {
+      byte isInitialized = memoizedIsInitialized;
+      if (isInitialized != -1) return isInitialized == 1;
+      
+      if (!hasLedgerId()) {
+        memoizedIsInitialized = 0;
+        return false;
+      }
+      if (!hasFirstEntryId()) {
+        memoizedIsInitialized = 0;
+        return false;
+      }
+      if (!hasLastEntryId()) {
+        memoizedIsInitialized = 0;
+        return false;
+      }
+      memoizedIsInitialized = 1;
+      return true;
+    }
+    
+    public void writeTo(org.apache.pulsar.shaded.com.google.protobuf.v241.CodedOutputStream output)
+                        throws java.io.IOException {
+        throw new RuntimeException("Cannot use CodedOutputStream");
+    }
+    
+    public void writeTo(org.apache.pulsar.common.util.protobuf.ByteBufCodedOutputStream output)
+                        throws java.io.IOException {
+      getSerializedSize();
+      if (((bitField0_ & 0x00000001) == 0x00000001)) {
+        output.writeUInt64(1, ledgerId_);
+      }
+      if (((bitField0_ & 0x00000002) == 0x00000002)) {
+        output.writeUInt64(2, firstEntryId_);
+      }
+      if (((bitField0_ & 0x00000004) == 0x00000004)) {
+        output.writeUInt64(3, lastEntryId_);
+      }
     }
     
     private int memoizedSerializedSize = -1;
@@ -1127,15 +1730,11 @@ public final class PulsarApi {
       }
       if (((bitField0_ & 0x00000002) == 0x00000002)) {
         size += org.apache.pulsar.shaded.com.google.protobuf.v241.CodedOutputStream
-          .computeUInt64Size(2, entryId_);
+          .computeUInt64Size(2, firstEntryId_);
       }
       if (((bitField0_ & 0x00000004) == 0x00000004)) {
         size += org.apache.pulsar.shaded.com.google.protobuf.v241.CodedOutputStream
-          .computeInt32Size(3, partition_);
-      }
-      if (((bitField0_ & 0x00000008) == 0x00000008)) {
-        size += org.apache.pulsar.shaded.com.google.protobuf.v241.CodedOutputStream
-          .computeInt32Size(4, batchIndex_);
+          .computeUInt64Size(3, lastEntryId_);
       }
       memoizedSerializedSize = size;
       return size;
@@ -1148,40 +1747,40 @@ public final class PulsarApi {
       return super.writeReplace();
     }
     
-    public static org.apache.pulsar.common.api.proto.PulsarApi.MessageIdData parseFrom(
+    public static org.apache.pulsar.common.api.proto.PulsarApi.MessageIdRange parseFrom(
         org.apache.pulsar.shaded.com.google.protobuf.v241.ByteString data)
         throws org.apache.pulsar.shaded.com.google.protobuf.v241.InvalidProtocolBufferException {
          throw new RuntimeException("Disabled");
     }
-    public static org.apache.pulsar.common.api.proto.PulsarApi.MessageIdData parseFrom(
+    public static org.apache.pulsar.common.api.proto.PulsarApi.MessageIdRange parseFrom(
         org.apache.pulsar.shaded.com.google.protobuf.v241.ByteString data,
         org.apache.pulsar.shaded.com.google.protobuf.v241.ExtensionRegistryLite extensionRegistry)
         throws org.apache.pulsar.shaded.com.google.protobuf.v241.InvalidProtocolBufferException {
          throw new RuntimeException("Disabled");
     }
-    public static org.apache.pulsar.common.api.proto.PulsarApi.MessageIdData parseFrom(byte[] data)
+    public static org.apache.pulsar.common.api.proto.PulsarApi.MessageIdRange parseFrom(byte[] data)
         throws org.apache.pulsar.shaded.com.google.protobuf.v241.InvalidProtocolBufferException {
       return newBuilder().mergeFrom(data).buildParsed();
     }
-    public static org.apache.pulsar.common.api.proto.PulsarApi.MessageIdData parseFrom(
+    public static org.apache.pulsar.common.api.proto.PulsarApi.MessageIdRange parseFrom(
         byte[] data,
         org.apache.pulsar.shaded.com.google.protobuf.v241.ExtensionRegistryLite extensionRegistry)
         throws org.apache.pulsar.shaded.com.google.protobuf.v241.InvalidProtocolBufferException {
       return newBuilder().mergeFrom(data, extensionRegistry)
                .buildParsed();
     }
-    public static org.apache.pulsar.common.api.proto.PulsarApi.MessageIdData parseFrom(java.io.InputStream input)
+    public static org.apache.pulsar.common.api.proto.PulsarApi.MessageIdRange parseFrom(java.io.InputStream input)
         throws java.io.IOException {
       return newBuilder().mergeFrom(input).buildParsed();
     }
-    public static org.apache.pulsar.common.api.proto.PulsarApi.MessageIdData parseFrom(
+    public static org.apache.pulsar.common.api.proto.PulsarApi.MessageIdRange parseFrom(
         java.io.InputStream input,
         org.apache.pulsar.shaded.com.google.protobuf.v241.ExtensionRegistryLite extensionRegistry)
         throws java.io.IOException {
       return newBuilder().mergeFrom(input, extensionRegistry)
                .buildParsed();
     }
-    public static org.apache.pulsar.common.api.proto.PulsarApi.MessageIdData parseDelimitedFrom(java.io.InputStream input)
+    public static org.apache.pulsar.common.api.proto.PulsarApi.MessageIdRange parseDelimitedFrom(java.io.InputStream input)
         throws java.io.IOException {
       Builder builder = newBuilder();
       if (builder.mergeDelimitedFrom(input)) {
@@ -1190,7 +1789,7 @@ public final class PulsarApi {
         return null;
       }
     }
-    public static org.apache.pulsar.common.api.proto.PulsarApi.MessageIdData parseDelimitedFrom(
+    public static org.apache.pulsar.common.api.proto.PulsarApi.MessageIdRange parseDelimitedFrom(
         java.io.InputStream input,
         org.apache.pulsar.shaded.com.google.protobuf.v241.ExtensionRegistryLite extensionRegistry)
         throws java.io.IOException {
@@ -1201,12 +1800,12 @@ public final class PulsarApi {
         return null;
       }
     }
-    public static org.apache.pulsar.common.api.proto.PulsarApi.MessageIdData parseFrom(
+    public static org.apache.pulsar.common.api.proto.PulsarApi.MessageIdRange parseFrom(
         org.apache.pulsar.shaded.com.google.protobuf.v241.CodedInputStream input)
         throws java.io.IOException {
       return newBuilder().mergeFrom(input).buildParsed();
     }
-    public static org.apache.pulsar.common.api.proto.PulsarApi.MessageIdData parseFrom(
+    public static org.apache.pulsar.common.api.proto.PulsarApi.MessageIdRange parseFrom(
         org.apache.pulsar.shaded.com.google.protobuf.v241.CodedInputStream input,
         org.apache.pulsar.shaded.com.google.protobuf.v241.ExtensionRegistryLite extensionRegistry)
         throws java.io.IOException {
@@ -1216,16 +1815,16 @@ public final class PulsarApi {
     
     public static Builder newBuilder() { return Builder.create(); }
     public Builder newBuilderForType() { return newBuilder(); }
-    public static Builder newBuilder(org.apache.pulsar.common.api.proto.PulsarApi.MessageIdData prototype) {
+    public static Builder newBuilder(org.apache.pulsar.common.api.proto.PulsarApi.MessageIdRange prototype) {
       return newBuilder().mergeFrom(prototype);
     }
     public Builder toBuilder() { return newBuilder(this); }
     
     public static final class Builder extends
         org.apache.pulsar.shaded.com.google.protobuf.v241.GeneratedMessageLite.Builder<
-          org.apache.pulsar.common.api.proto.PulsarApi.MessageIdData, Builder>
-        implements org.apache.pulsar.common.api.proto.PulsarApi.MessageIdDataOrBuilder, org.apache.pulsar.common.util.protobuf.ByteBufCodedInputStream.ByteBufMessageBuilder  {
-      // Construct using org.apache.pulsar.common.api.proto.PulsarApi.MessageIdData.newBuilder()
+          org.apache.pulsar.common.api.proto.PulsarApi.MessageIdRange, Builder>
+        implements org.apache.pulsar.common.api.proto.PulsarApi.MessageIdRangeOrBuilder, org.apache.pulsar.common.util.protobuf.ByteBufCodedInputStream.ByteBufMessageBuilder  {
+      // Construct using org.apache.pulsar.common.api.proto.PulsarApi.MessageIdRange.newBuilder()
       private final io.netty.util.Recycler.Handle handle;
       private Builder(io.netty.util.Recycler.Handle handle) {
         this.handle = handle;
@@ -1252,12 +1851,10 @@ public final class PulsarApi {
         super.clear();
         ledgerId_ = 0L;
         bitField0_ = (bitField0_ & ~0x00000001);
-        entryId_ = 0L;
+        firstEntryId_ = 0L;
         bitField0_ = (bitField0_ & ~0x00000002);
-        partition_ = -1;
+        lastEntryId_ = 0L;
         bitField0_ = (bitField0_ & ~0x00000004);
-        batchIndex_ = -1;
-        bitField0_ = (bitField0_ & ~0x00000008);
         return this;
       }
       
@@ -1265,21 +1862,21 @@ public final class PulsarApi {
         return create().mergeFrom(buildPartial());
       }
       
-      public org.apache.pulsar.common.api.proto.PulsarApi.MessageIdData getDefaultInstanceForType() {
-        return org.apache.pulsar.common.api.proto.PulsarApi.MessageIdData.getDefaultInstance();
+      public org.apache.pulsar.common.api.proto.PulsarApi.MessageIdRange getDefaultInstanceForType() {
+        return org.apache.pulsar.common.api.proto.PulsarApi.MessageIdRange.getDefaultInstance();
       }
       
-      public org.apache.pulsar.common.api.proto.PulsarApi.MessageIdData build() {
-        org.apache.pulsar.common.api.proto.PulsarApi.MessageIdData result = buildPartial();
+      public org.apache.pulsar.common.api.proto.PulsarApi.MessageIdRange build() {
+        org.apache.pulsar.common.api.proto.PulsarApi.MessageIdRange result = buildPartial();
         if (!result.isInitialized()) {
           throw newUninitializedMessageException(result);
         }
         return result;
       }
       
-      private org.apache.pulsar.common.api.proto.PulsarApi.MessageIdData buildParsed()
+      private org.apache.pulsar.common.api.proto.PulsarApi.MessageIdRange buildParsed()
           throws org.apache.pulsar.shaded.com.google.protobuf.v241.InvalidProtocolBufferException {
-        org.apache.pulsar.common.api.proto.PulsarApi.MessageIdData result = buildPartial();
+        org.apache.pulsar.common.api.proto.PulsarApi.MessageIdRange result = buildPartial();
         if (!result.isInitialized()) {
           throw newUninitializedMessageException(
             result).asInvalidProtocolBufferException();
@@ -1287,8 +1884,8 @@ public final class PulsarApi {
         return result;
       }
       
-      public org.apache.pulsar.common.api.proto.PulsarApi.MessageIdData buildPartial() {
-        org.apache.pulsar.common.api.proto.PulsarApi.MessageIdData result = org.apache.pulsar.common.api.proto.PulsarApi.MessageIdData.RECYCLER.get();
+      public org.apache.pulsar.common.api.proto.PulsarApi.MessageIdRange buildPartial() {
+        org.apache.pulsar.common.api.proto.PulsarApi.MessageIdRange result = org.apache.pulsar.common.api.proto.PulsarApi.MessageIdRange.RECYCLER.get();
         int from_bitField0_ = bitField0_;
         int to_bitField0_ = 0;
         if (((from_bitField0_ & 0x00000001) == 0x00000001)) {
@@ -1298,32 +1895,25 @@ public final class PulsarApi {
         if (((from_bitField0_ & 0x00000002) == 0x00000002)) {
           to_bitField0_ |= 0x00000002;
         }
-        result.entryId_ = entryId_;
+        result.firstEntryId_ = firstEntryId_;
         if (((from_bitField0_ & 0x00000004) == 0x00000004)) {
           to_bitField0_ |= 0x00000004;
         }
-        result.partition_ = partition_;
-        if (((from_bitField0_ & 0x00000008) == 0x00000008)) {
-          to_bitField0_ |= 0x00000008;
-        }
-        result.batchIndex_ = batchIndex_;
+        result.lastEntryId_ = lastEntryId_;
         result.bitField0_ = to_bitField0_;
         return result;
       }
       
-      public Builder mergeFrom(org.apache.pulsar.common.api.proto.PulsarApi.MessageIdData other) {
-        if (other == org.apache.pulsar.common.api.proto.PulsarApi.MessageIdData.getDefaultInstance()) return this;
+      public Builder mergeFrom(org.apache.pulsar.common.api.proto.PulsarApi.MessageIdRange other) {
+        if (other == org.apache.pulsar.common.api.proto.PulsarApi.MessageIdRange.getDefaultInstance()) return this;
         if (other.hasLedgerId()) {
           setLedgerId(other.getLedgerId());
         }
-        if (other.hasEntryId()) {
-          setEntryId(other.getEntryId());
-        }
-        if (other.hasPartition()) {
-          setPartition(other.getPartition());
+        if (other.hasFirstEntryId()) {
+          setFirstEntryId(other.getFirstEntryId());
         }
-        if (other.hasBatchIndex()) {
-          setBatchIndex(other.getBatchIndex());
+        if (other.hasLastEntryId()) {
+          setLastEntryId(other.getLastEntryId());
         }
         return this;
       }
@@ -1333,7 +1923,11 @@ public final class PulsarApi {
           
           return false;
         }
-        if (!hasEntryId()) {
+        if (!hasFirstEntryId()) {
+          
+          return false;
+        }
+        if (!hasLastEntryId()) {
           
           return false;
         }
@@ -1369,17 +1963,12 @@ public final class PulsarApi {
             }
             case 16: {
               bitField0_ |= 0x00000002;
-              entryId_ = input.readUInt64();
+              firstEntryId_ = input.readUInt64();
               break;
             }
             case 24: {
               bitField0_ |= 0x00000004;
-              partition_ = input.readInt32();
-              break;
-            }
-            case 32: {
-              bitField0_ |= 0x00000008;
-              batchIndex_ = input.readInt32();
+              lastEntryId_ = input.readUInt64();
               break;
             }
           }
@@ -1388,7 +1977,7 @@ public final class PulsarApi {
       
       private int bitField0_;
       
-      // required uint64 ledgerId = 1;
+      // required uint64 ledger_id = 1;
       private long ledgerId_ ;
       public boolean hasLedgerId() {
         return ((bitField0_ & 0x00000001) == 0x00000001);
@@ -1409,78 +1998,57 @@ public final class PulsarApi {
         return this;
       }
       
-      // required uint64 entryId = 2;
-      private long entryId_ ;
-      public boolean hasEntryId() {
+      // required uint64 first_entry_id = 2;
+      private long firstEntryId_ ;
+      public boolean hasFirstEntryId() {
         return ((bitField0_ & 0x00000002) == 0x00000002);
       }
-      public long getEntryId() {
-        return entryId_;
+      public long getFirstEntryId() {
+        return firstEntryId_;
       }
-      public Builder setEntryId(long value) {
+      public Builder setFirstEntryId(long value) {
         bitField0_ |= 0x00000002;
-        entryId_ = value;
+        firstEntryId_ = value;
         
         return this;
       }
-      public Builder clearEntryId() {
+      public Builder clearFirstEntryId() {
         bitField0_ = (bitField0_ & ~0x00000002);
-        entryId_ = 0L;
+        firstEntryId_ = 0L;
         
         return this;
       }
       
-      // optional int32 partition = 3 [default = -1];
-      private int partition_ = -1;
-      public boolean hasPartition() {
+      // required uint64 last_entry_id = 3;
+      private long lastEntryId_ ;
+      public boolean hasLastEntryId() {
         return ((bitField0_ & 0x00000004) == 0x00000004);
       }
-      public int getPartition() {
-        return partition_;
+      public long getLastEntryId() {
+        return lastEntryId_;
       }
-      public Builder setPartition(int value) {
+      public Builder setLastEntryId(long value) {
         bitField0_ |= 0x00000004;
-        partition_ = value;
+        lastEntryId_ = value;
         
         return this;
       }
-      public Builder clearPartition() {
+      public Builder clearLastEntryId() {
         bitField0_ = (bitField0_ & ~0x00000004);
-        partition_ = -1;
-        
-        return this;
-      }
-      
-      // optional int32 batch_index = 4 [default = -1];
-      private int batchIndex_ = -1;
-      public boolean hasBatchIndex() {
-        return ((bitField0_ & 0x00000008) == 0x00000008);
-      }
-      public int getBatchIndex() {
-        return batchIndex_;
-      }
-      public Builder setBatchIndex(int value) {
-        bitField0_ |= 0x00000008;
-        batchIndex_ = value;
-        
-        return this;
-      }
-      public Builder clearBatchIndex() {
-        bitField0_ = (bitField0_ & ~0x00000008);
-        batchIndex_ = -1;
+        lastEntryId_ = 0L;
         
         return this;
       }
       
-      // @@protoc_insertion_point(builder_scope:pulsar.proto.MessageIdData)
+      // @@protoc_insertion_point(builder_scope:pulsar.proto.MessageIdRange)
     }
     
     static {
-      defaultInstance = new MessageIdData(true);
+      defaultInstance = new MessageIdRange(true);
       defaultInstance.initFields();
     }
     
-    // @@protoc_insertion_point(class_scope:pulsar.proto.MessageIdData)
+    // @@protoc_insertion_point(class_scope:pulsar.proto.MessageIdRange)
   }
   
   public interface KeyValueOrBuilder
@@ -3043,6 +3611,10 @@ public final class PulsarApi {
     // optional bool partition_key_b64_encoded = 17 [default = false];
     boolean hasPartitionKeyB64Encoded();
     boolean getPartitionKeyB64Encoded();
+    
+    // optional int64 deliver_at_time = 18;
+    boolean hasDeliverAtTime();
+    long getDeliverAtTime();
   }
   public static final class MessageMetadata extends
       org.apache.pulsar.shaded.com.google.protobuf.v241.GeneratedMessageLite
@@ -3353,6 +3925,16 @@ public final class PulsarApi {
       return partitionKeyB64Encoded_;
     }
     
+    // optional int64 deliver_at_time = 18;
+    public static final int DELIVER_AT_TIME_FIELD_NUMBER = 18;
+    private long deliverAtTime_;
+    public boolean hasDeliverAtTime() {
+      return ((bitField0_ & 0x00002000) == 0x00002000);
+    }
+    public long getDeliverAtTime() {
+      return deliverAtTime_;
+    }
+    
     private void initFields() {
       producerName_ = "";
       sequenceId_ = 0L;
@@ -3370,6 +3952,7 @@ public final class PulsarApi {
       encryptionParam_ = org.apache.pulsar.shaded.com.google.protobuf.v241.ByteString.EMPTY;
       schemaVersion_ = org.apache.pulsar.shaded.com.google.protobuf.v241.ByteString.EMPTY;
       partitionKeyB64Encoded_ = false;
+      deliverAtTime_ = 0L;
     }
     private byte memoizedIsInitialized = -1;
     public final boolean isInitialized() {
@@ -3460,6 +4043,9 @@ public final class PulsarApi {
       if (((bitField0_ & 0x00001000) == 0x00001000)) {
         output.writeBool(17, partitionKeyB64Encoded_);
       }
+      if (((bitField0_ & 0x00002000) == 0x00002000)) {
+        output.writeInt64(18, deliverAtTime_);
+      }
     }
     
     private int memoizedSerializedSize = -1;
@@ -3537,6 +4123,10 @@ public final class PulsarApi {
         size += org.apache.pulsar.shaded.com.google.protobuf.v241.CodedOutputStream
           .computeBoolSize(17, partitionKeyB64Encoded_);
       }
+      if (((bitField0_ & 0x00002000) == 0x00002000)) {
+        size += org.apache.pulsar.shaded.com.google.protobuf.v241.CodedOutputStream
+          .computeInt64Size(18, deliverAtTime_);
+      }
       memoizedSerializedSize = size;
       return size;
     }
@@ -3682,6 +4272,8 @@ public final class PulsarApi {
         bitField0_ = (bitField0_ & ~0x00004000);
         partitionKeyB64Encoded_ = false;
         bitField0_ = (bitField0_ & ~0x00008000);
+        deliverAtTime_ = 0L;
+        bitField0_ = (bitField0_ & ~0x00010000);
         return this;
       }
       
@@ -3783,6 +4375,10 @@ public final class PulsarApi {
           to_bitField0_ |= 0x00001000;
         }
         result.partitionKeyB64Encoded_ = partitionKeyB64Encoded_;
+        if (((from_bitField0_ & 0x00010000) == 0x00010000)) {
+          to_bitField0_ |= 0x00002000;
+        }
+        result.deliverAtTime_ = deliverAtTime_;
         result.bitField0_ = to_bitField0_;
         return result;
       }
@@ -3858,6 +4454,9 @@ public final class PulsarApi {
         if (other.hasPartitionKeyB64Encoded()) {
           setPartitionKeyB64Encoded(other.getPartitionKeyB64Encoded());
         }
+        if (other.hasDeliverAtTime()) {
+          setDeliverAtTime(other.getDeliverAtTime());
+        }
         return this;
       }
       
@@ -3997,6 +4596,11 @@ public final class PulsarApi {
               partitionKeyB64Encoded_ = input.readBool();
               break;
             }
+            case 144: {
+              bitField0_ |= 0x00010000;
+              deliverAtTime_ = input.readInt64();
+              break;
+            }
           }
         }
       }
@@ -4579,6 +5183,27 @@ public final class PulsarApi {
         return this;
       }
       
+      // optional int64 deliver_at_time = 18;
+      private long deliverAtTime_ ;
+      public boolean hasDeliverAtTime() {
+        return ((bitField0_ & 0x00010000) == 0x00010000);
+      }
+      public long getDeliverAtTime() {
+        return deliverAtTime_;
+      }
+      public Builder setDeliverAtTime(long value) {
+        bitField0_ |= 0x00010000;
+        deliverAtTime_ = value;
+        
+        return this;
+      }
+      public Builder clearDeliverAtTime() {
+        bitField0_ = (bitField0_ & ~0x00010000);
+        deliverAtTime_ = 0L;
+        
+        return this;
+      }
+      
       // @@protoc_insertion_point(builder_scope:pulsar.proto.MessageMetadata)
     }
     
@@ -6876,11 +7501,13 @@ public final class PulsarApi {
       Exclusive(0, 0),
       Shared(1, 1),
       Failover(2, 2),
+      Key_Shared(3, 3),
       ;
       
       public static final int Exclusive_VALUE = 0;
       public static final int Shared_VALUE = 1;
       public static final int Failover_VALUE = 2;
+      public static final int Key_Shared_VALUE = 3;
       
       
       public final int getNumber() { return value; }
@@ -6890,6 +7517,7 @@ public final class PulsarApi {
           case 0: return Exclusive;
           case 1: return Shared;
           case 2: return Failover;
+          case 3: return Key_Shared;
           default: return null;
         }
       }
@@ -13660,6 +14288,11 @@ public final class PulsarApi {
     // optional uint32 redelivery_count = 3 [default = 0];
     boolean hasRedeliveryCount();
     int getRedeliveryCount();
+    
+    // repeated int64 ack_set = 4;
+    java.util.List<java.lang.Long> getAckSetList();
+    int getAckSetCount();
+    long getAckSet(int index);
   }
   public static final class CommandMessage extends
       org.apache.pulsar.shaded.com.google.protobuf.v241.GeneratedMessageLite
@@ -13726,10 +14359,25 @@ public final class PulsarApi {
       return redeliveryCount_;
     }
     
+    // repeated int64 ack_set = 4;
+    public static final int ACK_SET_FIELD_NUMBER = 4;
+    private java.util.List<java.lang.Long> ackSet_;
+    public java.util.List<java.lang.Long>
+        getAckSetList() {
+      return ackSet_;
+    }
+    public int getAckSetCount() {
+      return ackSet_.size();
+    }
+    public long getAckSet(int index) {
+      return ackSet_.get(index);
+    }
+    
     private void initFields() {
       consumerId_ = 0L;
       messageId_ = org.apache.pulsar.common.api.proto.PulsarApi.MessageIdData.getDefaultInstance();
       redeliveryCount_ = 0;
+      ackSet_ = java.util.Collections.emptyList();
     }
     private byte memoizedIsInitialized = -1;
     public final boolean isInitialized() {
@@ -13769,6 +14417,9 @@ public final class PulsarApi {
       if (((bitField0_ & 0x00000004) == 0x00000004)) {
         output.writeUInt32(3, redeliveryCount_);
       }
+      for (int i = 0; i < ackSet_.size(); i++) {
+        output.writeInt64(4, ackSet_.get(i));
+      }
     }
     
     private int memoizedSerializedSize = -1;
@@ -13789,6 +14440,15 @@ public final class PulsarApi {
         size += org.apache.pulsar.shaded.com.google.protobuf.v241.CodedOutputStream
           .computeUInt32Size(3, redeliveryCount_);
       }
+      {
+        int dataSize = 0;
+        for (int i = 0; i < ackSet_.size(); i++) {
+          dataSize += org.apache.pulsar.shaded.com.google.protobuf.v241.CodedOutputStream
+            .computeInt64SizeNoTag(ackSet_.get(i));
+        }
+        size += dataSize;
+        size += 1 * getAckSetList().size();
+      }
       memoizedSerializedSize = size;
       return size;
     }
@@ -13908,6 +14568,8 @@ public final class PulsarApi {
         bitField0_ = (bitField0_ & ~0x00000002);
         redeliveryCount_ = 0;
         bitField0_ = (bitField0_ & ~0x00000004);
+        ackSet_ = java.util.Collections.emptyList();
+        bitField0_ = (bitField0_ & ~0x00000008);
         return this;
       }
       
@@ -13953,6 +14615,11 @@ public final class PulsarApi {
           to_bitField0_ |= 0x00000004;
         }
         result.redeliveryCount_ = redeliveryCount_;
+        if (((bitField0_ & 0x00000008) == 0x00000008)) {
+          ackSet_ = java.util.Collections.unmodifiableList(ackSet_);
+          bitField0_ = (bitField0_ & ~0x00000008);
+        }
+        result.ackSet_ = ackSet_;
         result.bitField0_ = to_bitField0_;
         return result;
       }
@@ -13968,6 +14635,16 @@ public final class PulsarApi {
         if (other.hasRedeliveryCount()) {
           setRedeliveryCount(other.getRedeliveryCount());
         }
+        if (!other.ackSet_.isEmpty()) {
+          if (ackSet_.isEmpty()) {
+            ackSet_ = other.ackSet_;
+            bitField0_ = (bitField0_ & ~0x00000008);
+          } else {
+            ensureAckSetIsMutable();
+            ackSet_.addAll(other.ackSet_);
+          }
+          
+        }
         return this;
       }
       
@@ -14029,6 +14706,11 @@ public final class PulsarApi {
               redeliveryCount_ = input.readUInt32();
               break;
             }
+            case 32: {
+              ensureAckSetIsMutable();
+              ackSet_.add(input.readInt64());
+              break;
+            }
           }
         }
       }
@@ -14120,6 +14802,51 @@ public final class PulsarApi {
         return this;
       }
       
+      // repeated int64 ack_set = 4;
+      private java.util.List<java.lang.Long> ackSet_ = java.util.Collections.emptyList();;
+      private void ensureAckSetIsMutable() {
+        if (!((bitField0_ & 0x00000008) == 0x00000008)) {
+          ackSet_ = new java.util.ArrayList<java.lang.Long>(ackSet_);
+          bitField0_ |= 0x00000008;
+         }
+      }
+      public java.util.List<java.lang.Long>
+          getAckSetList() {
+        return java.util.Collections.unmodifiableList(ackSet_);
+      }
+      public int getAckSetCount() {
+        return ackSet_.size();
+      }
+      public long getAckSet(int index) {
+        return ackSet_.get(index);
+      }
+      public Builder setAckSet(
+          int index, long value) {
+        ensureAckSetIsMutable();
+        ackSet_.set(index, value);
+        
+        return this;
+      }
+      public Builder addAckSet(long value) {
+        ensureAckSetIsMutable();
+        ackSet_.add(value);
+        
+        return this;
+      }
+      public Builder addAllAckSet(
+          java.lang.Iterable<? extends java.lang.Long> values) {
+        ensureAckSetIsMutable();
+        super.addAll(values, ackSet_);
+        
+        return this;
+      }
+      public Builder clearAckSet() {
+        ackSet_ = java.util.Collections.emptyList();
+        bitField0_ = (bitField0_ & ~0x00000008);
+        
+        return this;
+      }
+      
       // @@protoc_insertion_point(builder_scope:pulsar.proto.CommandMessage)
     }
     
@@ -14157,6 +14884,12 @@ public final class PulsarApi {
         getPropertiesList();
     org.apache.pulsar.common.api.proto.PulsarApi.KeyLongValue getProperties(int index);
     int getPropertiesCount();
+    
+    // repeated .pulsar.proto.MessageIdRange message_id_range = 6;
+    java.util.List<org.apache.pulsar.common.api.proto.PulsarApi.MessageIdRange> 
+        getMessageIdRangeList();
+    org.apache.pulsar.common.api.proto.PulsarApi.MessageIdRange getMessageIdRange(int index);
+    int getMessageIdRangeCount();
   }
   public static final class CommandAck extends
       org.apache.pulsar.shaded.com.google.protobuf.v241.GeneratedMessageLite
@@ -14356,12 +15089,34 @@ public final class PulsarApi {
       return properties_.get(index);
     }
     
+    // repeated .pulsar.proto.MessageIdRange message_id_range = 6;
+    public static final int MESSAGE_ID_RANGE_FIELD_NUMBER = 6;
+    private java.util.List<org.apache.pulsar.common.api.proto.PulsarApi.MessageIdRange> messageIdRange_;
+    public java.util.List<org.apache.pulsar.common.api.proto.PulsarApi.MessageIdRange> getMessageIdRangeList() {
+      return messageIdRange_;
+    }
+    public java.util.List<? extends org.apache.pulsar.common.api.proto.PulsarApi.MessageIdRangeOrBuilder> 
+        getMessageIdRangeOrBuilderList() {
+      return messageIdRange_;
+    }
+    public int getMessageIdRangeCount() {
+      return messageIdRange_.size();
+    }
+    public org.apache.pulsar.common.api.proto.PulsarApi.MessageIdRange getMessageIdRange(int index) {
+      return messageIdRange_.get(index);
+    }
+    public org.apache.pulsar.common.api.proto.PulsarApi.MessageIdRangeOrBuilder getMessageIdRangeOrBuilder(
+        int index) {
+      return messageIdRange_.get(index);
+    }
+    
     private void initFields() {
       consumerId_ = 0L;
       ackType_ = org.apache.pulsar.common.api.proto.PulsarApi.CommandAck.AckType.Individual;
       messageId_ = java.util.Collections.emptyList();
       validationError_ = org.apache.pulsar.common.api.proto.PulsarApi.CommandAck.ValidationError.UncompressedSizeCorruption;
       properties_ = java.util.Collections.emptyList();
+      messageIdRange_ = java.util.Collections.emptyList();
     }
     private byte memoizedIsInitialized = -1;
     public final boolean isInitialized() {
@@ -14388,6 +15143,12 @@ public final class PulsarApi {
           return false;
         }
       }
+      for (int i = 0; i < getMessageIdRangeCount(); i++) {
+        if (!getMessageIdRange(i).isInitialized()) {
+          memoizedIsInitialized = 0;
+          return false;
+        }
+      }
       memoizedIsInitialized = 1;
       return true;
     }
@@ -14415,6 +15176,9 @@ public final class PulsarApi {
       for (int i = 0; i < properties_.size(); i++) {
         output.writeMessage(5, properties_.get(i));
       }
+      for (int i = 0; i < messageIdRange_.size(); i++) {
+        output.writeMessage(6, messageIdRange_.get(i));
+      }
     }
     
     private int memoizedSerializedSize = -1;
@@ -14443,6 +15207,10 @@ public final class PulsarApi {
         size += org.apache.pulsar.shaded.com.google.protobuf.v241.CodedOutputStream
           .computeMessageSize(5, properties_.get(i));
       }
+      for (int i = 0; i < messageIdRange_.size(); i++) {
+        size += org.apache.pulsar.shaded.com.google.protobuf.v241.CodedOutputStream
+          .computeMessageSize(6, messageIdRange_.get(i));
+      }
       memoizedSerializedSize = size;
       return size;
     }
@@ -14566,6 +15334,8 @@ public final class PulsarApi {
         bitField0_ = (bitField0_ & ~0x00000008);
         properties_ = java.util.Collections.emptyList();
         bitField0_ = (bitField0_ & ~0x00000010);
+        messageIdRange_ = java.util.Collections.emptyList();
+        bitField0_ = (bitField0_ & ~0x00000020);
         return this;
       }
       
@@ -14621,6 +15391,11 @@ public final class PulsarApi {
           bitField0_ = (bitField0_ & ~0x00000010);
         }
         result.properties_ = properties_;
+        if (((bitField0_ & 0x00000020) == 0x00000020)) {
+          messageIdRange_ = java.util.Collections.unmodifiableList(messageIdRange_);
+          bitField0_ = (bitField0_ & ~0x00000020);
+        }
+        result.messageIdRange_ = messageIdRange_;
         result.bitField0_ = to_bitField0_;
         return result;
       }
@@ -14655,6 +15430,16 @@ public final class PulsarApi {
             properties_.addAll(other.properties_);
           }
           
+        }
+        if (!other.messageIdRange_.isEmpty()) {
+          if (messageIdRange_.isEmpty()) {
+            messageIdRange_ = other.messageIdRange_;
+            bitField0_ = (bitField0_ & ~0x00000020);
+          } else {
+            ensureMessageIdRangeIsMutable();
+            messageIdRange_.addAll(other.messageIdRange_);
+          }
+          
         }
         return this;
       }
@@ -14680,6 +15465,12 @@ public final class PulsarApi {
             return false;
           }
         }
+        for (int i = 0; i < getMessageIdRangeCount(); i++) {
+          if (!getMessageIdRange(i).isInitialized()) {
+            
+            return false;
+          }
+        }
         return true;
       }
       
@@ -14740,6 +15531,12 @@ public final class PulsarApi {
               addProperties(subBuilder.buildPartial());
               break;
             }
+            case 50: {
+              org.apache.pulsar.common.api.proto.PulsarApi.MessageIdRange.Builder subBuilder = org.apache.pulsar.common.api.proto.PulsarApi.MessageIdRange.newBuilder();
+              input.readMessage(subBuilder, extensionRegistry);
+              addMessageIdRange(subBuilder.buildPartial());
+              break;
+            }
           }
         }
       }
@@ -14993,6 +15790,95 @@ public final class PulsarApi {
         return this;
       }
       
+      // repeated .pulsar.proto.MessageIdRange message_id_range = 6;
+      private java.util.List<org.apache.pulsar.common.api.proto.PulsarApi.MessageIdRange> messageIdRange_ =
+        java.util.Collections.emptyList();
+      private void ensureMessageIdRangeIsMutable() {
+        if (!((bitField0_ & 0x00000020) == 0x00000020)) {
+          messageIdRange_ = new java.util.ArrayList<org.apache.pulsar.common.api.proto.PulsarApi.MessageIdRange>(messageIdRange_);
+          bitField0_ |= 0x00000020;
+         }
+      }
+      
+      public java.util.List<org.apache.pulsar.common.api.proto.PulsarApi.MessageIdRange> getMessageIdRangeList() {
+        return java.util.Collections.unmodifiableList(messageIdRange_);
+      }
+      public int getMessageIdRangeCount() {
+        return messageIdRange_.size();
+      }
+      public org.apache.pulsar.common.api.proto.PulsarApi.MessageIdRange getMessageIdRange(int index) {
+        return messageIdRange_.get(index);
+      }
+      public Builder setMessageIdRange(
+          int index, org.apache.pulsar.common.api.proto.PulsarApi.MessageIdRange value) {
+        if (value == null) {
+          throw new NullPointerException();
+        }
+        ensureMessageIdRangeIsMutable();
+        messageIdRange_.set(index, value);
+        
+        return this;
+      }
+      public Builder setMessageIdRange(
+          int index, org.apache.pulsar.common.api.proto.PulsarApi.MessageIdRange.Builder builderForValue) {
+        ensureMessageIdRangeIsMutable();
+        messageIdRange_.set(index, builderForValue.build());
+        
+        return this;
+      }
+      public Builder addMessageIdRange(org.apache.pulsar.common.api.proto.PulsarApi.MessageIdRange value) {
+        if (value == null) {
+          throw new NullPointerException();
+        }
+        ensureMessageIdRangeIsMutable();
+        messageIdRange_.add(value);
+        
+        return this;
+      }
+      public Builder addMessageIdRange(
+          int index, org.apache.pulsar.common.api.proto.PulsarApi.MessageIdRange value) {
+        if (value == null) {
+          throw new NullPointerException();
+        }
+        ensureMessageIdRangeIsMutable();
+        messageIdRange_.add(index, value);
+        
+        return this;
+      }
+      public Builder addMessageIdRange(
+          org.apache.pulsar.common.api.proto.PulsarApi.MessageIdRange.Builder builderForValue) {
+        ensureMessageIdRangeIsMutable();
+        messageIdRange_.add(builderForValue.build());
+        
+        return this;
+      }
+      public Builder addMessageIdRange(
+          int index, org.apache.pulsar.common.api.proto.PulsarApi.MessageIdRange.Builder builderForValue) {
+        ensureMessageIdRangeIsMutable();
+        messageIdRange_.add(index, builderForValue.build());
+        
+        return this;
+      }
+      public Builder addAllMessageIdRange(
+          java.lang.Iterable<? extends org.apache.pulsar.common.api.proto.PulsarApi.MessageIdRange> values) {
+        ensureMessageIdRangeIsMutable();
+        super.addAll(values, messageIdRange_);
+        
+        return this;
+      }
+      public Builder clearMessageIdRange() {
+        messageIdRange_ = java.util.Collections.emptyList();
+        bitField0_ = (bitField0_ & ~0x00000020);
+        
+        return this;
+      }
+      public Builder removeMessageIdRange(int index) {
+        ensureMessageIdRangeIsMutable();
+        messageIdRange_.remove(index);
+        
+        return this;
+      }
+      
       // @@protoc_insertion_point(builder_scope:pulsar.proto.CommandAck)
     }
     
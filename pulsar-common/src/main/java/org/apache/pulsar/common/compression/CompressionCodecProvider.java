@@ -33,6 +33,8 @@ public class CompressionCodecProvider {
         codecs.put(CompressionType.NONE, new CompressionCodecNone());
         codecs.put(CompressionType.LZ4, new CompressionCodecLZ4());
         codecs.put(CompressionType.ZLIB, new CompressionCodecZLib());
+        codecs.put(CompressionType.ZSTD, new CompressionCodecZstd());
+        codecs.put(CompressionType.SNAPPY, new CompressionCodecSnappy());
     }
 
     public static CompressionCodec getCompressionCodec(CompressionType type) {
@@ -0,0 +1,92 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.common.compression;
+
+import static org.apache.pulsar.common.compression.CompressionCodecZstd.toDirectBuffer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.xerial.snappy.Snappy;
+
+/**
+ * Snappy Compression.
+ *
+ * <p/>Direct buffers are passed as they are to the native library, without copying them on the heap.
+ */
+public class CompressionCodecSnappy implements CompressionCodec {
+
+    @Override
+    public ByteBuf encode(ByteBuf source) {
+        int uncompressedLength = source.readableBytes();
+        int maxLength = Snappy.maxCompressedLength(uncompressedLength);
+
+        ByteBuf directSource = toDirectBuffer(source);
+        ByteBuffer sourceNio = directSource.nioBuffer(directSource.readerIndex(), uncompressedLength);
+
+        ByteBuf target = PooledByteBufAllocator.DEFAULT.directBuffer(maxLength, maxLength);
+        ByteBuffer targetNio = target.nioBuffer(0, maxLength);
+
+        try {
+            int compressedLength = Snappy.compress(sourceNio, targetNio);
+            target.writerIndex(compressedLength);
+            return target;
+        } catch (IOException e) {
+            target.release();
+            // This is in-memory compression with a large enough buffer, should not fail
+            throw new RuntimeException(e);
+        } finally {
+            if (directSource != source) {
+                directSource.release();
+            }
+        }
+    }
+
+    @Override
+    public ByteBuf decode(ByteBuf encoded, int uncompressedLength) throws IOException {
+        ByteBuf directEncoded = toDirectBuffer(encoded);
+        ByteBuffer encodedNio = directEncoded.nioBuffer(directEncoded.readerIndex(), directEncoded.readableBytes());
+
+        ByteBuf uncompressed = PooledByteBufAllocator.DEFAULT.directBuffer(uncompressedLength, uncompressedLength);
+        ByteBuffer uncompressedNio = uncompressed.nioBuffer(0, uncompressedLength);
+
+        try {
+            // Validate the size stored in the encoded content first, so that a corrupted content can never overflow
+            // the target buffer
+            int resultLength = Snappy.uncompressedLength(encodedNio);
+            if (resultLength != uncompressedLength) {
+                throw new IOException("Unexpected uncompressed size with snappy: " + resultLength + " instead of "
+                        + uncompressedLength);
+            }
+            Snappy.uncompress(encodedNio, uncompressedNio);
+        } catch (IOException e) {
+            uncompressed.release();
+            throw e;
+        } finally {
+            if (directEncoded != encoded) {
+                directEncoded.release();
+            }
+        }
+
+        uncompressed.writerIndex(uncompressedLength);
+        return uncompressed;
+    }
+}
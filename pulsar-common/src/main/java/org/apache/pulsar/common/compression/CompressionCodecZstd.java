@@ -0,0 +1,155 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.common.compression;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDictCompress;
+import com.github.luben.zstd.ZstdDictDecompress;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+
+/**
+ * Zstandard Compression.
+ *
+ * <p/>The codec can use a compression level other than the default one, and a pre-trained dictionary, e.g. created
+ * with <code>zstd --train</code>. When a dictionary is used, producers and consumers must be configured with the same
+ * one.
+ *
+ * <p/>Direct buffers are passed as they are to the native library, without copying them on the heap.
+ */
+public class CompressionCodecZstd implements CompressionCodec {
+
+    public static final int DEFAULT_LEVEL = 3;
+
+    private final int level;
+    private final ZstdDictCompress dictCompress;
+    private final ZstdDictDecompress dictDecompress;
+
+    public CompressionCodecZstd() {
+        this(DEFAULT_LEVEL, null);
+    }
+
+    /**
+     * @param level
+     *            the compression level
+     * @param dictionary
+     *            the content of the dictionary, or null to compress without dictionary
+     */
+    public CompressionCodecZstd(int level, byte[] dictionary) {
+        this.level = level;
+        if (dictionary != null) {
+            this.dictCompress = new ZstdDictCompress(dictionary, level);
+            this.dictDecompress = new ZstdDictDecompress(dictionary);
+        } else {
+            this.dictCompress = null;
+            this.dictDecompress = null;
+        }
+    }
+
+    @Override
+    public ByteBuf encode(ByteBuf source) {
+        int uncompressedLength = source.readableBytes();
+        int maxLength = (int) Zstd.compressBound(uncompressedLength);
+
+        ByteBuf directSource = toDirectBuffer(source);
+        ByteBuffer sourceNio = directSource.nioBuffer(directSource.readerIndex(), uncompressedLength);
+
+        ByteBuf target = PooledByteBufAllocator.DEFAULT.directBuffer(maxLength, maxLength);
+        ByteBuffer targetNio = target.nioBuffer(0, maxLength);
+
+        long compressedLength;
+        try {
+            if (dictCompress != null) {
+                compressedLength = Zstd.compressDirectByteBufferFastDict(targetNio, targetNio.position(), maxLength,
+                        sourceNio, sourceNio.position(), uncompressedLength, dictCompress);
+            } else {
+                compressedLength = Zstd.compressDirectByteBuffer(targetNio, targetNio.position(), maxLength,
+                        sourceNio, sourceNio.position(), uncompressedLength, level);
+            }
+        } finally {
+            if (directSource != source) {
+                directSource.release();
+            }
+        }
+
+        if (Zstd.isError(compressedLength)) {
+            target.release();
+            // This is in-memory compression with a large enough buffer, should not fail
+            throw new RuntimeException("Failed to compress with zstd: " + Zstd.getErrorName(compressedLength));
+        }
+
+        target.writerIndex((int) compressedLength);
+        return target;
+    }
+
+    @Override
+    public ByteBuf decode(ByteBuf encoded, int uncompressedLength) throws IOException {
+        ByteBuf directEncoded = toDirectBuffer(encoded);
+        ByteBuffer encodedNio = directEncoded.nioBuffer(directEncoded.readerIndex(), directEncoded.readableBytes());
+
+        ByteBuf uncompressed = PooledByteBufAllocator.DEFAULT.directBuffer(uncompressedLength, uncompressedLength);
+        ByteBuffer uncompressedNio = uncompressed.nioBuffer(0, uncompressedLength);
+
+        long resultLength;
+        try {
+            if (dictDecompress != null) {
+                resultLength = Zstd.decompressDirectByteBufferFastDict(uncompressedNio, uncompressedNio.position(),
+                        uncompressedLength, encodedNio, encodedNio.position(), encodedNio.remaining(),
+                        dictDecompress);
+            } else {
+                resultLength = Zstd.decompressDirectByteBuffer(uncompressedNio, uncompressedNio.position(),
+                        uncompressedLength, encodedNio, encodedNio.position(), encodedNio.remaining());
+            }
+        } finally {
+            if (directEncoded != encoded) {
+                directEncoded.release();
+            }
+        }
+
+        if (Zstd.isError(resultLength)) {
+            uncompressed.release();
+            throw new IOException("Failed to decompress with zstd: " + Zstd.getErrorName(resultLength));
+        } else if (resultLength != uncompressedLength) {
+            uncompressed.release();
+            throw new IOException("Unexpected uncompressed size with zstd: " + resultLength + " instead of "
+                    + uncompressedLength);
+        }
+
+        uncompressed.writerIndex(uncompressedLength);
+        return uncompressed;
+    }
+
+    /**
+     * The native library can only access a single direct buffer, anything else needs to be copied first.
+     */
+    static ByteBuf toDirectBuffer(ByteBuf buf) {
+        if (buf.isDirect() && buf.nioBufferCount() == 1) {
+            return buf;
+        }
+
+        int length = buf.readableBytes();
+        ByteBuf direct = PooledByteBufAllocator.DEFAULT.directBuffer(length, length);
+        direct.writeBytes(buf, buf.readerIndex(), length);
+        return direct;
+    }
+}
@@ -41,6 +41,9 @@ public class SubscriptionStats {
     /** Number of messages in the subscription backlog */
     public long msgBacklog;
 
+    /** Number of delayed messages currently being tracked */
+    public long msgDelayed;
+
     /** Flag to verify if subscription is blocked due to reaching threshold of unacked messages */
     public boolean blockedSubscriptionOnUnackedMsgs;
     
@@ -68,6 +71,7 @@ public class SubscriptionStats {
         msgThroughputOut = 0;
         msgRateRedeliver = 0;
         msgBacklog = 0;
+        msgDelayed = 0;
         unackedMessages = 0;
         msgRateExpired = 0;
         consumers.clear();
@@ -81,6 +85,7 @@ public class SubscriptionStats {
         this.msgThroughputOut += stats.msgThroughputOut;
         this.msgRateRedeliver += stats.msgRateRedeliver;
         this.msgBacklog += stats.msgBacklog;
+        this.msgDelayed += stats.msgDelayed;
         this.unackedMessages += stats.unackedMessages;
         this.msgRateExpired += stats.msgRateExpired;
         if (this.consumers.size() != stats.consumers.size()) {
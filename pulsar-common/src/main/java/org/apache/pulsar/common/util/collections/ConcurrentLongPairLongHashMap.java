@@ -0,0 +1,512 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.common.util.collections;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Concurrent hash map where keys are composed of pairs of longs and values are longs.
+ *
+ * <p>
+ * (long,long) --&gt; long
+ * <p>
+ * Provides similar methods as a ConcurrentHashMap&lt;K,V&gt; but since it's an open hash map with linear probing, no
+ * node allocations are required to store the keys and values, and no boxing is required.
+ * <p>
+ * Keys and values <strong>MUST</strong> be &gt;= 0.
+ */
+public class ConcurrentLongPairLongHashMap {
+
+    private static final long EmptyKey = -1L;
+    private static final long DeletedKey = -2L;
+
+    // Returned when the key is not in the map
+    public static final long ValueNotFound = -1L;
+
+    private static final float MapFillFactor = 0.66f;
+
+    private static final int DefaultExpectedItems = 256;
+    private static final int DefaultConcurrencyLevel = 16;
+
+    private final Section[] sections;
+
+    public interface LongPairLongPredicate {
+        boolean test(long key1, long key2, long value);
+    }
+
+    public interface LongPairLongConsumer {
+        void accept(long key1, long key2, long value);
+    }
+
+    public ConcurrentLongPairLongHashMap() {
+        this(DefaultExpectedItems);
+    }
+
+    public ConcurrentLongPairLongHashMap(int expectedItems) {
+        this(expectedItems, DefaultConcurrencyLevel);
+    }
+
+    public ConcurrentLongPairLongHashMap(int expectedItems, int concurrencyLevel) {
+        checkArgument(expectedItems > 0);
+        checkArgument(concurrencyLevel > 0);
+        checkArgument(expectedItems >= concurrencyLevel);
+
+        int numSections = concurrencyLevel;
+        int perSectionExpectedItems = expectedItems / numSections;
+        int perSectionCapacity = (int) (perSectionExpectedItems / MapFillFactor);
+        this.sections = new Section[numSections];
+
+        for (int i = 0; i < numSections; i++) {
+            sections[i] = new Section(perSectionCapacity);
+        }
+    }
+
+    public long size() {
+        long size = 0;
+        for (Section s : sections) {
+            size += s.size;
+        }
+        return size;
+    }
+
+    public long capacity() {
+        long capacity = 0;
+        for (Section s : sections) {
+            capacity += s.capacity;
+        }
+        return capacity;
+    }
+
+    public boolean isEmpty() {
+        for (Section s : sections) {
+            if (s.size != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the value associated with the key, or {@link #ValueNotFound} if the key is not in the map
+     */
+    public long get(long key1, long key2) {
+        checkBiggerEqualZero(key1);
+        long h = hash(key1, key2);
+        return getSection(h).get(key1, key2, (int) h);
+    }
+
+    public boolean containsKey(long key1, long key2) {
+        return get(key1, key2) != ValueNotFound;
+    }
+
+    /**
+     * @return the value previously associated with the key, or {@link #ValueNotFound} if the key was not in the map
+     */
+    public long put(long key1, long key2, long value) {
+        checkBiggerEqualZero(key1);
+        checkBiggerEqualZero(value);
+        long h = hash(key1, key2);
+        return getSection(h).put(key1, key2, value, (int) h);
+    }
+
+    /**
+     * Remove an existing entry if found.
+     *
+     * @return the value that was associated with the key, or {@link #ValueNotFound} if the key was not in the map
+     */
+    public long remove(long key1, long key2) {
+        checkBiggerEqualZero(key1);
+        long h = hash(key1, key2);
+        return getSection(h).remove(key1, key2, ValueNotFound, (int) h);
+    }
+
+    /**
+     * Remove an existing entry only if it is associated with the given value.
+     *
+     * @return true if removed or false if the key was not associated with the value
+     */
+    public boolean remove(long key1, long key2, long value) {
+        checkBiggerEqualZero(key1);
+        checkBiggerEqualZero(value);
+        long h = hash(key1, key2);
+        return getSection(h).remove(key1, key2, value, (int) h) != ValueNotFound;
+    }
+
+    private final Section getSection(long hash) {
+        // Use 32 msb out of long to get the section
+        final int sectionIdx = (int) (hash >>> 32) & (sections.length - 1);
+        return sections[sectionIdx];
+    }
+
+    public void clear() {
+        for (Section s : sections) {
+            s.clear();
+        }
+    }
+
+    public void forEach(LongPairLongConsumer processor) {
+        for (Section s : sections) {
+            s.forEach(processor);
+        }
+    }
+
+    /**
+     * Removes all of the entries of this map that satisfy the given predicate.
+     *
+     * @param filter
+     *            a predicate which returns {@code true} for entries to be removed
+     * @return number of removed entries
+     */
+    public int removeIf(LongPairLongPredicate filter) {
+        Objects.requireNonNull(filter);
+        int removedEntries = 0;
+        for (Section s : sections) {
+            removedEntries += s.removeIf(filter);
+        }
+        return removedEntries;
+    }
+
+    // A section is a portion of the hash map that is covered by a single
+    @SuppressWarnings("serial")
+    private static final class Section extends StampedLock {
+        // Keys and values are stored interleaved in the table array
+        private volatile long[] table;
+
+        private volatile int capacity;
+        private volatile int size;
+        private int usedBuckets;
+        private int resizeThreshold;
+
+        Section(int capacity) {
+            this.capacity = alignToPowerOfTwo(capacity);
+            this.table = new long[3 * this.capacity];
+            this.size = 0;
+            this.usedBuckets = 0;
+            this.resizeThreshold = (int) (this.capacity * MapFillFactor);
+            Arrays.fill(table, EmptyKey);
+        }
+
+        long get(long key1, long key2, int hash) {
+            long stamp = tryOptimisticRead();
+            boolean acquiredLock = false;
+            long[] table = this.table;
+            int bucket = bucketIndex(hash, table.length / 3);
+
+            try {
+                while (true) {
+                    // First try optimistic locking
+                    long storedKey1 = table[bucket];
+                    long storedKey2 = table[bucket + 1];
+                    long storedValue = table[bucket + 2];
+
+                    if (!acquiredLock && validate(stamp)) {
+                        // The values we have read are consistent
+                        if (key1 == storedKey1 && key2 == storedKey2) {
+                            return storedValue;
+                        } else if (storedKey1 == EmptyKey) {
+                            // Not found
+                            return ValueNotFound;
+                        }
+                    } else {
+                        // Fallback to acquiring read lock
+                        if (!acquiredLock) {
+                            stamp = readLock();
+                            acquiredLock = true;
+
+                            table = this.table;
+                            bucket = bucketIndex(hash, table.length / 3);
+                            storedKey1 = table[bucket];
+                            storedKey2 = table[bucket + 1];
+                            storedValue = table[bucket + 2];
+                        }
+
+                        if (key1 == storedKey1 && key2 == storedKey2) {
+                            return storedValue;
+                        } else if (storedKey1 == EmptyKey) {
+                            // Not found
+                            return ValueNotFound;
+                        }
+                    }
+
+                    bucket = nextBucket(bucket, table.length);
+                }
+            } finally {
+                if (acquiredLock) {
+                    unlockRead(stamp);
+                }
+            }
+        }
+
+        long put(long key1, long key2, long value, int hash) {
+            long stamp = writeLock();
+            int bucket = bucketIndex(hash, capacity);
+
+            // Remember where we find the first available spot
+            int firstDeletedKey = -1;
+
+            try {
+                while (true) {
+                    long storedKey1 = table[bucket];
+                    long storedKey2 = table[bucket + 1];
+
+                    if (key1 == storedKey1 && key2 == storedKey2) {
+                        // Key was already in map, replace the value
+                        long previousValue = table[bucket + 2];
+                        table[bucket + 2] = value;
+                        return previousValue;
+                    } else if (storedKey1 == EmptyKey) {
+                        // Found an empty bucket. This means the key is not in the map. If we've already seen a deleted
+                        // key, we should write at that position
+                        if (firstDeletedKey != -1) {
+                            bucket = firstDeletedKey;
+                        } else {
+                            ++usedBuckets;
+                        }
+
+                        table[bucket] = key1;
+                        table[bucket + 1] = key2;
+                        table[bucket + 2] = value;
+                        ++size;
+                        return ValueNotFound;
+                    } else if (storedKey1 == DeletedKey) {
+                        // The bucket contained a different deleted key
+                        if (firstDeletedKey == -1) {
+                            firstDeletedKey = bucket;
+                        }
+                    }
+
+                    bucket = nextBucket(bucket, table.length);
+                }
+            } finally {
+                if (usedBuckets > resizeThreshold) {
+                    try {
+                        rehash();
+                    } finally {
+                        unlockWrite(stamp);
+                    }
+                } else {
+                    unlockWrite(stamp);
+                }
+            }
+        }
+
+        private long remove(long key1, long key2, long expectedValue, int hash) {
+            long stamp = writeLock();
+            int bucket = bucketIndex(hash, capacity);
+
+            try {
+                while (true) {
+                    long storedKey1 = table[bucket];
+                    long storedKey2 = table[bucket + 1];
+                    long storedValue = table[bucket + 2];
+                    if (key1 == storedKey1 && key2 == storedKey2) {
+                        if (expectedValue != ValueNotFound && expectedValue != storedValue) {
+                            return ValueNotFound;
+                        }
+
+                        --size;
+                        cleanBucket(bucket);
+                        return storedValue;
+                    } else if (storedKey1 == EmptyKey) {
+                        return ValueNotFound;
+                    }
+
+                    bucket = nextBucket(bucket, table.length);
+                }
+            } finally {
+                unlockWrite(stamp);
+            }
+        }
+
+        private int removeIf(LongPairLongPredicate filter) {
+            long stamp = writeLock();
+            int removedEntries = 0;
+
+            try {
+                // Go through all the buckets for this section
+                for (int bucket = 0; bucket < table.length; bucket += 3) {
+                    long storedKey1 = table[bucket];
+                    long storedKey2 = table[bucket + 1];
+                    long storedValue = table[bucket + 2];
+
+                    if (storedKey1 != DeletedKey && storedKey1 != EmptyKey
+                            && filter.test(storedKey1, storedKey2, storedValue)) {
+                        --size;
+                        table[bucket] = DeletedKey;
+                        table[bucket + 1] = DeletedKey;
+                        table[bucket + 2] = DeletedKey;
+                        removedEntries++;
+                    }
+                }
+            } finally {
+                unlockWrite(stamp);
+            }
+
+            return removedEntries;
+        }
+
+        private void cleanBucket(int bucket) {
+            int nextInArray = nextBucket(bucket, table.length);
+            if (table[nextInArray] == EmptyKey) {
+                table[bucket] = EmptyKey;
+                table[bucket + 1] = EmptyKey;
+                table[bucket + 2] = EmptyKey;
+                --usedBuckets;
+            } else {
+                table[bucket] = DeletedKey;
+                table[bucket + 1] = DeletedKey;
+                table[bucket + 2] = DeletedKey;
+            }
+        }
+
+        void clear() {
+            long stamp = writeLock();
+
+            try {
+                Arrays.fill(table, EmptyKey);
+                this.size = 0;
+                this.usedBuckets = 0;
+            } finally {
+                unlockWrite(stamp);
+            }
+        }
+
+        public void forEach(LongPairLongConsumer processor) {
+            long stamp = tryOptimisticRead();
+
+            long[] table = this.table;
+            boolean acquiredReadLock = false;
+
+            try {
+
+                // Validate no rehashing
+                if (!validate(stamp)) {
+                    // Fallback to read lock
+                    stamp = readLock();
+                    acquiredReadLock = true;
+                    table = this.table;
+                }
+
+                // Go through all the buckets for this section
+                for (int bucket = 0; bucket < table.length; bucket += 3) {
+                    long storedKey1 = table[bucket];
+                    long storedKey2 = table[bucket + 1];
+                    long storedValue = table[bucket + 2];
+
+                    if (!acquiredReadLock && !validate(stamp)) {
+                        // Fallback to acquiring read lock
+                        stamp = readLock();
+                        acquiredReadLock = true;
+
+                        storedKey1 = table[bucket];
+                        storedKey2 = table[bucket + 1];
+                        storedValue = table[bucket + 2];
+                    }
+
+                    if (storedKey1 != DeletedKey && storedKey1 != EmptyKey) {
+                        processor.accept(storedKey1, storedKey2, storedValue);
+                    }
+                }
+            } finally {
+                if (acquiredReadLock) {
+                    unlockRead(stamp);
+                }
+            }
+        }
+
+        private void rehash() {
+            // Expand the hashmap
+            int newCapacity = capacity * 2;
+            long[] newTable = new long[3 * newCapacity];
+            Arrays.fill(newTable, EmptyKey);
+
+            // Re-hash table
+            for (int i = 0; i < table.length; i += 3) {
+                long storedKey1 = table[i];
+                long storedKey2 = table[i + 1];
+                long storedValue = table[i + 2];
+                if (storedKey1 != EmptyKey && storedKey1 != DeletedKey) {
+                    insertKeyValueNoLock(newTable, newCapacity, storedKey1, storedKey2, storedValue);
+                }
+            }
+
+            table = newTable;
+            usedBuckets = size;
+            // Capacity needs to be updated after the values, so that we won't see
+            // a capacity value bigger than the actual array size
+            capacity = newCapacity;
+            resizeThreshold = (int) (capacity * MapFillFactor);
+        }
+
+        private static void insertKeyValueNoLock(long[] table, int capacity, long key1, long key2, long value) {
+            int bucket = bucketIndex(hash(key1, key2), capacity);
+
+            while (true) {
+                long storedKey = table[bucket];
+
+                if (storedKey == EmptyKey) {
+                    // The bucket is empty, so we can use it
+                    table[bucket] = key1;
+                    table[bucket + 1] = key2;
+                    table[bucket + 2] = value;
+                    return;
+                }
+
+                bucket = nextBucket(bucket, table.length);
+            }
+        }
+    }
+
+    private static final long HashMixer = 0xc6a4a7935bd1e995l;
+    private static final int R = 47;
+
+    final static long hash(long key1, long key2) {
+        long hash = key1 * HashMixer;
+        hash ^= hash >>> R;
+        hash *= HashMixer;
+        hash += 31 + (key2 * HashMixer);
+        hash ^= hash >>> R;
+        hash *= HashMixer;
+        return hash;
+    }
+
+    // Index in the table array of the first of the 3 slots of a bucket
+    static final int bucketIndex(long hash, int capacity) {
+        return (int) (hash & (capacity - 1)) * 3;
+    }
+
+    private static final int nextBucket(int bucket, int tableLength) {
+        bucket += 3;
+        return bucket < tableLength ? bucket : 0;
+    }
+
+    private static final int alignToPowerOfTwo(int n) {
+        return (int) Math.pow(2, 32 - Integer.numberOfLeadingZeros(n - 1));
+    }
+
+    private static final void checkBiggerEqualZero(long n) {
+        if (n < 0L) {
+            throw new IllegalArgumentException("Keys and values must be >= 0");
+        }
+    }
+}
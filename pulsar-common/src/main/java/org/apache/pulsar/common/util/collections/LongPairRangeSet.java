@@ -0,0 +1,304 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.common.util.collections;
+
+import static java.util.Objects.requireNonNull;
+
+import com.google.common.collect.BoundType;
+import com.google.common.collect.Range;
+import com.google.common.collect.RangeSet;
+import com.google.common.collect.TreeRangeSet;
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * A set of ranges over items that are identified by a pair of longs (key, value), eg: (ledgerId, entryId).
+ * <p>
+ * Ranges are always open on the lower end and closed on the upper end: (lower, upper]. Implementations are free to
+ * choose their internal representation, which allows to track a large number of non-contiguous ranges without
+ * allocating an object per range.
+ *
+ * @param <T>
+ *            the type of the range end-points materialized when ranges are exposed to callers
+ */
+public interface LongPairRangeSet<T extends Comparable<T>> {
+
+    /**
+     * Adds the specified range (lower, upper] to this set.
+     *
+     * @param lowerKey
+     *            key of the (open) lower end-point
+     * @param lowerValue
+     *            value of the (open) lower end-point
+     * @param upperKey
+     *            key of the (closed) upper end-point
+     * @param upperValue
+     *            value of the (closed) upper end-point
+     */
+    void addOpenClosed(long lowerKey, long lowerValue, long upperKey, long upperValue);
+
+    /**
+     * @return true if the item (key, value) is part of any range of this set
+     */
+    boolean contains(long key, long value);
+
+    /**
+     * @return the range that contains the item (key, value) or null if there is no such range
+     */
+    Range<T> rangeContaining(long key, long value);
+
+    /**
+     * @return the number of items (key, value) of this set with lowerValue <= value <= upperValue
+     */
+    long cardinality(long key, long lowerValue, long upperValue);
+
+    /**
+     * Removes all the items that are lower or equal to (key, value).
+     */
+    void removeAtMost(long key, long value);
+
+    boolean isEmpty();
+
+    void clear();
+
+    /**
+     * @return the minimal range that encloses all the ranges of this set or null if the set is empty
+     */
+    Range<T> span();
+
+    /**
+     * @return a snapshot of all the disconnected ranges of this set, in ascending order
+     */
+    Collection<Range<T>> asRanges();
+
+    /**
+     * Iterates over all the ranges of this set, in ascending order, until the processor returns false.
+     *
+     * @param action
+     *            processor invoked for each range
+     */
+    void forEach(RangeProcessor action);
+
+    /**
+     * @return the number of disconnected ranges of this set
+     */
+    int size();
+
+    /**
+     * @return the first (lowest) range of this set or null if the set is empty
+     */
+    Range<T> firstRange();
+
+    /**
+     * Callback invoked for each (lowerKey, lowerValue, upperKey, upperValue] range of the set.
+     */
+    interface RangeProcessor {
+        /**
+         * @return false to stop the iteration
+         */
+        boolean process(long lowerKey, long lowerValue, long upperKey, long upperValue);
+    }
+
+    /**
+     * Converts a pair of longs into the item type exposed by the set.
+     */
+    interface LongPairConsumer<T> {
+        T apply(long key, long value);
+    }
+
+    /**
+     * Converts an item back into its pair of longs.
+     */
+    interface RangeBoundConsumer<T> {
+        LongPair apply(T bound);
+    }
+
+    /**
+     * Pair of longs identifying an item of the set.
+     */
+    class LongPair implements Comparable<LongPair> {
+        private final long key;
+        private final long value;
+
+        public LongPair(long key, long value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        public long getKey() {
+            return key;
+        }
+
+        public long getValue() {
+            return value;
+        }
+
+        @Override
+        public int compareTo(LongPair o) {
+            if (key != o.key) {
+                return Long.compare(key, o.key);
+            } else {
+                return Long.compare(value, o.value);
+            }
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj instanceof LongPair) {
+                LongPair other = (LongPair) obj;
+                return key == other.key && value == other.value;
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(key) * 31 + Long.hashCode(value);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d:%d", key, value);
+        }
+    }
+
+    /**
+     * {@link LongPairRangeSet} backed by a Guava {@link TreeRangeSet}. It allocates one {@link Range} and two
+     * end-point objects per disconnected range and keeps ranges connected across different keys.
+     * <p>
+     * This class is not thread-safe.
+     */
+    class DefaultRangeSet<T extends Comparable<T>> implements LongPairRangeSet<T> {
+
+        private final RangeSet<T> set = TreeRangeSet.create();
+
+        private final LongPairConsumer<T> consumer;
+        private final RangeBoundConsumer<T> reverseConsumer;
+
+        public DefaultRangeSet(LongPairConsumer<T> consumer, RangeBoundConsumer<T> reverseConsumer) {
+            this.consumer = requireNonNull(consumer);
+            this.reverseConsumer = requireNonNull(reverseConsumer);
+        }
+
+        @Override
+        public void clear() {
+            set.clear();
+        }
+
+        @Override
+        public void addOpenClosed(long lowerKey, long lowerValue, long upperKey, long upperValue) {
+            set.add(Range.openClosed(consumer.apply(lowerKey, lowerValue), consumer.apply(upperKey, upperValue)));
+        }
+
+        @Override
+        public boolean contains(long key, long value) {
+            return set.contains(consumer.apply(key, value));
+        }
+
+        @Override
+        public Range<T> rangeContaining(long key, long value) {
+            return set.rangeContaining(consumer.apply(key, value));
+        }
+
+        @Override
+        public long cardinality(long key, long lowerValue, long upperValue) {
+            if (lowerValue > upperValue) {
+                return 0;
+            }
+
+            long cardinality = 0;
+            Range<T> window = Range.closed(consumer.apply(key, lowerValue), consumer.apply(key, upperValue));
+            for (Range<T> range : set.subRangeSet(window).asRanges()) {
+                // Both end-points are in the key of the window
+                long lower = reverseConsumer.apply(range.lowerEndpoint()).getValue();
+                long upper = reverseConsumer.apply(range.upperEndpoint()).getValue();
+                cardinality += upper - lower + 1;
+                if (range.lowerBoundType() == BoundType.OPEN) {
+                    cardinality--;
+                }
+                if (range.upperBoundType() == BoundType.OPEN) {
+                    cardinality--;
+                }
+            }
+            return cardinality;
+        }
+
+        @Override
+        public void removeAtMost(long key, long value) {
+            set.remove(Range.atMost(consumer.apply(key, value)));
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return set.isEmpty();
+        }
+
+        @Override
+        public Range<T> span() {
+            return set.isEmpty() ? null : set.span();
+        }
+
+        @Override
+        public Collection<Range<T>> asRanges() {
+            return new ArrayList<>(set.asRanges());
+        }
+
+        @Override
+        public void forEach(RangeProcessor action) {
+            for (Range<T> range : set.asRanges()) {
+                LongPair lower = reverseConsumer.apply(range.lowerEndpoint());
+                LongPair upper = reverseConsumer.apply(range.upperEndpoint());
+                if (!action.process(lower.getKey(), lower.getValue(), upper.getKey(), upper.getValue())) {
+                    break;
+                }
+            }
+        }
+
+        @Override
+        public int size() {
+            return set.asRanges().size();
+        }
+
+        @Override
+        public Range<T> firstRange() {
+            if (set.isEmpty()) {
+                return null;
+            }
+            return set.asRanges().iterator().next();
+        }
+
+        @Override
+        public String toString() {
+            return set.toString();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj instanceof DefaultRangeSet) {
+                return set.equals(((DefaultRangeSet<?>) obj).set);
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            return set.hashCode();
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.common.util.collections;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+import com.google.common.collect.Range;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * {@link LongPairRangeSet} that keeps one {@link BitSet} per key, where the bit at index <code>value</code> is set
+ * when the item (key, value) belongs to the set.
+ * <p>
+ * Compared to a range set of objects, no allocation is required per range: a highly fragmented set of N items in a
+ * single key costs N bits. Values <strong>MUST</strong> be in the range [0, Integer.MAX_VALUE).
+ * <p>
+ * Since the number of items per key is not known, ranges are never connected across keys: a range spanning multiple
+ * keys, eg: (1:10, 3:5], only marks the items of the upper key, ie: [3:0, 3:5]. When used to track acknowledged
+ * positions this is always conservative, since unmarked items are considered as not acknowledged.
+ * <p>
+ * This class is not thread-safe, updates and reads must be externally synchronized.
+ */
+public class OpenLongPairRangeSet<T extends Comparable<T>> implements LongPairRangeSet<T> {
+
+    private static final int DefaultBitSetSize = 1024;
+
+    private final NavigableMap<Long, BitSet> rangeBitSetMap = new TreeMap<>();
+    private final int bitSetSize;
+    private final LongPairConsumer<T> consumer;
+
+    // caches the number of disconnected ranges, since computing it requires a scan of all the bitsets
+    private int cachedSize = 0;
+    private boolean updatedAfterCachedForSize = false;
+
+    public OpenLongPairRangeSet(LongPairConsumer<T> consumer) {
+        this(DefaultBitSetSize, consumer);
+    }
+
+    public OpenLongPairRangeSet(int bitSetSize, LongPairConsumer<T> consumer) {
+        checkArgument(bitSetSize > 0);
+        this.bitSetSize = bitSetSize;
+        this.consumer = requireNonNull(consumer);
+    }
+
+    @Override
+    public void addOpenClosed(long lowerKey, long lowerValueOpen, long upperKey, long upperValue) {
+        long lowerValue = lowerKey == upperKey ? lowerValueOpen + 1 : 0;
+        if (lowerValue > upperValue || !isValid(lowerValue) || !isValid(upperValue)) {
+            // Empty range or out of the supported values
+            return;
+        }
+
+        BitSet rangeBitSet = rangeBitSetMap.computeIfAbsent(upperKey, key -> new BitSet(bitSetSize));
+        rangeBitSet.set((int) lowerValue, (int) upperValue + 1);
+        updatedAfterCachedForSize = true;
+    }
+
+    @Override
+    public boolean contains(long key, long value) {
+        BitSet rangeBitSet = rangeBitSetMap.get(key);
+        return rangeBitSet != null && isValid(value) && rangeBitSet.get((int) value);
+    }
+
+    @Override
+    public Range<T> rangeContaining(long key, long value) {
+        if (!contains(key, value)) {
+            return null;
+        }
+
+        BitSet rangeBitSet = rangeBitSetMap.get(key);
+        int lower = rangeBitSet.previousClearBit((int) value);
+        int upper = rangeBitSet.nextClearBit((int) value) - 1;
+        return Range.openClosed(consumer.apply(key, lower), consumer.apply(key, upper));
+    }
+
+    @Override
+    public long cardinality(long key, long lowerValue, long upperValue) {
+        BitSet rangeBitSet = rangeBitSetMap.get(key);
+        if (rangeBitSet == null || lowerValue > upperValue || upperValue < 0 || lowerValue >= Integer.MAX_VALUE) {
+            return 0;
+        }
+
+        // Count the set bits run by run, without copying the bits of the window
+        int upper = (int) Math.min(upperValue, Integer.MAX_VALUE - 1);
+        long cardinality = 0;
+        int start = rangeBitSet.nextSetBit((int) Math.max(lowerValue, 0));
+        while (start >= 0 && start <= upper) {
+            int end = Math.min(rangeBitSet.nextClearBit(start), upper + 1);
+            cardinality += end - start;
+            start = rangeBitSet.nextSetBit(end);
+        }
+        return cardinality;
+    }
+
+    @Override
+    public void removeAtMost(long key, long value) {
+        rangeBitSetMap.headMap(key, false).clear();
+
+        BitSet rangeBitSet = rangeBitSetMap.get(key);
+        if (rangeBitSet != null && value >= 0) {
+            rangeBitSet.clear(0, (int) Math.min(value, Integer.MAX_VALUE - 1) + 1);
+            if (rangeBitSet.isEmpty()) {
+                rangeBitSetMap.remove(key);
+            }
+        }
+        updatedAfterCachedForSize = true;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        // Empty bitsets are always removed from the map
+        return rangeBitSetMap.isEmpty();
+    }
+
+    @Override
+    public void clear() {
+        rangeBitSetMap.clear();
+        updatedAfterCachedForSize = true;
+    }
+
+    @Override
+    public Range<T> span() {
+        if (rangeBitSetMap.isEmpty()) {
+            return null;
+        }
+
+        Entry<Long, BitSet> firstSet = rangeBitSetMap.firstEntry();
+        Entry<Long, BitSet> lastSet = rangeBitSetMap.lastEntry();
+        int first = firstSet.getValue().nextSetBit(0);
+        int last = lastSet.getValue().length() - 1;
+        return Range.openClosed(consumer.apply(firstSet.getKey(), first - 1), consumer.apply(lastSet.getKey(), last));
+    }
+
+    @Override
+    public List<Range<T>> asRanges() {
+        List<Range<T>> ranges = new ArrayList<>();
+        forEach((lowerKey, lowerValue, upperKey, upperValue) -> {
+            ranges.add(Range.openClosed(consumer.apply(lowerKey, lowerValue), consumer.apply(upperKey, upperValue)));
+            return true;
+        });
+        return ranges;
+    }
+
+    @Override
+    public void forEach(RangeProcessor action) {
+        for (Entry<Long, BitSet> entry : rangeBitSetMap.entrySet()) {
+            long key = entry.getKey();
+            BitSet rangeBitSet = entry.getValue();
+            int start = rangeBitSet.nextSetBit(0);
+            while (start >= 0) {
+                int end = rangeBitSet.nextClearBit(start);
+                if (!action.process(key, start - 1, key, end - 1)) {
+                    return;
+                }
+                start = rangeBitSet.nextSetBit(end);
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        if (updatedAfterCachedForSize) {
+            int size = 0;
+            for (BitSet rangeBitSet : rangeBitSetMap.values()) {
+                int start = rangeBitSet.nextSetBit(0);
+                while (start >= 0) {
+                    size++;
+                    start = rangeBitSet.nextSetBit(rangeBitSet.nextClearBit(start));
+                }
+            }
+            cachedSize = size;
+            updatedAfterCachedForSize = false;
+        }
+        return cachedSize;
+    }
+
+    @Override
+    public Range<T> firstRange() {
+        if (rangeBitSetMap.isEmpty()) {
+            return null;
+        }
+
+        Entry<Long, BitSet> firstSet = rangeBitSetMap.firstEntry();
+        int lower = firstSet.getValue().nextSetBit(0);
+        int upper = firstSet.getValue().nextClearBit(lower) - 1;
+        return Range.openClosed(consumer.apply(firstSet.getKey(), lower - 1),
+                consumer.apply(firstSet.getKey(), upper));
+    }
+
+    @Override
+    public String toString() {
+        return asRanges().toString();
+    }
+
+    private static boolean isValid(long value) {
+        return value >= 0 && value < Integer.MAX_VALUE;
+    }
+}
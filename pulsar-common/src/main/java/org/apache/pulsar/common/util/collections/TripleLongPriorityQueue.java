@@ -0,0 +1,200 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.common.util.collections;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+
+/**
+ * An unbounded priority queue based on a min heap where values are composed of triples of longs: (n1, n2, n3).
+ * <p>
+ * Triples are ordered by n1, then n2, then n3. They are stored in a direct memory buffer, 24 bytes each, so no
+ * object is allocated per item and the queue does not add to the GC pressure regardless of its size. When the
+ * capacity is reached, data is moved to a buffer twice as big.
+ * <p>
+ * This class is not thread-safe and it must be closed to release the direct memory.
+ */
+public class TripleLongPriorityQueue implements AutoCloseable {
+
+    private static final int SIZE_OF_LONG = 8;
+    private static final int DEFAULT_INITIAL_CAPACITY = 16;
+
+    // Each item is composed of 3 longs
+    private static final int ITEMS_COUNT = 3;
+    private static final int TUPLE_SIZE = ITEMS_COUNT * SIZE_OF_LONG;
+
+    private ByteBuf buffer;
+    private int capacity;
+    private int size;
+
+    public TripleLongPriorityQueue() {
+        this(DEFAULT_INITIAL_CAPACITY);
+    }
+
+    public TripleLongPriorityQueue(int initialCapacity) {
+        checkArgument(initialCapacity > 0);
+        this.capacity = initialCapacity;
+        this.buffer = PooledByteBufAllocator.DEFAULT.directBuffer(initialCapacity * TUPLE_SIZE);
+        this.size = 0;
+    }
+
+    /**
+     * Adds a new item to the queue.
+     */
+    public void add(long n1, long n2, long n3) {
+        if (size == capacity) {
+            increaseCapacity();
+        }
+
+        put(size, n1, n2, n3);
+        siftUp(size);
+        ++size;
+    }
+
+    /**
+     * @return the n1 of the lowest item in the queue
+     */
+    public long peekN1() {
+        checkState(size > 0, "Queue is empty");
+        return buffer.getLong(0);
+    }
+
+    /**
+     * @return the n2 of the lowest item in the queue
+     */
+    public long peekN2() {
+        checkState(size > 0, "Queue is empty");
+        return buffer.getLong(SIZE_OF_LONG);
+    }
+
+    /**
+     * @return the n3 of the lowest item in the queue
+     */
+    public long peekN3() {
+        checkState(size > 0, "Queue is empty");
+        return buffer.getLong(2 * SIZE_OF_LONG);
+    }
+
+    /**
+     * Removes the lowest item from the queue.
+     */
+    public void pop() {
+        checkState(size > 0, "Queue is empty");
+        --size;
+        swap(0, size);
+        siftDown(0);
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of bytes of direct memory retained by the queue
+     */
+    public long bytesCapacity() {
+        return (long) capacity * TUPLE_SIZE;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    @Override
+    public void close() {
+        buffer.release();
+    }
+
+    private void increaseCapacity() {
+        // Double the capacity, the data is copied into the new buffer
+        int newCapacity = capacity * 2;
+        ByteBuf newBuffer = PooledByteBufAllocator.DEFAULT.directBuffer(newCapacity * TUPLE_SIZE);
+        newBuffer.writeBytes(buffer, 0, size * TUPLE_SIZE);
+        buffer.release();
+        buffer = newBuffer;
+        capacity = newCapacity;
+    }
+
+    private void siftUp(int idx) {
+        while (idx > 0) {
+            int parentIdx = (idx - 1) / 2;
+            if (compare(idx, parentIdx) >= 0) {
+                break;
+            }
+
+            swap(idx, parentIdx);
+            idx = parentIdx;
+        }
+    }
+
+    private void siftDown(int idx) {
+        int half = size / 2;
+        while (idx < half) {
+            int left = 2 * idx + 1;
+            int right = left + 1;
+
+            int smallest = right < size && compare(right, left) < 0 ? right : left;
+            if (compare(idx, smallest) <= 0) {
+                break;
+            }
+
+            swap(idx, smallest);
+            idx = smallest;
+        }
+    }
+
+    private void put(int idx, long n1, long n2, long n3) {
+        int offset = idx * TUPLE_SIZE;
+        buffer.setLong(offset, n1);
+        buffer.setLong(offset + SIZE_OF_LONG, n2);
+        buffer.setLong(offset + 2 * SIZE_OF_LONG, n3);
+    }
+
+    private int compare(int idx1, int idx2) {
+        int offset1 = idx1 * TUPLE_SIZE;
+        int offset2 = idx2 * TUPLE_SIZE;
+        for (int i = 0; i < ITEMS_COUNT; i++) {
+            int res = Long.compare(buffer.getLong(offset1 + i * SIZE_OF_LONG),
+                    buffer.getLong(offset2 + i * SIZE_OF_LONG));
+            if (res != 0) {
+                return res;
+            }
+        }
+        return 0;
+    }
+
+    private void swap(int idx1, int idx2) {
+        int offset1 = idx1 * TUPLE_SIZE;
+        int offset2 = idx2 * TUPLE_SIZE;
+        for (int i = 0; i < ITEMS_COUNT; i++) {
+            int pos1 = offset1 + i * SIZE_OF_LONG;
+            int pos2 = offset2 + i * SIZE_OF_LONG;
+            long tmp = buffer.getLong(pos1);
+            buffer.setLong(pos1, buffer.getLong(pos2));
+            buffer.setLong(pos2, tmp);
+        }
+    }
+}
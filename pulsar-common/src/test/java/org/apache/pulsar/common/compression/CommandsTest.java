@@ -26,6 +26,7 @@ import java.io.IOException;
 import org.apache.pulsar.common.api.ByteBufPair;
 import org.apache.pulsar.common.api.Commands;
 import org.apache.pulsar.common.api.Commands.ChecksumType;
+import org.apache.pulsar.common.api.proto.PulsarApi.MessageIdData;
 import org.apache.pulsar.common.api.proto.PulsarApi.MessageMetadata;
 import org.apache.pulsar.common.util.protobuf.ByteBufCodedOutputStream;
 import org.testng.annotations.Test;
@@ -33,6 +34,7 @@ import org.testng.annotations.Test;
 import com.scurrilous.circe.checksum.Crc32cIntChecksum;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.buffer.Unpooled;
 
@@ -77,6 +79,30 @@ public class CommandsTest {
 
     }
 
+    @Test
+    public void testNewMessageWithoutBuilders() throws Exception {
+        ByteBuf payload = Unpooled.wrappedBuffer("payload".getBytes());
+        long[][] ackSets = { null, { 0x5L, -1L } };
+        for (int redeliveryCount : new int[] { 0, 3 }) {
+            for (long[] ackSet : ackSets) {
+                MessageIdData messageId = MessageIdData.newBuilder().setLedgerId(123456789L).setEntryId(42)
+                        .setPartition(-1).build();
+                ByteBufPair expected = Commands.newMessage(7, messageId, redeliveryCount, ackSet, payload.retain());
+                ByteBufPair actual = Commands.newMessage(7, 123456789L, 42, -1, redeliveryCount, ackSet,
+                        payload.retain());
+
+                // The entry buffer is passed through as is
+                assertTrue(actual.getSecond() == payload);
+                assertEquals(ByteBufUtil.getBytes(actual.getFirst()), ByteBufUtil.getBytes(expected.getFirst()));
+
+                messageId.recycle();
+                expected.release();
+                actual.release();
+            }
+        }
+        payload.release();
+    }
+
     private int computeChecksum(MessageMetadata msgMetadata, ByteBuf compressedPayload) throws IOException {
         int metadataSize = msgMetadata.getSerializedSize();
         int metadataFrameSize = 4 + metadataSize;
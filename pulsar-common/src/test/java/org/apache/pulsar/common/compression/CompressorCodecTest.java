@@ -20,6 +20,7 @@ package org.apache.pulsar.common.compression;
 
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
 
 import java.io.IOException;
 
@@ -39,7 +40,8 @@ public class CompressorCodecTest {
 
     @DataProvider(name = "codec")
     public Object[][] codecProvider() {
-        return new Object[][] { { CompressionType.NONE }, { CompressionType.LZ4 }, { CompressionType.ZLIB }, };
+        return new Object[][] { { CompressionType.NONE }, { CompressionType.LZ4 }, { CompressionType.ZLIB },
+                { CompressionType.ZSTD }, { CompressionType.SNAPPY }, };
     }
 
     @Test(dataProvider = "codec")
@@ -115,4 +117,46 @@ public class CompressorCodecTest {
         // A single provider instance must return the same codec instance every time
         assertTrue(codec1 == codec2);
     }
+
+    @Test(dataProvider = "codec")
+    void testCompressDecompressHeapBuffers(CompressionType type) throws IOException {
+        CompressionCodec codec = CompressionCodecProvider.getCompressionCodec(type);
+        byte[] data = text.getBytes();
+        ByteBuf raw = Unpooled.wrappedBuffer(data);
+
+        ByteBuf compressed = codec.encode(raw);
+        ByteBuf heapCompressed = Unpooled.copiedBuffer(compressed);
+        ByteBuf uncompressed = codec.decode(heapCompressed, data.length);
+
+        assertEquals(uncompressed, raw);
+
+        compressed.release();
+        heapCompressed.release();
+        uncompressed.release();
+    }
+
+    @Test
+    void testZstdWithDictionary() throws IOException {
+        byte[] dictionary = text.substring(0, 200).getBytes();
+        CompressionCodec codec = new CompressionCodecZstd(5, dictionary);
+        byte[] data = text.getBytes();
+        ByteBuf raw = PooledByteBufAllocator.DEFAULT.directBuffer();
+        raw.writeBytes(data);
+
+        ByteBuf compressed = codec.encode(raw);
+        ByteBuf uncompressed = codec.decode(compressed, data.length);
+        assertEquals(uncompressed, raw);
+        uncompressed.release();
+
+        // Content compressed with a dictionary cannot be decompressed without it
+        try {
+            new CompressionCodecZstd().decode(compressed, data.length);
+            fail("should have failed");
+        } catch (IOException e) {
+            // Expected
+        }
+
+        raw.release();
+        compressed.release();
+    }
 }
@@ -0,0 +1,233 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.common.util.collections;
+
+import static org.apache.pulsar.common.util.collections.ConcurrentLongPairLongHashMap.ValueNotFound;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.commons.lang3.tuple.Pair;
+import org.testng.annotations.Test;
+
+public class ConcurrentLongPairLongHashMapTest {
+
+    @Test
+    public void testConstructor() {
+        try {
+            new ConcurrentLongPairLongHashMap(0);
+            fail("should have thrown exception");
+        } catch (IllegalArgumentException e) {
+            // ok
+        }
+
+        try {
+            new ConcurrentLongPairLongHashMap(16, 0);
+            fail("should have thrown exception");
+        } catch (IllegalArgumentException e) {
+            // ok
+        }
+
+        try {
+            new ConcurrentLongPairLongHashMap(4, 8);
+            fail("should have thrown exception");
+        } catch (IllegalArgumentException e) {
+            // ok
+        }
+    }
+
+    @Test
+    public void simpleInsertions() {
+        ConcurrentLongPairLongHashMap map = new ConcurrentLongPairLongHashMap(16);
+
+        assertTrue(map.isEmpty());
+        assertEquals(map.put(1, 1, 11), ValueNotFound);
+        assertFalse(map.isEmpty());
+
+        assertEquals(map.put(2, 2, 22), ValueNotFound);
+        assertEquals(map.put(3, 3, 33), ValueNotFound);
+        assertEquals(map.size(), 3);
+
+        assertEquals(map.get(1, 1), 11);
+        assertEquals(map.get(1, 2), ValueNotFound);
+        assertTrue(map.containsKey(2, 2));
+
+        assertEquals(map.remove(1, 1), 11);
+        assertEquals(map.size(), 2);
+        assertEquals(map.get(1, 1), ValueNotFound);
+        assertEquals(map.remove(5, 5), ValueNotFound);
+
+        assertEquals(map.put(1, 1, 11), ValueNotFound);
+        assertEquals(map.put(1, 1, 111), 11);
+        assertEquals(map.get(1, 1), 111);
+        assertEquals(map.size(), 3);
+    }
+
+    @Test
+    public void testRemoveValue() {
+        ConcurrentLongPairLongHashMap map = new ConcurrentLongPairLongHashMap();
+        map.put(1, 1, 11);
+
+        assertFalse(map.remove(1, 1, 12));
+        assertFalse(map.remove(1, 0, 11));
+        assertEquals(map.size(), 1);
+        assertTrue(map.remove(1, 1, 11));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void testRehashing() {
+        int n = 16;
+        ConcurrentLongPairLongHashMap map = new ConcurrentLongPairLongHashMap(n / 2, 1);
+        assertEquals(map.capacity(), n);
+        assertEquals(map.size(), 0);
+
+        for (int i = 0; i < n; i++) {
+            map.put(i, 1, i);
+        }
+
+        assertEquals(map.capacity(), 2 * n);
+        assertEquals(map.size(), n);
+        for (int i = 0; i < n; i++) {
+            assertEquals(map.get(i, 1), i);
+        }
+    }
+
+    @Test
+    public void testRehashingWithDeletes() {
+        int n = 16;
+        ConcurrentLongPairLongHashMap map = new ConcurrentLongPairLongHashMap(n / 2, 1);
+
+        for (int i = 0; i < n / 2; i++) {
+            map.put(i, i, i);
+        }
+        for (int i = 0; i < n / 2; i++) {
+            map.remove(i, i);
+        }
+        for (int i = n; i < (2 * n); i++) {
+            map.put(i, i, i);
+        }
+
+        assertEquals(map.size(), n);
+        for (int i = n; i < (2 * n); i++) {
+            assertEquals(map.get(i, i), i);
+        }
+    }
+
+    @Test
+    public void testIterationAndRemoveIf() {
+        ConcurrentLongPairLongHashMap map = new ConcurrentLongPairLongHashMap();
+        Map<Pair<Long, Long>, Long> expected = new HashMap<>();
+        for (int i = 0; i < 100; i++) {
+            map.put(i / 10, i % 10, i);
+            expected.put(Pair.of((long) i / 10, (long) i % 10), (long) i);
+        }
+
+        Map<Pair<Long, Long>, Long> values = new HashMap<>();
+        map.forEach((key1, key2, value) -> values.put(Pair.of(key1, key2), value));
+        assertEquals(values, expected);
+
+        assertEquals(map.removeIf((key1, key2, value) -> key1 < 5 || value % 2 == 0), 75);
+        assertEquals(map.size(), 25);
+        for (int i = 0; i < 100; i++) {
+            boolean removed = i / 10 < 5 || i % 2 == 0;
+            assertEquals(map.get(i / 10, i % 10), removed ? ValueNotFound : i);
+        }
+
+        // The removed buckets can be reused
+        for (int i = 0; i < 100; i++) {
+            map.put(i / 10, i % 10, i);
+        }
+        assertEquals(map.size(), 100);
+    }
+
+    @Test
+    public void testHashConflictWithDeletion() {
+        final int buckets = 16;
+        ConcurrentLongPairLongHashMap map = new ConcurrentLongPairLongHashMap(buckets / 2, 1);
+        assertEquals(map.capacity(), buckets);
+
+        // Pick 2 keys that fall into the same bucket
+        long key1 = 1;
+        long key2 = 11;
+
+        int bucket1 = ConcurrentLongPairLongHashMap.bucketIndex(ConcurrentLongPairLongHashMap.hash(key1, key1),
+                buckets);
+        int bucket2 = ConcurrentLongPairLongHashMap.bucketIndex(ConcurrentLongPairLongHashMap.hash(key2, key2),
+                buckets);
+        assertEquals(bucket1, bucket2);
+
+        map.put(key1, key1, 1);
+        map.put(key2, key2, 2);
+        assertEquals(map.size(), 2);
+
+        assertEquals(map.remove(key1, key1), 1);
+        assertEquals(map.size(), 1);
+        assertEquals(map.get(key2, key2), 2);
+
+        assertEquals(map.put(key1, key1, 3), ValueNotFound);
+        assertEquals(map.size(), 2);
+        assertEquals(map.remove(key2, key2), 2);
+        assertEquals(map.get(key1, key1), 3);
+    }
+
+    @Test
+    public void concurrentInsertionsAndReads() throws Throwable {
+        ConcurrentLongPairLongHashMap map = new ConcurrentLongPairLongHashMap();
+        ExecutorService executor = Executors.newCachedThreadPool();
+
+        final int nThreads = 16;
+        final int N = 100_000;
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < nThreads; i++) {
+            final int threadIdx = i;
+
+            futures.add(executor.submit(() -> {
+                Random random = new Random();
+
+                for (int j = 0; j < N; j++) {
+                    long key = random.nextLong();
+                    // Ensure keys are unique
+                    key -= key % (threadIdx + 1);
+                    key = Math.abs(key);
+                    map.put(key, threadIdx, j);
+                    assertEquals(map.get(key, threadIdx), j);
+                }
+            }));
+        }
+
+        for (Future<?> future : futures) {
+            future.get();
+        }
+
+        assertEquals(map.size(), N * nThreads);
+
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,198 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.common.util.collections;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import com.google.common.collect.Range;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.pulsar.common.util.collections.LongPairRangeSet.LongPair;
+import org.testng.annotations.Test;
+
+public class OpenLongPairRangeSetTest {
+
+    private static final LongPairRangeSet.LongPairConsumer<LongPair> consumer = LongPair::new;
+
+    @Test
+    public void testAddForSameKey() {
+        OpenLongPairRangeSet<LongPair> set = new OpenLongPairRangeSet<>(consumer);
+        assertTrue(set.isEmpty());
+        assertNull(set.span());
+        assertNull(set.firstRange());
+
+        set.addOpenClosed(0, 0, 0, 5);
+        set.addOpenClosed(0, 8, 0, 10);
+        set.addOpenClosed(0, 5, 0, 6);
+        assertFalse(set.isEmpty());
+        assertEquals(set.size(), 2);
+
+        List<Range<LongPair>> ranges = set.asRanges();
+        assertEquals(ranges.get(0), Range.openClosed(new LongPair(0, 0), new LongPair(0, 6)));
+        assertEquals(ranges.get(1), Range.openClosed(new LongPair(0, 8), new LongPair(0, 10)));
+        assertEquals(set.firstRange(), ranges.get(0));
+        assertEquals(set.span(), Range.openClosed(new LongPair(0, 0), new LongPair(0, 10)));
+
+        assertFalse(set.contains(0, 0));
+        assertTrue(set.contains(0, 1));
+        assertTrue(set.contains(0, 6));
+        assertFalse(set.contains(0, 7));
+        assertTrue(set.contains(0, 9));
+        assertFalse(set.contains(1, 9));
+    }
+
+    @Test
+    public void testAddForDifferentKey() {
+        OpenLongPairRangeSet<LongPair> set = new OpenLongPairRangeSet<>(consumer);
+        // ranges across keys only cover the upper key
+        set.addOpenClosed(1, 10, 2, 3);
+        set.addOpenClosed(4, 5, 4, 8);
+        assertEquals(set.size(), 2);
+        assertFalse(set.contains(1, 11));
+        assertTrue(set.contains(2, 0));
+        assertTrue(set.contains(2, 3));
+        assertFalse(set.contains(2, 4));
+
+        List<Range<LongPair>> ranges = set.asRanges();
+        assertEquals(ranges.get(0), Range.openClosed(new LongPair(2, -1), new LongPair(2, 3)));
+        assertEquals(ranges.get(1), Range.openClosed(new LongPair(4, 5), new LongPair(4, 8)));
+        assertEquals(set.span(), Range.openClosed(new LongPair(2, -1), new LongPair(4, 8)));
+    }
+
+    @Test
+    public void testRangeContaining() {
+        OpenLongPairRangeSet<LongPair> set = new OpenLongPairRangeSet<>(consumer);
+        set.addOpenClosed(0, 0, 0, 5);
+        set.addOpenClosed(0, 7, 0, 9);
+
+        assertNull(set.rangeContaining(0, 0));
+        assertNull(set.rangeContaining(0, 6));
+        assertNull(set.rangeContaining(1, 1));
+        assertEquals(set.rangeContaining(0, 3), Range.openClosed(new LongPair(0, 0), new LongPair(0, 5)));
+        assertEquals(set.rangeContaining(0, 8), Range.openClosed(new LongPair(0, 7), new LongPair(0, 9)));
+    }
+
+    @Test
+    public void testRemoveAtMost() {
+        OpenLongPairRangeSet<LongPair> set = new OpenLongPairRangeSet<>(consumer);
+        set.addOpenClosed(0, 0, 0, 5);
+        set.addOpenClosed(1, -1, 1, 3);
+        set.addOpenClosed(1, 5, 1, 9);
+        set.addOpenClosed(2, 1, 2, 2);
+        assertEquals(set.size(), 4);
+
+        set.removeAtMost(1, 6);
+        assertEquals(set.size(), 2);
+        assertFalse(set.contains(0, 3));
+        assertFalse(set.contains(1, 6));
+        assertEquals(set.firstRange(), Range.openClosed(new LongPair(1, 6), new LongPair(1, 9)));
+
+        set.removeAtMost(2, 2);
+        assertTrue(set.isEmpty());
+        assertEquals(set.size(), 0);
+    }
+
+    @Test
+    public void testForEach() {
+        OpenLongPairRangeSet<LongPair> set = new OpenLongPairRangeSet<>(consumer);
+        set.addOpenClosed(0, 0, 0, 2);
+        set.addOpenClosed(0, 3, 0, 4);
+        set.addOpenClosed(3, 0, 3, 1);
+
+        LongPairRangeSet.DefaultRangeSet<LongPair> gSet = new LongPairRangeSet.DefaultRangeSet<>(consumer,
+                pair -> pair);
+        set.forEach((lowerKey, lowerValue, upperKey, upperValue) -> {
+            gSet.addOpenClosed(lowerKey, lowerValue, upperKey, upperValue);
+            return true;
+        });
+        assertEquals(gSet.asRanges(), set.asRanges());
+
+        int[] count = new int[1];
+        set.forEach((lowerKey, lowerValue, upperKey, upperValue) -> ++count[0] < 2);
+        assertEquals(count[0], 2);
+    }
+
+    @Test
+    public void testSameSemanticsAsDefaultRangeSet() {
+        OpenLongPairRangeSet<LongPair> set = new OpenLongPairRangeSet<>(consumer);
+        LongPairRangeSet.DefaultRangeSet<LongPair> gSet = new LongPairRangeSet.DefaultRangeSet<>(consumer,
+                pair -> pair);
+
+        // Ack every other entry of a ledger, then fill some of the holes
+        for (int i = 0; i < 100; i += 2) {
+            set.addOpenClosed(5, i - 1, 5, i);
+            gSet.addOpenClosed(5, i - 1, 5, i);
+        }
+        for (int i = 1; i < 50; i += 2) {
+            set.addOpenClosed(5, i - 1, 5, i);
+            gSet.addOpenClosed(5, i - 1, 5, i);
+        }
+
+        assertEquals(set.size(), gSet.size());
+        assertEquals(set.asRanges(), gSet.asRanges());
+        assertEquals(set.toString(), gSet.toString());
+        for (int i = 0; i < 110; i++) {
+            assertEquals(set.contains(5, i), gSet.contains(5, i));
+            assertEquals(set.rangeContaining(5, i), gSet.rangeContaining(5, i));
+        }
+
+        set.removeAtMost(5, 60);
+        gSet.removeAtMost(5, 60);
+        assertEquals(set.asRanges(), gSet.asRanges());
+        assertEquals(set.firstRange(), gSet.firstRange());
+        assertEquals(set.span(), gSet.span());
+    }
+
+    @Test
+    public void testCardinality() {
+        OpenLongPairRangeSet<LongPair> set = new OpenLongPairRangeSet<>(consumer);
+        LongPairRangeSet.DefaultRangeSet<LongPair> gSet = new LongPairRangeSet.DefaultRangeSet<>(consumer,
+                pair -> pair);
+        for (LongPairRangeSet<LongPair> rangeSet : Arrays.asList(set, gSet)) {
+            rangeSet.addOpenClosed(4, 10, 5, 2);
+            rangeSet.addOpenClosed(5, 3, 5, 7);
+            rangeSet.addOpenClosed(5, 9, 5, 10);
+        }
+
+        for (LongPairRangeSet<LongPair> rangeSet : Arrays.asList(set, gSet)) {
+            assertEquals(rangeSet.cardinality(5, 0, 10), 8);
+            assertEquals(rangeSet.cardinality(5, 4, 9), 4);
+            assertEquals(rangeSet.cardinality(5, 3, 3), 0);
+            assertEquals(rangeSet.cardinality(5, 8, 8), 0);
+            assertEquals(rangeSet.cardinality(5, 5, 4), 0);
+            assertEquals(rangeSet.cardinality(5, 0, Long.MAX_VALUE), 8);
+            assertEquals(rangeSet.cardinality(6, 0, Long.MAX_VALUE), 0);
+        }
+    }
+
+    @Test
+    public void testClear() {
+        OpenLongPairRangeSet<LongPair> set = new OpenLongPairRangeSet<>(consumer);
+        set.addOpenClosed(0, 0, 0, 5);
+        set.addOpenClosed(1, 0, 1, 5);
+        assertEquals(set.size(), 2);
+        set.clear();
+        assertTrue(set.isEmpty());
+        assertEquals(set.size(), 0);
+        assertEquals(set.asRanges().size(), 0);
+    }
+}
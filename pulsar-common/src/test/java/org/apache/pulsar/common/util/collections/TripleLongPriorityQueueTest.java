@@ -0,0 +1,123 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.common.util.collections;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.testng.annotations.Test;
+
+public class TripleLongPriorityQueueTest {
+
+    @Test
+    public void testQueue() {
+        TripleLongPriorityQueue pq = new TripleLongPriorityQueue();
+        assertEquals(pq.size(), 0);
+        assertTrue(pq.isEmpty());
+
+        final int N = 1000;
+
+        // Insert in reverse order, the queue has to grow several times
+        for (int i = N; i > 0; i--) {
+            pq.add(i, i * 2L, i * 3L);
+        }
+
+        assertEquals(pq.size(), N);
+        assertFalse(pq.isEmpty());
+
+        for (int i = 1; i <= N; i++) {
+            assertEquals(pq.peekN1(), i);
+            assertEquals(pq.peekN2(), i * 2);
+            assertEquals(pq.peekN3(), i * 3);
+
+            pq.pop();
+            assertEquals(pq.size(), N - i);
+        }
+
+        assertTrue(pq.isEmpty());
+        pq.close();
+    }
+
+    @Test
+    public void testCompareWithSamePrefix() {
+        TripleLongPriorityQueue pq = new TripleLongPriorityQueue();
+
+        pq.add(10, 20, 30);
+        pq.add(20, 10, 10);
+        pq.add(10, 20, 10);
+        pq.add(10, 30, 10);
+        pq.add(10, 20, 5);
+
+        assertEquals(pq.size(), 5);
+
+        long[][] expected = { { 10, 20, 5 }, { 10, 20, 10 }, { 10, 20, 30 }, { 10, 30, 10 }, { 20, 10, 10 } };
+        for (long[] item : expected) {
+            assertEquals(pq.peekN1(), item[0]);
+            assertEquals(pq.peekN2(), item[1]);
+            assertEquals(pq.peekN3(), item[2]);
+            pq.pop();
+        }
+
+        assertTrue(pq.isEmpty());
+        pq.close();
+    }
+
+    @Test
+    public void testRandomItems() {
+        TripleLongPriorityQueue pq = new TripleLongPriorityQueue(1);
+        Random random = new Random(1);
+        List<Long> values = new ArrayList<>();
+
+        for (int i = 0; i < 10000; i++) {
+            long value = random.nextInt(1000);
+            values.add(value);
+            pq.add(value, i, 0);
+        }
+
+        Collections.sort(values);
+        for (long value : values) {
+            assertEquals(pq.peekN1(), value);
+            pq.pop();
+        }
+
+        assertTrue(pq.isEmpty());
+        pq.close();
+    }
+
+    @Test
+    public void testClear() {
+        TripleLongPriorityQueue pq = new TripleLongPriorityQueue();
+        pq.add(1, 2, 3);
+        pq.add(4, 5, 6);
+        assertEquals(pq.size(), 2);
+
+        pq.clear();
+        assertTrue(pq.isEmpty());
+
+        pq.add(7, 8, 9);
+        assertEquals(pq.size(), 1);
+        assertEquals(pq.peekN1(), 7);
+        pq.close();
+    }
+}
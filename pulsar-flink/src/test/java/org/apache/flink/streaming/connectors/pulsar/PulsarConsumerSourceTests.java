@@ -35,6 +35,7 @@ import org.apache.pulsar.client.api.Consumer;
 import org.apache.pulsar.client.api.ConsumerStats;
 import org.apache.pulsar.client.api.Message;
 import org.apache.pulsar.client.api.MessageId;
+import org.apache.pulsar.client.api.Messages;
 import org.apache.pulsar.client.api.PulsarClient;
 import org.apache.pulsar.client.api.PulsarClientException;
 import org.apache.pulsar.client.api.Schema;
@@ -419,6 +420,16 @@ public class PulsarConsumerSourceTests {
             }
         }
 
+        @Override
+        public Messages<byte[]> batchReceive() throws PulsarClientException {
+            return null;
+        }
+
+        @Override
+        public CompletableFuture<Messages<byte[]>> batchReceiveAsync() {
+            return null;
+        }
+
         @Override
         public void acknowledge(Message<?> message) throws PulsarClientException {
 
@@ -123,7 +123,7 @@ public class PerformanceProducer {
                 "--stats-interval-seconds" }, description = "Statistics Interval Seconds. If 0, statistics will be disabled")
         public long statsIntervalSeconds = 0;
 
-        @Parameter(names = { "-z", "--compression" }, description = "Compress messages payload")
+        @Parameter(names = { "-z", "--compression" }, description = "Compress messages payload, one of NONE, LZ4, ZLIB, ZSTD or SNAPPY")
         public CompressionType compression = CompressionType.NONE;
 
         @Parameter(names = { "-f", "--payload-file" }, description = "Use payload from a file instead of empty buffer")